@@ -23,6 +23,7 @@ package net.yacy.cora.order;
 import java.io.Serializable;
 import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Random;
 import java.util.regex.Pattern;
@@ -460,6 +461,33 @@ public class Base64Order extends AbstractOrder<byte[]> implements ByteOrder, Com
         }
     }
 
+    /**
+     * compare two keys of the same fixed length in place, i.e. the primary keys of two rows inside their
+     * row arrays. This gives the same result as {@link #compare(byte[], int, byte[], int, int)} but skips the
+     * common prefix with the (vectorized) Arrays.mismatch and looks up only the first differing character
+     * in the decision table.
+     * @param a
+     * @param aoffset start of the key in a
+     * @param b
+     * @param boffset start of the key in b
+     * @param length the key length; both keys must be complete within their arrays
+     * @return -1, 0 or 1
+     */
+    public final int compareFixed(final byte[] a, final int aoffset, final byte[] b, final int boffset, final int length) {
+        if (this.zero != null) return this.compare(a, aoffset, b, boffset, length);
+        byte ac = a[aoffset];
+        byte bc = b[boffset];
+        if (ac == bc) {
+            // random keys differ mostly in the first character, the search is only done for a common prefix
+            final int m = Arrays.mismatch(a, aoffset, aoffset + length, b, boffset, boffset + length);
+            if (m < 0) return 0;
+            ac = a[aoffset + m];
+            bc = b[boffset + m];
+        }
+        if ((ac | bc) < 0) return this.compare(a, aoffset, b, boffset, length); // not well-formed
+        return (this.asc) ? this.ab[(ac << 7) | bc] : this.ab[(bc << 7) | ac];
+    }
+
     private final int compare0(final byte[] a, final byte[] b, int length) {
         if (this.zero == null) return this.compares(a, b, length);
 
@@ -110,6 +110,15 @@ public interface Balancer {
      */
     public String push(final Request entry, CrawlProfile profile, final RobotsTxt robots) throws IOException, SpaceExceededException;
 
+    /**
+     * push a batch of crawl requests of the same crawl profile on the balancer stack
+     * @param entries
+     * @return for each entry null if it was pushed or a String explaining why it was not pushed
+     * @throws IOException
+     * @throws SpaceExceededException
+     */
+    public String[] push(final List<Request> entries, CrawlProfile profile, final RobotsTxt robots) throws IOException, SpaceExceededException;
+
     /**
      * get a list of domains that are currently maintained as domain stacks
      * @return a map of clear text strings of host names (each host name eventually concatenated with a port, depending on the implementation)
@@ -28,13 +28,18 @@ package net.yacy.crawler;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 import net.yacy.cora.date.ISO8601Formatter;
 import net.yacy.cora.document.encoding.ASCII;
@@ -50,12 +55,15 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.crawler.data.CrawlProfile;
 import net.yacy.crawler.data.CrawlQueues;
 import net.yacy.crawler.data.NoticedURL;
+import net.yacy.crawler.data.URLSeenFilter;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.robots.RobotsTxt;
 import net.yacy.document.TextParser;
+import net.yacy.kelondro.workflow.WorkflowJob;
 import net.yacy.kelondro.workflow.WorkflowProcessor;
 import net.yacy.kelondro.workflow.WorkflowTask;
 import net.yacy.peers.SeedDB;
+import net.yacy.repository.Blacklist;
 import net.yacy.repository.Blacklist.BlacklistType;
 import net.yacy.repository.FilterEngine;
 import net.yacy.search.Switchboard;
@@ -71,8 +79,56 @@ public final class CrawlStacker implements WorkflowTask<Request>{
 
     private final static ConcurrentLog log = new ConcurrentLog("STACKCRAWL");
 
+    /**
+     * the requests of a batch, like all links of a parsed document
+     */
+    private static final class Batch extends WorkflowJob {
+
+        private final List<Request> entries;
+
+        private Batch(final List<Request> entries) {
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * the results of the acceptance tests which depend only on the host and the crawl profile; they are computed
+     * for the first url of a host in a batch and used for all other urls of the host
+     */
+    private static final class HostDecision {
+
+        private boolean domainChecked = false;
+        private String domainReject = null;
+        private Pattern[] blacklist = null;
+        private boolean addressResolved = false;
+        private InetAddress address = null;
+        private Locale locale = null;
+        private int stacked = 0; // the number of urls of the batch which are accepted, but not yet counted by the profile
+
+        private boolean isBlacklisted(final DigestURL url) {
+            if (url.getHost() == null) return false;
+            if (this.blacklist == null) this.blacklist = Switchboard.urlBlacklist.hostPatterns(BlacklistType.CRAWLER, url.getHost().toLowerCase(Locale.ROOT));
+            return Blacklist.isListed(this.blacklist, url.getFile());
+        }
+
+        private InetAddress address(final DigestURL url) {
+            if (!this.addressResolved) {
+                this.address = url.getInetAddress();
+                this.addressResolved = true;
+            }
+            return this.address;
+        }
+
+        private Locale locale(final DigestURL url) {
+            if (this.locale == null) this.locale = url.getLocale();
+            return this.locale;
+        }
+    }
+
     private final RobotsTxt robots;
     private final WorkflowProcessor<Request>  requestQueue;
+    private final WorkflowProcessor<Batch>    batchQueue;
+    private final AtomicInteger               batchQueueSize; // the number of requests in the batchQueue
     public  final CrawlQueues       nextQueue;
     private final CrawlSwitchboard  crawler;
     private final Segment           indexSegment;
@@ -100,30 +156,37 @@ public final class CrawlStacker implements WorkflowTask<Request>{
         this.acceptGlobalURLs = acceptGlobalURLs;
         this.domainList = domainList;
         this.requestQueue = new WorkflowProcessor<>("CrawlStacker", "This process checks new urls before they are enqueued into the balancer (proper, double-check, correct domain, filter)", new String[]{"Balancer"}, this, 10000, null, WorkflowProcessor.availableCPU);
+        this.batchQueue = new WorkflowProcessor<>("CrawlStackerBatch", "This process checks the links of parsed documents in batches before they are enqueued into the balancer", new String[]{"Balancer"}, this::process, 1000, null, WorkflowProcessor.availableCPU);
+        this.batchQueueSize = new AtomicInteger(0);
         CrawlStacker.log.info("STACKCRAWL thread initialized.");
     }
 
     public int size() {
-        return this.requestQueue.getQueueSize();
+        return this.requestQueue.getQueueSize() + this.batchQueueSize.get();
     }
 
     public boolean isEmpty() {
         if (!this.requestQueue.queueIsEmpty()) return false;
+        if (!this.batchQueue.queueIsEmpty()) return false;
         return true;
     }
 
     public void clear() {
         this.requestQueue.clear();
+        this.batchQueue.clear();
+        this.batchQueueSize.set(0);
     }
 
     public void announceClose() {
         CrawlStacker.log.info("Flushing remaining " + this.size() + " crawl stacker job entries.");
         this.requestQueue.shutdown();
+        this.batchQueue.shutdown();
     }
 
     public synchronized void close() {
         CrawlStacker.log.info("Shutdown. waiting for remaining " + this.size() + " crawl stacker job entries. please wait.");
         this.requestQueue.shutdown();
+        this.batchQueue.shutdown();
         
         // busy waiting for the queue to empty
         for (int i = 0; i < 10; i++) {
@@ -156,6 +219,38 @@ public final class CrawlStacker implements WorkflowTask<Request>{
         return null;
     }
 
+    private Batch process(final Batch batch) {
+        // this is the method that is called by the busy thread of the batch queue
+        try {
+            final String[] rejectReasons = this.stackCrawl(batch.entries);
+
+            // store the rejected urls into the error URL db
+            for (int i = 0; i < rejectReasons.length; i++) {
+                final String rejectReason = rejectReasons[i];
+                if (rejectReason != null && !rejectReason.startsWith(CRAWL_REJECT_REASON_DOUBLE_IN_PREFIX)) {
+                    final Request entry = batch.entries.get(i);
+                    final CrawlProfile profile = this.crawler.get(UTF8.getBytes(entry.profileHandle()));
+                    this.nextQueue.errorURL.push(entry.url(), entry.depth(), profile, FailCategory.FINAL_LOAD_CONTEXT, rejectReason, -1);
+                }
+            }
+        } catch (final Exception e) {
+            CrawlStacker.log.warn("Error while processing stackCrawl batch of " + batch.entries.size() + " entries: " + e.toString(), e);
+        } finally {
+            this.batchQueueSize.addAndGet(-batch.entries.size());
+        }
+        return null;
+    }
+
+    /**
+     * enqueue the requests of a batch, like the links of a parsed document, which are checked and stacked together
+     * @param entries
+     */
+    public void enqueueEntries(final List<Request> entries) {
+        if (entries.isEmpty()) return;
+        this.batchQueueSize.addAndGet(entries.size());
+        this.batchQueue.enQueue(new Batch(entries));
+    }
+
     public void enqueueEntry(final Request entry) {
 
         // DEBUG
@@ -360,6 +455,61 @@ public final class CrawlStacker implements WorkflowTask<Request>{
         error = this.checkAcceptanceInitially(entry.url(), profile);
         if (error != null) return error;
 
+        return this.stack(entry, profile, null);
+    }
+
+    /**
+     * stacks a batch of crawl items. This does the same as stackCrawl for each item, but the tests which depend only on
+     * the host of an url are done once for each host, the urls of the loader are collected once for the batch, and the
+     * accepted items are pushed together, so each host queue is written once.
+     * @param entries
+     * @return for each item null if it was stacked, a reason string if not
+     */
+    public String[] stackCrawl(final List<Request> entries) {
+        final String[] result = new String[entries.size()];
+        final Set<String> activeWorkerHashes = this.nextQueue.activeWorkerHashes();
+        final Map<String, CrawlProfile> profiles = new HashMap<>();
+        final Map<String, HostDecision> hosts = new HashMap<>();
+        final Map<String, Map<NoticedURL.StackType, List<Request>>> stacks = new HashMap<>(); // the accepted requests for each profile
+        for (int i = 0; i < result.length; i++) {
+            final Request entry = entries.get(i);
+            final CrawlProfile profile = profiles.computeIfAbsent(entry.profileHandle(), handle -> this.crawler.get(UTF8.getBytes(handle)));
+            if (profile == null) {
+                result[i] = "LOST STACKER PROFILE HANDLE '" + entry.profileHandle() + "' for URL " + entry.url().toNormalform(true);
+                continue;
+            }
+            final HostDecision host = hosts.computeIfAbsent(profile.handle() + entry.url().hosthash(), k -> new HostDecision());
+            String error = this.checkAcceptanceChangeable(entry.url(), profile, entry.depth(), host);
+            if (error == null) error = this.checkAcceptanceInitially(entry.url(), profile, activeWorkerHashes, host);
+            if (error == null) error = this.stack(entry, profile, stacks.computeIfAbsent(profile.handle(), k -> new EnumMap<>(NoticedURL.StackType.class)));
+            if (error == null) host.stacked++;
+            result[i] = error;
+        }
+
+        for (final Map.Entry<String, Map<NoticedURL.StackType, List<Request>>> stack: stacks.entrySet()) {
+            final CrawlProfile profile = profiles.get(stack.getKey());
+            for (final Map.Entry<NoticedURL.StackType, List<Request>> batch: stack.getValue().entrySet()) {
+                final String[] warnings = this.nextQueue.noticeURL.push(batch.getKey(), batch.getValue(), profile, this.robots);
+                if (CrawlStacker.log.isFine()) {
+                    for (int i = 0; i < warnings.length; i++) {
+                        if (warnings[i] != null) CrawlStacker.log.fine("CrawlStacker.stackCrawl of URL " + batch.getValue().get(i).url().toNormalform(true) + " - not pushed to " + batch.getKey() + " stack : " + warnings[i]);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * select the stack of an accepted crawl item and push it
+     * @param entry
+     * @param profile
+     * @param batch the items of a batch for each stack, where the item is added instead of pushing it; null to push it at once
+     * @return null if successful, a reason string if not successful
+     */
+    private String stack(final Request entry, final CrawlProfile profile, final Map<NoticedURL.StackType, List<Request>> batch) {
+        String error;
+
         // store information
         final boolean local = Base64Order.enhancedCoder.equal(entry.initiator(), UTF8.getBytes(this.peers.mySeed().hash));
         final boolean proxy = (entry.initiator() == null || entry.initiator().length == 0 || ASCII.String(entry.initiator()).equals("------------")) && profile.handle().equals(this.crawler.defaultProxyProfile.handle());
@@ -383,7 +533,7 @@ public final class CrawlStacker implements WorkflowTask<Request>{
         if (!profile.isCrawlerAlwaysCheckMediaType() && TextParser.supportsExtension(entry.url()) != null) {
             if(profile.isIndexNonParseableUrls()) {
                 /* Unsupported file extension and no cross-checking of Media Type : add immediately to the noload stack to index only URL metadata */
-                warning = this.nextQueue.noticeURL.push(NoticedURL.StackType.NOLOAD, entry, profile, this.robots);
+                warning = this.push(NoticedURL.StackType.NOLOAD, entry, profile, batch);
                 if (warning != null && CrawlStacker.log.isFine()) {
                     CrawlStacker.log.fine("CrawlStacker.stackCrawl of URL " + entry.url().toNormalform(true) + " - not pushed to " + NoticedURL.StackType.NOLOAD + " stack : " + warning);
                 }
@@ -399,22 +549,28 @@ public final class CrawlStacker implements WorkflowTask<Request>{
             // it may be possible that global == true and local == true, so do not check an error case against it
             if (proxy) CrawlStacker.log.warn("URL '" + entry.url().toString() + "' has conflicting initiator properties: global = true, proxy = true, initiator = proxy" + ", profile.handle = " + profile.handle());
             if (remote) CrawlStacker.log.warn("URL '" + entry.url().toString() + "' has conflicting initiator properties: global = true, remote = true, initiator = " + ASCII.String(entry.initiator()) + ", profile.handle = " + profile.handle());
-            warning = this.nextQueue.noticeURL.push(NoticedURL.StackType.GLOBAL, entry, profile, this.robots);
+            warning = this.push(NoticedURL.StackType.GLOBAL, entry, profile, batch);
         } else if (local) {
             if (proxy) CrawlStacker.log.warn("URL '" + entry.url().toString() + "' has conflicting initiator properties: local = true, proxy = true, initiator = proxy" + ", profile.handle = " + profile.handle());
             if (remote) CrawlStacker.log.warn("URL '" + entry.url().toString() + "' has conflicting initiator properties: local = true, remote = true, initiator = " + ASCII.String(entry.initiator()) + ", profile.handle = " + profile.handle());
-            warning = this.nextQueue.noticeURL.push(NoticedURL.StackType.LOCAL, entry, profile, this.robots);
+            warning = this.push(NoticedURL.StackType.LOCAL, entry, profile, batch);
         } else if (proxy) {
             if (remote) CrawlStacker.log.warn("URL '" + entry.url().toString() + "' has conflicting initiator properties: proxy = true, remote = true, initiator = " + ASCII.String(entry.initiator()) + ", profile.handle = " + profile.handle());
-            warning = this.nextQueue.noticeURL.push(NoticedURL.StackType.LOCAL, entry, profile, this.robots);
+            warning = this.push(NoticedURL.StackType.LOCAL, entry, profile, batch);
         } else if (remote) {
-            warning = this.nextQueue.noticeURL.push(NoticedURL.StackType.REMOTE, entry, profile, this.robots);
+            warning = this.push(NoticedURL.StackType.REMOTE, entry, profile, batch);
         }
         if (warning != null && CrawlStacker.log.isFine()) CrawlStacker.log.fine("CrawlStacker.stackCrawl of URL " + entry.url().toNormalform(true) + " - not pushed: " + warning);
 
         return null;
     }
 
+    private String push(final NoticedURL.StackType stackType, final Request entry, final CrawlProfile profile, final Map<NoticedURL.StackType, List<Request>> batch) {
+        if (batch == null) return this.nextQueue.noticeURL.push(stackType, entry, profile, this.robots);
+        batch.computeIfAbsent(stackType, k -> new ArrayList<>()).add(entry);
+        return null;
+    }
+
     /**
      * Test if an url shall be accepted for crawl using attributes that are consistent for the whole crawl
      * These tests are incomplete and must be followed with an checkAcceptanceChangeable - test.
@@ -423,20 +579,33 @@ public final class CrawlStacker implements WorkflowTask<Request>{
      * @return null if the url is accepted, an error string in case if the url is not accepted with an error description
      */
     public String checkAcceptanceInitially(final DigestURL url, final CrawlProfile profile) {
+        return this.checkAcceptanceInitially(url, profile, null, null);
+    }
+
+    /**
+     * @param activeWorkerHashes the url hashes of the loader, null to collect them for this test
+     * @param host the host dependent decisions of a batch, null to test the url alone
+     */
+    private String checkAcceptanceInitially(final DigestURL url, final CrawlProfile profile, final Set<String> activeWorkerHashes, final HostDecision host) {
 
-        // check if the url is double registered
-        final HarvestProcess dbocc = this.nextQueue.exists(url.hash()); // returns the name of the queue if entry exists
+        // check if the url is double registered; an url which the filter has not seen is neither in the loader,
+        // nor delegated nor in the load time index, so the exact checks are only done for urls which it may have seen
+        final URLSeenFilter urlSeen = this.indexSegment.urlSeen();
+        final boolean seen = urlSeen == null || urlSeen.mightContain(url.hash());
+        final HarvestProcess dbocc = !seen ? null : activeWorkerHashes == null ? this.nextQueue.exists(url.hash()) : this.nextQueue.exists(url.hash(), activeWorkerHashes); // returns the name of the queue if entry exists
         if (dbocc != null) {
             return CRAWL_REJECT_REASON_DOUBLE_IN_PREFIX + ": " + dbocc.name();
         }
         final String urls = url.toNormalform(false);
-        final long oldDate = this.indexSegment.getLoadTime(url.hash());
+        final long oldDate = seen ? this.indexSegment.getLoadTime(url.hash()) : -1;
+        if (seen && oldDate < 0 && urlSeen != null && urlSeen.isReady()) urlSeen.unconfirmed();
 
         // deny urls that exceed allowed number of occurrences
         final int maxAllowedPagesPerDomain = profile.domMaxPages();
         if (maxAllowedPagesPerDomain < Integer.MAX_VALUE && maxAllowedPagesPerDomain > 0) {
             final AtomicInteger dp = profile.getCount(url.getHost());
-            if (dp != null && dp.get() >= maxAllowedPagesPerDomain) {
+            final int stacked = host == null ? 0 : host.stacked; // the accepted urls of a batch are counted when they are pushed
+            if ((dp == null ? 0 : dp.get()) + stacked >= maxAllowedPagesPerDomain) {
                 if (CrawlStacker.log.isFine()) CrawlStacker.log.fine("URL '" + urls + "' appeared too often in crawl stack, a maximum of " + maxAllowedPagesPerDomain + " is allowed.");
                 return "crawl stack domain counter exceeded (test by profile)";
             }
@@ -476,6 +645,13 @@ public final class CrawlStacker implements WorkflowTask<Request>{
      * @return null if the url is accepted, an error string in case if the url is not accepted with an error description
      */
     public String checkAcceptanceChangeable(final DigestURL url, final CrawlProfile profile, final int depth) {
+        return this.checkAcceptanceChangeable(url, profile, depth, null);
+    }
+
+    /**
+     * @param host the host dependent decisions of a batch, null to test the url alone
+     */
+    private String checkAcceptanceChangeable(final DigestURL url, final CrawlProfile profile, final int depth, final HostDecision host) {
 
         // check if the protocol is supported
         final String urlProtocol = url.getProtocol();
@@ -486,14 +662,14 @@ public final class CrawlStacker implements WorkflowTask<Request>{
         }
 
         // check if ip is local ip address
-        final String urlRejectReason = this.urlInAcceptedDomain(url);
+        final String urlRejectReason = this.urlInAcceptedDomain(url, host);
         if (urlRejectReason != null) {
             if (CrawlStacker.log.isFine()) CrawlStacker.log.fine("URL not in accepted Domain (" + urlRejectReason + ")");
             return "denied_(" + urlRejectReason + ")";
         }
 
         // check blacklist
-        if (Switchboard.urlBlacklist.isListed(BlacklistType.CRAWLER, url)) {
+        if (host == null ? Switchboard.urlBlacklist.isListed(BlacklistType.CRAWLER, url) : host.isBlacklisted(url)) {
             CrawlStacker.log.fine("URL '" + urlstring + "' is in blacklist.");
             return "url in blacklist";
         }
@@ -529,21 +705,21 @@ public final class CrawlStacker implements WorkflowTask<Request>{
         // this is expensive and those filters are check at the end of all other tests
 
         // filter with must-match for IPs
-        if ((depth > 0) && profile.ipMustMatchPattern() != CrawlProfile.MATCH_ALL_PATTERN && url.getHost() != null && !profile.ipMustMatchPattern().matcher(url.getInetAddress().getHostAddress()).matches()) {
-            if (CrawlStacker.log.isFine()) CrawlStacker.log.fine("IP " + url.getInetAddress().getHostAddress() + " of URL '" + urlstring + "' does not match must-match crawling filter '" + profile.ipMustMatchPattern().toString() + "'.");
-            return "ip " + url.getInetAddress().getHostAddress() + " of url does not match must-match filter";
+        if ((depth > 0) && profile.ipMustMatchPattern() != CrawlProfile.MATCH_ALL_PATTERN && url.getHost() != null && !profile.ipMustMatchPattern().matcher(address(url, host).getHostAddress()).matches()) {
+            if (CrawlStacker.log.isFine()) CrawlStacker.log.fine("IP " + address(url, host).getHostAddress() + " of URL '" + urlstring + "' does not match must-match crawling filter '" + profile.ipMustMatchPattern().toString() + "'.");
+            return "ip " + address(url, host).getHostAddress() + " of url does not match must-match filter";
         }
 
         // filter with must-not-match for IPs
-        if ((depth > 0) && profile.ipMustNotMatchPattern() != CrawlProfile.MATCH_NEVER_PATTERN && url.getHost() != null && profile.ipMustNotMatchPattern().matcher(url.getInetAddress().getHostAddress()).matches()) {
-            if (CrawlStacker.log.isFine()) CrawlStacker.log.fine("IP " + url.getInetAddress().getHostAddress() + " of URL '" + urlstring + "' matches must-not-match crawling filter '" + profile.ipMustNotMatchPattern().toString() + "'.");
-            return "ip " + url.getInetAddress().getHostAddress() + " of url matches must-not-match filter";
+        if ((depth > 0) && profile.ipMustNotMatchPattern() != CrawlProfile.MATCH_NEVER_PATTERN && url.getHost() != null && profile.ipMustNotMatchPattern().matcher(address(url, host).getHostAddress()).matches()) {
+            if (CrawlStacker.log.isFine()) CrawlStacker.log.fine("IP " + address(url, host).getHostAddress() + " of URL '" + urlstring + "' matches must-not-match crawling filter '" + profile.ipMustNotMatchPattern().toString() + "'.");
+            return "ip " + address(url, host).getHostAddress() + " of url matches must-not-match filter";
         }
 
         // filter with must-match for IPs
         final String[] countryMatchList = profile.countryMustMatchList();
         if (depth > 0 && countryMatchList != null && countryMatchList.length > 0) {
-            final Locale locale = url.getLocale();
+            final Locale locale = host == null ? url.getLocale() : host.locale(url);
             if (locale != null) {
                 final String c0 = locale.getCountry();
                 boolean granted = false;
@@ -554,7 +730,7 @@ public final class CrawlStacker implements WorkflowTask<Request>{
                     }
                 }
                 if (!granted) {
-                    if (CrawlStacker.log.isFine()) CrawlStacker.log.fine("IP " + url.getInetAddress().getHostAddress() + " of URL '" + urlstring + "' does not match must-match crawling filter '" + profile.ipMustMatchPattern().toString() + "'.");
+                    if (CrawlStacker.log.isFine()) CrawlStacker.log.fine("IP " + address(url, host).getHostAddress() + " of URL '" + urlstring + "' does not match must-match crawling filter '" + profile.ipMustMatchPattern().toString() + "'.");
                     return "country " + c0 + " of url does not match must-match filter for countries";
                 }
             }
@@ -563,6 +739,10 @@ public final class CrawlStacker implements WorkflowTask<Request>{
         return null;
     }
 
+    private static InetAddress address(final DigestURL url, final HostDecision host) {
+        return host == null ? url.getInetAddress() : host.address(url);
+    }
+
     /**
      * Test a url if it can be used for crawling/indexing
      * This mainly checks if the url is in the declared domain (local/global)
@@ -570,6 +750,10 @@ public final class CrawlStacker implements WorkflowTask<Request>{
      * @return null if the url can be accepted, a string containing a rejection reason if the url cannot be accepted
      */
     public String urlInAcceptedDomain(final DigestURL url) {
+        return this.urlInAcceptedDomain(url, null);
+    }
+
+    private String urlInAcceptedDomain(final DigestURL url, final HostDecision host) {
         // returns true if the url can be accepted according to network.unit.domain
         if (url == null) return "url is null";
         // check domainList from network-definition
@@ -578,7 +762,18 @@ public final class CrawlStacker implements WorkflowTask<Request>{
                 return "the url '" + url + "' is not in domainList of this network";
             }
         }
+        if (host == null) return this.hostInAcceptedDomain(url);
+        if (!host.domainChecked) {
+            host.domainReject = this.hostInAcceptedDomain(url);
+            host.domainChecked = true;
+        }
+        return host.domainReject;
+    }
 
+    /**
+     * the part of urlInAcceptedDomain that depends only on the host of the url
+     */
+    private String hostInAcceptedDomain(final DigestURL url) {
         final boolean local = url.isLocal();
         if (this.acceptLocalURLs && local) return null;
         if (this.acceptGlobalURLs && !local) return null;
@@ -28,11 +28,10 @@ import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
@@ -62,6 +61,9 @@ import net.yacy.kelondro.util.FileUtils;
  * That means that all links from a given host must be returned from the lowest crawldepth only.
  * The crawldepth is interpreted as clickdepth and the crawler is producing that semantic using a
  * correct crawl ordering.
+ *
+ * The hosts are crawled in the order of a HostScheduler, which keeps every host that is not crawled just now
+ * with the time when it may be accessed again; the depth order is kept inside of the HostQueue of each host.
  */
 public class HostBalancer implements Balancer {
 
@@ -71,7 +73,7 @@ public class HostBalancer implements Balancer {
     private final File hostsPath;
     private final boolean exceed134217727;
     private final ConcurrentHashMap<String, HostQueue> queues;
-    private final Set<String> roundRobinHostHashes;
+    private final HostScheduler scheduler; // the order in which the hosts are crawled
     private final int onDemandLimit;
 
     /**
@@ -106,7 +108,7 @@ public class HostBalancer implements Balancer {
         // create a stack for newly entered entries
         if (!(hostsPath.exists())) hostsPath.mkdirs(); // make the path
         this.queues = new ConcurrentHashMap<>();
-        this.roundRobinHostHashes = new HashSet<>();
+        this.scheduler = new HostScheduler();
         this.init(asyncInit); // return without wait but starts a thread to fill the queues
     }
 
@@ -144,6 +146,7 @@ public class HostBalancer implements Balancer {
                     FileUtils.deletedelete(queuePath);
                 } else {
                     this.queues.put(queue.getHostHash(), queue);
+                    this.schedule(queue, null);
                 }
             } catch (MalformedURLException | RuntimeException e) {
                 log.warn("delete queue due to init error for " + this.hostsPath.getName() + " host=" + hoststr + " " + e.getLocalizedMessage());
@@ -161,6 +164,7 @@ public class HostBalancer implements Balancer {
         }
         for (final HostQueue queue: this.queues.values()) queue.close();
         this.queues.clear();
+        this.scheduler.clear();
     }
 
     @Override
@@ -170,6 +174,7 @@ public class HostBalancer implements Balancer {
         }
         for (final HostQueue queue: this.queues.values()) queue.clear();
         this.queues.clear();
+        this.scheduler.clear();
     }
 
     @Override
@@ -299,12 +304,91 @@ public class HostBalancer implements Balancer {
                 queue = new HostQueue(this.hostsPath, entry.url(), this.queues.size() > this.onDemandLimit, this.exceed134217727);
                 this.queues.put(hosthash, queue);
                 // profile might be null when continue crawls after YaCy restart
-                robots.ensureExist(entry.url(), profile == null ? ClientIdentification.yacyInternetCrawlerAgent : profile.getAgent(), true); // concurrently load all robots.txt
+                if (robots != null) robots.ensureExist(entry.url(), profile == null ? ClientIdentification.yacyInternetCrawlerAgent : profile.getAgent(), true); // concurrently load all robots.txt
+                final String error = queue.push(entry, profile, robots);
+                this.schedule(queue, robots);
+                return error;
             }
             return queue.push(entry, profile, robots);
         }
     }
 
+    /**
+     * push a batch of requests. The requests are grouped by host, so each host queue is locked and written once
+     * for all its requests, and a new host queue is created and scheduled once.
+     * @param entries
+     * @param profile
+     * @param robots may be null if the robots.txt of new hosts shall not be loaded
+     * @return for each entry null if it was pushed or a string with an error message
+     * @throws IOException
+     * @throws SpaceExceededException
+     */
+    @Override
+    public String[] push(final List<Request> entries, final CrawlProfile profile, final RobotsTxt robots) throws IOException, SpaceExceededException {
+        final String[] result = new String[entries.size()];
+        final Map<String, List<Integer>> hosts = new LinkedHashMap<>();
+        for (int i = 0; i < result.length; i++) {
+            final Request entry = entries.get(i);
+            if (this.has(entry.url().hash())) {
+                result[i] = "double occurrence";
+                continue;
+            }
+            depthCache.put(entry.url().hash(), entry.depth());
+            hosts.computeIfAbsent(entry.url().hosthash(), k -> new ArrayList<>()).add(i);
+        }
+        for (final Map.Entry<String, List<Integer>> host: hosts.entrySet()) {
+            final List<Integer> positions = host.getValue();
+            final List<Request> batch = new ArrayList<>(positions.size());
+            for (final Integer i: positions) batch.add(entries.get(i));
+            String[] errors;
+            HostQueue queue = this.queues.get(host.getKey());
+            if (queue != null) {
+                errors = queue.push(batch, profile, robots);
+            } else synchronized (this) {
+                queue = this.queues.get(host.getKey());
+                if (queue == null) {
+                    final Request first = batch.get(0);
+                    queue = new HostQueue(this.hostsPath, first.url(), this.queues.size() > this.onDemandLimit, this.exceed134217727);
+                    this.queues.put(host.getKey(), queue);
+                    if (robots != null) robots.ensureExist(first.url(), profile == null ? ClientIdentification.yacyInternetCrawlerAgent : profile.getAgent(), true); // concurrently load all robots.txt
+                    errors = queue.push(batch, profile, robots);
+                    this.schedule(queue, robots);
+                } else {
+                    errors = queue.push(batch, profile, robots);
+                }
+            }
+            for (int j = 0; j < errors.length; j++) result[positions.get(j)] = errors[j];
+        }
+        return result;
+    }
+
+    /**
+     * schedule a host queue with the guessed remaining waiting time of its host
+     * @param queue
+     * @param robots may be null if the robots.txt shall not be considered
+     */
+    private void schedule(final HostQueue queue, final RobotsTxt robots) {
+        final int waiting = Latency.waitingRemainingGuessed(queue.getHost(), queue.getPort(), queue.getHostHash(), robots, ClientIdentification.yacyInternetCrawlerAgent);
+        this.scheduler.schedule(queue.getHostHash(), waiting, queue.size(), System.currentTimeMillis());
+    }
+
+    /**
+     * schedule all queues that have no slot. This happens if all scheduled hosts are crawled at the moment by other
+     * threads; then these threads may crawl the same host, like with the round-robin selection before, and the
+     * crawl-delay is kept by HostQueue.pop()
+     * @return true if any queue was scheduled
+     */
+    private synchronized boolean reschedule(final RobotsTxt robots) {
+        boolean scheduled = false;
+        for (final HostQueue queue: this.queues.values()) {
+            if (!this.scheduler.isScheduled(queue.getHostHash()) && !queue.isEmpty()) {
+                this.schedule(queue, robots);
+                scheduled = true;
+            }
+        }
+        return scheduled;
+    }
+
     /**
      * get the next entry in this crawl queue in such a way that the domain access time delta is maximized
      * and always above the given minimum delay time. In case the minimum time cannot ensured, this method pauses
@@ -319,197 +403,29 @@ public class HostBalancer implements Balancer {
     @Override
     public Request pop(final boolean delay, final CrawlSwitchboard cs, final RobotsTxt robots) throws IOException {
         tryagain: while (true) try {
-            HostQueue rhq = null;
-            String rhh = null;
-
-            synchronized (this) {
-                if (this.roundRobinHostHashes.size() == 0) {
-                    // refresh the round-robin cache
-                    this.roundRobinHostHashes.addAll(this.queues.keySet());
-                    // quickly get rid of small stacks to reduce number of files:
-                    // remove all stacks with more than 10 entries
-                    // this shall kick out small stacks to prevent that too many files are opened for very wide crawls
-                    boolean smallStacksExist = false;
-                    boolean singletonStacksExist = false;
-                    smallsearch: for (final String s: this.roundRobinHostHashes) {
-                        final HostQueue hq = this.queues.get(s);
-                        if (hq != null) {
-                            final int size = hq.size();
-                            if (size ==  1) {singletonStacksExist = true; break smallsearch;}
-                            if (size <= 10) {smallStacksExist = true; break smallsearch;}
-                        }
-                    }
-                    final ArrayList<String> freshhosts = new ArrayList<>();
-                    final ArrayList<String> removehosts = new ArrayList<>();
-                    final Iterator<String> i = this.roundRobinHostHashes.iterator();
-                    smallstacks: while (i.hasNext()) {
-                        if (this.roundRobinHostHashes.size() <= 10) break smallstacks; // don't shrink the hosts until nothing is left
-                        final String hosthash = i.next();
-                        final HostQueue hq = this.queues.get(hosthash);
-                        if (hq == null) {removehosts.add(hosthash); i.remove(); continue smallstacks;}
-                        final int delta = Latency.waitingRemainingGuessed(hq.getHost(), hq.getPort(), hosthash, robots, ClientIdentification.yacyInternetCrawlerAgent);
-                        if (delta == Integer.MIN_VALUE) {
-                            // never-crawled hosts; we do not want to have too many of them in here. Loading new hosts means: waiting for robots.txt to load
-                            freshhosts.add(hosthash);
-                            i.remove();
-                            continue smallstacks;
-                        }
-                        if (singletonStacksExist || smallStacksExist) {
-                            if (delta < 0) continue; // keep all non-waiting stacks; they are useful to speed up things
-                            // to protect all small stacks which have a fast throughput, remove all with long waiting time
-                            if (delta >= 1000) {removehosts.add(hosthash); i.remove(); continue smallstacks;}
-                            final int size = hq.size();
-                            if (singletonStacksExist) {
-                                if (size != 1) {removehosts.add(hosthash); i.remove(); continue smallstacks;} // remove all non-singletons
-                            } else /*smallStacksExist*/ {
-                                if (size > 10) {removehosts.add(hosthash); i.remove(); continue smallstacks;} // remove all large stacks
-                            }
-                        }
-                    }
-
-                    // shuffle the lists
-                    final Random r = new Random();
-
-                    // put at least one of the fresh hosts back
-                    if (freshhosts.size() > 0) this.roundRobinHostHashes.add(freshhosts.remove(r.nextInt(freshhosts.size())));
-                    // fill up so we can have at least 100 domains in the queue
-                    while (this.roundRobinHostHashes.size() < 100 && removehosts.size() > 0) {
-                        this.roundRobinHostHashes.add(removehosts.remove(r.nextInt(removehosts.size())));
-                    }
-                    while (this.roundRobinHostHashes.size() < 100 && freshhosts.size() > 0) {
-                        this.roundRobinHostHashes.add(freshhosts.remove(r.nextInt(freshhosts.size())));
-                    }
-
-                    // result
-                    if (this.roundRobinHostHashes.size() == 1) {
-                        if (log.isFine()) log.fine("(re-)initialized the round-robin queue with one host");
-                    } else {
-                        log.info("(re-)initialized the round-robin queue; " + this.roundRobinHostHashes.size() + " hosts.");
-                    }
-                }
-                if (this.roundRobinHostHashes.size() == 0) return null;
-
-                // if the queue size is 1, just take that
-                if (this.roundRobinHostHashes.size() == 1) {
-                    rhh = this.roundRobinHostHashes.iterator().next();
-                    rhq = this.queues.get(rhh);
-                }
-
-                if (rhq == null) {
-                    // mixed minimum sleep time / largest queue strategy:
-                    // create a map of sleep time / queue relations with a fuzzy sleep time (ms / 500).
-                    // if the entry with the smallest sleep time contains at least two entries,
-                    // then the larger one from these queues are selected.
-                    final TreeMap<Integer, List<String>> fastTree = new TreeMap<>();
-                    mixedstrategy: for (final String h: this.roundRobinHostHashes) {
-                        final HostQueue hq = this.queues.get(h);
-                        if (hq != null) {
-                            int delta = Latency.waitingRemainingGuessed(hq.getHost(), hq.getPort(), h, robots, ClientIdentification.yacyInternetCrawlerAgent) / 200;
-                            if (delta < 0) delta = 0;
-                            List<String> queueHashes = fastTree.get(delta);
-                            if (queueHashes == null) {
-                                queueHashes = new ArrayList<>(2);
-                                fastTree.put(delta, queueHashes);
-                            }
-                            queueHashes.add(h);
-                            // check stop criteria
-                            final List<String> firstEntries = fastTree.firstEntry().getValue();
-                            if (firstEntries.size() > 1) {
-                                // select larger queue from that list
-                                int largest = Integer.MIN_VALUE;
-                                for (final String hh: firstEntries) {
-                                    final HostQueue hhq = this.queues.get(hh);
-                                    if (hhq != null) {
-                                        final int s = hhq.size();
-                                        if (s > largest) {
-                                            largest = s;
-                                            rhh = hh;
-                                        }
-                                    }
-                                }
-                                rhq = this.queues.get(rhh);
-                                break mixedstrategy;
-                            }
-                        }
-                    }
-                    if (rhq == null && fastTree.size() > 0) {
-                        // it may be possible that the lowest entry never has more than one queues assigned
-                        // in this case just take the smallest entry
-                        final List<String> firstEntries = fastTree.firstEntry().getValue();
-                        assert firstEntries.size() == 1;
-                        rhh = firstEntries.get(0);
-                        rhq = this.queues.get(rhh);
-                    }
-                    // to prevent that the complete roundrobinhosthashes are taken for each round, we remove the entries from the top of the fast queue
-                    final List<String> lastEntries = fastTree.size() > 0 ? fastTree.lastEntry().getValue() : null;
-                    if (lastEntries != null) {
-                        for (final String h: lastEntries) this.roundRobinHostHashes.remove(h);
-                    }
-                }
-
-                /*
-                // first strategy: get one entry which does not need sleep time
-                Iterator<String> nhhi = this.roundRobinHostHashes.iterator();
-                nosleep: while (nhhi.hasNext()) {
-                    rhh = nhhi.next();
-                    rhq = this.queues.get(rhh);
-                    if (rhq == null) {
-                        nhhi.remove();
-                        continue nosleep;
+            // take the host which may be accessed first; it is out of the schedule until its url is popped
+            final String rhh = this.scheduler.poll();
+            if (rhh == null) {
+                if (this.reschedule(robots)) continue tryagain;
+                return null;
             }
-                    int delta = Latency.waitingRemainingGuessed(rhq.getHost(), rhh, robots, ClientIdentification.yacyInternetCrawlerAgent);
-                    if (delta <= 10 || this.roundRobinHostHashes.size() == 1 || rhq.size() == 1) {
-                        nhhi.remove();
-                        break nosleep;
-                    }
-                }
-                if (rhq == null) {
-                    // second strategy: take from the largest stack
-                    int largest = Integer.MIN_VALUE;
-                    for (String h: this.roundRobinHostHashes) {
-                        HostQueue hq = this.queues.get(h);
-                        if (hq != null) {
-                            int s = hq.size();
-                            if (s > largest) {
-                                largest = s;
-                                rhh = h;
-                            }
-                        }
-                    }
-                    rhq = this.queues.get(rhh);
-                }
-                */
-            }
-
-            if (rhq == null) {
-                this.roundRobinHostHashes.clear(); // force re-initialization
-                continue tryagain;
-            }
-            this.roundRobinHostHashes.remove(rhh); // prevent that the queue is used again
-            final long timestamp = System.currentTimeMillis();
-            final Request request = rhq.pop(delay, cs, robots); // this pop is outside of synchronization to prevent blocking of pushes
-            final long actualwaiting = System.currentTimeMillis() - timestamp;
-
-            if (actualwaiting > 1000) {
+            final HostQueue rhq = this.queues.get(rhh);
+            if (rhq == null) continue tryagain;
+            final Request request;
+            try {
+                request = rhq.pop(delay, cs, robots); // this pop is outside of synchronization to prevent blocking of pushes
+            } finally {
+                // schedule the host again with the waiting time after this access, also if the pop failed
+                boolean empty = false;
                 synchronized (this) {
-                    // to prevent that this occurs again, remove all stacks with positive delay times (which may be less after that waiting)
-                    final Iterator<String> i = this.roundRobinHostHashes.iterator();
-                    protectcheck: while (i.hasNext()) {
-                        if (this.roundRobinHostHashes.size() <= 3) break protectcheck; // don't shrink the hosts until nothing is left
-                        final String s = i.next();
-                        final HostQueue hq = this.queues.get(s);
-                        if (hq == null) {i.remove(); continue protectcheck;}
-                        final int delta = Latency.waitingRemainingGuessed(hq.getHost(), hq.getPort(), s, robots, ClientIdentification.yacyInternetCrawlerAgent);
-                        if (delta >= 0) {i.remove();}
+                    if (rhq.isEmpty()) {
+                        this.queues.remove(rhh);
+                        empty = true;
+                    } else {
+                        this.schedule(rhq, robots);
                     }
                 }
-            }
-
-            if (rhq.isEmpty()) {
-                synchronized (this) {
-                    this.queues.remove(rhh);
-                }
-                rhq.close();
+                if (empty) rhq.close();
             }
             if (request == null) continue tryagain;
             return request;
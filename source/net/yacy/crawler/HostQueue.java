@@ -454,6 +454,27 @@ public class HostQueue implements Balancer {
         return null;
     }
 
+    /**
+     * push a batch of requests of this host; the queue is locked once and each depth stack is appended with all its requests
+     */
+    @Override
+    public String[] push(final List<Request> entries, final CrawlProfile profile, final RobotsTxt robots) throws IOException, SpaceExceededException {
+        final String[] result = new String[entries.size()];
+        final int maxPages = profile == null ? Integer.MAX_VALUE : profile.domMaxPages();
+        synchronized (this) {
+            for (int i = 0; i < result.length; i++) {
+                final Request entry = entries.get(i);
+                if (this.has(entry.url().hash())) {
+                    result[i] = "double occurrence in urlFileIndex";
+                    continue;
+                }
+                if (maxPages != Integer.MAX_VALUE && maxPages > 0) profile.domInc(entry.url().getHost());
+                this.getStack(entry.depth()).put(entry.toRow());
+            }
+        }
+        return result;
+    }
+
 
     @Override
     public Request pop(final boolean delay, final CrawlSwitchboard cs, final RobotsTxt robots) throws IOException {
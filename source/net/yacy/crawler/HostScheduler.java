@@ -0,0 +1,154 @@
+/**
+ *  HostScheduler
+ *  SPDX-FileCopyrightText: 2026 by the YaCy contributors
+ *  SPDX-License-Identifier: GPL-2.0-or-later
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.crawler;
+
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The order in which the host queues of a HostBalancer are crawled.
+ * Every host that is not just being crawled has a slot with the time when it may be accessed again,
+ * which is computed from the politeness delay, the crawl-delay of the robots.txt and the observed latency
+ * of the host (see Latency.waitingRemainingGuessed). The slots are held in a concurrent skip list, so the
+ * next host is taken and a host is scheduled again in O(log n) without a lock on the balancer, whatever
+ * number of hosts is in the queue.
+ *
+ * Hosts that may be accessed within the same DUESTEP are ordered like the round-robin selection did before:
+ * stacks with a single url first and then small stacks, to keep the number of open queue files small,
+ * then the larger stacks before the smaller ones. Hosts that were never accessed come last in their step,
+ * because their robots.txt has to be loaded first.
+ * A slot is not updated when urls are pushed to its host; it is computed again when the host was crawled.
+ */
+public class HostScheduler {
+
+    /**
+     * the resolution of the access times in milliseconds: hosts which may be accessed within the same step are ordered by their stack size
+     */
+    public static final long DUESTEP = 200;
+
+    private static final int SINGLETON = 0, SMALL = 1, LARGE = 2, FRESH = 3;
+
+    private final ConcurrentSkipListSet<Slot> slots;
+    private final ConcurrentHashMap<String, Slot> scheduled; // the current slot of each scheduled host
+    private final AtomicLong sequence;
+
+    public HostScheduler() {
+        this.slots = new ConcurrentSkipListSet<>(new Comparator<Slot>() {
+            @Override
+            public int compare(final Slot s1, final Slot s2) {
+                if (s1.step != s2.step) return s1.step < s2.step ? -1 : 1;
+                if (s1.kind != s2.kind) return s1.kind - s2.kind;
+                if (s1.size != s2.size) return s1.size > s2.size ? -1 : 1; // larger stacks first
+                return Long.compare(s1.sequence, s2.sequence);
+            }
+        });
+        this.scheduled = new ConcurrentHashMap<>();
+        this.sequence = new AtomicLong(0);
+    }
+
+    private static class Slot {
+        private final String hosthash;
+        private final long step;
+        private final int kind;
+        private final int size;
+        private final long sequence;
+        private Slot(final String hosthash, final long step, final int kind, final int size, final long sequence) {
+            this.hosthash = hosthash;
+            this.step = step;
+            this.kind = kind;
+            this.size = size;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * schedule a host; a slot that the host has already is replaced
+     * @param hosthash the host hash of the queue
+     * @param waiting the remaining waiting time in milliseconds until the host may be accessed again, as returned
+     *   by Latency.waitingRemainingGuessed(); negative if the host may be accessed now, Integer.MIN_VALUE if the host was never accessed
+     * @param size the number of urls in the queue of the host
+     * @param now the current time in milliseconds
+     */
+    public void schedule(final String hosthash, final int waiting, final int size, final long now) {
+        final boolean fresh = waiting == Integer.MIN_VALUE;
+        final long due = now + (fresh ? 0 : Math.max(0, waiting));
+        final int kind = fresh ? FRESH : size == 1 ? SINGLETON : size <= 10 ? SMALL : LARGE;
+        final Slot slot = new Slot(hosthash, due / DUESTEP, kind, size, this.sequence.incrementAndGet());
+        this.scheduled.compute(hosthash, (h, old) -> {
+            if (old != null) this.slots.remove(old);
+            this.slots.add(slot);
+            return slot;
+        });
+    }
+
+    /**
+     * take the host that shall be crawled next out of the schedule. The host may still have to wait until it
+     * can be accessed, if no other host can be accessed earlier. The caller must schedule the host again after
+     * it was crawled, unless its queue is empty.
+     * @return the host hash or null if no host is scheduled
+     */
+    public String poll() {
+        while (true) {
+            final Slot slot = this.slots.pollFirst();
+            if (slot == null) return null;
+            if (this.scheduled.remove(slot.hosthash, slot)) return slot.hosthash;
+            // the slot was replaced concurrently; the new slot is still in the schedule
+        }
+    }
+
+    /**
+     * @param hosthash
+     * @return true if the host has a slot
+     */
+    public boolean isScheduled(final String hosthash) {
+        return this.scheduled.containsKey(hosthash);
+    }
+
+    /**
+     * remove the slot of a host
+     * @param hosthash
+     */
+    public void remove(final String hosthash) {
+        this.scheduled.computeIfPresent(hosthash, (h, old) -> {
+            this.slots.remove(old);
+            return null;
+        });
+    }
+
+    /**
+     * @return the number of scheduled hosts
+     */
+    public int size() {
+        return this.scheduled.size();
+    }
+
+    public boolean isEmpty() {
+        return this.scheduled.isEmpty();
+    }
+
+    public void clear() {
+        this.scheduled.clear();
+        this.slots.clear();
+    }
+
+}
@@ -242,6 +242,13 @@ public class LegacyBalancer implements Balancer {
      * @throws IOException
      * @throws SpaceExceededException
      */
+    @Override
+    public String[] push(final List<Request> entries, final CrawlProfile profile, final RobotsTxt robots) throws IOException, SpaceExceededException {
+        final String[] result = new String[entries.size()];
+        for (int i = 0; i < result.length; i++) result[i] = this.push(entries.get(i), profile, robots);
+        return result;
+    }
+
     @Override
     public String push(final Request entry, CrawlProfile profile, final RobotsTxt robots) throws IOException, SpaceExceededException {
         assert entry != null;
@@ -33,6 +33,7 @@ import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -57,6 +58,7 @@ import net.yacy.cora.protocol.ConnectionInfo;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.crawler.HarvestProcess;
 import net.yacy.crawler.data.NoticedURL.StackType;
+import net.yacy.crawler.retrieval.AsyncHTTPLoader;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.retrieval.Response;
 import net.yacy.crawler.robots.RobotsTxtEntry;
@@ -65,6 +67,7 @@ import net.yacy.peers.DHTSelection;
 import net.yacy.peers.Protocol;
 import net.yacy.peers.Seed;
 import net.yacy.repository.Blacklist.BlacklistType;
+import net.yacy.repository.LoaderDispatcher;
 import net.yacy.search.IndexingQueueEntry;
 import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
@@ -79,6 +82,8 @@ public class CrawlQueues {
     private final Switchboard sb;
     private final Loader[] worker;
     private final ArrayBlockingQueue<Request> workerQueue;
+    private final AsyncHTTPLoader asyncLoader; // null if the loader threads load the http resources themselves
+    private final Map<DigestURL, Request> inFlight; // requests which are loaded by the asyncLoader
     private ArrayList<String> remoteCrawlProviderHashes;
 
     public  NoticedURL noticeURL;
@@ -94,12 +99,27 @@ public class CrawlQueues {
         /* We initialize workerQueue with the same capacity as worker array, because this same queue 
          * will be used to send POISON_REQUEST items consumed by all eventually running workers in the close() function*/
         this.workerQueue = new ArrayBlockingQueue<Request>(maxWorkers);
+        this.inFlight = new ConcurrentHashMap<DigestURL, Request>();
+        AsyncHTTPLoader asyncLoader = null;
+        if (sb.getConfigBool(SwitchboardConstants.CRAWLER_HTTP_ASYNC, SwitchboardConstants.CRAWLER_HTTP_ASYNC_DEFAULT)) {
+            try {
+                asyncLoader = new AsyncHTTPLoader(
+                        sb.getConfigInt(SwitchboardConstants.CRAWLER_HTTP_ASYNC_MAXINFLIGHT, 1000),
+                        sb.getConfigInt(SwitchboardConstants.CRAWLER_HTTP_ASYNC_MAXPERHOST, 2),
+                        sb.getConfigInt("crawler.clientTimeout", 30000));
+                log.config("Started non-blocking http loader");
+            } catch (final IOException e) {
+                log.warn("cannot start non-blocking http loader, using loader threads: " + e.getMessage());
+            }
+        }
+        this.asyncLoader = asyncLoader;
         this.remoteCrawlProviderHashes = null;
 
         // start crawling management
         log.config("Starting Crawling Management");
         log.config("Opening noticeURL..");
         this.noticeURL = new NoticedURL(queuePath, sb.getConfigInt("crawler.onDemandLimit", 1000), sb.exceed134217727);
+        Latency.open(new File(queuePath, Latency.FILE_NAME), sb.getConfigInt(SwitchboardConstants.CRAWLER_LATENCY_MAXHOSTS, Latency.DEFAULT_MAXHOSTS));
         log.config("Opening errorURL..");
         this.errorURL = new ErrorCache(sb);
         log.config("Opening delegatedURL..");
@@ -129,6 +149,8 @@ public class CrawlQueues {
         if (this.remoteCrawlProviderHashes != null) this.remoteCrawlProviderHashes.clear();
         this.noticeURL.close();
         this.noticeURL = new NoticedURL(newQueuePath, sb.getConfigInt("crawler.onDemandLimit", 1000), this.sb.exceed134217727);
+        Latency.snapshot();
+        Latency.open(new File(newQueuePath, Latency.FILE_NAME), this.sb.getConfigInt(SwitchboardConstants.CRAWLER_LATENCY_MAXHOSTS, Latency.DEFAULT_MAXHOSTS));
         if (this.delegatedURL != null) this.delegatedURL.clear();
     }
 
@@ -157,6 +179,8 @@ public class CrawlQueues {
                 }
             }
         }
+        if (this.asyncLoader != null) this.asyncLoader.close();
+        Latency.snapshot();
         if (this.delegatedURL != null) this.delegatedURL.clear();
     }
 
@@ -189,6 +213,35 @@ public class CrawlQueues {
         return null;
     }
     
+    /**
+     * collect the url hashes of all loader entries, to check many urls with exists(hash, activeWorkerHashes)
+     * @return the url hashes
+     */
+    public Set<String> activeWorkerHashes() {
+        final Set<String> hashes = new HashSet<String>();
+        for (final DigestURL url: activeWorkerEntries().keySet()) {
+            hashes.add(ASCII.String(url.hash()));
+        }
+        return hashes;
+    }
+
+    /**
+     * like exists(hash), but the loader entries are given as a set of url hashes that was collected before
+     * @param hash
+     * @param activeWorkerHashes the result of activeWorkerHashes()
+     * @return the process which has the url or null
+     */
+    public HarvestProcess exists(final byte[] hash, final Set<String> activeWorkerHashes) {
+        final String h = ASCII.String(hash);
+        if (this.delegatedURL != null && this.delegatedURL.containsKey(h)) {
+            return HarvestProcess.DELEGATED;
+        }
+        if (activeWorkerHashes.contains(h)) {
+            return HarvestProcess.WORKER;
+        }
+        return null;
+    }
+
     /**
      * count the number of same host names in the worker
      * @param host
@@ -259,6 +312,7 @@ public class CrawlQueues {
                     if (r != null) map.put(r.url(), r);
                 }
             }
+            map.putAll(this.inFlight);
             return map;
         }
     }
@@ -383,6 +437,8 @@ public class CrawlQueues {
                 } else {
                     if (!activeWorkerEntries().containsKey(urlEntry.url())) {
                         try {
+                            final URLSeenFilter urlSeen = this.sb.index.urlSeen();
+                            if (urlSeen != null) urlSeen.add(urlEntry.url().hash()); // before the entry is visible to exists()
                             ensureLoaderRunning();
                             this.workerQueue.put(urlEntry);
                         } catch (InterruptedException e) {
@@ -747,44 +803,22 @@ public class CrawlQueues {
                         } else {
                             // starting a load from the internet
                             request.setStatus("worker-loading", WorkflowJob.STATUS_RUNNING);
-                            String error = null;
-   
-                            // load a resource and push queue entry to switchboard queue
-                            // returns null if everything went fine, a fail reason string if a problem occurred
-                            try {
-                                request.setStatus("loading", WorkflowJob.STATUS_RUNNING);
-                                final Response response = CrawlQueues.this.sb.loader.load(request, profile == null ? CacheStrategy.IFEXIST : profile.cacheStrategy(), BlacklistType.CRAWLER, profile.getAgent());
-                                if (response == null) {
-                                    request.setStatus("error", WorkflowJob.STATUS_FINISHED);
-                                    if (CrawlQueues.log.isFine()) {
-                                        CrawlQueues.log.fine("problem loading " + request.url().toString() + ": no content (possibly caused by cache policy)");
-                                    }
-                                    error = "no content (possibly caused by cache policy)";
-                                } else {
-                                    request.setStatus("loaded", WorkflowJob.STATUS_RUNNING);
-                                    final String storedFailMessage = CrawlQueues.this.sb.toIndexer(response);
-                                    request.setStatus("enqueued-" + ((storedFailMessage == null) ? "ok" : "fail"), WorkflowJob.STATUS_FINISHED);
-                                    error = (storedFailMessage == null) ? null : "not enqueued to indexer: " + storedFailMessage;
-                                }
-                            } catch (final IOException e) {
-                                request.setStatus("error", WorkflowJob.STATUS_FINISHED);
-                                if (CrawlQueues.log.isFine()) {
-                                    CrawlQueues.log.fine("problem loading " + request.url().toString() + ": " + e.getMessage());
-                                }
-                                error = "load error - " + e.getMessage();
-                            }
-   
-                            if (error != null) {
-                                if (error.endsWith("$")) {
-                                    // the "$" mark at the end of the error message means, that the error was already pushed to the error-db by the reporting method
-                                    // thus we only push this message if we don't have that mark
-                                    error = error.substring(0, error.length() - 1).trim();
-                                } else {
-                                    CrawlQueues.this.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "cannot load: " + error, -1);
-                                }
-                                request.setStatus("worker-error", WorkflowJob.STATUS_FINISHED);
+                            request.setStatus("loading", WorkflowJob.STATUS_RUNNING);
+                            final CacheStrategy cacheStrategy = profile == null ? CacheStrategy.IFEXIST : profile.cacheStrategy();
+                            if (CrawlQueues.this.asyncLoader != null) {
+                                // hand the request over to the non-blocking loader; the response is processed when it arrives
+                                loadAsync(request, profile, cacheStrategy);
                             } else {
-                                request.setStatus("worker-processed", WorkflowJob.STATUS_FINISHED);
+                                // load a resource and push queue entry to switchboard queue
+                                // returns null if everything went fine, a fail reason string if a problem occurred
+                                String error;
+                                try {
+                                    final Response response = CrawlQueues.this.sb.loader.load(request, cacheStrategy, BlacklistType.CRAWLER, profile.getAgent());
+                                    error = index(request, response);
+                                } catch (final IOException e) {
+                                    error = loadError(request, e);
+                                }
+                                finish(request, profile, error);
                             }
                         }
                     } catch (final Exception e) {
@@ -800,5 +834,76 @@ public class CrawlQueues {
                 ConcurrentLog.logException(e2);
             }
         }
+
+        private void loadAsync(final Request request, final CrawlProfile profile, final CacheStrategy cacheStrategy) throws InterruptedException {
+            final DigestURL url = request.url(); // a redirect may change the url of the request
+            CrawlQueues.this.inFlight.put(url, request);
+            try {
+                CrawlQueues.this.sb.loader.loadAsync(request, cacheStrategy, BlacklistType.CRAWLER, profile.getAgent(), CrawlQueues.this.asyncLoader, new LoaderDispatcher.ResponseListener() {
+
+                    @Override
+                    public void loaded(final Response response) {
+                        try {
+                            finish(request, profile, index(request, response));
+                        } finally {
+                            CrawlQueues.this.inFlight.remove(url);
+                        }
+                    }
+
+                    @Override
+                    public void failed(final IOException e) {
+                        try {
+                            finish(request, profile, loadError(request, e));
+                        } finally {
+                            CrawlQueues.this.inFlight.remove(url);
+                        }
+                    }
+                });
+            } catch (final InterruptedException e) {
+                CrawlQueues.this.inFlight.remove(url);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * push a loaded response to the indexer
+     * @return null if everything went fine, a fail reason string if a problem occurred
+     */
+    private String index(final Request request, final Response response) {
+        if (response == null) {
+            request.setStatus("error", WorkflowJob.STATUS_FINISHED);
+            if (CrawlQueues.log.isFine()) {
+                CrawlQueues.log.fine("problem loading " + request.url().toString() + ": no content (possibly caused by cache policy)");
+            }
+            return "no content (possibly caused by cache policy)";
+        }
+        request.setStatus("loaded", WorkflowJob.STATUS_RUNNING);
+        final String storedFailMessage = this.sb.toIndexer(response);
+        request.setStatus("enqueued-" + ((storedFailMessage == null) ? "ok" : "fail"), WorkflowJob.STATUS_FINISHED);
+        return (storedFailMessage == null) ? null : "not enqueued to indexer: " + storedFailMessage;
+    }
+
+    private String loadError(final Request request, final IOException e) {
+        request.setStatus("error", WorkflowJob.STATUS_FINISHED);
+        if (CrawlQueues.log.isFine()) {
+            CrawlQueues.log.fine("problem loading " + request.url().toString() + ": " + e.getMessage());
+        }
+        return "load error - " + e.getMessage();
+    }
+
+    private void finish(final Request request, final CrawlProfile profile, String error) {
+        if (error != null) {
+            if (error.endsWith("$")) {
+                // the "$" mark at the end of the error message means, that the error was already pushed to the error-db by the reporting method
+                // thus we only push this message if we don't have that mark
+                error = error.substring(0, error.length() - 1).trim();
+            } else {
+                this.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "cannot load: " + error, -1);
+            }
+            request.setStatus("worker-error", WorkflowJob.STATUS_FINISHED);
+        } else {
+            request.setStatus("worker-processed", WorkflowJob.STATUS_FINISHED);
+        }
     }
 }
@@ -24,28 +24,77 @@
 
 package net.yacy.crawler.data;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.document.id.MultiProtocolURL;
 import net.yacy.cora.federate.yacy.CacheStrategy;
 import net.yacy.cora.protocol.ClientIdentification;
+import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.crawler.robots.RobotsTxt;
 import net.yacy.crawler.robots.RobotsTxtEntry;
-import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
 
 
 public class Latency {
 
-    // the map is a mapping from host names to host configurations
-    private static final int mapMaxSize = 1000;
-    private static final ConcurrentHashMap<String, Host> map = new ConcurrentHashMap<>();
+    public static final int DEFAULT_MAXHOSTS = 100000;
+    public static final String FILE_NAME = "latency.dump";
+
+    private final static ConcurrentLog log = new ConcurrentLog("LATENCY");
+
+    // the store holds the statistics of the hosts, mapped from their host hashes
+    private static volatile LatencyStore store = new LatencyStore(DEFAULT_MAXHOSTS);
+    private static File storeFile = null;
+
+    /**
+     * replace the host statistics with those in the given file, if it exists, and write them to that file with snapshot()
+     * @param file the dump of the host statistics
+     * @param maxHosts the maximum number of hosts in the store
+     */
+    public static synchronized void open(final File file, final int maxHosts) {
+        final LatencyStore s = new LatencyStore(maxHosts);
+        if (file.exists()) {
+            try {
+                final int c = s.read(file);
+                log.info("loaded " + c + " host latency entries from " + file);
+            } catch (final IOException e) {
+                log.warn("cannot read host latency dump " + file + ": " + e.getMessage());
+            }
+        }
+        store = s;
+        storeFile = file;
+    }
+
+    /**
+     * write the host statistics to the file given with open() if they have changed
+     */
+    public static synchronized void snapshot() {
+        if (storeFile == null || !store.changed()) return;
+        try {
+            store.write(storeFile);
+        } catch (final IOException e) {
+            log.warn("cannot write host latency dump " + storeFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * find all hosts which may be accessed again before the given time. This computes the waiting time from the
+     * stored statistics only, without the robots.txt database and the loader queue, and without any lock on the hosts.
+     * @param time the time in milliseconds
+     * @param agent the crawler agent
+     * @return the host hashes
+     */
+    public static List<String> dueBefore(final long time, final ClientIdentification.Agent agent) {
+        return store.dueBefore(time, agent.minimumDelta, Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.CRAWLER_LATENCY_FACTOR, 0.5f));
+    }
 
     /**
      * update the latency entry after a host was selected for queueing into the loader
@@ -56,11 +105,8 @@ public class Latency {
         final String host = url.getHost();
         if (host == null) return;
         final String hosthash = url.hosthash();
-        Host h = map.get(hosthash);
-        if (h == null) {
-            h = new Host(host, Switchboard.getSwitchboard().getConfigInt("crawler.defaultAverageLatency", 500), robotsCrawlDelay);
-            if (map.size() > mapMaxSize || MemoryControl.shortStatus()) map.clear();
-            map.put(hosthash, h);
+        if (store.slot(hosthash) < 0) {
+            store.put(hosthash, host, Switchboard.getSwitchboard().getConfigInt("crawler.defaultAverageLatency", 500), (int) robotsCrawlDelay);
         }
     }
 
@@ -73,13 +119,11 @@ public class Latency {
         final String host = url.getHost();
         if (host == null) return;
         final String hosthash = url.hosthash();
-        Host h = map.get(hosthash);
-        if (h == null) {
-            h = new Host(host, 500, 0);
-            if (map.size() > mapMaxSize || MemoryControl.shortStatus()) map.clear();
-            map.put(hosthash, h);
+        final int slot = store.slot(hosthash);
+        if (slot < 0) {
+            store.put(hosthash, host, 500, 0);
         } else {
-            h.update();
+            store.touch(slot);
         }
     }
 
@@ -92,24 +136,36 @@ public class Latency {
         final String host = url.getHost();
         if (host == null) return;
         final String hosthash = url.hosthash();
-        Host h = map.get(hosthash);
-        if (h == null) {
-            h = new Host(host, time, 0);
-            if (map.size() > mapMaxSize || MemoryControl.shortStatus()) map.clear();
-            map.put(hosthash, h);
+        final int slot = store.slot(hosthash);
+        if (slot < 0) {
+            store.put(hosthash, host, time, 0);
         } else {
-            h.update(time);
+            store.update(slot, time);
         }
     }
 
     private static Host host(final DigestURL url) {
         final String host = url.getHost();
         if (host == null) return null;
-        return map.get(url.hosthash());
+        return host(url.hosthash());
+    }
+
+    private static Host host(final String hosthash) {
+        final LatencyStore s = store;
+        final int slot = s.slot(hosthash);
+        if (slot < 0) return null;
+        return new Host(s, slot);
     }
 
     public static Iterator<Map.Entry<String, Host>> iterator() {
-        return map.entrySet().iterator();
+        final LatencyStore s = store;
+        final List<Map.Entry<String, Host>> hosts = new ArrayList<>(s.size());
+        final int slots = s.slots();
+        for (int slot = 0; slot < slots; slot++) {
+            final String hosthash = s.hosthash(slot);
+            if (hosthash != null) hosts.add(new AbstractMap.SimpleImmutableEntry<>(hosthash, new Host(s, slot)));
+        }
+        return hosts.iterator();
     }
 
     /**
@@ -150,7 +206,7 @@ public class Latency {
     public static int waitingRemainingGuessed(final String hostname, final int port, final String hosthash, final RobotsTxt robots, final ClientIdentification.Agent agent) {
 
         // first check if the domain was _ever_ accessed before
-        final Host host = map.get(hosthash);
+        final Host host = host(hosthash);
         if (host == null) return Integer.MIN_VALUE; // no delay if host is new; use Integer because there is a cast to int somewhere
 
         // find the minimum waiting time based on the network domain (local or global)
@@ -301,42 +357,30 @@ public class Latency {
         return sleeptime < 0 ? 0 : sleeptime;
     }
 
+    /**
+     * the statistics of a host at the time when they were read from the store
+     */
     public static final class Host {
-        private final AtomicLong timeacc;
-        private final AtomicLong lastacc;
-        private final AtomicInteger count;
+        private final int average;
+        private final long lastacc;
+        private final int count;
         private final String host;
         private final long robotsMinDelay;
-        private Host(final String host, final long time, long robotsMinDelay) {
-            this.host = host;
-            this.timeacc = new AtomicLong(time);
-            this.count = new AtomicInteger(1);
-            this.lastacc = new AtomicLong(System.currentTimeMillis());
-            this.robotsMinDelay = robotsMinDelay;
-        }
-        private void update(final long time) {
-            if (this.count.get() > 100) {
-                synchronized(this) {
-                    // faster adoption to new values
-                    this.timeacc.set(this.timeacc.get() / this.count.get());
-                    this.count.set(1);
-                }
-            }
-            this.lastacc.set(System.currentTimeMillis());
-            this.timeacc.addAndGet(Math.min(30000, time));
-            this.count.incrementAndGet();
-        }
-        private void update() {
-            this.lastacc.set(System.currentTimeMillis());
+        private Host(final LatencyStore store, final int slot) {
+            this.host = store.host(slot);
+            this.average = store.average(slot);
+            this.count = store.count(slot);
+            this.lastacc = store.lastacc(slot);
+            this.robotsMinDelay = store.robotsDelay(slot);
         }
         public int count() {
-            return this.count.get();
+            return this.count;
         }
         public int average() {
-            return (int) (this.timeacc.get() / this.count.get());
+            return this.average;
         }
         public long lastacc() {
-            return this.lastacc.get();
+            return this.lastacc;
         }
         public String host() {
             return this.host;
@@ -351,7 +395,7 @@ public class Latency {
          * @return the additional delay in ms (max: range div 2)
          */
         public int flux(final int range) {
-            return this.count.get() >= 10000 ? range >> 1 : (range * this.count.get() / 10000) >> 1;
+            return this.count >= 10000 ? range >> 1 : (range * this.count / 10000) >> 1;
         }
     }
 
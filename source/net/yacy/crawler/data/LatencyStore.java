@@ -0,0 +1,320 @@
+// LatencyStore.java
+// -----------------
+// SPDX-FileCopyrightText: 2026 by the YaCy contributors
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.crawler.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The host statistics of the Latency class: access latency, access count, last access time and robots.txt delay
+ * of each host that the crawler has accessed. The values are held in primitive arrays with one slot for each host,
+ * and a map from the host hash to the slot. The number of hosts is bounded; if the store is full, a host is evicted
+ * with the CLOCK algorithm, which approximates least recently used with one reference bit for each slot.
+ * All values can be read without a lock; only the allocation of a slot is synchronized.
+ * The store can be written to a file and read again, so the politeness state survives a restart.
+ */
+public final class LatencyStore {
+
+    private static final int MAGIC = 0x4C617431; // "Lat1"
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, Integer> index; // mapping from host hashes to slots
+    private final AtomicReferenceArray<String> hosthashes, hosts;
+    private final AtomicLongArray timeacc, lastacc;
+    private final AtomicIntegerArray count, robotsDelay;
+    private final byte[] referenced; // the CLOCK bits; a lost update only changes which host is evicted
+    private volatile int size; // the number of slots in use, only changed while synchronized
+    private int hand; // guarded by this
+    private volatile boolean changed;
+
+    /**
+     * @param capacity the maximum number of hosts
+     */
+    public LatencyStore(final int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.index = new ConcurrentHashMap<>();
+        this.hosthashes = new AtomicReferenceArray<>(this.capacity);
+        this.hosts = new AtomicReferenceArray<>(this.capacity);
+        this.timeacc = new AtomicLongArray(this.capacity);
+        this.lastacc = new AtomicLongArray(this.capacity);
+        this.count = new AtomicIntegerArray(this.capacity);
+        this.robotsDelay = new AtomicIntegerArray(this.capacity);
+        this.referenced = new byte[this.capacity];
+        this.size = 0;
+        this.hand = 0;
+        this.changed = false;
+    }
+
+    /**
+     * @param hosthash
+     * @return the slot of the host or -1 if the host is not in the store
+     */
+    public int slot(final String hosthash) {
+        final Integer slot = this.index.get(hosthash);
+        if (slot == null) return -1;
+        final int s = slot.intValue();
+        if (!hosthash.equals(this.hosthashes.get(s))) return -1; // evicted concurrently
+        this.referenced[s] = 1;
+        return s;
+    }
+
+    /**
+     * get the slot of a host; the host is added if it is not in the store
+     * @param hosthash
+     * @param host the host name
+     * @param time the first access latency
+     * @param robotsDelay the crawl-delay of the robots.txt
+     * @return the slot of the host
+     */
+    public int put(final String hosthash, final String host, final long time, final int robotsDelay) {
+        final int s = slot(hosthash);
+        if (s >= 0) return s;
+        return add(hosthash, host, time, robotsDelay, 1, System.currentTimeMillis());
+    }
+
+    private synchronized int add(final String hosthash, final String host, final long time, final int robotsDelay, final int count, final long lastacc) {
+        final Integer existing = this.index.get(hosthash);
+        if (existing != null) return existing.intValue();
+        final int s;
+        if (this.size < this.capacity) {
+            s = this.size++;
+        } else {
+            // CLOCK: move the hand to the next slot which was not referenced since the hand passed it the last time
+            while (this.referenced[this.hand] != 0) {
+                this.referenced[this.hand] = 0;
+                this.hand = (this.hand + 1) % this.capacity;
+            }
+            s = this.hand;
+            this.hand = (this.hand + 1) % this.capacity;
+            this.index.remove(this.hosthashes.get(s));
+        }
+        this.hosthashes.set(s, null); // readers of the evicted host see that the slot is gone
+        this.hosts.set(s, host);
+        this.timeacc.set(s, time * count);
+        this.count.set(s, count);
+        this.lastacc.set(s, lastacc);
+        this.robotsDelay.set(s, robotsDelay);
+        this.referenced[s] = 1;
+        this.hosthashes.set(s, hosthash);
+        this.index.put(hosthash, s);
+        this.changed = true;
+        return s;
+    }
+
+    /**
+     * record an access to a host with its latency
+     * @param slot
+     * @param time the time to load a file in milliseconds
+     */
+    public void update(final int slot, final long time) {
+        final int c = this.count.get(slot);
+        if (c > 100) {
+            // faster adoption to new values
+            this.timeacc.set(slot, this.timeacc.get(slot) / c);
+            this.count.set(slot, 1);
+        }
+        this.lastacc.set(slot, System.currentTimeMillis());
+        this.timeacc.addAndGet(slot, Math.min(30000, time));
+        this.count.incrementAndGet(slot);
+        this.changed = true;
+    }
+
+    /**
+     * record an access to a host without latency
+     * @param slot
+     */
+    public void touch(final int slot) {
+        this.lastacc.set(slot, System.currentTimeMillis());
+        this.changed = true;
+    }
+
+    public void setRobotsDelay(final int slot, final int robotsDelay) {
+        if (this.robotsDelay.getAndSet(slot, robotsDelay) != robotsDelay) this.changed = true;
+    }
+
+    public String hosthash(final int slot) {
+        return this.hosthashes.get(slot);
+    }
+
+    public String host(final int slot) {
+        return this.hosts.get(slot);
+    }
+
+    public int count(final int slot) {
+        return this.count.get(slot);
+    }
+
+    public int average(final int slot) {
+        final int c = this.count.get(slot);
+        return c == 0 ? 0 : (int) (this.timeacc.get(slot) / c);
+    }
+
+    public long lastacc(final int slot) {
+        return this.lastacc.get(slot);
+    }
+
+    public int robotsDelay(final int slot) {
+        return this.robotsDelay.get(slot);
+    }
+
+    /**
+     * @return the number of hosts in the store
+     */
+    public int size() {
+        return this.index.size();
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return the number of slots which are in use; a slot below this number may be empty while it is reassigned
+     */
+    public int slots() {
+        return this.size;
+    }
+
+    /**
+     * the earliest time when a host may be accessed again, computed like in Latency.waitingRemaining from the values
+     * in the store, but without the robots.txt database and the loader queue
+     * @param slot
+     * @param minimumDelta the minimum waiting time of the agent
+     * @param latencyFactor the factor which is applied to the average latency
+     * @return the time in milliseconds
+     */
+    public long due(final int slot, final int minimumDelta, final float latencyFactor) {
+        final int c = this.count.get(slot);
+        int waiting = minimumDelta + (c >= 10000 ? minimumDelta >> 1 : (minimumDelta * c / 10000) >> 1);
+        waiting = Math.max(waiting, (int) (average(slot) * latencyFactor));
+        waiting = Math.max(waiting, this.robotsDelay.get(slot));
+        return this.lastacc.get(slot) + waiting;
+    }
+
+    /**
+     * find all hosts which may be accessed before the given time. The slots are read without a lock,
+     * so hosts which are changed concurrently may be reported with their old or their new values.
+     * @param time the time in milliseconds
+     * @param minimumDelta the minimum waiting time of the agent
+     * @param latencyFactor the factor which is applied to the average latency
+     * @return the host hashes
+     */
+    public List<String> dueBefore(final long time, final int minimumDelta, final float latencyFactor) {
+        final List<String> due = new ArrayList<>();
+        final int slots = slots();
+        for (int s = 0; s < slots; s++) {
+            final String hosthash = this.hosthashes.get(s);
+            if (hosthash == null) continue;
+            if (due(s, minimumDelta, latencyFactor) < time) due.add(hosthash);
+        }
+        return due;
+    }
+
+    public synchronized void clear() {
+        this.index.clear();
+        for (int s = 0; s < this.size; s++) {
+            this.hosthashes.set(s, null);
+            this.hosts.set(s, null);
+            this.referenced[s] = 0;
+        }
+        this.size = 0;
+        this.hand = 0;
+        this.changed = true;
+    }
+
+    /**
+     * @return true if the store was changed since it was written or read the last time
+     */
+    public boolean changed() {
+        return this.changed;
+    }
+
+    /**
+     * write all hosts to a file. The file is written to a temporary file first and then renamed,
+     * so a crash during the write does not destroy the previous file.
+     * @param file
+     * @throws IOException
+     */
+    public void write(final File file) throws IOException {
+        this.changed = false;
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        final int slots = slots();
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536))) {
+            out.writeInt(MAGIC);
+            for (int s = 0; s < slots; s++) {
+                final String hosthash = this.hosthashes.get(s);
+                final String host = this.hosts.get(s);
+                if (hosthash == null || host == null) continue;
+                out.writeBoolean(true);
+                out.writeUTF(hosthash);
+                out.writeUTF(host);
+                out.writeInt(average(s));
+                out.writeInt(this.count.get(s));
+                out.writeLong(this.lastacc.get(s));
+                out.writeInt(this.robotsDelay.get(s));
+            }
+            out.writeBoolean(false);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * add the hosts from a file that was written with write(); hosts which are already in the store are not changed
+     * @param file
+     * @return the number of hosts which were read
+     * @throws IOException
+     */
+    public int read(final File file) throws IOException {
+        int c = 0;
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+            if (in.readInt() != MAGIC) throw new IOException("wrong file format: " + file);
+            while (in.readBoolean()) {
+                final String hosthash = in.readUTF();
+                final String host = in.readUTF();
+                final int average = in.readInt();
+                final int count = in.readInt();
+                final long lastacc = in.readLong();
+                final int robotsDelay = in.readInt();
+                if (count > 0) add(hosthash, host, average, robotsDelay, count, lastacc);
+                c++;
+            }
+        } catch (final EOFException e) {
+            // a truncated file: keep what was read
+        }
+        this.changed = false;
+        return c;
+    }
+
+}
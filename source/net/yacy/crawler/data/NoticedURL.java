@@ -30,6 +30,7 @@ package net.yacy.crawler.data;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -199,6 +200,37 @@ public class NoticedURL {
         }
     }
 
+    /**
+     * push a batch of requests of the same crawl profile onto a stack
+     * @return for each entry null if it was pushed or a string with the reason why it was not pushed
+     */
+    public String[] push(final StackType stackType, final List<Request> entries, final CrawlProfile profile, final RobotsTxt robots) {
+        try {
+            switch (stackType) {
+                case LOCAL:  return this.coreStack.push(entries, profile, robots);
+                case GLOBAL: return this.limitStack.push(entries, profile, robots);
+                case REMOTE: {
+                    if (this.remoteStack == null) {
+                        this.initRemoteStack();
+                    }
+                    if (this.remoteStack != null) return this.remoteStack.push(entries, profile, robots);
+                    return reasons(entries.size(), "remote crawler stack deactivated");
+                }
+                case NOLOAD: return this.noloadStack.push(entries, profile, robots);
+                default:     return reasons(entries.size(), "stack type unknown");
+            }
+        } catch (final Exception er) {
+            ConcurrentLog.logException(er);
+            return reasons(entries.size(), "error pushing onto the crawl stack: " + er.getMessage());
+        }
+    }
+
+    private static String[] reasons(final int size, final String reason) {
+        final String[] result = new String[size];
+        Arrays.fill(result, reason);
+        return result;
+    }
+
     protected Request get(final byte[] urlhash) {
         Request entry = null;
         try {if ((entry = this.noloadStack.get(urlhash)) != null) return entry;} catch (final IOException e) {}
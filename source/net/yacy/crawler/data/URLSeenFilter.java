@@ -0,0 +1,301 @@
+// URLSeenFilter.java
+// -----------------
+// SPDX-FileCopyrightText: 2026 by the YaCy contributors
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.crawler.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.yacy.kelondro.index.BloomFilter;
+
+/**
+ * A probabilistic set of the url hashes which the crawler has seen: the urls in the load time index, in the loader
+ * and delegated to other peers. The crawl stacker asks this filter first; only if it answers that an url may be known,
+ * the exact and more expensive double checks are done. A negative answer is always correct.
+ *
+ * The filter is sharded by the host hash of the urls, so the urls of one host are in the same shard and concurrent
+ * writers of different hosts do not wait for each other. Each shard is a scalable bloom filter: when the last layer
+ * is full, a new layer with twice the capacity and one more bit per key is added, so the false positive rate stays
+ * bounded when the crawl grows beyond the expected size. Keys cannot be removed, the filter only grows.
+ *
+ * A new filter is not ready: it answers that every url may be known until it was filled with rebuild(),
+ * so urls which are known to the index but not yet to the filter are never stacked twice.
+ */
+public final class URLSeenFilter {
+
+    private static final int MAGIC = 0x55536631; // "USf1"
+
+    /**
+     * a scalable bloom filter; the layers are replaced as a whole, so readers need no lock
+     */
+    private static final class Shard {
+
+        private volatile BloomFilter[] layers;
+        private int capacity; // the number of keys of the last layer, guarded by this
+        private int count; // the number of keys in the last layer, guarded by this
+
+        private Shard(final BloomFilter[] layers, final int capacity, final int count) {
+            this.layers = layers;
+            this.capacity = capacity;
+            this.count = count;
+        }
+
+        private boolean mightContain(final byte[] key) {
+            for (final BloomFilter layer: this.layers) if (layer.mightContain(key)) return true;
+            return false;
+        }
+
+        private synchronized boolean add(final byte[] key, final int bitsPerKey) {
+            if (mightContain(key)) return false;
+            if (this.count >= this.capacity) {
+                final BloomFilter[] layers = new BloomFilter[this.layers.length + 1];
+                System.arraycopy(this.layers, 0, layers, 0, this.layers.length);
+                this.capacity *= 2;
+                layers[this.layers.length] = new BloomFilter(this.capacity, bitsPerKey + this.layers.length);
+                this.layers = layers;
+                this.count = 0;
+            }
+            this.layers[this.layers.length - 1].add(key);
+            this.count++;
+            return true;
+        }
+
+        private double falsePositiveRate() {
+            double p = 1.0d;
+            for (final BloomFilter layer: this.layers) p *= 1.0d - layer.falsePositiveRate();
+            return 1.0d - p;
+        }
+    }
+
+    private final Shard[] shards;
+    private final int bitsPerKey;
+    private volatile boolean ready;
+    private final LongAdder size, queries, negatives, unconfirmed;
+
+    /**
+     * create an empty filter which is not ready
+     * @param shardCount the number of shards
+     * @param expectedKeys the number of keys until the first layers are full
+     * @param bitsPerKey the number of bits per key of the first layers; 10 bits result in a false positive rate of about 1%
+     */
+    public URLSeenFilter(final int shardCount, final int expectedKeys, final int bitsPerKey) {
+        this.shards = new Shard[Math.max(1, shardCount)];
+        this.bitsPerKey = Math.max(1, bitsPerKey);
+        final int capacity = Math.max(64, expectedKeys / this.shards.length);
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new Shard(new BloomFilter[]{new BloomFilter(capacity, this.bitsPerKey)}, capacity, 0);
+        }
+        this.ready = false;
+        this.size = new LongAdder();
+        this.queries = new LongAdder();
+        this.negatives = new LongAdder();
+        this.unconfirmed = new LongAdder();
+    }
+
+    private URLSeenFilter(final Shard[] shards, final int bitsPerKey, final long size) {
+        this.shards = shards;
+        this.bitsPerKey = bitsPerKey;
+        this.ready = true;
+        this.size = new LongAdder();
+        this.size.add(size);
+        this.queries = new LongAdder();
+        this.negatives = new LongAdder();
+        this.unconfirmed = new LongAdder();
+    }
+
+    /**
+     * the shard of an url hash is computed from the host hash, the last six characters of the url hash
+     */
+    private Shard shard(final byte[] urlhash) {
+        int h = 0;
+        for (int i = urlhash.length >= 12 ? 6 : 0; i < urlhash.length; i++) h = 31 * h + urlhash[i];
+        h ^= h >>> 16;
+        return this.shards[(h & Integer.MAX_VALUE) % this.shards.length];
+    }
+
+    /**
+     * add an url hash to the filter
+     * @param urlhash
+     */
+    public void add(final byte[] urlhash) {
+        if (urlhash == null) return;
+        if (shard(urlhash).add(urlhash, this.bitsPerKey)) this.size.increment();
+    }
+
+    /**
+     * test if an url hash may have been seen
+     * @param urlhash
+     * @return false if the url hash was definitely not added, true if it may have been added or if the filter is not ready
+     */
+    public boolean mightContain(final byte[] urlhash) {
+        if (!this.ready) return true;
+        this.queries.increment();
+        if (shard(urlhash).mightContain(urlhash)) return true;
+        this.negatives.increment();
+        return false;
+    }
+
+    /**
+     * count a positive answer of mightContain() that the exact checks did not confirm
+     */
+    public void unconfirmed() {
+        this.unconfirmed.increment();
+    }
+
+    /**
+     * add all keys of an iterator, like the keys of the load time index, and make the filter ready.
+     * The filter can be used concurrently while it is rebuilt; keys which were added before stay in the filter.
+     * @param keys the url hashes
+     * @return the number of keys which were new to the filter
+     */
+    public long rebuild(final Iterator<byte[]> keys) {
+        long c = 0;
+        while (keys.hasNext()) {
+            final byte[] urlhash = keys.next();
+            if (urlhash == null) continue;
+            if (shard(urlhash).add(urlhash, this.bitsPerKey)) {
+                this.size.increment();
+                c++;
+            }
+        }
+        this.ready = true;
+        return c;
+    }
+
+    /**
+     * @return true if the filter contains all urls of the index, false if it must still be rebuilt
+     */
+    public boolean isReady() {
+        return this.ready;
+    }
+
+    /**
+     * @return the number of url hashes in the filter; an url hash which was a false positive when it was added is not counted
+     */
+    public long size() {
+        return this.size.sum();
+    }
+
+    /**
+     * @return the number of bytes that are used by the filter
+     */
+    public long mem() {
+        long m = 0;
+        for (final Shard shard: this.shards) for (final BloomFilter layer: shard.layers) m += layer.mem();
+        return m;
+    }
+
+    /**
+     * the false positive rate that is computed from the share of set bits in the shards; the urls of the hosts
+     * are assumed to be evenly distributed over the shards
+     * @return the probability that mightContain() is true for an url hash which was not added
+     */
+    public double estimatedFalsePositiveRate() {
+        double p = 0.0d;
+        for (final Shard shard: this.shards) p += shard.falsePositiveRate();
+        return p / this.shards.length;
+    }
+
+    /**
+     * the rate of positive answers which were not confirmed by the exact checks, among all answers for urls
+     * that were not confirmed. This is an upper bound of the real false positive rate, because urls which
+     * were loaded with an error are in the filter but not in the index.
+     * @return the observed rate or 0 if there were no queries
+     */
+    public double observedFalsePositiveRate() {
+        final long u = this.unconfirmed.sum();
+        final long n = u + this.negatives.sum();
+        return n == 0 ? 0.0d : (double) u / (double) n;
+    }
+
+    /**
+     * @return the number of calls of mightContain() since the filter was ready
+     */
+    public long queries() {
+        return this.queries.sum();
+    }
+
+    /**
+     * @return the number of negative answers of mightContain()
+     */
+    public long negatives() {
+        return this.negatives.sum();
+    }
+
+    /**
+     * write the filter to a file. The file is written to a temporary file first and then renamed.
+     * @param file
+     * @throws IOException
+     */
+    public void write(final File file) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536))) {
+            out.writeInt(MAGIC);
+            out.writeInt(this.shards.length);
+            out.writeInt(this.bitsPerKey);
+            out.writeLong(this.size.sum());
+            for (final Shard shard: this.shards) {
+                synchronized (shard) {
+                    out.writeInt(shard.capacity);
+                    out.writeInt(shard.count);
+                    out.writeInt(shard.layers.length);
+                    for (final BloomFilter layer: shard.layers) layer.write(out);
+                }
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * read a filter from a file that was written with write(); the filter is ready
+     * @param file
+     * @return the filter
+     * @throws IOException if the file cannot be read or has not the right format
+     */
+    public static URLSeenFilter read(final File file) throws IOException {
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+            if (in.readInt() != MAGIC) throw new IOException("wrong file format: " + file);
+            final int shardCount = in.readInt();
+            final int bitsPerKey = in.readInt();
+            final long size = in.readLong();
+            if (shardCount < 1 || bitsPerKey < 1) throw new IOException("url seen filter " + file + " is corrupted");
+            final Shard[] shards = new Shard[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                final int capacity = in.readInt();
+                final int count = in.readInt();
+                final BloomFilter[] layers = new BloomFilter[in.readInt()];
+                if (layers.length < 1) throw new IOException("url seen filter " + file + " is corrupted");
+                for (int j = 0; j < layers.length; j++) layers[j] = BloomFilter.read(in);
+                shards[i] = new Shard(layers, capacity, count);
+            }
+            return new URLSeenFilter(shards, bitsPerKey, size);
+        }
+    }
+
+}
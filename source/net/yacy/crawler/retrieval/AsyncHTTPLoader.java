@@ -0,0 +1,245 @@
+// AsyncHTTPLoader.java
+// ---------------------------
+// SPDX-FileCopyrightText: 2026 by the YaCy contributors
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.crawler.retrieval;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import net.yacy.cora.document.id.MultiProtocolURL;
+import net.yacy.cora.protocol.HeaderFramework;
+import net.yacy.cora.protocol.ResponseHeader;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
+import net.yacy.kelondro.workflow.WorkflowProcessor;
+
+/**
+ * A non-blocking http fetch engine for the crawler.
+ * The requests are sent with the asynchronous jetty http client, which handles all connections with a few selector
+ * threads, so thousands of fetches can be in flight without a thread for each request. The number of connections to
+ * each host is limited; further requests to the same host wait in the queue of the client. The content is streamed
+ * into a buffer and the request is aborted as soon as the content exceeds the maximum file size.
+ * Finished fetches are handed to the listeners in a small pool of delivery threads, so a listener that blocks does not
+ * stall the threads of the http client. A request keeps its slot until its listener has returned, so the number of
+ * fetched responses that wait for their delivery is bounded as well.
+ * Redirects are not followed, they are handled by the caller like in HTTPLoader.
+ */
+public final class AsyncHTTPLoader implements Closeable {
+
+    /**
+     * receives the result of a fetch. The methods are called from the delivery threads of the engine, not from
+     * the threads of the http client; they may block, i.e. while a queue of the indexer is full.
+     */
+    public interface Listener {
+
+        /**
+         * @param statusCode the http status code
+         * @param reason the reason phrase of the status
+         * @param responseHeader the response header
+         * @param content the decoded content, may be empty
+         */
+        public void loaded(int statusCode, String reason, ResponseHeader responseHeader, byte[] content);
+
+        /**
+         * @param e the cause of the failure
+         */
+        public void failed(IOException e);
+    }
+
+    private final HttpClient client;
+    private final Semaphore slots;
+    private final int maxInFlight;
+    private final ThreadPoolExecutor delivery; // calls the listeners
+
+    /**
+     * create and start the engine
+     * @param maxInFlight the maximum number of requests which are in flight at the same time
+     * @param maxConnectionsPerHost the maximum number of connections to the same host
+     * @param timeout the connect and idle timeout in milliseconds
+     * @throws IOException if the http client cannot be started
+     */
+    public AsyncHTTPLoader(final int maxInFlight, final int maxConnectionsPerHost, final int timeout) throws IOException {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.slots = new Semaphore(this.maxInFlight);
+        final SslContextFactory.Client ssl = new SslContextFactory.Client(true); // like HTTPClient, the crawler accepts all certificates
+        ssl.setEndpointIdentificationAlgorithm(null);
+        this.client = new HttpClient(ssl);
+        final QueuedThreadPool executor = new QueuedThreadPool(64, 4);
+        executor.setName("AsyncHTTPLoader");
+        executor.setDaemon(true);
+        this.client.setExecutor(executor);
+        this.client.setMaxConnectionsPerDestination(Math.max(1, maxConnectionsPerHost));
+        this.client.setMaxRequestsQueuedPerDestination(this.maxInFlight);
+        this.client.setFollowRedirects(false); // we want to handle redirection ourselves, so we don't index pages twice
+        this.client.setConnectTimeout(timeout);
+        this.client.setIdleTimeout(timeout);
+        this.client.setUserAgentField(null); // the agent is sent with the request header
+        final int deliveryThreads = Math.max(2, WorkflowProcessor.availableCPU);
+        this.delivery = new ThreadPoolExecutor(deliveryThreads, deliveryThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamePrefixThreadFactory("AsyncHTTPLoader.delivery"));
+        this.delivery.allowCoreThreadTimeOut(true);
+        try {
+            this.client.start();
+        } catch (final Exception e) {
+            throw new IOException("cannot start http client: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * start a fetch; blocks if the maximum number of requests is in flight until one of them has finished
+     * @param url the url to load
+     * @param requestHeader the request header; the accept-encoding is chosen by the http client
+     * @param maxFileSize the maximum size of the content, -1 for no limit
+     * @param listener receives the response or the failure; it is called exactly once, unless this throws an exception
+     * @throws InterruptedException if the caller is interrupted while waiting for a free slot
+     */
+    public void load(final MultiProtocolURL url, final Map<String, String> requestHeader, final int maxFileSize, final Listener listener) throws InterruptedException {
+        this.slots.acquire();
+        send(url, requestHeader, maxFileSize, listener, true);
+    }
+
+    /**
+     * start a fetch which continues a fetch inside a listener, like a redirect. This does not wait for a free slot,
+     * because the slots are held by the responses that wait for the delivery threads; a listener that waits for a
+     * slot could block all delivery threads.
+     * @param url the url to load
+     * @param requestHeader the request header; the accept-encoding is chosen by the http client
+     * @param maxFileSize the maximum size of the content, -1 for no limit
+     * @param listener receives the response or the failure; it is called exactly once
+     */
+    public void loadFollowUp(final MultiProtocolURL url, final Map<String, String> requestHeader, final int maxFileSize, final Listener listener) {
+        send(url, requestHeader, maxFileSize, listener, false);
+    }
+
+    private void send(final MultiProtocolURL url, final Map<String, String> requestHeader, final int maxFileSize, final Listener listener, final boolean slot) {
+        final org.eclipse.jetty.client.api.Request request;
+        try {
+            request = this.client.newRequest(url.toNormalform(false));
+            for (final Map.Entry<String, String> entry: requestHeader.entrySet()) {
+                if (HeaderFramework.ACCEPT_ENCODING.equalsIgnoreCase(entry.getKey())) continue;
+                request.header(entry.getKey(), entry.getValue());
+            }
+        } catch (final RuntimeException e) {
+            if (slot) this.slots.release();
+            listener.failed(new IOException("bad request for " + url.toNormalform(false) + ": " + e.getMessage(), e));
+            return;
+        }
+        request.send(new Response.Listener.Adapter() {
+
+            private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+            @Override
+            public void onHeaders(final Response response) {
+                final long length = response.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH.asString());
+                if (maxFileSize >= 0 && length > maxFileSize) {
+                    response.abort(new IOException("file size '" + length + "' exceeds max filesize limit of " + maxFileSize + " bytes"));
+                }
+            }
+
+            @Override
+            public void onContent(final Response response, final ByteBuffer buffer) {
+                final int length = buffer.remaining();
+                if (maxFileSize >= 0 && this.content.size() + length > maxFileSize) {
+                    response.abort(new IOException("file size exceeds max filesize limit of " + maxFileSize + " bytes"));
+                    return;
+                }
+                if (buffer.hasArray()) {
+                    this.content.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+                    buffer.position(buffer.limit());
+                } else {
+                    final byte[] b = new byte[length];
+                    buffer.get(b);
+                    this.content.write(b, 0, length);
+                }
+            }
+
+            @Override
+            public void onComplete(final Result result) {
+                try {
+                    AsyncHTTPLoader.this.delivery.execute(() -> {
+                        try {
+                            deliver(result);
+                        } finally {
+                            if (slot) AsyncHTTPLoader.this.slots.release();
+                        }
+                    });
+                } catch (final RejectedExecutionException e) {
+                    // the engine is closed
+                    if (slot) AsyncHTTPLoader.this.slots.release();
+                }
+            }
+
+            private void deliver(final Result result) {
+                if (result.isFailed()) {
+                    final Throwable failure = result.getFailure();
+                    listener.failed(failure instanceof IOException ? (IOException) failure : new IOException(failure.getMessage(), failure));
+                    return;
+                }
+                final Response response = result.getResponse();
+                final ResponseHeader responseHeader = new ResponseHeader(response.getStatus());
+                final String encoding = response.getHeaders().get(HttpHeader.CONTENT_ENCODING);
+                final boolean decoded = encoding != null && encoding.toLowerCase(Locale.ROOT).contains("gzip");
+                for (final HttpField field: response.getHeaders()) {
+                    // the http client decodes gzip content, so encoding and length of the transfer do not apply any more
+                    if (decoded && (field.getHeader() == HttpHeader.CONTENT_ENCODING || field.getHeader() == HttpHeader.CONTENT_LENGTH)) continue;
+                    responseHeader.add(field.getName(), field.getValue());
+                }
+                listener.loaded(response.getStatus(), response.getReason(), responseHeader, this.content.toByteArray());
+            }
+        });
+    }
+
+    /**
+     * @return the number of requests which are in flight
+     */
+    public int inFlight() {
+        return this.maxInFlight - this.slots.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.client.stop();
+        } catch (final Exception e) {
+            // the client is gone anyway
+        }
+        this.delivery.shutdown();
+    }
+
+}
@@ -31,7 +31,9 @@ import java.io.InputStream;
 import java.util.Locale;
 
 import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
 import org.apache.http.StatusLine;
+import org.apache.http.message.BasicStatusLine;
 
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.federate.solr.FailCategory;
@@ -50,6 +52,7 @@ import net.yacy.crawler.data.Latency;
 import net.yacy.kelondro.io.ByteCount;
 import net.yacy.kelondro.util.Formatter;
 import net.yacy.repository.Blacklist.BlacklistType;
+import net.yacy.repository.LoaderDispatcher;
 import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
 import net.yacy.server.http.AlternativeDomainNames;
@@ -328,6 +331,105 @@ public final class HTTPLoader {
 
     private Response load(final Request request, CrawlProfile profile, final int retryCount, final int maxFileSize, final BlacklistType blacklistType, final ClientIdentification.Agent agent) throws IOException {
 
+        final DigestURL url = targetURL(request, profile, retryCount, blacklistType);
+
+        // create a request header
+        final RequestHeader requestHeader = createRequestheader(request, agent);
+
+        // HTTP-Client
+        try (final HTTPClient client = new HTTPClient(agent)) {
+            client.setRedirecting(false); // we want to handle redirection ourselves, so we don't index pages twice
+            client.setTimout(this.socketTimeout);
+            client.setHeader(requestHeader.entrySet());
+
+            // send request
+            final byte[] responseBody = client.GETbytes(url, this.sb.getConfig(SwitchboardConstants.ADMIN_ACCOUNT_USER_NAME, "admin"), this.sb.getConfig(SwitchboardConstants.ADMIN_ACCOUNT_B64MD5, ""), maxFileSize, false);
+            final StatusLine statusline = client.getHttpResponse().getStatusLine();
+            final ResponseHeader responseHeader = new ResponseHeader(statusline.getStatusCode(), client.getHttpResponse().getAllHeaders());
+            final Response response = evaluate(request, profile, url, requestHeader, statusline, responseHeader, responseBody, maxFileSize);
+            if (response != null) return response;
+        }
+
+        // retry crawling with the redirect url
+        return load(request, profile, retryCount - 1, maxFileSize, blacklistType, agent);
+    }
+
+    /**
+     * Load a resource with the non-blocking fetch engine. The response is handled like in
+     * {@link #load(Request, CrawlProfile, int, BlacklistType, ClientIdentification.Agent)} and handed to the listener
+     * from the threads of the engine. Authentication against the own peer is not supported, so requests to localhost
+     * must use the blocking loader.
+     * @param engine the fetch engine
+     * @param request the request essentials
+     * @param profile crawl profile
+     * @param maxFileSize max file size to load. -1 means no limit.
+     * @param blacklistType blacklist type to use
+     * @param agent agent identifier
+     * @param listener receives the response or the failure
+     * @throws InterruptedException when interrupted while waiting for a free slot of the engine
+     */
+    public void load(final AsyncHTTPLoader engine, final Request request, final CrawlProfile profile, final int maxFileSize, final BlacklistType blacklistType,
+            final ClientIdentification.Agent agent, final LoaderDispatcher.ResponseListener listener) throws InterruptedException {
+        Latency.updateBeforeLoad(request.url());
+        load(engine, request, profile, DEFAULT_CRAWLING_RETRY_COUNT, maxFileSize, blacklistType, agent, System.currentTimeMillis(), true, listener);
+    }
+
+    private void load(final AsyncHTTPLoader engine, final Request request, final CrawlProfile profile, final int retryCount, final int maxFileSize,
+            final BlacklistType blacklistType, final ClientIdentification.Agent agent, final long start, final boolean first,
+            final LoaderDispatcher.ResponseListener listener) throws InterruptedException {
+        final DigestURL url;
+        final RequestHeader requestHeader;
+        try {
+            url = targetURL(request, profile, retryCount, blacklistType);
+            requestHeader = createRequestheader(request, agent);
+        } catch (final IOException e) {
+            listener.failed(e);
+            return;
+        }
+        final AsyncHTTPLoader.Listener evaluator = new AsyncHTTPLoader.Listener() {
+
+            @Override
+            public void loaded(final int statusCode, final String reason, final ResponseHeader responseHeader, final byte[] content) {
+                final Response response;
+                try {
+                    final StatusLine statusline = new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, reason);
+                    response = evaluate(request, profile, url, requestHeader, statusline, responseHeader, content, maxFileSize);
+                } catch (final IOException e) {
+                    listener.failed(e);
+                    return;
+                }
+                if (response != null) {
+                    Latency.updateAfterLoad(request.url(), System.currentTimeMillis() - start);
+                    listener.loaded(response);
+                    return;
+                }
+                // retry crawling with the redirect url
+                try {
+                    load(engine, request, profile, retryCount - 1, maxFileSize, blacklistType, agent, start, false, listener);
+                } catch (final InterruptedException e) {
+                    listener.failed(new IOException("interrupted while loading " + request.url().toNormalform(false)));
+                }
+            }
+
+            @Override
+            public void failed(final IOException e) {
+                listener.failed(e);
+            }
+        };
+        if (first) {
+            engine.load(url, requestHeader, maxFileSize, evaluator);
+        } else {
+            engine.loadFollowUp(url, requestHeader, maxFileSize, evaluator);
+        }
+    }
+
+    /**
+     * Check a request before it is loaded.
+     * @return the url to load, with resolved yacy domains
+     * @throws IOException when the request is rejected
+     */
+    private DigestURL targetURL(final Request request, final CrawlProfile profile, final int retryCount, final BlacklistType blacklistType) throws IOException {
+
         if (retryCount < 0) {
             this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "retry counter exceeded", -1);
             throw new IOException("retry counter exceeded for URL " + request.url().toString() + ". Processing aborted.$");
@@ -338,9 +440,6 @@ public final class HTTPLoader {
         final String host = url.getHost();
         if (host == null || host.length() < 2) throw new IOException("host is not well-formed: '" + host + "'");
         final String path = url.getFile();
-        int port = url.getPort();
-        final boolean ssl = url.getProtocol().equals("https");
-        if (port < 0) port = (ssl) ? 443 : 80;
 
         // check if url is in blacklist
         final String hostlow = host.toLowerCase(Locale.ROOT);
@@ -357,99 +456,91 @@ public final class HTTPLoader {
                 url = new DigestURL(url.getProtocol() + "://" + yAddress + path);
             }
         }
+        return url;
+    }
 
-        // take a file from the net
-        Response response = null;
-
-        // create a request header
-        final RequestHeader requestHeader = createRequestheader(request, agent);
-
-        // HTTP-Client
-        try (final HTTPClient client = new HTTPClient(agent)) {
-            client.setRedirecting(false); // we want to handle redirection ourselves, so we don't index pages twice
-            client.setTimout(this.socketTimeout);
-            client.setHeader(requestHeader.entrySet());
-
-            // send request
-            final byte[] responseBody = client.GETbytes(url, this.sb.getConfig(SwitchboardConstants.ADMIN_ACCOUNT_USER_NAME, "admin"), this.sb.getConfig(SwitchboardConstants.ADMIN_ACCOUNT_B64MD5, ""), maxFileSize, false);
-            final int statusCode = client.getHttpResponse().getStatusLine().getStatusCode();
-            final ResponseHeader responseHeader = new ResponseHeader(statusCode, client.getHttpResponse().getAllHeaders());
-            String requestURLString = request.url().toNormalform(true);
-
-            // check redirection
-            if (statusCode > 299 && statusCode < 310) {
-
-                final DigestURL redirectionUrl = extractRedirectURL(request, profile, url, client.getHttpResponse().getStatusLine(),
-                        responseHeader, requestURLString);
-
-                if (this.sb.getConfigBool(SwitchboardConstants.CRAWLER_FOLLOW_REDIRECTS, true)) {
-                    // we have two use cases here: loading from a crawl or just loading the url. Check this:
-                    if (profile != null && !CrawlSwitchboard.DEFAULT_PROFILES.contains(profile.name())) {
-                        // put redirect url on the crawler queue to repeat a double-check
-                        /* We have to clone the request instance and not to modify directly its URL,
-                         * otherwise the stackCrawl() function would reject it, because detecting it as already in the activeWorkerEntries */
-                        Request redirectedRequest = new Request(request.initiator(),
-                                redirectionUrl,
-                                request.referrerhash(),
-                                request.name(),
-                                request.appdate(),
-                                request.profileHandle(),
-                                request.depth(),
-                                request.timezoneOffset());
-                        String rejectReason = this.sb.crawlStacker.stackCrawl(redirectedRequest);
-                        // in the end we must throw an exception (even if this is not an error, just to abort the current process
-                        if(rejectReason != null) {
-                            throw new IOException("CRAWLER Redirect of URL=" + requestURLString + " aborted. Reason : " + rejectReason);
-                        }
-                        throw new IOException("CRAWLER Redirect of URL=" + requestURLString + " to " + redirectionUrl.toNormalform(false) + " placed on crawler queue for double-check");
-                    }
-
-                    // if we are already doing a shutdown we don't need to retry crawling
-                    if (Thread.currentThread().isInterrupted()) {
-                        this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_LOAD_CONTEXT, "server shutdown", statusCode);
-                        throw new IOException("CRAWLER Redirect of URL=" + requestURLString + " aborted because of server shutdown.$");
+    /**
+     * Evaluate a loaded http response: redirects are placed on the crawler queue or followed,
+     * responses with other status codes than 200 and 203 or with too large content are rejected.
+     * @return the response, or null if the redirect url was set to the request and shall be loaded now
+     * @throws IOException when the response is rejected
+     */
+    private Response evaluate(final Request request, final CrawlProfile profile, final DigestURL url, final RequestHeader requestHeader,
+            final StatusLine statusline, final ResponseHeader responseHeader, final byte[] responseBody, final int maxFileSize) throws IOException {
+        final int statusCode = statusline.getStatusCode();
+        String requestURLString = request.url().toNormalform(true);
+
+        // check redirection
+        if (statusCode > 299 && statusCode < 310) {
+
+            final DigestURL redirectionUrl = extractRedirectURL(request, profile, url, statusline,
+                    responseHeader, requestURLString);
+
+            if (this.sb.getConfigBool(SwitchboardConstants.CRAWLER_FOLLOW_REDIRECTS, true)) {
+                // we have two use cases here: loading from a crawl or just loading the url. Check this:
+                if (profile != null && !CrawlSwitchboard.DEFAULT_PROFILES.contains(profile.name())) {
+                    // put redirect url on the crawler queue to repeat a double-check
+                    /* We have to clone the request instance and not to modify directly its URL,
+                     * otherwise the stackCrawl() function would reject it, because detecting it as already in the activeWorkerEntries */
+                    Request redirectedRequest = new Request(request.initiator(),
+                            redirectionUrl,
+                            request.referrerhash(),
+                            request.name(),
+                            request.appdate(),
+                            request.profileHandle(),
+                            request.depth(),
+                            request.timezoneOffset());
+                    String rejectReason = this.sb.crawlStacker.stackCrawl(redirectedRequest);
+                    // in the end we must throw an exception (even if this is not an error, just to abort the current process
+                    if(rejectReason != null) {
+                        throw new IOException("CRAWLER Redirect of URL=" + requestURLString + " aborted. Reason : " + rejectReason);
                     }
-
-                    // retry crawling with new url
-                    request.redirectURL(redirectionUrl);
-                    return load(request, profile, retryCount - 1, maxFileSize, blacklistType, agent);
+                    throw new IOException("CRAWLER Redirect of URL=" + requestURLString + " to " + redirectionUrl.toNormalform(false) + " placed on crawler queue for double-check");
                 }
-                // we don't want to follow redirects
-                this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_PROCESS_CONTEXT, "redirection not wanted", statusCode);
-                throw new IOException("REJECTED UNWANTED REDIRECTION '" + client.getHttpResponse().getStatusLine() + "' for URL '" + requestURLString + "'$");
-            } else if (responseBody == null) {
-                // no response, reject file
-                this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "no response body", statusCode);
-                throw new IOException("REJECTED EMPTY RESPONSE BODY '" + client.getHttpResponse().getStatusLine() + "' for URL '" + requestURLString + "'$");
-            } else if (statusCode == 200 || statusCode == 203) {
-                // the transfer is ok
-
-                // we write the new cache entry to file system directly
-                final long contentLength = responseBody.length;
-                ByteCount.addAccountCount(ByteCount.CRAWLER, contentLength);
 
-                // check length again in case it was not possible to get the length before loading
-                if (maxFileSize >= 0 && contentLength > maxFileSize) {
-                    this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_PROCESS_CONTEXT, "file size limit exceeded", statusCode);
-                    throw new IOException("REJECTED URL " + request.url() + " because file size '" + contentLength + "' exceeds max filesize limit of " + maxFileSize + " bytes. (GET)$");
+                // if we are already doing a shutdown we don't need to retry crawling
+                if (Thread.currentThread().isInterrupted()) {
+                    this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_LOAD_CONTEXT, "server shutdown", statusCode);
+                    throw new IOException("CRAWLER Redirect of URL=" + requestURLString + " aborted because of server shutdown.$");
                 }
 
-                // create a new cache entry
-                response = new Response(
-                        request,
-                        requestHeader,
-                        responseHeader,
-                        profile,
-                        false,
-                        responseBody
-                );
-
-                return response;
-            } else {
-                // if the response has not the right response type then reject file
-                this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "wrong http status code", statusCode);
-                throw new IOException("REJECTED WRONG STATUS TYPE '" + client.getHttpResponse().getStatusLine() + "' for URL '" + requestURLString + "'$");
+                // retry crawling with new url
+                request.redirectURL(redirectionUrl);
+                return null;
+            }
+            // we don't want to follow redirects
+            this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_PROCESS_CONTEXT, "redirection not wanted", statusCode);
+            throw new IOException("REJECTED UNWANTED REDIRECTION '" + statusline + "' for URL '" + requestURLString + "'$");
+        } else if (responseBody == null) {
+            // no response, reject file
+            this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "no response body", statusCode);
+            throw new IOException("REJECTED EMPTY RESPONSE BODY '" + statusline + "' for URL '" + requestURLString + "'$");
+        } else if (statusCode == 200 || statusCode == 203) {
+            // the transfer is ok
+
+            // we write the new cache entry to file system directly
+            final long contentLength = responseBody.length;
+            ByteCount.addAccountCount(ByteCount.CRAWLER, contentLength);
+
+            // check length again in case it was not possible to get the length before loading
+            if (maxFileSize >= 0 && contentLength > maxFileSize) {
+                this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_PROCESS_CONTEXT, "file size limit exceeded", statusCode);
+                throw new IOException("REJECTED URL " + request.url() + " because file size '" + contentLength + "' exceeds max filesize limit of " + maxFileSize + " bytes. (GET)$");
             }
+
+            // create a new cache entry
+            return new Response(
+                    request,
+                    requestHeader,
+                    responseHeader,
+                    profile,
+                    false,
+                    responseBody
+            );
+        } else {
+            // if the response has not the right response type then reject file
+            this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "wrong http status code", statusCode);
+            throw new IOException("REJECTED WRONG STATUS TYPE '" + statusline + "' for URL '" + requestURLString + "'$");
         }
     }
 
@@ -56,6 +56,7 @@ import net.yacy.cora.protocol.http.HTTPClient;
 import net.yacy.cora.storage.HandleSet;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.blob.BlockHeap;
 import net.yacy.kelondro.blob.Tables;
 import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.rwi.IndexCell;
@@ -92,7 +93,22 @@ public class WorkTables extends Tables {
 
 
     public WorkTables(final File workPath) {
-        super(workPath, 12);
+        this(workPath, null);
+    }
+
+    /**
+     * @param workPath the directory of the tables
+     * @param codec the compression of the table files, or null to keep the tables uncompressed
+     */
+    public WorkTables(final File workPath, final BlockHeap.Codec codec) {
+        super(workPath, 12, codec);
+        // the api table is searched by type and url
+        try {
+            createColumnIndex(TABLE_API_NAME, TABLE_API_COL_TYPE);
+            createColumnIndex(TABLE_API_NAME, TABLE_API_COL_URL);
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
     }
 
     /**
@@ -73,9 +73,10 @@ public final class Condenser extends Tokenizer {
             final WordCache meaningLib,
             final boolean doAutotagging,
             final boolean findDatesInContent,
-            final int timezoneOffset
+            final int timezoneOffset,
+            final boolean recordPositions
             ) {
-        super(document.dc_source(), indexText ? document.getTextString() : "", meaningLib, doAutotagging, scraper);
+        super(document.dc_source(), indexText ? document.getTextString() : "", meaningLib, doAutotagging, scraper, recordPositions);
 
         final String initialThreadName = Thread.currentThread().getName();
         Thread.currentThread().setName("condenser-" + document.dc_identifier()); // for debugging
@@ -277,6 +278,7 @@ public final class Condenser extends Tokenizer {
                 if (wprop == null) wprop = new Word(0, pip, phrase);
                 if (wprop.flags == null) wprop.flags = flagstemplate.clone();
                 wprop.flags.set(flagpos, true);
+                if (this.recordPositions) wprop.addPosition(Word.phrasePosition(phrase, pip));
                 this.words.put(word, wprop);
                 pip++;
                 this.RESULT_NUMB_WORDS++;
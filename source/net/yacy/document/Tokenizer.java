@@ -64,7 +64,18 @@ public class Tokenizer {
     public int RESULT_NUMB_SENTENCES = -1;
     public Bitfield RESULT_FLAGS = new Bitfield(4);
 
+    protected final boolean recordPositions; // record the positions of all occurrences of a word for the positional index
+
     public Tokenizer(final DigestURL root, final String text, final WordCache meaningLib, boolean doAutotagging, final VocabularyScraper scraper) {
+        this(root, text, meaningLib, doAutotagging, scraper, false);
+    }
+
+    /**
+     * @param recordPositions if true, the positions of all occurrences of each word are recorded, see Word.positions().
+     * This is only needed when the positional index is connected.
+     */
+    public Tokenizer(final DigestURL root, final String text, final WordCache meaningLib, boolean doAutotagging, final VocabularyScraper scraper, final boolean recordPositions) {
+        this.recordPositions = recordPositions;
         this.words = new TreeMap<String, Word>(NaturalOrder.naturalComparator);
         this.synonyms = new LinkedHashSet<String>();
         assert text != null;
@@ -128,6 +139,7 @@ public class Tokenizer {
                     wsp.flags = this.RESULT_FLAGS.clone();
                     this.words.put(word, wsp);
                 }
+                if (recordPositions && allwordcounter < (1 << Word.PHRASE_POSITION_BITS)) wsp.addPosition(allwordcounter);
                 // we now have the unique handle of the word, put it into the sentence:
                 wordInSentenceCounter++;
             }
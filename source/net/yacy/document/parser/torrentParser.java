@@ -128,7 +128,7 @@ public class torrentParser extends AbstractParser implements Parser {
             byte[] b = FileUtils.read(new File(args[0]));
             torrentParser parser = new torrentParser();
             Document[] d = parser.parse(new DigestURL("http://localhost/test.torrent"), null, StandardCharsets.UTF_8.name(), new VocabularyScraper(), 0, new ByteArrayInputStream(b));
-            Condenser c = new Condenser(d[0], null, true, true, LibraryProvider.dymLib, false, false, 0);
+            Condenser c = new Condenser(d[0], null, true, true, LibraryProvider.dymLib, false, false, 0, false);
             Map<String, Word> w = c.words();
             for (Map.Entry<String, Word> e: w.entrySet()) System.out.println("Word: " + e.getKey() + " - " + e.getValue().posInText);
         } catch (final IOException e) {
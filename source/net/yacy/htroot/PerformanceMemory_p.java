@@ -41,6 +41,7 @@ import net.yacy.kelondro.util.Formatter;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.search.Switchboard;
 import net.yacy.search.query.SearchEventCache;
+import net.yacy.search.query.SearchResultCache;
 import net.yacy.server.serverObjects;
 import net.yacy.server.serverSwitch;
 
@@ -216,6 +217,15 @@ public class PerformanceMemory_p {
         prop.putNum("searchevent.miss", SearchEventCache.cacheMiss);
         prop.putNum("searchevent.insert", SearchEventCache.cacheInsert);
         prop.putNum("searchevent.delete", SearchEventCache.cacheDelete);
+        prop.putNum("searchresult.size", SearchResultCache.size());
+        prop.putNum("searchresult.memory", SearchResultCache.memory() / 1024);
+        prop.putNum("searchresult.maxmemory", SearchResultCache.maxMemory() / 1024);
+        prop.putNum("searchresult.hit", SearchResultCache.cacheHit);
+        prop.putNum("searchresult.miss", SearchResultCache.cacheMiss);
+        prop.putNum("searchresult.hitrate", SearchResultCache.hitRate());
+        prop.putNum("searchresult.insert", SearchResultCache.cacheInsert);
+        prop.putNum("searchresult.delete", SearchResultCache.cacheDelete);
+        prop.putNum("searchresult.invalidate", SearchResultCache.cacheInvalidate);
         // return rewrite values for templates
         return prop;
     }
@@ -38,6 +38,7 @@ import net.yacy.cora.protocol.RequestHeader;
 import net.yacy.cora.protocol.http.HTTPClient;
 import net.yacy.data.TransactionManager;
 import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.rwi.IODispatcher;
 import net.yacy.kelondro.rwi.IndexCell;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.Formatter;
@@ -259,6 +260,17 @@ public class PerformanceQueues_p {
             if (rwi != null) rwi.setBufferMaxWordCount(wordCacheMaxCount);
         }
 
+        final IODispatcher merger = indexSegment.merger();
+        if ((post != null) && (post.containsKey("mergeSettingsSubmit"))) {
+            sb.setConfig(SwitchboardConstants.INDEX_MERGE_MAXPARALLEL, Math.max(1, post.getInt("mergeMaxParallel", SwitchboardConstants.INDEX_MERGE_MAXPARALLEL_DEFAULT)));
+            sb.setConfig(SwitchboardConstants.INDEX_MERGE_WIDTH, Math.max(2, post.getInt("mergeWidth", SwitchboardConstants.INDEX_MERGE_WIDTH_DEFAULT)));
+            sb.setConfig(SwitchboardConstants.INDEX_MERGE_MAXBYTESPERSECOND, Math.max(0L, post.getLong("mergeMaxKBytesPerSecond", 0L)) * 1024L);
+            indexSegment.setMergeLimits(
+                    sb.getConfigInt(SwitchboardConstants.INDEX_MERGE_MAXPARALLEL, SwitchboardConstants.INDEX_MERGE_MAXPARALLEL_DEFAULT),
+                    sb.getConfigInt(SwitchboardConstants.INDEX_MERGE_WIDTH, SwitchboardConstants.INDEX_MERGE_WIDTH_DEFAULT),
+                    sb.getConfigLong(SwitchboardConstants.INDEX_MERGE_MAXBYTESPERSECOND, SwitchboardConstants.INDEX_MERGE_MAXBYTESPERSECOND_DEFAULT));
+        }
+
         /* Setting remote searches max loads */
         if (post != null) {
         	if(post.containsKey("setRemoteSearchLoads")) {
@@ -353,6 +365,29 @@ public class PerformanceQueues_p {
         prop.putNum("crawlPauseLocalsearchCurrent", (System.currentTimeMillis() - sb.localSearchLastAccess) / 1000);
         prop.putNum("crawlPauseRemotesearchCurrent", (System.currentTimeMillis() - sb.remoteSearchLastAccess) / 1000);
 
+        // index merge settings and statistics
+        prop.put("mergeMaxParallel", sb.getConfigInt(SwitchboardConstants.INDEX_MERGE_MAXPARALLEL, SwitchboardConstants.INDEX_MERGE_MAXPARALLEL_DEFAULT));
+        prop.put("mergeWidth", sb.getConfigInt(SwitchboardConstants.INDEX_MERGE_WIDTH, SwitchboardConstants.INDEX_MERGE_WIDTH_DEFAULT));
+        prop.put("mergeMaxKBytesPerSecond", sb.getConfigLong(SwitchboardConstants.INDEX_MERGE_MAXBYTESPERSECOND, SwitchboardConstants.INDEX_MERGE_MAXBYTESPERSECOND_DEFAULT) / 1024L);
+        prop.putNum("mergeDumpQueue", merger == null ? 0 : merger.dumpQueueSize());
+        prop.putNum("mergeQueue", merger == null ? 0 : merger.mergeQueueSize());
+        prop.putNum("mergeRunning", merger == null ? 0 : merger.runningMerges());
+        prop.putNum("mergeCount", merger == null ? 0 : merger.mergeCount());
+        prop.putNum("mergeMBytes", merger == null ? 0 : merger.mergeBytes() / 1024L / 1024L);
+        prop.putNum("mergeTime", merger == null ? 0 : merger.mergeTime() / 1000L);
+        prop.putNum("mergeKBytesPerSecond", merger == null || merger.mergeTime() == 0 ? 0 : merger.mergeBytes() * 1000L / 1024L / merger.mergeTime());
+        c = 0;
+        if (merger != null) for (final IODispatcher.MergeReport report: merger.mergeHistory()) {
+            prop.putNum("merges_" + c + "_finished", (System.currentTimeMillis() - report.finished) / 1000L);
+            prop.put("merges_" + c + "_files", report.files);
+            prop.putNum("merges_" + c + "_kbytes", report.bytes / 1024L);
+            prop.putNum("merges_" + c + "_time", report.time);
+            prop.putNum("merges_" + c + "_kbytesPerSecond", report.time == 0 ? 0 : report.bytes * 1000L / 1024L / report.time);
+            prop.put("merges_" + c + "_success", report.success ? 1 : 0);
+            c++;
+        }
+        prop.put("merges", c);
+
         // table thread pool settings
         prop.put("pool_0_name","Crawler Pool");
         prop.put("pool_0_maxActive", sb.getConfigLong(SwitchboardConstants.CRAWLER_THREADS_ACTIVE_MAX, 0));
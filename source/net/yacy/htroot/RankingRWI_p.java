@@ -162,6 +162,7 @@ public class RankingRWI_p {
         if (post.containsKey("EnterRanking")) {
             final RankingProfile ranking = new RankingProfile("local", post.toString());
             sb.setConfig(SwitchboardConstants.SEARCH_RANKING_RWI_PROFILE, crypt.simpleEncode(ranking.toExternalString()));
+            sb.applyImpactOrder();
             final serverObjects prop = defaultValues();
             //prop.putAll(ranking.toExternalMap("local"));
             putRanking(prop, ranking, "local");
@@ -170,6 +171,7 @@ public class RankingRWI_p {
 
         if (post.containsKey("ResetRanking")) {
             sb.setConfig(SwitchboardConstants.SEARCH_RANKING_RWI_PROFILE, "");
+            sb.applyImpactOrder();
             final RankingProfile ranking = new RankingProfile(Classification.ContentDomain.TEXT);
             final serverObjects prop = defaultValues();
             //prop.putAll(ranking.toExternalMap("local"));
@@ -338,7 +338,10 @@ public class Table_API_p {
         int filteredSize = 0;
         try {
             tablesize = sb.tables.size(WorkTables.TABLE_API_NAME);
-            final Iterator<Tables.Row> plainIterator = sb.tables.iterator(WorkTables.TABLE_API_NAME);
+            // a type filter is answered by the column index of the api table
+            final Iterator<Tables.Row> plainIterator = typefilter == QueryParams.catchall_pattern
+                    ? sb.tables.iterator(WorkTables.TABLE_API_NAME)
+                    : sb.tables.iterator(WorkTables.TABLE_API_NAME, WorkTables.TABLE_API_COL_TYPE, typefilter);
 			final Iterator<Tables.Row> mapIterator;
 			if(sortColumn.isEmpty()) {
 				mapIterator = plainIterator;
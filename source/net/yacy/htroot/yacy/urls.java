@@ -85,7 +85,10 @@ public class urls {
                 }
 
                 // place url to notice-url db
-                if (sb.crawlQueues.delegatedURL != null) sb.crawlQueues.delegatedURL.put(ASCII.String(entry.url().hash()), entry.url());
+                if (sb.crawlQueues.delegatedURL != null) {
+                    if (sb.index.urlSeen() != null) sb.index.urlSeen().add(entry.url().hash());
+                    sb.crawlQueues.delegatedURL.put(ASCII.String(entry.url().hash()), entry.url());
+                }
 
                 // create RSS entry
                 prop.put("item_" + c + "_title", "");
@@ -27,17 +27,28 @@
 package net.yacy.kelondro.blob;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.text.ParseException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
@@ -49,6 +60,10 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.RateLimiter;
 
 import net.yacy.cora.date.GenericFormatter;
 import net.yacy.cora.document.encoding.ASCII;
@@ -59,10 +74,15 @@ import net.yacy.cora.order.NaturalOrder;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.LookAheadIterator;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.rwi.DocIdDictionary;
 import net.yacy.kelondro.rwi.Reference;
+import net.yacy.kelondro.rwi.ReferenceBlocks;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.rwi.ReferenceFactory;
+import net.yacy.kelondro.rwi.ReferenceImpact;
 import net.yacy.kelondro.rwi.ReferenceIterator;
+import net.yacy.kelondro.rwi.ReferenceScore;
+import net.yacy.kelondro.rwi.TermStatistics;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.MergeIterator;
@@ -82,14 +102,25 @@ public class ArrayStack implements BLOB {
      * That means all BLOB files are inside a directory that has the name of the BLOBArray.
      * To delete content that is out-dated, one special method is implemented that deletes content by a given
      * time-out. Deletions are not made automatically, they must be triggered using this method.
+     *
+     * The BLOB files may be stored in two tiers: a hot directory, where new files are written, and an optional
+     * cold directory for large files that are rarely read. The reads of each file are counted and averaged to
+     * a temperature (reads per hour); files are moved between the tiers with migrate(). The tier of a file is
+     * given by its directory and the temperatures are stored in a <prefix>.tiers file in the hot directory,
+     * so both survive a restart.
      */
 
     private static final long maxFileSize = Integer.MAX_VALUE;
+    private static final String BLOCKS_SUFFIX = ".blocks";
+    private static final String IMPACT_SUFFIX = ".impact";
+    private static final String TIERS_SUFFIX = ".tiers";
+    private static final long   oneHour     = 1000L * 60L * 60L;
     public  static final long oneMonth    = 1000L * 60L * 60L * 24L * 365L / 12L;
 
     private       int            keylength;
     private       ByteOrder      ordering;
     private final File           heapLocation;
+    private final File           coldLocation; // the directory of the cold tier, null if the files are not tiered
     private       long           fileAgeLimit;
     private       long           fileSizeLimit;
     private       long           repositoryAgeMax;
@@ -98,6 +129,16 @@ public class ArrayStack implements BLOB {
     private final String         prefix;
     private final int            buffersize;
     private final boolean        trimall;
+    private       boolean        mappedRead;
+    private final boolean        offHeapIndex; // the index of files that are not written any more is stored off-heap
+    private       DocIdDictionary docids; // compresses the reference containers that are written by a merge, may be null
+    private       TermStatistics statistics; // is corrected for the references that are joined or shrunk by a merge, may be null
+    private       ReferenceScore<? extends Reference> impactScore; // orders the impact lists that are written by a merge, may be null
+    private       int            impactSize; // the number of references in an impact list
+    private final Set<File>      migrating; // the files that are selected for a migration to the other tier
+    private final Set<blobItem>  retiring; // the items that were replaced by a migration and are still read
+    private final AtomicLong     replacements; // counts the replaced items, a read that misses is repeated if an item was replaced meanwhile
+    private       long           lastTemperatureUpdate;
 
     /** the thread pool for the keeperOf executor service */
     private final ExecutorService executor;
@@ -114,16 +155,53 @@ public class ArrayStack implements BLOB {
             final int buffersize,
             final boolean trimall,
             final boolean deleteonfail) throws IOException {
+        this(heapLocation, prefix, ordering, keylength, buffersize, trimall, deleteonfail, false);
+    }
+
+    public ArrayStack(
+            final File heapLocation,
+            final String prefix,
+            final ByteOrder ordering,
+            final int keylength,
+            final int buffersize,
+            final boolean trimall,
+            final boolean deleteonfail,
+            final boolean offHeapIndex) throws IOException {
+        this(heapLocation, null, prefix, ordering, keylength, buffersize, trimall, deleteonfail, offHeapIndex);
+    }
+
+    /**
+     * open a BLOB array with two tiers
+     * @param heapLocation the directory of the hot tier; new files are written here
+     * @param coldLocation the directory of the cold tier, may be null if the files are not tiered
+     */
+    public ArrayStack(
+            final File heapLocation,
+            final File coldLocation,
+            final String prefix,
+            final ByteOrder ordering,
+            final int keylength,
+            final int buffersize,
+            final boolean trimall,
+            final boolean deleteonfail,
+            final boolean offHeapIndex) throws IOException {
         this.keylength = keylength;
+        this.offHeapIndex = offHeapIndex;
         this.prefix = prefix;
         this.ordering = ordering;
         this.buffersize = buffersize;
         this.heapLocation = heapLocation;
+        this.coldLocation = coldLocation;
+        this.migrating = ConcurrentHashMap.newKeySet();
+        this.retiring = ConcurrentHashMap.newKeySet();
+        this.replacements = new AtomicLong(0);
+        this.lastTemperatureUpdate = System.currentTimeMillis();
         this.fileAgeLimit = oneMonth;
         this.fileSizeLimit = maxFileSize;
         this.repositoryAgeMax = Long.MAX_VALUE;
         this.repositorySizeMax = Long.MAX_VALUE;
         this.trimall = trimall;
+        this.mappedRead = false;
 
         // init the thread pool for the keeperOf executor service
         this.executor = new ThreadPoolExecutor(
@@ -133,38 +211,16 @@ public class ArrayStack implements BLOB {
         		new LinkedBlockingQueue<Runnable>(),
         		new NamePrefixThreadFactory(this.prefix));
 
-        // check existence of the heap directory
-        if (heapLocation.exists()) {
-            if (!heapLocation.isDirectory()) throw new IOException("the BLOBArray directory " + heapLocation.toString() + " does not exist (is blocked by a file with same name)");
-        } else {
-            if(!heapLocation.mkdirs()) throw new IOException("the BLOBArray directory " + heapLocation.toString() + " does not exist (can not be created)");
-        }
+        // check existence of the heap directories
+        checkDirectory(heapLocation);
+        if (coldLocation != null) checkDirectory(coldLocation);
 
         // register all blob files inside this directory
-        String[] files = heapLocation.list();
-        final HashSet<String> fh = new HashSet<String>();
-        for (final String file : files)
-            fh.add(file);
-        // delete unused temporary files
-        boolean deletions = false;
-        for (final String file : files) {
-            if (file.endsWith(".tmp") || file.endsWith(".prt")) {
-                FileUtils.deletedelete(new File(heapLocation, file));
-                deletions = true;
-            }
-            if (file.endsWith(".idx") || file.endsWith(".gap")) {
-                final String s = file.substring(0, file.length() - 17);
-                if (!fh.contains(s)) {
-                    FileUtils.deletedelete(new File(heapLocation, file));
-                    deletions = true;
-                }
-            }
-        }
-        if (deletions) files = heapLocation.list(); // make a fresh list
+        String[] files = cleanup(heapLocation);
         // migrate old file names
         Date d;
         long time;
-        deletions = false;
+        boolean deletions = false;
         for (final String file : files) {
             if (file.length() >= 19 && file.endsWith(".blob")) {
                final File f = new File(heapLocation, file);
@@ -180,46 +236,71 @@ public class ArrayStack implements BLOB {
         }
         if (deletions) files = heapLocation.list(); // make a fresh list
 
+        // collect the blob files of both tiers
+        final List<File> located = new ArrayList<File>();
+        final HashSet<String> hot = new HashSet<String>();
+        for (final String file : files) {
+            if (isBLOBName(file)) {
+                located.add(new File(heapLocation, file));
+                hot.add(file);
+            }
+        }
+        if (coldLocation != null) for (final String file : cleanup(coldLocation)) {
+            if (!isBLOBName(file)) continue;
+            final File c = new File(coldLocation, file);
+            if (hot.contains(file)) {
+                // a migration was interrupted after the copy was complete. The copy is used if the original
+                // file was not modified after the copy was written, otherwise the original is used.
+                final File h = new File(heapLocation, file);
+                final boolean useCold = c.lastModified() >= h.lastModified();
+                ConcurrentLog.warn("ArrayStack", "file " + file + " exists in both tiers, using the " + (useCold ? "cold" : "hot") + " copy");
+                if (useCold) {
+                    HeapWriter.delete(h);
+                    located.remove(h);
+                } else {
+                    HeapWriter.delete(c);
+                    continue;
+                }
+            }
+            located.add(c);
+        }
+
         // find maximum time: the file with this time will be given a write buffer
         final TreeMap<Long, blobItem> sortedItems = new TreeMap<Long, blobItem>();
         BLOB oneBlob;
-        File f;
         long maxtime = 0;
-        for (final String file : files) {
-            if (file.length() >= 22 && file.charAt(this.prefix.length()) == '.' && file.endsWith(".blob")) {
-               try {
-                   d = my_SHORT_MILSEC_FORMATTER.parse(file.substring(this.prefix.length() + 1, this.prefix.length() + 18), 0).getTime();
-                   time = d.getTime();
-                   if (time > maxtime) maxtime = time;
-               } catch (final ParseException e) {continue;}
-            }
+        for (final File f : located) {
+            try {
+                d = my_SHORT_MILSEC_FORMATTER.parse(f.getName().substring(this.prefix.length() + 1, this.prefix.length() + 18), 0).getTime();
+                time = d.getTime();
+                if (time > maxtime) maxtime = time;
+            } catch (final ParseException e) {continue;}
         }
 
         // open all blob files
-        for (final String file : files) {
-            if (file.length() >= 22 && file.charAt(this.prefix.length()) == '.' && file.endsWith(".blob")) {
-                try {
-                   d = my_SHORT_MILSEC_FORMATTER.parse(file.substring(this.prefix.length() + 1, this.prefix.length() + 18), 0).getTime();
-                   f = new File(heapLocation, file);
-                   time = d.getTime();
-                   try {
-                       if (time == maxtime && !trimall) {
-                           oneBlob = new Heap(f, keylength, ordering, buffersize);
-                       } else {
-                           oneBlob = new HeapModifier(f, keylength, ordering);
-                           oneBlob.optimize(); // no writings here, can be used with minimum memory
-                       }
-                       sortedItems.put(Long.valueOf(time), new blobItem(d, f, oneBlob));
-                   } catch (final IOException e) {
-                       if (deleteonfail) {
-                           ConcurrentLog.warn("ArrayStack", "cannot read file " + f.getName() + ", deleting it (smart fail; alternative would be: crash; required user action would be same as deletion)");
-                           f.delete();
-                       } else {
-                           throw new IOException(e.getMessage(), e);
-                       }
+        for (final File f : located) {
+            try {
+               d = my_SHORT_MILSEC_FORMATTER.parse(f.getName().substring(this.prefix.length() + 1, this.prefix.length() + 18), 0).getTime();
+               time = d.getTime();
+               try {
+                   if (time == maxtime && !trimall) {
+                       oneBlob = new Heap(f, keylength, ordering, buffersize);
+                   } else {
+                       // a missing index is generated in the background, in parallel with other files
+                       oneBlob = new HeapModifier(f, keylength, ordering, offHeapIndex, true);
+                       oneBlob.optimize(); // no writings here, can be used with minimum memory
+                       ((HeapModifier) oneBlob).useBloomFilter(); // no new keys here, lookups for other keys can be skipped
                    }
-               } catch (final ParseException e) {continue;}
-            }
+                   sortedItems.put(Long.valueOf(time), new blobItem(d, f, oneBlob));
+               } catch (final IOException e) {
+                   if (deleteonfail) {
+                       ConcurrentLog.warn("ArrayStack", "cannot read file " + f.getName() + ", deleting it (smart fail; alternative would be: crash; required user action would be same as deletion)");
+                       f.delete();
+                   } else {
+                       throw new IOException(e.getMessage(), e);
+                   }
+               }
+            } catch (final ParseException e) {continue;}
         }
 
         // read the blob tree in a sorted way and write them into an array
@@ -227,6 +308,54 @@ public class ArrayStack implements BLOB {
         for (final blobItem bi : sortedItems.values()) {
             this.blobs.add(bi);
         }
+        if (coldLocation != null) loadTemperatures();
+    }
+
+    private static void checkDirectory(final File location) throws IOException {
+        if (location.exists()) {
+            if (!location.isDirectory()) throw new IOException("the BLOBArray directory " + location.toString() + " does not exist (is blocked by a file with same name)");
+        } else {
+            if(!location.mkdirs()) throw new IOException("the BLOBArray directory " + location.toString() + " does not exist (can not be created)");
+        }
+    }
+
+    /**
+     * delete temporary files and index files without a BLOB file in a directory
+     * @return the remaining files of the directory
+     */
+    private static String[] cleanup(final File location) {
+        final String[] files = location.list();
+        final HashSet<String> fh = new HashSet<String>();
+        for (final String file : files)
+            fh.add(file);
+        // delete unused temporary files
+        boolean deletions = false;
+        for (final String file : files) {
+            if (file.endsWith(".tmp") || file.endsWith(".prt")) {
+                FileUtils.deletedelete(new File(location, file));
+                deletions = true;
+            }
+            if (file.endsWith(".idx") || file.endsWith(".gap") || file.endsWith(".blm") || file.endsWith(".ckp")) {
+                final String s = file.substring(0, file.length() - 17);
+                if (!fh.contains(s)) {
+                    FileUtils.deletedelete(new File(location, file));
+                    deletions = true;
+                }
+            }
+            if (file.endsWith(BLOCKS_SUFFIX) && !fh.contains(file.substring(0, file.length() - BLOCKS_SUFFIX.length()))) {
+                HeapWriter.delete(new File(location, file));
+                deletions = true;
+            }
+            if (file.endsWith(IMPACT_SUFFIX) && !fh.contains(file.substring(0, file.length() - IMPACT_SUFFIX.length()))) {
+                HeapWriter.delete(new File(location, file));
+                deletions = true;
+            }
+        }
+        return deletions ? location.list() : files; // make a fresh list
+    }
+
+    private boolean isBLOBName(final String file) {
+        return file.length() >= 22 && file.charAt(this.prefix.length()) == '.' && file.endsWith(".blob");
     }
 
     @Override
@@ -261,12 +390,110 @@ public class ArrayStack implements BLOB {
         if (full && this.buffersize > 0 && !this.trimall) {
             oneBlob = new Heap(location, this.keylength, this.ordering, this.buffersize);
         } else {
-            oneBlob = new HeapModifier(location, this.keylength, this.ordering);
-            oneBlob.optimize();
+            oneBlob = openReadOnly(location);
         }
         this.blobs.add(new blobItem(d, location, oneBlob));
     }
 
+    /**
+     * open a BLOB file that is not written any more
+     */
+    private BLOB openReadOnly(final File location) throws IOException {
+        final HeapModifier oneBlob = new HeapModifier(location, this.keylength, this.ordering, this.offHeapIndex);
+        oneBlob.optimize();
+        oneBlob.useBloomFilter();
+        if (this.mappedRead) oneBlob.map();
+        return oneBlob;
+    }
+
+    /**
+     * set the document id dictionary of reference containers in the BLOB files; the containers are read
+     * with the dictionary and written compressed when files are merged, see ReferenceContainer.exportCollection(DocIdDictionary)
+     * @param docids the dictionary, may be null if the BLOB files do not hold compressed reference containers
+     */
+    public void setDocIds(final DocIdDictionary docids) {
+        this.docids = docids;
+    }
+
+    /**
+     * remove the compressed reference containers that use document ids which are not in the dictionary.
+     * This is needed if the dictionary was damaged, see DocIdDictionary.damaged(): the url hashes of these
+     * containers are lost and they cannot be read any more.
+     * @return the number of removed containers
+     */
+    public synchronized int validateDocIds() {
+        if (this.docids == null) return 0;
+        int removed = 0;
+        for (final blobItem bi: this.blobs) {
+            final List<byte[]> invalid = new ArrayList<byte[]>();
+            final HeapReader.entries entries;
+            try {
+                entries = new HeapReader.entries(bi.location, this.keylength);
+            } catch (final IOException e) {
+                ConcurrentLog.warn("ArrayStack", "cannot validate the document ids of " + bi.location.toString() + ": " + e.getMessage());
+                continue;
+            }
+            try {
+                while (entries.hasNext()) {
+                    final Map.Entry<byte[], byte[]> entry = entries.next();
+                    final int maxid = ReferenceContainer.maxDocId(entry.getValue());
+                    if (maxid >= 0 && !this.docids.valid(maxid)) invalid.add(entry.getKey());
+                }
+            } finally {
+                entries.close();
+            }
+            for (final byte[] key: invalid) try {
+                bi.blob.delete(key);
+                removed++;
+            } catch (final IOException e) {
+                ConcurrentLog.warn("ArrayStack", "cannot remove an invalid container from " + bi.location.toString() + ": " + e.getMessage());
+            }
+            if (!invalid.isEmpty()) ConcurrentLog.severe("ArrayStack", "removed " + invalid.size() + " containers with lost document ids from " + bi.location.toString());
+        }
+        return removed;
+    }
+
+    /**
+     * set the statistics catalog of the terms in the BLOB files; a merge corrects the statistics of a term
+     * if references of the term are joined or removed, see TermStatistics
+     * @param statistics the catalog, may be null
+     */
+    public void setTermStatistics(final TermStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return the statistics catalog of the terms in the BLOB files, or null if there is none
+     */
+    public TermStatistics termStatistics() {
+        return this.statistics;
+    }
+
+    /**
+     * write impact lists of the large reference containers when files are merged, see ReferenceImpact
+     * @param score the static score that selects the best references, may be null to write no impact lists
+     * @param size the number of references in an impact list
+     */
+    public void setImpactOrder(final ReferenceScore<? extends Reference> score, final int size) {
+        this.impactScore = size > 0 ? score : null;
+        this.impactSize = size;
+    }
+
+    /**
+     * switch the read-only memory mapping of all BLOB files that are not written any more.
+     * Mapped files serve get(), containsKey() and length() without locking, which removes the
+     * lock contention of concurrent reads on the same file. Files that are mounted later
+     * with mountBLOB() are mapped as well if this is switched on.
+     * @param mapped true to map the files, false to use the (synchronized) file access
+     */
+    public synchronized void setMappedRead(final boolean mapped) {
+        this.mappedRead = mapped;
+        for (final blobItem bi: this.blobs) {
+            if (!(bi.blob instanceof HeapModifier) || bi.blob instanceof Heap) continue; // never map a heap that is appended
+            if (mapped) ((HeapModifier) bi.blob).map(); else ((HeapModifier) bi.blob).unmap();
+        }
+    }
+
     private synchronized void unmountBLOB(final File location, final boolean writeIDX) {
         blobItem b;
         for (int i = 0; i < this.blobs.size(); i++) {
@@ -334,33 +561,39 @@ public class ArrayStack implements BLOB {
     }
 
     public synchronized File[] unmountSmallest(final long maxResultSize) {
-    	if (this.blobs.size() < 2) return null;
-    	final File f0 = smallestBLOB(null, maxResultSize);
-        if (f0 == null) return null;
-        final File f1 = smallestBLOB(f0, maxResultSize - f0.length());
-        if (f1 == null) return null;
-
-        unmountBLOB(f0, false);
-        unmountBLOB(f1, false);
-        return new File[]{f0, f1};
+        return unmountSmallest(2, maxResultSize);
     }
 
-    private synchronized File smallestBLOB(final File excluding, final long maxsize) {
-        if (this.blobs.isEmpty()) return null;
-        File bestFile = null;
-        long smallest = Long.MAX_VALUE;
-        File f = null;
-        for (int i = 0; i < this.blobs.size(); i++) {
-        	f = this.blobs.get(i).location;
-            if (excluding != null && f.getAbsolutePath().equals(excluding.getAbsolutePath())) continue;
-            if (f.length() < smallest) {
-                smallest = f.length();
-                bestFile = f;
+    /**
+     * unmount up to k of the smallest files for a k-way merge
+     * @param k the maximum number of files
+     * @param maxResultSize the maximum sum of the file sizes
+     * @return at least two and at most k files in the order of their age, oldest first; or null if no such files exist
+     */
+    public synchronized File[] unmountSmallest(final int k, final long maxResultSize) {
+        if (this.blobs.size() < 2 || k < 2) return null;
+        final List<blobItem> bySize = new ArrayList<blobItem>(this.blobs);
+        Collections.sort(bySize, new Comparator<blobItem>() {
+            @Override
+            public int compare(final blobItem b1, final blobItem b2) {
+                return Long.compare(b1.location.length(), b2.location.length());
             }
-            if (i > 70 && smallest <= maxsize && smallest != Long.MAX_VALUE) break;
+        });
+        final HashSet<blobItem> selected = new HashSet<blobItem>();
+        long sum = 0;
+        for (final blobItem bi: bySize) {
+            final long l = bi.location.length();
+            if (sum + l > maxResultSize) break;
+            sum += l;
+            selected.add(bi);
+            if (selected.size() >= k) break;
         }
-        if (smallest > maxsize) return null;
-        return bestFile;
+        if (selected.size() < 2) return null;
+        final File[] ff = new File[selected.size()];
+        int c = 0;
+        for (final blobItem bi: this.blobs) if (selected.contains(bi)) ff[c++] = bi.location;
+        for (final File f: ff) unmountBLOB(f, false);
+        return ff;
     }
 
     public synchronized File unmountOldestBLOB(final boolean smallestFromFirst2) {
@@ -389,6 +622,32 @@ public class ArrayStack implements BLOB {
         return new File(this.heapLocation, this.prefix + "." + my_SHORT_MILSEC_FORMATTER.format(creation) + ".blob");
     }
 
+    /**
+     * generate a new BLOB file name with a given date in one of the tiers
+     * @param creation
+     * @param cold true for a file in the cold tier; ignored if the files are not tiered
+     * @return
+     */
+    public synchronized File newBLOB(final Date creation, final boolean cold) {
+        final File f = newBLOB(creation);
+        return cold && this.coldLocation != null ? new File(this.coldLocation, f.getName()) : f;
+    }
+
+    /**
+     * @return the directory of the cold tier or null if the files are not tiered
+     */
+    public File coldLocation() {
+        return this.coldLocation;
+    }
+
+    /**
+     * @param location a BLOB file of this array
+     * @return true if the file is stored in the cold tier
+     */
+    public boolean isCold(final File location) {
+        return this.coldLocation != null && this.coldLocation.equals(location.getParentFile());
+    }
+
     @Override
     public String name() {
         return this.heapLocation.getName();
@@ -446,6 +705,10 @@ public class ArrayStack implements BLOB {
         Date creation;
         File location;
         BLOB blob;
+        final AtomicLong hits = new AtomicLong(0); // the reads since the last update of the temperature
+        final AtomicLong modifications = new AtomicLong(0); // the writes into the file, a migration is dropped if the file was written during the copy
+        volatile double temperature = Double.NaN; // the averaged reads per hour, NaN if the file was not observed yet
+        final AtomicInteger refs = new AtomicInteger(1); // the array and the running lock-free reads hold the item
         public blobItem(final Date creation, final File location, final BLOB blob) {
             assert blob != null;
             this.creation = creation;
@@ -456,7 +719,39 @@ public class ArrayStack implements BLOB {
             // make a new blob file and assign it in this item
             this.creation = new Date();
             this.location = newBLOB(this.creation);
-            this.blob = (buffer == 0) ? new HeapModifier(this.location, ArrayStack.this.keylength, ArrayStack.this.ordering) : new Heap(this.location, ArrayStack.this.keylength, ArrayStack.this.ordering, buffer);
+            this.blob = (buffer == 0) ? new HeapModifier(this.location, ArrayStack.this.keylength, ArrayStack.this.ordering, ArrayStack.this.offHeapIndex) : new Heap(this.location, ArrayStack.this.keylength, ArrayStack.this.ordering, buffer);
+        }
+        /**
+         * hold the BLOB for a read that is not synchronized with the array
+         * @return the BLOB, which must be given back with release(), or null if the item is unmounted or retired
+         */
+        BLOB acquire() {
+            int c;
+            do {
+                c = this.refs.get();
+                if (c == 0) return null;
+            } while (!this.refs.compareAndSet(c, c + 1));
+            final BLOB b = this.blob;
+            if (b == null) release();
+            return b;
+        }
+        void release() {
+            if (this.refs.decrementAndGet() == 0) dispose();
+        }
+        /**
+         * give back the hold of the array after the item was replaced in the array;
+         * the file is closed and deleted when the last running read releases the item
+         */
+        void retire() {
+            ArrayStack.this.retiring.add(this);
+            release();
+        }
+        private void dispose() {
+            final BLOB b = this.blob;
+            this.blob = null;
+            if (b != null) b.close(false);
+            HeapWriter.delete(this.location);
+            ArrayStack.this.retiring.remove(this);
         }
     }
 
@@ -554,9 +849,14 @@ public class ArrayStack implements BLOB {
      * @throws IOException
      */
     @Override
-    public synchronized boolean containsKey(final byte[] key) {
-    	final blobItem bi = keeperOf(key);
-    	return bi != null;
+    public boolean containsKey(final byte[] key) {
+        long r;
+        blobItem bi;
+        do {
+            r = this.replacements.get();
+            bi = keeperOf(key);
+        } while (bi == null && r != this.replacements.get());
+        return bi != null;
         //for (blobItem bi: blobs) if (bi.blob.has(key)) return true;
         //return false;
     }
@@ -568,21 +868,25 @@ public class ArrayStack implements BLOB {
      * @return the blobItem that holds the key or null if no blobItem is found
      */
     private blobItem keeperOf(final byte[] key) {
-        if (this.blobs.isEmpty()) return null;
-        if (this.blobs.size() == 1) {
-            final blobItem bi = this.blobs.get(0);
-            if (bi.blob.containsKey(key)) return bi;
+        // work on a snapshot because this is not synchronized and files may be unmounted concurrently
+        final List<blobItem> b0 = this.blobs;
+        if (b0 == null || b0.isEmpty()) return null;
+        final blobItem[] items = b0.toArray(new blobItem[b0.size()]);
+        if (items.length == 0) return null;
+        if (items.length == 1) {
+            final blobItem bi = items[0];
+            if (has(bi, key)) return bi;
             return null;
         }
 
         // first check the current blob only because that has most probably the key if any has that key
-        int bs1 = this.blobs.size() - 1;
-        blobItem bi = this.blobs.get(bs1);
-        if (bi.blob.containsKey(key)) return bi;
-        if (this.blobs.size() == 2) {
+        int bs1 = items.length - 1;
+        blobItem bi = items[bs1];
+        if (has(bi, key)) return bi;
+        if (items.length == 2) {
             // this should not be done concurrently
-            bi = this.blobs.get(0);
-            if (bi.blob.containsKey(key)) return bi;
+            bi = items[0];
+            if (has(bi, key)) return bi;
             return null;
         }
 
@@ -590,12 +894,12 @@ public class ArrayStack implements BLOB {
         final CompletionService<blobItem> cs = new ExecutorCompletionService<blobItem>(this.executor);
         int accepted = 0;
         for (int i = 0; i < bs1; i++) {
-            final blobItem b = this.blobs.get(i);
+            final blobItem b = items[i];
             try {
                 cs.submit(new Callable<blobItem>() {
                     @Override
                     public blobItem call() {
-                        if (b.blob.containsKey(key)) return b;
+                        if (has(b, key)) return b;
                         return null;
                     }
                 });
@@ -603,7 +907,7 @@ public class ArrayStack implements BLOB {
             } catch (final RejectedExecutionException e) {
                 // the executor is either shutting down or the blocking queue is full
                 // execute the search direct here without concurrency
-                if (b.blob.containsKey(key)) return b;
+                if (has(b, key)) return b;
             }
         }
 
@@ -631,6 +935,16 @@ public class ArrayStack implements BLOB {
         return null;
     }
 
+    private static boolean has(final blobItem bi, final byte[] key) {
+        final BLOB blob = bi.acquire();
+        if (blob == null) return false;
+        try {
+            return blob.containsKey(key);
+        } finally {
+            bi.release();
+        }
+    }
+
     /**
      * retrieve the whole BLOB from the table
      * @param key  the primary key
@@ -639,14 +953,25 @@ public class ArrayStack implements BLOB {
      */
     @Override
     public byte[] get(final byte[] key) throws IOException, SpaceExceededException {
-        if (this.blobs == null || this.blobs.isEmpty()) return null;
-        if (this.blobs.size() == 1) {
-            final blobItem bi = this.blobs.get(0);
-            return bi.blob.get(key);
+        long r;
+        byte[] b;
+        do {
+            r = this.replacements.get();
+            b = get0(key);
+        } while (b == null && r != this.replacements.get());
+        return b;
+    }
+
+    private byte[] get0(final byte[] key) throws IOException, SpaceExceededException {
+        final List<blobItem> b = this.blobs;
+        if (b == null || b.isEmpty()) return null;
+        if (b.size() == 1) {
+            final Iterator<blobItem> i = b.iterator(); // a snapshot, the item may be unmounted concurrently
+            return i.hasNext() ? get(i.next(), key) : null;
         }
 
         final blobItem bi = keeperOf(key);
-    	return (bi == null) ? null : bi.blob.get(key);
+    	return (bi == null) ? null : get(bi, key);
 
     	/*
     	byte[] b;
@@ -658,6 +983,25 @@ public class ArrayStack implements BLOB {
         */
     }
 
+    private static byte[] get(final blobItem bi, final byte[] key) throws IOException, SpaceExceededException {
+        final BLOB blob = bi.acquire();
+        if (blob == null) return null;
+        try {
+            return hit(bi, blob.get(key));
+        } finally {
+            bi.release();
+        }
+    }
+
+    /**
+     * count a read of a file for its temperature
+     * @return the given data
+     */
+    private static byte[] hit(final blobItem bi, final byte[] b) {
+        if (b != null) bi.hits.incrementAndGet();
+        return b;
+    }
+
     @Override
     public byte[] get(final Object key) {
         if (!(key instanceof byte[])) return null;
@@ -682,6 +1026,80 @@ public class ArrayStack implements BLOB {
         return new BlobValues(key);
     }
 
+    /**
+     * get all BLOBs in the array together with the file that contains them
+     * @param key
+     * @return the file locations and the BLOBs, oldest first
+     * @throws IOException
+     */
+    public Iterable<Map.Entry<File, byte[]>> getAllLocated(final byte[] key) throws IOException {
+        return new LocatedBlobValues(key);
+    }
+
+    /**
+     * find the BLOB files that contain a key without reading the values
+     * @param key
+     * @return the locations of the files that contain the key, oldest first
+     */
+    public List<File> locate(final byte[] key) {
+        final List<File> locations = new ArrayList<File>(2);
+        final List<blobItem> b = this.blobs;
+        if (b == null) return locations;
+        for (final blobItem bi: b) {
+            final File location = bi.location;
+            if (location != null && has(bi, key)) locations.add(location);
+        }
+        return locations;
+    }
+
+    /**
+     * get the value of a key in one of the BLOB files
+     * @param location a file that was returned by locate()
+     * @param key
+     * @return the value or null if the file does not contain the key or is not mounted any more
+     * @throws IOException
+     * @throws SpaceExceededException
+     */
+    public byte[] get(final File location, final byte[] key) throws IOException, SpaceExceededException {
+        final List<blobItem> b = this.blobs;
+        if (b == null) return null;
+        for (final blobItem bi: b) {
+            if (location.equals(bi.location)) return get(bi, key);
+        }
+        return null;
+    }
+
+    private class LocatedBlobValues extends LookAheadIterator<Map.Entry<File, byte[]>> {
+
+        private final Iterator<blobItem> bii;
+        private final byte[] key;
+
+        public LocatedBlobValues(final byte[] key) {
+            this.bii = ArrayStack.this.blobs.iterator();
+            this.key = key;
+        }
+
+        @Override
+        protected Map.Entry<File, byte[]> next0() {
+            while (this.bii.hasNext()) {
+                final blobItem bi = this.bii.next();
+                final File location = bi.location;
+                if (location == null) continue;
+                try {
+                    final byte[] n = get(bi, this.key);
+                    if (n != null) return new AbstractMap.SimpleImmutableEntry<File, byte[]>(location, n);
+                } catch (final IOException e) {
+                    ConcurrentLog.severe("ArrayStack", "LocatedBlobValues - IOException: " + e.getMessage(), e);
+                    return null;
+                } catch (final SpaceExceededException e) {
+                    ConcurrentLog.severe("ArrayStack", "LocatedBlobValues - RowSpaceExceededException: " + e.getMessage(), e);
+                    break;
+                }
+            }
+            return null;
+        }
+    }
+
     private class BlobValues extends LookAheadIterator<byte[]> {
 
         private final Iterator<blobItem> bii;
@@ -695,10 +1113,9 @@ public class ArrayStack implements BLOB {
         @Override
         protected byte[] next0() {
             while (this.bii.hasNext()) {
-                final BLOB b = this.bii.next().blob;
-                if (b == null) continue;
+                final blobItem bi = this.bii.next();
                 try {
-                    final byte[] n = b.get(this.key);
+                    final byte[] n = get(bi, this.key);
                     if (n != null) return n;
                 } catch (final IOException e) {
                     ConcurrentLog.severe("ArrayStack", "BlobValues - IOException: " + e.getMessage(), e);
@@ -719,15 +1136,36 @@ public class ArrayStack implements BLOB {
      * @throws IOException
      */
     @Override
-    public synchronized long length(final byte[] key) throws IOException {
+    public long length(final byte[] key) throws IOException {
+        long r, l;
+        do {
+            r = this.replacements.get();
+            l = length0(key);
+        } while (l < 0 && r != this.replacements.get());
+        return l;
+    }
+
+    private long length0(final byte[] key) throws IOException {
+        final List<blobItem> b = this.blobs;
+        if (b == null) return -1;
         long l;
-        for (final blobItem bi: this.blobs) {
-            l = bi.blob.length(key);
+        for (final blobItem bi: b) {
+            l = length(bi, key);
             if (l >= 0) return l;
         }
         return -1;
     }
 
+    private static long length(final blobItem bi, final byte[] key) throws IOException {
+        final BLOB blob = bi.acquire();
+        if (blob == null) return -1;
+        try {
+            return blob.length(key);
+        } finally {
+            bi.release();
+        }
+    }
+
     /**
      * get all BLOBs in the array.
      * this is useful when it is not clear if an entry is unique in all BLOBs in this array.
@@ -752,10 +1190,8 @@ public class ArrayStack implements BLOB {
         @Override
         protected Long next0() {
             while (this.bii.hasNext()) {
-                final BLOB b = this.bii.next().blob;
-                if (b == null) continue;
                 try {
-                    final long l = b.length(this.key);
+                    final long l = length(this.bii.next(), this.key);
                     if (l >= 0) return Long.valueOf(l);
                 } catch (final IOException e) {
                     ConcurrentLog.severe("ArrayStack", "", e);
@@ -804,6 +1240,7 @@ public class ArrayStack implements BLOB {
             this.blobs.add(bi);
         }
         assert bi.blob instanceof Heap;
+        bi.modifications.incrementAndGet();
         bi.blob.insert(key, b);
         executeLimits();
     }
@@ -818,7 +1255,9 @@ public class ArrayStack implements BLOB {
     public synchronized int replace(final byte[] key, final Rewriter rewriter) throws IOException, SpaceExceededException {
         int d = 0;
         for (final blobItem bi: this.blobs) {
-            d += bi.blob.replace(key, rewriter);
+            final int r = bi.blob.replace(key, rewriter);
+            if (r != 0) bi.modifications.incrementAndGet();
+            d += r;
         }
         return d;
     }
@@ -833,7 +1272,9 @@ public class ArrayStack implements BLOB {
     public synchronized int reduce(final byte[] key, final Reducer reduce) throws IOException, SpaceExceededException {
         int d = 0;
         for (final blobItem bi: this.blobs) {
-            d += bi.blob.reduce(key, reduce);
+            final int r = bi.blob.reduce(key, reduce);
+            if (r != 0) bi.modifications.incrementAndGet();
+            d += r;
         }
         return d;
     }
@@ -850,7 +1291,7 @@ public class ArrayStack implements BLOB {
             // do nothing
         } else if (this.blobs.size() == 1) {
             final blobItem bi = this.blobs.get(0);
-            bi.blob.delete(key);
+            delete(bi, key);
         } else {
             @SuppressWarnings("unchecked")
             final FutureTask<Boolean>[] t = (FutureTask<Boolean>[]) Array.newInstance(FutureTask.class, this.blobs.size() - 1);
@@ -862,14 +1303,14 @@ public class ArrayStack implements BLOB {
                     t[i] = new FutureTask<Boolean>(new Callable<Boolean>() {
                         @Override
                         public Boolean call() {
-                            try { bi0.blob.delete(key); } catch (final IOException e) {}
+                            try { delete(bi0, key); } catch (final IOException e) {}
                             return true;
                         }
                     });
                     DELETE_EXECUTOR.execute(t[i]);
                 } else {
                     // no additional thread, run in this thread
-                    try { bi.blob.delete(key); } catch (final IOException e) {}
+                    try { delete(bi, key); } catch (final IOException e) {}
                 }
                 i++;
             }
@@ -879,6 +1320,11 @@ public class ArrayStack implements BLOB {
         assert mem() <= m : "m = " + m + ", mem() = " + mem();
     }
 
+    private static void delete(final blobItem bi, final byte[] key) throws IOException {
+        if (bi.blob.containsKey(key)) bi.modifications.incrementAndGet();
+        bi.blob.delete(key);
+    }
+
 	private static final ExecutorService DELETE_EXECUTOR = Executors
 			.newCachedThreadPool(new NamePrefixThreadFactory(ArrayStack.class.getSimpleName() + ".DELETE_EXECUTOR"));
 	
@@ -903,30 +1349,218 @@ public class ArrayStack implements BLOB {
      */
     @Override
     public synchronized void close(final boolean writeIDX) {
+        if (this.coldLocation != null) saveTemperatures();
         for (final blobItem bi: this.blobs) bi.blob.close(writeIDX);
+        for (final blobItem bi: this.retiring) bi.dispose();
         this.blobs.clear();
         this.blobs = null;
         this.executor.shutdown();
     }
 
     /**
-     * merge two blob files into one. If the second file is given as null,
-     * then the first file is only rewritten into a new one.
-     * @param f1
-     * @param f2 (may also be null)
+     * update the temperatures of all files: the reads per hour since the last update are averaged with the
+     * previous temperature, so the reads of one hour lose half of their weight in each following hour.
+     * This is done at most once an hour; the temperatures are saved if the files are tiered.
+     * @return true if the temperatures were updated
+     */
+    public boolean updateTemperatures() {
+        return updateTemperatures(System.currentTimeMillis());
+    }
+
+    synchronized boolean updateTemperatures(final long now) {
+        final long elapsed = now - this.lastTemperatureUpdate;
+        if (elapsed < oneHour || this.blobs == null) return false;
+        this.lastTemperatureUpdate = now;
+        for (final blobItem bi: this.blobs) {
+            final double rate = bi.hits.getAndSet(0) * (double) oneHour / elapsed;
+            bi.temperature = Double.isNaN(bi.temperature) ? rate : (bi.temperature + rate) / 2.0d;
+        }
+        if (this.coldLocation != null) saveTemperatures();
+        return true;
+    }
+
+    /**
+     * @param location a BLOB file of this array
+     * @return the averaged reads per hour of the file, NaN if the file was not observed for an hour or is not mounted
+     */
+    public double temperature(final File location) {
+        final List<blobItem> b = this.blobs;
+        if (b == null) return Double.NaN;
+        for (final blobItem bi: b) if (location.equals(bi.location)) return bi.temperature;
+        return Double.NaN;
+    }
+
+    private File temperaturesFile() {
+        return new File(this.heapLocation, this.prefix + TIERS_SUFFIX);
+    }
+
+    private void loadTemperatures() {
+        final File f = temperaturesFile();
+        if (!f.exists()) return;
+        final Map<String, String> map = FileUtils.loadMap(f);
+        for (final blobItem bi: this.blobs) {
+            final String t = map.get(bi.location.getName());
+            if (t == null) continue;
+            try {
+                bi.temperature = Double.parseDouble(t);
+            } catch (final NumberFormatException e) {
+                ConcurrentLog.warn("ArrayStack", "bad temperature of " + bi.location.getName() + " in " + f.getName());
+            }
+        }
+    }
+
+    private synchronized void saveTemperatures() {
+        final Map<String, String> map = new TreeMap<String, String>();
+        for (final blobItem bi: this.blobs) {
+            if (!Double.isNaN(bi.temperature)) map.put(bi.location.getName(), Double.toString(bi.temperature));
+        }
+        FileUtils.saveMap(temperaturesFile(), map, "reads per hour of the BLOB files");
+    }
+
+    /**
+     * select a file that shall be moved to the other tier. A file is moved to the cold tier if it is large, old
+     * and rarely read; a file of the cold tier is moved back if it is read much more often. The newest file is never moved.
+     * The selected file stays mounted until it is replaced with migrate(); it is not selected again until then.
+     * @param minSize the minimum size of a file in the cold tier
+     * @param minAge the minimum age of a file in the cold tier in milliseconds
+     * @param maxHitsPerHour the maximum temperature of a file that is moved to the cold tier; a cold file is moved
+     *   back if its temperature is four times higher
+     * @return the selected file or null if no file shall be moved or the files are not tiered
+     */
+    public synchronized File selectMigration(final long minSize, final long minAge, final double maxHitsPerHour) {
+        if (this.coldLocation == null || this.blobs == null || this.blobs.size() < 2) return null;
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < this.blobs.size() - 1; i++) {
+            final blobItem bi = this.blobs.get(i);
+            if (Double.isNaN(bi.temperature) || this.migrating.contains(bi.location)) continue;
+            final boolean select = isCold(bi.location) ?
+                    bi.temperature > 4.0d * maxHitsPerHour :
+                    bi.temperature <= maxHitsPerHour && now - bi.creation.getTime() >= minAge && bi.location.length() >= minSize;
+            if (select) {
+                this.migrating.add(bi.location);
+                return bi.location;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * move a file to the other tier. The file and its block bounds are copied while the file stays mounted;
+     * then the copy replaces the file in the array and the file is deleted. If the file was written or
+     * unmounted during the copy, the copy is deleted and the file stays where it is.
+     * @param location a file that was selected with selectMigration()
+     * @param budget limits the copy rate in bytes per second, may be null for an unlimited rate
+     * @return the new location of the file, or null if the file was not moved
+     */
+    public File migrate(final File location, final RateLimiter budget) {
+        try {
+            final boolean toCold = !isCold(location);
+            final File target = new File(toCold ? this.coldLocation : this.heapLocation, location.getName());
+            blobItem bi = null;
+            synchronized (this) {
+                if (this.blobs == null) return null;
+                for (final blobItem b: this.blobs) if (location.equals(b.location)) bi = b;
+            }
+            if (bi == null) return null;
+            for (final blobItem r: this.retiring) if (target.equals(r.location)) {
+                ConcurrentLog.info("ArrayStack", "migration of " + location.getName() + " postponed, " + target.getParent() + " still holds a file with that name");
+                return null;
+            }
+            final long modifications = bi.modifications.get();
+
+            // copy the file, the block bounds and the impact lists
+            final File blocks = blocksFile(location);
+            final File impact = impactFile(location);
+            try {
+                copy(location, target, budget);
+                if (blocks.exists()) copy(blocks, blocksFile(target), budget);
+                if (impact.exists()) copy(impact, impactFile(target), budget);
+            } catch (final IOException e) {
+                ConcurrentLog.warn("ArrayStack", "cannot copy " + location.getName() + " to " + target.getParent() + ": " + e.getMessage());
+                HeapWriter.delete(target);
+                return null;
+            }
+            final BLOB copy;
+            try {
+                copy = openReadOnly(target);
+            } catch (final IOException e) {
+                ConcurrentLog.warn("ArrayStack", "cannot open the copy of " + location.getName() + " in " + target.getParent() + ": " + e.getMessage());
+                HeapWriter.delete(target);
+                return null;
+            }
+
+            // replace the file with the copy
+            synchronized (this) {
+                final int i = this.blobs == null ? -1 : this.blobs.indexOf(bi);
+                if (i < 0 || bi.modifications.get() != modifications) {
+                    copy.close(false);
+                    HeapWriter.delete(target);
+                    ConcurrentLog.info("ArrayStack", "migration of " + location.getName() + " dropped, the file was " + (i < 0 ? "unmounted" : "written") + " during the copy");
+                    return null;
+                }
+                final blobItem moved = new blobItem(bi.creation, target, copy);
+                moved.temperature = bi.temperature;
+                moved.hits.set(bi.hits.get());
+                this.blobs.set(i, moved);
+                this.replacements.incrementAndGet();
+                bi.retire(); // the file is closed and deleted when the running reads are finished
+                if (this.coldLocation != null) saveTemperatures();
+            }
+            ConcurrentLog.info("ArrayStack", "moved " + location.getName() + " to the " + (toCold ? "cold" : "hot") + " tier " + target.getParent());
+            return target;
+        } finally {
+            this.migrating.remove(location);
+        }
+    }
+
+    /**
+     * give back a file that was selected with selectMigration() but is not moved now
+     */
+    public void cancelMigration(final File location) {
+        this.migrating.remove(location);
+    }
+
+    /**
+     * copy a file through a temporary file, so an interrupted copy leaves no file with the target name
+     */
+    private static void copy(final File source, final File target, final RateLimiter budget) throws IOException {
+        final File tmpFile = new File(target.getParentFile(), target.getName() + ".prt");
+        try (final InputStream is = new FileInputStream(source); final OutputStream os = new FileOutputStream(tmpFile)) {
+            final byte[] buffer = new byte[1024 * 1024];
+            int c;
+            while ((c = is.read(buffer)) > 0) {
+                if (budget != null) budget.acquire(c);
+                os.write(buffer, 0, c);
+            }
+        } catch (final IOException e) {
+            FileUtils.deletedelete(tmpFile);
+            throw e;
+        }
+        if (!tmpFile.renameTo(target)) {
+            FileUtils.deletedelete(tmpFile);
+            throw new IOException("cannot rename " + tmpFile.toString() + " to " + target.getName());
+        }
+    }
+
+    /**
+     * merge blob files into one. If only one file is given,
+     * then the file is only rewritten into a new one.
+     * @param files the files to merge, oldest first
      * @param factory
-     * @param payloadrow
      * @param newFile
      * @param writeBuffer
+     * @param budget limits the write rate of the merge in bytes per second, may be null for an unlimited write rate
      * @return the target file where the given files are merged in
      */
-    public File mergeMount(final File f1, final File f2,
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public File mergeMount(final File[] files,
             final ReferenceFactory<? extends Reference> factory,
-            final File newFile, final int writeBuffer) {
-        if (f2 == null) {
+            final File newFile, final int writeBuffer, final RateLimiter budget) {
+        if (files.length == 1) {
             // this is a rewrite
+            final File f1 = files[0];
             ConcurrentLog.info("BLOBArray", "rewrite of " + f1.getName());
-            final File resultFile = rewriteWorker(factory, this.keylength, this.ordering, f1, newFile, writeBuffer);
+            final File resultFile = rewriteWorker(factory, this.docids, this.statistics, (ReferenceScore) this.impactScore, this.impactSize, this.keylength, this.ordering, f1, newFile, writeBuffer, budget);
             if (resultFile == null) {
                 ConcurrentLog.warn("BLOBArray", "rewrite of file " + f1 + " returned null. newFile = " + newFile);
                 return null;
@@ -940,90 +1574,108 @@ public class ArrayStack implements BLOB {
             ConcurrentLog.info("BLOBArray", "rewrite of " + f1.getName() + " into " + resultFile);
             return resultFile;
         }
-        ConcurrentLog.info("BLOBArray", "merging " + f1.getName() + " with " + f2.getName());
-        final File resultFile = mergeWorker(factory, this.keylength, this.ordering, f1, f2, newFile, writeBuffer);
+        final String names = names(files);
+        ConcurrentLog.info("BLOBArray", "merging " + names);
+        final File resultFile = mergeWorker(factory, this.docids, this.statistics, (ReferenceScore) this.impactScore, this.impactSize, this.keylength, this.ordering, files, newFile, writeBuffer, budget);
         if (resultFile == null) {
-            ConcurrentLog.warn("BLOBArray", "merge of files " + f1 + ", " + f2 + " returned null. newFile = " + newFile);
+            ConcurrentLog.warn("BLOBArray", "merge of files " + names + " returned null. newFile = " + newFile);
             return null;
         }
         try {
             mountBLOB(resultFile, false);
         } catch (final IOException e) {
-            ConcurrentLog.warn("BLOBArray", "merge of files " + f1 + ", " + f2 + " successfull, but read failed. resultFile = " + resultFile);
+            ConcurrentLog.warn("BLOBArray", "merge of files " + names + " successfull, but read failed. resultFile = " + resultFile);
             return null;
         }
-        ConcurrentLog.info("BLOBArray", "merged " + f1.getName() + " with " + f2.getName() + " into " + resultFile);
+        ConcurrentLog.info("BLOBArray", "merged " + names + " into " + resultFile);
         return resultFile;
     }
 
+    /**
+     * @return the names of the given files as comma-separated list for log messages
+     */
+    public static String names(final File[] files) {
+        final StringBuilder sb = new StringBuilder(files.length * 40);
+        for (final File f: files) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(f.getName());
+        }
+        return sb.toString();
+    }
+
     private static <ReferenceType extends Reference> File mergeWorker(
-                    final ReferenceFactory<ReferenceType> factory,
-                    final int keylength, final ByteOrder order, final File f1, final File f2, final File newFile, final int writeBuffer) {
-        // iterate both files and write a new one
-        ReferenceIterator<ReferenceType> i1 = null;
+                    final ReferenceFactory<ReferenceType> factory, final DocIdDictionary docids, final TermStatistics statistics,
+                    final ReferenceScore<ReferenceType> impactScore, final int impactSize, final int keylength, final ByteOrder order, final File[] files, final File newFile, final int writeBuffer, final RateLimiter budget) {
+        // open all files; empty files are not needed for the merge
+        final List<ReferenceIterator<ReferenceType>> iterators = new ArrayList<ReferenceIterator<ReferenceType>>(files.length);
+        final List<File> used = new ArrayList<File>(files.length);
         try {
-            i1 = new ReferenceIterator<ReferenceType>(f1, factory);
-            ReferenceIterator<ReferenceType> i2 = null;
-            try {
-                i2 = new ReferenceIterator<ReferenceType>(f2, factory);
-                if (!i1.hasNext()) {
-                    if (i2.hasNext()) {
-                        HeapWriter.delete(f1);
-                        if (f2.renameTo(newFile)) return newFile;
-                        return f2;
-                    }
-                    HeapWriter.delete(f1);
-                    HeapWriter.delete(f2);
-                    return null;
-                } else if (!i2.hasNext()) {
-                    HeapWriter.delete(f2);
-                    if (f1.renameTo(newFile)) return newFile;
-                    return f1;
-                }
-                assert i1.hasNext();
-                assert i2.hasNext();
-                final File tmpFile = new File(newFile.getParentFile(), newFile.getName() + ".prt");
+            for (final File f: files) {
+                final ReferenceIterator<ReferenceType> i;
                 try {
-                    final HeapWriter writer = new HeapWriter(tmpFile, newFile, keylength, order, writeBuffer);
-                    merge(i1, i2, order, writer);
-                    writer.close(true);
+                    i = new ReferenceIterator<ReferenceType>(f, factory, docids);
                 } catch (final IOException e) {
-                    ConcurrentLog.severe("ArrayStack", "cannot writing or close writing merge, newFile = " + newFile.toString() + ", tmpFile = " + tmpFile.toString() + ": " + e.getMessage(), e);
-                    HeapWriter.delete(tmpFile);
-                    HeapWriter.delete(newFile);
-                    return null;
-                } catch (final SpaceExceededException e) {
-                    ConcurrentLog.severe("ArrayStack", "cannot merge because of memory failure: " + e.getMessage(), e);
-                    HeapWriter.delete(tmpFile);
-                    HeapWriter.delete(newFile);
+                    ConcurrentLog.severe("ArrayStack", "cannot merge because input files cannot be read, f = " + f.toString() + ": " + e.getMessage(), e);
                     return null;
                 }
-                // we don't need the old files any more
-                HeapWriter.delete(f1);
-                HeapWriter.delete(f2);
-                return newFile;
+                if (i.hasNext()) {
+                    iterators.add(i);
+                    used.add(f);
+                } else {
+                    i.close();
+                    HeapWriter.delete(f);
+                }
+            }
+            if (iterators.isEmpty()) return null;
+            if (iterators.size() == 1) {
+                // nothing to merge, just take over the only remaining file
+                iterators.get(0).close();
+                final File f = used.get(0);
+                if (f.renameTo(newFile)) {
+                    final File blocks = blocksFile(f);
+                    if (blocks.exists() && !blocks.renameTo(blocksFile(newFile))) HeapWriter.delete(blocks);
+                    final File impact = impactFile(f);
+                    if (impact.exists() && !impact.renameTo(impactFile(newFile))) HeapWriter.delete(impact);
+                    return newFile;
+                }
+                return f;
+            }
+            final File tmpFile = new File(newFile.getParentFile(), newFile.getName() + ".prt");
+            try {
+                final HeapWriter writer = new HeapWriter(tmpFile, newFile, keylength, order, writeBuffer);
+                final BlocksWriter<ReferenceType> blocks = new BlocksWriter<ReferenceType>(factory, newFile, keylength, order, impactScore, impactSize);
+                merge(iterators, order, writer, blocks, docids, statistics, budget);
+                if (docids != null) docids.flush(); // the ids must be stored before the merged file
+                writer.close(true);
+                blocks.close();
             } catch (final IOException e) {
-                ConcurrentLog.severe("ArrayStack", "cannot merge because input files cannot be read, f2 = " + f2.toString() + ": " + e.getMessage(), e);
+                ConcurrentLog.severe("ArrayStack", "cannot writing or close writing merge, newFile = " + newFile.toString() + ", tmpFile = " + tmpFile.toString() + ": " + e.getMessage(), e);
+                HeapWriter.delete(tmpFile);
+                HeapWriter.delete(newFile);
+                return null;
+            } catch (final SpaceExceededException e) {
+                ConcurrentLog.severe("ArrayStack", "cannot merge because of memory failure: " + e.getMessage(), e);
+                HeapWriter.delete(tmpFile);
+                HeapWriter.delete(newFile);
                 return null;
-            } finally {
-                if (i2 != null) i2.close();
             }
-        } catch (final IOException e) {
-            ConcurrentLog.severe("ArrayStack", "cannot merge because input files cannot be read, f1 = " + f1.toString() + ": " + e.getMessage(), e);
-            return null;
+            // we don't need the old files any more
+            for (final ReferenceIterator<ReferenceType> i: iterators) i.close();
+            for (final File f: used) HeapWriter.delete(f);
+            return newFile;
         } finally {
-            if (i1 != null) i1.close();
+            for (final ReferenceIterator<ReferenceType> i: iterators) i.close();
         }
     }
 
     private static <ReferenceType extends Reference> File rewriteWorker(
-            final ReferenceFactory<ReferenceType> factory,
-            final int keylength, final ByteOrder order, final File f, final File newFile, final int writeBuffer) {
+            final ReferenceFactory<ReferenceType> factory, final DocIdDictionary docids, final TermStatistics statistics,
+            final ReferenceScore<ReferenceType> impactScore, final int impactSize, final int keylength, final ByteOrder order, final File f, final File newFile, final int writeBuffer, final RateLimiter budget) {
         // iterate both files and write a new one
 
         CloneableIterator<ReferenceContainer<ReferenceType>> i = null;
         try {
-            i = new ReferenceIterator<ReferenceType>(f, factory);
+            i = new ReferenceIterator<ReferenceType>(f, factory, docids);
         } catch (final IOException e) {
             ConcurrentLog.severe("ArrayStack", "cannot rewrite because input file cannot be read, f = " + f.toString() + ": " + e.getMessage(), e);
             return null;
@@ -1036,139 +1688,128 @@ public class ArrayStack implements BLOB {
         final File tmpFile = new File(newFile.getParentFile(), newFile.getName() + ".prt");
         try {
             final HeapWriter writer = new HeapWriter(tmpFile, newFile, keylength, order, writeBuffer);
-            rewrite(i, order, writer);
+            final BlocksWriter<ReferenceType> blocks = new BlocksWriter<ReferenceType>(factory, newFile, keylength, order, impactScore, impactSize);
+            rewrite(i, order, writer, blocks, docids, statistics, budget);
+            if (docids != null) docids.flush(); // the ids must be stored before the rewritten file
             writer.close(true);
+            blocks.close();
             i.close();
         } catch (final IOException e) {
             ConcurrentLog.severe("ArrayStack", "cannot writing or close writing rewrite, newFile = " + newFile.toString() + ", tmpFile = " + tmpFile.toString() + ": " + e.getMessage(), e);
             FileUtils.deletedelete(tmpFile);
             FileUtils.deletedelete(newFile);
+            HeapWriter.delete(blocksFile(newFile));
+            HeapWriter.delete(impactFile(newFile));
             return null;
         } catch (final SpaceExceededException e) {
             ConcurrentLog.severe("ArrayStack", "cannot rewrite because of memory failure: " + e.getMessage(), e);
             FileUtils.deletedelete(tmpFile);
             FileUtils.deletedelete(newFile);
+            HeapWriter.delete(blocksFile(newFile));
+            HeapWriter.delete(impactFile(newFile));
             return null;
         }
         // we don't need the old files any more
         FileUtils.deletedelete(f);
+        HeapWriter.delete(blocksFile(f));
+        HeapWriter.delete(impactFile(f));
         return newFile;
     }
 
-    private static <ReferenceType extends Reference> void merge(
-            final CloneableIterator<ReferenceContainer<ReferenceType>> i1,
-            final CloneableIterator<ReferenceContainer<ReferenceType>> i2,
-            final ByteOrder ordering, final HeapWriter writer) throws IOException, SpaceExceededException {
-        assert i1.hasNext();
-        assert i2.hasNext();
-        byte[] c1lh, c2lh;
-        ReferenceContainer<ReferenceType> c1, c2;
-        c1 = i1.next();
-        c2 = i2.next();
-        int e, s;
-        while (true) {
-            assert c1 != null;
-            assert c2 != null;
-            e = ordering.compare(c1.getTermHash(), c2.getTermHash());
-            if (e < 0) {
-            	s = c1.shrinkReferences();
-            	if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c1.getTermHash()) + " by " + s + " to " + c1.size() + " entries");
-                writer.add(c1.getTermHash(), c1.exportCollection());
-                if (i1.hasNext()) {
-                    c1lh = c1.getTermHash();
-                    c1 = i1.next();
-                    assert ordering.compare(c1.getTermHash(), c1lh) > 0;
-                    continue;
-                }
-                c1 = null;
-                break;
-            }
-            if (e > 0) {
-                s = c2.shrinkReferences();
-                if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c2.getTermHash()) + " by " + s + " to " + c2.size() + " entries");
-                writer.add(c2.getTermHash(), c2.exportCollection());
-                if (i2.hasNext()) {
-                    c2lh = c2.getTermHash();
-                    c2 = i2.next();
-                    assert ordering.compare(c2.getTermHash(), c2lh) > 0;
-                    continue;
-                }
-                c2 = null;
-                break;
-            }
-            assert e == 0;
-            // merge the entries
-            c1 = c1.merge(c2);
-            s = c1.shrinkReferences();
-            if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c1.getTermHash()) + " by " + s + " to " + c1.size() + " entries");
-            writer.add(c1.getTermHash(), c1.exportCollection());
-            c1lh = c1.getTermHash();
-            c2lh = c2.getTermHash();
-            if (i1.hasNext() && i2.hasNext()) {
-                c1 = i1.next();
-                assert ordering.compare(c1.getTermHash(), c1lh) > 0;
-                c2 = i2.next();
-                assert ordering.compare(c2.getTermHash(), c2lh) > 0;
-                continue;
-            }
-            c1 = null;
-            c2 = null;
-            if (i1.hasNext()) {
-                c1 = i1.next();
-                assert ordering.compare(c1.getTermHash(), c1lh) > 0;
-            }
-            if (i2.hasNext()) {
-                c2 = i2.next();
-                assert ordering.compare(c2.getTermHash(), c2lh) > 0;
-            }
-            break;
-
+    /**
+     * the current head container of one of the merged files
+     */
+    private static class MergeHead<ReferenceType extends Reference> {
+        private final int source; // the position of the file in the merge, older files have a lower number
+        private final CloneableIterator<ReferenceContainer<ReferenceType>> i;
+        private ReferenceContainer<ReferenceType> c;
+        private MergeHead(final int source, final CloneableIterator<ReferenceContainer<ReferenceType>> i) {
+            this.source = source;
+            this.i = i;
+            this.c = i.next();
         }
-        // catch up remaining entries
-        assert !(i1.hasNext() && i2.hasNext());
-        assert (c1 == null) || (c2 == null);
-        while (c1 != null) {
-            //System.out.println("FLUSH REMAINING 1: " + c1.getWordHash());
-            s = c1.shrinkReferences();
-            if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c1.getTermHash()) + " by " + s + " to " + c1.size() + " entries");
-            writer.add(c1.getTermHash(), c1.exportCollection());
-            if (i1.hasNext()) {
-                c1lh = c1.getTermHash();
-                c1 = i1.next();
-                assert ordering.compare(c1.getTermHash(), c1lh) > 0;
-            } else {
-                c1 = null;
+        private boolean advance(final ByteOrder ordering) {
+            if (!this.i.hasNext()) return false;
+            final byte[] clh = this.c.getTermHash();
+            this.c = this.i.next();
+            assert ordering.compare(this.c.getTermHash(), clh) > 0;
+            return true;
+        }
+    }
+
+    /**
+     * k-way merge of sorted reference container streams: the head containers of all
+     * streams are held in a priority queue, containers for the same term are joined and
+     * written only once. The files are read only once, whatever number of files is merged.
+     */
+    private static <ReferenceType extends Reference> void merge(
+            final List<? extends CloneableIterator<ReferenceContainer<ReferenceType>>> iterators,
+            final ByteOrder ordering, final HeapWriter writer, final BlocksWriter<ReferenceType> blocks, final DocIdDictionary docids,
+            final TermStatistics statistics, final RateLimiter budget) throws IOException, SpaceExceededException {
+        final PriorityQueue<MergeHead<ReferenceType>> heads = new PriorityQueue<MergeHead<ReferenceType>>(iterators.size(), new Comparator<MergeHead<ReferenceType>>() {
+            @Override
+            public int compare(final MergeHead<ReferenceType> h1, final MergeHead<ReferenceType> h2) {
+                final int e = ordering.compare(h1.c.getTermHash(), h2.c.getTermHash());
+                return e == 0 ? h1.source - h2.source : e;
             }
+        });
+        int source = 0;
+        for (final CloneableIterator<ReferenceContainer<ReferenceType>> i: iterators) {
+            if (i.hasNext()) heads.add(new MergeHead<ReferenceType>(source, i));
+            source++;
         }
-        while (c2 != null) {
-            //System.out.println("FLUSH REMAINING 2: " + c2.getWordHash());
-            s = c2.shrinkReferences();
-            if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c2.getTermHash()) + " by " + s + " to " + c2.size() + " entries");
-            writer.add(c2.getTermHash(), c2.exportCollection());
-            if (i2.hasNext()) {
-                c2lh = c2.getTermHash();
-                c2 = i2.next();
-                assert ordering.compare(c2.getTermHash(), c2lh) > 0;
-            } else {
-                c2 = null;
+        final List<MergeHead<ReferenceType>> same = new ArrayList<MergeHead<ReferenceType>>(iterators.size());
+        ReferenceContainer<ReferenceType> c;
+        int s, size;
+        TermStatistics.Entry before;
+        while (!heads.isEmpty()) {
+            // collect the containers for the smallest term from all files
+            MergeHead<ReferenceType> h = heads.poll();
+            same.add(h);
+            c = h.c;
+            size = c.size();
+            before = null;
+            while (!heads.isEmpty() && ordering.compare(heads.peek().c.getTermHash(), c.getTermHash()) == 0) {
+                h = heads.poll();
+                if (statistics != null) {
+                    // the statistics are only needed if the merge joins references
+                    if (before == null) before = TermStatistics.summarize(c);
+                    before = before.add(TermStatistics.summarize(h.c));
+                }
+                same.add(h);
+                size += h.c.size();
+                c = c.merge(h.c);
             }
+            if (statistics != null && before == null && ReferenceContainer.maxReferences > 0 && size > ReferenceContainer.maxReferences) before = TermStatistics.summarize(c);
+            s = c.shrinkReferences();
+            if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c.getTermHash()) + " by " + s + " to " + c.size() + " entries");
+            if (before != null && c.size() != size) correct(statistics, c, before);
+            write(writer, c, docids, budget);
+            blocks.add(c);
+            for (final MergeHead<ReferenceType> m: same) if (m.advance(ordering)) heads.add(m);
+            same.clear();
         }
         // finished with writing
     }
 
     private static <ReferenceType extends Reference> void rewrite(
             final CloneableIterator<ReferenceContainer<ReferenceType>> i,
-            final ByteOrder ordering, final HeapWriter writer) throws IOException, SpaceExceededException {
+            final ByteOrder ordering, final HeapWriter writer, final BlocksWriter<ReferenceType> blocks, final DocIdDictionary docids,
+            final TermStatistics statistics, final RateLimiter budget) throws IOException, SpaceExceededException {
         assert i.hasNext();
         byte[] clh;
         ReferenceContainer<ReferenceType> c;
         c = i.next();
         int s;
+        TermStatistics.Entry before;
         while (true) {
             assert c != null;
+            before = statistics != null && ReferenceContainer.maxReferences > 0 && c.size() > ReferenceContainer.maxReferences ? TermStatistics.summarize(c) : null;
             s = c.shrinkReferences();
             if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c.getTermHash()) + " by " + s + " to " + c.size() + " entries");
-            writer.add(c.getTermHash(), c.exportCollection());
+            if (before != null && s > 0) correct(statistics, c, before);
+            write(writer, c, docids, budget);
+            blocks.add(c);
             if (i.hasNext()) {
                 clh = c.getTermHash();
                 c = i.next();
@@ -1180,6 +1821,98 @@ public class ArrayStack implements BLOB {
         // finished with writing
     }
 
+    /**
+     * correct the statistics of a term for the references that were joined or shrunk by a merge
+     * @param statistics the catalog
+     * @param c the merged container
+     * @param before the statistics of the containers before the merge
+     */
+    private static void correct(final TermStatistics statistics, final ReferenceContainer<? extends Reference> c, final TermStatistics.Entry before) {
+        final TermStatistics.Entry after = TermStatistics.summarize(c);
+        statistics.correct(c.getTermHash(), (after == null ? 0 : after.df()) - before.df(), (after == null ? 0 : after.postings()) - before.postings(), 0);
+    }
+
+    private static void write(final HeapWriter writer, final ReferenceContainer<? extends Reference> c, final DocIdDictionary docids, final RateLimiter budget) throws IOException, SpaceExceededException {
+        final byte[] b = c.exportCollection(docids);
+        // wait for the I/O budget before the record is written
+        if (budget != null) budget.acquire(Math.max(1, 4 + c.getTermHash().length + b.length));
+        writer.add(c.getTermHash(), b);
+    }
+
+    /**
+     * the file that holds the block bounds of the large reference containers in a BLOB file, see ReferenceBlocks
+     * @param f the BLOB file
+     * @return the file of the block bounds, which may not exist
+     */
+    public static File blocksFile(final File f) {
+        return new File(f.getParentFile(), f.getName() + BLOCKS_SUFFIX);
+    }
+
+    /**
+     * the file that holds the impact lists of the large reference containers in a BLOB file, see ReferenceImpact
+     * @param f the BLOB file
+     * @return the file of the impact lists, which may not exist
+     */
+    public static File impactFile(final File f) {
+        return new File(f.getParentFile(), f.getName() + IMPACT_SUFFIX);
+    }
+
+    /**
+     * writes the block bounds and the impact lists of the large containers of a merge into heaps beside the merged file.
+     * A heap is only created if there is any container that has bounds or an impact list.
+     */
+    private static class BlocksWriter<ReferenceType extends Reference> {
+        private final ReferenceFactory<ReferenceType> factory;
+        private final File blocksFile;
+        private final File impactFile;
+        private final int keylength;
+        private final ByteOrder order;
+        private final ReferenceScore<ReferenceType> impactScore;
+        private final int impactSize;
+        private HeapWriter writer;
+        private HeapWriter impactWriter;
+        private boolean bounded;
+
+        private BlocksWriter(final ReferenceFactory<ReferenceType> factory, final File newFile, final int keylength, final ByteOrder order,
+                final ReferenceScore<ReferenceType> impactScore, final int impactSize) {
+            this.factory = factory;
+            this.blocksFile = blocksFile(newFile);
+            this.impactFile = impactFile(newFile);
+            this.keylength = keylength;
+            this.order = order;
+            this.impactScore = impactScore;
+            this.impactSize = impactSize;
+            this.writer = null;
+            this.impactWriter = null;
+            this.bounded = true;
+        }
+
+        private void add(final ReferenceContainer<ReferenceType> c) throws IOException, SpaceExceededException {
+            if (!this.bounded || c.size() < ReferenceBlocks.STOREDSIZE) return;
+            final ReferenceContainer<ReferenceType> blocks = ReferenceBlocks.summarize(this.factory, c);
+            if (blocks == null) {
+                this.bounded = false; // references of this kind have no bounds and therefore no impact lists
+                return;
+            }
+            if (this.writer == null) {
+                this.writer = new HeapWriter(new File(this.blocksFile.getParentFile(), this.blocksFile.getName() + ".prt"), this.blocksFile, this.keylength, this.order, 64 * 1024);
+            }
+            this.writer.add(c.getTermHash(), blocks.exportCollection());
+            if (this.impactScore == null) return;
+            final byte[] impact = ReferenceImpact.summarize(this.factory, c, this.impactScore, this.impactSize);
+            if (impact == null) return;
+            if (this.impactWriter == null) {
+                this.impactWriter = new HeapWriter(new File(this.impactFile.getParentFile(), this.impactFile.getName() + ".prt"), this.impactFile, this.keylength, this.order, 64 * 1024);
+            }
+            this.impactWriter.add(c.getTermHash(), impact);
+        }
+
+        private void close() throws IOException {
+            if (this.writer != null) this.writer.close(true);
+            if (this.impactWriter != null) this.impactWriter.close(true);
+        }
+    }
+
     public static void main(final String[] args) {
         final File f = new File("/Users/admin/blobarraytest");
         try {
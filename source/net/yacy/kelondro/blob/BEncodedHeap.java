@@ -57,7 +57,7 @@ import net.yacy.kelondro.util.FileUtils;
  */
 public class BEncodedHeap implements MapStore {
 
-    private Heap table;
+    private final BLOB table; // a BlockHeap, or a Heap for a table in the uncompressed format
     private final LinkedHashSet<String> columnames;
 
     /**
@@ -66,7 +66,7 @@ public class BEncodedHeap implements MapStore {
      * @param location the file
      * @param keylength length of access keys
      * @param ordering ordering on the keys
-     * @param buffermax maximum number of lines that shall be buffered for writing
+     * @param buffermax maximum number of bytes that shall be buffered for writing
      * @throws IOException
      */
     public BEncodedHeap(
@@ -74,7 +74,36 @@ public class BEncodedHeap implements MapStore {
         final int keylength,
         final ByteOrder ordering,
         final int buffermax) throws IOException {
-        this.table = new Heap(location, keylength, ordering, buffermax);
+        this(location, keylength, ordering, buffermax, null);
+    }
+
+    /**
+     * produce or open a properties table
+     *
+     * @param location the file
+     * @param keylength length of access keys
+     * @param ordering ordering on the keys
+     * @param buffermax maximum number of bytes that shall be buffered for writing
+     * @param codec the compression of new blocks, or null to keep the table uncompressed. A table in the
+     *   uncompressed format is converted to compressed blocks if a codec is given; a table that has blocks
+     *   is opened as such, then new blocks are written without compression if no codec is given
+     * @throws IOException
+     */
+    public BEncodedHeap(
+        final File location,
+        final int keylength,
+        final ByteOrder ordering,
+        final int buffermax,
+        final BlockHeap.Codec codec) throws IOException {
+        if (codec != null || BlockHeap.isBlockHeap(location)) {
+            final BlockHeap heap = new BlockHeap(location, keylength, ordering, buffermax, codec == null ? BlockHeap.Codec.NONE : codec);
+            if (GroupCommit.interval > 0) heap.setWriteBehind(GroupCommit.interval);
+            this.table = heap;
+        } else {
+            final Heap heap = new Heap(location, keylength, ordering, buffermax);
+            if (GroupCommit.interval > 0) heap.setWriteBehind(GroupCommit.interval);
+            this.table = heap;
+        }
         this.columnames = new LinkedHashSet<String>();
     }
 
@@ -85,13 +114,23 @@ public class BEncodedHeap implements MapStore {
      * @param keylength length of access keys
      */
     public BEncodedHeap(final File location, final int keylength) throws IOException {
-        this.table = new Heap(location, keylength, NaturalOrder.naturalOrder, 100);
-        this.columnames = new LinkedHashSet<String>();
+        this(location, keylength, NaturalOrder.naturalOrder, 100, null);
+    }
+
+    /**
+     * convenience method to open a properies table
+     *
+     * @param location the file
+     * @param keylength length of access keys
+     * @param codec the compression of new blocks, or null to keep the table uncompressed
+     */
+    public BEncodedHeap(final File location, final int keylength, final BlockHeap.Codec codec) throws IOException {
+        this(location, keylength, NaturalOrder.naturalOrder, 100, codec);
     }
 
     @Override
     public ByteOrder getOrdering() {
-        return this.table.ordering;
+        return this.table.ordering();
     }
 
     @Override
@@ -129,21 +168,36 @@ public class BEncodedHeap implements MapStore {
         }
     }
 
+    /**
+     * write the buffered changes of the table and sync the file
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        ((GroupCommit.Committable) this.table).commit();
+    }
+
     public byte[] encodedKey(final String key) {
-        return Base64Order.enhancedCoder.encodeSubstring(Digest.encodeMD5Raw(key), this.table.keylength);
+        return Base64Order.enhancedCoder.encodeSubstring(Digest.encodeMD5Raw(key), this.table.keylength());
     }
 
     private static class EntryIter implements Iterator<Map.Entry<byte[], Map<String, byte[]>>>
     {
-        HeapReader.entries iter;
+        Iterator<Map.Entry<byte[], byte[]>> iter;
+        BLOB heap; // a heap that is closed at the end of the iteration
 
-        public EntryIter(final File location, final int keylen) throws IOException {
-            this.iter = new HeapReader.entries(location, keylen);
+        public EntryIter(final Iterator<Map.Entry<byte[], byte[]>> iter, final BLOB heap) {
+            this.iter = iter;
+            this.heap = heap;
         }
 
         @Override
         public boolean hasNext() {
-            return this.iter.hasNext();
+            final boolean n = this.iter.hasNext();
+            if (!n && this.heap != null) {
+                this.heap.close(false);
+                this.heap = null;
+            }
+            return n;
         }
 
         @Override
@@ -214,7 +268,7 @@ public class BEncodedHeap implements MapStore {
      * @return the file where the map is stored
      */
     public File getFile() {
-        return this.table.heapFile;
+        return this.table instanceof BlockHeap ? ((BlockHeap) this.table).location() : ((Heap) this.table).location();
     }
 
     /**
@@ -337,7 +391,7 @@ public class BEncodedHeap implements MapStore {
         Map.Entry<byte[], Map<String, byte[]>> row;
         Map<String, byte[]> prop;
         byte[] val;
-        final Set<byte[]> pks = new TreeSet<byte[]>(this.table.ordering);
+        final Set<byte[]> pks = new TreeSet<byte[]>(this.table.ordering());
         while ( i.hasNext() ) {
             row = i.next();
             prop = row.getValue();
@@ -528,8 +582,8 @@ public class BEncodedHeap implements MapStore {
     @Override
     public synchronized void close() {
         int s = this.size();
-        File f = this.table.heapFile;
-        this.table.close();
+        File f = this.getFile();
+        this.table.close(true);
         if (s == 0) f.delete();
     }
 
@@ -541,7 +595,7 @@ public class BEncodedHeap implements MapStore {
      */
     @Override
     public Set<byte[]> keySet() {
-        final TreeSet<byte[]> set = new TreeSet<byte[]>(this.table.ordering);
+        final TreeSet<byte[]> set = new TreeSet<byte[]>(this.table.ordering());
         try {
             final Iterator<byte[]> i = this.table.keys(true, false);
             while ( i.hasNext() ) {
@@ -606,23 +660,13 @@ public class BEncodedHeap implements MapStore {
      */
     @Override
     public Iterator<Map.Entry<byte[], Map<String, byte[]>>> iterator() {
-        final File location = this.table.location();
-        final int keylen = this.table.keylength();
         try {
-            this.table.flushBuffer();
-            return new EntryIter(location, keylen);
-        } catch (final IOException e1 ) {
-            final ByteOrder order = this.table.ordering();
-            final int buffermax = this.table.getBuffermax();
-            this.table.close();
-            try {
-                final Iterator<Map.Entry<byte[], Map<String, byte[]>>> iter = new EntryIter(location, keylen);
-                this.table = new Heap(location, keylen, order, buffermax);
-                return iter;
-            } catch (final IOException e ) {
-                ConcurrentLog.severe("PropertiesTable", e.getMessage(), e);
-                return null;
-            }
+            if (this.table instanceof BlockHeap) return new EntryIter(((BlockHeap) this.table).entries(), null);
+            ((Heap) this.table).flushBuffer();
+            return new EntryIter(new HeapReader.entries(this.getFile(), this.table.keylength()), null);
+        } catch (final IOException e ) {
+            ConcurrentLog.severe("PropertiesTable", e.getMessage(), e);
+            return null;
         }
     }
 
@@ -638,7 +682,9 @@ public class BEncodedHeap implements MapStore {
     public static Iterator<Map.Entry<byte[], Map<String, byte[]>>> iterator(
         final File location,
         final int keylen) throws IOException {
-        return new EntryIter(location, keylen);
+        if (!BlockHeap.isBlockHeap(location)) return new EntryIter(new HeapReader.entries(location, keylen), null);
+        final BlockHeap heap = new BlockHeap(location, keylen, NaturalOrder.naturalOrder, 0, BlockHeap.Codec.NONE);
+        return new EntryIter(heap.entries(), heap);
     }
 
     /**
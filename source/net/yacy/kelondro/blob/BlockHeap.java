@@ -0,0 +1,980 @@
+// BlockHeap.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.commons.compress.compressors.lz4.BlockLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.BlockLZ4CompressorOutputStream;
+
+import net.yacy.cora.order.ByteOrder;
+import net.yacy.cora.order.CloneableIterator;
+import net.yacy.cora.storage.HandleMap;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.LookAheadIterator;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.RowHandleMap;
+import net.yacy.kelondro.index.RowHandleSet;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.kelondro.util.RotateIterator;
+
+/**
+ * A heap file that stores its records in compressed blocks.
+ * Small records like the BEncoded property maps of the work tables compress badly one by one;
+ * packed into blocks of some kilobytes they compress well and a read of a neighbour record
+ * does not need another decompression, because the decompressed blocks are kept in a LRU cache.
+ *
+ * File format:
+ * file   :== magic version {block}
+ * block  :== <int compressed length> <byte codec> <int raw length> <compressed bytes of records>
+ * records:== {<key> <int value length> <value>}
+ * A value length of -1 marks a deleted key. The file is only appended; a later record of a key replaces all
+ * earlier records. Changes are collected in a write buffer and are written as a block when the buffer
+ * exceeds the given buffer size. Because many small blocks compress badly and replaced records use space,
+ * the file is rewritten in key order when the share of small blocks or of dead records gets too large.
+ *
+ * The index holds the block position of each key; the block size and the cache size are the same for all heaps.
+ * Files in the Heap format are converted when they are opened.
+ */
+public class BlockHeap implements BLOB, GroupCommit.Committable {
+
+    private final static ConcurrentLog log = new ConcurrentLog("BlockHeap");
+
+    /** the compression of a block */
+    public enum Codec {
+        /** no compression */
+        NONE,
+        /** fast compression with the LZ4 block format */
+        LZ4,
+        /** strong compression with deflate */
+        DEFLATE;
+
+        /**
+         * @param name a codec name, case is ignored
+         * @param dflt the codec that is returned if the name is unknown
+         * @return the codec
+         */
+        public static Codec parse(final String name, final Codec dflt) {
+            if (name == null) return dflt;
+            for (final Codec c: values()) if (c.name().equalsIgnoreCase(name.trim())) return c;
+            return dflt;
+        }
+    }
+
+    private static final byte[] MAGIC = {'Y', 'B', 'L', 'K'};
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 1;
+    private static final int BLOCK_HEADER_LENGTH = 9;
+    private static final int DELETED = -1;
+
+    /** target size of the uncompressed content of a block */
+    public static final int BLOCK_SIZE = 32 * 1024;
+    /** blocks with less content are written without compression */
+    private static final int MIN_COMPRESS_SIZE = 256;
+    /** default size of the block cache of each heap in bytes */
+    public static final int DEFAULT_CACHE_SIZE = 1024 * 1024;
+
+    private final File location;
+    private final int keylength;
+    private final ByteOrder ordering;
+    private final Codec codec;
+    private final int buffermax;
+    private final long cachemax;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private HandleMap index; // key -> block position << 24 | record length (cut to 24 bits, for statistics only)
+    private TreeMap<byte[], byte[]> buffer; // new records that are not yet written
+    private TreeMap<byte[], Boolean> deletes; // keys that are deleted in the file but not yet marked in the file
+    private int buffersize;
+    private long fileRaw, liveRaw, smallRaw; // uncompressed record bytes in the file: all, the live records and in small blocks
+    private final LinkedHashMap<Long, byte[]> cache;
+    private long cachesize;
+    private long cacheHits, cacheMisses;
+    private final Deflater deflater;
+    private final Inflater inflater;
+    private ScheduledFuture<?> committer; // the regular commit in write-behind mode, null if the buffer is written by the inserting thread
+    private boolean commitPending;
+    private boolean dirty; // the file was changed since the last sync
+
+    /**
+     * open or create a block heap file. A file in the Heap format is converted.
+     * @param location the file
+     * @param keylength the length of the keys
+     * @param ordering the order of the keys
+     * @param buffermax the maximum number of bytes in the write buffer
+     * @param codec the compression for new blocks; existing blocks keep their compression until the file is rewritten
+     * @throws IOException
+     */
+    public BlockHeap(final File location, final int keylength, final ByteOrder ordering, final int buffermax, final Codec codec) throws IOException {
+        this(location, keylength, ordering, buffermax, codec, DEFAULT_CACHE_SIZE);
+    }
+
+    public BlockHeap(final File location, final int keylength, final ByteOrder ordering, final int buffermax, final Codec codec, final long cachemax) throws IOException {
+        this.location = location;
+        this.keylength = keylength;
+        this.ordering = ordering;
+        this.codec = codec;
+        this.buffermax = buffermax;
+        this.cachemax = cachemax;
+        this.cache = new LinkedHashMap<Long, byte[]>(16, 0.75f, true);
+        this.deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        this.inflater = new Inflater();
+        this.buffer = new TreeMap<byte[], byte[]>(ordering);
+        this.deletes = new TreeMap<byte[], Boolean>(ordering);
+        this.buffersize = 0;
+
+        recoverMigration(location);
+        if (location.exists() && location.length() > 0 && !isBlockHeap(location)) migrate();
+        open();
+    }
+
+    /**
+     * test if a file has the block heap format
+     * @param f
+     * @return true if the file starts with the block heap magic
+     */
+    public static boolean isBlockHeap(final File f) {
+        if (!f.exists() || f.length() < HEADER_LENGTH) return false;
+        try (RandomAccessFile r = new RandomAccessFile(f, "r")) {
+            final byte[] m = new byte[MAGIC.length];
+            r.readFully(m);
+            for (int i = 0; i < MAGIC.length; i++) if (m[i] != MAGIC[i]) return false;
+            return true;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    private static File migrationFile(final File f) {
+        return new File(f.getParentFile(), f.getName() + ".migrate");
+    }
+
+    private static File compactionFile(final File f) {
+        return new File(f.getParentFile(), f.getName() + ".compact");
+    }
+
+    /**
+     * finish or roll back a conversion or rewrite that was interrupted
+     */
+    private static void recoverMigration(final File f) {
+        for (final File m: new File[]{migrationFile(f), compactionFile(f)}) {
+            if (!m.exists()) continue;
+            if (f.exists()) {
+                // the original was not replaced, the new file may be incomplete
+                FileUtils.deletedelete(m);
+            } else {
+                // the original was removed, the new file is complete
+                m.renameTo(f);
+            }
+        }
+    }
+
+    /**
+     * convert a file in the Heap format
+     * @throws IOException
+     */
+    private void migrate() throws IOException {
+        final long start = System.currentTimeMillis();
+        final long oldLength = this.location.length();
+        final File m = migrationFile(this.location);
+        final BlockWriter writer = new BlockWriter(m);
+        final HeapReader.entries entries = new HeapReader.entries(this.location, this.keylength);
+        int c = 0;
+        try {
+            // the heap file has no double entries, the records can be written in file order
+            while (entries.hasNext()) {
+                final Map.Entry<byte[], byte[]> entry = entries.next();
+                if (entry == null) continue;
+                writer.add(entry.getKey(), entry.getValue());
+                c++;
+            }
+        } finally {
+            entries.close();
+            writer.close();
+        }
+        HeapReader.deleteAllFingerprints(this.location, null, null);
+        FileUtils.deletedelete(this.location);
+        if (!m.renameTo(this.location)) throw new IOException("cannot rename " + m + " to " + this.location);
+        log.info("converted " + this.location.getName() + " to block format: " + c + " records, " + oldLength + " -> " + this.location.length() + " bytes, " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * open the file and build the index from the blocks
+     */
+    private void open() throws IOException {
+        final boolean exists = this.location.exists() && this.location.length() >= HEADER_LENGTH;
+        if (this.location.getParentFile() != null) this.location.getParentFile().mkdirs();
+        this.raf = new RandomAccessFile(this.location, "rw");
+        this.channel = this.raf.getChannel();
+        if (!exists) {
+            this.raf.setLength(0);
+            this.raf.write(MAGIC);
+            this.raf.write(VERSION);
+        }
+        this.index = new RowHandleMap(this.keylength, this.ordering, 8, 100, this.location.getName());
+        this.fileRaw = 0;
+        this.liveRaw = 0;
+        this.smallRaw = 0;
+        this.cache.clear();
+        this.cachesize = 0;
+
+        final long length = this.channel.size();
+        long pos = HEADER_LENGTH;
+        while (pos < length) {
+            if (length - pos < BLOCK_HEADER_LENGTH) {
+                // an incomplete block header at the end, from a crash while writing
+                log.warn("truncating " + this.location.getName() + " at incomplete block at position " + pos);
+                this.channel.truncate(pos);
+                break;
+            }
+            final ByteBuffer h = ByteBuffer.allocate(BLOCK_HEADER_LENGTH);
+            readFully(h, pos);
+            final int clen = h.getInt(0);
+            if (!validHeader(h)) {
+                // the end of the block is unknown, so the following blocks cannot be found
+                this.raf.close();
+                this.raf = null;
+                throw new IOException("damaged block header in " + this.location.getName() + " at position " + pos + " of " + length + ", the file must be repaired or removed");
+            }
+            final long next = pos + BLOCK_HEADER_LENGTH + clen;
+            if (next > length) {
+                // an incomplete block at the end, from a crash while writing
+                log.warn("truncating " + this.location.getName() + " at incomplete block at position " + pos);
+                this.channel.truncate(pos);
+                break;
+            }
+            final byte[] block;
+            try {
+                block = readBlock(pos);
+            } catch (final IOException e) {
+                if (next == length) {
+                    // the last block may be damaged by a crash while writing
+                    log.warn("truncating " + this.location.getName() + " at damaged block at position " + pos + ": " + e.getMessage());
+                    this.channel.truncate(pos);
+                    break;
+                }
+                // the records of a damaged block within the file are lost, the following blocks are still read
+                log.severe("skipping damaged block in " + this.location.getName() + " at position " + pos + ": " + e.getMessage());
+                pos = next;
+                continue;
+            }
+            try {
+                indexBlock(pos, block);
+            } catch (final SpaceExceededException e) {
+                throw new IOException(e.getMessage());
+            }
+            pos = next;
+        }
+        this.raf.seek(this.channel.size());
+    }
+
+    private static boolean validHeader(final ByteBuffer h) {
+        final int codecId = h.get(4);
+        return h.getInt(0) >= 0 && h.getInt(5) >= 0 && codecId >= 0 && codecId < Codec.values().length;
+    }
+
+    private void readFully(final ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining()) {
+            final int c = this.channel.read(b, pos);
+            if (c < 0) throw new IOException("unexpected end of file " + this.location.getName());
+            pos += c;
+        }
+    }
+
+    /**
+     * read and decompress a block from the file
+     */
+    private byte[] readBlock(final long pos) throws IOException {
+        final ByteBuffer h = ByteBuffer.allocate(BLOCK_HEADER_LENGTH);
+        readFully(h, pos);
+        final int clen = h.getInt(0);
+        final int codecId = h.get(4);
+        final int rawlen = h.getInt(5);
+        if (!validHeader(h) || pos + BLOCK_HEADER_LENGTH + clen > this.channel.size()) {
+            throw new IOException("bad block header");
+        }
+        final byte[] c = new byte[clen];
+        readFully(ByteBuffer.wrap(c), pos + BLOCK_HEADER_LENGTH);
+        return decompress(Codec.values()[codecId], c, rawlen);
+    }
+
+    /**
+     * enter the records of a block into the index
+     */
+    private void indexBlock(final long pos, final byte[] block) throws SpaceExceededException {
+        final boolean small = block.length < BLOCK_SIZE / 2;
+        int p = 0;
+        final byte[] key = new byte[this.keylength];
+        while (p + this.keylength + 4 <= block.length) {
+            System.arraycopy(block, p, key, 0, this.keylength);
+            final int vlen = getInt(block, p + this.keylength);
+            final int reclen = this.keylength + 4 + Math.max(0, vlen);
+            this.fileRaw += reclen;
+            if (small) this.smallRaw += reclen;
+            final long old = this.index.get(key);
+            if (old >= 0) this.liveRaw -= old & 0xFFFFFFL;
+            if (vlen == DELETED) {
+                this.index.remove(key);
+            } else {
+                this.index.put(key.clone(), pos << 24 | Math.min(reclen, 0xFFFFFF));
+                this.liveRaw += Math.min(reclen, 0xFFFFFF);
+            }
+            p += reclen;
+        }
+    }
+
+    /**
+     * get a decompressed block from the cache or from the file
+     */
+    private byte[] block(final long pos) throws IOException {
+        final Long p = Long.valueOf(pos);
+        byte[] block = this.cache.get(p);
+        if (block != null) {
+            this.cacheHits++;
+            return block;
+        }
+        this.cacheMisses++;
+        block = readBlock(pos);
+        this.cache.put(p, block);
+        this.cachesize += block.length;
+        final Iterator<Map.Entry<Long, byte[]>> i = this.cache.entrySet().iterator();
+        while (this.cachesize > this.cachemax && this.cache.size() > 1 && i.hasNext()) {
+            // remove the least recently used blocks
+            this.cachesize -= i.next().getValue().length;
+            i.remove();
+        }
+        return block;
+    }
+
+    /**
+     * find a record in a block
+     * @return the value of the last record of the key in the block or null if the key is deleted or not in the block
+     */
+    private byte[] find(final byte[] block, final byte[] key) {
+        byte[] value = null;
+        int p = 0;
+        while (p + this.keylength + 4 <= block.length) {
+            final int vlen = getInt(block, p + this.keylength);
+            if (this.ordering.compare(block, p, key, 0, this.keylength) == 0) {
+                if (vlen == DELETED) {
+                    value = null;
+                } else {
+                    value = new byte[vlen];
+                    System.arraycopy(block, p + this.keylength + 4, value, 0, vlen);
+                }
+            }
+            p += this.keylength + 4 + Math.max(0, vlen);
+        }
+        return value;
+    }
+
+    private static int getInt(final byte[] b, final int p) {
+        return ((b[p] & 0xff) << 24) | ((b[p + 1] & 0xff) << 16) | ((b[p + 2] & 0xff) << 8) | (b[p + 3] & 0xff);
+    }
+
+    private static void putInt(final ByteArrayOutputStream os, final int i) {
+        os.write(i >>> 24);
+        os.write(i >>> 16);
+        os.write(i >>> 8);
+        os.write(i);
+    }
+
+    private byte[] compress(final Codec c, final byte[] raw) throws IOException {
+        switch (c) {
+            case LZ4: {
+                final ByteArrayOutputStream os = new ByteArrayOutputStream(raw.length / 2 + 16);
+                try (BlockLZ4CompressorOutputStream lz4 = new BlockLZ4CompressorOutputStream(os)) {
+                    lz4.write(raw);
+                }
+                return os.toByteArray();
+            }
+            case DEFLATE: {
+                // one deflater for all blocks of this heap; the caller holds the lock
+                this.deflater.reset();
+                this.deflater.setInput(raw);
+                this.deflater.finish();
+                final ByteArrayOutputStream os = new ByteArrayOutputStream(raw.length / 2 + 16);
+                final byte[] b = new byte[8192];
+                while (!this.deflater.finished()) os.write(b, 0, this.deflater.deflate(b));
+                return os.toByteArray();
+            }
+            default:
+                return raw;
+        }
+    }
+
+    private byte[] decompress(final Codec c, final byte[] compressed, final int rawlen) throws IOException {
+        final byte[] raw;
+        switch (c) {
+            case LZ4: {
+                raw = new byte[rawlen];
+                try (InputStream is = new BlockLZ4CompressorInputStream(new ByteArrayInputStream(compressed))) {
+                    int p = 0;
+                    while (p < rawlen) {
+                        final int n = is.read(raw, p, rawlen - p);
+                        if (n < 0) throw new IOException("lz4 block too short");
+                        p += n;
+                    }
+                }
+                return raw;
+            }
+            case DEFLATE: {
+                raw = new byte[rawlen];
+                synchronized (this.inflater) {
+                    this.inflater.reset();
+                    this.inflater.setInput(compressed);
+                    try {
+                        int p = 0;
+                        while (p < rawlen) {
+                            final int n = this.inflater.inflate(raw, p, rawlen - p);
+                            if (n == 0 && (this.inflater.finished() || this.inflater.needsInput())) throw new IOException("deflate block too short");
+                            p += n;
+                        }
+                    } catch (final DataFormatException e) {
+                        throw new IOException(e.getMessage());
+                    }
+                }
+                return raw;
+            }
+            default:
+                if (compressed.length != rawlen) throw new IOException("bad block length");
+                return compressed;
+        }
+    }
+
+    /**
+     * write a block of records at the end of the file
+     * @param records the uncompressed records
+     * @return the position of the block
+     */
+    private long writeBlock(final RandomAccessFile f, final byte[] records) throws IOException {
+        final Codec c = records.length < MIN_COMPRESS_SIZE ? Codec.NONE : this.codec;
+        byte[] compressed = compress(c, records);
+        Codec used = c;
+        if (compressed.length >= records.length && c != Codec.NONE) {
+            // not compressible
+            compressed = records;
+            used = Codec.NONE;
+        }
+        final long pos = f.length();
+        final ByteArrayOutputStream os = new ByteArrayOutputStream(BLOCK_HEADER_LENGTH + compressed.length);
+        putInt(os, compressed.length);
+        os.write(used.ordinal());
+        putInt(os, records.length);
+        os.write(compressed);
+        f.seek(pos);
+        f.write(os.toByteArray());
+        return pos;
+    }
+
+    /**
+     * collects records and writes them as blocks of the target size; used for conversion and rewrite
+     */
+    private final class BlockWriter {
+        private final RandomAccessFile f;
+        private final ByteArrayOutputStream block;
+        private final List<byte[]> keys;
+        private final List<Integer> lengths;
+        private final HandleMap newIndex;
+        private long written;
+
+        private BlockWriter(final File file) throws IOException {
+            if (file.exists()) FileUtils.deletedelete(file);
+            this.f = new RandomAccessFile(file, "rw");
+            this.f.write(MAGIC);
+            this.f.write(VERSION);
+            this.block = new ByteArrayOutputStream(BLOCK_SIZE + 1024);
+            this.keys = new ArrayList<byte[]>();
+            this.lengths = new ArrayList<Integer>();
+            this.newIndex = new RowHandleMap(BlockHeap.this.keylength, BlockHeap.this.ordering, 8, 100, file.getName());
+            this.written = 0;
+        }
+
+        private void add(final byte[] key, final byte[] value) throws IOException {
+            this.block.write(HeapReader.normalizeKey(key, BlockHeap.this.keylength));
+            putInt(this.block, value.length);
+            this.block.write(value);
+            this.keys.add(key);
+            this.lengths.add(BlockHeap.this.keylength + 4 + value.length);
+            if (this.block.size() >= BLOCK_SIZE) flush();
+        }
+
+        private void flush() throws IOException {
+            if (this.block.size() == 0) return;
+            final long pos = writeBlock(this.f, this.block.toByteArray());
+            for (int i = 0; i < this.keys.size(); i++) {
+                try {
+                    this.newIndex.put(HeapReader.normalizeKey(this.keys.get(i), BlockHeap.this.keylength), pos << 24 | Math.min(this.lengths.get(i), 0xFFFFFF));
+                } catch (final SpaceExceededException e) {
+                    throw new IOException(e.getMessage());
+                }
+                this.written += Math.min(this.lengths.get(i), 0xFFFFFF);
+            }
+            this.block.reset();
+            this.keys.clear();
+            this.lengths.clear();
+        }
+
+        private void close() throws IOException {
+            flush();
+            this.f.getFD().sync();
+            this.f.close();
+        }
+    }
+
+    /**
+     * rewrite the file: all live records in key order, packed into full blocks
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        final long start = System.currentTimeMillis();
+        final long oldLength = this.channel.size();
+        flushBuffer();
+        final File c = compactionFile(this.location);
+        final BlockWriter writer = new BlockWriter(c);
+        try {
+            final Iterator<byte[]> i = this.index.keys(true, null);
+            while (i.hasNext()) {
+                final byte[] key = i.next();
+                final byte[] value = get0(key);
+                if (value != null) writer.add(key, value);
+            }
+        } finally {
+            writer.close();
+        }
+        this.raf.close();
+        FileUtils.deletedelete(this.location);
+        if (!c.renameTo(this.location)) throw new IOException("cannot rename " + c + " to " + this.location);
+        this.raf = new RandomAccessFile(this.location, "rw");
+        this.channel = this.raf.getChannel();
+        this.raf.seek(this.channel.size());
+        this.index.close();
+        this.index = writer.newIndex;
+        this.fileRaw = writer.written;
+        this.liveRaw = writer.written;
+        this.smallRaw = 0;
+        this.cache.clear();
+        this.cachesize = 0;
+        log.info("rewrote " + this.location.getName() + ": " + oldLength + " -> " + this.channel.size() + " bytes, " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * the file shall be rewritten if more than half of it is dead records or if too much is in small blocks
+     */
+    private boolean needsCompaction() {
+        final long dead = this.fileRaw - this.liveRaw;
+        return dead > Math.max(BLOCK_SIZE * 4, this.liveRaw) || this.smallRaw > Math.max(BLOCK_SIZE * 8, this.liveRaw / 2);
+    }
+
+    /**
+     * write all buffered changes to the file
+     * @throws IOException
+     */
+    public synchronized void flushBuffer() throws IOException {
+        if (this.buffer == null || (this.buffer.isEmpty() && this.deletes.isEmpty())) return;
+        final ByteArrayOutputStream block = new ByteArrayOutputStream(this.buffersize + (this.buffer.size() + this.deletes.size()) * (this.keylength + 4));
+        final List<byte[]> keys = new ArrayList<byte[]>();
+        final List<Integer> lengths = new ArrayList<Integer>();
+        // deletions first: a deleted key may be written again in the same block
+        for (final byte[] key: this.deletes.keySet()) {
+            block.write(key);
+            putInt(block, DELETED);
+        }
+        final int deleted = this.deletes.size() * (this.keylength + 4);
+        for (final Map.Entry<byte[], byte[]> entry: this.buffer.entrySet()) {
+            block.write(entry.getKey());
+            putInt(block, entry.getValue().length);
+            block.write(entry.getValue());
+            keys.add(entry.getKey());
+            lengths.add(this.keylength + 4 + entry.getValue().length);
+        }
+        final byte[] records = block.toByteArray();
+        final long pos = writeBlock(this.raf, records);
+        this.dirty = true;
+        this.fileRaw += records.length;
+        if (records.length < BLOCK_SIZE / 2) this.smallRaw += records.length;
+        for (int i = 0; i < keys.size(); i++) {
+            final long reclen = Math.min(lengths.get(i), 0xFFFFFF);
+            try {
+                this.index.put(keys.get(i), pos << 24 | reclen);
+            } catch (final SpaceExceededException e) {
+                throw new IOException(e.getMessage());
+            }
+            this.liveRaw += reclen;
+        }
+        assert records.length >= deleted;
+        this.buffer.clear();
+        this.deletes.clear();
+        this.buffersize = 0;
+        if (needsCompaction()) compact();
+    }
+
+    @Override
+    public String name() {
+        return this.location.getName();
+    }
+
+    public File location() {
+        return this.location;
+    }
+
+    @Override
+    public int keylength() {
+        return this.keylength;
+    }
+
+    @Override
+    public ByteOrder ordering() {
+        return this.ordering;
+    }
+
+    public int getBuffermax() {
+        return this.buffermax;
+    }
+
+    public Codec codec() {
+        return this.codec;
+    }
+
+    /**
+     * switch the write-behind mode: changes stay in the write buffer, which is written as one block
+     * and synced by the GroupCommit thread in the given interval. Readers see the buffered changes at any time.
+     * See GroupCommit for the crash semantics.
+     * @param intervalMillis the commit interval in milliseconds; 0 switches back to writes by the inserting thread
+     */
+    public synchronized void setWriteBehind(final long intervalMillis) {
+        if (this.committer != null) {
+            this.committer.cancel(false);
+            this.committer = null;
+        }
+        if (intervalMillis > 0) this.committer = GroupCommit.schedule(this, intervalMillis);
+    }
+
+    public synchronized boolean isWriteBehind() {
+        return this.committer != null;
+    }
+
+    /**
+     * write the buffer as one block and sync the file. The sync is done without a lock on the heap.
+     */
+    @Override
+    public void commit() throws IOException {
+        final FileChannel c;
+        synchronized (this) {
+            this.commitPending = false;
+            if (this.raf == null) return;
+            flushBuffer();
+            if (!this.dirty) return;
+            this.dirty = false;
+            c = this.channel;
+        }
+        // a rewrite may have replaced the channel, that one was synced before it was renamed
+        if (c.isOpen()) c.force(false);
+    }
+
+    /**
+     * write the buffer if it is full; in write-behind mode this is done by the commit thread
+     * unless the buffer grows beyond twice its size
+     */
+    private void checkBuffer(final int size) throws IOException {
+        if (size <= this.buffermax) return;
+        if (this.committer == null || size > 2 * this.buffermax) {
+            flushBuffer();
+        } else if (!this.commitPending) {
+            this.commitPending = true;
+            GroupCommit.trigger(this);
+        }
+    }
+
+    @Override
+    public synchronized void clear() throws IOException {
+        this.buffer.clear();
+        this.deletes.clear();
+        this.buffersize = 0;
+        this.raf.close();
+        FileUtils.deletedelete(this.location);
+        this.index.close();
+        open();
+    }
+
+    @Override
+    public synchronized void optimize() {
+        try {
+            flushBuffer();
+            if (this.fileRaw > this.liveRaw || this.smallRaw > 0) compact();
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    @Override
+    public synchronized long mem() {
+        return this.index.mem() + this.cachesize + this.buffersize;
+    }
+
+    @Override
+    public synchronized int size() {
+        if (this.index == null) return 0;
+        return this.index.size() + this.buffer.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public synchronized CloneableIterator<byte[]> keys(final boolean up, final boolean rotating) throws IOException {
+        final RowHandleSet snapshot = keySnapshot();
+        return new RotateIterator<byte[]>(snapshot.keys(up, null), null, snapshot.size());
+    }
+
+    @Override
+    public synchronized CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) throws IOException {
+        return keySnapshot().keys(up, firstKey);
+    }
+
+    /**
+     * copy the keys of the index: a flush may rewrite the file and replace the index while the keys are iterated
+     * @return the keys of all entries
+     * @throws IOException
+     */
+    private RowHandleSet keySnapshot() throws IOException {
+        flushBuffer();
+        final RowHandleSet snapshot = new RowHandleSet(this.keylength, this.ordering, this.index.size());
+        final Iterator<byte[]> i = this.index.keys(true, null);
+        try {
+            while (i.hasNext()) snapshot.put(i.next());
+        } catch (final SpaceExceededException e) {
+            throw new IOException(e.getMessage());
+        }
+        return snapshot;
+    }
+
+    @Override
+    public synchronized boolean containsKey(byte[] key) {
+        if (this.index == null) return false;
+        key = HeapReader.normalizeKey(key, this.keylength);
+        return this.buffer.containsKey(key) || this.index.has(key);
+    }
+
+    @Override
+    public synchronized byte[] get(byte[] key) throws IOException {
+        if (this.index == null) return null;
+        key = HeapReader.normalizeKey(key, this.keylength);
+        final byte[] b = this.buffer.get(key);
+        if (b != null) return b;
+        return get0(key);
+    }
+
+    private byte[] get0(final byte[] key) throws IOException {
+        final long l = this.index.get(key);
+        if (l < 0) return null;
+        return find(block(l >>> 24), key);
+    }
+
+    @Override
+    public byte[] get(final Object key) {
+        if (!(key instanceof byte[])) return null;
+        try {
+            return get((byte[]) key);
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized long length() throws IOException {
+        return this.channel.size() + this.buffersize;
+    }
+
+    @Override
+    public synchronized long length(final byte[] key) throws IOException {
+        final byte[] b = get(key);
+        return b == null ? -1 : b.length;
+    }
+
+    @Override
+    public synchronized void insert(byte[] key, final byte[] b) throws IOException {
+        key = HeapReader.normalizeKey(key, this.keylength);
+        // we do not write records of length 0 into the BLOB
+        if (b.length == 0) return;
+        delete0(key);
+        this.buffer.put(key, b);
+        this.buffersize += b.length + this.keylength + 4;
+        checkBuffer(this.buffersize);
+    }
+
+    @Override
+    public synchronized void delete(byte[] key) throws IOException {
+        key = HeapReader.normalizeKey(key, this.keylength);
+        delete0(key);
+        if (!this.deletes.isEmpty()) checkBuffer(this.buffersize + this.deletes.size() * (this.keylength + 4));
+    }
+
+    private void delete0(final byte[] key) {
+        final byte[] b = this.buffer.remove(key);
+        if (b != null) this.buffersize -= b.length + this.keylength + 4;
+        final long l = this.index.remove(key);
+        if (l >= 0) {
+            // the record in the file must be marked as deleted
+            this.liveRaw -= l & 0xFFFFFFL;
+            this.deletes.put(key, Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public synchronized int replace(final byte[] key, final Rewriter rewriter) throws IOException, SpaceExceededException {
+        final byte[] b = get(key);
+        if (b == null) return 0;
+        final byte[] c = rewriter.rewrite(b);
+        if (c == null) return 0;
+        if (c.length == 0) delete(key); else insert(key, c);
+        return b.length - c.length;
+    }
+
+    @Override
+    public int reduce(final byte[] key, final Reducer reducer) throws IOException, SpaceExceededException {
+        return replace(key, reducer);
+    }
+
+    /**
+     * @return the number of block reads that were answered from the block cache
+     */
+    public synchronized long cacheHits() {
+        return this.cacheHits;
+    }
+
+    /**
+     * @return the number of blocks that were read from the file and decompressed
+     */
+    public synchronized long cacheMisses() {
+        return this.cacheMisses;
+    }
+
+    /**
+     * iterate all entries in key order. Neighbour keys are stored in the same block after a rewrite,
+     * so each block is decompressed about once. The keys are a snapshot, the values are read when they are reached.
+     * @return the entries
+     * @throws IOException
+     */
+    public CloneableIterator<Map.Entry<byte[], byte[]>> entries() throws IOException {
+        final CloneableIterator<byte[]> keys = keys(true, null);
+        return new EntryIterator(keys);
+    }
+
+    private final class EntryIterator extends LookAheadIterator<Map.Entry<byte[], byte[]>> implements CloneableIterator<Map.Entry<byte[], byte[]>> {
+        private final CloneableIterator<byte[]> keys;
+
+        private EntryIterator(final CloneableIterator<byte[]> keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        protected Map.Entry<byte[], byte[]> next0() {
+            while (this.keys.hasNext()) {
+                final byte[] key = this.keys.next();
+                final byte[] value;
+                try {
+                    value = get(key);
+                } catch (final IOException e) {
+                    ConcurrentLog.logException(e);
+                    return null;
+                }
+                if (value != null) return new AbstractMap.SimpleImmutableEntry<byte[], byte[]>(key, value);
+            }
+            return null;
+        }
+
+        @Override
+        public CloneableIterator<Map.Entry<byte[], byte[]>> clone(final Object modifier) {
+            try {
+                return entries();
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+                return null;
+            }
+        }
+
+        @Override
+        public void close() {
+            this.keys.close();
+        }
+    }
+
+    /**
+     * close the file; buffered changes are written
+     * @param writeIDX if true, the file is rewritten if that is worthwhile
+     */
+    @Override
+    public synchronized void close(final boolean writeIDX) {
+        if (this.raf == null) return;
+        if (this.committer != null) {
+            this.committer.cancel(false);
+            this.committer = null;
+        }
+        try {
+            flushBuffer();
+            if (this.dirty) this.channel.force(false);
+            if (writeIDX && (this.fileRaw - this.liveRaw > BLOCK_SIZE || this.smallRaw > BLOCK_SIZE)) compact();
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+        try {
+            this.raf.close();
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+        this.raf = null;
+        this.channel = null;
+        if (this.index != null) this.index.close();
+        this.index = null;
+        this.buffer = null;
+        this.cache.clear();
+        this.cachesize = 0;
+        this.deflater.end();
+        this.inflater.end();
+    }
+
+    public synchronized void close() {
+        close(true);
+    }
+}
@@ -0,0 +1,108 @@
+// GroupCommit.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.yacy.cora.util.ConcurrentLog;
+
+/**
+ * Write-behind for heaps: a heap in write-behind mode does not write its write buffer in the thread
+ * that inserts a record. The buffer is written in one append by a shared background thread at a
+ * fixed interval, and the file is synced after each write (group commit). All records that were
+ * inserted within one interval reach the disk with one write and one sync.
+ *
+ * Crash semantics: records that are in the write buffer when the process dies are lost, that are
+ * at most the changes of the last interval. Each batch is appended at the end of the file; a batch
+ * that was only written partly is cut off when the file is opened again, so a reopened heap contains
+ * all complete batches and never a damaged record.
+ */
+public final class GroupCommit {
+
+    private final static ConcurrentLog log = new ConcurrentLog("GroupCommit");
+
+    /**
+     * a store with a write buffer that can be written and synced
+     */
+    public interface Committable {
+
+        /**
+         * write the buffer and sync the file
+         * @throws IOException
+         */
+        public void commit() throws IOException;
+
+        public String name();
+    }
+
+    /** the commit interval in milliseconds for new tables; 0 means that buffers are written by the inserting thread */
+    public static long interval = 0;
+
+    private static ScheduledThreadPoolExecutor executor = null;
+
+    private static synchronized ScheduledThreadPoolExecutor executor() {
+        if (executor == null) {
+            executor = new ScheduledThreadPoolExecutor(1, r -> {
+                final Thread t = new Thread(r, "GroupCommit");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+        }
+        return executor;
+    }
+
+    private static Runnable task(final Committable c) {
+        return () -> {
+            try {
+                c.commit();
+            } catch (final IOException e) {
+                log.warn("commit of " + c.name() + " failed: " + e.getMessage(), e);
+            } catch (final RuntimeException e) {
+                // the store may be closed concurrently
+                log.warn("commit of " + c.name() + " failed: " + e.getMessage(), e);
+            }
+        };
+    }
+
+    /**
+     * commit a store regularly
+     * @param c the store
+     * @param intervalMillis the time between two commits
+     * @return a handle that must be cancelled when the store is closed
+     */
+    public static ScheduledFuture<?> schedule(final Committable c, final long intervalMillis) {
+        return executor().scheduleWithFixedDelay(task(c), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * commit a store as soon as possible, i.e. because its buffer is full
+     * @param c the store
+     */
+    public static void trigger(final Committable c) {
+        executor().execute(task(c));
+    }
+
+}
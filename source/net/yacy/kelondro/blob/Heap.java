@@ -33,6 +33,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
 
 import net.yacy.cora.document.encoding.UTF8;
 import net.yacy.cora.order.ByteOrder;
@@ -41,14 +42,18 @@ import net.yacy.cora.order.NaturalOrder;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.io.AbstractWriter;
+import net.yacy.kelondro.io.Writer;
 import net.yacy.kelondro.util.MemoryControl;
 
 
-public final class Heap extends HeapModifier implements BLOB {
+public final class Heap extends HeapModifier implements BLOB, GroupCommit.Committable {
     
     private SortedMap<byte[], byte[]> buffer;     // a write buffer to limit IO to the file
     private int                     buffersize; // bytes that are buffered in buffer
     private final int               buffermax;  // maximum size of the buffer
+    private ScheduledFuture<?>      committer;  // the regular commit in write-behind mode, null if the buffer is written by the inserting thread
+    private boolean                 commitPending; // a commit was triggered because the buffer is full
+    private boolean                 dirty;      // the file was changed since the last sync
     
     /*
      * This class implements a BLOB management based on a sequence of records in a random access file
@@ -167,6 +172,7 @@ public final class Heap extends HeapModifier implements BLOB {
      */
     public void flushBuffer() throws IOException {
         if (this.buffer == null) return;
+        if (!this.buffer.isEmpty()) this.dirty = true;
         
         // check size of buffer
         Iterator<Map.Entry<byte[], byte[]>> i = this.buffer.entrySet().iterator();
@@ -294,9 +300,14 @@ public final class Heap extends HeapModifier implements BLOB {
     @Override
     public synchronized void close(final boolean writeIDX) {
         ConcurrentLog.info("Heap", "closing heap " + this.name());
+        if (this.committer != null) {
+            this.committer.cancel(false);
+            this.committer = null;
+        }
     	if (this.file != null && this.buffer != null) {
             try {
                 flushBuffer();
+                if (this.dirty) this.file.sync();
             } catch (final IOException e) {
                 ConcurrentLog.logException(e);
             }
@@ -315,6 +326,42 @@ public final class Heap extends HeapModifier implements BLOB {
         return this.buffermax;
     }
 
+    /**
+     * switch the write-behind mode: inserted records stay in the write buffer, which is written
+     * and synced by the GroupCommit thread in the given interval. Records are then always appended
+     * to the file and gaps are not filled; deletions of records in the file are still written at once.
+     * Readers see the records in the buffer at any time. See GroupCommit for the crash semantics.
+     * @param intervalMillis the commit interval in milliseconds; 0 switches back to writes by the inserting thread
+     */
+    public synchronized void setWriteBehind(final long intervalMillis) {
+        if (this.committer != null) {
+            this.committer.cancel(false);
+            this.committer = null;
+        }
+        if (intervalMillis > 0) this.committer = GroupCommit.schedule(this, intervalMillis);
+    }
+
+    public synchronized boolean isWriteBehind() {
+        return this.committer != null;
+    }
+
+    /**
+     * write the buffer with one append and sync the file. The sync is done without a lock on the heap.
+     */
+    @Override
+    public void commit() throws IOException {
+        final Writer f;
+        synchronized (this) {
+            this.commitPending = false;
+            if (this.file == null || this.buffer == null) return;
+            flushBuffer();
+            if (!this.dirty) return;
+            this.dirty = false;
+            f = this.file;
+        }
+        f.sync();
+    }
+
     /**
      * write a whole byte array as BLOB to the table
      * @param key  the primary key
@@ -334,6 +381,22 @@ public final class Heap extends HeapModifier implements BLOB {
             // first remove the old entry (removes from buffer and file)
             // TODO: this can be enhanced!
             this.delete(key);
+
+            if (this.committer != null && this.buffer != null) {
+                // write-behind: the record is appended with the next commit
+                this.buffer.put(key, b);
+                this.buffersize += b.length;
+                if (this.buffersize > this.buffermax) {
+                    if (this.buffersize > 2 * this.buffermax || MemoryControl.shortStatus()) {
+                        // the commit thread does not catch up, write here
+                        flushBuffer();
+                    } else if (!this.commitPending) {
+                        this.commitPending = true;
+                        GroupCommit.trigger(this);
+                    }
+                }
+                return;
+            }
             
             // then look if we can use a free entry
             try {
@@ -479,6 +542,7 @@ public final class Heap extends HeapModifier implements BLOB {
             }
             
             super.delete(key);
+            this.dirty = true;
         }
     }
     
@@ -0,0 +1,458 @@
+// HeapIndexBuilder.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.yacy.cora.order.ByteOrder;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.RowHandleMap;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Builds the index of a heap file from the records in the file. This is needed if there is no dump of the index,
+ * i.e. after an unclean shutdown. The file is read sequentially with large reads; only the record headers are parsed.
+ *
+ * The builder writes checkpoints while it scans large files: a log file {@code <heap>.<fingerprint>.ckp}
+ * gets the index and gap entries and the positions of damaged records of each scanned part. If the scan is interrupted, the next build of the same,
+ * unchanged file continues after the last checkpoint. The checkpoint is deleted when the index is complete.
+ *
+ * The index can be read while it is built, it contains all keys that are scanned so far.
+ * Builds that are started with start() run in a shared pool with a small number of threads,
+ * so the heap files of an index are scanned in parallel but do not flood the disk with requests.
+ */
+public final class HeapIndexBuilder implements Runnable {
+
+    private final static ConcurrentLog log = new ConcurrentLog("HeapIndexBuilder");
+
+    private static final int CHECKPOINT_MAGIC = 0x59436b32; // 'YCk2', checkpoints with damaged records; 'YCkp' had none
+    private static final int SEGMENT_END = 0x59456e64; // 'YEnd'
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /** the number of scanned bytes between two checkpoints */
+    static long checkpointBytes = 256L * 1024L * 1024L;
+
+    private static ThreadPoolExecutor pool = null;
+
+    private static synchronized ThreadPoolExecutor pool() {
+        if (pool == null) {
+            final int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            pool = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+                final Thread t = new Thread(r, "HeapIndexBuilder");
+                t.setDaemon(true);
+                return t;
+            });
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
+
+    private final File heapFile;
+    private final int keylength;
+    private final ByteOrder ordering;
+    private final RowHandleMap index;
+    private final Gap free;
+    private final List<Long> damaged;
+    private final CountDownLatch done;
+    private final List<byte[]> pendingKeys;
+    private final List<Long> pendingSeeks;
+    private final Gap pendingFree;
+    private final List<Long> pendingDamaged;
+    private long truncate;
+    private volatile long scanned;
+    private long resumed;
+    private volatile boolean cancelled;
+    private IOException error;
+
+    /**
+     * @param heapFile the heap file
+     * @param keylength the length of the keys
+     * @param ordering the order of the keys
+     * @param name the name of the index
+     */
+    public HeapIndexBuilder(final File heapFile, final int keylength, final ByteOrder ordering, final String name) {
+        this.heapFile = heapFile;
+        this.keylength = keylength;
+        this.ordering = ordering;
+        this.index = new RowHandleMap(keylength, ordering, 8, Math.max(10, (int) (Runtime.getRuntime().freeMemory() / (10 * 1024 * 1024))), name);
+        this.free = new Gap();
+        this.damaged = new ArrayList<Long>();
+        this.done = new CountDownLatch(1);
+        this.pendingKeys = new ArrayList<byte[]>();
+        this.pendingSeeks = new ArrayList<Long>();
+        this.pendingFree = new Gap();
+        this.pendingDamaged = new ArrayList<Long>();
+        this.truncate = -1;
+        this.scanned = 0;
+        this.resumed = 0;
+        this.cancelled = false;
+        this.error = null;
+    }
+
+    /**
+     * run the build in the shared pool
+     * @param then a task that is executed in the same thread after the build, or null
+     */
+    public void start(final Runnable then) {
+        pool().execute(() -> {
+            run();
+            if (then != null) then.run();
+        });
+    }
+
+    @Override
+    public void run() {
+        try {
+            scan();
+        } catch (final IOException e) {
+            this.error = e;
+        } catch (final SpaceExceededException e) {
+            this.error = new IOException(e.getMessage(), e);
+        } catch (final RuntimeException e) {
+            this.error = new IOException(e.getMessage(), e);
+        } finally {
+            this.done.countDown();
+        }
+    }
+
+    /**
+     * stop the build; the progress is saved in a checkpoint
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    public boolean isDone() {
+        return this.done.getCount() == 0;
+    }
+
+    /**
+     * wait until the build is finished or cancelled
+     * @throws IOException if the file could not be read
+     */
+    public void await() throws IOException {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                this.done.await();
+                break;
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (this.error != null) throw this.error;
+    }
+
+    /**
+     * @return the index; while the build is running, it contains the keys that are scanned so far
+     */
+    public RowHandleMap index() {
+        return this.index;
+    }
+
+    /**
+     * @return the free records of the file, complete after the build
+     */
+    public Gap free() {
+        return this.free;
+    }
+
+    /**
+     * @return the positions of records with keys that are not well-formed; these are entered as free records and must be marked as empty
+     */
+    public List<Long> damaged() {
+        return this.damaged;
+    }
+
+    /**
+     * @return the position where the file must be cut because the rest is not a complete record, or -1
+     */
+    public long truncate() {
+        return this.truncate;
+    }
+
+    /**
+     * @return the position where the scan started; greater than zero if the build continued after a checkpoint
+     */
+    public long resumed() {
+        return this.resumed;
+    }
+
+    /**
+     * @return the number of bytes of the heap file that are scanned
+     */
+    public long scanned() {
+        return this.scanned;
+    }
+
+    static File checkpointFile(final File heapFile, final String fingerprint) {
+        return new File(heapFile.getParentFile(), heapFile.getName() + "." + fingerprint + ".ckp");
+    }
+
+    /**
+     * delete all checkpoints of a heap file except the given one
+     */
+    private static void deleteCheckpoints(final File heapFile, final File exception) {
+        final File d = heapFile.getParentFile();
+        final String n = heapFile.getName();
+        final String[] l = d.list();
+        if (l == null) return;
+        for (final String s: l) {
+            if (s.startsWith(n) && s.endsWith(".ckp") && (exception == null || !s.equals(exception.getName()))) FileUtils.deletedelete(new File(d, s));
+        }
+    }
+
+    private void scan() throws IOException, SpaceExceededException {
+        final long start = System.currentTimeMillis();
+        final String fingerprint = this.heapFile.length() == 0 ? null : HeapReader.fingerprintFileHash(this.heapFile);
+        final File ckp = fingerprint == null ? null : checkpointFile(this.heapFile, fingerprint);
+        deleteCheckpoints(this.heapFile, ckp);
+        long seek = 0;
+        long ckpLength = 0;
+        if (ckp != null && ckp.exists()) {
+            final long[] resume = loadCheckpoint(ckp);
+            seek = resume[0];
+            ckpLength = resume[1];
+            if (seek > 0) log.info("resuming index generation for " + this.heapFile.getName() + " at position " + seek + ", " + this.index.size() + " entries from checkpoint");
+        }
+
+        try (FileChannel channel = FileChannel.open(this.heapFile.toPath(), StandardOpenOption.READ)) {
+            final long length = channel.size();
+            if (seek > length) {
+                // the checkpoint does not fit to the file
+                seek = 0;
+                ckpLength = 0;
+                this.index.clear();
+                this.free.clear();
+                this.damaged.clear();
+            }
+            this.resumed = seek;
+            this.scanned = seek;
+            final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(4 + this.keylength, length)));
+            final byte[] b = buffer.array();
+            buffer.limit(0);
+            long bufferStart = seek;
+            long lastCheckpoint = seek;
+            final int header = 4 + this.keylength;
+            while (seek < length) {
+                if (this.cancelled) {
+                    if (ckp != null && seek > lastCheckpoint) checkpoint(ckp, ckpLength, seek);
+                    log.info("index generation for " + this.heapFile.getName() + " interrupted at position " + seek);
+                    return;
+                }
+                int off = (int) (seek - bufferStart);
+                if (off + header > buffer.limit()) {
+                    fill(channel, buffer, seek);
+                    bufferStart = seek;
+                    off = 0;
+                    if (buffer.limit() < header) {
+                        log.warn("removing incomplete record at seek pos " + seek + " in file " + this.heapFile);
+                        this.truncate = seek;
+                        break;
+                    }
+                }
+                final int reclen = buffer.getInt(off);
+                if (reclen <= 0) {
+                    // very bad file inconsistency
+                    log.severe("reclen == " + reclen + " at seek pos " + seek + " in file " + this.heapFile);
+                    this.truncate = seek; // delete everything else at the remaining of the file :-(
+                    break;
+                }
+                if (seek + 4L + reclen > length) {
+                    // the last record was not written completely, i.e. the process was killed during a write
+                    log.warn("removing incomplete record at seek pos " + seek + " in file " + this.heapFile);
+                    this.truncate = seek;
+                    break;
+                }
+                if (b[off + 4] == 0) {
+                    // it is an empty record, store to free list
+                    this.pendingFree.put(seek, reclen);
+                } else {
+                    final byte[] key = new byte[this.keylength];
+                    System.arraycopy(b, off + 4, key, 0, this.keylength);
+                    if (this.ordering.wellformed(key)) {
+                        this.index.putUnique(key, seek);
+                        if (ckp != null) {
+                            this.pendingKeys.add(key);
+                            this.pendingSeeks.add(seek);
+                        }
+                    } else {
+                        // free the lost space; the record is marked as empty when the index is used
+                        this.pendingFree.put(seek, reclen);
+                        this.pendingDamaged.add(seek);
+                        log.warn("BLOB " + this.heapFile.getName() + ": skipped not wellformed key at seek pos " + seek);
+                    }
+                }
+                // new seek position
+                seek += 4L + reclen;
+                this.scanned = seek;
+                if (ckp != null && seek - lastCheckpoint >= checkpointBytes && seek < length) {
+                    ckpLength = checkpoint(ckp, ckpLength, seek);
+                    lastCheckpoint = seek;
+                }
+            }
+        }
+        this.free.putAll(this.pendingFree);
+        this.damaged.addAll(this.pendingDamaged);
+        this.pendingFree.clear();
+        this.pendingDamaged.clear();
+        this.pendingKeys.clear();
+        this.pendingSeeks.clear();
+        if (ckp != null && ckp.exists()) FileUtils.deletedelete(ckp);
+        log.info("finished index generation for " + this.heapFile.toString() + ", " + this.index.size() + " entries, " + this.free.size() + " gaps, " + (System.currentTimeMillis() - start) + " milliseconds.");
+    }
+
+    private static void fill(final FileChannel channel, final ByteBuffer buffer, final long pos) throws IOException {
+        buffer.clear();
+        long p = pos;
+        while (buffer.hasRemaining()) {
+            final int c = channel.read(buffer, p);
+            if (c < 0) break;
+            p += c;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * append the entries that were scanned since the last checkpoint to the checkpoint log
+     * @param ckp the checkpoint file
+     * @param validLength the length of the complete segments in the file
+     * @param seek the position up to which the file is scanned
+     * @return the new length of the checkpoint file
+     */
+    private long checkpoint(final File ckp, final long validLength, final long seek) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(ckp, "rw")) {
+            // remove an incomplete segment of an interrupted checkpoint
+            raf.setLength(validLength);
+            final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(raf.getFD()), 1024 * 1024));
+            raf.seek(validLength);
+            if (validLength == 0) {
+                os.writeInt(CHECKPOINT_MAGIC);
+                os.writeInt(this.keylength);
+            }
+            os.writeInt(this.pendingKeys.size());
+            for (int i = 0; i < this.pendingKeys.size(); i++) {
+                os.write(this.pendingKeys.get(i));
+                os.writeLong(this.pendingSeeks.get(i));
+            }
+            os.writeInt(this.pendingFree.size());
+            for (final Map.Entry<Long, Integer> e: this.pendingFree.entrySet()) {
+                os.writeLong(e.getKey());
+                os.writeInt(e.getValue());
+            }
+            os.writeInt(this.pendingDamaged.size());
+            for (final Long d: this.pendingDamaged) os.writeLong(d);
+            os.writeLong(seek);
+            os.writeInt(SEGMENT_END);
+            os.flush();
+            raf.getFD().sync();
+            this.free.putAll(this.pendingFree);
+            this.damaged.addAll(this.pendingDamaged);
+            this.pendingFree.clear();
+            this.pendingDamaged.clear();
+            this.pendingKeys.clear();
+            this.pendingSeeks.clear();
+            return raf.length();
+        }
+    }
+
+    /**
+     * read the complete segments of a checkpoint log into the index, the free list and the damaged records
+     * @return the scanned position and the length of the complete segments in the checkpoint file
+     */
+    private long[] loadCheckpoint(final File ckp) throws SpaceExceededException {
+        long seek = 0;
+        long valid = 0;
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(ckp), 1024 * 1024))) {
+            if (is.readInt() != CHECKPOINT_MAGIC || is.readInt() != this.keylength) throw new IOException("not a checkpoint");
+            long pos = 8;
+            final List<byte[]> keys = new ArrayList<byte[]>();
+            final List<Long> seeks = new ArrayList<Long>();
+            final Gap gaps = new Gap();
+            final List<Long> damagedRecords = new ArrayList<Long>();
+            while (true) {
+                keys.clear();
+                seeks.clear();
+                gaps.clear();
+                damagedRecords.clear();
+                final int n = is.readInt();
+                if (n < 0) break;
+                for (int i = 0; i < n; i++) {
+                    final byte[] key = new byte[this.keylength];
+                    is.readFully(key);
+                    keys.add(key);
+                    seeks.add(is.readLong());
+                }
+                final int g = is.readInt();
+                if (g < 0) break;
+                for (int i = 0; i < g; i++) gaps.put(is.readLong(), is.readInt());
+                final int d = is.readInt();
+                if (d < 0) break;
+                for (int i = 0; i < d; i++) damagedRecords.add(is.readLong());
+                final long s = is.readLong();
+                if (is.readInt() != SEGMENT_END) break;
+                // the segment is complete
+                for (int i = 0; i < keys.size(); i++) this.index.putUnique(keys.get(i), seeks.get(i));
+                this.free.putAll(gaps);
+                this.damaged.addAll(damagedRecords);
+                seek = s;
+                pos += 4 + n * (this.keylength + 8L) + 4 + g * 12L + 4 + d * 8L + 12;
+                valid = pos;
+            }
+        } catch (final EOFException e) {
+            // the last segment is incomplete
+        } catch (final IOException e) {
+            log.warn("cannot read checkpoint " + ckp.getName() + ", starting from the beginning: " + e.getMessage());
+            this.index.clear();
+            this.free.clear();
+            this.damaged.clear();
+            FileUtils.deletedelete(ckp);
+            return new long[]{0, 0};
+        }
+        return new long[]{seek, valid};
+    }
+}
@@ -58,12 +58,22 @@ public class HeapModifier extends HeapReader implements BLOB {
         super(heapFile, keylength, ordering);
     }
 
+    public HeapModifier(final File heapFile, final int keylength, final ByteOrder ordering, final boolean offHeapIndex) throws IOException {
+        super(heapFile, keylength, ordering, offHeapIndex);
+    }
+
+    public HeapModifier(final File heapFile, final int keylength, final ByteOrder ordering, final boolean offHeapIndex, final boolean backgroundIndex) throws IOException {
+        super(heapFile, keylength, ordering, offHeapIndex, backgroundIndex);
+    }
+
     /**
      * clears the content of the database
      * @throws IOException
      */
     @Override
     public synchronized void clear() throws IOException {
+        awaitIndex();
+        unmap();
         this.index.clear();
         this.free.clear();
         this.file.close();
@@ -78,6 +88,7 @@ public class HeapModifier extends HeapReader implements BLOB {
      */
     @Override
     public synchronized void close(boolean writeIDX) {
+        unmap(); // the file may be shortened, a mapping must not exceed the file end
         shrinkWithGapsAtEnd();
         super.close(writeIDX);
     }
@@ -96,6 +107,7 @@ public class HeapModifier extends HeapReader implements BLOB {
     public void delete(byte[] key) throws IOException {
         if (this.index == null) return;
         key = normalizeKey(key);
+        awaitIndex();
 
         // pre-check before synchronization
         long seek = this.index.get(key);
@@ -126,10 +138,15 @@ public class HeapModifier extends HeapReader implements BLOB {
             // fill zeros to the content
             int l = size; byte[] fill = new byte[size];
             while (l-- > 0) fill[l] = 0;
-            this.file.write(fill, 0, size);
-
-            // remove entry from index
-            this.index.remove(key);
+            this.writeStamp++; // tell mapped readers that the record is changing
+            try {
+                this.file.write(fill, 0, size);
+
+                // remove entry from index
+                this.index.remove(key);
+            } finally {
+                this.writeStamp++;
+            }
 
             // recursively merge gaps
             tryMergeNextGaps(seek, size);
@@ -250,6 +267,7 @@ public class HeapModifier extends HeapReader implements BLOB {
     public int reduce(byte[] key, final Reducer reducer) throws IOException, SpaceExceededException {
         key = normalizeKey(key);
         assert key.length == this.keylength;
+        awaitIndex();
 
         // pre-check before synchronization
         long pos = this.index.get(key);
@@ -287,8 +305,13 @@ public class HeapModifier extends HeapReader implements BLOB {
             int reduction = len - blob.length;
             if (reduction == 0) {
                 // even if the reduction is zero then it is still be possible that the record has been changed
-                this.file.seek(pos + 4 + key.length);
-                this.file.write(blob);
+                this.writeStamp++;
+                try {
+                    this.file.seek(pos + 4 + key.length);
+                    this.file.write(blob);
+                } finally {
+                    this.writeStamp++;
+                }
                 return 0;
             }
 
@@ -296,21 +319,26 @@ public class HeapModifier extends HeapReader implements BLOB {
             // because that is the space needed to write a new empty entry record at the end of the gap
             if (blob.length > len - 4) throw new IOException("replace of BLOB for key " + UTF8.String(key) + " failed (too large): new size = " + blob.length + ", old size = " + (len - 4));
 
-            // replace old content
-            this.file.seek(pos);
-            this.file.writeInt(blob.length + key.length);
-            this.file.write(key);
-            this.file.write(blob);
-
             // define the new empty entry
             final int newfreereclen = reduction - 4;
             assert newfreereclen >= 0;
-            this.file.writeInt(newfreereclen);
-
-            // fill zeros to the content
             int l = newfreereclen; byte[] fill = new byte[newfreereclen];
             while (l-- > 0) fill[l] = 0;
-            this.file.write(fill, 0, newfreereclen);
+
+            this.writeStamp++;
+            try {
+                // replace old content
+                this.file.seek(pos);
+                this.file.writeInt(blob.length + key.length);
+                this.file.write(key);
+                this.file.write(blob);
+
+                // write the new empty entry and fill zeros to the content
+                this.file.writeInt(newfreereclen);
+                this.file.write(fill, 0, newfreereclen);
+            } finally {
+                this.writeStamp++;
+            }
 
             // add a new free entry
             this.free.put(pos + 4 + blob.length + key.length, newfreereclen);
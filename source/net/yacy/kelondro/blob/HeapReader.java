@@ -29,12 +29,12 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.ExecutionException;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.encoding.UTF8;
@@ -46,8 +46,11 @@ import net.yacy.cora.storage.HandleMap;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.LookAheadIterator;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.BloomFilter;
+import net.yacy.kelondro.index.OffHeapHandleMap;
 import net.yacy.kelondro.index.RowHandleMap;
 import net.yacy.kelondro.io.CachedFileWriter;
+import net.yacy.kelondro.io.MappedFile;
 import net.yacy.kelondro.io.Writer;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
@@ -70,13 +73,58 @@ public class HeapReader {
     protected HandleMap          index;      // key/seek relation for used records
     protected Gap                free;       // set of {seek, size} pairs denoting space and position of free records
     private   File               fingerprintFileIdx, fingerprintFileGap; // files with dumped indexes. Will be deleted if file is written
+    private   File               fingerprintFileBloom; // file with the dumped bloom filter, if the filter was loaded from a dump
+    protected volatile BloomFilter bloom;    // optional guard for the index: lookups of keys that are not in the heap do not touch the index
     private   Date               closeDate;  // records a time when the file was closed; used for debugging
+    protected volatile MappedFile mapped;    // optional read-only mapping of the heap file for lock-free reads
+    protected volatile long      writeStamp; // odd while a record is changed in place; used to validate mapped reads
+    private   final boolean      offHeapIndex; // if true, the index is held in an OffHeapHandleMap outside of the java heap
+    private volatile HeapIndexBuilder builder; // not null while the index is built in the background
+    private   List<Runnable>     afterBuild; // actions that wait for the completion of the index
 
     public HeapReader(
             final File heapFile,
             final int keylength,
             final ByteOrder ordering) throws IOException {
+        this(heapFile, keylength, ordering, false);
+    }
+
+    /**
+     * open a heap file for reading
+     * @param heapFile
+     * @param keylength
+     * @param ordering
+     * @param offHeapIndex if true, the index is stored outside of the java heap in an OffHeapHandleMap.
+     *   This should only be used for heaps that do not get new entries, because new keys are stored on the java heap.
+     * @throws IOException
+     */
+    public HeapReader(
+            final File heapFile,
+            final int keylength,
+            final ByteOrder ordering,
+            final boolean offHeapIndex) throws IOException {
+        this(heapFile, keylength, ordering, offHeapIndex, false);
+    }
+
+    /**
+     * open a heap file for reading
+     * @param heapFile
+     * @param keylength
+     * @param ordering
+     * @param offHeapIndex if true, the index is stored outside of the java heap in an OffHeapHandleMap.
+     * @param backgroundIndex if true and the index must be generated from the heap file, the index is generated in the background.
+     *   The heap can be read at once: lookups of keys that are already scanned are answered, all other operations wait for the
+     *   complete index. The off-heap index is then used after the next start, when the index is read from its dump.
+     * @throws IOException
+     */
+    public HeapReader(
+            final File heapFile,
+            final int keylength,
+            final ByteOrder ordering,
+            final boolean offHeapIndex,
+            final boolean backgroundIndex) throws IOException {
         this.ordering = ordering;
+        this.offHeapIndex = offHeapIndex;
         this.heapFile = heapFile;
         this.keylength = keylength;
         this.index = null; // will be created as result of initialization process
@@ -84,6 +132,12 @@ public class HeapReader {
         this.heapFile.getParentFile().mkdirs();
         this.file = new CachedFileWriter(this.heapFile);
         this.closeDate = null;
+        this.mapped = null;
+        this.writeStamp = 0;
+        this.bloom = null;
+        this.fingerprintFileBloom = null;
+        this.builder = null;
+        this.afterBuild = null;
 
         // read or initialize the index
         this.fingerprintFileIdx = null;
@@ -108,14 +162,15 @@ public class HeapReader {
             }
             if (!ok) {
                 log.warn("verification of idx file for " + heapFile.toString() + " failed, re-building index");
-                initIndexReadFromHeap();
+                initIndexReadFromHeap(backgroundIndex);
             } else {
                 log.info("using a dump of the index of " + heapFile.toString() + ".");
             }
         } else {
             // if we did not have a dump, create a new index
-            initIndexReadFromHeap();
+            initIndexReadFromHeap(backgroundIndex);
         }
+        if (this.builder != null) return; // the rest is done in completeIndex()
 
         // merge gaps that follow directly
         mergeFreeEntries();
@@ -132,6 +187,7 @@ public class HeapReader {
     }
 
     public void optimize() {
+        if (!whenIndexed(() -> optimize())) return;
         this.index.optimize();
     }
 
@@ -176,7 +232,14 @@ public class HeapReader {
         // there is an index and a gap file:
         // read the index file:
         try {
-            this.index = new RowHandleMap(this.keylength, this.ordering, 8, this.fingerprintFileIdx);
+            if (this.offHeapIndex) try {
+                this.index = new OffHeapHandleMap(this.keylength, this.ordering, this.fingerprintFileIdx);
+            } catch (final IOException | SpaceExceededException | IllegalStateException e) {
+                // not sorted or no direct memory left: use the java heap
+                log.warn("cannot load " + this.fingerprintFileIdx.getName() + " off-heap, using heap index: " + e.getMessage());
+                this.index = null;
+            }
+            if (this.index == null) this.index = new RowHandleMap(this.keylength, this.ordering, 8, this.fingerprintFileIdx);
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
             return false;
@@ -220,6 +283,10 @@ public class HeapReader {
             FileUtils.deletedelete(this.fingerprintFileGap);
             this.fingerprintFileGap = null;
         }
+        if (this.fingerprintFileBloom != null) {
+            FileUtils.deletedelete(this.fingerprintFileBloom);
+            this.fingerprintFileBloom = null;
+        }
     }
 
     protected static String fingerprintFileHash(File f) {
@@ -231,7 +298,7 @@ public class HeapReader {
         return fp.substring(0, 12);
     }
 
-    private static void deleteAllFingerprints(File f, String exception1, String exception2) {
+    static void deleteAllFingerprints(File f, String exception1, String exception2) {
         File d = f.getParentFile();
         String n = f.getName();
         String[] l = d.list();
@@ -242,77 +309,117 @@ public class HeapReader {
             if (l[i].endsWith(".idx") ||
                 l[i].endsWith(".gap") ||
                 l[i].endsWith(".idx.gz") ||
-                l[i].endsWith(".gap.gz")
+                l[i].endsWith(".gap.gz") ||
+                l[i].endsWith(".blm")
                ) FileUtils.deletedelete(new File(d, l[i]));
         }
     }
 
-    private void initIndexReadFromHeap() throws IOException {
+    private void initIndexReadFromHeap(final boolean background) throws IOException {
         // this initializes the this.index object by reading positions from the heap file
         log.info("generating index for " + this.heapFile.toString() + ", " + (this.file.length() / 1024 / 1024) + " MB. Please wait.");
+        final HeapIndexBuilder b = new HeapIndexBuilder(this.heapFile, this.keylength, this.ordering, this.name() + ".initializer");
+        if (background) {
+            this.index = b.index();
+            this.afterBuild = new ArrayList<Runnable>();
+            this.builder = b;
+            b.start(() -> completeIndex(b));
+            return;
+        }
+        b.run();
+        b.await();
+        applyBuild(b);
+
+        if (this.offHeapIndex) try {
+            final HandleMap heapIndex = this.index;
+            this.index = OffHeapHandleMap.of(this.keylength, this.ordering, heapIndex, this.heapFile.getName() + ".index");
+            heapIndex.close();
+        } catch (final SpaceExceededException e) {
+            log.warn("no direct memory left for the index of " + this.heapFile.getName() + ", using heap index");
+        }
+    }
 
-        this.free = new Gap();
-        RowHandleMap.initDataConsumer indexready = RowHandleMap.asynchronusInitializer(this.name() + ".initializer", this.keylength, this.ordering, 8, Math.max(10, (int) (Runtime.getRuntime().freeMemory() / (10 * 1024 * 1024))));
-        byte[] key = new byte[this.keylength];
-        int reclen;
-        long seek = 0;
-        if (this.file.length() > 0) {
-        loop: while (true) { // don't test available() here because this does not work for files > 2GB
-
-            try {
-                // go to seek position
-                this.file.seek(seek);
-
-                // read length of the following record without the length of the record size bytes
-                reclen = this.file.readInt();
-                //assert reclen > 0 : " reclen == 0 at seek pos " + seek;
-                if (reclen == 0) {
-                    // very bad file inconsistency
-                    log.severe("reclen == 0 at seek pos " + seek + " in file " + this.heapFile);
-                    this.file.setLength(seek); // delete everything else at the remaining of the file :-(
-                    break loop;
-                }
-
-                // read key
-                this.file.readFully(key, 0, key.length);
-
-            } catch (final IOException e) {
-                // EOF reached
-                break loop; // terminate loop
-            }
+    /**
+     * take the result of an index generation
+     */
+    private void applyBuild(final HeapIndexBuilder b) throws IOException {
+        if (b.truncate() >= 0) this.file.setLength(b.truncate()); // delete everything else at the remaining of the file :-(
+        final byte[] empty = new byte[this.keylength];
+        for (final Long seek: b.damaged()) {
+            this.file.seek(seek.longValue() + 4);
+            this.file.write(empty); // mark the place as empty record
+        }
+        this.index = b.index();
+        this.free = b.free();
+    }
 
-            // check if this record is empty
-            if (key == null || key[0] == 0) {
-                // it is an empty record, store to free list
-                if (reclen > 0) this.free.put(seek, reclen);
-            } else {
-                if (this.ordering.wellformed(key)) {
-                    indexready.consume(key, seek);
-                    key = new byte[this.keylength];
-                } else {
-                    // free the lost space
-                    this.free.put(seek, reclen);
-                    this.file.seek(seek + 4);
-                    Arrays.fill(key, (byte) 0);
-                    this.file.write(key); // mark the place as empty record
-                    log.warn("BLOB " + this.heapFile.getName() + ": skiped not wellformed key " + UTF8.String(key) + " at seek pos " + seek);
+    /**
+     * finish a background index generation. This is called by the builder thread and by
+     * the first operation that needs the complete index, whichever comes first.
+     */
+    private void completeIndex(final HeapIndexBuilder b) {
+        final List<Runnable> actions;
+        synchronized (this) {
+            if (this.builder != b) return;
+            synchronized (b.index()) {
+                try {
+                    b.await();
+                    applyBuild(b);
+                    mergeFreeEntries();
+                    this.file.close();
+                } catch (final IOException e) {
+                    log.severe("index generation for " + this.heapFile.getName() + " failed, using the " + b.index().size() + " scanned entries: " + e.getMessage(), e);
+                    if (this.free == null) this.free = new Gap();
                 }
+                this.builder = null;
             }
-            // new seek position
-            seek += 4L + reclen;
+            actions = this.afterBuild;
+            this.afterBuild = null;
+            if (actions != null) for (final Runnable r: actions) r.run();
         }
-        }
-        indexready.finish();
+    }
 
-        // finish the index generation
+    /**
+     * wait until a background index generation is finished
+     */
+    protected final void awaitIndex() {
+        final HeapIndexBuilder b = this.builder;
+        if (b == null) return;
         try {
-            this.index = indexready.result();
-        } catch (final InterruptedException e) {
-        	ConcurrentLog.logException(e);
-        } catch (final ExecutionException e) {
-        	ConcurrentLog.logException(e);
+            b.await();
+        } catch (final IOException e) {
+            // logged in completeIndex
+        }
+        completeIndex(b);
+    }
+
+    /**
+     * wait until a background index generation is finished or has found the given key
+     * @param key a normalized key
+     */
+    protected final void awaitIndex(final byte[] key) {
+        final HeapIndexBuilder b = this.builder;
+        if (b == null || b.index().has(key)) return;
+        awaitIndex();
+    }
+
+    /**
+     * run an action when the index is complete; the action is run at once if the index is complete
+     * @return true if the action was run at once
+     */
+    private boolean whenIndexed(final Runnable action) {
+        synchronized (this) {
+            if (this.builder == null) return true;
+            this.afterBuild.add(action);
+            return false;
         }
-        log.info("finished index generation for " + this.heapFile.toString() + ", " + this.index.size() + " entries, " + this.free.size() + " gaps.");
+    }
+
+    /**
+     * @return true while the index is generated in the background
+     */
+    public boolean isIndexing() {
+        return this.builder != null;
     }
 
     private void mergeFreeEntries() throws IOException {
@@ -345,6 +452,74 @@ public class HeapReader {
         }
     }
 
+    /**
+     * map the heap file read-only into memory. After that, get(), containsKey() and length() are served
+     * from the mapping without synchronization. This must only be used for heaps that do not grow any more,
+     * i.e. heaps that are not written with a Heap object. In-place modifications of a HeapModifier are
+     * still possible, concurrent reads of a modified record fall back to the synchronized access path.
+     * @return true if the file is mapped
+     */
+    public synchronized boolean map() {
+        if (this.mapped != null) return true;
+        if (!whenIndexed(() -> map())) return false;
+        if (this.index == null || this.heapFile.length() == 0) return false;
+        try {
+            this.mapped = new MappedFile(this.heapFile);
+            return true;
+        } catch (final IOException e) {
+            log.warn("cannot map " + this.heapFile.getName() + ", using file access: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * release a mapping of the heap file; following reads use the file access path again
+     */
+    public synchronized void unmap() {
+        final MappedFile m = this.mapped;
+        if (m == null) return;
+        this.mapped = null;
+        m.close();
+    }
+
+    public boolean isMapped() {
+        return this.mapped != null;
+    }
+
+    /**
+     * guard the index with a bloom filter: a lookup for a key that is not in this heap is then answered
+     * without an access to the index. The filter is read from the dump that is written next to the idx and gap dump,
+     * if no such dump exists, it is computed from the index and dumped when the heap is closed.
+     * This must only be used for heaps that do not get new keys, i.e. heaps that are not written with a Heap object.
+     * Deleted keys stay in the filter, they only cause a (correctly answered) index lookup.
+     * @return true if a bloom filter is used
+     */
+    public synchronized boolean useBloomFilter() {
+        if (this.bloom != null) return true;
+        if (!whenIndexed(() -> useBloomFilter())) return false;
+        if (this.index == null) return false;
+        final String fingerprint = this.heapFile.length() == 0 ? null : fingerprintFileHash(this.heapFile);
+        if (fingerprint != null) {
+            final File f = HeapWriter.fingerprintBloomFile(this.heapFile, fingerprint);
+            if (f.exists()) try {
+                this.bloom = BloomFilter.load(f);
+                this.fingerprintFileBloom = f;
+                return true;
+            } catch (final IOException e) {
+                log.warn("cannot read bloom filter dump " + f.getName() + ", computing a new one: " + e.getMessage());
+                FileUtils.deletedelete(f);
+            }
+        }
+        synchronized (this.index) {
+            this.bloom = BloomFilter.of(this.index.keys(true, null), this.index.size(), HeapWriter.BLOOM_BITS_PER_KEY);
+        }
+        return true;
+    }
+
+    public boolean hasBloomFilter() {
+        return this.bloom != null;
+    }
+
     public String name() {
         return this.heapFile.toString();
     }
@@ -358,6 +533,7 @@ public class HeapReader {
      * @return the number of BLOBs in the heap
      */
     public int size() {
+        awaitIndex();
         assert (this.index != null) : "index == null; closeDate=" + this.closeDate + ", now=" + new Date();
         if (this.index == null) {
             log.severe("this.index == null in size(); closeDate=" + this.closeDate + ", now=" + new Date() + this.heapFile == null ? "" : (" file = " + this.heapFile.toString()));
@@ -367,6 +543,7 @@ public class HeapReader {
     }
 
     public boolean isEmpty() {
+        awaitIndex();
         assert (this.index != null) : "index == null; closeDate=" + this.closeDate + ", now=" + new Date();
         if (this.index == null) {
             log.severe("this.index == null in isEmpty(); closeDate=" + this.closeDate + ", now=" + new Date() + this.heapFile == null ? "" : (" file = " + this.heapFile.toString()));
@@ -387,6 +564,12 @@ public class HeapReader {
             return false;
         }
         key = normalizeKey(key);
+        awaitIndex(key);
+        final BloomFilter b = this.bloom;
+        if (b != null && !b.mightContain(key)) return false;
+
+        // the index is thread-safe; a mapped heap has no file pointer that must be protected
+        if (this.mapped != null) return this.index.get(key) >= 0;
 
         synchronized (this.index) {
             // check if the file index contains the key
@@ -406,6 +589,7 @@ public class HeapReader {
      * @throws IOException
      */
     protected synchronized byte[] firstKey() throws IOException {
+        awaitIndex();
         assert (this.index != null) : "index == null; closeDate=" + this.closeDate + ", now=" + new Date();
         if (this.index == null) {
             log.severe("this.index == null in firstKey(); closeDate=" + this.closeDate + ", now=" + new Date() + this.heapFile == null ? "" : (" file = " + this.heapFile.toString()));
@@ -424,6 +608,7 @@ public class HeapReader {
      * @throws IOException
      */
     protected byte[] first() throws IOException, SpaceExceededException {
+        awaitIndex();
         assert (this.index != null) : "index == null; closeDate=" + this.closeDate + ", now=" + new Date();
         if (this.index == null) {
             log.severe("this.index == null in first(); closeDate=" + this.closeDate + ", now=" + new Date() + this.heapFile == null ? "" : (" file = " + this.heapFile.toString()));
@@ -444,6 +629,7 @@ public class HeapReader {
      * @throws IOException
      */
     protected byte[] lastKey() throws IOException {
+        awaitIndex();
         assert (this.index != null) : "index == null; closeDate=" + this.closeDate + ", now=" + new Date();
         if (this.index == null) {
             log.severe("this.index == null in lastKey(); closeDate=" + this.closeDate + ", now=" + new Date() + this.heapFile == null ? "" : (" file = " + this.heapFile.toString()));
@@ -463,6 +649,7 @@ public class HeapReader {
      * @throws IOException
      */
     protected byte[] last() throws IOException, SpaceExceededException {
+        awaitIndex();
         assert (this.index != null) : "index == null; closeDate=" + this.closeDate + ", now=" + new Date();
         if (this.index == null) {
             log.severe("this.index == null in last(); closeDate=" + this.closeDate + ", now=" + new Date() + this.heapFile == null ? "" : (" file = " + this.heapFile.toString()));
@@ -488,6 +675,33 @@ public class HeapReader {
             return null;
         }
         key = normalizeKey(key);
+        awaitIndex(key);
+        final BloomFilter b = this.bloom;
+        if (b != null && !b.mightContain(key)) return null;
+
+        final MappedFile m = this.mapped;
+        if (m != null && m.acquire()) {
+            try {
+                final long stamp = this.writeStamp;
+                if ((stamp & 1) == 0) {
+                    final long pos = this.index.get(key);
+                    if (pos < 0) return null;
+                    final int len = m.readInt(pos) - this.keylength;
+                    if (len >= 0 && pos + 4 + this.keylength + len <= m.length()) {
+                        final byte[] keyf = new byte[this.keylength];
+                        m.readFully(pos + 4, keyf, 0, keyf.length);
+                        if (this.ordering.equal(key, keyf)) {
+                            final byte[] blob = newBlob(len);
+                            m.readFully(pos + 4 + this.keylength, blob, 0, len);
+                            if (this.writeStamp == stamp) return blob;
+                        }
+                    }
+                }
+            } finally {
+                m.release();
+            }
+            // the record was changed concurrently or looks inconsistent: check it with the synchronized access
+        }
 
         synchronized (this.index) {
             // check if the index contains the key
@@ -531,24 +745,31 @@ public class HeapReader {
             }
 
             // read the blob
-            byte[] blob;
-            try {
-                blob = new byte[len];
-            } catch (final OutOfMemoryError e) {
-                // try once again after GC
-                MemoryControl.gc(1000, "HeapReader.get()/blob");
-                try {
-                    blob = new byte[len];
-                } catch (final OutOfMemoryError ee) {
-                    throw new SpaceExceededException(len, "HeapReader.get()/blob");
-                }
-            }
+            final byte[] blob = newBlob(len);
             this.file.readFully(blob, 0, blob.length);
 
             return blob;
         }
     }
 
+    private static byte[] newBlob(final int len) throws SpaceExceededException {
+        final long memr = len + 64;
+        if (MemoryControl.available() < memr) {
+            if (!MemoryControl.request(memr, true)) throw new SpaceExceededException(memr, "HeapReader.get()/check"); // not enough memory available for this blob
+        }
+        try {
+            return new byte[len];
+        } catch (final OutOfMemoryError e) {
+            // try once again after GC
+            MemoryControl.gc(1000, "HeapReader.get()/blob");
+            try {
+                return new byte[len];
+            } catch (final OutOfMemoryError ee) {
+                throw new SpaceExceededException(len, "HeapReader.get()/blob");
+            }
+        }
+    }
+
     public byte[] get(Object key) {
         if (!(key instanceof byte[])) return null;
         try {
@@ -585,6 +806,24 @@ public class HeapReader {
             return 0;
         }
         key = normalizeKey(key);
+        awaitIndex(key);
+        final BloomFilter b = this.bloom;
+        if (b != null && !b.mightContain(key)) return -1;
+
+        final MappedFile m = this.mapped;
+        if (m != null && m.acquire()) {
+            try {
+                final long stamp = this.writeStamp;
+                if ((stamp & 1) == 0) {
+                    final long pos = this.index.get(key);
+                    if (pos < 0) return -1;
+                    final int len = m.readInt(pos) - this.keylength;
+                    if (this.writeStamp == stamp) return len;
+                }
+            } finally {
+                m.release();
+            }
+        }
 
         synchronized (this.index) {
             // check if the index contains the key
@@ -601,6 +840,20 @@ public class HeapReader {
      * close the BLOB table
      */
     public void close(boolean writeIDX) {
+        final HeapIndexBuilder b = this.builder;
+        if (b != null) {
+            // stop the index generation, the progress is kept in a checkpoint; the incomplete index is not dumped
+            b.cancel();
+            try {
+                b.await();
+            } catch (final IOException e) {}
+            synchronized (this) {
+                this.builder = null;
+                this.afterBuild = null;
+                this.free = null;
+            }
+        }
+        unmap();
         if (this.index == null) return;
         synchronized (this.index) {
             try {
@@ -643,6 +896,16 @@ public class HeapReader {
                             this.index.dump(newFingerprintFileIdx);
                             log.info("wrote a dump for the " + this.index.size() +  " index entries of " + this.heapFile.getName()+ " in " + (System.currentTimeMillis() - start) + " milliseconds.");
                         }
+                        if (this.bloom != null) {
+                            File newFingerprintFileBloom = HeapWriter.fingerprintBloomFile(this.heapFile, fingerprint);
+                            if (this.fingerprintFileBloom != null &&
+                                this.fingerprintFileBloom.getName().equals(newFingerprintFileBloom.getName()) &&
+                                this.fingerprintFileBloom.exists()) {
+                                log.info("using existing bloom filter dump instead of writing a new one: " + this.fingerprintFileBloom.getName());
+                            } else {
+                                this.bloom.dump(newFingerprintFileBloom);
+                            }
+                        }
                     }
                     this.index.close();
                     this.index = null;
@@ -654,6 +917,7 @@ public class HeapReader {
             this.free = null;
             if (this.index != null) this.index.close();
             this.index = null;
+            this.bloom = null;
             this.closeDate = new Date();
             } catch (Throwable e) {ConcurrentLog.logException(e);}
             log.info("close HeapFile " + this.heapFile.getName() + "; trace: " + ConcurrentLog.stackTrace());
@@ -680,6 +944,7 @@ public class HeapReader {
      * @throws IOException
      */
     public CloneableIterator<byte[]> keys(final boolean up, final boolean rotating) throws IOException {
+        awaitIndex();
         if (this.index == null) {
             log.severe("this.index == null in keys(); closeDate=" + this.closeDate + ", now=" + new Date() + this.heapFile == null ? "" : (" file = " + this.heapFile.toString()));
             return null;
@@ -697,6 +962,7 @@ public class HeapReader {
      * @throws IOException
      */
     public CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) throws IOException {
+        awaitIndex();
         assert (this.index != null) : "index == null; closeDate=" + this.closeDate + ", now=" + new Date();
         if (this.index == null) {
             log.severe("this.index == null in keys(); closeDate=" + this.closeDate + ", now=" + new Date() + this.heapFile == null ? "" : (" file = " + this.heapFile.toString()));
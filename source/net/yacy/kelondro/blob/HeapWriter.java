@@ -35,6 +35,7 @@ import net.yacy.cora.order.ByteOrder;
 import net.yacy.cora.storage.HandleMap;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.BloomFilter;
 import net.yacy.kelondro.index.RowHandleMap;
 import net.yacy.kelondro.util.FileUtils;
 
@@ -43,6 +44,7 @@ public final class HeapWriter {
 
     private final static ConcurrentLog log = new ConcurrentLog("HeapWriter");
     public final static byte[] ZERO = new byte[]{0};
+    protected final static int BLOOM_BITS_PER_KEY = 10; // about 1% false positives
 
     private final int          keylength;     // the length of the primary key
     private HandleMap          index;         // key/seek relation for used records
@@ -162,6 +164,8 @@ public final class HeapWriter {
             } else {
                 new Gap().dump(fingerprintGapFile(this.heapFileREADY, fingerprint));
                 this.index.dump(fingerprintIndexFile(this.heapFileREADY, fingerprint));
+                // the heap is not changed any more: a bloom filter can guard all lookups for keys that are not here
+                BloomFilter.of(this.index.keys(true, null), this.index.size(), BLOOM_BITS_PER_KEY).dump(fingerprintBloomFile(this.heapFileREADY, fingerprint));
                 log.info("wrote a dump for the " + this.index.size() +  " index entries of " + this.heapFileREADY.getName()+ " in " + (System.currentTimeMillis() - start) + " milliseconds.");
             }
             this.index.close();
@@ -180,7 +184,7 @@ public final class HeapWriter {
         FileUtils.deletedelete(f);
         for (String s: l) {
             if (s.startsWith(n) &&
-                (s.endsWith(".idx") || s.endsWith(".gap")))
+                (s.endsWith(".idx") || s.endsWith(".gap") || s.endsWith(".blm") || s.endsWith(".blocks") || s.endsWith(".impact")))
                FileUtils.deletedelete(new File(p, s));
         }
     }
@@ -194,4 +198,9 @@ public final class HeapWriter {
         assert f != null;
         return new File(f.getParentFile(), f.getName() + "." + fingerprint + ".gap");
     }
+
+    protected static File fingerprintBloomFile(File f, String fingerprint) {
+        assert f != null;
+        return new File(f.getParentFile(), f.getName() + "." + fingerprint + ".blm");
+    }
 }
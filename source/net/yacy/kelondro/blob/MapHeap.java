@@ -73,7 +73,9 @@ public class MapHeap implements Map<byte[], Map<String, String>> {
             final int buffermax,
             final int cachesize,
             final char fillchar) throws IOException {
-        this.blob = new Heap(heapFile, keylength, ordering, buffermax);
+        final Heap heap = new Heap(heapFile, keylength, ordering, buffermax);
+        if (GroupCommit.interval > 0) heap.setWriteBehind(GroupCommit.interval);
+        this.blob = heap;
         this.cache = new ConcurrentARC<byte[], Map<String, String>>(cachesize, Math.min(32, 2 * Runtime.getRuntime().availableProcessors()), ordering);
         this.fillchar = fillchar;
     }
@@ -72,15 +72,28 @@ public class Tables implements Iterable<String> {
     private final File location;
     private final ConcurrentHashMap<String, BEncodedHeap> tables;
     private final ConcurrentHashMap<String, TablesColumnIndex> cidx;
+    private final ConcurrentHashMap<String, TablesColumnHeapIndex> pidx; // persistent column indexes
     private int keymaxlen;
+    private final BlockHeap.Codec codec; // the compression of the table files, null for uncompressed tables
 
     // use our own formatter to prevent concurrency locks with other processes
     private final static GenericFormatter my_SHORT_MILSEC_FORMATTER  = new GenericFormatter(GenericFormatter.newShortMilsecFormat(), 1);
 
     public Tables(final File location, final int keymaxlen) {
+        this(location, keymaxlen, null);
+    }
+
+    /**
+     * @param location the directory of the table files
+     * @param keymaxlen the length of the primary keys
+     * @param codec the compression of the table files, or null to keep the tables uncompressed;
+     *   uncompressed tables are converted when they are opened if a codec is given
+     */
+    public Tables(final File location, final int keymaxlen, final BlockHeap.Codec codec) {
         this.location = new File(location.getAbsolutePath());
         if (!this.location.exists()) this.location.mkdirs();
         this.keymaxlen = keymaxlen;
+        this.codec = codec;
         this.tables = new ConcurrentHashMap<String, BEncodedHeap>();
         final String[] files = this.location.list();
         File file;
@@ -95,6 +108,7 @@ public class Tables implements Iterable<String> {
             }
         }
         this.cidx = new ConcurrentHashMap<String, TablesColumnIndex>();
+        this.pidx = new ConcurrentHashMap<String, TablesColumnHeapIndex>();
     }
 
     public TablesColumnIndex getIndex(final String tableName, TablesColumnIndex.INDEXTYPE indexType) throws TableColumnIndexException, IOException {
@@ -109,6 +123,10 @@ public class Tables implements Iterable<String> {
 	   			bheap = this.getHeap(idx_table);
 	   			index =  new TablesColumnBLOBIndex(bheap);
 	   			break;
+	    	case HEAP:
+	    		this.getHeap(tableName);
+	    		index = this.columnIndex(tableName, true);
+	    		break;
 	   		default:
 	   			throw new TableColumnIndexException("Unsupported TableColumnIndex: "+indexType.name());
     	}
@@ -267,10 +285,14 @@ public class Tables implements Iterable<String> {
     public void close(final String tablename) {
         final BEncodedHeap heap = this.tables.remove(tablename);
         if (heap == null) return;
+        final TablesColumnHeapIndex index = this.pidx.remove(tablename);
+        if (index != null) index.close();
         heap.close();
     }
 
     public synchronized void close() {
+        for (final TablesColumnHeapIndex index: this.pidx.values()) index.close();
+        this.pidx.clear();
         for (final BEncodedHeap heap: this.tables.values()) heap.close();
         this.tables.clear();
     }
@@ -290,6 +312,12 @@ public class Tables implements Iterable<String> {
                 FileUtils.deletedelete(f);
                 heap = null;
             }
+            // the cleared index is opened again with the new table file
+            final TablesColumnHeapIndex index = this.pidx.remove(tablename);
+            if (index != null) {
+                index.clear();
+                index.close();
+            }
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
         } finally {
@@ -318,11 +346,85 @@ public class Tables implements Iterable<String> {
 
         // open a new heap and register it in the tables
         final File heapf = new File(this.location, table);
-        heap = new BEncodedHeap(heapf, this.keymaxlen);
+        heap = new BEncodedHeap(heapf, this.keymaxlen, this.codec);
         this.tables.put(tablename, heap);
+
+        // open the persistent column indexes of the table and fill those that were not closed properly
+        if (!TablesColumnHeapIndex.indexedColumns(this.location, tablename).isEmpty()) {
+            final TablesColumnHeapIndex index = columnIndex(tablename, true);
+            for (final String column: index.rebuildColumns()) fillColumnIndex(tablename, heap, index, column);
+        }
         return heap;
     }
 
+    private TablesColumnHeapIndex columnIndex(final String tablename, final boolean create) {
+        TablesColumnHeapIndex index = this.pidx.get(tablename);
+        if (index != null || !create) return index;
+        synchronized (this.pidx) {
+            index = this.pidx.get(tablename);
+            if (index == null) {
+                index = new TablesColumnHeapIndex(this.location, tablename, this.keymaxlen, this.tables.get(tablename));
+                this.pidx.put(tablename, index);
+            }
+        }
+        return index;
+    }
+
+    private static void fillColumnIndex(final String tablename, final BEncodedHeap heap, final TablesColumnHeapIndex index, final String column) {
+        final long start = System.currentTimeMillis();
+        synchronized (index) {
+            for (final Map.Entry<byte[], Map<String, byte[]>> row: heap) {
+                final byte[] value = row.getValue().get(column);
+                if (value != null) index.insertPK(column, UTF8.String(value), row.getKey());
+            }
+            index.setComplete(column);
+        }
+        ConcurrentLog.info("Tables", "built index of column " + column + " in table " + tablename + " with " + index.size(column) + " values in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * create a persistent index of a column, if it does not exist already. The index is maintained with all changes
+     * of the table through this class and is used by the iterators that select rows by a value or a pattern of that
+     * column. It is kept on disk and needs no rebuild when the table is opened again.
+     * @param tablename
+     * @param column the column name; must consist of letters, digits, '_' or '-'
+     * @throws IOException
+     */
+    public void createColumnIndex(final String tablename, final String column) throws IOException {
+        final BEncodedHeap heap = getHeap(tablename);
+        final TablesColumnHeapIndex index = columnIndex(tablename, true);
+        synchronized (index) {
+            if (index.isComplete(column)) return;
+            index.createIndex(column);
+            fillColumnIndex(tablename, heap, index, column);
+        }
+    }
+
+    /**
+     * remove the persistent index of a column
+     * @param tablename
+     * @param column
+     */
+    public void dropColumnIndex(final String tablename, final String column) {
+        final TablesColumnHeapIndex index = columnIndex(tablename, false);
+        if (index != null) index.deleteIndex(column);
+    }
+
+    /**
+     * @param tablename
+     * @param column
+     * @return true if there is a complete persistent index for the column of the table
+     */
+    public boolean hasColumnIndex(final String tablename, final String column) {
+        try {
+            getHeap(tablename); // opens the indexes of the table
+        } catch (final IOException e) {
+            return false;
+        }
+        final TablesColumnHeapIndex index = columnIndex(tablename, false);
+        return index != null && index.isComplete(column);
+    }
+
     /**
      * get the total number of known tables
      * @return
@@ -383,36 +485,40 @@ public class Tables implements Iterable<String> {
     }
 
     public void insert(final String table, final byte[] pk, final Map<String, byte[]> map) throws IOException {
-        final BEncodedHeap heap = getHeap(table);
-        try {
-            heap.insert(pk, map);
-        } catch (final SpaceExceededException e) {
-            throw new IOException(e.getMessage());
-        }
+        write(table, pk, map, false);
     }
 
     public void insert(final String table, final Row row) throws IOException {
-        final BEncodedHeap heap = getHeap(table);
-        try {
-            heap.insert(row.pk, row);
-        } catch (final SpaceExceededException e) {
-            throw new IOException(e.getMessage());
-        }
+        write(table, row.pk, row, false);
     }
 
     public void update(final String table, final byte[] pk, final Map<String, byte[]> map) throws IOException {
-        final BEncodedHeap heap = getHeap(table);
-        try {
-            heap.update(pk, map);
-        } catch (final SpaceExceededException e) {
-            throw new IOException(e.getMessage());
-        }
+        write(table, pk, map, true);
     }
 
     public void update(final String table, final Row row) throws IOException {
+        write(table, row.pk, row, true);
+    }
+
+    private void write(final String table, final byte[] pk, final Map<String, byte[]> map, final boolean update) throws IOException {
         final BEncodedHeap heap = getHeap(table);
+        final TablesColumnHeapIndex index = columnIndex(table, false);
         try {
-            heap.update(row.pk, row);
+            if (index == null || index.size() == 0) {
+                if (update) heap.update(pk, map); else heap.insert(pk, map);
+                return;
+            }
+            // the index needs the old values of the row; the lock keeps the row and the index consistent
+            synchronized (index) {
+                final Map<String, byte[]> old = heap.get(pk);
+                Map<String, byte[]> row = map;
+                if (update && old != null) {
+                    row = new HashMap<String, byte[]>(old);
+                    row.putAll(map);
+                }
+                if (update) heap.update(pk, map); else heap.insert(pk, map);
+                index.update(pk, old, row);
+            }
         } catch (final SpaceExceededException e) {
             throw new IOException(e.getMessage());
         }
@@ -431,7 +537,21 @@ public class Tables implements Iterable<String> {
 
     public void delete(final String table, final byte[] pk) throws IOException {
         final BEncodedHeap heap = getHeap(table);
-        heap.delete(pk);
+        final TablesColumnHeapIndex index = columnIndex(table, false);
+        if (index == null || index.size() == 0) {
+            heap.delete(pk);
+            return;
+        }
+        synchronized (index) {
+            Map<String, byte[]> old;
+            try {
+                old = heap.get(pk);
+            } catch (final SpaceExceededException e) {
+                throw new IOException(e.getMessage());
+            }
+            heap.delete(pk);
+            if (old != null) index.update(pk, old, null);
+        }
     }
 
     public boolean has(final String table, final byte[] key) throws IOException {
@@ -453,11 +573,26 @@ public class Tables implements Iterable<String> {
         return new HeapRowIterator(table);
     }
 
+    /**
+     * iterate the rows of a table where a column has a given value. If the column has a persistent index,
+     * only the matching rows are read, in the order of their primary keys.
+     */
     public Iterator<Row> iterator(final String table, final String whereColumn, final byte[] whereValue) throws IOException {
+        if (whereValue != null && hasColumnIndex(table, whereColumn)) {
+            return new IndexedRowIterator(table, columnIndex(table, false).get(whereColumn, UTF8.String(whereValue)), true);
+        }
         return new HeapRowIterator(table, whereColumn, whereValue);
     }
 
+    /**
+     * iterate the rows of a table where a column matches a pattern. If the column has a persistent index,
+     * the pattern is matched against the distinct values of the column and only the matching rows are read,
+     * in the order of their primary keys.
+     */
     public Iterator<Row> iterator(final String table, final String whereColumn, final Pattern wherePattern) throws IOException {
+        if (wherePattern != null && !wherePattern.toString().isEmpty() && hasColumnIndex(table, whereColumn)) {
+            return new IndexedRowIterator(table, columnIndex(table, false).select(whereColumn, wherePattern), true);
+        }
         return new HeapRowIterator(table, whereColumn, wherePattern);
     }
 
@@ -470,10 +605,16 @@ public class Tables implements Iterable<String> {
     }
 
     public Iterator<Row> iterator(final String table, final String whereColumn, final byte[] whereValue, final boolean up) throws IOException {
+        if (whereValue != null && hasColumnIndex(table, whereColumn)) {
+            return new IndexedRowIterator(table, columnIndex(table, false).get(whereColumn, UTF8.String(whereValue)), up);
+        }
         return new OrderedRowIterator(table, whereColumn, whereValue, up);
     }
 
     public Iterator<Row> iterator(final String table, final String whereColumn, final Pattern wherePattern, final boolean up) throws IOException {
+        if (wherePattern != null && !wherePattern.toString().isEmpty() && hasColumnIndex(table, whereColumn)) {
+            return new IndexedRowIterator(table, columnIndex(table, false).select(whereColumn, wherePattern), up);
+        }
         return new OrderedRowIterator(table, whereColumn, wherePattern, up);
     }
 
@@ -724,6 +865,42 @@ public class Tables implements Iterable<String> {
         }
     }
 
+    /**
+     * iterator over the rows of a given set of primary keys, i.e. the result of a column index lookup
+     */
+    public class IndexedRowIterator extends LookAheadIterator<Row> implements Iterator<Row> {
+
+        private final BEncodedHeap heap;
+        private final Iterator<byte[]> i;
+
+        /**
+         * @param table
+         * @param pks the primary keys of the rows
+         * @param up true for ascending order of the primary keys
+         * @throws IOException
+         */
+        public IndexedRowIterator(final String table, final Collection<byte[]> pks, final boolean up) throws IOException {
+            this.heap = getHeap(table);
+            final TreeSet<byte[]> sorted = new TreeSet<byte[]>(TablesColumnIndex.NATURALORDER);
+            sorted.addAll(pks);
+            this.i = up ? sorted.iterator() : sorted.descendingIterator();
+        }
+
+        @Override
+        protected Row next0() {
+            while (this.i.hasNext()) {
+                final byte[] pk = this.i.next();
+                try {
+                    final Map<String, byte[]> map = this.heap.get(pk);
+                    if (map != null) return new Row(pk, map);
+                } catch (final IOException | SpaceExceededException e) {
+                    ConcurrentLog.logException(e);
+                }
+            }
+            return null;
+        }
+    }
+
     public class OrderedRowIterator extends LookAheadIterator<Row> implements Iterator<Row> {
 
         private final String whereColumn;
@@ -0,0 +1,538 @@
+// TablesColumnHeapIndex.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.regex.Pattern;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.CloneableIterator;
+import net.yacy.cora.order.Digest;
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * A persistent column index for one table: for each indexed column the column values are mapped to
+ * the primary keys of the rows that have this value. Each column is stored in its own heap file
+ * &lt;table&gt;.&lt;column&gt;.cidx next to the table. The file has one record for each pair of a value and a
+ * primary key (a posting), keyed by the hash of the value followed by the primary key, so all postings
+ * of a value are neighbours in the key order and a change of a row writes or deletes single records.
+ * Each value has one more record with an empty primary key that holds the value itself.
+ *
+ * The index is maintained with each change of the table and is opened without a scan of the table rows.
+ * The value dictionary is loaded from the index file when it is needed the first time.
+ *
+ * A column file is marked with a .dirty file as long as it has changes that are not written to disk.
+ * The changes of the table and of the index are committed together at a short interval, which removes the
+ * mark. An index that is still marked when it is opened may have lost changes of the table and is removed;
+ * the table must then build it again.
+ */
+public class TablesColumnHeapIndex extends TablesColumnIndex implements GroupCommit.Committable {
+
+    private final static ConcurrentLog log = new ConcurrentLog("TablesColumnHeapIndex");
+
+    public final static String suffix = ".cidx";
+    private final static String dirtySuffix = ".dirty";
+    private final static Pattern COLUMN_NAME = Pattern.compile("[A-Za-z0-9_\\-]+");
+    private final static int HASHLENGTH = 12; // the length of the value hash in the keys of the column files
+    private final static int BUFFERSIZE = 16 * 1024; // the write buffer of a column file
+    private final static byte[] POSTING = new byte[]{'1'}; // the content of a posting record; records must not be empty
+    private final static long COMMIT_INTERVAL = 1000; // the time in milliseconds between two commits of the changes
+
+    private final File location;
+    private final String tablename;
+    private final int pklength;
+    private final BEncodedHeap table;
+    private final Map<String, Column> index;
+    private final Set<String> rebuild;
+    private final ScheduledFuture<?> committer;
+
+    /**
+     * the index of one column
+     */
+    private class Column {
+        private final File file;
+        private final Heap heap;
+        private TreeMap<String, Integer> values; // the sorted value dictionary: column value to number of primary keys; null until it is loaded
+        private boolean dirty; // true if there are changes that are not committed
+
+        private Column(final File file) throws IOException {
+            this.file = file;
+            this.heap = new Heap(file, HASHLENGTH + TablesColumnHeapIndex.this.pklength, NaturalOrder.naturalOrder, BUFFERSIZE);
+            this.values = null;
+            this.dirty = false;
+        }
+
+        private File dirtyFile() {
+            return new File(this.file.getParentFile(), this.file.getName() + dirtySuffix);
+        }
+
+        /**
+         * mark the column file as changed before the first change after a commit
+         */
+        private void change() throws IOException {
+            if (this.dirty) return;
+            final File dirty = dirtyFile();
+            if (!dirty.exists()) dirty.createNewFile();
+            this.dirty = true;
+        }
+
+        private void commit() throws IOException {
+            if (!this.dirty) return;
+            this.heap.commit();
+            FileUtils.deletedelete(dirtyFile());
+            this.dirty = false;
+        }
+
+        /**
+         * @return the value dictionary, read from the value records of the file when it is used the first time
+         */
+        private TreeMap<String, Integer> values() throws IOException {
+            if (this.values != null) return this.values;
+            final TreeMap<String, Integer> values = new TreeMap<String, Integer>();
+            final CloneableIterator<byte[]> i = this.heap.keys(true, false);
+            byte[] valueKey = null;
+            int count = 0;
+            while (i.hasNext()) {
+                final byte[] key = i.next();
+                if (isValueKey(key)) {
+                    if (valueKey != null) values.put(value(valueKey), count);
+                    valueKey = key;
+                    count = 0;
+                } else {
+                    count++;
+                }
+            }
+            if (valueKey != null) values.put(value(valueKey), count);
+            this.values = values;
+            return values;
+        }
+
+        private String value(final byte[] valueKey) throws IOException {
+            try {
+                final byte[] b = this.heap.get(valueKey);
+                return b == null ? "" : UTF8.String(b);
+            } catch (final SpaceExceededException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        /**
+         * @param valueKey the key of the value record
+         * @return the keys of all postings of the value
+         */
+        private ArrayList<byte[]> postings(final byte[] valueKey) throws IOException {
+            final ArrayList<byte[]> postings = new ArrayList<byte[]>();
+            final CloneableIterator<byte[]> i = this.heap.keys(true, valueKey);
+            if (i == null) return postings;
+            while (i.hasNext()) {
+                final byte[] key = i.next();
+                if (!samePrefix(key, valueKey)) break;
+                if (!isValueKey(key)) postings.add(key);
+            }
+            return postings;
+        }
+
+        private void close() {
+            this.heap.close();
+        }
+    }
+
+    /**
+     * open the persistent column index of a table
+     * @param location the directory of the table files
+     * @param tablename the name of the table
+     * @param pklength the length of the primary keys of the table
+     * @param table the table; its changes are committed together with those of the index
+     */
+    public TablesColumnHeapIndex(final File location, final String tablename, final int pklength, final BEncodedHeap table) {
+        super(TablesColumnIndex.INDEXTYPE.HEAP);
+        this.location = location;
+        this.tablename = tablename;
+        this.pklength = pklength;
+        this.table = table;
+        this.index = new ConcurrentHashMap<String, Column>();
+        this.rebuild = new TreeSet<String>();
+        for (final String column: indexedColumns(location, tablename)) {
+            final File f = columnFile(location, tablename, column);
+            final File dirty = new File(location, f.getName() + dirtySuffix);
+            if (dirty.exists()) {
+                // the index has changes that were not committed and may not be in sync with the table
+                log.warn("index of column " + column + " in table " + tablename + " was not committed and must be rebuild");
+                FileUtils.deletedelete(f);
+                FileUtils.deletedelete(dirty);
+                this.rebuild.add(column);
+            }
+            try {
+                this.index.put(column, new Column(f));
+            } catch (final IOException e) {
+                log.warn("cannot open index of column " + column + " in table " + tablename + ": " + e.getMessage(), e);
+            }
+        }
+        this.committer = GroupCommit.schedule(this, COMMIT_INTERVAL);
+    }
+
+    /**
+     * @return the columns that had an index which was not closed properly; their index is empty now
+     * and must be filled again with all rows of the table
+     */
+    public synchronized Set<String> rebuildColumns() {
+        return new TreeSet<String>(this.rebuild);
+    }
+
+    /**
+     * @param columnName
+     * @return true if the index of the column is complete, false if it must be filled
+     */
+    public synchronized boolean isComplete(final String columnName) {
+        return this.index.containsKey(columnName) && !this.rebuild.contains(columnName);
+    }
+
+    /**
+     * mark the index of a column as complete, i.e. after all rows of the table were added
+     * @param columnName
+     */
+    public synchronized void setComplete(final String columnName) {
+        this.rebuild.remove(columnName);
+    }
+
+    /**
+     * @param location the directory of the table files
+     * @param tablename the name of the table
+     * @return the names of all columns of the table that have an index file
+     */
+    public static Set<String> indexedColumns(final File location, final String tablename) {
+        final Set<String> columns = new TreeSet<String>();
+        final String[] files = location.list();
+        if (files == null) return columns;
+        final String prefix = tablename + ".";
+        for (final String f: files) {
+            if (f.startsWith(prefix) && f.endsWith(suffix) && f.length() > prefix.length() + suffix.length()) {
+                columns.add(f.substring(prefix.length(), f.length() - suffix.length()));
+            }
+        }
+        return columns;
+    }
+
+    private static File columnFile(final File location, final String tablename, final String column) {
+        return new File(location, tablename + "." + column + suffix);
+    }
+
+    /**
+     * @param columnName a column name
+     * @return true if the column name can be used as part of an index file name
+     */
+    public static boolean isIndexable(final String columnName) {
+        return columnName != null && COLUMN_NAME.matcher(columnName).matches();
+    }
+
+    private byte[] normalizePK(final byte[] pk) {
+        return HeapReader.normalizeKey(pk, this.pklength);
+    }
+
+    /**
+     * @param columnValue
+     * @return the key of the value record: the hash of the value and a primary key of zeros
+     */
+    private byte[] valueKey(final String columnValue) {
+        final byte[] key = new byte[HASHLENGTH + this.pklength];
+        System.arraycopy(Base64Order.enhancedCoder.encodeSubstring(Digest.encodeMD5Raw(columnValue), HASHLENGTH), 0, key, 0, HASHLENGTH);
+        return key;
+    }
+
+    /**
+     * @param valueKey the key of the value record
+     * @param pk
+     * @return the key of the posting of the primary key for the value
+     */
+    private byte[] postingKey(final byte[] valueKey, final byte[] pk) {
+        final byte[] key = valueKey.clone();
+        System.arraycopy(normalizePK(pk), 0, key, HASHLENGTH, this.pklength);
+        return key;
+    }
+
+    private static boolean isValueKey(final byte[] key) {
+        for (int i = HASHLENGTH; i < key.length; i++) if (key[i] != 0) return false;
+        return true;
+    }
+
+    private static boolean samePrefix(final byte[] a, final byte[] b) {
+        for (int i = 0; i < HASHLENGTH; i++) if (a[i] != b[i]) return false;
+        return true;
+    }
+
+    private byte[] pk(final byte[] key) {
+        return Arrays.copyOfRange(key, HASHLENGTH, key.length);
+    }
+
+    /**
+     * start a new, empty index for a column. The index is not complete until all rows of
+     * the table are added and {@link #setComplete(String)} is called.
+     * @param columnName
+     * @throws IOException
+     */
+    public synchronized void createIndex(final String columnName) throws IOException {
+        if (!isIndexable(columnName)) throw new IOException("column name not usable for an index: " + columnName);
+        if (this.index.containsKey(columnName)) return;
+        final File f = columnFile(this.location, this.tablename, columnName);
+        FileUtils.deletedelete(f);
+        final Column column = new Column(f);
+        column.values = new TreeMap<String, Integer>();
+        column.change();
+        this.index.put(columnName, column);
+        this.rebuild.add(columnName);
+    }
+
+    @Override
+    public synchronized void deleteIndex(final String columnName) {
+        final Column column = this.index.remove(columnName);
+        if (column == null) return;
+        column.close();
+        FileUtils.deletedelete(column.file);
+        FileUtils.deletedelete(column.dirtyFile());
+        this.rebuild.remove(columnName);
+    }
+
+    @Override
+    protected synchronized void insertPK(final String columnName, final String columnValue, final byte[] pk) {
+        final Column column = this.index.get(columnName);
+        if (column == null || columnValue == null) return;
+        final byte[] valueKey = valueKey(columnValue);
+        final byte[] key = postingKey(valueKey, pk);
+        try {
+            if (column.heap.containsKey(key)) return;
+            column.change();
+            if (!column.heap.containsKey(valueKey)) column.heap.insert(valueKey, UTF8.getBytes(columnValue));
+            column.heap.insert(key, POSTING);
+            if (column.values != null) {
+                final Integer c = column.values.get(columnValue);
+                column.values.put(columnValue, c == null ? 1 : c + 1);
+            }
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    /**
+     * remove a primary key from the postings of one value
+     * @param columnName
+     * @param columnValue the value that the row had in this column
+     * @param pk
+     */
+    protected synchronized void removePK(final String columnName, final String columnValue, final byte[] pk) {
+        final Column column = this.index.get(columnName);
+        if (column == null || columnValue == null) return;
+        final byte[] valueKey = valueKey(columnValue);
+        final byte[] key = postingKey(valueKey, pk);
+        try {
+            if (!column.heap.containsKey(key)) return;
+            column.change();
+            column.heap.delete(key);
+            final boolean empty = column.postings(valueKey).isEmpty();
+            if (empty) column.heap.delete(valueKey);
+            if (column.values != null) {
+                final Integer c = column.values.get(columnValue);
+                if (empty || c == null || c <= 1) column.values.remove(columnValue); else column.values.put(columnValue, c - 1);
+            }
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    /**
+     * remove a primary key from all postings. This reads all keys of the index, use
+     * {@link #removePK(String, String, byte[])} if the row is known.
+     */
+    @Override
+    protected synchronized void removePK(final byte[] pk) {
+        final byte[] npk = normalizePK(pk);
+        for (final Map.Entry<String, Column> column: this.index.entrySet()) {
+            try {
+                final ArrayList<byte[]> valueKeys = new ArrayList<byte[]>();
+                final CloneableIterator<byte[]> i = column.getValue().heap.keys(true, false);
+                while (i.hasNext()) {
+                    final byte[] key = i.next();
+                    if (!Arrays.equals(pk(key), npk)) continue;
+                    final byte[] valueKey = key.clone();
+                    Arrays.fill(valueKey, HASHLENGTH, valueKey.length, (byte) 0);
+                    valueKeys.add(valueKey);
+                }
+                for (final byte[] valueKey: valueKeys) removePK(column.getKey(), column.getValue().value(valueKey), pk);
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+            }
+        }
+    }
+
+    /**
+     * change the index for one row of the table
+     * @param pk the primary key of the row
+     * @param oldRow the row before the change, or null if the row was new
+     * @param newRow the row after the change, or null if the row was deleted
+     */
+    public synchronized void update(final byte[] pk, final Map<String, byte[]> oldRow, final Map<String, byte[]> newRow) {
+        for (final String columnName: this.index.keySet()) {
+            final byte[] o = oldRow == null ? null : oldRow.get(columnName);
+            final byte[] n = newRow == null ? null : newRow.get(columnName);
+            if (o != null && n != null && Arrays.equals(o, n)) continue;
+            if (o != null) removePK(columnName, UTF8.String(o), pk);
+            if (n != null) insertPK(columnName, UTF8.String(n), pk);
+        }
+    }
+
+    /**
+     * write the changes of the table and of the index and remove the marks of the changed column files.
+     * The table is written first, so a column file that is not marked never has changes that the table
+     * does not have.
+     */
+    @Override
+    public synchronized void commit() throws IOException {
+        boolean dirty = false;
+        for (final Column column: this.index.values()) dirty |= column.dirty;
+        if (!dirty) return;
+        if (this.table != null) this.table.commit();
+        for (final Column column: this.index.values()) column.commit();
+    }
+
+    @Override
+    public String name() {
+        return this.tablename + suffix;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (final Column column: this.index.values()) {
+            try {
+                column.change();
+                column.heap.clear();
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+            }
+            column.values = new TreeMap<String, Integer>();
+        }
+    }
+
+    /**
+     * close all column files; the index is valid when it is opened again
+     */
+    public synchronized void close() {
+        this.committer.cancel(false);
+        try {
+            commit();
+        } catch (final IOException e) {
+            log.warn("cannot commit index of table " + this.tablename + ": " + e.getMessage(), e);
+        }
+        for (final Column column: this.index.values()) column.close();
+        this.index.clear();
+    }
+
+    @Override
+    public Collection<String> columns() {
+        return this.index.keySet();
+    }
+
+    @Override
+    public synchronized Set<String> keySet(final String columnName) {
+        final Column column = this.index.get(columnName);
+        if (column == null) return new TreeSet<String>();
+        try {
+            return new TreeSet<String>(column.values().keySet());
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+            return new TreeSet<String>();
+        }
+    }
+
+    @Override
+    public synchronized boolean containsKey(final String columnName, final String key) {
+        final Column column = this.index.get(columnName);
+        if (column == null || key == null) return false;
+        if (column.values != null) return column.values.containsKey(key);
+        return column.heap.containsKey(valueKey(key));
+    }
+
+    @Override
+    public boolean hasIndex(final String columnName) {
+        return this.index.containsKey(columnName);
+    }
+
+    @Override
+    public synchronized Collection<byte[]> get(final String columnName, final String key) {
+        final Column column = this.index.get(columnName);
+        if (column == null || key == null) return new ArrayList<byte[]>(0);
+        try {
+            final ArrayList<byte[]> pks = column.postings(valueKey(key));
+            for (int i = 0; i < pks.size(); i++) pks.set(i, pk(pks.get(i)));
+            return pks;
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+            return new ArrayList<byte[]>(0);
+        }
+    }
+
+    /**
+     * find all rows where the column value matches a pattern. The pattern is only matched
+     * against the distinct values of the column.
+     * @param columnName
+     * @param pattern
+     * @return the primary keys of the matching rows in ascending order
+     */
+    public synchronized TreeSet<byte[]> select(final String columnName, final Pattern pattern) {
+        final TreeSet<byte[]> pks = new TreeSet<byte[]>(NATURALORDER);
+        for (final String value: keySet(columnName)) {
+            if (pattern.matcher(value).matches()) pks.addAll(get(columnName, value));
+        }
+        return pks;
+    }
+
+    @Override
+    public synchronized int size(final String columnName) {
+        final Column column = this.index.get(columnName);
+        if (column == null) return -1;
+        try {
+            return column.values().size();
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+            return -1;
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.index.size();
+    }
+
+}
@@ -37,7 +37,7 @@ import net.yacy.cora.order.NaturalOrder;
  */
 public abstract class TablesColumnIndex {
 
-	public static enum INDEXTYPE {RAM, BLOB}
+	public static enum INDEXTYPE {RAM, BLOB, HEAP}
 	private INDEXTYPE type;
 	// Map<ColumnName, Map<ColumnValue, T<PrimaryKey>>>
 	// private final Map<String, Map<String, TreeSet<byte[]>>> index;
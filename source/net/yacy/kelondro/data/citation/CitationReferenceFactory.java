@@ -24,6 +24,7 @@ import java.io.Serializable;
 
 import net.yacy.kelondro.index.Row;
 import net.yacy.kelondro.index.Row.Entry;
+import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.rwi.ReferenceFactory;
 
 public class CitationReferenceFactory implements ReferenceFactory<CitationReference>, Serializable {
@@ -40,6 +41,11 @@ public class CitationReferenceFactory implements ReferenceFactory<CitationRefere
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public CitationReference produceBound(final ReferenceContainer<CitationReference> container, final int from, final int to) {
+        return null; // citations are not ranked
+    }
+
     @Override
     public Row getRow() {
         return CitationReference.citationRow;
@@ -0,0 +1,251 @@
+// PositionReference.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.data.position;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.util.ByteArray;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.index.Column;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.Row.Entry;
+import net.yacy.kelondro.rwi.Reference;
+
+/**
+ * A reference of the positional index: the positions of all occurrences of a word in one document.
+ * The positions are stored in ascending order as differences in a variable-length encoding;
+ * if they do not fit into the fixed-size cell, only the first positions are stored and the
+ * reference is marked as incomplete. The positions are produced by the Tokenizer (text words)
+ * and by the Condenser (words of the title and other phrases, see Word.phrasePosition()).
+ */
+public class PositionReference implements Reference, Serializable {
+
+    private static final long serialVersionUID = -5093581546519163416L;
+
+    public static final int POSITIONS_LENGTH = 39; // the number of bytes for the encoded positions
+
+    public static final Row positionRow = new Row(new Column[]{
+            new Column("h", Column.celltype_string,    Column.encoder_bytes, Word.commonHashLength, "urlhash"),
+            new Column("c", Column.celltype_cardinal,  Column.encoder_b256,  1, "complete"),
+            new Column("p", Column.celltype_binary,    Column.encoder_bytes, POSITIONS_LENGTH, "positions")
+        },
+        Base64Order.enhancedCoder
+    );
+
+    // static properties
+    private static final int col_urlhash   = 0; // h 12 the url hash b64-encoded
+    private static final int col_complete  = 1; // c  1 1 if all positions are stored, 0 otherwise
+    private static final int col_positions = 2; // p 39 the position differences, terminated by a zero byte if shorter
+
+    private final Row.Entry entry;
+
+    /**
+     * create a reference with the positions of a word
+     * @param urlHash the url hash of the document
+     * @param positions the positions of the word, sorted ascending and without doubles
+     * @param complete false if the word has more positions than given
+     */
+    public PositionReference(final byte[] urlHash, final int[] positions, final boolean complete) {
+        assert (urlHash.length == 12) : "urlhash = " + ASCII.String(urlHash);
+        this.entry = positionRow.newEntry();
+        final byte[] p = new byte[POSITIONS_LENGTH];
+        final int stored = encode(positions, p);
+        this.entry.setCol(col_urlhash, urlHash);
+        this.entry.setCol(col_complete, complete && stored == positions.length ? 1 : 0);
+        this.entry.setCol(col_positions, p);
+    }
+
+    /**
+     * create a reference with the positions of a word
+     * @param urlHash the url hash of the document
+     * @param word the word properties of the document, as produced by the Condenser
+     */
+    public PositionReference(final byte[] urlHash, final Word word) {
+        this(urlHash, word.positions(), word.positionsComplete());
+    }
+
+    private PositionReference(final byte[] row) {
+        this.entry = positionRow.newEntry(row);
+    }
+
+    public PositionReference(final Row.Entry rentry) {
+        this.entry = rentry;
+    }
+
+    /**
+     * encode ascending positions as differences with 7 bits in each byte; the high bit marks a following byte.
+     * All differences are positive, so a zero byte only appears behind the last encoded position.
+     * @param positions the positions, sorted ascending and without doubles, all positive
+     * @param b the target array
+     * @return the number of positions that fit into the target array
+     */
+    public static int encode(final int[] positions, final byte[] b) {
+        int last = 0, c = 0, p = 0;
+        for (final int position: positions) {
+            assert position > last : "position = " + position + ", last = " + last;
+            int d = position - last;
+            final int len = d < (1 << 7) ? 1 : d < (1 << 14) ? 2 : d < (1 << 21) ? 3 : d < (1 << 28) ? 4 : 5;
+            if (p + len > b.length) break;
+            while (d >= 0x80) {
+                b[p++] = (byte) ((d & 0x7f) | 0x80);
+                d >>>= 7;
+            }
+            b[p++] = (byte) d;
+            last = position;
+            c++;
+        }
+        while (p < b.length) b[p++] = 0;
+        return c;
+    }
+
+    /**
+     * decode positions that were encoded with encode()
+     * @param b the encoded positions
+     * @param offset the start of the encoded positions in b
+     * @param length the maximum length of the encoded positions
+     * @return the positions
+     */
+    public static int[] decode(final byte[] b, final int offset, final int length) {
+        int[] positions = new int[8];
+        int c = 0, last = 0, p = offset;
+        final int end = offset + length;
+        while (p < end && b[p] != 0) {
+            int d = 0, shift = 0;
+            byte x;
+            do {
+                x = b[p++];
+                d |= (x & 0x7f) << shift;
+                shift += 7;
+            } while ((x & 0x80) != 0 && p < end);
+            last += d;
+            if (c == positions.length) {
+                final int[] q = new int[positions.length * 2];
+                System.arraycopy(positions, 0, q, 0, c);
+                positions = q;
+            }
+            positions[c++] = last;
+        }
+        if (c == positions.length) return positions;
+        final int[] q = new int[c];
+        System.arraycopy(positions, 0, q, 0, c);
+        return q;
+    }
+
+    /**
+     * @return the stored positions, sorted ascending
+     */
+    public int[] positionArray() {
+        return decode(this.entry.bytes(), positionRow.colstart[col_positions], POSITIONS_LENGTH);
+    }
+
+    /**
+     * @return true if all positions of the word are stored; otherwise only the first positions are stored
+     */
+    public boolean isComplete() {
+        return this.entry.getColLong(col_complete) == 1;
+    }
+
+    @Override
+    public PositionReference clone() {
+        final byte[] b = new byte[positionRow.objectsize];
+        System.arraycopy(this.entry.bytes(), 0, b, 0, positionRow.objectsize);
+        return new PositionReference(b);
+    }
+
+    @Override
+    public String toPropertyForm() {
+        return this.entry.toPropertyForm('=', true, true, false, false);
+    }
+
+    @Override
+    public Entry toKelondroEntry() {
+        return this.entry;
+    }
+
+    @Override
+    public byte[] urlhash() {
+        return this.entry.getColBytes(col_urlhash, true);
+    }
+
+    @Override
+    public long lastModified() {
+        return 0; // the positions are replaced whenever the document is stored again
+    }
+
+    @Override
+    public String toString() {
+        return toPropertyForm();
+    }
+
+    @Override
+    public boolean isOlder(final Reference other) {
+        return false;
+    }
+
+    private int hashCache = Integer.MIN_VALUE; // if this is used in a compare method many times, a cache is useful
+
+    @Override
+    public int hashCode() {
+        if (this.hashCache == Integer.MIN_VALUE) {
+            this.hashCache = ByteArray.hashCode(this.urlhash());
+        }
+        return this.hashCache;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (!(obj instanceof PositionReference)) return false;
+        final PositionReference other = (PositionReference) obj;
+        return Base64Order.enhancedCoder.equal(this.urlhash(), other.urlhash());
+    }
+
+    @Override
+    public int distance() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void join(final Reference oe) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<Integer> positions() {
+        final int[] p = positionArray();
+        final ArrayList<Integer> l = new ArrayList<Integer>(p.length);
+        for (final int i: p) l.add(i);
+        return l;
+    }
+
+    @Override
+    public int posintext() {
+        final int[] p = positionArray();
+        return p.length == 0 ? 0 : p[0];
+    }
+
+}
@@ -0,0 +1,55 @@
+// PositionReferenceFactory.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.data.position;
+
+import java.io.Serializable;
+
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.Row.Entry;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.kelondro.rwi.ReferenceFactory;
+
+public class PositionReferenceFactory implements ReferenceFactory<PositionReference>, Serializable {
+
+    private static final long serialVersionUID = 4187036526934582265L;
+
+    @Override
+    public PositionReference produceSlow(final Entry e) {
+        return new PositionReference(e);
+    }
+
+    @Override
+    public PositionReference produceFast(final PositionReference r, final boolean local) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public PositionReference produceBound(final ReferenceContainer<PositionReference> container, final int from, final int to) {
+        return null; // positions are not ranked
+    }
+
+    @Override
+    public Row getRow() {
+        return PositionReference.positionRow;
+    }
+
+}
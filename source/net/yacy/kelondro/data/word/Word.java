@@ -26,6 +26,7 @@
 
 package net.yacy.kelondro.data.word;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Locale;
 
@@ -64,12 +65,22 @@ public class Word {
         }
     }
 
+    /**
+     * the number of bits of a word position within a phrase block: words of the text have the positions
+     * 1 .. 2^24 - 1, words of the title, description and the other phrases below 100 are
+     * placed in blocks behind the text, see phrasePosition()
+     */
+    public  static final int PHRASE_POSITION_BITS = 24;
+    private static final int MAX_POSITIONS = 256; // the maximum number of recorded positions of a word in one document
+
     // object carries statistics for words and sentences
     public  int      count;       // number of occurrences
     public  int      posInText;   // unique handle, is initialized with first word position in text
     public  int      posInPhrase; // position of word in phrase
     public  int      numOfPhrase; // number of phrase. 'normal' phrases begin with number 100
     public  Bitfield flags;       // the flag bits for each word
+    private int[]    positions;   // the positions of all occurrences, in the order of recording
+    private int      positionCount; // the number of occurrences with a position, may be larger than the recorded positions
 
     public Word(final int handle, final int pip, final int nop) {
         this.count = 1;
@@ -77,6 +88,65 @@ public class Word {
         this.posInPhrase = pip;
         this.numOfPhrase = nop;
         this.flags = null;
+        this.positions = null;
+        this.positionCount = 0;
+    }
+
+    /**
+     * compute the position of a word in a phrase that is not part of the text, like the title.
+     * Each phrase number gets an own block of positions, so words of different phrases are never adjacent.
+     * @param phrase the phrase number, 0 .. 99
+     * @param pip the position of the word in the phrase, starting with 0
+     * @return the position or -1 if it does not fit into the block
+     */
+    public static int phrasePosition(final int phrase, final int pip) {
+        if (phrase < 0 || phrase >= 100 || pip < 0 || pip >= (1 << PHRASE_POSITION_BITS) - 1) return -1;
+        return ((phrase + 1) << PHRASE_POSITION_BITS) + pip + 1;
+    }
+
+    /**
+     * record an occurrence of the word
+     * @param position the word position in the text (starting with 1) or the result of phrasePosition()
+     */
+    public void addPosition(final int position) {
+        if (position <= 0) return;
+        this.positionCount++;
+        if (this.positions == null) {
+            this.positions = new int[4];
+        } else if (this.positionCount > this.positions.length) {
+            if (this.positions.length >= MAX_POSITIONS) return;
+            final int[] p = new int[this.positions.length * 2];
+            System.arraycopy(this.positions, 0, p, 0, this.positions.length);
+            this.positions = p;
+        }
+        this.positions[this.positionCount - 1] = position;
+    }
+
+    /**
+     * @return the recorded positions of the word, sorted and without doubles
+     */
+    public int[] positions() {
+        if (this.positions == null) return new int[0];
+        final int[] p = new int[Math.min(this.positionCount, this.positions.length)];
+        System.arraycopy(this.positions, 0, p, 0, p.length);
+        Arrays.sort(p);
+        int c = 0;
+        for (int i = 0; i < p.length; i++) if (c == 0 || p[i] != p[c - 1]) p[c++] = p[i];
+        return c == p.length ? p : Arrays.copyOf(p, c);
+    }
+
+    /**
+     * @return true if at least one position was recorded with addPosition()
+     */
+    public boolean hasPositions() {
+        return this.positions != null;
+    }
+
+    /**
+     * @return true if positions() contains all positions that were recorded with addPosition()
+     */
+    public boolean positionsComplete() {
+        return this.positions == null || this.positionCount <= this.positions.length;
     }
 
     public static void clearCache() {
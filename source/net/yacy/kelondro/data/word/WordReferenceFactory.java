@@ -57,6 +57,11 @@ public class WordReferenceFactory implements ReferenceFactory<WordReference>, Se
         return new WordReferenceVars(r, local);
     }
 
+    @Override
+    public WordReference produceBound(final ReferenceContainer<WordReference> container, final int from, final int to) {
+        return WordReferenceRow.bound(container, from, to);
+    }
+
     @Override
     public Row getRow() {
         return WordReferenceRow.urlEntryRow;
@@ -35,6 +35,7 @@ import net.yacy.cora.util.ByteArray;
 import net.yacy.kelondro.index.Column;
 import net.yacy.kelondro.index.Row;
 import net.yacy.kelondro.index.Row.Entry;
+import net.yacy.kelondro.index.RowCollection;
 import net.yacy.kelondro.rwi.AbstractReference;
 import net.yacy.kelondro.rwi.Reference;
 import net.yacy.kelondro.util.Bitfield;
@@ -356,6 +357,77 @@ public final class WordReferenceRow extends AbstractReference implements WordRef
         return (((double) hitcount()) / ((double) (wordsintext() + wordsintitle() + 1)));
     }
 
+    /**
+     * @return the best term frequency of the references in a block, scaled to 0..255;
+     *   this is only set in references that were produced with bound()
+     */
+    public int termFrequencyBound() {
+        return (0xff & this.entry.getColByte(col_reserve2));
+    }
+
+    /**
+     * produce a reference that bounds the rank features of the references in a block of a container:
+     * counts that rank better if they are higher are the maximum of the block, positions and lengths
+     * that rank better if they are lower are the minimum and the flags are the union of all flags.
+     * The best term frequency, scaled to 0..255, is stored in the otherwise unused reserve column.
+     * @param collection a sorted collection of word references
+     * @param from the position of the first reference of the block
+     * @param to the position after the last reference of the block
+     * @return the bound with the url hash of the last reference of the block
+     */
+    public static WordReferenceRow bound(final RowCollection collection, final int from, final int to) {
+        assert from < to;
+        final Row.Entry view = urlEntryRow.newView();
+        final byte[] flags = new byte[urlEntryRow.width(col_flags)];
+        final byte[] f = new byte[flags.length];
+        long lastModified = 0, wordsInTitle = 0, wordsInText = 0, phrasesInText = 0, llocal = 0, lother = 0, hitcount = 0, tf = 0;
+        long urlLength = Long.MAX_VALUE, urlComps = Long.MAX_VALUE, posintext = Long.MAX_VALUE, posinphrase = Long.MAX_VALUE, posofphrase = Long.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            collection.view(i, view);
+            lastModified = Math.max(lastModified, view.getColLong(col_lastModified));
+            final long t = 0xff & view.getColByte(col_wordsInTitle);
+            final long w = view.getColLong(col_wordsInText);
+            final long h = 0xff & view.getColByte(col_hitcount);
+            wordsInTitle = Math.max(wordsInTitle, t);
+            wordsInText = Math.max(wordsInText, w);
+            hitcount = Math.max(hitcount, h);
+            tf = Math.max(tf, (long) ((((double) h) / ((double) (w + t + 1))) * 255.0d));
+            phrasesInText = Math.max(phrasesInText, view.getColLong(col_phrasesInText));
+            llocal = Math.max(llocal, 0xff & view.getColByte(col_llocal));
+            lother = Math.max(lother, 0xff & view.getColByte(col_lother));
+            urlLength = Math.min(urlLength, 0xff & view.getColByte(col_urlLength));
+            urlComps = Math.min(urlComps, 0xff & view.getColByte(col_urlComps));
+            posintext = Math.min(posintext, view.getColLong(col_posintext));
+            posinphrase = Math.min(posinphrase, 0xff & view.getColByte(col_posinphrase));
+            posofphrase = Math.min(posofphrase, 0xff & view.getColByte(col_posofphrase));
+            view.writeToArray(col_flags, f, 0);
+            for (int j = 0; j < flags.length; j++) flags[j] |= f[j];
+        }
+        final Row.Entry bound = urlEntryRow.newEntry();
+        collection.view(to - 1, view);
+        bound.setCol(col_urlhash, view.getPrimaryKeyBytes());
+        bound.setCol(col_lastModified, lastModified);
+        bound.setCol(col_freshUntil, 0);
+        bound.setCol(col_wordsInTitle, wordsInTitle);
+        bound.setCol(col_wordsInText, wordsInText);
+        bound.setCol(col_phrasesInText, phrasesInText);
+        bound.setCol(col_doctype, new byte[]{(byte) 0});
+        bound.setCol(col_language, WordReferenceVars.default_language);
+        bound.setCol(col_llocal, llocal);
+        bound.setCol(col_lother, lother);
+        bound.setCol(col_urlLength, urlLength);
+        bound.setCol(col_urlComps, urlComps);
+        bound.setCol(col_typeofword, new byte[]{(byte) 0});
+        bound.setCol(col_flags, flags);
+        bound.setCol(col_hitcount, hitcount);
+        bound.setCol(col_posintext, posintext);
+        bound.setCol(col_posinphrase, posinphrase);
+        bound.setCol(col_posofphrase, posofphrase);
+        bound.setCol(col_worddistance, 0);
+        bound.setCol(col_reserve2, Math.min(255, tf));
+        return new WordReferenceRow(bound);
+    }
+
     @Override
     public String toString() {
         return toPropertyForm();
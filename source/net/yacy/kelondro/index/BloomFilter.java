@@ -0,0 +1,217 @@
+// BloomFilter.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * A Bloom filter for byte[] keys. A negative answer of mightContain() is always correct,
+ * a positive answer is wrong with a small probability that depends on the number of bits per key.
+ * The filter can only grow, removed keys are still reported as possibly contained.
+ *
+ * The filter is used as a guard in front of the index of immutable heap files:
+ * a lookup for a key that is not in the file does not need to access the index at all.
+ * It can be dumped to a file and loaded again.
+ * add() is not synchronized: a filter must be filled before it is shared with concurrent readers.
+ */
+public final class BloomFilter {
+
+    private static final int MAGIC = 0x59426c6d; // 'YBlm'
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * create an empty filter
+     * @param expectedKeys the number of keys that shall be stored in the filter
+     * @param bitsPerKey the number of bits per key; 10 bits result in a false positive rate of about 1%
+     */
+    public BloomFilter(final int expectedKeys, final int bitsPerKey) {
+        final long m = Math.max(64L, (long) Math.max(1, expectedKeys) * Math.max(1, bitsPerKey));
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (m + 63) >>> 6)];
+        this.bitCount = ((long) this.bits.length) << 6;
+        // the optimal number of hash functions is ln(2) * bits per key
+        this.hashCount = Math.max(1, Math.min(16, (int) Math.round(Math.log(2) * this.bitCount / Math.max(1, expectedKeys))));
+    }
+
+    private BloomFilter(final long[] bits, final int hashCount) {
+        this.bits = bits;
+        this.bitCount = ((long) bits.length) << 6;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * create a filter that contains all keys of an iterator
+     * @param keys the keys
+     * @param size the number of keys in the iterator
+     * @param bitsPerKey the number of bits per key
+     * @return the filled filter
+     */
+    public static BloomFilter of(final Iterator<byte[]> keys, final int size, final int bitsPerKey) {
+        final BloomFilter filter = new BloomFilter(size, bitsPerKey);
+        while (keys.hasNext()) filter.add(keys.next());
+        return filter;
+    }
+
+    public void add(final byte[] key) {
+        final long h1 = hash(key, 0x9E3779B97F4A7C15L);
+        final long h2 = hash(key, 0xC2B2AE3D27D4EB4FL) | 1L;
+        long h = h1;
+        for (int i = 0; i < this.hashCount; i++) {
+            final long p = (h & Long.MAX_VALUE) % this.bitCount;
+            this.bits[(int) (p >>> 6)] |= 1L << (p & 63);
+            h += h2;
+        }
+    }
+
+    /**
+     * test if a key may be in the filter
+     * @param key
+     * @return false if the key is definitely not in the filter, true if it may be in the filter
+     */
+    public boolean mightContain(final byte[] key) {
+        final long h1 = hash(key, 0x9E3779B97F4A7C15L);
+        final long h2 = hash(key, 0xC2B2AE3D27D4EB4FL) | 1L;
+        long h = h1;
+        for (int i = 0; i < this.hashCount; i++) {
+            final long p = (h & Long.MAX_VALUE) % this.bitCount;
+            if ((this.bits[(int) (p >>> 6)] & (1L << (p & 63))) == 0) return false;
+            h += h2;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of bytes that are used by the filter
+     */
+    public long mem() {
+        return ((long) this.bits.length) << 3;
+    }
+
+    /**
+     * @return the number of hash functions
+     */
+    public int hashCount() {
+        return this.hashCount;
+    }
+
+    /**
+     * estimate the false positive rate from the share of bits that are set
+     * @return the probability that mightContain() is true for a key that was not added
+     */
+    public double falsePositiveRate() {
+        long set = 0;
+        for (final long l: this.bits) set += Long.bitCount(l);
+        return Math.pow((double) set / (double) this.bitCount, this.hashCount);
+    }
+
+    /**
+     * write the filter to a stream, without a header
+     * @param os
+     * @throws IOException
+     */
+    public void write(final DataOutput os) throws IOException {
+        os.writeInt(this.hashCount);
+        os.writeInt(this.bits.length);
+        for (final long l: this.bits) os.writeLong(l);
+    }
+
+    /**
+     * read a filter from a stream that was written with write()
+     * @param is
+     * @return the filter
+     * @throws IOException
+     */
+    public static BloomFilter read(final DataInput is) throws IOException {
+        final int hashCount = is.readInt();
+        final int length = is.readInt();
+        if (hashCount < 1 || length < 1) throw new IOException("bloom filter is corrupted");
+        final long[] bits = new long[length];
+        for (int i = 0; i < length; i++) bits[i] = is.readLong();
+        return new BloomFilter(bits, hashCount);
+    }
+
+    /**
+     * write the filter to a file. The file is written to a temporary file first and then renamed.
+     * @param file
+     * @throws IOException
+     */
+    public void dump(final File file) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".prt");
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+            os.writeInt(MAGIC);
+            write(os);
+        }
+        if (file.exists()) FileUtils.deletedelete(file);
+        if (!tmp.renameTo(file)) throw new IOException("cannot rename " + tmp + " to " + file);
+    }
+
+    /**
+     * read a filter from a file that was written with dump()
+     * @param file
+     * @return the filter
+     * @throws IOException if the file cannot be read or has not the right format
+     */
+    public static BloomFilter load(final File file) throws IOException {
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (is.readInt() != MAGIC) throw new IOException("file " + file + " is not a bloom filter dump");
+            final int hashCount = is.readInt();
+            final int length = is.readInt();
+            if (hashCount < 1 || length < 1 || ((long) length) * 8L + 12L != file.length()) throw new IOException("bloom filter dump " + file + " is corrupted");
+            final long[] bits = new long[length];
+            for (int i = 0; i < length; i++) bits[i] = is.readLong();
+            return new BloomFilter(bits, hashCount);
+        }
+    }
+
+    /**
+     * a 64 bit hash of a byte array; keys of a heap have a fixed length, so no length is mixed in
+     */
+    private static long hash(final byte[] key, final long seed) {
+        long h = seed;
+        for (final byte b: key) {
+            h ^= b & 0xff;
+            h *= 0x100000001B3L;
+        }
+        // final avalanche (from MurmurHash3 fmix64)
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
@@ -0,0 +1,628 @@
+// OffHeapHandleMap.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.yacy.cora.order.ByteOrder;
+import net.yacy.cora.order.CloneableIterator;
+import net.yacy.cora.storage.HandleMap;
+import net.yacy.cora.util.SpaceExceededException;
+
+/**
+ * A HandleMap that stores its entries outside of the java heap.
+ * The entries are held as a sorted array of fixed-width records (key + 8 byte value) in direct byte buffers,
+ * keys are found with a binary search. The record format is the same as the dump format of the RowHandleMap,
+ * so a dump can be read with a single sequential read and without any sorting.
+ *
+ * The map is made for the index of heap files which are not written any more: the sorted array
+ * cannot grow, but values can be changed in place and entries can be removed (they are marked as removed).
+ * New keys are stored in a small RowHandleMap on the java heap. A dump writes the union of both
+ * and can be loaded into any HandleMap implementation.
+ *
+ * Lookups do not lock: in-place changes increment a change stamp and readers that see a changed
+ * stamp repeat the lookup synchronized. The direct buffers are never released explicitly, they are freed
+ * by the garbage collector when the map is not referenced any more; therefore a reader can never touch
+ * released memory.
+ */
+public final class OffHeapHandleMap implements HandleMap, Iterable<Map.Entry<byte[], Long>> {
+
+    private static final int SEGMENT_SIZE = 1 << 30; // maximum size of one direct buffer
+    private static final int VALUE_LENGTH = 8;
+    private static final long REMOVED = -1;
+
+    private final int keylength;
+    private final int reclen;
+    private final int recordsPerSegment;
+    private final ByteOrder ordering;
+    private final String name;
+    private volatile ByteBuffer[] segments;
+    private volatile int count; // the number of records in the sorted array, including removed records
+    private int removed; // the number of records in the sorted array that are marked as removed
+    private volatile RowHandleMap overflow; // entries with keys that are not in the sorted array, created on demand
+    private volatile long changeStamp; // odd while a record is changed
+
+    /**
+     * create an empty map
+     * @param keylength
+     * @param ordering
+     * @param name
+     */
+    public OffHeapHandleMap(final int keylength, final ByteOrder ordering, final String name) {
+        this.keylength = keylength;
+        this.reclen = keylength + VALUE_LENGTH;
+        this.recordsPerSegment = SEGMENT_SIZE / this.reclen;
+        this.ordering = ordering;
+        this.name = name;
+        this.segments = new ByteBuffer[0];
+        this.count = 0;
+        this.removed = 0;
+        this.overflow = null;
+        this.changeStamp = 0;
+    }
+
+    /**
+     * initialize the map with the content of a dump that was written with HandleMap.dump()
+     * @param keylength
+     * @param ordering
+     * @param file the dump file, may be gzipped if the file name ends with .gz
+     * @throws IOException if the file cannot be read or if it is not sorted
+     * @throws SpaceExceededException if there is not enough direct memory for the entries
+     */
+    public OffHeapHandleMap(final int keylength, final ByteOrder ordering, final File file) throws IOException, SpaceExceededException {
+        this(keylength, ordering, file.getAbsolutePath());
+        final boolean gz = file.getName().endsWith(".gz");
+        long records = file.length() / this.reclen;
+        if (gz) {
+            // the number of entries is only known after decompression
+            records = 0;
+            try (InputStream is = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file), 1024 * 1024))) {
+                final byte[] a = new byte[64 * 1024];
+                long l = 0;
+                int c;
+                while ((c = is.read(a)) > 0) l += c;
+                records = l / this.reclen;
+            }
+        }
+        if (records > Integer.MAX_VALUE) throw new IOException("dump " + file + " has too many entries");
+        final Builder builder = new Builder((int) records);
+        InputStream is = new BufferedInputStream(new FileInputStream(file), 1024 * 1024);
+        try {
+            if (gz) is = new GZIPInputStream(is);
+            final byte[] a = new byte[this.reclen];
+            for (long i = 0; i < records; i++) {
+                readFully(is, a);
+                if (!this.ordering.wellformed(a, 0, this.keylength)) continue;
+                builder.add(a);
+            }
+        } finally {
+            is.close();
+        }
+        builder.finish();
+    }
+
+    /**
+     * create an off-heap copy of another map
+     * @param keylength
+     * @param ordering
+     * @param source the map that shall be copied
+     * @param name
+     * @return the new map
+     * @throws SpaceExceededException if there is not enough direct memory for the entries
+     */
+    public static OffHeapHandleMap of(final int keylength, final ByteOrder ordering, final HandleMap source, final String name) throws SpaceExceededException {
+        final OffHeapHandleMap map = new OffHeapHandleMap(keylength, ordering, name);
+        final Builder builder = map.new Builder(source.size());
+        final byte[] a = new byte[map.reclen];
+        if (source instanceof RowHandleMap) {
+            // the rows iterator is sorted and provides the values without a lookup
+            final Iterator<Row.Entry> i = ((RowHandleMap) source).rows(true, null);
+            while (i.hasNext()) {
+                final Row.Entry row = i.next();
+                System.arraycopy(row.bytes(), 0, a, 0, keylength);
+                putLong(a, keylength, row.getColLong(1));
+                builder.add(a);
+            }
+        } else {
+            final Iterator<byte[]> i = source.keys(true, null);
+            while (i.hasNext()) {
+                final byte[] key = i.next();
+                System.arraycopy(key, 0, a, 0, keylength);
+                putLong(a, keylength, source.get(key));
+                builder.add(a);
+            }
+        }
+        builder.finish();
+        return map;
+    }
+
+    /**
+     * fills the sorted array with records in ascending order
+     */
+    private final class Builder {
+        private final ByteBuffer[] s;
+        private final byte[] last;
+        private int c;
+        private Builder(final int records) throws SpaceExceededException {
+            final int n = (records + OffHeapHandleMap.this.recordsPerSegment - 1) / OffHeapHandleMap.this.recordsPerSegment;
+            this.s = new ByteBuffer[n];
+            try {
+                for (int i = 0; i < n; i++) {
+                    final int r = Math.min(OffHeapHandleMap.this.recordsPerSegment, records - i * OffHeapHandleMap.this.recordsPerSegment);
+                    this.s[i] = ByteBuffer.allocateDirect(r * OffHeapHandleMap.this.reclen);
+                }
+            } catch (final OutOfMemoryError e) {
+                throw new SpaceExceededException(((long) records) * OffHeapHandleMap.this.reclen, "OffHeapHandleMap/direct memory");
+            }
+            this.last = new byte[OffHeapHandleMap.this.keylength];
+            this.c = 0;
+        }
+        private void add(final byte[] record) {
+            // keys must be unique and strictly ascending, otherwise the binary search would fail
+            if (this.c > 0 && OffHeapHandleMap.this.ordering.compare(this.last, 0, record, 0, OffHeapHandleMap.this.keylength) >= 0) {
+                throw new IllegalStateException("entries of " + OffHeapHandleMap.this.name + " are not sorted at position " + this.c);
+            }
+            final ByteBuffer b = this.s[this.c / OffHeapHandleMap.this.recordsPerSegment];
+            final int p = (this.c % OffHeapHandleMap.this.recordsPerSegment) * OffHeapHandleMap.this.reclen;
+            for (int i = 0; i < OffHeapHandleMap.this.reclen; i++) b.put(p + i, record[i]);
+            System.arraycopy(record, 0, this.last, 0, OffHeapHandleMap.this.keylength);
+            this.c++;
+        }
+        private void finish() {
+            OffHeapHandleMap.this.segments = this.s;
+            OffHeapHandleMap.this.count = this.c;
+            OffHeapHandleMap.this.removed = 0;
+        }
+    }
+
+    private static void readFully(final InputStream is, final byte[] a) throws IOException {
+        int p = 0;
+        while (p < a.length) {
+            final int c = is.read(a, p, a.length - p);
+            if (c < 0) throw new IOException("unexpected end of index dump");
+            p += c;
+        }
+    }
+
+    private static void putLong(final byte[] a, final int offset, long l) {
+        for (int i = offset + VALUE_LENGTH - 1; i >= offset; i--) {
+            a[i] = (byte) (l & 0xFF);
+            l >>= 8;
+        }
+    }
+
+    private ByteBuffer segment(final ByteBuffer[] s, final int i) {
+        return s[i / this.recordsPerSegment];
+    }
+
+    private int offset(final int i) {
+        return (i % this.recordsPerSegment) * this.reclen;
+    }
+
+    private byte[] keyAt(final ByteBuffer[] s, final int i, final byte[] key) {
+        final ByteBuffer b = segment(s, i);
+        final int p = offset(i);
+        for (int j = 0; j < this.keylength; j++) key[j] = b.get(p + j);
+        return key;
+    }
+
+    private long valueAt(final ByteBuffer[] s, final int i) {
+        return segment(s, i).getLong(offset(i) + this.keylength);
+    }
+
+    /**
+     * binary search in the sorted array
+     * @return the position of the key or -(insertion point) - 1 if the key is not in the array
+     */
+    private int find(final ByteBuffer[] s, final int n, final byte[] key) {
+        final byte[] k = new byte[this.keylength];
+        int low = 0, high = n - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int c = this.ordering.compare(keyAt(s, mid, k), 0, key, 0, this.keylength);
+            if (c < 0) low = mid + 1; else if (c > 0) high = mid - 1; else return mid;
+        }
+        return -(low + 1);
+    }
+
+    private long getUnsynchronized(final byte[] key) {
+        final ByteBuffer[] s = this.segments;
+        final int p = find(s, this.count, key);
+        if (p >= 0) return valueAt(s, p); // may be REMOVED
+        final RowHandleMap o = this.overflow;
+        return o == null ? REMOVED : o.get(key);
+    }
+
+    @Override
+    public long get(final byte[] key) {
+        assert key != null;
+        final byte[] k = key.length == this.keylength ? key : java.util.Arrays.copyOf(key, this.keylength);
+        final long stamp = this.changeStamp;
+        if ((stamp & 1) == 0) {
+            try {
+                final long l = getUnsynchronized(k);
+                if (this.changeStamp == stamp) return l < 0 ? -1 : l;
+            } catch (final RuntimeException e) {
+                // the sorted array was replaced during the lookup; repeat it synchronized
+            }
+        }
+        synchronized (this) {
+            final long l = getUnsynchronized(k);
+            return l < 0 ? -1 : l;
+        }
+    }
+
+    @Override
+    public boolean has(final byte[] key) {
+        return get(key) >= 0;
+    }
+
+    /**
+     * change a value in the sorted array; must be called synchronized
+     */
+    private void setValue(final int p, final long l) {
+        this.changeStamp++;
+        try {
+            segment(this.segments, p).putLong(offset(p) + this.keylength, l);
+        } finally {
+            this.changeStamp++;
+        }
+    }
+
+    @Override
+    public synchronized long put(final byte[] key, final long l) throws SpaceExceededException {
+        assert l >= 0 : "l = " + l;
+        assert key != null;
+        final int p = find(this.segments, this.count, key);
+        if (p >= 0) {
+            final long old = valueAt(this.segments, p);
+            setValue(p, l);
+            if (old == REMOVED) {
+                this.removed--;
+                return -1;
+            }
+            return old;
+        }
+        if (this.overflow == null) this.overflow = new RowHandleMap(this.keylength, this.ordering, VALUE_LENGTH, 100, this.name + ".overflow");
+        return this.overflow.put(key, l);
+    }
+
+    @Override
+    public void putUnique(final byte[] key, final long l) throws SpaceExceededException {
+        put(key, l);
+    }
+
+    @Override
+    public synchronized long add(final byte[] key, final long a) throws SpaceExceededException {
+        assert key != null;
+        final long l = get(key);
+        if (l < 0) {
+            put(key, a);
+            return 1;
+        }
+        put(key, l + a);
+        return l + a;
+    }
+
+    @Override
+    public long inc(final byte[] key) throws SpaceExceededException {
+        return add(key, 1);
+    }
+
+    @Override
+    public long dec(final byte[] key) throws SpaceExceededException {
+        return add(key, -1);
+    }
+
+    @Override
+    public synchronized long remove(final byte[] key) {
+        assert key != null;
+        final int p = find(this.segments, this.count, key);
+        if (p >= 0) {
+            final long old = valueAt(this.segments, p);
+            if (old == REMOVED) return -1;
+            setValue(p, REMOVED);
+            this.removed++;
+            return old;
+        }
+        return this.overflow == null ? -1 : this.overflow.remove(key);
+    }
+
+    @Override
+    public synchronized long removeone() {
+        if (this.overflow != null && !this.overflow.isEmpty()) return this.overflow.removeone();
+        for (int p = this.count - 1; p >= 0; p--) {
+            final long old = valueAt(this.segments, p);
+            if (old == REMOVED) continue;
+            setValue(p, REMOVED);
+            this.removed++;
+            return old;
+        }
+        return -1;
+    }
+
+    @Override
+    public ArrayList<long[]> removeDoubles() throws SpaceExceededException {
+        // the sorted array has unique keys and the overflow has only keys that are not in the array
+        final RowHandleMap o = this.overflow;
+        return o == null ? new ArrayList<long[]>() : o.removeDoubles();
+    }
+
+    @Override
+    public ArrayList<byte[]> top(final int count) {
+        // the largest keys
+        final ArrayList<byte[]> list = new ArrayList<byte[]>();
+        final Iterator<byte[]> i = keys(false, null);
+        while (list.size() < count && i.hasNext()) list.add(i.next());
+        return list;
+    }
+
+    @Override
+    public synchronized int size() {
+        final RowHandleMap o = this.overflow;
+        return this.count - this.removed + (o == null ? 0 : o.size());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public byte[] smallestKey() {
+        final Iterator<byte[]> i = keys(true, null);
+        return i.hasNext() ? i.next() : null;
+    }
+
+    @Override
+    public byte[] largestKey() {
+        final Iterator<byte[]> i = keys(false, null);
+        return i.hasNext() ? i.next() : null;
+    }
+
+    /**
+     * the memory on the java heap; the sorted array is not counted, see offHeapMem()
+     */
+    @Override
+    public long mem() {
+        final RowHandleMap o = this.overflow;
+        return 64 + (o == null ? 0 : o.mem());
+    }
+
+    /**
+     * @return the number of bytes of direct memory that are used for the sorted array
+     */
+    public long offHeapMem() {
+        long m = 0;
+        for (final ByteBuffer b: this.segments) m += b.capacity();
+        return m;
+    }
+
+    /**
+     * join the removed entries and the overflow into a new sorted array
+     */
+    @Override
+    public synchronized void optimize() {
+        if (this.removed == 0 && (this.overflow == null || this.overflow.isEmpty())) return;
+        try {
+            final Builder builder = new Builder(size());
+            final Iterator<Map.Entry<byte[], Long>> i = entries(true, null);
+            final byte[] a = new byte[this.reclen];
+            while (i.hasNext()) {
+                final Map.Entry<byte[], Long> e = i.next();
+                System.arraycopy(e.getKey(), 0, a, 0, this.keylength);
+                putLong(a, this.keylength, e.getValue().longValue());
+                builder.add(a);
+            }
+            this.changeStamp++;
+            try {
+                builder.finish();
+                if (this.overflow != null) this.overflow.close();
+                this.overflow = null;
+            } finally {
+                this.changeStamp++;
+            }
+        } catch (final SpaceExceededException e) {
+            // not enough direct memory: keep the current state
+        }
+    }
+
+    @Override
+    public int dump(final File file) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".prt");
+        int c = 0;
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp), 4 * 1024 * 1024);
+        try {
+            if (file.getName().endsWith(".gz")) os = new GZIPOutputStream(os, 65536){{def.setLevel(Deflater.BEST_COMPRESSION);}};
+            final Iterator<Map.Entry<byte[], Long>> i = entries(true, null);
+            final byte[] a = new byte[this.reclen];
+            while (i.hasNext()) {
+                final Map.Entry<byte[], Long> e = i.next();
+                System.arraycopy(e.getKey(), 0, a, 0, this.keylength);
+                putLong(a, this.keylength, e.getValue().longValue());
+                os.write(a);
+                c++;
+            }
+            os.flush();
+        } finally {
+            os.close();
+        }
+        tmp.renameTo(file);
+        return c;
+    }
+
+    @Override
+    public synchronized void clear() {
+        this.changeStamp++;
+        try {
+            // the buffers are released by the garbage collector, see class comment
+            this.segments = new ByteBuffer[0];
+            this.count = 0;
+            this.removed = 0;
+            if (this.overflow != null) this.overflow.close();
+            this.overflow = null;
+        } finally {
+            this.changeStamp++;
+        }
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    @Override
+    public CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) {
+        return new KeyIterator(entries(up, firstKey), up, firstKey);
+    }
+
+    @Override
+    public Iterator<Map.Entry<byte[], Long>> iterator() {
+        return entries(true, null);
+    }
+
+    private final class KeyIterator implements CloneableIterator<byte[]> {
+        private final Iterator<Map.Entry<byte[], Long>> i;
+        private final boolean up;
+        private final byte[] firstKey;
+        private KeyIterator(final Iterator<Map.Entry<byte[], Long>> i, final boolean up, final byte[] firstKey) {
+            this.i = i;
+            this.up = up;
+            this.firstKey = firstKey;
+        }
+        @Override
+        public boolean hasNext() {
+            return this.i.hasNext();
+        }
+        @Override
+        public byte[] next() {
+            return this.i.next().getKey();
+        }
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        @Override
+        public CloneableIterator<byte[]> clone(final Object modifier) {
+            return keys(this.up, modifier == null ? this.firstKey : (byte[]) modifier);
+        }
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * iterate the entries of the sorted array and the overflow in the order of the keys.
+     * The iterator works on the state of the map at the time of the iterator creation
+     * and skips entries that are removed later.
+     */
+    private Iterator<Map.Entry<byte[], Long>> entries(final boolean up, final byte[] firstKey) {
+        final ByteBuffer[] s;
+        final int n;
+        final RowHandleMap o;
+        synchronized (this) {
+            s = this.segments;
+            n = this.count;
+            o = this.overflow;
+        }
+        final CloneableIterator<byte[]> oi = o == null ? null : o.keys(up, firstKey);
+        int start;
+        if (firstKey == null) {
+            start = up ? 0 : n - 1;
+        } else {
+            final int p = find(s, n, firstKey);
+            start = p >= 0 ? p : (up ? -(p + 1) : -(p + 1) - 1);
+        }
+        final int first = start;
+        return new Iterator<Map.Entry<byte[], Long>>() {
+            private int p = first;
+            private byte[] ok = null; // the next key of the overflow
+            private Map.Entry<byte[], Long> pending = null; // the next entry of the array
+            private Map.Entry<byte[], Long> next = advance(); // must be initialized after the other fields
+
+            private Map.Entry<byte[], Long> nextArray() {
+                while (up ? this.p < n : this.p >= 0) {
+                    final int q = this.p;
+                    this.p += up ? 1 : -1;
+                    final long l = valueAt(s, q);
+                    if (l != REMOVED) return new AbstractMap.SimpleEntry<byte[], Long>(keyAt(s, q, new byte[OffHeapHandleMap.this.keylength]), l);
+                }
+                return null;
+            }
+
+
+            private Map.Entry<byte[], Long> advance() {
+                if (this.pending == null) this.pending = nextArray();
+                if (this.ok == null && oi != null && oi.hasNext()) this.ok = oi.next();
+                if (this.ok != null && o != null && o.get(this.ok) < 0) {
+                    // removed from the overflow in the meantime
+                    this.ok = null;
+                    return advance();
+                }
+                if (this.pending == null && this.ok == null) return null;
+                if (this.ok == null || (this.pending != null && (OffHeapHandleMap.this.ordering.compare(this.pending.getKey(), this.ok) < 0) == up)) {
+                    final Map.Entry<byte[], Long> e = this.pending;
+                    this.pending = null;
+                    return e;
+                }
+                final Map.Entry<byte[], Long> e = new AbstractMap.SimpleEntry<byte[], Long>(this.ok, o.get(this.ok));
+                this.ok = null;
+                return e;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public Map.Entry<byte[], Long> next() {
+                if (this.next == null) throw new NoSuchElementException();
+                final Map.Entry<byte[], Long> e = this.next;
+                this.next = advance();
+                return e;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
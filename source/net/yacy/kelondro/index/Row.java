@@ -54,12 +54,14 @@ import net.yacy.kelondro.util.kelondroException;
 public final class Row implements Serializable {
 
     private static final long serialVersionUID=-148412365988669116L;
+    private static final byte[] EMPTY = new byte[0];
 
     protected final Column[]        row;
     public final int[]              colstart;
     public final ByteOrder          objectOrder;
     public final int                objectsize;
     public final int                primaryKeyLength;
+    private final Base64Order       keyOrder; // the objectOrder if it is a Base64Order, for comparisons without interface dispatch
     protected Map<String, Object[]> nickref = null; // a mapping from nicknames to Object[2]{kelondroColumn, Integer(colstart)}
 
     public Row(final Column[] row, final ByteOrder objectOrder) {
@@ -75,6 +77,7 @@ public final class Row implements Serializable {
         }
         this.objectsize = os;
         this.primaryKeyLength = this.row[0].cellwidth;
+        this.keyOrder = (objectOrder instanceof Base64Order) ? (Base64Order) objectOrder : null;
     }
 
     public Row(final String structure, final ByteOrder objectOrder) {
@@ -109,6 +112,7 @@ public final class Row implements Serializable {
         }
         this.objectsize = os;
         this.primaryKeyLength = this.row[0].cellwidth;
+        this.keyOrder = (objectOrder instanceof Base64Order) ? (Base64Order) objectOrder : null;
     }
 
     public final ByteOrder getOrdering() {
@@ -150,10 +154,32 @@ public final class Row implements Serializable {
         return s.toString();
     }
 
+    /**
+     * compare two primary keys of this row definition in place
+     * @param a an array that contains a key
+     * @param aoffset the start of the key in a
+     * @param b an array that contains a key
+     * @param boffset the start of the key in b
+     * @return the comparison of the keys in the object order
+     */
+    public final int compareKeys(final byte[] a, final int aoffset, final byte[] b, final int boffset) {
+        if (this.keyOrder != null) return this.keyOrder.compareFixed(a, aoffset, b, boffset, this.primaryKeyLength);
+        return this.objectOrder.compare(a, aoffset, b, boffset, this.primaryKeyLength);
+    }
+
     public final Entry newEntry() {
         return new Entry();
     }
 
+    /**
+     * a flyweight entry that is not bound to a row; it must be moved to a row with {@link Entry#moveTo(byte[], int)}
+     * before it is used. Such a view allocates nothing for the access to many rows of a collection
+     * @return an unbound view
+     */
+    public final Entry newView() {
+        return new Entry(EMPTY, 0);
+    }
+
     public final Entry newEntry(final byte[] rowinstance) {
         if (rowinstance == null) return null;
         assert (this.objectOrder.wellformed(rowinstance, 0, this.primaryKeyLength)) :  "row not well-formed: rowinstance[0] = " + UTF8.String(rowinstance, 0, this.primaryKeyLength) + " / " + NaturalOrder.arrayList(rowinstance, 0, this.primaryKeyLength);
@@ -251,6 +277,27 @@ public final class Row implements Serializable {
             this.offset = 0;
         }
 
+        private Entry(final byte[] newrow, final int start) {
+            // a view, see newView()
+            this.rowinstance = newrow;
+            this.offset = start;
+        }
+
+        /**
+         * move a view to another row; only for entries that were produced with {@link Row#newView()}
+         * or that reference a row array without copy. The entry must not be stored by the caller
+         * because the next move changes it.
+         * @param newrow an array that contains the row
+         * @param start the start of the row in newrow
+         * @return this entry
+         */
+        public final Entry moveTo(final byte[] newrow, final int start) {
+            assert newrow.length - start >= Row.this.objectsize;
+            this.rowinstance = newrow;
+            this.offset = start;
+            return this;
+        }
+
         public Entry(final byte[] newrow, final int start, final boolean forceclone) {
             if (forceclone || newrow.length - start < Row.this.objectsize) {
                 this.rowinstance = new byte[Row.this.objectsize];
@@ -345,7 +392,29 @@ public final class Row implements Serializable {
             // compares only the content of the primary key
             if (Row.this.objectOrder == null) throw new kelondroException("objects cannot be compared, no order given");
             assert Row.this.primaryKeyLength == o.getPrimaryKeyLength();
-            return Row.this.objectOrder.compare(bytes(), o.bytes(), Row.this.primaryKeyLength);
+            return Row.this.compareKeys(this.rowinstance, this.offset, o.rowinstance, o.offset);
+        }
+
+        /**
+         * compare the primary key of this entry with a key in place
+         * @param key an array that contains a key
+         * @param keyoffset the start of the key
+         * @return the comparison of the primary key of this entry with the key
+         */
+        public final int compareToKey(final byte[] key, final int keyoffset) {
+            return Row.this.compareKeys(this.rowinstance, this.offset, key, keyoffset);
+        }
+
+        /**
+         * @param key a key with the length of the primary key
+         * @return true if the primary key of this entry equals the key, without a copy of the primary key
+         */
+        public final boolean equalsKey(final byte[] key) {
+            if (key == null || key.length != Row.this.primaryKeyLength) return false;
+            for (int i = 0; i < Row.this.primaryKeyLength; i++) {
+                if (this.rowinstance[this.offset + i] != key[i]) return false;
+            }
+            return true;
         }
 
         @Override
@@ -360,21 +429,17 @@ public final class Row implements Serializable {
             if (obj == null) return false;
             if (!(obj instanceof Entry)) return false;
             final Entry other = (Entry) obj;
-            final byte[] t = bytes();
-            final byte[] o = other.bytes();
             for (int i = 0; i < Row.this.primaryKeyLength; i++) {
-                if (t[i] != o[i]) return false;
+                if (this.rowinstance[this.offset + i] != other.rowinstance[other.offset + i]) return false;
             }
             return true;
         }
 
         @Override
         public int hashCode() {
-            final byte[] b = getPrimaryKeyBytes();
-            final int len = b.length;
             int h = 1;
-            for (int i = 0; i < len; i++) {
-                h = 31 * h + b[i];
+            for (int i = 0; i < Row.this.primaryKeyLength; i++) {
+                h = 31 * h + this.rowinstance[this.offset + i];
             }
             return h;
         }
@@ -69,6 +69,7 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
     protected       int    chunkcount;
     protected       int    sortBound;
     protected       long   lastTimeWrote;
+    protected       int    modCount = 0; // incremented with every change of the keys or the order of the rows
 
     protected RowCollection(final RowCollection rc) {
         this.rowdef = rc.rowdef;
@@ -306,6 +307,7 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         System.arraycopy(this.chunkcache, this.rowdef.objectsize * i, swapspace, 0, this.rowdef.objectsize);
         System.arraycopy(this.chunkcache, this.rowdef.objectsize * j, this.chunkcache, this.rowdef.objectsize * i, this.rowdef.objectsize);
         System.arraycopy(swapspace, 0, this.chunkcache, this.rowdef.objectsize * j, this.rowdef.objectsize);
+        this.modCount++;
     }
 
     private final void checkShrink() {
@@ -371,6 +373,18 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         return entry;
     }
 
+    /**
+     * move a view to a row of this collection, see {@link Row#newView()}. The view references the row inside
+     * the collection: it is only valid until the collection is changed, and the row must not be changed through it.
+     * @param index the row number
+     * @param view a view produced by the row definition of this collection
+     * @return the view
+     */
+    public final Row.Entry view(final int index, final Row.Entry view) {
+        assert (index >= 0 && index < this.chunkcount) : "view: access with index " + index + ", chunkcount = " + this.chunkcount;
+        return view.moveTo(this.chunkcache, index * this.rowdef.objectsize);
+    }
+
     public synchronized final void set(final int index, final Row.Entry a) throws SpaceExceededException {
         assert (index >= 0) : "set: access with index " + index + " is below zero";
         ensureSize(index + 1);
@@ -383,6 +397,7 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         if (index >= this.chunkcount) this.chunkcount = index + 1;
         if (!sameKey && index < this.sortBound) this.sortBound = index;
         this.lastTimeWrote = System.currentTimeMillis();
+        this.modCount++;
     }
 
     public final void insertUnique(final int index, final Row.Entry a) throws SpaceExceededException {
@@ -431,11 +446,12 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
             this.sortBound = 1;
         } else if (
                 this.sortBound + 1 == this.chunkcount &&
-                this.rowdef.objectOrder.compare(this.chunkcache, this.rowdef.objectsize * (this.chunkcount - 2),
-                                                this.chunkcache, this.rowdef.objectsize * (this.chunkcount - 1), this.rowdef.primaryKeyLength) == -1) {
+                this.rowdef.compareKeys(this.chunkcache, this.rowdef.objectsize * (this.chunkcount - 2),
+                                        this.chunkcache, this.rowdef.objectsize * (this.chunkcount - 1)) == -1) {
             this.sortBound = this.chunkcount;
         }
         this.lastTimeWrote = System.currentTimeMillis();
+        this.modCount++;
     }
 
     protected final void addSorted(final byte[] a, final int astart, final int alength) throws SpaceExceededException {
@@ -451,6 +467,7 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         this.chunkcount++;
         this.sortBound = this.chunkcount;
         this.lastTimeWrote = System.currentTimeMillis();
+        this.modCount++;
     }
 
     private final static boolean allZero(final byte[] a, final int astart, final int alength) {
@@ -464,6 +481,7 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         ensureSize(this.chunkcount + c.size());
         System.arraycopy(c.chunkcache, 0, this.chunkcache, this.rowdef.objectsize * this.chunkcount, this.rowdef.objectsize * c.size());
         this.chunkcount += c.size();
+        this.modCount++;
     }
 
     /**
@@ -503,12 +521,44 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         }
         this.chunkcount--;
         this.lastTimeWrote = System.currentTimeMillis();
+        this.modCount++;
         
         // check if the chunkcache can shrink
         checkShrink();
     }
 
 
+    /**
+     * removes several elements with one shift of the remaining elements; the order of the remaining elements is kept.
+     * @param p the positions of the elements to remove, in ascending order and without duplicates
+     * @param count the number of positions in p
+     */
+    public synchronized final void removeRows(final int[] p, final int count) {
+        if (count == 0) return;
+        final int objectsize = this.rowdef.objectsize;
+        int target = p[0];
+        int sortBoundAfter = this.sortBound;
+        for (int i = 0; i < count; i++) {
+            assert p[i] >= 0 && p[i] < this.chunkcount : "p[" + i + "] = " + p[i] + ", chunkcount = " + this.chunkcount;
+            assert i == 0 || p[i] > p[i - 1] : "positions not ascending at " + i;
+            if (p[i] < this.sortBound) sortBoundAfter--;
+            // move the elements between this and the next removed position
+            final int from = p[i] + 1;
+            final int to = i + 1 < count ? p[i + 1] : this.chunkcount;
+            if (to > from) {
+                System.arraycopy(this.chunkcache, from * objectsize, this.chunkcache, target * objectsize, (to - from) * objectsize);
+                target += to - from;
+            }
+        }
+        this.chunkcount -= count;
+        this.sortBound = sortBoundAfter;
+        this.lastTimeWrote = System.currentTimeMillis();
+        this.modCount++;
+
+        // check if the chunkcache can shrink
+        checkShrink();
+    }
+
     @Override
     public final void delete(final int p) {
         removeRow(p, true);
@@ -524,6 +574,7 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         if (this.chunkcount == this.sortBound) this.sortBound--;
         this.chunkcount--;
         this.lastTimeWrote = System.currentTimeMillis();
+        this.modCount++;
 
         // check if the chunkcache can shrink
         checkShrink();
@@ -583,6 +634,7 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         this.chunkcount = 0;
         this.sortBound = 0;
         this.lastTimeWrote = System.currentTimeMillis();
+        this.modCount++;
     }
 
     @Override
@@ -688,6 +740,7 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
             //Log.logInfo("RowCollection.sort()", "sorting array of size " + this.chunkcount + ", sortBound = " + this.sortBound);
             net.yacy.cora.sorting.Array.sort(this);
             this.sortBound = this.chunkcount;
+            this.modCount++;
         }
     }
 
@@ -900,22 +953,30 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         if (i == j) return 0;
         //assert (!bugappearance(chunkcache, i * this.rowdef.objectsize + colstart, this.rowdef.primaryKeyLength));
         //assert (!bugappearance(chunkcache, j * this.rowdef.objectsize + colstart, this.rowdef.primaryKeyLength));
-        final int c = this.rowdef.objectOrder.compare(
-                this.chunkcache,
-                i * this.rowdef.objectsize,
-                this.chunkcache,
-                j * this.rowdef.objectsize,
-                this.rowdef.primaryKeyLength);
-        return c;
+        return this.rowdef.compareKeys(this.chunkcache, i * this.rowdef.objectsize, this.chunkcache, j * this.rowdef.objectsize);
     }
 
     protected int compare(final byte[] a, final int astart, final int chunknumber) {
         assert (chunknumber < this.chunkcount);
         assert a.length - astart >= this.rowdef.primaryKeyLength;
         final int len = Math.min(a.length - astart, this.rowdef.primaryKeyLength);
+        if (len == this.rowdef.primaryKeyLength) return this.rowdef.compareKeys(a, astart, this.chunkcache, chunknumber * this.rowdef.objectsize);
         return this.rowdef.objectOrder.compare(a, astart, this.chunkcache, chunknumber * this.rowdef.objectsize, len);
     }
 
+    /**
+     * compare the primary key of a row of this collection with the primary key of a row of another collection
+     * in place, without copies of the keys
+     * @param i the row number in this collection
+     * @param other a collection with the same primary key
+     * @param j the row number in the other collection
+     * @return the comparison of the primary keys
+     */
+    protected final int compare(final int i, final RowCollection other, final int j) {
+        assert this.rowdef.primaryKeyLength == other.rowdef.primaryKeyLength;
+        return this.rowdef.compareKeys(this.chunkcache, i * this.rowdef.objectsize, other.chunkcache, j * other.rowdef.objectsize);
+    }
+
     protected final boolean match(final int i, final int j) {
         assert (this.chunkcount * this.rowdef.objectsize <= this.chunkcache.length) : "chunkcount = " + this.chunkcount + ", objsize = " + this.rowdef.objectsize + ", chunkcache.length = " + this.chunkcache.length;
         assert (i >= 0) && (i < this.chunkcount) : "i = " + i + ", chunkcount = " + this.chunkcount;
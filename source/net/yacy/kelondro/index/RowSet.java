@@ -284,6 +284,16 @@ public class RowSet extends RowCollection implements Index, Iterable<Row.Entry>,
         }
     }
 
+    /**
+     * find the row number of a key that is stored inside a larger array, i.e. in a row of another collection
+     * @param a
+     * @param astart the start of the key in a
+     * @return the row number or -1 if the key is not in this set
+     */
+    protected final synchronized int indexOf(final byte[] a, final int astart) {
+        return find(a, astart);
+    }
+
     private final int find(final byte[] a, final int astart) {
         // returns the chunknumber; -1 if not found
 
@@ -99,10 +99,11 @@ public final class BufferedRecords {
         synchronized (this) {
             assert b.length - start >= this.efs.recordsize;
             bb = this.buffer.get(idx);
-            if (bb == null) {
-                this.efs.get(index, b, start);
-                return;
-            }
+        }
+        if (bb == null) {
+            // the records file synchronizes only the access to its own buffer, reads from the file run in parallel
+            this.efs.get(index, b, start);
+            return;
         }
         System.arraycopy(bb, 0, b, start, this.efs.recordsize);
     }
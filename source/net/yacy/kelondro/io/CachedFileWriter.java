@@ -143,6 +143,12 @@ public final class CachedFileWriter extends AbstractWriter implements Writer {
         this.RAFile.seek(pos);
     }
 
+    @Override
+    public final synchronized void sync() throws IOException {
+        // a closed file is not opened again for a sync
+        if (this.RAFile != null) this.RAFile.getChannel().force(false);
+    }
+
     @Override
     public final synchronized void close() {
         if (this.RAFile != null) try {
@@ -0,0 +1,170 @@
+// MappedFile.java
+// -----------------------
+// part of YaCy
+// (C) 2026 by the YaCy contributors
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.yacy.cora.util.ConcurrentLog;
+
+/**
+ * A read-only memory mapping of a file with positional access.
+ * In contrast to the {@link CachedFileWriter} there is no shared file pointer,
+ * so any number of threads may read from the mapping at the same time without locking.
+ * Files larger than 2GB are mapped in several segments; reads that cross a
+ * segment border are assembled transparently.
+ *
+ * Readers must enclose their access with {@link #acquire()} and {@link #release()}.
+ * {@link #close()} waits until all readers are gone before the mapping is released,
+ * because an access to an unmapped buffer would crash the JVM.
+ */
+public final class MappedFile {
+
+    private final static ConcurrentLog log = new ConcurrentLog("MappedFile");
+
+    private static final int SEGMENT_SHIFT = 30; // 1GB segments
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = (int) (SEGMENT_SIZE - 1);
+
+    private final File file;
+    private final long length;
+    private MappedByteBuffer[] segments;
+    private final AtomicInteger readers;
+    private volatile boolean closed;
+
+    public MappedFile(final File file) throws IOException {
+        this.file = file;
+        this.readers = new AtomicInteger(0);
+        this.closed = false;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            this.length = channel.size();
+            final int count = (int) ((this.length + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            this.segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                final long start = ((long) i) << SEGMENT_SHIFT;
+                this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, this.length - start));
+            }
+        }
+        // the mapping stays valid after the channel is closed
+    }
+
+    public File file() {
+        return this.file;
+    }
+
+    /**
+     * the length of the file at the time when it was mapped
+     * @return the number of mapped bytes
+     */
+    public long length() {
+        return this.length;
+    }
+
+    /**
+     * register a reader. Every successful call must be followed by a call to release()
+     * @return true if the mapping can be used, false if the mapping is closed
+     */
+    public boolean acquire() {
+        this.readers.incrementAndGet();
+        if (this.closed) {
+            this.readers.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public void release() {
+        this.readers.decrementAndGet();
+    }
+
+    public int readInt(final long pos) throws IOException {
+        final int s = (int) (pos >>> SEGMENT_SHIFT);
+        final int p = (int) (pos & SEGMENT_MASK);
+        if (pos < 0 || pos + 4 > this.length) throw new IOException("EOF in " + this.file.getName() + ", length = " + this.length + ", requested = 4 at " + pos);
+        final MappedByteBuffer segment = this.segments[s];
+        if (p + 4 <= segment.limit()) return segment.getInt(p); // absolute access does not touch the buffer position
+        final byte[] b = new byte[4];
+        readFully(pos, b, 0, 4);
+        return ((b[0] & 0xff) << 24) | ((b[1] & 0xff) << 16) | ((b[2] & 0xff) << 8) | (b[3] & 0xff);
+    }
+
+    public void readFully(long pos, final byte[] b, int off, int len) throws IOException {
+        if (pos < 0 || pos + len > this.length) throw new IOException("EOF in " + this.file.getName() + ", length = " + this.length + ", requested = " + len + " at " + pos);
+        while (len > 0) {
+            final int s = (int) (pos >>> SEGMENT_SHIFT);
+            final int p = (int) (pos & SEGMENT_MASK);
+            // a duplicate has its own position, so concurrent readers do not interfere
+            final ByteBuffer segment = this.segments[s].duplicate();
+            final int l = Math.min(len, segment.limit() - p);
+            segment.position(p);
+            segment.get(b, off, l);
+            pos += l;
+            off += l;
+            len -= l;
+        }
+    }
+
+    /**
+     * release the mapping. This waits until all registered readers are finished.
+     */
+    public synchronized void close() {
+        if (this.segments == null) return;
+        this.closed = true;
+        while (this.readers.get() > 0) Thread.yield();
+        final MappedByteBuffer[] s = this.segments;
+        this.segments = null;
+        for (final MappedByteBuffer segment: s) unmap(segment);
+    }
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    static {
+        Object unsafe = null;
+        Method cleaner = null;
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+            cleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (final Throwable e) {
+            log.info("unmapping of memory mapped files not supported, mappings are released by the garbage collector");
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = cleaner;
+    }
+
+    private static void unmap(final MappedByteBuffer buffer) {
+        if (UNSAFE == null || INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (final Throwable e) {
+            log.warn("cannot unmap buffer: " + e.getMessage());
+        }
+    }
+
+}
@@ -24,11 +24,14 @@
 
 package net.yacy.kelondro.io;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import net.yacy.cora.document.encoding.UTF8;
 import net.yacy.cora.util.ConcurrentLog;
@@ -67,6 +70,10 @@ public final class Records {
     private int buffercount;
     private byte[] buffer;
     private final byte[] zero;
+    /**
+     * odd while records in the file are changed; used to validate reads that are made without the lock
+     */
+    private volatile long writeStamp;
 
     /**
      * stay below hard disc cache (is that necessary?)
@@ -118,6 +125,7 @@ public final class Records {
     }
 
     public void clear() {
+        this.writeStamp++;
         try {
             this.raf.setLength(0);
             int buffersize = Math.max(1, (maxWriteBuffer / recordsize)) * recordsize;
@@ -125,6 +133,8 @@ public final class Records {
             this.buffercount = 0;
         } catch (IOException e) {
             ConcurrentLog.logException(e);
+        } finally {
+            this.writeStamp++;
         }
     }
 
@@ -226,11 +236,41 @@ public final class Records {
      * @param start offset in b to store data
      * @throws IOException
      */
-    public final synchronized void get(final long index, final byte[] b, final int start) throws IOException {
+    public final void get(final long index, final byte[] b, final int start) throws IOException {
         assert b.length - start >= this.recordsize;
+        final RandomAccessFile f;
+        final long stamp = this.writeStamp;
+        synchronized (this) {
+            final long filesize = filesize();
+            final long s = filesize + this.buffercount;
+            if (index >= s) throw new IndexOutOfBoundsException("kelondroEcoFS.get(" + index + ") outside bounds (" + s + ")");
+            // check if index is inside of cache
+            final int q = inBuffer(index, filesize);
+            if (q >= 0) {
+                // read entry from the buffer
+                System.arraycopy(this.buffer, q * this.recordsize, b, start, this.recordsize);
+                return;
+            }
+            f = this.raf;
+        }
+        // copy records from file to given buffer; a positional read does not move the file pointer,
+        // so reads of records in the file can run in parallel to each other
+        if ((stamp & 1) == 0) {
+            try {
+                read(f, index, b, start);
+                if (this.writeStamp == stamp) return;
+            } catch (final IOException e) {
+                if (this.writeStamp == stamp) throw e;
+            }
+        }
+        // the file was changed during the read: repeat it exclusively
+        getLocked(index, b, start);
+    }
+
+    private final synchronized void getLocked(final long index, final byte[] b, final int start) throws IOException {
         final long filesize = filesize();
         final long s = filesize + this.buffercount;
-         if (index >= s) throw new IndexOutOfBoundsException("kelondroEcoFS.get(" + index + ") outside bounds (" + s + ")");
+        if (index >= s) throw new IndexOutOfBoundsException("kelondroEcoFS.get(" + index + ") outside bounds (" + s + ")");
         // check if index is inside of cache
         final int q = inBuffer(index, filesize);
         if (q < 0) {
@@ -243,7 +283,27 @@ public final class Records {
         System.arraycopy(this.buffer, q * this.recordsize, b, start, this.recordsize);
     }
 
+    private final void read(final RandomAccessFile f, final long index, final byte[] b, final int start) throws IOException {
+        final ByteBuffer bb = ByteBuffer.wrap(b, start, this.recordsize);
+        final FileChannel channel = f.getChannel();
+        long pos = this.recordsize * index;
+        while (bb.hasRemaining()) {
+            final int c = channel.read(bb, pos);
+            if (c < 0) throw new EOFException("kelondroEcoFS.get(" + index + ") at end of file");
+            pos += c;
+        }
+    }
+
     public final synchronized void put(final long index, final byte[] b, final int start) throws IOException {
+        this.writeStamp++;
+        try {
+            put0(index, b, start);
+        } finally {
+            this.writeStamp++;
+        }
+    }
+
+    private final void put0(final long index, final byte[] b, final int start) throws IOException {
         assert b.length - start >= this.recordsize;
         long filesize = filesize();
         final long s = filesize + this.buffercount;
@@ -370,12 +430,17 @@ public final class Records {
      * @throws IOException
      */
     public final synchronized void cleanLast(final byte[] b, final int start) throws IOException {
-        cleanLast0(b, start);
-        long i;
-        while ((i = size()) > 0 && isClean(i - 1)) {
-            //System.out.println("Extra clean/1: before size = " + size());
-            cleanLast0();
-            //System.out.println("               after  size = " + size());
+        this.writeStamp++;
+        try {
+            cleanLast0(b, start);
+            long i;
+            while ((i = size()) > 0 && isClean(i - 1)) {
+                //System.out.println("Extra clean/1: before size = " + size());
+                cleanLast0();
+                //System.out.println("               after  size = " + size());
+            }
+        } finally {
+            this.writeStamp++;
         }
     }
 
@@ -420,12 +485,17 @@ public final class Records {
      * @throws IOException
      */
     public final synchronized void cleanLast() throws IOException {
-        cleanLast0();
-        long i;
-        while (((i = size()) > 0) && (isClean(i - 1))) {
-            //System.out.println("Extra clean/0: before size = " + size());
+        this.writeStamp++;
+        try {
             cleanLast0();
-            //System.out.println("               after  size = " + size());
+            long i;
+            while (((i = size()) > 0) && (isClean(i - 1))) {
+                //System.out.println("Extra clean/0: before size = " + size());
+                cleanLast0();
+                //System.out.println("               after  size = " + size());
+            }
+        } finally {
+            this.writeStamp++;
         }
     }
 
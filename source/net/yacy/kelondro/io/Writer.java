@@ -42,4 +42,10 @@ public interface Writer extends Reader {
     public HashMap<String, String> readMap() throws IOException;
 
     public void deleteOnExit();
+
+    /**
+     * force all written bytes to the storage device
+     * @throws IOException
+     */
+    public void sync() throws IOException;
 }
@@ -82,6 +82,22 @@ public abstract class AbstractIndex <ReferenceType extends Reference> implements
         return c;
     }
 
+    /**
+     * this index has no statistics of its terms
+     */
+    @Override
+    public TermStatistics.Entry statistics(final byte[] termHash) {
+        return null;
+    }
+
+    /**
+     * this index has no impact lists
+     */
+    @Override
+    public ReferenceImpact<ReferenceType> getImpact(final byte[] termHash, final ReferenceScore<ReferenceType> score) throws IOException {
+        return null;
+    }
+
     // methods to search in the index
 
     /**
@@ -103,13 +119,9 @@ public abstract class AbstractIndex <ReferenceType extends Reference> implements
         */
     	// retrieve entities that belong to the hashes
         final TreeMap<byte[], ReferenceContainer<ReferenceType>> containers = new TreeMap<byte[], ReferenceContainer<ReferenceType>>(Base64Order.enhancedCoder);
-        byte[] singleHash;
         ReferenceContainer<ReferenceType> singleContainer;
-        final Iterator<byte[]> i = wordHashes.iterator();
-        while (i.hasNext()) {
-
-            // get next word hash:
-            singleHash = i.next();
+        // the rarest word is read first, so an unknown word ends the search before the containers of frequent words are read
+        for (final byte[] singleHash: TermSearch.plan(this, wordHashes)) {
 
             // retrieve index
             try {
@@ -127,6 +139,20 @@ public abstract class AbstractIndex <ReferenceType extends Reference> implements
         return containers;
     }
 
+    /**
+     * get the references together with their block bounds; the bounds are computed from the references
+     */
+    @Override
+    public ReferenceContainer<ReferenceType> get(final byte[] termHash, final HandleSet urlselection, final ReferenceBlocks<ReferenceType> blocks) throws IOException {
+        final ReferenceContainer<ReferenceType> container = get(termHash, urlselection);
+        try {
+            blocks.addContainer(container);
+        } catch (final SpaceExceededException e) {
+            blocks.add(null);
+        }
+        return container;
+    }
+
     public TermSearch<ReferenceType> query(
             final HandleSet queryHashes,
             final HandleSet excludeHashes,
@@ -136,6 +162,20 @@ public abstract class AbstractIndex <ReferenceType extends Reference> implements
         return new TermSearch<ReferenceType>(this, queryHashes, excludeHashes, urlselection, termFactory, maxDistance);
     }
 
+    /**
+     * search the best topk references of a conjunction, see TermSearch
+     */
+    public TermSearch<ReferenceType> query(
+            final HandleSet queryHashes,
+            final HandleSet excludeHashes,
+            final HandleSet urlselection,
+            final ReferenceFactory<ReferenceType> termFactory,
+            final int maxDistance,
+            final ReferenceScore<ReferenceType> score,
+            final int topk) throws SpaceExceededException {
+        return new TermSearch<ReferenceType>(this, queryHashes, excludeHashes, urlselection, termFactory, maxDistance, score, topk);
+    }
+
     @Override
     public Row referenceRow() {
         return this.factory.getRow();
@@ -0,0 +1,254 @@
+// DocIdDictionary.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import net.yacy.cora.order.ByteOrder;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.RowHandleMap;
+
+/**
+ * A persistent dictionary of dense local document ids for url hashes.
+ * The url hashes of the references in an index segment are random, so sorted lists of url hashes
+ * cannot be compressed. The dictionary assigns ascending 32-bit numbers to the url hashes in the
+ * order in which they are first stored; a reference container that is written to a local index file
+ * stores the differences of the sorted ids of its references instead of the url hashes, see
+ * ReferenceContainer.exportCollection(DocIdDictionary).
+ *
+ * The dictionary file is a plain sequence of url hashes: the id of a url hash is its position in the file.
+ * New url hashes are appended, ids are never changed or re-used, also if the document is deleted from the index.
+ * All url hashes are held in memory in both directions, which costs about 40 bytes for each url hash.
+ * The dictionary must be flushed before an index file that uses new ids is closed; a flush forces the ids to the disk.
+ * While the dictionary is open for new ids, a marker file beside it shows that it was not closed cleanly.
+ * If the marker is found or the end of the file is damaged when the dictionary is opened, ids that are used by
+ * index files may be lost; these files must be checked with valid(), see ArrayStack.validateDocIds().
+ */
+public class DocIdDictionary {
+
+    private final static ConcurrentLog log = new ConcurrentLog("DocIdDictionary");
+
+    private final static int PAGEBITS = 16;
+    private final static int PAGESIZE = 1 << PAGEBITS; // the number of url hashes in a page of the reverse dictionary
+
+    private final File file;
+    private final int keylength;
+    private final boolean encode;
+    private final RowHandleMap ids; // url hash to id
+    private volatile byte[][] pages; // id to url hash, in pages of PAGESIZE url hashes
+    private volatile int size; // the number of ids; written after the page, so a reader that knows an id sees its url hash
+    private final boolean damaged; // ids may have been lost since the dictionary was closed the last time
+    private FileOutputStream fos;
+    private OutputStream os;
+
+    /**
+     * open a dictionary
+     * @param file the dictionary file, it is created if it does not exist
+     * @param keylength the length of the url hashes
+     * @param order the order of the url hashes
+     * @param encode if false, the dictionary is only used to read containers that were encoded before;
+     *   new containers are not encoded and no new ids are assigned
+     * @throws IOException
+     */
+    public DocIdDictionary(final File file, final int keylength, final ByteOrder order, final boolean encode) throws IOException {
+        this.file = file;
+        this.keylength = keylength;
+        this.encode = encode;
+        final File marker = openMarker(file);
+        boolean damaged = marker.exists();
+        if (damaged) log.warn("dictionary " + file.toString() + " was not closed cleanly");
+        long length = file.exists() ? file.length() : 0;
+        if (length % keylength != 0) {
+            // the last url hash was not written completely; it is not used by any index file because the dictionary is flushed before
+            log.warn("truncating incomplete dictionary entry at the end of " + file.toString());
+            length -= length % keylength;
+            damaged = true;
+            try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(length);
+            }
+        }
+        final int count = (int) (length / keylength);
+        this.ids = new RowHandleMap(keylength, order, 4, Math.max(100, count), file.getName());
+        this.pages = new byte[Math.max(1, ((count - 1) >> PAGEBITS) + 1)][];
+        this.size = 0;
+        if (count > 0) {
+            try (final DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024 * 1024))) {
+                final byte[] key = new byte[keylength];
+                for (int id = 0; id < count; id++) {
+                    is.readFully(key);
+                    this.ids.putUnique(key, id);
+                    page(id);
+                    System.arraycopy(key, 0, this.pages[id >> PAGEBITS], (id & (PAGESIZE - 1)) * keylength, keylength);
+                }
+            } catch (final SpaceExceededException e) {
+                throw new IOException("not enough memory to load the dictionary " + file.toString(), e);
+            }
+            this.ids.optimize();
+        }
+        this.size = count;
+        this.damaged = damaged;
+        if ((damaged || encode) && !marker.exists()) marker.createNewFile(); // a damage is remembered until the index files were checked
+        if (encode) {
+            this.fos = new FileOutputStream(file, true);
+            this.os = new BufferedOutputStream(this.fos, 64 * 1024);
+        } else {
+            this.fos = null;
+            this.os = null;
+        }
+        log.info("opened dictionary " + file.toString() + " with " + count + " ids");
+    }
+
+    private static File openMarker(final File file) {
+        return new File(file.getParentFile(), file.getName() + ".open");
+    }
+
+    /**
+     * make sure that the page for an id exists
+     */
+    private void page(final int id) {
+        final int p = id >> PAGEBITS;
+        byte[][] pp = this.pages;
+        if (p >= pp.length) {
+            final byte[][] grown = new byte[Math.max(p + 1, pp.length * 2)][];
+            System.arraycopy(pp, 0, grown, 0, pp.length);
+            this.pages = pp = grown;
+        }
+        if (pp[p] == null) pp[p] = new byte[PAGESIZE * this.keylength];
+    }
+
+    /**
+     * @return true if new containers are encoded with this dictionary
+     */
+    public boolean encodes() {
+        return this.encode;
+    }
+
+    /**
+     * @return true if the dictionary was not closed cleanly or its end was damaged when it was opened;
+     *   then index files may use ids that are not in the dictionary
+     */
+    public boolean damaged() {
+        return this.damaged;
+    }
+
+    /**
+     * @param id
+     * @return true if the id is in the dictionary
+     */
+    public boolean valid(final int id) {
+        return id >= 0 && id < this.size;
+    }
+
+    /**
+     * @return the number of ids
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * get the id of a url hash
+     * @param urlhash
+     * @return the id or -1 if the url hash has no id
+     */
+    public synchronized int get(final byte[] urlhash) {
+        return (int) this.ids.get(urlhash);
+    }
+
+    /**
+     * get the id of a url hash and assign a new id if the url hash has none
+     * @param urlhash
+     * @return the id
+     * @throws IOException if the new id cannot be written
+     * @throws SpaceExceededException
+     */
+    public synchronized int id(final byte[] urlhash) throws IOException, SpaceExceededException {
+        assert urlhash.length == this.keylength;
+        final long id = this.ids.get(urlhash);
+        if (id >= 0) return (int) id;
+        if (this.os == null) throw new IOException("dictionary " + this.file.toString() + " is read-only or closed");
+        final int newid = this.size;
+        if (newid == Integer.MAX_VALUE) throw new SpaceExceededException(newid, "dictionary " + this.file.toString() + " is full");
+        this.ids.putUnique(urlhash, newid);
+        page(newid);
+        System.arraycopy(urlhash, 0, this.pages[newid >> PAGEBITS], (newid & (PAGESIZE - 1)) * this.keylength, this.keylength);
+        this.os.write(urlhash);
+        this.size = newid + 1;
+        return newid;
+    }
+
+    /**
+     * copy the url hash of an id into an array
+     * @param id an id that was returned by id()
+     * @param b the target array
+     * @param offset the position of the url hash in b
+     */
+    public void writeHash(final int id, final byte[] b, final int offset) {
+        if (id < 0 || id >= this.size) throw new IndexOutOfBoundsException("id " + id + " is not in dictionary " + this.file.getName() + " with " + this.size + " ids");
+        System.arraycopy(this.pages[id >> PAGEBITS], (id & (PAGESIZE - 1)) * this.keylength, b, offset, this.keylength);
+    }
+
+    /**
+     * @param id an id that was returned by id()
+     * @return the url hash of the id
+     */
+    public byte[] hash(final int id) {
+        final byte[] b = new byte[this.keylength];
+        writeHash(id, b, 0);
+        return b;
+    }
+
+    /**
+     * write all new ids to the dictionary file and force them to the disk.
+     * This must be done before an index file that uses the new ids is closed.
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        if (this.os == null) return;
+        this.os.flush();
+        this.fos.getChannel().force(false);
+    }
+
+    public synchronized void close() {
+        if (this.os != null) try {
+            flush();
+            this.os.close();
+            // the dictionary is complete now
+            openMarker(this.file).delete();
+        } catch (final IOException e) {
+            log.warn("cannot close dictionary " + this.file.toString() + ": " + e.getMessage(), e);
+        }
+        this.os = null;
+        this.fos = null;
+        this.ids.close();
+    }
+
+}
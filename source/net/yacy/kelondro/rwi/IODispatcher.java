@@ -26,22 +26,39 @@ package net.yacy.kelondro.rwi;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.RateLimiter;
 
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.kelondro.blob.ArrayStack;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
 
 
 /**
- * this is a concurrent merger that can merge single files that are queued for merging.
+ * this is a concurrent merger that can merge files that are queued for merging.
  * when several ReferenceContainerArray classes host their ReferenceContainer file arrays,
  * they may share a single ReferenceContainerMerger object which does the sharing for all
  * of them. This is the best way to do the merging, because it does heavy IO access and
- * such access should not be performed concurrently, but queued. This class is the
+ * such access should not be performed uncontrolled, but queued. This class is the
  * manaagement class for queueing of merge jobs.
  *
+ * Dump jobs are executed by the dispatcher thread itself and are always preferred.
+ * Merge jobs are handed over to merge threads; the number of concurrently running merges
+ * and the write rate of all merges together (the I/O budget) can be limited.
+ * A merge job may join more than two files in one k-way merge. The migrations of files between
+ * the hot and the cold tier of an array are queued and executed like merge jobs.
+ *
  * to use this class, first instantiate a object and then start the concurrent execution
  * of merging with a call to the start() - method. To shut down all mergings, call terminate()
  * only once.
@@ -50,21 +67,91 @@ public class IODispatcher extends Thread {
 
     private static final ConcurrentLog log = new ConcurrentLog("IODispatcher");
 
+    /** the number of finished merges that are remembered for the statistics */
+    private static final int MERGE_HISTORY_SIZE = 20;
+
     private   Semaphore                    controlQueue; // controls that only one io job is running
     private   final Semaphore              termination; // released if thread is safe to terminate
-    private   ArrayBlockingQueue<MergeJob> mergeQueue;
+    private   ArrayBlockingQueue<Runnable> mergeQueue; // merge and migration jobs
     private   ArrayBlockingQueue<DumpJob<? extends Reference>> dumpQueue;
     private   boolean                      terminate;
     private final int                      writeBufferSize;
 
+    private final ExecutorService          mergeExecutor; // runs the merge jobs
+    private final Object                   mergeMonitor; // notified when a merge has finished
+    private final AtomicInteger            runningMerges;
+    private volatile int                   maxParallelMerges;
+    private volatile int                   mergeWidth;
+    private volatile RateLimiter           budget; // the I/O budget in bytes per second for all merges, null if unlimited
+
+    // merge statistics
+    private final AtomicLong               mergeCount, mergeBytes, mergeTime;
+    private final ConcurrentLinkedDeque<MergeReport> mergeHistory;
+
     public IODispatcher(final int dumpQueueLength, final int mergeQueueLength, final int writeBufferSize) {
     	super("IODispatcher");
         this.termination = new Semaphore(0);
         this.controlQueue = new Semaphore(0);
         this.dumpQueue = new ArrayBlockingQueue<DumpJob<? extends Reference>>(dumpQueueLength);
-        this.mergeQueue = new ArrayBlockingQueue<MergeJob>(mergeQueueLength);
+        this.mergeQueue = new ArrayBlockingQueue<Runnable>(mergeQueueLength);
         this.writeBufferSize = writeBufferSize;
         this.terminate = false;
+        this.mergeExecutor = Executors.newCachedThreadPool(new NamePrefixThreadFactory("IODispatcher.merge"));
+        this.mergeMonitor = new Object();
+        this.runningMerges = new AtomicInteger(0);
+        this.maxParallelMerges = 1;
+        this.mergeWidth = 2;
+        this.budget = null;
+        this.mergeCount = new AtomicLong(0);
+        this.mergeBytes = new AtomicLong(0);
+        this.mergeTime = new AtomicLong(0);
+        this.mergeHistory = new ConcurrentLinkedDeque<MergeReport>();
+    }
+
+    /**
+     * set the maximum number of merge jobs that may run at the same time
+     * @param maxParallelMerges the number of merge threads, at least 1
+     */
+    public void setMaxParallelMerges(final int maxParallelMerges) {
+        this.maxParallelMerges = Math.max(1, maxParallelMerges);
+        synchronized (this.mergeMonitor) {
+            this.mergeMonitor.notifyAll();
+        }
+    }
+
+    public int getMaxParallelMerges() {
+        return this.maxParallelMerges;
+    }
+
+    /**
+     * set the maximum number of files that are joined within one merge job
+     * @param mergeWidth the number of files, at least 2
+     */
+    public void setMergeWidth(final int mergeWidth) {
+        this.mergeWidth = Math.max(2, mergeWidth);
+    }
+
+    public int getMergeWidth() {
+        return this.mergeWidth;
+    }
+
+    /**
+     * set the I/O budget of all merges together
+     * @param bytesPerSecond the maximum write rate of all merges, 0 or less means unlimited
+     */
+    public synchronized void setMaxBytesPerSecond(final long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            this.budget = null;
+        } else if (this.budget == null) {
+            this.budget = RateLimiter.create(bytesPerSecond);
+        } else {
+            this.budget.setRate(bytesPerSecond);
+        }
+    }
+
+    public long getMaxBytesPerSecond() {
+        final RateLimiter b = this.budget;
+        return b == null ? 0 : (long) b.getRate();
     }
 
     public void terminate() {
@@ -84,7 +171,13 @@ public class IODispatcher extends Thread {
 	protected synchronized void dump(final ReferenceContainerCache<? extends Reference> cache, final File file, final ReferenceContainerArray<? extends Reference> array) {
         if (this.dumpQueue == null || this.controlQueue == null || !isAlive()) {
             log.warn("emergency dump of file " + file.getName());
-             if (!cache.isEmpty()) cache.dump(file, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true);
+            beginChange(array.termStatistics());
+            try {
+                addStatistics(cache, array);
+                if (!cache.isEmpty()) cache.dump(file, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true, array.docIds());
+            } finally {
+                endChange(array.termStatistics());
+            }
         } else {
             @SuppressWarnings("rawtypes")
             final
@@ -96,7 +189,13 @@ public class IODispatcher extends Thread {
                     log.info("appended dump job for file " + file.getName());
                 } catch (final IllegalStateException e) {
                     log.warn("could not append dump job, emergency dump of file " + file.getName());
-                    cache.dump(file, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true);
+                    beginChange(array.termStatistics());
+                    try {
+                        addStatistics(cache, array);
+                        cache.dump(file, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true, array.docIds());
+                    } finally {
+                        endChange(array.termStatistics());
+                    }
                 } finally {
                     this.controlQueue.release();
                 }
@@ -107,47 +206,88 @@ public class IODispatcher extends Thread {
         }
     }
 
+    /**
+     * add the statistics of the terms of a dump to the statistics catalog of the array, if it has one.
+     * This must be done before the dump because the dump clears the containers.
+     */
+    private static void addStatistics(final ReferenceContainerCache<? extends Reference> cache, final ReferenceContainerArray<? extends Reference> array) {
+        final TermStatistics statistics = array.termStatistics();
+        if (statistics != null) statistics.add(cache);
+    }
+
+    /**
+     * see TermStatistics.beginChange(); a dump changes the statistics before the dumped file is mounted
+     */
+    private static void beginChange(final TermStatistics statistics) {
+        if (statistics != null) statistics.beginChange();
+    }
+
+    private static void endChange(final TermStatistics statistics) {
+        if (statistics != null) statistics.endChange();
+    }
+
     protected synchronized int queueLength() {
         return (this.controlQueue == null || !isAlive()) ? 0 : this.controlQueue.availablePermits();
     }
 
-    protected synchronized void merge(final File f1, final File f2, final ReferenceFactory<? extends Reference> factory, final ArrayStack array, final File newFile) {
+    /**
+     * queue a merge job. If only one file is given, the file is rewritten.
+     * The job finishes the change of the term statistics that the caller began before the files were unmounted.
+     * @param files the files to merge, oldest first
+     * @param factory
+     * @param array the array where the result is mounted
+     * @param newFile the target file
+     */
+    protected synchronized void merge(final File[] files, final ReferenceFactory<? extends Reference> factory, final ArrayStack array, final File newFile) {
+        final MergeJob job = new MergeJob(files, factory, array, newFile);
         if (this.mergeQueue == null || this.controlQueue == null || !isAlive()) {
-            if (f2 == null) {
-                log.warn("emergency rewrite of file " + f1.getName() + " to " + newFile.getName());
-            } else {
-                log.warn("emergency merge of files " + f1.getName() + ", " + f2.getName() + " to " + newFile.getName());
-            }
-            array.mergeMount(f1, f2, factory, newFile, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize));
+            log.warn("emergency " + job + " to " + newFile.getName());
+            job.run();
         } else {
-            final MergeJob job = new MergeJob(f1, f2, factory, array, newFile);
-            if (isAlive()) {
-                try {
-                    this.mergeQueue.add(job);
-                    if (f2 == null) {
-                        log.info("appended rewrite job of file " + f1.getName() + " to " + newFile.getName());
-                    } else {
-                        log.info("appended merge job of files " + f1.getName() + ", " + f2.getName() + " to " + newFile.getName());
-                    }
-                } catch (final IllegalStateException e) { // because mergeQueue size is 1, IllegalStateException could happen frequently (serial execution ensured in run() )
-                	log.warn("Could not add merge job to queue: " + e.getMessage());
-                } finally {
-                    this.controlQueue.release();
-                }
-            } else {
-                job.merge();
-                if (f2 == null) {
-                    log.warn("dispatcher not running, merged files " + f1.getName() + " to " + newFile.getName());
-                } else {
-                    log.warn("dispatcher not running, rewrote file " + f1.getName() + ", " + f2.getName() + " to " + newFile.getName());
+            try {
+                this.mergeQueue.add(job);
+                log.info("appended " + job + " to " + newFile.getName());
+            } catch (final IllegalStateException e) {
+                // the queue is full; the files are mounted again and may be merged later
+                log.warn("Could not add merge job to queue: " + e.getMessage());
+                for (final File f: files) try {
+                    array.mountBLOB(f, false);
+                } catch (final IOException ee) {
+                    log.severe("cannot mount file " + f.getName() + " again after rejected merge", ee);
                 }
+                endChange(array.termStatistics());
+            } finally {
+                this.controlQueue.release();
+            }
+        }
+    }
+
+    /**
+     * queue the migration of a file to the other tier of its array. Migrations share the merge threads and the I/O budget
+     * with the merge jobs. If the job cannot be queued, the file is given back for a later selection.
+     * @param file a file that was selected with ArrayStack.selectMigration()
+     * @param array the array of the file
+     */
+    protected synchronized void migrate(final File file, final ReferenceContainerArray<? extends Reference> array) {
+        final MigrationJob job = new MigrationJob(file, array);
+        if (this.mergeQueue == null || this.controlQueue == null || !isAlive()) {
+            array.cancelMigration(file);
+        } else {
+            try {
+                this.mergeQueue.add(job);
+                log.info("appended " + job);
+            } catch (final IllegalStateException e) {
+                log.warn("Could not add migration job to queue: " + e.getMessage());
+                array.cancelMigration(file);
+            } finally {
+                this.controlQueue.release();
             }
         }
     }
 
     @Override
     public void run() {
-        MergeJob mergeJob;
+        Runnable mergeJob;
         DumpJob<? extends Reference> dumpJob;
         try {
             loop: while (true) try {
@@ -171,23 +311,43 @@ public class IODispatcher extends Thread {
                     continue loop;
                 }
 
-                // otherwise do a merge operation
+                // otherwise start a merge operation
                 if (!this.mergeQueue.isEmpty() && !MemoryControl.shortStatus()) {
-                	File f = null, f1 = null, f2 = null;
+                    if (this.runningMerges.get() >= this.maxParallelMerges) {
+                        // all merge slots are busy: keep the job queued and wait until a merge is finished;
+                        // the permit is given back so that dump jobs are not blocked
+                        this.controlQueue.release();
+                        synchronized (this.mergeMonitor) {
+                            if (this.runningMerges.get() >= this.maxParallelMerges) this.mergeMonitor.wait(100);
+                        }
+                        continue loop;
+                    }
                     try {
                         mergeJob = this.mergeQueue.take();
-                        f = mergeJob.newFile;
-                        f1 = mergeJob.f1;
-                        f2 = mergeJob.f2;
-                        mergeJob.merge();
+                        final Runnable job = mergeJob;
+                        this.runningMerges.incrementAndGet();
+                        try {
+                            this.mergeExecutor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        job.run();
+                                    } finally {
+                                        IODispatcher.this.runningMerges.decrementAndGet();
+                                        synchronized (IODispatcher.this.mergeMonitor) {
+                                            IODispatcher.this.mergeMonitor.notifyAll();
+                                        }
+                                    }
+                                }
+                            });
+                        } catch (final Throwable e) {
+                            this.runningMerges.decrementAndGet();
+                            throw e;
+                        }
                     } catch (final InterruptedException e) {
                         log.severe("main run job was interrupted (2)", e);
                     } catch (final Throwable e) {
-                        if (f2 == null) {
-                            log.severe("main run job had errors (2), dump to " + f + " failed. Input file is " + f1, e);
-                        } else {
-                            log.severe("main run job had errors (2), dump to " + f + " failed. Input files are " + f1 + " and " + f2, e);
-                        }
+                        log.severe("main run job had errors (2), cannot start merge job", e);
                     } finally {
                         // make sure (on error) loop never hangs on controlQueue.acquire() (after/on error)
                         if (this.terminate) this.controlQueue.release();
@@ -209,6 +369,15 @@ public class IODispatcher extends Thread {
             log.severe("main run job failed (4)", e);
         } finally {
             log.info("terminating run job");
+            // the merge jobs must be finished before the index files are closed
+            this.mergeExecutor.shutdown();
+            try {
+                while (!this.mergeExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    log.info("waiting for " + this.runningMerges.get() + " running merge jobs");
+                }
+            } catch (final InterruptedException e) {
+                log.warn("interrupted while waiting for running merge jobs");
+            }
             this.controlQueue = null;
             this.dumpQueue = null;
             this.mergeQueue = null;
@@ -216,6 +385,75 @@ public class IODispatcher extends Thread {
         }
     }
 
+    /**
+     * @return the number of dump jobs waiting for execution
+     */
+    public int dumpQueueSize() {
+        final ArrayBlockingQueue<DumpJob<? extends Reference>> q = this.dumpQueue;
+        return q == null ? 0 : q.size();
+    }
+
+    /**
+     * @return the number of merge jobs waiting for execution
+     */
+    public int mergeQueueSize() {
+        final ArrayBlockingQueue<Runnable> q = this.mergeQueue;
+        return q == null ? 0 : q.size();
+    }
+
+    /**
+     * @return the number of merge jobs that are currently running
+     */
+    public int runningMerges() {
+        return this.runningMerges.get();
+    }
+
+    /**
+     * @return the number of finished merge jobs
+     */
+    public long mergeCount() {
+        return this.mergeCount.get();
+    }
+
+    /**
+     * @return the number of bytes of all input files of the finished merge jobs
+     */
+    public long mergeBytes() {
+        return this.mergeBytes.get();
+    }
+
+    /**
+     * @return the sum of the running time of the finished merge jobs in milliseconds
+     */
+    public long mergeTime() {
+        return this.mergeTime.get();
+    }
+
+    /**
+     * @return reports of the latest finished merge jobs, latest first
+     */
+    public List<MergeReport> mergeHistory() {
+        return new ArrayList<MergeReport>(this.mergeHistory);
+    }
+
+    /**
+     * the statistics of a finished merge job
+     */
+    public static class MergeReport {
+        public final long finished; // time when the merge was finished
+        public final int files; // number of merged files
+        public final long bytes; // sum of the size of the input files
+        public final long time; // running time of the merge in milliseconds
+        public final boolean success;
+        private MergeReport(final long finished, final int files, final long bytes, final long time, final boolean success) {
+            this.finished = finished;
+            this.files = files;
+            this.bytes = bytes;
+            this.time = time;
+            this.success = success;
+        }
+    }
+
     private class DumpJob<ReferenceType extends Reference> {
         private final ReferenceContainerCache<ReferenceType> cache;
         private final File file;
@@ -226,44 +464,96 @@ public class IODispatcher extends Thread {
             this.array = array;
         }
         private void dump() {
+            beginChange(this.array.termStatistics());
             try {
-                if (!this.cache.isEmpty()) this.cache.dump(this.file, (int) Math.min(MemoryControl.available() / 3, IODispatcher.this.writeBufferSize), true);
+                addStatistics(this.cache, this.array);
+                if (!this.cache.isEmpty()) this.cache.dump(this.file, (int) Math.min(MemoryControl.available() / 3, IODispatcher.this.writeBufferSize), true, this.array.docIds());
                 this.array.mountBLOBFile(this.file);
             } catch (final IOException e) {
                 ConcurrentLog.logException(e);
+            } finally {
+                endChange(this.array.termStatistics());
             }
         }
     }
 
-    private class MergeJob {
+    private class MergeJob implements Runnable {
 
-        private final File f1, f2, newFile;
+        private final File[] files;
+        private final File newFile;
         private final ArrayStack array;
         private final ReferenceFactory<? extends Reference> factory;
 
         private MergeJob(
-                final File f1,
-                final File f2,
+                final File[] files,
                 final ReferenceFactory<? extends Reference> factory,
                 final ArrayStack array,
                 final File newFile) {
-            this.f1 = f1;
-            this.f2 = f2;
+            this.files = files;
             this.factory = factory;
             this.newFile = newFile;
             this.array = array;
         }
 
+        @Override
+        public void run() {
+            final long start = System.currentTimeMillis();
+            long bytes = 0;
+            for (final File f: this.files) bytes += f.length();
+            File result = null;
+            try {
+                result = merge();
+            } catch (final Throwable e) {
+                log.severe("merge job had errors, dump to " + this.newFile + " failed. Input files are " + ArrayStack.names(this.files), e);
+            } finally {
+                endChange(this.array.termStatistics());
+            }
+            final long time = System.currentTimeMillis() - start;
+            IODispatcher.this.mergeCount.incrementAndGet();
+            IODispatcher.this.mergeBytes.addAndGet(bytes);
+            IODispatcher.this.mergeTime.addAndGet(time);
+            IODispatcher.this.mergeHistory.addFirst(new MergeReport(System.currentTimeMillis(), this.files.length, bytes, time, result != null));
+            while (IODispatcher.this.mergeHistory.size() > MERGE_HISTORY_SIZE) IODispatcher.this.mergeHistory.pollLast();
+        }
+
         private File merge() {
-        	if (!this.f1.exists()) {
-        	    log.warn("merge of file (1) " + this.f1.getName() + " failed: file does not exists");
-        		return null;
-        	}
-        	if (this.f2 != null && !this.f2.exists()) {
-        	    log.warn("merge of file (2) " + this.f2.getName() + " failed: file does not exists");
-        		return null;
-        	}
-            return this.array.mergeMount(this.f1, this.f2, this.factory, this.newFile, (int) Math.min(MemoryControl.available() / 3, IODispatcher.this.writeBufferSize));
+            for (final File f: this.files) {
+                if (!f.exists()) {
+                    log.warn("merge of file " + f.getName() + " failed: file does not exists");
+                    return null;
+                }
+            }
+            return this.array.mergeMount(this.files, this.factory, this.newFile, (int) Math.min(MemoryControl.available() / 3, IODispatcher.this.writeBufferSize), IODispatcher.this.budget);
+        }
+
+        @Override
+        public String toString() {
+            return (this.files.length == 1 ? "rewrite job of file " : "merge job of files ") + ArrayStack.names(this.files);
+        }
+    }
+
+    private class MigrationJob implements Runnable {
+
+        private final File file;
+        private final ReferenceContainerArray<? extends Reference> array;
+
+        private MigrationJob(final File file, final ReferenceContainerArray<? extends Reference> array) {
+            this.file = file;
+            this.array = array;
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.array.migrateBLOBFile(this.file, IODispatcher.this.budget);
+            } catch (final Throwable e) {
+                log.severe("migration of file " + this.file + " failed", e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "migration job of file " + this.file.getName();
         }
     }
 
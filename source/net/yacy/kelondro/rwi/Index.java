@@ -92,6 +92,13 @@ public interface Index <ReferenceType extends Reference> extends Iterable<Refere
 	 */
 	public int count(final byte[] termHash);
 
+	/**
+	 * get the statistics of the given word without reading its references
+	 * @param termHash
+	 * @return the statistics of the word, or null if this index has no statistics of its words
+	 */
+	public TermStatistics.Entry statistics(final byte[] termHash);
+
 	/**
 	 * get the references to a given word.
 	 *  if referenceselection is not null, then all url references which are not
@@ -103,6 +110,27 @@ public interface Index <ReferenceType extends Reference> extends Iterable<Refere
 	 */
 	public ReferenceContainer<ReferenceType> get(byte[] termHash, HandleSet referenceselection) throws IOException;
 
+	/**
+	 * get the references to a given word together with the upper bounds of the rank features
+	 * of blocks of the references, see ReferenceBlocks
+	 * @param termHash
+	 * @param referenceselection
+	 * @param blocks the block bounds of the references are added to this
+	 * @return the references
+	 * @throws IOException
+	 */
+	public ReferenceContainer<ReferenceType> get(byte[] termHash, HandleSet referenceselection, ReferenceBlocks<ReferenceType> blocks) throws IOException;
+
+	/**
+	 * get the best references of a term for a query of this single term, see ReferenceImpact
+	 * @param termHash
+	 * @param score the score of the query
+	 * @return the best references, or null if the whole container must be read because
+	 *   this index has no impact lists or they are not ordered like the score of the query
+	 * @throws IOException
+	 */
+	public ReferenceImpact<ReferenceType> getImpact(byte[] termHash, ReferenceScore<ReferenceType> score) throws IOException;
+
     /**
      * remove all references for a word
      * @param termHash
@@ -69,7 +69,8 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
 
     // class variables
     private final ReferenceContainerArray<ReferenceType> array;
-    private       ReferenceContainerCache<ReferenceType> ram;
+    private final ReferenceContainerCache<ReferenceType> ram;
+    private final TermStatistics                         statistics; // the statistics of the terms in the BLOB files
     private final ComparableARC<byte[], Integer>         countCache;
     private       int                                    maxRamEntries;
     private       IODispatcher                           merger; // pointer to shared merger
@@ -80,6 +81,10 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
     private final Map<byte[], HandleSet>                 removeDelayedURLs; // mapping from word hashes to a list of url hashes
     private       boolean                                flushShallRun;
     private final Thread                                 flushThread;
+    private final Thread                                 statisticsThread;
+    private volatile long                                coldMinAge; // the minimum age of a file in the cold tier
+    private volatile double                              coldMaxHitsPerHour; // the maximum reads per hour of a file that is moved to the cold tier
+    private volatile String                              impactOrder; // the order of the impact lists that are written by a merge, null if none are written
 
     public IndexCell(
             final File cellPath,
@@ -93,11 +98,94 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
             final int writeBufferSize,
             final IODispatcher merger
             ) throws IOException {
+        this(cellPath, prefix, factory, termOrder, termSize, maxRamEntries, targetFileSize, maxFileSize, writeBufferSize, merger, false);
+    }
+
+    public IndexCell(
+            final File cellPath,
+            final String prefix,
+            final ReferenceFactory<ReferenceType> factory,
+            final ByteOrder termOrder,
+            final int termSize,
+            final int maxRamEntries,
+            final long targetFileSize,
+            final long maxFileSize,
+            final int writeBufferSize,
+            final IODispatcher merger,
+            final boolean offHeapIndex
+            ) throws IOException {
+        this(cellPath, prefix, factory, termOrder, termSize, maxRamEntries, targetFileSize, maxFileSize, writeBufferSize, merger, offHeapIndex, null);
+    }
+
+    public IndexCell(
+            final File cellPath,
+            final String prefix,
+            final ReferenceFactory<ReferenceType> factory,
+            final ByteOrder termOrder,
+            final int termSize,
+            final int maxRamEntries,
+            final long targetFileSize,
+            final long maxFileSize,
+            final int writeBufferSize,
+            final IODispatcher merger,
+            final boolean offHeapIndex,
+            final DocIdDictionary docids
+            ) throws IOException {
+        this(cellPath, prefix, factory, termOrder, termSize, maxRamEntries, targetFileSize, maxFileSize, writeBufferSize, merger, offHeapIndex, docids, 1);
+    }
+
+    /**
+     * @param docids the document id dictionary of the index segment that is used to compress the containers
+     *   in the index files, or null to write uncompressed containers
+     * @param stripes the number of stripes of the RAM buffer; threads that add references to terms in different
+     *   stripes do not block each other
+     */
+    public IndexCell(
+            final File cellPath,
+            final String prefix,
+            final ReferenceFactory<ReferenceType> factory,
+            final ByteOrder termOrder,
+            final int termSize,
+            final int maxRamEntries,
+            final long targetFileSize,
+            final long maxFileSize,
+            final int writeBufferSize,
+            final IODispatcher merger,
+            final boolean offHeapIndex,
+            final DocIdDictionary docids,
+            final int stripes
+            ) throws IOException {
+        this(cellPath, null, prefix, factory, termOrder, termSize, maxRamEntries, targetFileSize, maxFileSize, writeBufferSize, merger, offHeapIndex, docids, stripes);
+    }
+
+    /**
+     * @param coldPath the directory of the cold tier of the BLOB files, or null if all files are stored in the cellPath.
+     *   New files are written to the cellPath; large files that are rarely read are moved to the cold tier, see setTierPolicy()
+     */
+    public IndexCell(
+            final File cellPath,
+            final File coldPath,
+            final String prefix,
+            final ReferenceFactory<ReferenceType> factory,
+            final ByteOrder termOrder,
+            final int termSize,
+            final int maxRamEntries,
+            final long targetFileSize,
+            final long maxFileSize,
+            final int writeBufferSize,
+            final IODispatcher merger,
+            final boolean offHeapIndex,
+            final DocIdDictionary docids,
+            final int stripes
+            ) throws IOException {
         super(factory);
 
         this.merger = merger;
-        this.array = new ReferenceContainerArray<ReferenceType>(cellPath, prefix, factory, termOrder, termSize);
-        this.ram = new ReferenceContainerCache<ReferenceType>(factory, termOrder, termSize);
+        this.array = new ReferenceContainerArray<ReferenceType>(cellPath, coldPath, prefix, factory, termOrder, termSize, offHeapIndex, docids);
+        this.statistics = new TermStatistics(new File(cellPath, prefix + ".statistics.table"), termSize, termOrder);
+        if (!this.statistics.isComplete() && this.array.entries() == 0) this.statistics.setComplete();
+        this.array.setTermStatistics(this.statistics);
+        this.ram = new ReferenceContainerCache<ReferenceType>(factory, termOrder, termSize, stripes);
         this.countCache = new ComparableARC<byte[], Integer>(1000, termOrder);
         this.maxRamEntries = maxRamEntries;
         this.lastCleanup = System.currentTimeMillis();
@@ -105,10 +193,71 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         this.targetFileSize = targetFileSize;
         this.maxFileSize = maxFileSize;
         this.writeBufferSize = writeBufferSize;
+        this.coldMinAge = 2L * 24L * 60L * 60L * 1000L;
+        this.coldMaxHitsPerHour = 1.0d;
         this.removeDelayedURLs = new TreeMap<byte[], HandleSet>(Word.commonHashOrder);
         this.flushShallRun = true;
         this.flushThread = new FlushThread(cellPath.toString());
         this.flushThread.start();
+        if (this.statistics.isComplete()) {
+            this.statisticsThread = null;
+        } else {
+            this.statisticsThread = new StatisticsThread(cellPath.toString());
+            this.statisticsThread.start();
+        }
+    }
+
+    /**
+     * rebuilds the statistics catalog of a cell that had BLOB files before the catalog was created. The number of
+     * references of each term is counted in the BLOB files; until this is finished, count() probes the BLOB files.
+     * The terms are counted in batches while no dump, merge or removal is pending (see TermStatistics.beginRebuild()),
+     * so a change is neither lost nor counted twice; the keys are read again from the mounted files for each batch.
+     */
+    private class StatisticsThread extends Thread {
+        private static final int BATCH = 1000;
+
+        public StatisticsThread(String name) {
+            super("IndexCell.StatisticsThread(" + name + ")");
+        }
+
+        @Override
+        public void run() {
+            final TermStatistics statistics = IndexCell.this.statistics;
+            int terms = 0;
+            byte[] last = null;
+            boolean finished = false;
+            try {
+                while (IndexCell.this.flushShallRun && !finished) {
+                    if (!statistics.beginRebuild(1000)) continue;
+                    try {
+                        final CloneableIterator<byte[]> i = IndexCell.this.array.keys(true, last);
+                        try {
+                            int batch = 0;
+                            while (batch < BATCH && i.hasNext()) {
+                                final byte[] termHash = i.next();
+                                if (last != null && IndexCell.this.array.ordering().compare(termHash, last) <= 0) continue;
+                                final int df = IndexCell.this.array.count(termHash);
+                                if (df > 0) statistics.set(termHash, df, df, 0); else statistics.remove(termHash);
+                                last = termHash;
+                                batch++;
+                            }
+                            terms += batch;
+                            if (!i.hasNext()) {
+                                statistics.setComplete();
+                                finished = true;
+                            }
+                        } finally {
+                            i.close();
+                        }
+                    } finally {
+                        statistics.endRebuild();
+                    }
+                }
+                if (finished) ConcurrentLog.info("IndexCell", "rebuilt term statistics of " + terms + " terms");
+            } catch (final Throwable e) {
+                ConcurrentLog.logException(e);
+            }
+        }
     }
 
     private class FlushThread extends Thread {
@@ -145,15 +294,9 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
                         // dump the ram
                         final File dumpFile = IndexCell.this.array.newContainerBLOBFile();
                         // a critical point: when the ram is handed to the dump job,
-                        // don't write into it any more. Use a fresh one instead
-                        ReferenceContainerCache<ReferenceType> ramdump;
-                        final ByteOrder termOrder = IndexCell.this.ram.termKeyOrdering();
-                        final int termSize = IndexCell.this.ram.termKeyLength();
-                        synchronized (this) {
-                            ramdump = IndexCell.this.ram;
-                            // get a fresh ram cache
-                            IndexCell.this.ram = new ReferenceContainerCache<ReferenceType>(IndexCell.this.factory, termOrder, termSize);
-                        }
+                        // don't write into it any more. The containers are moved to a new cache stripe by stripe,
+                        // so the indexing threads continue to write into the ram while it is drained
+                        final ReferenceContainerCache<ReferenceType> ramdump = IndexCell.this.ram.drain();
                         // WARNING : if this cell is queried before this dump termination, terms are no longer in the cache and would therefore not be found
                         // dump the buffer
                         IndexCell.this.merger.dump(ramdump, dumpFile, IndexCell.this.array);
@@ -172,6 +315,9 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
                     if (IndexCell.this.array.entries() > 50 || (IndexCell.this.lastCleanup + cleanupCycle < System.currentTimeMillis())) try {
                         IndexCell.this.lastCleanup = System.currentTimeMillis(); // set time to prevent that this is called to soon again
                         IndexCell.this.shrink(IndexCell.this.targetFileSize, IndexCell.this.maxFileSize);
+                        if (IndexCell.this.merger.queueLength() < 1) {
+                            IndexCell.this.array.migrateFiles(IndexCell.this.merger, IndexCell.this.targetFileSize, IndexCell.this.coldMinAge, IndexCell.this.coldMaxHitsPerHour);
+                        }
                         IndexCell.this.lastCleanup = System.currentTimeMillis(); // set again to mark end of procedure
                     } catch (final Throwable e) {
                         // catch all exceptions
@@ -310,16 +456,22 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
 
     /**
      * count number of references for a given term
-     * this method may cause strong IO load if called too frequently.
+     * The number of references in the BLOB files is read from the statistics catalog; if the catalog is not complete,
+     * this method probes the BLOB files and may cause strong IO load if called too frequently.
      */
     @Override
     public int count(final byte[] termHash) {
-        final Integer cachedCount = this.countCache.get(termHash);
-        if (cachedCount != null) return cachedCount.intValue();
+        final boolean catalog = this.statistics.isComplete();
+        if (!catalog) {
+            final Integer cachedCount = this.countCache.get(termHash);
+            if (cachedCount != null) return cachedCount.intValue();
+        }
 
         int countFile = 0;
-        // read fresh values from file
-        try {
+        if (catalog) {
+            countFile = this.statistics.df(termHash);
+        } else try {
+            // read fresh values from file
             countFile = this.array.count(termHash);
         } catch (final Throwable e) {
             ConcurrentLog.logException(e);
@@ -336,12 +488,27 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
             if (s != null) c -= s.size();
             if (c < 0) c = 0;
         }
+        if (catalog) return c;
         // put count result into cache
         if (MemoryControl.shortStatus()) this.countCache.clear();
         this.countCache.insert(termHash, c);
         return c;
     }
 
+    /**
+     * get the statistics of a term from the statistics catalog of the BLOB files and the container in the RAM.
+     * References that are removed with removeDelayed() are still counted until the delayed removal is done.
+     * @return the statistics of the term, with no references if the term is unknown, or null if the catalog is not complete
+     */
+    @Override
+    public TermStatistics.Entry statistics(final byte[] termHash) {
+        if (!this.statistics.isComplete()) return null;
+        TermStatistics.Entry entry = this.statistics.get(termHash);
+        final TermStatistics.Entry ram = TermStatistics.summarize(this.ram.get(termHash, null));
+        entry = entry == null ? ram : entry.add(ram);
+        return entry == null ? new TermStatistics.Entry(0, 0, 0, 0) : entry;
+    }
+
     /**
      * all containers in the BLOBs and the RAM are merged and returned.
      * Please be aware that the returned values may be top-level cloned ReferenceContainers or direct links to containers
@@ -385,6 +552,44 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         return result;
     }
 
+    /**
+     * all containers in the BLOBs and the RAM are merged and returned together with the block bounds of all parts.
+     * The bounds of large containers in the BLOBs are stored when the BLOB files are merged, the bounds of the other
+     * parts are computed here.
+     */
+    @Override
+    public ReferenceContainer<ReferenceType> get(final byte[] termHash, final HandleSet urlselection, final ReferenceBlocks<ReferenceType> blocks) throws IOException {
+        final ReferenceContainer<ReferenceType> c0 = this.ram.get(termHash, null);
+        ReferenceContainer<ReferenceType> c1 = null;
+        try {
+            blocks.addContainer(c0);
+            c1 = this.array.get(termHash, blocks);
+        } catch (final SpaceExceededException e) {
+            ConcurrentLog.logException(e);
+            blocks.add(null);
+            return get(termHash, urlselection);
+        }
+        ReferenceContainer<ReferenceType> result = null;
+        if (c0 != null && c1 != null) {
+            try {
+                result = c1.merge(c0);
+            } catch (final SpaceExceededException e) {
+                result = (c1.size() > c0.size()) ? c1: c0;
+            }
+        } else if (c0 != null) {
+            result = c0;
+        } else if (c1 != null) {
+            result = c1;
+        }
+        if (result == null) return null;
+        // remove the failed urls; the bounds are still valid for the remaining references
+        synchronized (this.removeDelayedURLs) {
+            final HandleSet s = this.removeDelayedURLs.get(termHash);
+            if (s != null) result.removeEntries(s);
+        }
+        return result;
+    }
+
     /**
      * deleting a container affects the containers in RAM and all the BLOB files
      * the deleted containers are merged and returned as result of the method
@@ -399,8 +604,14 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         } catch (final SpaceExceededException e2) {
             ConcurrentLog.logException(e2);
         }
-        if (c1 != null) {
-            this.array.delete(termHash);
+        this.statistics.beginChange();
+        try {
+            if (c1 != null) {
+                this.array.delete(termHash);
+            }
+            this.statistics.remove(termHash);
+        } finally {
+            this.statistics.endChange();
         }
         final ReferenceContainer<ReferenceType> c0 = this.ram.remove(termHash);
         if (c1 == null) return c0;
@@ -427,8 +638,14 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         } catch (final SpaceExceededException e2) {
             ConcurrentLog.logException(e2);
         }
-        if (c1 != null) {
-            this.array.delete(termHash);
+        this.statistics.beginChange();
+        try {
+            if (c1 != null) {
+                this.array.delete(termHash);
+            }
+            this.statistics.remove(termHash);
+        } finally {
+            this.statistics.endChange();
         }
         this.ram.delete(termHash);
         return;
@@ -483,11 +700,16 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         final int removed = this.ram.remove(termHash, urlHashes);
         int reduced;
         //final long am = this.array.mem();
+        final RemoveReducer<ReferenceType> reducer = new RemoveReducer<ReferenceType>(urlHashes);
+        this.statistics.beginChange();
         try {
-            reduced = this.array.reduce(termHash, new RemoveReducer<ReferenceType>(urlHashes));
+            reduced = this.array.reduce(termHash, reducer);
         } catch (final SpaceExceededException e) {
             reduced = 0;
             ConcurrentLog.warn("IndexCell", "not possible to remove urlHashes from a RWI because of too low memory. Remove was not applied. Please increase RAM assignment");
+        } finally {
+            this.statistics.correct(termHash, -reducer.removed, -reducer.removedPostings, 0);
+            this.statistics.endChange();
         }
         //assert this.array.mem() <= am : "am = " + am + ", array.mem() = " + this.array.mem();
         return removed + (reduced / this.array.rowdef().objectsize);
@@ -499,11 +721,16 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         final boolean removed = this.ram.remove(termHash, urlHashBytes);
         int reduced;
         //final long am = this.array.mem();
+        final RemoveReducer<ReferenceType> reducer = new RemoveReducer<ReferenceType>(urlHashBytes);
+        this.statistics.beginChange();
         try {
-            reduced = this.array.reduce(termHash, new RemoveReducer<ReferenceType>(urlHashBytes));
+            reduced = this.array.reduce(termHash, reducer);
         } catch (final SpaceExceededException e) {
             reduced = 0;
             ConcurrentLog.warn("IndexCell", "not possible to remove urlHashes from a RWI because of too low memory. Remove was not applied. Please increase RAM assignment");
+        } finally {
+            this.statistics.correct(termHash, -reducer.removed, -reducer.removedPostings, 0);
+            this.statistics.endChange();
         }
         //assert this.array.mem() <= am : "am = " + am + ", array.mem() = " + this.array.mem();
         return removed || (reduced > 0);
@@ -512,6 +739,8 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
     private static class RemoveReducer<ReferenceType extends Reference> implements ReferenceContainerArray.ContainerReducer<ReferenceType> {
 
         HandleSet urlHashes;
+        int removed; // the number of references that were removed from the BLOB files
+        long removedPostings; // the term frequencies of the removed references
 
         public RemoveReducer(final HandleSet urlHashes) {
             this.urlHashes = urlHashes;
@@ -529,6 +758,12 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         @Override
         public ReferenceContainer<ReferenceType> reduce(final ReferenceContainer<ReferenceType> container) {
             container.sort();
+            for (final byte[] urlHash: this.urlHashes) {
+                final ReferenceType r = container.getReference(urlHash);
+                if (r == null) continue;
+                this.removed++;
+                this.removedPostings += TermStatistics.tf(r);
+            }
             container.removeEntries(this.urlHashes);
             return container;
         }
@@ -580,6 +815,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         this.removeDelayedURLs.clear();
         this.ram.clear();
         this.array.clear();
+        this.statistics.clear();
         if (Switchboard.getSwitchboard() != null &&
                 Switchboard.getSwitchboard().peers != null &&
                 Switchboard.getSwitchboard().peers.mySeed() != null) Switchboard.getSwitchboard().peers.mySeed().resetCounters();
@@ -598,12 +834,17 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
     public synchronized void close() {
         this.countCache.clear();
         try {removeDelayed();} catch (final IOException e) {}
-        if (!this.ram.isEmpty()) this.ram.dump(this.array.newContainerBLOBFile(), (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true);
+        if (!this.ram.isEmpty()) {
+            this.statistics.add(this.ram); // before the dump, which clears the containers
+            this.ram.dump(this.array.newContainerBLOBFile(), (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true, this.array.docIds());
+        }
         // close all
         this.flushShallRun = false;
         if (this.flushThread != null) try { this.flushThread.join(); } catch (final InterruptedException e) {}
+        if (this.statisticsThread != null) try { this.statisticsThread.join(); } catch (final InterruptedException e) {}
         this.ram.close();
         this.array.close();
+        this.statistics.close();
     }
 
     public boolean isEmpty() {
@@ -640,6 +881,70 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         return this.array.entries();
     }
 
+    /**
+     * switch read-only memory mapping of the BLOB files of this cell.
+     * The RAM buffer and BLOB files that are currently written are not affected.
+     * @param mapped
+     */
+    public void setMappedRead(final boolean mapped) {
+        this.array.setMappedRead(mapped);
+    }
+
+    /**
+     * set the rules for moving BLOB files between the tiers of this cell. A file is moved to the cold tier
+     * if it is not smaller than the target file size, older than minAge and read at most maxHitsPerHour;
+     * it is moved back if it is read more than four times as often. This has no effect if the cell has no cold tier.
+     * @param minAge the minimum age of a file in the cold tier in milliseconds
+     * @param maxHitsPerHour the maximum reads per hour, averaged over the last hours
+     */
+    public void setTierPolicy(final long minAge, final double maxHitsPerHour) {
+        this.coldMinAge = minAge;
+        this.coldMaxHitsPerHour = maxHitsPerHour;
+    }
+
+    /**
+     * write impact lists of the large containers when BLOB files are merged, see ReferenceImpact.
+     * The impact lists are only read for queries with a score of the same order; files that were merged
+     * before are read completely until they are merged again.
+     * @param score the static score that selects the best references, may be null to write no impact lists
+     * @param size the number of references in an impact list, 0 to write no impact lists
+     */
+    public void setImpactOrder(final ReferenceScore<ReferenceType> score, final int size) {
+        final String order = score == null || size <= 0 ? null : score.impactOrder();
+        this.array.setImpactOrder(order == null ? null : score, size);
+        this.impactOrder = order;
+    }
+
+    /**
+     * the best references from the impact lists of the BLOB files, merged with the references in the RAM
+     */
+    @Override
+    public ReferenceImpact<ReferenceType> getImpact(final byte[] termHash, final ReferenceScore<ReferenceType> score) throws IOException {
+        final String order = this.impactOrder;
+        if (order == null || !order.equals(score.impactOrder())) return null;
+        final ReferenceImpact<ReferenceType> impact;
+        try {
+            impact = this.array.getImpact(termHash, score);
+        } catch (final SpaceExceededException e) {
+            ConcurrentLog.logException(e);
+            return null;
+        }
+        final ReferenceContainer<ReferenceType> c0 = this.ram.get(termHash, null);
+        ReferenceContainer<ReferenceType> result = impact == null ? null : impact.references();
+        if (c0 != null) try {
+            result = result == null ? c0 : result.merge(c0);
+        } catch (final SpaceExceededException e) {
+            ConcurrentLog.logException(e);
+            return null;
+        }
+        if (result == null) return null;
+        synchronized (this.removeDelayedURLs) {
+            final HandleSet s = this.removeDelayedURLs.get(termHash);
+            if (s != null) result.removeEntries(s);
+        }
+        return new ReferenceImpact<ReferenceType>(result, impact == null ? Long.MIN_VALUE : impact.rest());
+    }
+
     @Override
     public int minMem() {
         return 10 * 1024 * 1024;
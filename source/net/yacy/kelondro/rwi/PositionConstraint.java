@@ -0,0 +1,109 @@
+// PositionConstraint.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import java.util.Arrays;
+
+import net.yacy.cora.document.encoding.ASCII;
+
+/**
+ * A condition on the positions of query terms in a document: either an exact phrase, where each term
+ * must appear at a fixed offset to the first term, or two terms that are near to each other.
+ * The conditions are checked with the positional index, see TermSearch.filter().
+ */
+public class PositionConstraint {
+
+    private final byte[][] termHashes;
+    private final int[] offsets; // for a phrase: the offset of each term to the start of the phrase
+    private final int window;    // for near terms: the maximum number of words between the terms; -1 for a phrase
+
+    private PositionConstraint(final byte[][] termHashes, final int[] offsets, final int window) {
+        this.termHashes = termHashes;
+        this.offsets = offsets;
+        this.window = window;
+    }
+
+    /**
+     * a phrase: all terms appear in the given order and distance
+     * @param termHashes the hashes of the terms of the phrase; terms that are not searched (like stopwords) are left out
+     * @param offsets the position of each term in the phrase, counted in words of the phrase including the left out words
+     */
+    public static PositionConstraint phrase(final byte[][] termHashes, final int[] offsets) {
+        assert termHashes.length == offsets.length;
+        return new PositionConstraint(termHashes, offsets, -1);
+    }
+
+    /**
+     * two terms with at most the given number of words between them, in any order
+     */
+    public static PositionConstraint near(final byte[] termHash0, final byte[] termHash1, final int words) {
+        return new PositionConstraint(new byte[][]{termHash0, termHash1}, null, Math.max(0, words));
+    }
+
+    public byte[][] termHashes() {
+        return this.termHashes;
+    }
+
+    public boolean isPhrase() {
+        return this.window < 0;
+    }
+
+    /**
+     * check the positions of the terms in a document
+     * @param positions the sorted positions of each term, in the order of termHashes()
+     * @return true if the document satisfies the constraint
+     */
+    public boolean matches(final int[][] positions) {
+        assert positions.length == this.termHashes.length;
+        if (this.window < 0) {
+            check: for (final int p: positions[0]) {
+                final int start = p - this.offsets[0];
+                for (int i = 1; i < positions.length; i++) {
+                    if (Arrays.binarySearch(positions[i], start + this.offsets[i]) < 0) continue check;
+                }
+                return true;
+            }
+            return false;
+        }
+        final int[] a = positions[0], b = positions[1];
+        int i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            if (Math.abs(a[i] - b[j]) - 1 <= this.window) return true;
+            if (a[i] < b[j]) i++; else j++;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(this.termHashes.length * 16);
+        if (this.window < 0) {
+            sb.append('"');
+            for (int i = 0; i < this.termHashes.length; i++) sb.append(ASCII.String(this.termHashes[i])).append('@').append(this.offsets[i]).append(' ');
+            sb.setCharAt(sb.length() - 1, '"');
+        } else {
+            sb.append(ASCII.String(this.termHashes[0])).append('~').append(this.window).append('~').append(ASCII.String(this.termHashes[1]));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,207 @@
+// ReferenceBlocks.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.Row;
+
+/**
+ * Upper bounds of the rank features for the blocks of a reference container.
+ * A sorted container is cut into blocks of BLOCKSIZE references; each block is summarized by a bound
+ * reference (see ReferenceFactory.produceBound) that has the url hash of the last reference of the block.
+ * The bounds of one container are stored as a container of bound references, which is written along
+ * with the container when the index files are merged.
+ * A container that is read from the index is merged from several parts (the index files and the ram cache)
+ * which are cut into blocks independently; therefore the bounds of all parts are kept and the bound for a
+ * url hash is the maximum of the bounds of the blocks in each part that may contain the url hash.
+ */
+public class ReferenceBlocks<ReferenceType extends Reference> {
+
+    /**
+     * the number of references in a block
+     */
+    public static final int BLOCKSIZE = 128;
+
+    /**
+     * the minimum size of containers whose block bounds are stored when index files are merged;
+     * the bounds of smaller containers are computed when they are read
+     */
+    public static final int STOREDSIZE = 4 * BLOCKSIZE;
+
+    private final ReferenceFactory<ReferenceType> factory;
+    private final Row row;
+    private final List<ReferenceContainer<ReferenceType>> parts;
+    private boolean complete;
+    private byte[][] keys;   // for each part the concatenated url hashes of the bounds
+    private long[][] scores; // for each part the scores of the bounds
+
+    public ReferenceBlocks(final ReferenceFactory<ReferenceType> factory) {
+        this.factory = factory;
+        this.row = factory.getRow();
+        this.parts = new ArrayList<ReferenceContainer<ReferenceType>>();
+        this.complete = true;
+        this.keys = null;
+        this.scores = null;
+    }
+
+    /**
+     * compute the block bounds of a container
+     * @param factory
+     * @param container the container, it is sorted if necessary
+     * @return a container with one bound reference for each block, or null if the references have no rank features
+     * @throws SpaceExceededException
+     */
+    public static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> summarize(
+            final ReferenceFactory<ReferenceType> factory,
+            final ReferenceContainer<ReferenceType> container) throws SpaceExceededException {
+        container.sort();
+        final int size = container.size();
+        final ReferenceContainer<ReferenceType> blocks = new ReferenceContainer<ReferenceType>(factory, container.getTermHash(), (size + BLOCKSIZE - 1) / BLOCKSIZE);
+        ReferenceType bound;
+        for (int from = 0; from < size; from += BLOCKSIZE) {
+            bound = factory.produceBound(container, from, Math.min(size, from + BLOCKSIZE));
+            if (bound == null) return null;
+            blocks.add(bound);
+        }
+        return blocks;
+    }
+
+    /**
+     * add the block bounds of a part of the container
+     * @param blocks the result of summarize() for the part; null if the part has no bounds
+     */
+    public synchronized void add(final ReferenceContainer<ReferenceType> blocks) {
+        if (blocks == null) {
+            this.complete = false;
+            return;
+        }
+        if (blocks.isEmpty()) return;
+        this.parts.add(blocks);
+        this.keys = null;
+        this.scores = null;
+    }
+
+    /**
+     * compute and add the block bounds of a part of the container
+     * @param part
+     * @throws SpaceExceededException
+     */
+    public void addContainer(final ReferenceContainer<ReferenceType> part) throws SpaceExceededException {
+        if (part == null || part.isEmpty()) return;
+        add(summarize(this.factory, part));
+    }
+
+    /**
+     * @return true if all parts of the container have bounds
+     */
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    /**
+     * @return the number of blocks of all parts
+     */
+    public int size() {
+        int s = 0;
+        for (final ReferenceContainer<ReferenceType> p: this.parts) s += p.size();
+        return s;
+    }
+
+    /**
+     * compute the scores of all block bounds; this must be called before bound() is used
+     * @param score
+     */
+    public synchronized void score(final ReferenceScore<ReferenceType> score) {
+        final int keylength = this.row.primaryKeyLength;
+        this.keys = new byte[this.parts.size()][];
+        this.scores = new long[this.parts.size()][];
+        for (int p = 0; p < this.parts.size(); p++) {
+            final ReferenceContainer<ReferenceType> part = this.parts.get(p);
+            part.sort();
+            final int n = part.size();
+            this.keys[p] = new byte[n * keylength];
+            this.scores[p] = new long[n];
+            for (int i = 0; i < n; i++) {
+                final Row.Entry e = part.get(i, false);
+                e.writeToArray(0, this.keys[p], i * keylength);
+                this.scores[p][i] = score.bound(this.factory.produceSlow(e));
+            }
+        }
+    }
+
+    /**
+     * find the block that may contain a url hash
+     * @return the position of the first bound with a url hash that is not less than the given url hash
+     */
+    private int ceiling(final int p, final byte[] a, final int astart) {
+        final int keylength = this.row.primaryKeyLength;
+        final byte[] k = this.keys[p];
+        int l = 0;
+        int r = this.scores[p].length;
+        while (l < r) {
+            final int m = (l + r) >>> 1;
+            if (this.row.compareKeys(k, m * keylength, a, astart) < 0) l = m + 1; else r = m;
+        }
+        return l;
+    }
+
+    /**
+     * the bound of the score of a reference with a given url hash
+     * @param a an array that contains the url hash
+     * @param astart the start of the url hash in a
+     * @return the bound of the score or Long.MIN_VALUE if no part of the container may contain the url hash
+     */
+    public long bound(final byte[] a, final int astart) {
+        assert this.scores != null : "score() was not called";
+        long bound = Long.MIN_VALUE;
+        for (int p = 0; p < this.scores.length; p++) {
+            final int i = ceiling(p, a, astart);
+            if (i < this.scores[p].length && this.scores[p][i] > bound) bound = this.scores[p][i];
+        }
+        return bound;
+    }
+
+    /**
+     * the bound of the scores of all references with url hashes inside an interval
+     * @param a an array that contains the first url hash of the interval
+     * @param astart the start of the first url hash in a
+     * @param b an array that contains the last url hash of the interval
+     * @param bstart the start of the last url hash in b
+     * @return the bound of the scores or Long.MIN_VALUE if no part of the container has references inside the interval
+     */
+    public long bound(final byte[] a, final int astart, final byte[] b, final int bstart) {
+        assert this.scores != null : "score() was not called";
+        long bound = Long.MIN_VALUE;
+        for (int p = 0; p < this.scores.length; p++) {
+            final long[] s = this.scores[p];
+            final int first = ceiling(p, a, astart);
+            if (first == s.length) continue;
+            final int last = Math.min(s.length - 1, ceiling(p, b, bstart));
+            for (int i = first; i <= last; i++) if (s[i] > bound) bound = s[i];
+        }
+        return bound;
+    }
+
+}
@@ -26,14 +26,17 @@
 
 package net.yacy.kelondro.rwi;
 
+import java.io.IOException;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
 
 import net.yacy.cora.document.encoding.ASCII;
@@ -44,6 +47,7 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.index.Row;
 import net.yacy.kelondro.index.RowSet;
+import net.yacy.kelondro.util.kelondroException;
 
 
 /**
@@ -61,6 +65,13 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
     protected ReferenceFactory<ReferenceType> factory;
     public static int maxReferences = 0; // overwrite this to enable automatic index shrinking. 0 means no shrinking
 
+    // the document ids of a container that was imported from the compressed format; they are valid as long as the
+    // container is not modified (modCount == docidModCount)
+    private DocIdDictionary docidDictionary = null;
+    private int[] docids = null;         // the ascending document ids of the references
+    private int[] docidPositions = null; // for each id the position of its reference in the container
+    private int docidModCount = 0;
+
     public ReferenceContainer(final ReferenceFactory<ReferenceType> factory, final byte[] termHash, final RowSet collection) {
         super(collection);
         assert termHash == null || (termHash[2] != '@' && termHash.length == this.rowdef.primaryKeyLength);
@@ -246,6 +257,187 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
     	return tm.values();
     }
 
+    /**
+     * the first byte of a container in the compressed format. An exported RowSet starts with its size as
+     * a four byte number, so a plain export would have to hold more than 2^31 rows to start with this byte.
+     */
+    private static final byte COMPRESSED_MAGIC = (byte) 0xFF;
+    private static final byte COMPRESSED_VERSION = 1;
+
+    /**
+     * export the container in the compressed format for local index files: the url hashes are replaced by
+     * the ids of a document id dictionary; the sorted ids are stored as differences, followed by the position
+     * of each reference in the id order and the rows without their url hash. The format is
+     * magic, version, varint count, varint days of last write, count * varint id difference,
+     * count * varint id rank (in the order of the url hashes), count * row without key (in the order of the url hashes).
+     * Containers that are sent to other peers must be exported with exportCollection().
+     * @param dictionary the dictionary of the index segment; new ids are assigned to unknown url hashes.
+     *   If the dictionary is null or does not encode, the container is exported with exportCollection()
+     * @return the exported container
+     * @throws IOException if new ids cannot be written to the dictionary
+     * @throws SpaceExceededException
+     */
+    public synchronized byte[] exportCollection(final DocIdDictionary dictionary) throws IOException, SpaceExceededException {
+        if (dictionary == null || !dictionary.encodes()) return exportCollection();
+        sort();
+        final int n = size();
+        final int objectsize = this.rowdef.objectsize;
+        final int keylength = this.rowdef.primaryKeyLength;
+        final int payload = objectsize - keylength;
+        // the ids in ascending order with the positions of their references
+        final long[] idpos = new long[n];
+        for (int p = 0; p < n; p++) {
+            final byte[] key = new byte[keylength];
+            System.arraycopy(this.chunkcache, p * objectsize, key, 0, keylength);
+            idpos[p] = (((long) dictionary.id(key)) << 32) | p;
+        }
+        Arrays.sort(idpos);
+        final int[] rank = new int[n];
+        for (int j = 0; j < n; j++) rank[(int) idpos[j]] = j;
+
+        final byte[] b = new byte[2 + 5 + 5 + n * 10 + n * payload];
+        int q = 0;
+        b[q++] = COMPRESSED_MAGIC;
+        b[q++] = COMPRESSED_VERSION;
+        q = putVarint(b, q, n);
+        q = putVarint(b, q, (int) Math.max(0, this.lastTimeWrote / DAY));
+        int last = 0;
+        for (int j = 0; j < n; j++) {
+            final int id = (int) (idpos[j] >>> 32);
+            q = putVarint(b, q, id - last);
+            last = id;
+        }
+        for (int p = 0; p < n; p++) q = putVarint(b, q, rank[p]);
+        for (int p = 0; p < n; p++) {
+            System.arraycopy(this.chunkcache, p * objectsize + keylength, b, q, payload);
+            q += payload;
+        }
+        return Arrays.copyOf(b, q);
+    }
+
+    private static final long DAY = 24L * 60L * 60L * 1000L;
+
+    /**
+     * @param b an exported container
+     * @return true if the container was exported in the compressed format
+     */
+    public static boolean isCompressed(final byte[] b) {
+        return b != null && b.length >= 2 && b[0] == COMPRESSED_MAGIC;
+    }
+
+    /**
+     * import a container that was exported with exportCollection() or exportCollection(DocIdDictionary)
+     * @param factory
+     * @param termHash
+     * @param b the exported container
+     * @param dictionary the dictionary that was used to export the container; may be null if the container is not compressed
+     * @return the container, sorted by the url hashes
+     * @throws SpaceExceededException
+     */
+    public static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> importContainer(
+            final ReferenceFactory<ReferenceType> factory, final byte[] termHash, final byte[] b, final DocIdDictionary dictionary) throws SpaceExceededException {
+        if (!isCompressed(b)) return new ReferenceContainer<ReferenceType>(factory, termHash, RowSet.importRowSet(b, factory.getRow()));
+        if (dictionary == null) throw new kelondroException("container of term " + ASCII.String(termHash) + " is compressed but there is no document id dictionary");
+        if (b[1] != COMPRESSED_VERSION) throw new kelondroException("unknown container format version " + b[1]);
+        final Row rowdef = factory.getRow();
+        final int objectsize = rowdef.objectsize;
+        final int keylength = rowdef.primaryKeyLength;
+        final int payload = objectsize - keylength;
+        final int[] q = new int[]{2};
+        final int n = getVarint(b, q);
+        final long lastWrote = getVarint(b, q) * DAY;
+        final long alloc = ((long) n) * ((long) objectsize);
+        if (alloc > Integer.MAX_VALUE) throw new SpaceExceededException(alloc, "importContainer: alloc > Integer.MAX_VALUE");
+        final int[] ids = new int[n];
+        int last = 0;
+        for (int j = 0; j < n; j++) ids[j] = last = last + getVarint(b, q);
+        if (n > 0 && !dictionary.valid(ids[n - 1])) throw new kelondroException("container of term " + ASCII.String(termHash) + " has the document id " + ids[n - 1] + " which is not in the dictionary");
+        final int[] positions = new int[n];
+        final byte[] chunkcache;
+        try {
+            chunkcache = new byte[(int) alloc];
+        } catch (final OutOfMemoryError e) {
+            throw new SpaceExceededException(alloc, "importContainer: OutOfMemoryError");
+        }
+        for (int p = 0; p < n; p++) {
+            final int j = getVarint(b, q);
+            positions[j] = p;
+            dictionary.writeHash(ids[j], chunkcache, p * objectsize);
+        }
+        int r = q[0];
+        if (r + n * payload != b.length) throw new kelondroException("container of term " + ASCII.String(termHash) + " has a wrong length: " + b.length + ", expected " + (r + n * payload));
+        for (int p = 0; p < n; p++) {
+            System.arraycopy(b, r, chunkcache, p * objectsize + keylength, payload);
+            r += payload;
+        }
+        final ReferenceContainer<ReferenceType> c = new ReferenceContainer<ReferenceType>(factory, termHash, new RowSet(rowdef, n, chunkcache, n));
+        c.lastTimeWrote = lastWrote;
+        c.setDocIds(dictionary, ids, positions);
+        return c;
+    }
+
+    /**
+     * the number of references in an exported container, without an import of the container
+     * @param b an exported container
+     * @param rowdef
+     * @return the number of references
+     */
+    public static int importCount(final byte[] b, final Row rowdef) {
+        if (!isCompressed(b)) return RowSet.importRowCount(b.length, rowdef);
+        return getVarint(b, new int[]{2});
+    }
+
+    /**
+     * the highest document id in an exported container, without an import of the container
+     * @param b an exported container
+     * @return the highest id or -1 if the container is not compressed or empty
+     */
+    public static int maxDocId(final byte[] b) {
+        if (!isCompressed(b) || b[1] != COMPRESSED_VERSION) return -1;
+        final int[] q = new int[]{2};
+        final int n = getVarint(b, q);
+        getVarint(b, q); // days of last write
+        int id = -1;
+        for (int j = 0; j < n; j++) id = (j == 0 ? 0 : id) + getVarint(b, q);
+        return id;
+    }
+
+    private void setDocIds(final DocIdDictionary dictionary, final int[] ids, final int[] positions) {
+        this.docidDictionary = dictionary;
+        this.docids = ids;
+        this.docidPositions = positions;
+        this.docidModCount = this.modCount;
+    }
+
+    /**
+     * @return true if the document ids of the references are known from the given dictionary
+     */
+    private boolean hasDocIds(final DocIdDictionary dictionary) {
+        return this.docids != null && dictionary != null && this.docidDictionary == dictionary && this.docidModCount == this.modCount;
+    }
+
+    private static int putVarint(final byte[] b, int p, int v) {
+        assert v >= 0 : "v = " + v;
+        while ((v & ~0x7F) != 0) {
+            b[p++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        b[p++] = (byte) v;
+        return p;
+    }
+
+    private static int getVarint(final byte[] b, final int[] p) {
+        int v = 0;
+        int shift = 0;
+        byte x;
+        do {
+            x = b[p[0]++];
+            v |= (x & 0x7F) << shift;
+            shift += 7;
+        } while (x < 0);
+        return v;
+    }
+
     public Iterator<ReferenceType> entries() {
         // returns an iterator of indexRWIEntry objects
         return new entryIterator();
@@ -343,7 +535,7 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
             if (singleContainer == null || singleContainer.isEmpty()) return null; // as this is a cunjunction of searches, we have no result if any word is not known
 
             // store result in order of result size
-            map.put(Long.valueOf(singleContainer.size() * 1000 + count), singleContainer);
+            map.put(Long.valueOf(singleContainer.size() * 1000L + count), singleContainer);
             count++;
         }
 
@@ -402,92 +594,430 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         if ((i1 == null) || (i2 == null)) return null;
         if (i1.isEmpty() || i2.isEmpty()) return null;
 
+        // containers that were read from compressed index files are joined by their document ids
+        if (i1.hasDocIds(i2.docidDictionary) && i2.hasDocIds(i1.docidDictionary)) return joinConstructiveByDocIds(factory, i1, i2, maxDistance);
+
         // decide which method to use
-        final int high = ((i1.size() > i2.size()) ? i1.size() : i2.size());
-        final int low  = ((i1.size() > i2.size()) ? i2.size() : i1.size());
-        final int stepsEnum = 10 * (high + low - 1);
-        final int stepsTest = 12 * log2(high) * low;
-
-        // start most efficient method
-        if (stepsEnum > stepsTest) {
-            if (i1.size() < i2.size()) return joinConstructiveByTest(factory, i1, i2, maxDistance);
-            return joinConstructiveByTest(factory, i2, i1, maxDistance);
+        final ReferenceContainer<ReferenceType> small = i1.size() <= i2.size() ? i1 : i2;
+        final ReferenceContainer<ReferenceType> large = small == i1 ? i2 : i1;
+        return joinConstructive(factory, i1, i2, maxDistance, joinMethod(small.size(), small.isSorted(), large.size(), large.isSorted()));
+    }
+
+    /**
+     * join two containers with a given join method
+     * @param factory
+     * @param i1
+     * @param i2
+     * @param maxDistance
+     * @param method the method that is used to find the common url hashes of the containers
+     * @return the joined references or null if one of the containers is empty
+     * @throws SpaceExceededException
+     */
+    public static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinConstructive(
+            final ReferenceFactory<ReferenceType> factory,
+            final ReferenceContainer<ReferenceType> i1,
+            final ReferenceContainer<ReferenceType> i2,
+            final int maxDistance,
+            final JoinMethod method) throws SpaceExceededException {
+        if ((i1 == null) || (i2 == null)) return null;
+        if (i1.isEmpty() || i2.isEmpty()) return null;
+        assert i1.rowdef.equals(i2.rowdef) : "i1 = " + i1.rowdef.toString() + "; i2 = " + i2.rowdef.toString();
+        final ReferenceContainer<ReferenceType> small = i1.size() <= i2.size() ? i1 : i2;
+        final ReferenceContainer<ReferenceType> large = small == i1 ? i2 : i1;
+        final int[] ps = new int[small.size()];
+        final int[] pl = new int[small.size()];
+        final int count = intersect(small, large, method, ps, pl);
+        final ReferenceContainer<ReferenceType> conj = new ReferenceContainer<ReferenceType>(factory, null, count); // start with empty search result
+        // references are only produced for the urls that appear in both containers
+        final Row.Entry view = large.rowdef.newView();
+        ReferenceType ie1;
+        for (int j = 0; j < count; j++) {
+            ie1 = factory.produceFast(factory.produceSlow(small.get(ps[j], false)), true);
+            ie1.join(factory.produceSlow(large.view(pl[j], view)));
+            if (ie1.distance() <= maxDistance) conj.add(ie1);
         }
-        return joinConstructiveByEnumeration(factory, i1, i2, maxDistance);
+        return conj;
+    }
+
+    /**
+     * the methods to find the common url hashes of two containers, used for joins and exclusions.
+     * joinConstructive and excludeDestructive choose the method with the lowest estimated number of steps, see joinMethod()
+     */
+    public enum JoinMethod {
+        /** merge of both sorted containers; best for containers of similar size */
+        ENUMERATION,
+        /** exponential search for the url hashes of the small container in the sorted large container; best if the sizes differ much */
+        GALLOP,
+        /** binary search for each url hash of the small container in the large container; the small container is not sorted */
+        TEST,
+        /** the url hashes of the small container are hashed and the large container is probed without sorting it */
+        HASH
+    }
+
+    /**
+     * choose the join method with the lowest estimated number of steps. Containers that are not sorted yet are sorted
+     * by all methods except HASH, so the steps for sorting are counted as well.
+     * @param low the size of the small container
+     * @param lowSorted true if the small container is sorted
+     * @param high the size of the large container
+     * @param highSorted true if the large container is sorted
+     * @return the cheapest join method
+     */
+    public static JoinMethod joinMethod(final int low, final boolean lowSorted, final int high, final boolean highSorted) {
+        assert low <= high : "low = " + low + ", high = " + high;
+        final long stepsSortLow = lowSorted ? 0 : 12L * low * log2(low);
+        final long stepsSortHigh = highSorted ? 0 : 12L * high * log2(high);
+        final long stepsEnum = 10L * (high + low - 1) + stepsSortLow + stepsSortHigh;
+        final long stepsGallop = 12L * low * (2 * log2(high / Math.max(1, low)) + 1) + stepsSortLow + stepsSortHigh;
+        final long stepsTest = 12L * log2(high) * low + stepsSortHigh;
+        final long stepsHash = 20L * low + 10L * high;
+        JoinMethod method = JoinMethod.ENUMERATION;
+        long steps = stepsEnum;
+        if (stepsGallop < steps) {method = JoinMethod.GALLOP; steps = stepsGallop;}
+        if (stepsTest < steps) {method = JoinMethod.TEST; steps = stepsTest;}
+        if (stepsHash < steps) {method = JoinMethod.HASH; steps = stepsHash;}
+        return method;
     }
 
-    private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinConstructiveByTest(
+    /**
+     * find the common url hashes of two containers
+     * @param small the smaller container
+     * @param large the larger container
+     * @param method the join method; all methods except HASH sort the containers if necessary
+     * @param ps the positions of the common url hashes in small, must have the size of small
+     * @param pl the positions of the common url hashes in large, must have the size of small
+     * @return the number of common url hashes
+     */
+    private static int intersect(final ReferenceContainer<?> small, final ReferenceContainer<?> large, final JoinMethod method, final int[] ps, final int[] pl) {
+        assert small.size() <= large.size();
+        final int ss = small.size();
+        final int sl = large.size();
+        final int os = small.rowdef.objectsize;
+        final int ol = large.rowdef.objectsize;
+        final boolean sameOrder = small.rowdef.getOrdering().signature().equals(large.rowdef.getOrdering().signature());
+        int count = 0;
+        switch (sameOrder ? method : JoinMethod.HASH) {
+        case ENUMERATION:
+            // merge both sorted containers; the keys are compared in place inside the row arrays
+            small.sort();
+            large.sort();
+            int p1 = 0;
+            int p2 = 0;
+            int c;
+            while (p1 < ss && p2 < sl) {
+                c = small.compare(p1, large, p2);
+                if (c < 0) {
+                    p1++;
+                } else if (c > 0) {
+                    p2++;
+                } else {
+                    // we have found the same urls in different searches!
+                    ps[count] = p1++;
+                    pl[count++] = p2++;
+                }
+            }
+            return count;
+        case GALLOP:
+            small.sort();
+            large.sort();
+            int p = 0;
+            for (int i = 0; i < ss; i++) {
+                p = gallop(large, p, small.chunkcache, i * os);
+                if (p == sl) break;
+                if (large.rowdef.compareKeys(large.chunkcache, p * ol, small.chunkcache, i * os) == 0) {
+                    ps[count] = i;
+                    pl[count++] = p++;
+                }
+            }
+            return count;
+        case TEST:
+            large.sort();
+            int q;
+            for (int i = 0; i < ss; i++) {
+                q = large.indexOf(small.chunkcache, i * os);
+                if (q < 0) continue;
+                ps[count] = i;
+                pl[count++] = q;
+            }
+            return count;
+        case HASH:
+            // an open addressing table of the positions in the small container, at most half filled
+            final int keylength = small.rowdef.primaryKeyLength;
+            final int[] table = new int[Integer.highestOneBit(Math.max(1, ss)) << 2];
+            final int mask = table.length - 1;
+            int h;
+            for (int i = 0; i < ss; i++) {
+                h = hashKey(small.chunkcache, i * os, keylength) & mask;
+                while (table[h] != 0) h = (h + 1) & mask;
+                table[h] = i + 1;
+            }
+            int e;
+            for (int j = 0; j < sl && count < ss; j++) {
+                h = hashKey(large.chunkcache, j * ol, keylength) & mask;
+                while ((e = table[h]) != 0) {
+                    if (sameKey(small.chunkcache, (e - 1) * os, large.chunkcache, j * ol, keylength)) {
+                        ps[count] = e - 1;
+                        pl[count++] = j;
+                        break;
+                    }
+                    h = (h + 1) & mask;
+                }
+            }
+            return count;
+        default:
+            throw new IllegalArgumentException("unknown join method " + method);
+        }
+    }
+
+    private static int hashKey(final byte[] b, final int offset, final int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) h = 31 * h + b[offset + i];
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean sameKey(final byte[] a, final int aoffset, final byte[] b, final int boffset, final int length) {
+        for (int i = 0; i < length; i++) if (a[aoffset + i] != b[boffset + i]) return false;
+        return true;
+    }
+
+    /**
+     * join two containers by their ascending document ids: the id lists are intersected with a galloping
+     * search in the larger list, so the join compares integers instead of url hashes. The result has the
+     * document ids of the joined references, so it can be joined with further containers in the same way.
+     */
+    private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinConstructiveByDocIds(
             final ReferenceFactory<ReferenceType> factory,
-            final ReferenceContainer<ReferenceType> small,
-            final ReferenceContainer<ReferenceType> large,
+            final ReferenceContainer<ReferenceType> i1,
+            final ReferenceContainer<ReferenceType> i2,
             final int maxDistance) throws SpaceExceededException {
-        //System.out.println("DEBUG: JOIN METHOD BY TEST, maxdistance = " + maxDistance);
-        assert small.rowdef.equals(large.rowdef) : "small = " + small.rowdef.toString() + "; large = " + large.rowdef.toString();
-        final int keylength = small.rowdef.width(0);
-        assert (keylength == large.rowdef.width(0));
+        final ReferenceContainer<ReferenceType> small = i1.size() <= i2.size() ? i1 : i2;
+        final ReferenceContainer<ReferenceType> large = small == i1 ? i2 : i1;
+        final int[] sids = small.docids;
+        final int[] lids = large.docids;
+        final int[] ids = new int[sids.length];
         final ReferenceContainer<ReferenceType> conj = new ReferenceContainer<ReferenceType>(factory, null, 0); // start with empty search result
-        final Iterator<ReferenceType> se = small.entries();
+        final Row.Entry view = small.rowdef.newView();
+        int count = 0;
+        int l = 0;
         ReferenceType ie1;
-        ReferenceType ie2;
-        while (se.hasNext()) {
-            ie1 = se.next();
-            ie2 = large.getReference(ie1.urlhash());
-            if ((ie1 != null) && (ie2 != null)) {
-                assert (ie1.urlhash().length == keylength) : "ie0.urlHash() = " + ASCII.String(ie1.urlhash());
-                assert (ie2.urlhash().length == keylength) : "ie1.urlHash() = " + ASCII.String(ie2.urlhash());
-                // this is a hit. Calculate word distance:
-
-                ie1 = factory.produceFast(ie2, true);
-                ie1.join(ie2);
-                if (ie1.distance() <= maxDistance) conj.add(ie1);
+        for (int s = 0; s < sids.length && l < lids.length; s++) {
+            final int id = sids[s];
+            if (lids[l] < id) {
+                // gallop to the first id in the large container that is not less than id
+                int step = 1;
+                int r = l;
+                while (r < lids.length && lids[r] < id) {
+                    l = r + 1;
+                    r += step;
+                    step <<= 1;
+                }
+                r = Math.min(r, lids.length);
+                while (l < r) {
+                    final int m = (l + r) >>> 1;
+                    if (lids[m] < id) l = m + 1; else r = m;
+                }
+                if (l == lids.length) break;
+            }
+            if (lids[l] != id) continue;
+            // this is a hit
+            ie1 = factory.produceFast(factory.produceSlow(i1.get(i1 == small ? small.docidPositions[s] : large.docidPositions[l], false)), true);
+            ie1.join(factory.produceSlow(i2.view(i2 == small ? small.docidPositions[s] : large.docidPositions[l], view)));
+            if (ie1.distance() <= maxDistance) {
+                conj.add(ie1);
+                ids[count++] = id;
             }
+            l++;
         }
+        final int[] positions = new int[count];
+        for (int j = 0; j < count; j++) positions[j] = j;
+        conj.setDocIds(small.docidDictionary, Arrays.copyOf(ids, count), positions);
         return conj;
     }
 
-    private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinConstructiveByEnumeration(
+    /**
+     * a url of a top-k join: the sum of the scores of its references and the joined reference
+     */
+    private static final class TopKCandidate<ReferenceType extends Reference> {
+        private final long score;
+        private final ReferenceType reference;
+        private TopKCandidate(final long score, final ReferenceType reference) {
+            this.score = score;
+            this.reference = reference;
+        }
+    }
+
+    /**
+     * join the containers of a conjunction and keep only the k urls with the highest sum of the scores of
+     * their references. The smallest container drives the join in blocks of ReferenceBlocks.BLOCKSIZE references;
+     * a block is skipped if the sum of the bounds of all containers for the url interval of the block cannot reach
+     * the k-th best score found so far, and a url of the conjunction is not scored in the other containers if its score
+     * in the smallest container plus the bounds of the other containers cannot reach it.
+     * Without bounds (blocks == null) all urls of the conjunction are scored.
+     * A url whose references are too distant is not a candidate, so it does not take the place of another url.
+     * @param factory
+     * @param includeContainers the containers of the conjunction
+     * @param blocks the block bounds of the include containers in the same order, already scored with score; or null
+     * @param excludeContainers containers of urls that are excluded from the result
+     * @param score the score of single references
+     * @param k the maximum number of joined references
+     * @param maxDistance
+     * @return the joined references of the best urls, in no particular order
+     * @throws SpaceExceededException
+     */
+    public static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinTopK(
             final ReferenceFactory<ReferenceType> factory,
-            final ReferenceContainer<ReferenceType> i1,
-            final ReferenceContainer<ReferenceType> i2,
+            final List<ReferenceContainer<ReferenceType>> includeContainers,
+            final List<ReferenceBlocks<ReferenceType>> blocks,
+            final Collection<ReferenceContainer<ReferenceType>> excludeContainers,
+            final ReferenceScore<ReferenceType> score,
+            final int k,
             final int maxDistance) throws SpaceExceededException {
-        //System.out.println("DEBUG: JOIN METHOD BY ENUMERATION, maxdistance = " + maxDistance);
-        assert i1.rowdef.equals(i2.rowdef) : "i1 = " + i1.rowdef.toString() + "; i2 = " + i2.rowdef.toString();
-        final int keylength = i1.rowdef.width(0);
-        assert (keylength == i2.rowdef.width(0));
-        final ReferenceContainer<ReferenceType> conj = new ReferenceContainer<ReferenceType>(factory, null, 0); // start with empty search result
-        if (!((i1.rowdef.getOrdering().signature().equals(i2.rowdef.getOrdering().signature())))) return conj; // ordering must be equal
-        final ByteOrder ordering = i1.rowdef.getOrdering();
-        final Iterator<ReferenceType> e1 = i1.entries();
-        final Iterator<ReferenceType> e2 = i2.entries();
-        int c;
-        if ((e1.hasNext()) && (e2.hasNext())) {
-            ReferenceType ie1;
-            ReferenceType ie2;
-            ie1 = e1.next();
-            ie2 = e2.next();
-
-            while (true) {
-                assert (ie1.urlhash().length == keylength) : "ie1.urlHash() = " + ASCII.String(ie1.urlhash());
-                assert (ie2.urlhash().length == keylength) : "ie2.urlHash() = " + ASCII.String(ie2.urlhash());
-                c = ordering.compare(ie1.urlhash(), ie2.urlhash());
-                //System.out.println("** '" + ie1.getUrlHash() + "'.compareTo('" + ie2.getUrlHash() + "')="+c);
-                if (c < 0) {
-                    if (e1.hasNext()) ie1 = e1.next(); else break;
-                } else if (c > 0) {
-                    if (e2.hasNext()) ie2 = e2.next(); else break;
-                } else {
-                    // we have found the same urls in different searches!
-                    ie1 = factory.produceFast(ie1, true);
-                    ie1.join(ie2);
-                    if (ie1.distance() <= maxDistance) conj.add(ie1);
-                    if (e1.hasNext()) ie1 = e1.next(); else break;
-                    if (e2.hasNext()) ie2 = e2.next(); else break;
+        return joinTopK(factory, includeContainers, blocks, excludeContainers, score, null, k, maxDistance);
+    }
+
+    /**
+     * join the best k urls of a conjunction like joinTopK(factory, includeContainers, blocks, excludeContainers, score, k, maxDistance),
+     * but the scores and bounds of the references of each include container are multiplied with a weight, see ReferenceScore.weight()
+     * @param weights the weights of the include containers in the same order, 256 is neutral; or null if all weights are neutral
+     */
+    public static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinTopK(
+            final ReferenceFactory<ReferenceType> factory,
+            final List<ReferenceContainer<ReferenceType>> includeContainers,
+            final List<ReferenceBlocks<ReferenceType>> blocks,
+            final Collection<ReferenceContainer<ReferenceType>> excludeContainers,
+            final ReferenceScore<ReferenceType> score,
+            final int[] weights,
+            final int k,
+            final int maxDistance) throws SpaceExceededException {
+        final int n = includeContainers == null ? 0 : includeContainers.size();
+        if (n == 0 || k <= 0) return ReferenceContainer.emptyContainer(factory, null, 0);
+        assert blocks == null || blocks.size() == n;
+        assert weights == null || weights.length == n;
+
+        // order the containers by their size; the smallest container drives the join
+        final Integer[] order = new Integer[n];
+        for (int t = 0; t < n; t++) {
+            final ReferenceContainer<ReferenceType> c = includeContainers.get(t);
+            if (c == null || c.isEmpty()) return ReferenceContainer.emptyContainer(factory, null, 0);
+            c.sort();
+            order[t] = t;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer t1, final Integer t2) {
+                return includeContainers.get(t1).size() - includeContainers.get(t2).size();
+            }
+        });
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final ReferenceContainer<ReferenceType>[] c = new ReferenceContainer[n];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final ReferenceBlocks<ReferenceType>[] b = new ReferenceBlocks[n];
+        final long[] w = new long[n];
+        for (int t = 0; t < n; t++) {
+            c[t] = includeContainers.get(order[t]);
+            b[t] = blocks == null ? null : blocks.get(order[t]);
+            w[t] = weights == null ? 256 : weights[order[t]];
+        }
+        final boolean bounded = blocks != null;
+
+        final ReferenceContainer<ReferenceType> driver = c[0];
+        final int objectsize = driver.rowdef.objectsize;
+        final int size = driver.size();
+        final byte[] chunks = driver.chunkcache;
+        final Row.Entry view = driver.rowdef.newView();
+        final PriorityQueue<TopKCandidate<ReferenceType>> top = new PriorityQueue<TopKCandidate<ReferenceType>>(Math.min(k, size) + 1, new Comparator<TopKCandidate<ReferenceType>>() {
+            @Override
+            public int compare(final TopKCandidate<ReferenceType> c1, final TopKCandidate<ReferenceType> c2) {
+                return Long.compare(c1.score, c2.score);
+            }
+        });
+        long threshold = Long.MIN_VALUE; // the lowest score in top if top is full
+        long bound, s, first;
+        final int[] positions = new int[n];
+        ReferenceType ie;
+        final int[] cursor = new int[n]; // the urls are looked up in ascending order, so each lookup starts at the last position
+        blockloop: for (int from = 0; from < size; from += ReferenceBlocks.BLOCKSIZE) {
+            final int to = Math.min(size, from + ReferenceBlocks.BLOCKSIZE);
+            if (bounded && top.size() >= k) {
+                // skip the whole block if no url of the block can enter the top-k
+                bound = 0;
+                for (int t = 0; t < n; t++) {
+                    s = b[t].bound(chunks, from * objectsize, chunks, (to - 1) * objectsize);
+                    if (s == Long.MIN_VALUE) continue blockloop; // no container t has references in this interval
+                    bound += s * w[t];
+                }
+                if (bound <= threshold) continue blockloop;
+            }
+            urlloop: for (int i = from; i < to; i++) {
+                final int offset = i * objectsize;
+                // look up the url in all other containers
+                positions[0] = i;
+                for (int t = 1; t < n; t++) {
+                    cursor[t] = gallop(c[t], cursor[t], chunks, offset);
+                    if (cursor[t] == c[t].size()) break blockloop; // no more urls in container t
+                    if (c[t].rowdef.compareKeys(c[t].chunkcache, cursor[t] * c[t].rowdef.objectsize, chunks, offset) != 0) continue urlloop;
+                    positions[t] = cursor[t];
+                }
+                first = score.score(factory.produceSlow(driver.view(i, view))) * w[0];
+                if (bounded && top.size() >= k) {
+                    // skip the url if it cannot enter the top-k even with the best scores in the other containers
+                    bound = first;
+                    for (int t = 1; t < n; t++) {
+                        s = b[t].bound(chunks, offset);
+                        if (s == Long.MIN_VALUE) continue urlloop; // container t cannot have the url
+                        bound += s * w[t];
+                    }
+                    if (bound <= threshold) continue urlloop;
+                }
+                if (excludeContainers != null) {
+                    for (final ReferenceContainer<ReferenceType> excl: excludeContainers) {
+                        if (excl != null && excl.indexOf(chunks, offset) >= 0) continue urlloop;
+                    }
                 }
+                s = first;
+                for (int t = 1; t < n; t++) s += score.score(factory.produceSlow(c[t].view(positions[t], view))) * w[t];
+                if (top.size() >= k && s <= threshold) continue urlloop;
+
+                // join the references of the url; a url with too distant references is not a candidate
+                ie = factory.produceFast(factory.produceSlow(c[0].get(positions[0], false)), true);
+                for (int t = 1; t < n; t++) ie.join(factory.produceSlow(c[t].get(positions[t], false)));
+                if (ie.distance() > maxDistance) continue urlloop;
+                if (top.size() >= k) top.poll();
+                top.add(new TopKCandidate<ReferenceType>(s, ie));
+                if (top.size() >= k) threshold = top.peek().score;
             }
         }
+
+        final ReferenceContainer<ReferenceType> conj = new ReferenceContainer<ReferenceType>(factory, null, top.size());
+        for (final TopKCandidate<ReferenceType> candidate: top) conj.add(candidate.reference);
         return conj;
     }
 
+    /**
+     * find the first position of a sorted container, starting at a given position, with a url hash that is not less than
+     * a given url hash; the distance to the start is doubled until the url hash is passed and then the position is
+     * searched binary, so looking up ascending url hashes costs less than independent binary searches
+     * @return the position, or the size of the container if all url hashes from the start are less than the given url hash
+     */
+    private static int gallop(final ReferenceContainer<?> c, final int start, final byte[] a, final int astart) {
+        final int size = c.size();
+        final int objectsize = c.rowdef.objectsize;
+        int l = start;
+        int step = 1;
+        int r = start;
+        while (r < size && c.rowdef.compareKeys(c.chunkcache, r * objectsize, a, astart) < 0) {
+            l = r + 1;
+            r += step;
+            step <<= 1;
+        }
+        r = Math.min(r, size);
+        while (l < r) {
+            final int m = (l + r) >>> 1;
+            if (c.rowdef.compareKeys(c.chunkcache, m * objectsize, a, astart) < 0) l = m + 1; else r = m;
+        }
+        return l;
+    }
+
     public static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> excludeDestructive(
             final ReferenceFactory<ReferenceType> factory,
             final ReferenceContainer<ReferenceType> pivot,
@@ -498,75 +1028,38 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         if (excl.isEmpty()) return pivot;
 
         // decide which method to use
-        final int high = ((pivot.size() > excl.size()) ? pivot.size() : excl.size());
-        final int low  = ((pivot.size() > excl.size()) ? excl.size() : pivot.size());
-        final int stepsEnum = 10 * (high + low - 1);
-        final int stepsTest = 12 * log2(high) * low;
-
-        // start most efficient method
-        if (stepsEnum > stepsTest) {
-            return excludeDestructiveByTest(pivot, excl);
-        }
-        return excludeDestructiveByEnumeration(factory, pivot, excl);
+        final ReferenceContainer<ReferenceType> small = pivot.size() <= excl.size() ? pivot : excl;
+        final ReferenceContainer<ReferenceType> large = small == pivot ? excl : pivot;
+        return excludeDestructive(factory, pivot, excl, joinMethod(small.size(), small.isSorted(), large.size(), large.isSorted()));
     }
 
-    private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> excludeDestructiveByTest(
+    /**
+     * remove all references from a container whose url hashes are in another container
+     * @param factory
+     * @param pivot the container that is modified
+     * @param excl the references to remove
+     * @param method the method that is used to find the common url hashes of the containers
+     * @return the pivot container, or null if it is empty
+     */
+    public static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> excludeDestructive(
+            final ReferenceFactory<ReferenceType> factory,
             final ReferenceContainer<ReferenceType> pivot,
-            final ReferenceContainer<ReferenceType> excl) {
-        assert pivot.rowdef.equals(excl.rowdef) : "small = " + pivot.rowdef.toString() + "; large = " + excl.rowdef.toString();
-        final int keylength = pivot.rowdef.width(0);
-        assert (keylength == excl.rowdef.width(0));
-        final boolean iterate_pivot = pivot.size() < excl.size();
-        final Iterator<ReferenceType> se = (iterate_pivot) ? pivot.entries() : excl.entries();
-        Reference ie0, ie1;
-            while (se.hasNext()) {
-                ie0 = se.next();
-                ie1 = excl.getReference(ie0.urlhash());
-                if ((ie0 != null) && (ie1 != null)) {
-                    assert (ie0.urlhash().length == keylength) : "ie0.urlHash() = " + ASCII.String(ie0.urlhash());
-                    assert (ie1.urlhash().length == keylength) : "ie1.urlHash() = " + ASCII.String(ie1.urlhash());
-                    if (iterate_pivot) se.remove(); pivot.delete(ie0.urlhash());
-                }
-            }
-        return pivot;
-    }
-
-    private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> excludeDestructiveByEnumeration(
-                            final ReferenceFactory<ReferenceType> factory,
-                            final ReferenceContainer<ReferenceType> pivot,
-                            final ReferenceContainer<ReferenceType> excl) {
-        assert pivot.rowdef.equals(excl.rowdef) : "i1 = " + pivot.rowdef.toString() + "; i2 = " + excl.rowdef.toString();
-        final int keylength = pivot.rowdef.width(0);
-        assert (keylength == excl.rowdef.width(0));
-        if (!((pivot.rowdef.getOrdering().signature().equals(excl.rowdef.getOrdering().signature())))) return pivot; // ordering must be equal
-        final Iterator<ReferenceType> e1 = pivot.entries();
-        final Iterator<ReferenceType> e2 = excl.entries();
-        int c;
-        if ((e1.hasNext()) && (e2.hasNext())) {
-            ReferenceType ie1;
-            ReferenceType ie2;
-            ie1 = e1.next();
-            ie2 = e2.next();
-
-            while (true) {
-                assert (ie1.urlhash().length == keylength) : "ie1.urlHash() = " + ASCII.String(ie1.urlhash());
-                assert (ie2.urlhash().length == keylength) : "ie2.urlHash() = " + ASCII.String(ie2.urlhash());
-                c = pivot.rowdef.getOrdering().compare(ie1.urlhash(), ie2.urlhash());
-                //System.out.println("** '" + ie1.getUrlHash() + "'.compareTo('" + ie2.getUrlHash() + "')="+c);
-                if (c < 0) {
-                    if (e1.hasNext()) ie1 = e1.next(); else break;
-                } else if (c > 0) {
-                    if (e2.hasNext()) ie2 = e2.next(); else break;
-                } else {
-                    // we have found the same urls in different searches!
-                    ie1 = factory.produceFast(ie1, true);
-                    ie1.join(ie2);
-                    e1.remove();
-                    if (e1.hasNext()) ie1 = e1.next(); else break;
-                    if (e2.hasNext()) ie2 = e2.next(); else break;
-                }
-            }
-        }
+            final ReferenceContainer<ReferenceType> excl,
+            final JoinMethod method) {
+        if (pivot == null) return null;
+        if (excl == null) return pivot;
+        if (pivot.isEmpty()) return null;
+        if (excl.isEmpty()) return pivot;
+        assert pivot.rowdef.equals(excl.rowdef) : "pivot = " + pivot.rowdef.toString() + "; excl = " + excl.rowdef.toString();
+        final boolean pivotIsSmall = pivot.size() <= excl.size();
+        final int n = Math.min(pivot.size(), excl.size());
+        final int[] ps = new int[n];
+        final int[] pl = new int[n];
+        final int count = pivotIsSmall ? intersect(pivot, excl, method, ps, pl) : intersect(excl, pivot, method, ps, pl);
+        final int[] remove = pivotIsSmall ? ps : pl;
+        // the positions are ascending for ENUMERATION and GALLOP only
+        Arrays.sort(remove, 0, count);
+        pivot.removeRows(remove, count);
         return pivot;
     }
 
@@ -28,6 +28,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.util.concurrent.RateLimiter;
 
 import net.yacy.cora.order.ByteOrder;
 import net.yacy.cora.order.CloneableIterator;
@@ -36,6 +42,8 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.blob.ArrayStack;
 import net.yacy.kelondro.blob.BLOB;
+import net.yacy.kelondro.blob.HeapModifier;
+import net.yacy.kelondro.blob.HeapReader;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.index.Row;
 import net.yacy.kelondro.index.RowSet;
@@ -47,6 +55,12 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
 
     private final ReferenceFactory<ReferenceType> factory;
     private final ArrayStack array;
+    private final Map<File, HeapReader> blocks; // the block bounds of the BLOB files, see ReferenceBlocks
+    private final Set<File> unbounded; // the BLOB files without block bounds
+    private final Map<File, HeapReader> impacts; // the impact lists of the BLOB files, see ReferenceImpact
+    private final Set<File> unimpacted; // the BLOB files without impact lists
+    private final DocIdDictionary docids; // the dictionary of the compressed containers, null if the containers are not compressed
+    private TermStatistics statistics; // the statistics of the terms in the files, may be null
 
     /**
      * open a index container array based on BLOB dumps. The content of the BLOBs will not be read
@@ -64,22 +78,82 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
     		final ReferenceFactory<ReferenceType> factory,
     		final ByteOrder termOrder,
     		final int termSize) throws IOException {
+        this(heapLocation, prefix, factory, termOrder, termSize, false);
+    }
+
+    /**
+     * open a reference container array
+     * @param offHeapIndex if true, the indexes of the container files are stored outside of the java heap
+     */
+    public ReferenceContainerArray(
+    		final File heapLocation,
+    		final String prefix,
+    		final ReferenceFactory<ReferenceType> factory,
+    		final ByteOrder termOrder,
+    		final int termSize,
+    		final boolean offHeapIndex) throws IOException {
+        this(heapLocation, prefix, factory, termOrder, termSize, offHeapIndex, null);
+    }
+
+    /**
+     * open a reference container array
+     * @param offHeapIndex if true, the indexes of the container files are stored outside of the java heap
+     * @param docids the document id dictionary that is used to compress the containers in the files, may be null
+     */
+    public ReferenceContainerArray(
+    		final File heapLocation,
+    		final String prefix,
+    		final ReferenceFactory<ReferenceType> factory,
+    		final ByteOrder termOrder,
+    		final int termSize,
+    		final boolean offHeapIndex,
+    		final DocIdDictionary docids) throws IOException {
+        this(heapLocation, null, prefix, factory, termOrder, termSize, offHeapIndex, docids);
+    }
+
+    /**
+     * open a reference container array with two tiers
+     * @param heapLocation the directory of the hot tier, where new files are written
+     * @param coldLocation the directory of the cold tier for large files that are rarely read, may be null
+     */
+    public ReferenceContainerArray(
+    		final File heapLocation,
+    		final File coldLocation,
+    		final String prefix,
+    		final ReferenceFactory<ReferenceType> factory,
+    		final ByteOrder termOrder,
+    		final int termSize,
+    		final boolean offHeapIndex,
+    		final DocIdDictionary docids) throws IOException {
         this.factory = factory;
+        this.docids = docids;
         this.array = new ArrayStack(
             heapLocation,
+            coldLocation,
             prefix,
             termOrder,
             termSize,
             0,
             true,
-            true);
+            true,
+            offHeapIndex);
+        this.array.setDocIds(docids);
+        if (docids != null && docids.damaged()) this.array.validateDocIds();
+        this.blocks = new ConcurrentHashMap<File, HeapReader>();
+        this.unbounded = ConcurrentHashMap.newKeySet();
+        this.impacts = new ConcurrentHashMap<File, HeapReader>();
+        this.unimpacted = ConcurrentHashMap.newKeySet();
     }
 
     public synchronized void close() {
+        closeBlocks(this.blocks.keySet().toArray(new File[0]), true);
+        closeBlocks(this.impacts.keySet().toArray(new File[0]), true);
         this.array.close(true);
     }
 
     public void clear() throws IOException {
+        closeBlocks(this.blocks.keySet().toArray(new File[0]), false);
+        closeBlocks(this.impacts.keySet().toArray(new File[0]), false);
     	this.array.clear();
     }
 
@@ -91,14 +165,76 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
         return this.array.ordering();
     }
 
+    /**
+     * @return the document id dictionary of the containers in the files, or null if the containers are not compressed
+     */
+    public DocIdDictionary docIds() {
+        return this.docids;
+    }
+
+    /**
+     * set the statistics catalog of the terms in the files; it is corrected when files are merged
+     * @param statistics the catalog, may be null
+     */
+    public void setTermStatistics(final TermStatistics statistics) {
+        this.statistics = statistics;
+        this.array.setTermStatistics(statistics);
+    }
+
+    /**
+     * write impact lists of the large containers when files are merged, see ReferenceImpact
+     * @param score the static score that selects the best references, may be null to write no impact lists
+     * @param size the number of references in an impact list
+     */
+    public void setImpactOrder(final ReferenceScore<ReferenceType> score, final int size) {
+        this.array.setImpactOrder(score, size);
+    }
+
+    /**
+     * @return the statistics catalog of the terms in the files, or null if there is none
+     */
+    public TermStatistics termStatistics() {
+        return this.statistics;
+    }
+
+    /**
+     * see TermStatistics.beginChange()
+     */
+    private void beginChange() {
+        final TermStatistics s = this.statistics;
+        if (s != null) s.beginChange();
+    }
+
+    private void endChange() {
+        final TermStatistics s = this.statistics;
+        if (s != null) s.endChange();
+    }
+
     public File newContainerBLOBFile() {
     	return this.array.newBLOB(new Date());
     }
 
+    /**
+     * generate the name of the file where files are merged in; the file is in the cold tier if all merged files are cold
+     */
+    private File newContainerBLOBFile(final File[] files) {
+        boolean cold = true;
+        for (final File f: files) cold = cold && this.array.isCold(f);
+        return this.array.newBLOB(new Date(), cold);
+    }
+
     public void mountBLOBFile(final File location) throws IOException {
         this.array.mountBLOB(location, false);
     }
 
+    /**
+     * switch memory mapped read access for all BLOB files of this array
+     * @param mapped
+     */
+    public void setMappedRead(final boolean mapped) {
+        this.array.setMappedRead(mapped);
+    }
+
     public Row rowdef() {
         return this.factory.getRow();
     }
@@ -308,13 +444,13 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
     	if (entries == null || !entries.hasNext()) return null;
     	final byte[] a = entries.next();
     	int k = 1;
-    	ReferenceContainer<ReferenceType> c = new ReferenceContainer<ReferenceType>(this.factory, termHash, RowSet.importRowSet(a, this.factory.getRow()));
+    	ReferenceContainer<ReferenceType> c = ReferenceContainer.importContainer(this.factory, termHash, a, this.docids);
     	if (System.currentTimeMillis() > timeout) {
     	    ConcurrentLog.warn("ReferenceContainerArray", "timout in get() (1): " + k + " tables searched. timeout = " + METHOD_MAXRUNTIME);
     	    return c;
     	}
     	while (entries.hasNext()) {
-    		c = c.merge(new ReferenceContainer<ReferenceType>(this.factory, termHash, RowSet.importRowSet(entries.next(), this.factory.getRow())));
+    		c = c.merge(ReferenceContainer.importContainer(this.factory, termHash, entries.next(), this.docids));
     		k++;
     		if (System.currentTimeMillis() > timeout) {
     		    ConcurrentLog.warn("ReferenceContainerArray", "timout in get() (2): " + k + " tables searched. timeout = " + METHOD_MAXRUNTIME);
@@ -324,7 +460,167 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
     	return c;
     }
 
+    /**
+     * get a indexContainer from a heap together with the block bounds of its parts.
+     * The bounds of large containers are read from the files that are written when the BLOB files are merged,
+     * the bounds of all other parts are computed from the part.
+     * @param termHash
+     * @param blocks the bounds of the parts of the container are added to this
+     * @return the indexContainer if one exist, null otherwise
+     * @throws IOException
+     * @throws SpaceExceededException
+     */
+    public ReferenceContainer<ReferenceType> get(final byte[] termHash, final ReferenceBlocks<ReferenceType> blocks) throws IOException, SpaceExceededException {
+        final long timeout = System.currentTimeMillis() + METHOD_MAXRUNTIME;
+        final Iterator<Map.Entry<File, byte[]>> entries = this.array.getAllLocated(termHash).iterator();
+        ReferenceContainer<ReferenceType> c = null;
+        int k = 0;
+        while (entries.hasNext()) {
+            final Map.Entry<File, byte[]> entry = entries.next();
+            final ReferenceContainer<ReferenceType> part = ReferenceContainer.importContainer(this.factory, termHash, entry.getValue(), this.docids);
+            final byte[] stored = storedBlocks(entry.getKey(), termHash);
+            if (stored == null) {
+                blocks.addContainer(part);
+            } else {
+                blocks.add(new ReferenceContainer<ReferenceType>(this.factory, termHash, RowSet.importRowSet(stored, this.factory.getRow())));
+            }
+            c = (c == null) ? part : c.merge(part);
+            k++;
+            if (System.currentTimeMillis() > timeout) {
+                ConcurrentLog.warn("ReferenceContainerArray", "timout in get() (3): " + k + " tables searched. timeout = " + METHOD_MAXRUNTIME);
+                return c;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * get the best references of a container for a query of a single term. The impact lists of the large containers
+     * in the BLOB files are read instead of the containers, all other containers are read completely.
+     * The caller must test with ReferenceImpact.holdsTopK() if the result contains the wanted number of best references.
+     * @param termHash
+     * @param score the score of the query
+     * @return the references that were read and the highest score of the bounds of the references that were not read,
+     *   or null if the term is not in the files
+     * @throws IOException
+     * @throws SpaceExceededException
+     */
+    public ReferenceImpact<ReferenceType> getImpact(final byte[] termHash, final ReferenceScore<ReferenceType> score) throws IOException, SpaceExceededException {
+        final List<File> locations = this.array.locate(termHash);
+        ReferenceContainer<ReferenceType> c = null;
+        long rest = Long.MIN_VALUE;
+        for (final File location: locations) {
+            final byte[] stored = stored(this.impacts, this.unimpacted, location, ArrayStack.impactFile(location), termHash, "impact lists", true);
+            final ReferenceContainer<ReferenceType> part;
+            if (stored == null) {
+                final byte[] b = this.array.get(location, termHash);
+                if (b == null) return null; // the file was merged in the meantime
+                part = ReferenceContainer.importContainer(this.factory, termHash, b, this.docids);
+            } else {
+                final ReferenceImpact<ReferenceType> impact = ReferenceImpact.importImpact(this.factory, termHash, stored, score);
+                part = impact.references();
+                rest = Math.max(rest, impact.rest());
+            }
+            c = (c == null) ? part : c.merge(part);
+        }
+        return c == null ? null : new ReferenceImpact<ReferenceType>(c, rest);
+    }
+
+    /**
+     * read the stored block bounds of a container in a BLOB file
+     * @return the exported bounds or null if the file has no bounds for the term
+     */
+    private byte[] storedBlocks(final File location, final byte[] termHash) {
+        return stored(this.blocks, this.unbounded, location, ArrayStack.blocksFile(location), termHash, "block bounds", false);
+    }
+
+    /**
+     * read a summary of a container from a heap beside a BLOB file
+     * @param readers the open heaps of the summaries
+     * @param missing the BLOB files without a heap of summaries
+     * @param location the BLOB file
+     * @param f the heap of the summaries beside the BLOB file
+     * @param what the name of the summaries for log messages
+     * @param modifiable true if summaries may be deleted from the heap
+     * @return the exported summary or null if the heap has no summary for the term
+     */
+    private byte[] stored(final Map<File, HeapReader> readers, final Set<File> missing, final File location, final File f, final byte[] termHash, final String what, final boolean modifiable) {
+        final HeapReader reader = summaries(readers, missing, location, f, what, modifiable);
+        if (reader == null) return null;
+        try {
+            return reader.get(termHash);
+        } catch (final IOException e) {
+            ConcurrentLog.warn("ReferenceContainerArray", "cannot read " + what + " of " + location.getName() + ": " + e.getMessage());
+        } catch (final SpaceExceededException e) {
+            ConcurrentLog.warn("ReferenceContainerArray", "cannot read " + what + " of " + location.getName() + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * open the heap of the summaries beside a BLOB file
+     * @return the heap or null if the BLOB file has no summaries
+     */
+    private HeapReader summaries(final Map<File, HeapReader> readers, final Set<File> missing, final File location, final File f, final String what, final boolean modifiable) {
+        if (missing.contains(location)) return null;
+        HeapReader reader = readers.get(location);
+        if (reader == null) {
+            synchronized (readers) {
+                reader = readers.get(location);
+                if (reader == null) {
+                    if (!f.exists()) {
+                        missing.add(location);
+                        return null;
+                    }
+                    try {
+                        reader = modifiable ?
+                                new HeapModifier(f, this.array.keylength(), this.array.ordering()) :
+                                new HeapReader(f, this.array.keylength(), this.array.ordering());
+                    } catch (final IOException e) {
+                        ConcurrentLog.warn("ReferenceContainerArray", "cannot open " + what + " " + f.getName() + ": " + e.getMessage());
+                        missing.add(location);
+                        return null;
+                    }
+                    readers.put(location, reader);
+                }
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * delete the impact lists of a term after references were removed from its containers, otherwise the
+     * removed references would be found again in the impact lists. The containers are then read completely.
+     * @param locations the BLOB files that held the term
+     */
+    private void dropImpacts(final List<File> locations, final byte[] termHash) {
+        for (final File location: locations) {
+            final HeapReader reader = summaries(this.impacts, this.unimpacted, location, ArrayStack.impactFile(location), "impact lists", true);
+            if (reader == null) continue;
+            try {
+                ((HeapModifier) reader).delete(termHash);
+            } catch (final IOException e) {
+                ConcurrentLog.warn("ReferenceContainerArray", "cannot delete the impact list of a term in " + location.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * close the block bounds and the impact lists of files that are unmounted
+     */
+    private void closeBlocks(final File[] locations, final boolean writeIDX) {
+        for (final File location: locations) {
+            this.unbounded.remove(location);
+            this.unimpacted.remove(location);
+            HeapReader reader = this.blocks.remove(location);
+            if (reader != null) reader.close(writeIDX);
+            reader = this.impacts.remove(location);
+            if (reader != null) reader.close(writeIDX);
+        }
+    }
+
     public int count(final byte[] termHash) throws IOException {
+        if (this.docids != null) return countCompressed(termHash);
         final long timeout = System.currentTimeMillis() + METHOD_MAXRUNTIME;
         final Iterator<Long> entries = this.array.lengthAll(termHash).iterator();
         if (entries == null || !entries.hasNext()) return 0;
@@ -349,6 +645,16 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
         return c;
     }
 
+    /**
+     * count the references of a term if the files may contain compressed containers. The number of references of
+     * a compressed container cannot be computed from its length, so the containers are read.
+     */
+    private int countCompressed(final byte[] termHash) throws IOException {
+        int c = 0;
+        for (final byte[] b: this.array.getAll(termHash)) c += ReferenceContainer.importCount(b, this.factory.getRow());
+        return c;
+    }
+
     /**
      * delete a indexContainer from the heap cache. This can only be used for write-enabled heaps
      * @param wordHash
@@ -361,13 +667,18 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
     }
 
     public int reduce(final byte[] termHash, final ContainerReducer<ReferenceType> reducer) throws IOException, SpaceExceededException {
-        return this.array.reduce(termHash, new BLOBReducer(termHash, reducer));
+        final List<File> locations = this.array.locate(termHash);
+        final BLOBReducer blobReducer = new BLOBReducer(termHash, reducer);
+        final int d = this.array.reduce(termHash, blobReducer);
+        if (blobReducer.changed) dropImpacts(locations, termHash);
+        return d;
     }
 
     public class BLOBReducer implements BLOB.Reducer {
 
         ContainerReducer<ReferenceType> rewriter;
         byte[] wordHash;
+        boolean changed; // true if the reducer changed any container
 
         public BLOBReducer(final byte[] wordHash, final ContainerReducer<ReferenceType> rewriter) {
             this.rewriter = rewriter;
@@ -377,9 +688,18 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
         @Override
         public byte[] rewrite(final byte[] b) throws SpaceExceededException {
             if (b == null) return null;
-            final ReferenceContainer<ReferenceType> c = this.rewriter.reduce(new ReferenceContainer<ReferenceType>(ReferenceContainerArray.this.factory, this.wordHash, RowSet.importRowSet(b, ReferenceContainerArray.this.factory.getRow())));
+            final ReferenceContainer<ReferenceType> container = ReferenceContainer.importContainer(ReferenceContainerArray.this.factory, this.wordHash, b, ReferenceContainerArray.this.docids);
+            final int size = container.size();
+            final ReferenceContainer<ReferenceType> c = this.rewriter.reduce(container);
             if (c == null) return null;
-            final byte bb[] = c.exportCollection();
+            if (c != container || c.size() != size) this.changed = true;
+            final byte bb[];
+            try {
+                bb = c.exportCollection(ReferenceContainerArray.this.docids);
+                if (ReferenceContainerArray.this.docids != null) ReferenceContainerArray.this.docids.flush();
+            } catch (final IOException e) {
+                throw new SpaceExceededException(b.length, "cannot store the document ids of the reduced container: " + e.getMessage(), e);
+            }
             assert bb.length <= b.length;
             return bb;
         }
@@ -391,6 +711,10 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
 
     }
     
+    public CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) throws IOException {
+        return this.array.keys(up, firstKey);
+    }
+
     public CloneableIterator<byte[]> keys(boolean up, boolean rotating) throws IOException {
         return this.array.keys(up, rotating);
     }
@@ -400,34 +724,96 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
     }
 
     public boolean shrinkBestSmallFiles(final IODispatcher merger, final long targetFileSize) {
+        beginChange(); // the merge job finishes the change when the merged file is mounted
         final File[] ff = this.array.unmountBestMatch(2.0f, targetFileSize);
-        if (ff == null) return false;
+        if (ff == null) {
+            endChange();
+            return false;
+        }
         ConcurrentLog.info("RICELL-shrink1", "unmountBestMatch(2.0, " + targetFileSize + ")");
-        merger.merge(ff[0], ff[1], this.factory, this.array, newContainerBLOBFile());
+        closeBlocks(ff, false);
+        merger.merge(ff, this.factory, this.array, newContainerBLOBFile(ff));
         return true;
     }
 
     public boolean shrinkAnySmallFiles(final IODispatcher merger, final long targetFileSize) {
-        final File[] ff = this.array.unmountSmallest(targetFileSize);
-        if (ff == null) return false;
-        ConcurrentLog.info("RICELL-shrink2", "unmountSmallest(" + targetFileSize + ")");
-        merger.merge(ff[0], ff[1], this.factory, this.array, newContainerBLOBFile());
+        // join up to mergeWidth files in one k-way merge
+        beginChange(); // the merge job finishes the change when the merged file is mounted
+        final File[] ff = this.array.unmountSmallest(merger.getMergeWidth(), targetFileSize);
+        if (ff == null) {
+            endChange();
+            return false;
+        }
+        ConcurrentLog.info("RICELL-shrink2", "unmountSmallest(" + merger.getMergeWidth() + ", " + targetFileSize + "), " + ff.length + " files");
+        closeBlocks(ff, false);
+        merger.merge(ff, this.factory, this.array, newContainerBLOBFile(ff));
         return true;
     }
 
     public boolean shrinkUpToMaxSizeFiles(final IODispatcher merger, final long maxFileSize) {
+        beginChange(); // the merge job finishes the change when the merged file is mounted
         final File[] ff = this.array.unmountBestMatch(2.0f, maxFileSize);
-        if (ff == null) return false;
+        if (ff == null) {
+            endChange();
+            return false;
+        }
         ConcurrentLog.info("RICELL-shrink3", "unmountBestMatch(2.0, " + maxFileSize + ")");
-        merger.merge(ff[0], ff[1], this.factory, this.array, newContainerBLOBFile());
+        closeBlocks(ff, false);
+        merger.merge(ff, this.factory, this.array, newContainerBLOBFile(ff));
         return true;
     }
 
     public boolean shrinkOldFiles(final IODispatcher merger) {
+        beginChange(); // the merge job finishes the change when the rewritten file is mounted
         final File ff = this.array.unmountOldest();
-        if (ff == null) return false;
+        if (ff == null) {
+            endChange();
+            return false;
+        }
         ConcurrentLog.info("RICELL-shrink4/rewrite", "unmountOldest()");
-        merger.merge(ff, null, this.factory, this.array, newContainerBLOBFile());
+        closeBlocks(new File[]{ff}, false);
+        merger.merge(new File[]{ff}, this.factory, this.array, newContainerBLOBFile(new File[]{ff}));
         return true;
     }
+
+    /**
+     * update the temperatures of the files and queue the move of one file to the other tier, if there is
+     * a file that is in the wrong tier, see ArrayStack.selectMigration()
+     * @param merger the dispatcher that runs the move
+     * @param minSize the minimum size of a file in the cold tier
+     * @param minAge the minimum age of a file in the cold tier in milliseconds
+     * @param maxHitsPerHour the maximum reads per hour of a file that is moved to the cold tier
+     * @return true if a move was queued
+     */
+    public boolean migrateFiles(final IODispatcher merger, final long minSize, final long minAge, final double maxHitsPerHour) {
+        this.array.updateTemperatures();
+        final File f = this.array.selectMigration(minSize, minAge, maxHitsPerHour);
+        if (f == null) return false;
+        merger.migrate(f, this);
+        return true;
+    }
+
+    /**
+     * move a file to the other tier; this is called by the migration job of the dispatcher
+     * @return the new location of the file or null if the file was not moved
+     */
+    protected File migrateBLOBFile(final File location, final RateLimiter budget) {
+        final File moved = this.array.migrate(location, budget);
+        if (moved != null) closeBlocks(new File[]{location}, false);
+        return moved;
+    }
+
+    /**
+     * give back a file that was selected for a move but cannot be moved now
+     */
+    protected void cancelMigration(final File location) {
+        this.array.cancelMigration(location);
+    }
+
+    /**
+     * @return the directory of the cold tier or null if the files are not tiered
+     */
+    public File coldLocation() {
+        return this.array.coldLocation();
+    }
 }
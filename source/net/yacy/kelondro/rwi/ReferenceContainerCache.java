@@ -55,6 +55,8 @@ import net.yacy.kelondro.util.FileUtils;
  * accessed during a search without using the metadata reference that shall be contained within
  * the <ReferenceType>. A ReferenceContainerCache has no active backup in a file, it must be flushed to
  * a file to save the content of the cache.
+ * The cache is partitioned by the term hashes into stripes; all changes of a stripe are made while the stripe is locked,
+ * so threads that add references of different terms are not blocked by each other, while reading is never blocked.
  *
  * @param <ReferenceType>
  */
@@ -65,9 +67,15 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
     private final int termSize;
     private final ByteOrder termOrder;
     private final ContainerOrder<ReferenceType> containerOrder;
-    private ConcurrentHashMap<ByteArray, ReferenceContainer<ReferenceType>> cache;
+    private volatile Stripe<ReferenceType>[] cache; // null if the cache is closed
+
+    /**
+     * a partition of the cache; the stripe object is the lock for all changes of the stripe
+     */
+    private static final class Stripe<ReferenceType extends Reference> {
+        private volatile ConcurrentHashMap<ByteArray, ReferenceContainer<ReferenceType>> map = new ConcurrentHashMap<ByteArray, ReferenceContainer<ReferenceType>>();
+    }
 
-    
     /**
      * open an existing heap file in undefined mode
      * after this a initialization should be made to use the heap:
@@ -77,12 +85,62 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
      * @param termSize the fixed size of search terms
      */
     public ReferenceContainerCache(final ReferenceFactory<ReferenceType> factory, final ByteOrder termOrder, final int termSize) {
+        this(factory, termOrder, termSize, 1);
+    }
+
+    /**
+     * @param factory the factory for payload reference objects
+     * @param termOrder the order on search terms for the cache
+     * @param termSize the fixed size of search terms
+     * @param stripes the number of stripes of the cache; rounded up to a power of 2
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ReferenceContainerCache(final ReferenceFactory<ReferenceType> factory, final ByteOrder termOrder, final int termSize, final int stripes) {
         super(factory);
         assert termOrder != null;
         this.termOrder = termOrder;
         this.termSize = termSize;
         this.containerOrder = new ContainerOrder<ReferenceType>(this.termOrder);
-        this.cache = new ConcurrentHashMap<ByteArray, ReferenceContainer<ReferenceType>>();
+        final int n = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.cache = new Stripe[n];
+        for (int i = 0; i < n; i++) this.cache[i] = new Stripe<ReferenceType>();
+    }
+
+    /**
+     * @return the stripe of a term
+     */
+    private Stripe<ReferenceType> stripe(final byte[] termHash) {
+        final Stripe<ReferenceType>[] c = this.cache;
+        if (c.length == 1) return c[0];
+        int h = 0;
+        for (int i = 0; i < this.termSize && i < termHash.length; i++) h = 31 * h + termHash[i];
+        return c[(h ^ (h >>> 16)) & (c.length - 1)];
+    }
+
+    /**
+     * @return the number of stripes of the cache
+     */
+    public int stripes() {
+        final Stripe<ReferenceType>[] c = this.cache;
+        return c == null ? 0 : c.length;
+    }
+
+    /**
+     * remove all containers from the cache and return them in a new cache, i.e. to dump them to a file.
+     * The stripes are exchanged one after another, so a thread that adds references waits at most
+     * for the exchange of one stripe, and no reference that is added concurrently is lost.
+     * @return a cache with all containers that were in this cache
+     */
+    public ReferenceContainerCache<ReferenceType> drain() {
+        final Stripe<ReferenceType>[] c = this.cache;
+        final ReferenceContainerCache<ReferenceType> drained = new ReferenceContainerCache<ReferenceType>(this.factory, this.termOrder, this.termSize, c.length);
+        for (int i = 0; i < c.length; i++) {
+            synchronized (c[i]) {
+                drained.cache[i].map = c[i].map;
+                c[i].map = new ConcurrentHashMap<ByteArray, ReferenceContainer<ReferenceType>>();
+            }
+        }
+        return drained;
     }
 
     public Row rowdef() {
@@ -101,16 +159,21 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
 
     @Override
     public void clear() {
-        if (this.cache != null) this.cache.clear();
+        final Stripe<ReferenceType>[] c = this.cache;
+        if (c != null) for (final Stripe<ReferenceType> stripe: c) synchronized (stripe) {
+            stripe.map.clear();
+        }
     }
 
     @Override
     public synchronized void close() {
     	this.cache = null;
     }
-    
+
     public Iterator<ByteArray> keys() {
-        return this.cache.keySet().iterator();
+        final List<ByteArray> keys = new ArrayList<ByteArray>(size());
+        for (final Stripe<ReferenceType> stripe: this.cache) keys.addAll(stripe.map.keySet());
+        return keys.iterator();
     }
 
     /**
@@ -123,9 +186,20 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
      * @param destructive - if true then the cache is cleaned during the dump causing to free memory
      */
     public void dump(final File heapFile, final int writeBuffer, final boolean destructive) {
+        dump(heapFile, writeBuffer, destructive, null);
+    }
+
+    /**
+     * dump the cache to a local index file with compressed containers
+     * @param heapFile
+     * @param writeBuffer
+     * @param destructive - if true then the cache is cleaned during the dump causing to free memory
+     * @param docids the document id dictionary of the index segment, may be null to write the containers uncompressed
+     */
+    public void dump(final File heapFile, final int writeBuffer, final boolean destructive, final DocIdDictionary docids) {
         assert this.cache != null;
         if (this.cache == null) return;
-        log.info("creating rwi heap dump '" + heapFile.getName() + "', " + this.cache.size() + " rwi's");
+        log.info("creating rwi heap dump '" + heapFile.getName() + "', " + size() + " rwi's");
         if (heapFile.exists()) FileUtils.deletedelete(heapFile);
         final File tmpFile = new File(heapFile.getParentFile(), heapFile.getName() + ".prt");
         HeapWriter dump;
@@ -157,7 +231,7 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
             if (container != null && term.length == this.termSize) {
                 //System.out.println("Dump: " + wordHash);
                 try {
-                    dump.add(term, container.exportCollection());
+                    dump.add(term, container.exportCollection(docids));
                 } catch (final IOException e) {
                     ConcurrentLog.logException(e);
                 } catch (final SpaceExceededException e) {
@@ -169,6 +243,7 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
             wordcount++;
         }
         try {
+            if (docids != null) docids.flush(); // the ids must be stored before the dump that uses them
             dump.close(true);
             log.info("finished rwi heap dump: " + wordcount + " terms, " + urlcount + " term/data relations in " + (System.currentTimeMillis() - startTime) + " milliseconds");
         } catch (final IOException e) {
@@ -183,9 +258,9 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
      * @return the sorted ReferenceContainer[]
      */
     private List<ReferenceContainer<ReferenceType>> sortedClone() {
-        final List<ReferenceContainer<ReferenceType>> cachecopy = new ArrayList<ReferenceContainer<ReferenceType>>(this.cache.size());
-        synchronized (this.cache) {
-            for (final Map.Entry<ByteArray, ReferenceContainer<ReferenceType>> entry: this.cache.entrySet()) {
+        final List<ReferenceContainer<ReferenceType>> cachecopy = new ArrayList<ReferenceContainer<ReferenceType>>(size());
+        for (final Stripe<ReferenceType> stripe: this.cache) synchronized (stripe) {
+            for (final Map.Entry<ByteArray, ReferenceContainer<ReferenceType>> entry: stripe.map.entrySet()) {
                 if (entry.getValue() != null && entry.getValue().getTermHash() != null) cachecopy.add(entry.getValue());
             }
         }
@@ -194,9 +269,9 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
     }
 
     private List<Rating<ByteArray>> ratingList() {
-        final List<Rating<ByteArray>> list = new ArrayList<Rating<ByteArray>>(this.cache.size());
-        synchronized (this.cache) {
-            for (final Map.Entry<ByteArray, ReferenceContainer<ReferenceType>> entry: this.cache.entrySet()) {
+        final List<Rating<ByteArray>> list = new ArrayList<Rating<ByteArray>>(size());
+        for (final Stripe<ReferenceType> stripe: this.cache) synchronized (stripe) {
+            for (final Map.Entry<ByteArray, ReferenceContainer<ReferenceType>> entry: stripe.map.entrySet()) {
                 if (entry.getValue() != null && entry.getValue().getTermHash() != null) list.add(new Rating<ByteArray>(entry.getKey(), entry.getValue().size()));
             }
         }
@@ -205,29 +280,40 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
 
     @Override
     public int size() {
-        return (this.cache == null) ? 0 : this.cache.size();
+        final Stripe<ReferenceType>[] c = this.cache;
+        if (c == null) return 0;
+        int size = 0;
+        for (final Stripe<ReferenceType> stripe: c) size += stripe.map.size();
+        return size;
     }
-    
+
     public long usedMemory() {
-        if (this.cache == null) return 0;
+        final Stripe<ReferenceType>[] c = this.cache;
+        if (c == null) return 0;
         long b = 0L;
-        for (Map.Entry<ByteArray, ReferenceContainer<ReferenceType>> e: this.cache.entrySet()) {
-            b += e.getKey().usedMemory();
-            b += e.getValue().mem();
+        for (final Stripe<ReferenceType> stripe: c) {
+            for (Map.Entry<ByteArray, ReferenceContainer<ReferenceType>> e: stripe.map.entrySet()) {
+                b += e.getKey().usedMemory();
+                b += e.getValue().mem();
+            }
         }
         return b;
     }
 
     public boolean isEmpty() {
-        if (this.cache == null) return true;
-        return this.cache.isEmpty();
+        final Stripe<ReferenceType>[] c = this.cache;
+        if (c == null) return true;
+        for (final Stripe<ReferenceType> stripe: c) if (!stripe.map.isEmpty()) return false;
+        return true;
     }
 
     public int maxReferences() {
         // iterate to find the max score
         int max = 0;
-        for (final ReferenceContainer<ReferenceType> container : this.cache.values()) {
-            if (container.size() > max) max = container.size();
+        for (final Stripe<ReferenceType> stripe: this.cache) {
+            for (final ReferenceContainer<ReferenceType> container : stripe.map.values()) {
+                if (container.size() > max) max = container.size();
+            }
         }
         return max;
     }
@@ -329,7 +415,7 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         @Override
         public void remove() {
             System.arraycopy(this.cachecopy, this.p, this.cachecopy, this.p - 1, this.cachecopy.size() - this.p);
-            ReferenceContainerCache.this.cache.remove(new ByteArray(this.latestTermHash));
+            ReferenceContainerCache.this.delete(this.latestTermHash);
         }
 
         @Override
@@ -414,7 +500,7 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         @Override
         public void remove() {
             System.arraycopy(this.cachecounts, this.p, this.cachecounts, this.p - 1, this.cachecounts.size() - this.p);
-            ReferenceContainerCache.this.cache.remove(new ByteArray(this.latestTermHash));
+            ReferenceContainerCache.this.delete(this.latestTermHash);
         }
 
         @Override
@@ -435,7 +521,7 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
      */
     @Override
     public boolean has(final byte[] key) {
-        return this.cache.containsKey(new ByteArray(key));
+        return stripe(key).map.containsKey(new ByteArray(key));
     }
 
     /**
@@ -447,7 +533,7 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
     @Override
     public ReferenceContainer<ReferenceType> get(final byte[] key, final HandleSet urlselection) {
         if (this.cache == null) return null;
-        final ReferenceContainer<ReferenceType> c = this.cache.get(new ByteArray(key));
+        final ReferenceContainer<ReferenceType> c = stripe(key).map.get(new ByteArray(key));
         if (urlselection == null) return c;
         if (c == null) return null;
         // because this is all in RAM, we must clone the entries (flat)
@@ -475,7 +561,7 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
      */
     @Override
     public int count(final byte[] key) {
-        final ReferenceContainer<ReferenceType> c = this.cache.get(new ByteArray(key));
+        final ReferenceContainer<ReferenceType> c = stripe(key).map.get(new ByteArray(key));
         if (c == null) return 0;
         return c.size();
     }
@@ -490,7 +576,10 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         // returns the index that had been deleted
         assert this.cache != null;
         if (this.cache == null) return null;
-        return this.cache.remove(new ByteArray(termHash));
+        final Stripe<ReferenceType> stripe = stripe(termHash);
+        synchronized (stripe) {
+            return stripe.map.remove(new ByteArray(termHash));
+        }
     }
 
     @Override
@@ -498,7 +587,10 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         // returns the index that had been deleted
         assert this.cache != null;
         if (this.cache == null) return;
-        this.cache.remove(new ByteArray(termHash));
+        final Stripe<ReferenceType> stripe = stripe(termHash);
+        synchronized (stripe) {
+            stripe.map.remove(new ByteArray(termHash));
+        }
     }
 
     @Override
@@ -511,14 +603,13 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         assert this.cache != null;
         if (this.cache == null) return false;
         final ByteArray tha = new ByteArray(termHash);
-        synchronized (this.cache) {
-	        final ReferenceContainer<ReferenceType> c = this.cache.get(tha);
+        final Stripe<ReferenceType> stripe = stripe(termHash);
+        synchronized (stripe) {
+	        final ReferenceContainer<ReferenceType> c = stripe.map.get(tha);
 	        if (c != null && c.delete(urlHashBytes)) {
 	            // removal successful
 	            if (c.isEmpty()) {
-	                delete(termHash);
-	            } else {
-	                this.cache.put(tha, c);
+	                stripe.map.remove(tha);
 	            }
 	            return true;
 	        }
@@ -533,14 +624,13 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         if (urlHashes.isEmpty()) return 0;
         final ByteArray tha = new ByteArray(termHash);
         int count;
-        synchronized (this.cache) {
-            final ReferenceContainer<ReferenceType> c = this.cache.get(tha);
+        final Stripe<ReferenceType> stripe = stripe(termHash);
+        synchronized (stripe) {
+            final ReferenceContainer<ReferenceType> c = stripe.map.get(tha);
             if ((c != null) && ((count = c.removeEntries(urlHashes)) > 0)) {
                 // removal successful
                 if (c.isEmpty()) {
-                    delete(termHash);
-                } else {
-                    this.cache.put(tha, c);
+                    stripe.map.remove(tha);
                 }
                 return count;
             }
@@ -559,8 +649,9 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         // put new words into cache
         final ByteArray tha = new ByteArray(container.getTermHash());
         int added = 0;
-        synchronized (this.cache) {
-            ReferenceContainer<ReferenceType> entries = this.cache.get(tha); // null pointer exception? wordhash != null! must be cache==null
+        final Stripe<ReferenceType> stripe = stripe(container.getTermHash());
+        synchronized (stripe) {
+            ReferenceContainer<ReferenceType> entries = stripe.map.get(tha); // null pointer exception? wordhash != null! must be cache==null
             if (entries == null) {
                 entries = container.topLevelClone();
                 added = entries.size();
@@ -568,7 +659,7 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
                 added = entries.putAllRecent(container);
             }
             if (added > 0) {
-                this.cache.put(tha, entries);
+                stripe.map.put(tha, entries);
             }
             entries = null;
             return;
@@ -581,29 +672,17 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         if (this.cache == null) return;
         final ByteArray tha = new ByteArray(termHash);
 
-        // first access the cache without synchronization
-        ReferenceContainer<ReferenceType> container = this.cache.remove(tha);
-        if (container == null) container = new ReferenceContainer<ReferenceType>(this.factory, termHash, 1);
-        container.put(newEntry);
-
-        // synchronization: check if the entry is still empty and set new value
-        final ReferenceContainer<ReferenceType> container0 = this.cache.put(tha, container);
-        if (container0 != null) synchronized (this.cache) {
-            // no luck here, we get a lock exclusively to sort this out
-            final ReferenceContainer<ReferenceType> containerNew = this.cache.put(tha, container0);
-            if (containerNew == null) return;
-            if (container0 == containerNew) {
-                // The containers are the same, so nothing needs to be done
-                return;
-            }
-            // Now merge the smaller container into the lager.
-            // The other way around can become very slow
-            if (container0.size() >= containerNew.size()) {
-                container0.putAllRecent(containerNew);
-       	        this.cache.put(tha, container0);
+        // only the stripe of the term is locked; the container must be changed inside the lock,
+        // otherwise the reference could be added to a container that is already handed over to a dump
+        final Stripe<ReferenceType> stripe = stripe(termHash);
+        synchronized (stripe) {
+            ReferenceContainer<ReferenceType> container = stripe.map.get(tha);
+            if (container == null) {
+                container = new ReferenceContainer<ReferenceType>(this.factory, termHash, 1);
+                container.put(newEntry);
+                stripe.map.put(tha, container);
             } else {
-                containerNew.putAllRecent(container0);
-                this.cache.put(tha, containerNew);
+                container.put(newEntry);
             }
         }
     }
@@ -637,10 +716,12 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
      */
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder(cache.size() * 13 + 2);
+        StringBuilder sb = new StringBuilder(size() * 13 + 2);
         sb.append('[');
-        for (ByteArray k: cache.keySet()) {
-            sb.append(ASCII.String(k.asBytes())).append(',');
+        for (final Stripe<ReferenceType> stripe: this.cache) {
+            for (ByteArray k: stripe.map.keySet()) {
+                sb.append(ASCII.String(k.asBytes())).append(',');
+            }
         }
         if (sb.length() == 1) sb.append(']'); else sb.setCharAt(sb.length() - 1, ']');
         return sb.toString();
@@ -35,5 +35,16 @@ public interface ReferenceFactory<ReferenceType extends Reference> {
     public ReferenceType produceSlow(Row.Entry e);
     
     public ReferenceType produceFast(ReferenceType e, final boolean local);
-    
+
+    /**
+     * produce a reference that bounds the rank features of a block of references:
+     * each feature of the bound is at least as good as the feature of any reference in the block.
+     * The bound has the url hash of the last reference in the block.
+     * @param container a sorted container
+     * @param from the position of the first reference of the block
+     * @param to the position after the last reference of the block
+     * @return the bound or null if references of this kind have no rank features
+     */
+    public ReferenceType produceBound(ReferenceContainer<ReferenceType> container, int from, int to);
+
 }
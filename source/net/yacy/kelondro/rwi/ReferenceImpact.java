@@ -0,0 +1,170 @@
+// ReferenceImpact.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+
+package net.yacy.kelondro.rwi;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.RowSet;
+
+/**
+ * The best references of a term according to a static score, which are read instead of the whole container
+ * if a query for a single term only needs the best urls. The containers in the index files must stay sorted by
+ * the url hashes for joins and merges, so the best references of large containers are written as an impact list
+ * into a heap beside the merged file, like the block bounds (see ReferenceBlocks). An impact list holds the
+ * references with the highest scores and a bound reference (see ReferenceFactory.produceBound) of all other
+ * references of the container.
+ * A container that is read from the impact lists is only complete for the best urls if the lowest score of
+ * the wanted number of best references is not lower than the scores of the bounds of the references that were not read;
+ * this is tested with the score of the query, so a different ranking than the one of the impact lists is never wrong,
+ * it only makes the test fail more often.
+ */
+public class ReferenceImpact<ReferenceType extends Reference> {
+
+    /**
+     * impact lists are only written for containers with at least MINFACTOR times as many references as the impact list holds
+     */
+    public static final int MINFACTOR = 4;
+
+    private final ReferenceContainer<ReferenceType> references;
+    private final long rest;
+
+    /**
+     * @param references the references that were read
+     * @param rest the score of the bound of the references that were not read, Long.MIN_VALUE if all references were read
+     */
+    public ReferenceImpact(final ReferenceContainer<ReferenceType> references, final long rest) {
+        this.references = references;
+        this.rest = rest;
+    }
+
+    /**
+     * @return the references that were read, sorted by the url hashes
+     */
+    public ReferenceContainer<ReferenceType> references() {
+        return this.references;
+    }
+
+    /**
+     * @return the score of the bound of the references that were not read, Long.MIN_VALUE if all references were read
+     */
+    public long rest() {
+        return this.rest;
+    }
+
+    /**
+     * test if the references that were read contain the best k references of the term
+     * @param score the score of the query
+     * @param k the number of wanted references
+     * @return true if no reference that was not read can have a higher score than the k-th best reference that was read
+     */
+    public boolean holdsTopK(final ReferenceScore<ReferenceType> score, final int k) {
+        if (this.rest == Long.MIN_VALUE) return true;
+        final int size = this.references.size();
+        if (size < k) return false;
+        final long[] scores = new long[size];
+        final Row.Entry view = this.references.factory.getRow().newView();
+        for (int i = 0; i < size; i++) scores[i] = score.score(this.references.factory.produceSlow(this.references.view(i, view)));
+        Arrays.sort(scores);
+        return scores[size - k] >= this.rest;
+    }
+
+    /**
+     * compute the impact list of a container
+     * @param factory
+     * @param container the container
+     * @param score the static score that orders the references
+     * @param size the number of the best references in the impact list
+     * @return the exported impact list, or null if the container is too small or the references have no bounds
+     * @throws SpaceExceededException
+     */
+    public static <ReferenceType extends Reference> byte[] summarize(
+            final ReferenceFactory<ReferenceType> factory,
+            final ReferenceContainer<ReferenceType> container,
+            final ReferenceScore<ReferenceType> score,
+            final int size) throws SpaceExceededException {
+        final int n = container.size();
+        if (size <= 0 || n < MINFACTOR * size) return null;
+
+        // select the positions of the best references
+        final long[] scores = new long[n];
+        final Row.Entry view = factory.getRow().newView();
+        final PriorityQueue<Integer> top = new PriorityQueue<Integer>(size + 1, (p1, p2) -> Long.compare(scores[p1], scores[p2]));
+        for (int p = 0; p < n; p++) {
+            scores[p] = score.score(factory.produceSlow(container.view(p, view)));
+            if (top.size() < size) {
+                top.add(p);
+            } else if (scores[p] > scores[top.peek()]) {
+                top.poll();
+                top.add(p);
+            }
+        }
+        final boolean[] best = new boolean[n];
+        for (final Integer p: top) best[p] = true;
+
+        // split the container into the best references and the rest
+        final ReferenceContainer<ReferenceType> prefix = new ReferenceContainer<ReferenceType>(factory, container.getTermHash(), size);
+        final ReferenceContainer<ReferenceType> rest = new ReferenceContainer<ReferenceType>(factory, container.getTermHash(), n - size);
+        for (int p = 0; p < n; p++) (best[p] ? prefix : rest).addUnique(container.get(p, true));
+        final ReferenceType bound = factory.produceBound(rest, 0, rest.size());
+        if (bound == null) return null;
+        final ReferenceContainer<ReferenceType> bounds = new ReferenceContainer<ReferenceType>(factory, container.getTermHash(), 1);
+        bounds.add(bound);
+
+        // the impact list is the exported bound followed by the exported best references
+        final byte[] b = bounds.exportCollection();
+        final byte[] r = prefix.exportCollection();
+        final byte[] impact = new byte[4 + b.length + r.length];
+        impact[0] = (byte) (b.length >>> 24);
+        impact[1] = (byte) (b.length >>> 16);
+        impact[2] = (byte) (b.length >>> 8);
+        impact[3] = (byte) b.length;
+        System.arraycopy(b, 0, impact, 4, b.length);
+        System.arraycopy(r, 0, impact, 4 + b.length, r.length);
+        return impact;
+    }
+
+    /**
+     * import an impact list that was computed with summarize()
+     * @param factory
+     * @param termHash
+     * @param impact the exported impact list
+     * @param score the score of the query
+     * @return the best references of the impact list and the score of the bound of all other references of the container
+     * @throws SpaceExceededException
+     */
+    public static <ReferenceType extends Reference> ReferenceImpact<ReferenceType> importImpact(
+            final ReferenceFactory<ReferenceType> factory,
+            final byte[] termHash,
+            final byte[] impact,
+            final ReferenceScore<ReferenceType> score) throws SpaceExceededException {
+        final int l = ((impact[0] & 0xff) << 24) | ((impact[1] & 0xff) << 16) | ((impact[2] & 0xff) << 8) | (impact[3] & 0xff);
+        final RowSet bounds = RowSet.importRowSet(Arrays.copyOfRange(impact, 4, 4 + l), factory.getRow());
+        final RowSet references = RowSet.importRowSet(Arrays.copyOfRange(impact, 4 + l, impact.length), factory.getRow());
+        final long rest = bounds.isEmpty() ? Long.MIN_VALUE : score.bound(factory.produceSlow(bounds.get(0, false)));
+        return new ReferenceImpact<ReferenceType>(new ReferenceContainer<ReferenceType>(factory, termHash, references), rest);
+    }
+
+}
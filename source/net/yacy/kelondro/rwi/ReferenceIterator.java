@@ -36,7 +36,6 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.LookAheadIterator;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.blob.HeapReader;
-import net.yacy.kelondro.index.RowSet;
 
 /**
  * iterator of BLOBHeap files: is used to import heap dumps into a write-enabled index heap
@@ -45,11 +44,20 @@ public class ReferenceIterator <ReferenceType extends Reference> extends LookAhe
     private HeapReader.entries blobs;
     private File blobFile;
     private ReferenceFactory<ReferenceType> factory;
+    private DocIdDictionary docids;
 
     public ReferenceIterator(final File blobFile, final ReferenceFactory<ReferenceType> factory) throws IOException {
+        this(blobFile, factory, null);
+    }
+
+    /**
+     * @param docids the document id dictionary of compressed containers in the file, may be null if the file has no compressed containers
+     */
+    public ReferenceIterator(final File blobFile, final ReferenceFactory<ReferenceType> factory, final DocIdDictionary docids) throws IOException {
         this.blobs = new HeapReader.entries(blobFile, factory.getRow().primaryKeyLength);
         this.blobFile = blobFile;
         this.factory = factory;
+        this.docids = docids;
     }
 
     /**
@@ -59,18 +67,12 @@ public class ReferenceIterator <ReferenceType extends Reference> extends LookAhe
     @Override
     public ReferenceContainer<ReferenceType> next0() {
         if (this.blobs == null) return null;
-        RowSet row;
         Map.Entry<byte[], byte[]> entry;
         while (this.blobs.hasNext()) {
             entry = this.blobs.next();
             if (entry == null) break;
             try {
-                row = RowSet.importRowSet(entry.getValue(), this.factory.getRow());
-                if (row == null) {
-                    ConcurrentLog.severe("ReferenceIterator", "lost entry '" + UTF8.String(entry.getKey()) + "' because importRowSet returned null");
-                    continue; // thats a fail but not as REALLY bad if the whole method would crash here
-                }
-                return new ReferenceContainer<ReferenceType>(this.factory, entry.getKey(), row);
+                return ReferenceContainer.importContainer(this.factory, entry.getKey(), entry.getValue(), this.docids);
             } catch (final SpaceExceededException e) {
                 ConcurrentLog.severe("ReferenceIterator", "lost entry '" + UTF8.String(entry.getKey()) + "' because of too low memory: " + e.toString());
                 continue;
@@ -94,7 +96,7 @@ public class ReferenceIterator <ReferenceType extends Reference> extends LookAhe
         if (this.blobs != null) this.blobs.close();
         this.blobs = null;
         try {
-            return new ReferenceIterator<ReferenceType>(this.blobFile, this.factory);
+            return new ReferenceIterator<ReferenceType>(this.blobFile, this.factory, this.docids);
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
             return null;
@@ -0,0 +1,57 @@
+// ReferenceScore.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+/**
+ * An absolute score of single references that is used to select the best references of a join
+ * before they are ranked. In contrast to the ranking of a search result, the score of a reference
+ * must not depend on the other references, so it can be bounded for a block of references in advance.
+ */
+public interface ReferenceScore<ReferenceType extends Reference> {
+
+    /**
+     * @param r a reference of a container
+     * @return the score of the reference: the higher the number, the better is the reference
+     */
+    public long score(ReferenceType r);
+
+    /**
+     * @param bound a reference that was produced with ReferenceFactory.produceBound()
+     * @return a number that is not less than the score of any of the references that are bounded
+     */
+    public long bound(ReferenceType bound);
+
+    /**
+     * the weight of the scores of the references of a term in a conjunction, so rare terms can count more than frequent terms
+     * @param statistics the statistics of the term, or null if they are not known
+     * @return the weight as a fixed-point number with 8 fractional bits: 256 does not change the scores
+     */
+    public int weight(TermStatistics.Entry statistics);
+
+    /**
+     * the identification of the order of this score, which is stored with an index that writes impact lists (see ReferenceImpact);
+     * the impact lists are only read for queries with a score of the same order
+     * @return the order of the score, or null if the best references cannot be selected before the join, so the references must be read completely
+     */
+    public String impactOrder();
+
+}
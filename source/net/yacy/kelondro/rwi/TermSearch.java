@@ -27,11 +27,24 @@
 
 package net.yacy.kelondro.rwi;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 
 import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.storage.HandleSet;
+import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.data.position.PositionReference;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.RowHandleSet;
 
 
 public class TermSearch <ReferenceType extends Reference> {
@@ -69,6 +82,195 @@ public class TermSearch <ReferenceType extends Reference> {
                 maxDistance);
     }
 
+    /**
+     * search only the best references of a conjunction: the containers of the query terms are joined with
+     * ReferenceContainer.joinTopK(), which keeps the topk urls with the highest sum of the scores of their references
+     * and skips blocks of references that cannot reach these urls according to the stored block bounds.
+     * A query of a single term reads only the impact lists of the term if the index has impact lists in the order of
+     * the score and they contain the best topk references; then the inclusion containers hold only these references.
+     * @param score the score of single references, i.e. the ReferenceOrder of the search
+     * @param topk the maximum number of joined references; if this is not positive, all references are joined
+     */
+    public TermSearch(
+            Index<ReferenceType> base,
+            final HandleSet queryHashes,
+            final HandleSet excludeHashes,
+            final HandleSet urlselection,
+            ReferenceFactory<ReferenceType> termFactory,
+            int maxDistance,
+            final ReferenceScore<ReferenceType> score,
+            final int topk) throws SpaceExceededException {
+
+        if (topk <= 0 || queryHashes.isEmpty()) {
+            final TermSearch<ReferenceType> search = new TermSearch<ReferenceType>(base, queryHashes, excludeHashes, urlselection, termFactory, maxDistance);
+            this.inclusionContainers = search.inclusionContainers;
+            this.joinResult = search.joinResult;
+            return;
+        }
+
+        // a single term may be answered from the impact lists, which hold only the best references of large containers
+        if (queryHashes.size() == 1 && excludeHashes.isEmpty() && urlselection == null) {
+            final byte[] queryHash = queryHashes.iterator().next();
+            ReferenceImpact<ReferenceType> impact = null;
+            try {
+                impact = base.getImpact(queryHash, score);
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+            }
+            if (impact != null && impact.holdsTopK(score, topk)) {
+                this.inclusionContainers = new TreeMap<byte[], ReferenceContainer<ReferenceType>>(Base64Order.enhancedCoder);
+                this.inclusionContainers.put(queryHash, impact.references());
+                this.joinResult = ReferenceContainer.joinTopK(
+                        termFactory,
+                        new ArrayList<ReferenceContainer<ReferenceType>>(this.inclusionContainers.values()),
+                        null,
+                        null,
+                        score,
+                        topk,
+                        maxDistance);
+                return;
+            }
+        }
+
+        // collect the containers together with their block bounds
+        this.inclusionContainers = new TreeMap<byte[], ReferenceContainer<ReferenceType>>(Base64Order.enhancedCoder);
+        final TreeMap<byte[], ReferenceBlocks<ReferenceType>> blocks = new TreeMap<byte[], ReferenceBlocks<ReferenceType>>(Base64Order.enhancedCoder);
+        boolean bounded = true;
+        for (final byte[] queryHash: plan(base, queryHashes)) {
+            final ReferenceBlocks<ReferenceType> b = new ReferenceBlocks<ReferenceType>(termFactory);
+            ReferenceContainer<ReferenceType> container = null;
+            try {
+                container = base.get(queryHash, urlselection, b);
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+            }
+            if (container == null || container.isEmpty()) {
+                this.inclusionContainers.clear(); // this is a conjunction: no result if any term is not known
+                break;
+            }
+            this.inclusionContainers.put(queryHash, container);
+            blocks.put(queryHash, b);
+            if (b.isComplete()) b.score(score); else bounded = false;
+        }
+
+        final TreeMap<byte[], ReferenceContainer<ReferenceType>> exclusionContainers =
+            (this.inclusionContainers.isEmpty()) ?
+                new TreeMap<byte[], ReferenceContainer<ReferenceType>>(Base64Order.enhancedCoder) :
+                base.searchConjunction(excludeHashes, urlselection);
+
+        // the scores of the references of rare terms are weighted higher, in the order of the containers
+        final int[] weights = new int[this.inclusionContainers.size()];
+        int t = 0;
+        for (final byte[] queryHash: this.inclusionContainers.keySet()) weights[t++] = score.weight(base.statistics(queryHash));
+
+        this.joinResult = ReferenceContainer.joinTopK(
+                termFactory,
+                new ArrayList<ReferenceContainer<ReferenceType>>(this.inclusionContainers.values()),
+                bounded ? new ArrayList<ReferenceBlocks<ReferenceType>>(blocks.values()) : null,
+                exclusionContainers.values(),
+                score,
+                weights,
+                topk,
+                maxDistance);
+    }
+
+    /**
+     * plan the reads of a conjunction: if the index has statistics of its terms, the terms are ordered by their number
+     * of references, so the rarest term is read first and a term without references ends the conjunction before the
+     * containers of the frequent terms are read.
+     * @param base the index
+     * @param termHashes the terms of the conjunction
+     * @return the terms in the order in which they should be read
+     */
+    public static <ReferenceType extends Reference> List<byte[]> plan(final Index<ReferenceType> base, final HandleSet termHashes) {
+        final List<byte[]> plan = new ArrayList<byte[]>(termHashes.size());
+        for (final byte[] termHash: termHashes) plan.add(termHash);
+        if (plan.size() < 2) return plan;
+        final Map<byte[], Integer> df = new IdentityHashMap<byte[], Integer>();
+        for (final byte[] termHash: plan) {
+            final TermStatistics.Entry statistics = base.statistics(termHash);
+            if (statistics == null) return plan; // no statistics: read the terms in the given order
+            df.put(termHash, statistics.df());
+        }
+        Collections.sort(plan, new Comparator<byte[]>() {
+            @Override
+            public int compare(final byte[] t1, final byte[] t2) {
+                return Integer.compare(df.get(t1), df.get(t2));
+            }
+        });
+        return plan;
+    }
+
+    /**
+     * remove the joined references of documents that do not contain the phrases and near terms of the query.
+     * The positions of the terms are read from the positional index. If a term has no positions in a document,
+     * for example because the document was stored before the positional index was switched on, or if only the
+     * first positions are stored and they do not match, the document is kept if the first occurrences of the
+     * terms are not more than maxDistance apart, like in a join with this maxDistance.
+     * The join that created this search should use no maxDistance, because first occurrences which are far apart
+     * do not rule out a phrase in the document.
+     * @param positionIndex the positional index
+     * @param constraints the position constraints of the query
+     * @param maxDistance the maximum distance of the first occurrences of the terms if the positions are not known
+     * @return the number of removed references
+     */
+    public int filter(final Index<PositionReference> positionIndex, final Collection<PositionConstraint> constraints, final int maxDistance) {
+        if (this.joinResult == null || this.joinResult.isEmpty() || constraints.isEmpty()) return 0;
+
+        // load the positions of all constraint terms in the joined documents
+        final Row row = positionIndex.referenceRow();
+        final HandleSet urlhashes = new RowHandleSet(row.primaryKeyLength, row.objectOrder, this.joinResult.size());
+        final HandleSet remove = new RowHandleSet(row.primaryKeyLength, row.objectOrder, 0);
+        final TreeMap<byte[], ReferenceContainer<PositionReference>> positions = new TreeMap<byte[], ReferenceContainer<PositionReference>>(Base64Order.enhancedCoder);
+        try {
+            Iterator<ReferenceType> i = this.joinResult.entries();
+            while (i.hasNext()) urlhashes.put(i.next().urlhash());
+            for (final PositionConstraint constraint: constraints) {
+                for (final byte[] termHash: constraint.termHashes()) {
+                    if (positions.containsKey(termHash)) continue;
+                    positions.put(termHash, positionIndex.get(termHash, urlhashes)); // null if the term has no positions
+                }
+            }
+
+            // check the constraints for each document
+            i = this.joinResult.entries();
+            while (i.hasNext()) {
+                final ReferenceType ref = i.next();
+                final byte[] urlhash = ref.urlhash();
+                boolean known = true;
+                check: for (final PositionConstraint constraint: constraints) {
+                    final byte[][] termHashes = constraint.termHashes();
+                    final int[][] p = new int[termHashes.length][];
+                    boolean complete = true;
+                    for (int t = 0; t < termHashes.length; t++) {
+                        final ReferenceContainer<PositionReference> c = positions.get(termHashes[t]);
+                        final PositionReference pr = c == null ? null : c.getReference(urlhash);
+                        if (pr == null) {
+                            known = false;
+                            continue check;
+                        }
+                        p[t] = pr.positionArray();
+                        complete = complete && pr.isComplete();
+                    }
+                    if (constraint.matches(p)) continue check;
+                    if (complete) {
+                        remove.put(urlhash);
+                        break check;
+                    }
+                    known = false;
+                }
+                if (!known && !remove.has(urlhash) && maxDistance < Integer.MAX_VALUE && ref.distance() > maxDistance) remove.put(urlhash);
+            }
+        } catch (final SpaceExceededException e) {
+            ConcurrentLog.logException(e);
+            return 0;
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+            return 0;
+        }
+        return remove.isEmpty() ? 0 : this.joinResult.removeEntries(remove);
+    }
+
     public ReferenceContainer<ReferenceType> joined() {
         return this.joinResult;
     }
@@ -0,0 +1,393 @@
+// TermStatistics.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+
+package net.yacy.kelondro.rwi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import net.yacy.cora.order.ByteOrder;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.table.Table;
+import net.yacy.kelondro.util.kelondroException;
+
+/**
+ * A persistent catalog of the statistics of the terms in the BLOB files of an index cell: the number of references
+ * (document frequency), the sum of the term frequencies of the references (total postings), the largest term frequency
+ * of a reference and the time of the last change. The catalog is maintained incrementally when the RAM buffer of the
+ * cell is dumped, when BLOB files are merged and when references are removed, so the size of a term can be read
+ * without probing the BLOB files.
+ *
+ * Like ReferenceContainerArray.count(), the document frequency is the number of references in all BLOB files; a
+ * document that is referenced in several files is counted once for each file until the files are merged.
+ * The term frequency of a reference is its hit count if it is a WordReference, otherwise 1. The largest term
+ * frequency is not decreased when references are removed, so it is an upper bound.
+ *
+ * A catalog that is created for a cell which already has BLOB files is not complete until it is rebuilt from
+ * the BLOB files with set(); a rebuilt term has the document frequency as total postings and no largest term frequency.
+ * A dump, a merge or a removal changes the catalog and the BLOB files in separate steps, so it is enclosed in
+ * beginChange() and endChange(); the terms are counted for the rebuild between beginRebuild() and endRebuild(),
+ * when no such change is pending.
+ */
+public class TermStatistics {
+
+    private final static ConcurrentLog log = new ConcurrentLog("TermStatistics");
+
+    private final static String COMPLETE_SUFFIX = ".complete";
+
+    private final File location;
+    private final Table table;
+    private volatile boolean complete;
+    private final Object changes; // the monitor of the pending changes and the rebuild
+    private int pending; // the number of changes of the catalog and the BLOB files that are not finished
+    private boolean rebuilding; // true while terms are counted for the rebuild
+
+    /**
+     * the statistics of a term
+     */
+    public static class Entry {
+        private final int df, maxtf;
+        private final long postings, updated;
+
+        public Entry(final int df, final long postings, final int maxtf, final long updated) {
+            this.df = df;
+            this.postings = postings;
+            this.maxtf = maxtf;
+            this.updated = updated;
+        }
+
+        /**
+         * @return the number of references of the term
+         */
+        public int df() {
+            return this.df;
+        }
+
+        /**
+         * @return the sum of the term frequencies of the references of the term
+         */
+        public long postings() {
+            return this.postings;
+        }
+
+        /**
+         * @return an upper bound of the term frequency of the references of the term, 0 if unknown
+         */
+        public int maxtf() {
+            return this.maxtf;
+        }
+
+        /**
+         * @return the time of the last change of the statistics of the term
+         */
+        public long updated() {
+            return this.updated;
+        }
+
+        /**
+         * add the statistics of another part of the references of the same term
+         * @param other the statistics of the other part, may be null
+         * @return the statistics of both parts
+         */
+        public Entry add(final Entry other) {
+            if (other == null) return this;
+            return new Entry(this.df + other.df, this.postings + other.postings, Math.max(this.maxtf, other.maxtf), Math.max(this.updated, other.updated));
+        }
+
+        @Override
+        public String toString() {
+            return "df=" + this.df + ", postings=" + this.postings + ", maxtf=" + this.maxtf;
+        }
+    }
+
+    /**
+     * open a catalog
+     * @param location the table file of the catalog, it is created if it does not exist
+     * @param keylength the length of the term hashes
+     * @param order the order of the term hashes
+     * @throws IOException
+     */
+    public TermStatistics(final File location, final int keylength, final ByteOrder order) throws IOException {
+        this.location = location;
+        final boolean exists = location.exists();
+        final Row row = new Row(
+                "byte[] termhash-" + keylength + ", " +
+                "int df-4 {b256}, " +
+                "long postings-8 {b256}, " +
+                "int maxtf-4 {b256}, " +
+                "long updated-8 {b256}",
+                order);
+        Table t;
+        try {
+            t = new Table(location, row, 1024 * 1024, 0, true, false, true, true);
+        } catch (final SpaceExceededException e) {
+            try {
+                t = new Table(location, row, 0, 0, false, false, true, true);
+            } catch (kelondroException | SpaceExceededException e1) {
+                throw new IOException(e1);
+            }
+        } catch (final kelondroException e) {
+            throw new IOException(e);
+        }
+        this.table = t;
+        this.complete = exists && completeFile().exists();
+        this.changes = new Object();
+        this.pending = 0;
+        this.rebuilding = false;
+    }
+
+    private File completeFile() {
+        return new File(this.location.getParentFile(), this.location.getName() + COMPLETE_SUFFIX);
+    }
+
+    /**
+     * @return true if the catalog has the statistics of all terms of the BLOB files
+     */
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    /**
+     * mark the catalog as complete, i.e. if it was created together with the BLOB files or after it was rebuilt
+     */
+    public void setComplete() {
+        if (this.complete) return;
+        try {
+            if (!completeFile().createNewFile() && !completeFile().exists()) throw new IOException("cannot create " + completeFile());
+            this.complete = true;
+        } catch (final IOException e) {
+            log.warn("cannot mark " + this.location + " as complete: " + e.getMessage());
+        }
+    }
+
+    /**
+     * announce a change of the BLOB files whose statistics are applied to the catalog in a separate step;
+     * waits while terms are counted for the rebuild
+     */
+    public void beginChange() {
+        synchronized (this.changes) {
+            boolean interrupted = false;
+            while (this.rebuilding) {
+                try {
+                    this.changes.wait();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            this.pending++;
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * finish a change that was announced with beginChange(), after the catalog and the BLOB files were changed
+     */
+    public void endChange() {
+        synchronized (this.changes) {
+            assert this.pending > 0;
+            this.pending--;
+            this.changes.notifyAll();
+        }
+    }
+
+    /**
+     * wait until no change is pending and hold back new changes until endRebuild(), so the terms that
+     * are counted in the BLOB files meanwhile match the changes that were applied to the catalog
+     * @param timeout the maximum waiting time in milliseconds
+     * @return true if no change is pending, false if the time is over; endRebuild() must only be called after true
+     * @throws InterruptedException
+     */
+    public boolean beginRebuild(final long timeout) throws InterruptedException {
+        final long end = System.currentTimeMillis() + timeout;
+        synchronized (this.changes) {
+            while (this.pending > 0) {
+                final long wait = end - System.currentTimeMillis();
+                if (wait <= 0) return false;
+                this.changes.wait(wait);
+            }
+            this.rebuilding = true;
+            return true;
+        }
+    }
+
+    /**
+     * let the changes continue that were held back by beginRebuild()
+     */
+    public void endRebuild() {
+        synchronized (this.changes) {
+            this.rebuilding = false;
+            this.changes.notifyAll();
+        }
+    }
+
+    /**
+     * @return the number of terms in the catalog
+     */
+    public int size() {
+        return this.table.size();
+    }
+
+    /**
+     * the term frequency of a reference
+     */
+    public static int tf(final Reference r) {
+        return r instanceof WordReference ? Math.max(1, ((WordReference) r).hitcount()) : 1;
+    }
+
+    /**
+     * compute the statistics of the references of a container
+     * @param container
+     * @return the statistics, or null if the container is empty
+     */
+    public static Entry summarize(final ReferenceContainer<? extends Reference> container) {
+        if (container == null || container.isEmpty()) return null;
+        final int df = container.size();
+        long postings = 0;
+        int maxtf = 0, tf;
+        final Iterator<? extends Reference> i = container.entries();
+        while (i.hasNext()) {
+            final Reference r = i.next();
+            if (!(r instanceof WordReference)) {
+                // references of this kind have no term frequency
+                postings = df;
+                maxtf = 1;
+                break;
+            }
+            tf = tf(r);
+            postings += tf;
+            if (tf > maxtf) maxtf = tf;
+        }
+        return new Entry(df, postings, maxtf, System.currentTimeMillis());
+    }
+
+    /**
+     * get the statistics of a term
+     * @param termHash
+     * @return the statistics or null if the term is not in the catalog
+     */
+    public Entry get(final byte[] termHash) {
+        try {
+            final Row.Entry row = this.table.get(termHash, false);
+            if (row == null) return null;
+            return new Entry((int) row.getColLong(1), row.getColLong(2), (int) row.getColLong(3), row.getColLong(4));
+        } catch (final IOException e) {
+            log.warn("cannot read statistics of " + this.location + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param termHash
+     * @return the number of references of the term, 0 if the term is not in the catalog
+     */
+    public int df(final byte[] termHash) {
+        final Entry entry = get(termHash);
+        return entry == null ? 0 : entry.df;
+    }
+
+    /**
+     * add the statistics of references that are written to a new BLOB file
+     * @param container the references
+     */
+    public void add(final ReferenceContainer<? extends Reference> container) {
+        final Entry entry = summarize(container);
+        if (entry == null) return;
+        correct(container.getTermHash(), entry.df, entry.postings, entry.maxtf);
+    }
+
+    /**
+     * add the statistics of all containers that are written to a new BLOB file, i.e. a dump of the RAM buffer
+     * @param containers the references
+     */
+    public void add(final Iterable<? extends ReferenceContainer<? extends Reference>> containers) {
+        for (final ReferenceContainer<? extends Reference> container: containers) add(container);
+    }
+
+    /**
+     * change the statistics of a term by the given differences; the term is removed from the catalog if it has no references left
+     * @param termHash
+     * @param df the difference of the number of references, negative if references were removed
+     * @param postings the difference of the sum of the term frequencies
+     * @param maxtf the largest term frequency of added references, 0 if no references were added
+     */
+    public synchronized void correct(final byte[] termHash, final int df, final long postings, final int maxtf) {
+        if (df == 0 && postings == 0 && maxtf == 0) return;
+        final Entry old = get(termHash);
+        final int newdf = old == null ? df : old.df + df;
+        if (newdf <= 0) {
+            if (old != null) remove(termHash);
+            return;
+        }
+        set(termHash, newdf, Math.max(newdf, old == null ? postings : old.postings + postings), old == null ? maxtf : Math.max(old.maxtf, maxtf));
+    }
+
+    /**
+     * set the statistics of a term
+     * @param termHash
+     * @param df the number of references
+     * @param postings the sum of the term frequencies
+     * @param maxtf the largest term frequency, 0 if unknown
+     */
+    public synchronized void set(final byte[] termHash, final int df, final long postings, final int maxtf) {
+        final Row.Entry row = this.table.row().newEntry();
+        row.setCol(0, termHash);
+        row.setCol(1, df);
+        row.setCol(2, postings);
+        row.setCol(3, maxtf);
+        row.setCol(4, System.currentTimeMillis());
+        try {
+            this.table.replace(row);
+        } catch (final IOException | SpaceExceededException e) {
+            log.warn("cannot write statistics of " + this.location + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * remove a term from the catalog
+     * @param termHash
+     */
+    public synchronized void remove(final byte[] termHash) {
+        try {
+            this.table.remove(termHash);
+        } catch (final IOException e) {
+            log.warn("cannot remove statistics of " + this.location + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * remove all terms; the empty catalog is complete for an empty cell
+     * @throws IOException
+     */
+    public synchronized void clear() throws IOException {
+        this.table.clear();
+        setComplete();
+    }
+
+    public synchronized void close() {
+        this.table.close();
+    }
+
+}
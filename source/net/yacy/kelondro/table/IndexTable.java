@@ -23,13 +23,15 @@ package net.yacy.kelondro.table;
 import java.io.File;
 import java.io.IOException;
 
+import net.yacy.cora.order.CloneableIterator;
 import net.yacy.cora.order.NaturalOrder;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.index.Row;
 import net.yacy.kelondro.util.kelondroException;
 
 /**
- * this is a stored index for primary keys. Each key is associated to a single long value
+ * this is a stored index for primary keys. Each key is associated to a single long value.
+ * The table runs in concurrent mode: lookups do not wait for each other.
  */
 public class IndexTable {
 
@@ -54,10 +56,10 @@ public class IndexTable {
                 NaturalOrder.naturalOrder);
         Table t;
         try {
-            t = new Table(location, row, 1024*1024, 0, useTailCache, exceed134217727, true);
+            t = new Table(location, row, 1024*1024, 0, useTailCache, exceed134217727, true, true);
         } catch (final SpaceExceededException e) {
             try {
-                t = new Table(location, row, 0, 0, false, exceed134217727, true);
+                t = new Table(location, row, 0, 0, false, exceed134217727, true, true);
             } catch (kelondroException | SpaceExceededException e1) {
                 throw new IOException(e);
             }
@@ -120,6 +122,22 @@ public class IndexTable {
         return entry.getColLong(1);
     }
 
+    /**
+     * iterate over all keys of the index in ascending order
+     * @return the keys
+     * @throws IOException
+     */
+    public CloneableIterator<byte[]> keys() throws IOException {
+        return this.table.keys(true, null);
+    }
+
+    /**
+     * @return the number of entries in the index
+     */
+    public int size() {
+        return this.table.size();
+    }
+
     /**
      * clear the index
      * @throws IOException
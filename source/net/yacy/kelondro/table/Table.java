@@ -37,6 +37,9 @@ import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.order.CloneableIterator;
@@ -66,6 +69,10 @@ import net.yacy.kelondro.util.kelondroException;
  * - the access index can be either completely in RAM (kelondroRAMIndex) or it is file-based (kelondroTree)
  * - the content cache can be either a complete RAM-based shadow of the File, or empty.
  * The content cache can also be deleted during run-time, if the available RAM gets too low.
+ *
+ * Access to the table is guarded by a read/write lock. By default all operations are exclusive.
+ * In concurrent mode lookups and the overwriting of existing rows share the read lock and are
+ * serialized only per key stripe; only structural changes (new rows, removal, clear) take the write lock.
  */
 
 public class Table implements Index, Iterable<Row.Entry> {
@@ -76,6 +83,7 @@ public class Table implements Index, Iterable<Row.Entry> {
     /** Map all active table instances by file name */
     private final static Map<String, Table> tableTracker = new ConcurrentSkipListMap<String, Table>();
     private final static long maxarraylength = 134217727L; // (2^27-1) that may be the maximum size of array length in some JVMs
+    private final static int stripeCount = 64; // number of key stripes in concurrent mode, must be a power of 2
 
     private final long minmemremaining; // if less than this memory is remaininig, the memory copy of a table is abandoned
     private final int buffersize;
@@ -83,7 +91,9 @@ public class Table implements Index, Iterable<Row.Entry> {
     private final Row taildef;
     private       HandleMap index;
     private       BufferedRecords file;
-    private       RowSet table;
+    private volatile RowSet table; // may be abandoned during in-place writes in concurrent mode
+    private final ReentrantReadWriteLock lock;
+    private final ReentrantLock[] stripes; // per-key locks for the shared operations, null if the table is not in concurrent mode
 
     public Table(
             final File tablefile,
@@ -93,7 +103,29 @@ public class Table implements Index, Iterable<Row.Entry> {
             boolean useTailCache,
             final boolean exceed134217727,
             final boolean warmUp) throws SpaceExceededException, kelondroException {
+        this(tablefile, rowdef, buffersize, initialSpace, useTailCache, exceed134217727, warmUp, false);
+    }
 
+    /**
+     * @param concurrent if true, lookups and overwrites of existing rows run in parallel and only structural changes are exclusive
+     */
+    public Table(
+            final File tablefile,
+            final Row rowdef,
+            final int buffersize,
+            final int initialSpace,
+            boolean useTailCache,
+            final boolean exceed134217727,
+            final boolean warmUp,
+            final boolean concurrent) throws SpaceExceededException, kelondroException {
+
+        this.lock = new ReentrantReadWriteLock();
+        if (concurrent) {
+            this.stripes = new ReentrantLock[stripeCount];
+            for (int i = 0; i < stripeCount; i++) this.stripes[i] = new ReentrantLock();
+        } else {
+            this.stripes = null;
+        }
         this.rowdef = rowdef;
         this.buffersize = buffersize;
         this.minmemremaining = Math.max(200L * 1024L * 1024L, MemoryControl.available() / 10);
@@ -274,8 +306,37 @@ public class Table implements Index, Iterable<Row.Entry> {
         tableTracker.put(tablefile.toString(), this);
     }
 
-    public synchronized void warmUp() {
-        warmUp0();
+    public void warmUp() {
+        this.lock.writeLock().lock();
+        try {
+            warmUp0();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if lookups and overwrites of existing rows run in parallel
+     */
+    public boolean isConcurrent() {
+        return this.stripes != null;
+    }
+
+    /**
+     * the lock for operations that do not change the structure of the table:
+     * the read lock in concurrent mode, the exclusive lock otherwise
+     */
+    private Lock sharedLock() {
+        return this.stripes == null ? this.lock.writeLock() : this.lock.readLock();
+    }
+
+    /**
+     * the stripe lock of a key; must be held together with the read lock for shared operations in concurrent mode
+     */
+    private ReentrantLock stripe(final byte[] key) {
+        int h = 0;
+        for (int i = 0; i < this.rowdef.primaryKeyLength && i < key.length; i++) h = 31 * h + key[i];
+        return this.stripes[(h ^ (h >>> 16)) & (stripeCount - 1)];
     }
 
     private final void warmUp0() {
@@ -442,9 +503,6 @@ public class Table implements Index, Iterable<Row.Entry> {
      */
     private final TableStatistics memoryStats() {
         // returns statistical data about this object
-        synchronized (this) {
-            assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
-        }
         TableStatistics stats = new TableStatistics();
         if (this.index == null) return stats; // possibly closed or being closed
         stats.tableSize = this.index.size();
@@ -478,7 +536,16 @@ public class Table implements Index, Iterable<Row.Entry> {
     }
 
     @Override
-    public synchronized void addUnique(final Entry row) throws IOException, SpaceExceededException {
+    public void addUnique(final Entry row) throws IOException, SpaceExceededException {
+        this.lock.writeLock().lock();
+        try {
+            addUnique0(row);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void addUnique0(final Entry row) throws IOException, SpaceExceededException {
         assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
         assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
         final int i = (int) this.file.size();
@@ -504,18 +571,23 @@ public class Table implements Index, Iterable<Row.Entry> {
         assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
     }
 
-    public synchronized void addUnique(final List<Entry> rows) throws IOException, SpaceExceededException {
-        assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
-        for (final Entry entry: rows) {
-            try {
-                addUnique(entry);
-            } catch (final SpaceExceededException e) {
-                if (this.table == null) throw e;
-                this.table = null;
-                addUnique(entry);
+    public void addUnique(final List<Entry> rows) throws IOException, SpaceExceededException {
+        this.lock.writeLock().lock();
+        try {
+            assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
+            for (final Entry entry: rows) {
+                try {
+                    addUnique0(entry);
+                } catch (final SpaceExceededException e) {
+                    if (this.table == null) throw e;
+                    this.table = null;
+                    addUnique0(entry);
+                }
             }
+            assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
+        } finally {
+            this.lock.writeLock().unlock();
         }
-        assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
     }
 
     /**
@@ -526,7 +598,16 @@ public class Table implements Index, Iterable<Row.Entry> {
      * @throws
      */
     @Override
-    public synchronized List<RowCollection> removeDoubles() throws IOException, SpaceExceededException {
+    public List<RowCollection> removeDoubles() throws IOException, SpaceExceededException {
+        this.lock.writeLock().lock();
+        try {
+            return removeDoubles0();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private List<RowCollection> removeDoubles0() throws IOException, SpaceExceededException {
         assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
         final List<RowCollection> report = new ArrayList<RowCollection>();
         RowSet rows;
@@ -601,14 +682,22 @@ public class Table implements Index, Iterable<Row.Entry> {
     @Override
     public Entry get(final byte[] key, final boolean _forcecopy) throws IOException {
         if (this.file == null || this.index == null) return null;
-        Entry e = get0(key);
-        if (e != null && this.rowdef.objectOrder.equal(key, e.getPrimaryKeyBytes())) return e;
-        synchronized (this) {
-            //assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size() + ", file = " + filename();
-            assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size() + ", file = " + filename();
+        Entry e;
+        if (this.stripes == null) {
+            e = get0(key);
+            if (e != null && this.rowdef.objectOrder.equal(key, e.getPrimaryKeyBytes())) return e;
+        }
+        final Lock shared = sharedLock();
+        shared.lock();
+        final ReentrantLock stripe = this.stripes == null ? null : stripe(key);
+        if (stripe != null) stripe.lock();
+        try {
             e = get0(key);
             assert e == null || this.rowdef.objectOrder.equal(key, e.getPrimaryKeyBytes()) : "key = " + ASCII.String(key) + ", e.k = " + ASCII.String(e.getPrimaryKeyBytes());
             return e;
+        } finally {
+            if (stripe != null) stripe.unlock();
+            shared.unlock();
         }
     }
 
@@ -617,8 +706,9 @@ public class Table implements Index, Iterable<Row.Entry> {
         final int i = (int) this.index.get(key);
         if (i == -1) return null;
         final byte[] b = new byte[this.rowdef.objectsize];
+        final RowSet t = this.table;
         final Row.Entry cacherow;
-        if (this.table == null || (cacherow = this.table.get(i, false)) == null) {
+        if (t == null || (cacherow = t.get(i, false)) == null) {
             // read row from the file
             try {
                 this.file.get(i, b, 0);
@@ -626,7 +716,7 @@ public class Table implements Index, Iterable<Row.Entry> {
                 // there must be a problem with the table index
                 log.severe("IndexOutOfBoundsException: " + e.getMessage(), e);
                 this.index.remove(key);
-                if (this.table != null) this.table.remove(key);
+                if (t != null) t.remove(key);
                 return null;
             }
         } else {
@@ -656,8 +746,70 @@ public class Table implements Index, Iterable<Row.Entry> {
     }
 
     @Override
-    public final synchronized CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) throws IOException {
-        return this.index.keys(up, firstKey);
+    public final CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) throws IOException {
+        final Lock shared = sharedLock();
+        shared.lock();
+        try {
+            return this.index.keys(up, firstKey);
+        } finally {
+            shared.unlock();
+        }
+    }
+
+    /**
+     * overwrite an existing row; the caller must hold the exclusive lock or the shared lock and the stripe of the key
+     * @param i the position of the row
+     * @param key the primary key of the row
+     * @param rowb the new row
+     * @param readOld if true, the old row is returned
+     * @return the old row or null if readOld is false
+     * @throws IOException
+     */
+    private byte[] overwrite(final int i, final byte[] key, final byte[] rowb, final boolean readOld) throws IOException {
+        final byte[] b = readOld ? new byte[this.rowdef.objectsize] : null;
+        final RowSet t = this.table;
+        final Row.Entry cacherow = t == null ? null : t.get(i, false);
+        if (readOld) {
+            if (cacherow == null) {
+                // read old value
+                this.file.get(i, b, 0);
+            } else {
+                // compose old value from the table copy
+                System.arraycopy(key, 0, b, 0, this.rowdef.primaryKeyLength);
+                System.arraycopy(cacherow.bytes(), 0, b, this.rowdef.primaryKeyLength, this.rowdef.objectsize - this.rowdef.primaryKeyLength);
+            }
+        }
+        // write new value
+        this.file.put(i, rowb, 0);
+        if (t != null) {
+            if (abandonTable()) this.table = null; else try {
+                t.set(i, this.taildef.newEntry(rowb, this.rowdef.primaryKeyLength, true));
+            } catch (final SpaceExceededException e) {
+                this.table = null;
+            }
+        }
+        return b;
+    }
+
+    /**
+     * overwrite a row in concurrent mode without the exclusive lock
+     * @return the old row, or null if the key is not in the table and the row must be added exclusively
+     * @throws IOException
+     */
+    private byte[] overwriteShared(final byte[] key, final byte[] rowb, final boolean readOld) throws IOException {
+        this.lock.readLock().lock();
+        final ReentrantLock stripe = stripe(key);
+        stripe.lock();
+        try {
+            if (this.index == null) return null;
+            final int i = (int) this.index.get(key);
+            if (i == -1) return null;
+            final byte[] b = overwrite(i, key, rowb, readOld);
+            return readOld ? b : rowb;
+        } finally {
+            stripe.unlock();
+            this.lock.readLock().unlock();
+        }
     }
 
     @Override
@@ -668,46 +820,33 @@ public class Table implements Index, Iterable<Row.Entry> {
         assert rowb != null;
         if (rowb == null) return null;
         final byte[] key = row.getPrimaryKeyBytes();
-        synchronized (this) {
+        if (this.stripes != null) {
+            final byte[] b = overwriteShared(key, rowb, true);
+            if (b != null) return this.rowdef.newEntry(b);
+        }
+        this.lock.writeLock().lock();
+        try {
             //assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
             //assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
             final int i = (int) this.index.get(key);
             if (i == -1) {
                 try {
-                    addUnique(row);
+                    addUnique0(row);
                 } catch (final SpaceExceededException e) {
                     if (this.table == null) throw e;
                     this.table = null;
-                    addUnique(row);
+                    addUnique0(row);
                 }
                 return null;
             }
 
-            final byte[] b = new byte[this.rowdef.objectsize];
-            Row.Entry cacherow;
-            if (this.table == null || (cacherow = this.table.get(i, false)) == null) {
-                // read old value
-                this.file.get(i, b, 0);
-                // write new value
-                this.file.put(i, rowb, 0);
-            } else {
-                // read old value
-                assert cacherow != null;
-                System.arraycopy(key, 0, b, 0, this.rowdef.primaryKeyLength);
-                System.arraycopy(cacherow.bytes(), 0, b, this.rowdef.primaryKeyLength, this.rowdef.objectsize - this.rowdef.primaryKeyLength);
-                // write new value
-                try {
-                    this.table.set(i, this.taildef.newEntry(rowb, this.rowdef.primaryKeyLength, true));
-                } catch (final SpaceExceededException e) {
-                    this.table = null;
-                }
-                if (abandonTable()) this.table = null;
-                this.file.put(i, rowb, 0);
-            }
+            final byte[] b = overwrite(i, key, rowb, true);
             assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
             assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
             // return old value
             return this.rowdef.newEntry(b);
+        } finally {
+            this.lock.writeLock().unlock();
         }
     }
 
@@ -726,36 +865,29 @@ public class Table implements Index, Iterable<Row.Entry> {
         assert rowb != null;
         if (rowb == null) return true;
         final byte[] key = row.getPrimaryKeyBytes();
-        synchronized (this) {
+        if (this.stripes != null && overwriteShared(key, rowb, false) != null) return false;
+        this.lock.writeLock().lock();
+        try {
             //assert this.file == null || this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size() + ", file = " + filename();
             //assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size() + ", file = " + filename();
             final int i = (int) this.index.get(key);
             if (i == -1) {
                 try {
-                    addUnique(row);
+                    addUnique0(row);
                 } catch (final SpaceExceededException e) {
                     if (this.table == null) throw e;
                     this.table = null;
-                    addUnique(row);
+                    addUnique0(row);
                 }
                 return true;
             }
 
-            if (this.table == null) {
-                // write new value
-                this.file.put(i, rowb, 0);
-            } else {
-                // write new value
-                this.file.put(i, rowb, 0);
-                if (abandonTable()) this.table = null; else try {
-                    this.table.set(i, this.taildef.newEntry(rowb, this.rowdef.primaryKeyLength, true));
-                } catch (final SpaceExceededException e) {
-                    this.table = null;
-                }
-            }
+            overwrite(i, key, rowb, false);
             assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
             assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
             return false;
+        } finally {
+            this.lock.writeLock().unlock();
         }
     }
 
@@ -829,7 +961,16 @@ public class Table implements Index, Iterable<Row.Entry> {
     }
 
     @Override
-    public final synchronized Entry remove(final byte[] key) throws IOException {
+    public final Entry remove(final byte[] key) throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            return remove0(key);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private Entry remove0(final byte[] key) throws IOException {
         assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
         assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
         assert key.length == this.rowdef.primaryKeyLength;
@@ -924,7 +1065,16 @@ public class Table implements Index, Iterable<Row.Entry> {
     }
 
     @Override
-    public final synchronized Entry removeOne() throws IOException {
+    public final Entry removeOne() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            return removeOne0();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private Entry removeOne0() throws IOException {
         //assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
         assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
         final byte[] le = new byte[this.rowdef.objectsize];
@@ -984,11 +1134,16 @@ public class Table implements Index, Iterable<Row.Entry> {
     }
 
     @Override
-    public synchronized void clear() throws IOException {
-        this.file.clear();
-        // initialize index and copy table
-        this.table = (this.table == null) ? null : new RowSet(this.taildef);
-        this.index.clear();
+    public void clear() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            this.file.clear();
+            // initialize index and copy table
+            this.table = (this.table == null) ? null : new RowSet(this.taildef);
+            this.index.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -1017,9 +1172,14 @@ public class Table implements Index, Iterable<Row.Entry> {
     }
 
     @Override
-    public synchronized CloneableIterator<Entry> rows() throws IOException {
-        this.file.flushBuffer();
-        return new rowIteratorNoOrder();
+    public CloneableIterator<Entry> rows() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            this.file.flushBuffer();
+            return new rowIteratorNoOrder();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
     }
 
     private final class rowIteratorNoOrder implements CloneableIterator<Entry> {
@@ -1060,10 +1220,13 @@ public class Table implements Index, Iterable<Row.Entry> {
         @Override
         public final void remove() {
             if (this.key != null) {
+                Table.this.lock.writeLock().lock();
                 try {
                     removeInFile((int) this.idx);
                 } catch (final IOException e) {
                 } catch (final SpaceExceededException e) {
+                } finally {
+                    Table.this.lock.writeLock().unlock();
                 }
                 this.i.remove();
             }
@@ -1079,8 +1242,14 @@ public class Table implements Index, Iterable<Row.Entry> {
     }
 
     @Override
-    public synchronized CloneableIterator<Entry> rows(final boolean up, final byte[] firstKey) throws IOException {
-        return new rowIterator(up, firstKey);
+    public CloneableIterator<Entry> rows(final boolean up, final byte[] firstKey) throws IOException {
+        final Lock shared = sharedLock();
+        shared.lock();
+        try {
+            return new rowIterator(up, firstKey);
+        } finally {
+            shared.unlock();
+        }
     }
 
     private final class rowIterator implements CloneableIterator<Entry> {
@@ -1114,8 +1283,9 @@ public class Table implements Index, Iterable<Row.Entry> {
             this.c = (int) Table.this.index.get(k);
             if (this.c < 0) throw new ConcurrentModificationException(); // this should only happen if the table was modified during the iteration
             final byte[] b = new byte[Table.this.rowdef.objectsize];
+            final RowSet t = Table.this.table;
             final Row.Entry cacherow;
-            if (Table.this.table == null || (cacherow = Table.this.table.get(this.c, false)) == null) {
+            if (t == null || (cacherow = t.get(this.c, false)) == null) {
                 // read from file
                 try {
                     Table.this.file.get(this.c, b, 0);
@@ -487,6 +487,11 @@ public class WebStructureGraph {
             return e;
         }
 
+        @Override
+        public HostReference produceBound(final ReferenceContainer<HostReference> container, final int from, final int to) {
+            return null; // host references are not ranked
+        }
+
     }
 
     public static class HostReference extends AbstractReference implements Reference, Serializable {
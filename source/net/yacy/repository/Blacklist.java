@@ -607,6 +607,72 @@ public class Blacklist {
         return true;
     }
 
+    /**
+     * Collect the path patterns of a blacklist that apply to a host. The urls of one host can then be checked with
+     * {@link #isListed(Pattern[], String)} without looking up the host part of the blacklist for each url.
+     * @param blacklistType type of blacklist (DHT, CRAWLER ...)
+     * @param hostlow the lower case host
+     * @return the path patterns of the host, an empty array if no url of the host is blacklisted
+     */
+    public final Pattern[] hostPatterns(final BlacklistType blacklistType, final String hostlow) {
+        if (hostlow == null) {
+            throw new IllegalArgumentException("hostlow may not be null");
+        }
+        return Blacklist.hostPatterns(hostlow, getBlacklistMap(blacklistType, true), getBlacklistMap(blacklistType, false));
+    }
+
+    /**
+     * Collect the path patterns that apply to a host.
+     * @param hostlow the lower case host
+     * @param blacklistMapMatched blacklist patterns indexed by matched hosts
+     * @param blacklistMapNotMatched blacklist patterns indexed by not matched hosts
+     * @return the path patterns of the host, an empty array if no url of the host is blacklisted
+     */
+    protected final static Pattern[] hostPatterns(final String hostlow,
+            final Map<String, Set<Pattern>> blacklistMapMatched,
+            final Map<String, Set<Pattern>> blacklistMapNotMatched) {
+        final List<Pattern> patterns = new ArrayList<Pattern>();
+        Set<Pattern> app;
+
+        // the same host keys as in isListed: complete domain, wildcard '*' and partial domains
+        if ((app = blacklistMapMatched.get(hostlow)) != null) patterns.addAll(app);
+        int index = 0;
+        while ((index = hostlow.indexOf('.', index + 1)) != -1) {
+            if ((app = blacklistMapMatched.get(hostlow.substring(0, index + 1) + "*")) != null) patterns.addAll(app);
+            if ((app = blacklistMapMatched.get(hostlow.substring(0, index))) != null) patterns.addAll(app);
+        }
+        index = hostlow.length();
+        while ((index = hostlow.lastIndexOf('.', index - 1)) != -1) {
+            if ((app = blacklistMapMatched.get("*" + hostlow.substring(index, hostlow.length()))) != null) patterns.addAll(app);
+            if ((app = blacklistMapMatched.get(hostlow.substring(index + 1, hostlow.length()))) != null) patterns.addAll(app);
+        }
+
+        // all Regex-entries
+        for (final Entry<String, Set<Pattern>> entry : blacklistMapNotMatched.entrySet()) {
+            try {
+                if (Pattern.matches(entry.getKey(), hostlow)) patterns.addAll(entry.getValue());
+            } catch (final PatternSyntaxException e) {
+                // ignored like in isListed
+            }
+        }
+        return patterns.toArray(new Pattern[patterns.size()]);
+    }
+
+    /**
+     * Check a path with the patterns of its host.
+     * @param hostPatterns the patterns of the host from {@link #hostPatterns(BlacklistType, String)}
+     * @param path path on the host
+     * @return true when host/path is blacklisted
+     */
+    public static boolean isListed(final Pattern[] hostPatterns, final String path) {
+        if (hostPatterns.length == 0) return false;
+        final String p = (!path.isEmpty() && path.charAt(0) == '/') ? path.substring(1) : path;
+        for (final Pattern pp : hostPatterns) {
+            if (pp.matcher(p).matches()) return true;
+        }
+        return false;
+    }
+
     private static final Pattern m1 = Pattern.compile("^[a-z0-9.-]*$");       // simple Domain (yacy.net or www.yacy.net)
     private static final Pattern m2 = Pattern.compile("^\\*\\.[a-z0-9-.]*$"); // start with *. (not .* and * must follow a dot)
     private static final Pattern m3 = Pattern.compile("^[a-z0-9-.]*\\.\\*$"); // ends with .* (not *. and before * must be a dot)
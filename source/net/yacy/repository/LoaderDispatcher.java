@@ -47,12 +47,15 @@ import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.federate.solr.FailCategory;
 import net.yacy.cora.federate.yacy.CacheStrategy;
 import net.yacy.cora.protocol.ClientIdentification;
+import net.yacy.cora.protocol.Domains;
 import net.yacy.cora.protocol.HeaderFramework;
 import net.yacy.cora.protocol.RequestHeader;
 import net.yacy.cora.protocol.ResponseHeader;
+import net.yacy.cora.protocol.http.ProxySettings;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.crawler.data.Cache;
 import net.yacy.crawler.data.CrawlProfile;
+import net.yacy.crawler.retrieval.AsyncHTTPLoader;
 import net.yacy.crawler.retrieval.FTPLoader;
 import net.yacy.crawler.retrieval.FileLoader;
 import net.yacy.crawler.retrieval.HTTPLoader;
@@ -81,6 +84,22 @@ public final class LoaderDispatcher {
     private final FileLoader fileLoader;
     private final ConcurrentHashMap<DigestURL, Semaphore> loaderSteering; // a map that delivers a 'finish' semaphore for urls
 
+    /**
+     * receives the result of a non-blocking load
+     */
+    public interface ResponseListener {
+
+        /**
+         * @param response the loaded entity
+         */
+        public void loaded(Response response);
+
+        /**
+         * @param e the cause of the failure; a message ending with "$" means that the error is already pushed to the error-db
+         */
+        public void failed(IOException e);
+    }
+
     public LoaderDispatcher(final Switchboard sb) {
         this.sb = sb;
         this.supportedProtocols = new HashSet<String>(Arrays.asList(new String[]{"http","https","ftp","smb","file"}));
@@ -193,6 +212,81 @@ public final class LoaderDispatcher {
         }
     }
 
+    /**
+     * loads a resource like {@link #load(Request, CacheStrategy, BlacklistType, ClientIdentification.Agent)}, but http and https
+     * resources are fetched with the non-blocking engine: this returns when the request is sent and the listener gets the response later.
+     * Other protocols, cache hits, requests to localhost and requests through a remote proxy are loaded in the calling thread.
+     * Like in the blocking load, the calling thread waits if the host was accessed too recently. The listener is called from
+     * the delivery threads of the engine after the response is stored in the cache.
+     *
+     * @param request the request essentials
+     * @param cacheStrategy strategy according to NOCACHE, IFFRESH, IFEXIST, CACHEONLY
+     * @param blacklistType
+     * @param agent
+     * @param engine the non-blocking fetch engine
+     * @param listener receives the loaded entity or the failure
+     * @throws InterruptedException when interrupted while waiting for a free slot of the engine
+     */
+    public void loadAsync(final Request request, final CacheStrategy cacheStrategy, final BlacklistType blacklistType, final ClientIdentification.Agent agent,
+            final AsyncHTTPLoader engine, final ResponseListener listener) throws InterruptedException {
+        final DigestURL url = request.url();
+        final String host = url.getHost();
+        if (!(url.isHTTP() || url.isHTTPS()) || host == null || Domains.isLocalhost(host) ||
+            ProxySettings.useForHost(host, url.isHTTPS() ? ProxySettings.Protocol.HTTPS : ProxySettings.Protocol.HTTP)) {
+            final Response response;
+            try {
+                response = load(request, cacheStrategy, blacklistType, agent);
+            } catch (final IOException e) {
+                listener.failed(e);
+                return;
+            }
+            listener.loaded(response);
+            return;
+        }
+        final CrawlProfile crawlProfile = request.profileHandle() == null ? null : this.sb.crawler.get(UTF8.getBytes(request.profileHandle()));
+
+        try {
+            // check if url is in blacklist
+            if (blacklistType != null && Switchboard.urlBlacklist.isListed(blacklistType, host.toLowerCase(Locale.ROOT), url.getFile())) {
+                this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), crawlProfile, FailCategory.FINAL_LOAD_CONTEXT, "url in blacklist", -1);
+                throw new IOException("DISPATCHER Rejecting URL '" + request.url().toString() + "'. URL is in blacklist.$");
+            }
+
+            // check if we have the page in the cache
+            final Response response = loadFromCache(request, cacheStrategy, agent, url, crawlProfile);
+            if (response != null) {
+                listener.loaded(response);
+                return;
+            }
+            if (cacheStrategy == CacheStrategy.CACHEONLY) throw new IOException("cache only strategy");
+        } catch (final IOException e) {
+            listener.failed(e);
+            return;
+        }
+
+        // check access time: this is a double-check (we checked possibly already in the balancer)
+        // to make sure that we don't DoS the target by mistake
+        checkAccessTime(agent, url);
+
+        // now it's for sure that we will access the target. Remember the access time
+        if (accessTime.size() > accessTimeMaxsize) accessTime.clear(); // prevent a memory leak here
+        accessTime.put(host, System.currentTimeMillis());
+
+        this.httpLoader.load(engine, request, crawlProfile, protocolMaxFileSize(url), blacklistType, agent, new ResponseListener() {
+
+            @Override
+            public void loaded(final Response response) {
+                storeCache(response, crawlProfile);
+                listener.loaded(response);
+            }
+
+            @Override
+            public void failed(final IOException e) {
+                listener.failed(e);
+            }
+        });
+    }
+
     /**
      * load a resource from the web, from ftp, from smb or a file
      * @param request the request essentials
@@ -257,11 +351,21 @@ public final class LoaderDispatcher {
             throw new IOException("empty response (code " + response.getStatus() + ") for url " + url.toNormalform(true));
         }
 
+        storeCache(response, crawlProfile);
+        return response;
+    }
+
+    /**
+     * store a loaded resource to the cache, if the crawl profile and the response allow that
+     * @param response the loaded entity
+     * @param crawlProfile crawl profile, may be null
+     */
+    private void storeCache(final Response response, final CrawlProfile crawlProfile) {
         // we got something. Now check if we want to store that to the cache
         // first check looks if we want to store the content to the cache
         if (crawlProfile == null || !crawlProfile.storeHTCache()) {
             // no caching wanted. Thats ok, do not write any message
-            return response;
+            return;
         }
         // second check tells us if the protocol tells us something about caching
         final String storeError = response.shallStoreCacheForCrawler();
@@ -278,7 +382,6 @@ public final class LoaderDispatcher {
         } else {
             LoaderDispatcher.log.warn("cannot write " + response.url() + " to Cache (4): " + storeError);
         }
-        return response;
     }
 
     /**
@@ -142,12 +142,14 @@ import net.yacy.crawler.data.Cache;
 import net.yacy.crawler.data.CrawlProfile;
 import net.yacy.crawler.data.CrawlProfile.CrawlAttribute;
 import net.yacy.crawler.data.CrawlQueues;
+import net.yacy.crawler.data.Latency;
 import net.yacy.crawler.data.NoticedURL;
 import net.yacy.crawler.data.NoticedURL.StackType;
 import net.yacy.crawler.data.ResultImages;
 import net.yacy.crawler.data.ResultURLs;
 import net.yacy.crawler.data.ResultURLs.EventOrigin;
 import net.yacy.crawler.data.Transactions;
+import net.yacy.crawler.data.URLSeenFilter;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.retrieval.Response;
 import net.yacy.crawler.robots.RobotsTxt;
@@ -184,6 +186,8 @@ import net.yacy.gui.Tray;
 import net.yacy.http.YaCyHttpServer;
 import net.yacy.kelondro.blob.ArrayStack;
 import net.yacy.kelondro.blob.BEncodedHeap;
+import net.yacy.kelondro.blob.BlockHeap;
+import net.yacy.kelondro.blob.GroupCommit;
 import net.yacy.kelondro.blob.Tables;
 import net.yacy.kelondro.blob.Tables.SortDirection;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
@@ -224,7 +228,9 @@ import net.yacy.search.index.SingleDocumentMatcher;
 import net.yacy.search.query.AccessTracker;
 import net.yacy.search.query.SearchEvent;
 import net.yacy.search.query.SearchEventCache;
+import net.yacy.search.query.SearchResultCache;
 import net.yacy.search.ranking.RankingProfile;
+import net.yacy.search.ranking.ReferenceOrder;
 import net.yacy.search.schema.CollectionConfiguration;
 import net.yacy.search.schema.CollectionSchema;
 import net.yacy.search.schema.WebgraphConfiguration;
@@ -469,7 +475,8 @@ public final class Switchboard extends serverSwitch {
         MultiProtocolURL.initSessionIDNames(FileUtils.loadList(new File(this.getAppPath(), sessionidNamesFile)));
 
         // init tables
-        this.tables = new WorkTables(this.workPath);
+        GroupCommit.interval = Math.max(0, this.getConfigLong(SwitchboardConstants.TABLES_COMMIT_INTERVAL, SwitchboardConstants.TABLES_COMMIT_INTERVAL_DEFAULT));
+        this.tables = new WorkTables(this.workPath, BlockHeap.Codec.parse(this.getConfig(SwitchboardConstants.TABLES_HEAP_CODEC, SwitchboardConstants.TABLES_HEAP_CODEC_DEFAULT), null));
 
         // set a high maximum cache size to current size; this is adopted later automatically
         final int wordCacheMaxCount = (int) this.getConfigLong(SwitchboardConstants.WORDCACHE_MAX_COUNT, 20000);
@@ -577,12 +584,21 @@ public final class Switchboard extends serverSwitch {
         ReferenceContainer.maxReferences = this.getConfigInt("index.maxReferences", 0);
         final File segmentsPath = new File(new File(indexPath, networkName), "SEGMENTS");
         try {this.index = new Segment(this.log, segmentsPath, archivePath, solrCollectionConfigurationWork, solrWebgraphConfigurationWork);} catch (final IOException e) {ConcurrentLog.logException(e);}
+        this.index.setOffHeapIndex(this.getConfigBool(SwitchboardConstants.INDEX_RWI_OFFHEAP, SwitchboardConstants.INDEX_RWI_OFFHEAP_DEFAULT));
+        this.index.setCompressDocIds(this.getConfigBool(SwitchboardConstants.INDEX_RWI_DOCIDS, SwitchboardConstants.INDEX_RWI_DOCIDS_DEFAULT));
+        this.index.setBufferStripes(this.getConfigInt(SwitchboardConstants.INDEX_RWI_STRIPES, SwitchboardConstants.INDEX_RWI_STRIPES_DEFAULT));
+        this.index.setColdStorage(this.coldSegmentsPath(networkName));
+        if (this.getConfigBool(SwitchboardConstants.CRAWLER_URLSEEN_FILTER, SwitchboardConstants.CRAWLER_URLSEEN_FILTER_DEFAULT)) this.index.connectURLSeenFilter();
         if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_RWI, true)) try {
             this.index.connectRWI(wordCacheMaxCount, fileSizeMax);
         } catch (final IOException e) {ConcurrentLog.logException(e);}
         if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_CITATION, true)) try {
             this.index.connectCitation(wordCacheMaxCount, fileSizeMax);
         } catch (final IOException e) {ConcurrentLog.logException(e);}
+        if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_POSITIONS, SwitchboardConstants.CORE_SERVICE_POSITIONS_DEFAULT)) try {
+            this.index.connectPositions(wordCacheMaxCount, fileSizeMax);
+        } catch (final IOException e) {ConcurrentLog.logException(e);}
+        this.applyIndexIOSettings();
         if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_FULLTEXT,
                 SwitchboardConstants.CORE_SERVICE_FULLTEXT_DEFAULT)) {
             try {this.index.fulltext().connectLocalSolr();} catch (final IOException e) {ConcurrentLog.logException(e);}
@@ -985,6 +1001,11 @@ public final class Switchboard extends serverSwitch {
                 TextSnippet.statistics.setEnabled(this.getConfigBool(SwitchboardConstants.DEBUG_SNIPPETS_STATISTICS_ENABLED,
                         SwitchboardConstants.DEBUG_SNIPPETS_STATISTICS_ENABLED_DEFAULT));
 
+                // keep the ranked results of expired search events
+                SearchResultCache.setLimits(
+                        this.getConfigLong(SwitchboardConstants.SEARCH_RESULTCACHE_MEMORY, SwitchboardConstants.SEARCH_RESULTCACHE_MEMORY_DEFAULT) * 1024L * 1024L,
+                        this.getConfigLong(SwitchboardConstants.SEARCH_RESULTCACHE_LIFETIME, SwitchboardConstants.SEARCH_RESULTCACHE_LIFETIME_DEFAULT));
+
                 // init the wiki
                 wikiParser = new WikiCode();
 
@@ -1038,10 +1059,12 @@ public final class Switchboard extends serverSwitch {
                 this.clusterhashes = this.peers.clusterHashes(this.getConfig("cluster.peers.yacydomain", ""));
 
                 // deploy blocking threads
+                int storeConcurrency = this.getConfigInt(SwitchboardConstants.INDEXER_STORE_CONCURRENCY, SwitchboardConstants.INDEXER_STORE_CONCURRENCY_DEFAULT);
+                if (storeConcurrency <= 0) storeConcurrency = WorkflowProcessor.availableCPU;
                 this.indexingStorageProcessor =
                         new WorkflowProcessor<>(
                                 "storeDocumentIndex",
-                                "This is the sequencing step of the indexing queue. Files are written as streams, too much councurrency would destroy IO performance. In this process the words are written to the RWI cache, which flushes if it is full.",
+                                "This is the sequencing step of the indexing queue. In this process the words are written to the RWI cache, which flushes if it is full. The RWI cache is striped, so several documents can be stored at the same time.",
                                 new String[] {
                                         "RWI/Cache/Collections"
                                 },
@@ -1049,9 +1072,9 @@ public final class Switchboard extends serverSwitch {
                                     Switchboard.this.storeDocumentIndex(in);
                                     return null;
                                 },
-                                2,
+                                Math.max(2, storeConcurrency),
                                 null,
-                                1);
+                                storeConcurrency);
                 this.indexingAnalysisProcessor =
                         new WorkflowProcessor<>(
                                 "webStructureAnalysis",
@@ -1265,6 +1288,38 @@ public final class Switchboard extends serverSwitch {
         }
     }
 
+    /**
+     * Apply the I/O settings of the RWI and citation index: memory mapped reads and merge limits
+     */
+    private void applyIndexIOSettings() {
+        this.index.setMappedRead(this.getConfigBool(SwitchboardConstants.INDEX_RWI_MMAP, SwitchboardConstants.INDEX_RWI_MMAP_DEFAULT));
+        this.index.setMergeLimits(
+                this.getConfigInt(SwitchboardConstants.INDEX_MERGE_MAXPARALLEL, SwitchboardConstants.INDEX_MERGE_MAXPARALLEL_DEFAULT),
+                this.getConfigInt(SwitchboardConstants.INDEX_MERGE_WIDTH, SwitchboardConstants.INDEX_MERGE_WIDTH_DEFAULT),
+                this.getConfigLong(SwitchboardConstants.INDEX_MERGE_MAXBYTESPERSECOND, SwitchboardConstants.INDEX_MERGE_MAXBYTESPERSECOND_DEFAULT));
+        this.index.setTierPolicy(
+                this.getConfigLong(SwitchboardConstants.INDEX_TIER_COLD_MINAGE, SwitchboardConstants.INDEX_TIER_COLD_MINAGE_DEFAULT) * 60L * 60L * 1000L,
+                this.getConfigFloat(SwitchboardConstants.INDEX_TIER_COLD_MAXHITS, SwitchboardConstants.INDEX_TIER_COLD_MAXHITS_DEFAULT));
+        this.applyImpactOrder();
+    }
+
+    /**
+     * order the impact lists of the RWI index by the current ranking profile; this must be called when the profile is changed
+     */
+    public void applyImpactOrder() {
+        this.index.setImpactOrder(
+                new ReferenceOrder(this.getRanking(), null),
+                this.getConfigInt(SwitchboardConstants.INDEX_RWI_IMPACT, SwitchboardConstants.INDEX_RWI_IMPACT_DEFAULT));
+    }
+
+    /**
+     * @return the segments path of a network on the cold storage of the RWI and citation index, or null if no cold storage is configured
+     */
+    private File coldSegmentsPath(final String networkName) {
+        if (this.getConfig(SwitchboardConstants.INDEX_TIER_COLD_PATH, "").trim().isEmpty()) return null;
+        return new File(new File(this.getDataPath(SwitchboardConstants.INDEX_TIER_COLD_PATH, ""), networkName), "SEGMENTS");
+    }
+
     /**
      * Initialize outgoing connections pools with user defined settings
      */
@@ -1495,8 +1550,15 @@ public final class Switchboard extends serverSwitch {
             final File segmentsPath = new File(new File(indexPrimaryPath, networkName), "SEGMENTS");
             final File archivePath = this.getDataPath(SwitchboardConstants.INDEX_ARCHIVE_PATH, SwitchboardConstants.INDEX_ARCHIVE_DEFAULT);
             this.index = new Segment(this.log, segmentsPath, archivePath, collectionConfiguration, webgraphConfiguration);
+            this.index.setOffHeapIndex(this.getConfigBool(SwitchboardConstants.INDEX_RWI_OFFHEAP, SwitchboardConstants.INDEX_RWI_OFFHEAP_DEFAULT));
+            this.index.setCompressDocIds(this.getConfigBool(SwitchboardConstants.INDEX_RWI_DOCIDS, SwitchboardConstants.INDEX_RWI_DOCIDS_DEFAULT));
+            this.index.setBufferStripes(this.getConfigInt(SwitchboardConstants.INDEX_RWI_STRIPES, SwitchboardConstants.INDEX_RWI_STRIPES_DEFAULT));
+            this.index.setColdStorage(this.coldSegmentsPath(networkName));
+            if (this.getConfigBool(SwitchboardConstants.CRAWLER_URLSEEN_FILTER, SwitchboardConstants.CRAWLER_URLSEEN_FILTER_DEFAULT)) this.index.connectURLSeenFilter();
             if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_RWI, true)) this.index.connectRWI(wordCacheMaxCount, fileSizeMax);
             if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_CITATION, true)) this.index.connectCitation(wordCacheMaxCount, fileSizeMax);
+            if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_POSITIONS, SwitchboardConstants.CORE_SERVICE_POSITIONS_DEFAULT)) this.index.connectPositions(wordCacheMaxCount, fileSizeMax);
+            this.applyIndexIOSettings();
             if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_FULLTEXT,
                     SwitchboardConstants.CORE_SERVICE_FULLTEXT_DEFAULT)) {
                 this.index.fulltext().connectLocalSolr();
@@ -2022,6 +2084,7 @@ public final class Switchboard extends serverSwitch {
         AccessTracker.dumpLog();
         Switchboard.urlBlacklist.close();
         ArrayStack.shutdownDeleteService();
+        ReferenceOrder.shutdownNormalizer();
         UPnP.deletePortMappings();
         this.tray.remove();
         try {
@@ -2493,6 +2556,16 @@ public final class Switchboard extends serverSwitch {
         try {
             clearCaches();
 
+            // keep the politeness state of the crawler for a restart
+            Latency.snapshot();
+
+            final URLSeenFilter urlSeen = this.index.urlSeen();
+            if (urlSeen != null && urlSeen.isReady() && this.log.isFine()) {
+                this.log.fine("url seen filter: " + urlSeen.size() + " urls, " + (urlSeen.mem() / 1024 / 1024) + " MB, " + urlSeen.queries() + " queries, "
+                        + urlSeen.negatives() + " negatives, false positive rate estimated " + urlSeen.estimatedFalsePositiveRate()
+                        + ", observed " + urlSeen.observedFalsePositiveRate());
+            }
+
             // write a thread dump to log path
             try {
                 final File tdlog = new File(this.dataPath, "DATA/LOG/threaddump.txt");
@@ -3068,6 +3141,7 @@ public final class Switchboard extends serverSwitch {
                 }
 
                 // insert those hyperlinks to the crawler
+                final List<Request> batch = this.getConfigBool(SwitchboardConstants.CRAWLER_STACK_BATCH, SwitchboardConstants.CRAWLER_STACK_BATCH_DEFAULT) ? new ArrayList<>(hl.size()) : null;
                 MultiProtocolURL nextUrl;
                 for ( final Map.Entry<AnchorURL, String> nextEntry : hl.entrySet() ) {
                     // check for interruption
@@ -3095,7 +3169,7 @@ public final class Switchboard extends serverSwitch {
                     // enqueue the hyperlink into the pre-notice-url db
                     final int nextdepth = nextEntry.getValue() != null && nextEntry.getValue().equals(Document.CANONICAL_MARKER) ? response.depth() : response.depth() + 1; // canonical documents are on the same depth
                     try {
-                        this.crawlStacker.enqueueEntry(new Request(
+                        final Request request = new Request(
                                 response.initiator(),
                                 new DigestURL(u),
                                 response.url().hash(),
@@ -3103,11 +3177,13 @@ public final class Switchboard extends serverSwitch {
                                 new Date(),
                                 response.profile().handle(),
                                 nextdepth,
-                                response.profile().timezoneOffset()));
+                                response.profile().timezoneOffset());
+                        if (batch == null) this.crawlStacker.enqueueEntry(request); else batch.add(request);
                     } catch (final MalformedURLException e ) {
                         ConcurrentLog.logException(e);
                     }
                 }
+                if (batch != null) this.crawlStacker.enqueueEntries(batch); // all links of the document are checked and stacked together
                 final long stackEndTime = System.currentTimeMillis();
                 if ( this.log.isInfo() ) {
                     this.log.info("CRAWL: ADDED "
@@ -3262,7 +3338,8 @@ public final class Switchboard extends serverSwitch {
                             in.queueEntry.profile().indexMedia(),
                             LibraryProvider.dymLib, true,
                             this.index.fulltext().getDefaultConfiguration().contains(CollectionSchema.dates_in_content_dts),
-                            profile.timezoneOffset());
+                            profile.timezoneOffset(),
+                            this.index.connectedPositions());
 
             // update image result list statistics
             // its good to do this concurrently here, because it needs a DNS lookup
@@ -3808,7 +3885,8 @@ public final class Switchboard extends serverSwitch {
                                 final Condenser condenser = new Condenser(
                                         document, null, true, true, LibraryProvider.dymLib, true,
                                         Switchboard.this.index.fulltext().getDefaultConfiguration().contains(CollectionSchema.dates_in_content_dts),
-                                        searchEvent == null ? 0 : searchEvent.query.timezoneOffset);
+                                        searchEvent == null ? 0 : searchEvent.query.timezoneOffset,
+                                        Switchboard.this.index.connectedPositions());
                                 ResultImages.registerImages(url, document, true);
                                 Switchboard.this.webStructure.generateCitationReference(url, document);
                                 Switchboard.this.storeDocumentIndex(
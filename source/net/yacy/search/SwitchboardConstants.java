@@ -338,6 +338,9 @@ public final class SwitchboardConstants {
     
     public static final String CORE_SERVICE_RWI                 = "core.service.rwi.tmp";
     public static final String CORE_SERVICE_CITATION            = "core.service.citation.tmp";
+    /** Key of the setting controlling whether the positions of the words of each document are stored in a positional index next to the RWI */
+    public static final String CORE_SERVICE_POSITIONS           = "core.service.positions";
+    public static final boolean CORE_SERVICE_POSITIONS_DEFAULT  = false;
     public static final String CORE_SERVICE_WEBGRAPH            = "core.service.webgraph.tmp";
 
     /**
@@ -346,9 +349,24 @@ public final class SwitchboardConstants {
      */
     public static final String CRAWLER_THREADS_ACTIVE_MAX       = "crawler.MaxActiveThreads";
     public static final String CRAWLER_LATENCY_FACTOR           = "crawler.latencyFactor";
+    /** Key of the setting for the maximum number of hosts whose latency and politeness statistics are kept */
+    public static final String CRAWLER_LATENCY_MAXHOSTS         = "crawler.latencyMaxHosts";
+    /** Key of the setting controlling whether the crawl stacker asks a probabilistic filter of seen urls before the exact double checks */
+    public static final String CRAWLER_URLSEEN_FILTER           = "crawler.urlSeenFilter";
+    public static final boolean CRAWLER_URLSEEN_FILTER_DEFAULT  = true;
+    /** Key of the setting controlling whether the links of a parsed document are stacked as one batch instead of one by one */
+    public static final String CRAWLER_STACK_BATCH              = "crawler.stackBatch";
+    public static final boolean CRAWLER_STACK_BATCH_DEFAULT     = true;
     public static final String CRAWLER_MAX_SAME_HOST_IN_QUEUE   = "crawler.MaxSameHostInQueue";
     public static final String CRAWLER_FOLLOW_REDIRECTS         = "crawler.http.FollowRedirects"; // ignore the target url and follow to the redirect
     public static final String CRAWLER_RECORD_REDIRECTS         = "crawler.http.RecordRedirects"; // record the ignored redirected page to the index store
+    /** Key of the setting controlling whether http resources are fetched with the non-blocking loader instead of a thread for each request */
+    public static final String CRAWLER_HTTP_ASYNC               = "crawler.http.async";
+    public static final boolean CRAWLER_HTTP_ASYNC_DEFAULT      = false;
+    /** Key of the setting for the maximum number of http requests that the non-blocking loader keeps in flight */
+    public static final String CRAWLER_HTTP_ASYNC_MAXINFLIGHT   = "crawler.http.async.maxInFlight";
+    /** Key of the setting for the maximum number of connections of the non-blocking loader to the same host */
+    public static final String CRAWLER_HTTP_ASYNC_MAXPERHOST    = "crawler.http.async.maxPerHost";
     
     public static final String CRAWLER_USER_AGENT_NAME          = "crawler.userAgent.name";
     public static final String CRAWLER_USER_AGENT_STRING        = "crawler.userAgent.string";
@@ -393,6 +411,63 @@ public final class SwitchboardConstants {
      * cache has reached this limit will slow down the indexing process by flushing some of it's entries</p>
      */
     public static final String WORDCACHE_MAX_COUNT              = "wordCacheMaxCount";
+
+    /** Key of the setting controlling whether closed RWI and citation index files are read through read-only memory mappings */
+    public static final String INDEX_RWI_MMAP                   = "index.rwi.mmap";
+
+    /** Default value of the setting controlling whether closed RWI and citation index files are memory mapped */
+    public static final boolean INDEX_RWI_MMAP_DEFAULT          = false;
+
+    /** Key of the setting controlling whether the indexes of closed RWI and citation index files are stored outside of the java heap */
+    public static final String INDEX_RWI_OFFHEAP                = "index.rwi.offHeapIndex";
+    public static final boolean INDEX_RWI_OFFHEAP_DEFAULT       = false;
+
+    /** Key of the setting controlling whether new RWI and citation index files store local document ids instead of url hashes */
+    public static final String INDEX_RWI_DOCIDS                 = "index.rwi.docids";
+    public static final boolean INDEX_RWI_DOCIDS_DEFAULT        = false;
+
+    /** Key of the setting for the number of stripes of the RAM buffer of the RWI and citation index */
+    public static final String INDEX_RWI_STRIPES                = "index.rwi.stripes";
+    public static final int INDEX_RWI_STRIPES_DEFAULT           = 1;
+
+    /** Key of the setting for the directory of the cold tier of the RWI and citation index files, empty if the files are not tiered */
+    public static final String INDEX_TIER_COLD_PATH             = "index.tier.cold.path";
+
+    /** Key of the setting for the minimum age in hours of an index file that is moved to the cold tier */
+    public static final String INDEX_TIER_COLD_MINAGE           = "index.tier.cold.minAgeHours";
+    public static final long INDEX_TIER_COLD_MINAGE_DEFAULT     = 48;
+
+    /** Key of the setting for the maximum reads per hour of an index file that is moved to the cold tier */
+    public static final String INDEX_TIER_COLD_MAXHITS          = "index.tier.cold.maxHitsPerHour";
+    public static final float INDEX_TIER_COLD_MAXHITS_DEFAULT   = 1.0f;
+
+    /** Key of the setting for the number of best references in the impact lists of large RWI containers, 0 writes no impact lists */
+    public static final String INDEX_RWI_IMPACT                 = "index.rwi.impact";
+    public static final int INDEX_RWI_IMPACT_DEFAULT            = 0;
+
+    /** Key of the setting for the number of threads that store indexed documents, 0 for one thread per processor */
+    public static final String INDEXER_STORE_CONCURRENCY        = "indexer.store.concurrency";
+    public static final int INDEXER_STORE_CONCURRENCY_DEFAULT   = 1;
+
+    /** Key of the setting for the maximum number of RWI merge jobs that run at the same time */
+    public static final String INDEX_MERGE_MAXPARALLEL          = "index.merge.maxParallel";
+    public static final int INDEX_MERGE_MAXPARALLEL_DEFAULT     = 1;
+
+    /** Key of the setting for the maximum number of RWI files that are joined in one merge job */
+    public static final String INDEX_MERGE_WIDTH                = "index.merge.width";
+    public static final int INDEX_MERGE_WIDTH_DEFAULT           = 4;
+
+    /** Key of the setting for the I/O budget of all RWI merge jobs together in bytes per second, 0 means unlimited */
+    public static final String INDEX_MERGE_MAXBYTESPERSECOND    = "index.merge.maxBytesPerSecond";
+    public static final long INDEX_MERGE_MAXBYTESPERSECOND_DEFAULT = 0;
+
+    /** Key of the setting for the block compression of the work tables: lz4, deflate, none or off for the uncompressed format */
+    public static final String TABLES_HEAP_CODEC                = "tables.heap.codec";
+    public static final String TABLES_HEAP_CODEC_DEFAULT        = "off";
+
+    /** Key of the setting for the group commit interval of the tables in milliseconds, 0 = no write-behind */
+    public static final String TABLES_COMMIT_INTERVAL           = "tables.commitInterval";
+    public static final long TABLES_COMMIT_INTERVAL_DEFAULT     = 0;
     public static final String HTTPC_NAME_CACHE_CACHING_PATTERNS_NO = "httpc.nameCacheNoCachingPatterns";
     public static final String ROBOTS_TXT                       = "httpd.robots.txt";
     public static final String ROBOTS_TXT_DEFAULT               = RobotsTxtConfig.LOCKED + "," + RobotsTxtConfig.DIRS;
@@ -664,6 +739,24 @@ public final class SwitchboardConstants {
     /** Default setting value controlling whether the ranking score value should be displayed for each search result in the HTML results page */
     public static final boolean SEARCH_RESULT_SHOW_RANKING_DEFAULT = false;
     
+    /** Key of the setting controlling the number of best urls that are joined from the local RWI index; 0 joins all references */
+    public static final String SEARCH_RANKING_RWI_TOPK = "search.ranking.rwi.topk";
+    
+    /** Default setting value of the number of best urls that are joined from the local RWI index: all references are joined */
+    public static final int SEARCH_RANKING_RWI_TOPK_DEFAULT = 0;
+    
+    /** Key of the setting controlling the memory in MB for the ranked result lists of expired search events; 0 switches the search result cache off */
+    public static final String SEARCH_RESULTCACHE_MEMORY = "search.resultcache.memory";
+    
+    /** Default setting value of the memory in MB for the search result cache: off, because documents added to the index are not seen until a cached result list expires */
+    public static final long SEARCH_RESULTCACHE_MEMORY_DEFAULT = 0;
+    
+    /** Key of the setting controlling the time in milliseconds for which a cached result list answers a repeated search */
+    public static final String SEARCH_RESULTCACHE_LIFETIME = "search.resultcache.lifetime";
+    
+    /** Default setting value of the lifetime of a cached result list: one minute */
+    public static final long SEARCH_RESULTCACHE_LIFETIME_DEFAULT = 60000;
+    
     /** Key of the setting controlling whether a tags/keywords list should be displayed for each search result in the HTML results page */
     public static final String SEARCH_RESULT_SHOW_KEYWORDS = "search.result.show.keywords";
     
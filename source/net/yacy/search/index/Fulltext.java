@@ -81,6 +81,7 @@ import net.yacy.kelondro.data.word.WordReferenceVars;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
+import net.yacy.search.query.SearchResultCache;
 import net.yacy.search.schema.CollectionConfiguration;
 import net.yacy.search.schema.CollectionSchema;
 import net.yacy.search.schema.WebgraphConfiguration;
@@ -262,6 +263,7 @@ public final class Fulltext {
                 this.commit(false);
             }
             this.solrInstances.clearCaches();
+            SearchResultCache.clear();
         } finally {
             this.solrInstancesLock.unlock();
         }
@@ -277,6 +279,7 @@ public final class Fulltext {
                 }
             }
             this.solrInstances.clearCaches();
+            SearchResultCache.clear();
         } finally {
             this.solrInstancesLock.unlock();
         }
@@ -376,6 +379,7 @@ public final class Fulltext {
         } catch (final SolrException e) {
             throw new IOException(e.getMessage(), e);
         }
+        SearchResultCache.invalidate(id); // the document may be a cached search result that is changed now
         if (MemoryControl.shortStatus()) clearCaches();
     }
 
@@ -424,6 +428,7 @@ public final class Fulltext {
      * @throws IOException
      */
     public void deleteStaleDomainHashes(final Set<String> hosthashes, Date freshdate) {
+        SearchResultCache.clear(); // the deleted url hashes are not known
         // delete in solr
         final Date now = new Date();
         deleteDomainWithConstraint(this.getDefaultConnector(), CollectionSchema.host_id_s.getSolrFieldName(), hosthashes,
@@ -435,6 +440,7 @@ public final class Fulltext {
     }
 
     public void deleteStaleDomainNames(final Set<String> hostnames, Date freshdate) {
+        SearchResultCache.clear(); // the deleted url hashes are not known
 
         final Date now = new Date();
         deleteDomainWithConstraint(this.getDefaultConnector(), CollectionSchema.host_s.getSolrFieldName(), hostnames,
@@ -480,6 +486,7 @@ public final class Fulltext {
         final Date deleteageDate = new Date(System.currentTimeMillis() - deltaToNow);
         final String collection1Query = (loaddate ? CollectionSchema.load_date_dt : CollectionSchema.last_modified).getSolrFieldName() + ":[* TO " + ISO8601Formatter.FORMATTER.format(deleteageDate) + "]";
         final String webgraphQuery = (loaddate ? WebgraphSchema.load_date_dt : WebgraphSchema.last_modified).getSolrFieldName() + ":[* TO " + ISO8601Formatter.FORMATTER.format(deleteageDate) + "]";
+        SearchResultCache.clear(); // the deleted url hashes are not known
         try {
             this.getDefaultConnector().deleteByQuery(collection1Query);
             if (this.getWebgraphConnector() != null) this.getWebgraphConnector().deleteByQuery(webgraphQuery);
@@ -522,6 +529,7 @@ public final class Fulltext {
      */
     public void remove(final Collection<String> deleteIDs) {
         if (deleteIDs == null || deleteIDs.size() == 0) return;
+        SearchResultCache.invalidate(deleteIDs);
         try {
             this.getDefaultConnector().deleteByIds(deleteIDs);
             if (this.writeWebgraph) { // Webgraph.id is combination of sourceHash+targetHash+hexCounter, to be successful use source_id_s and/or target_id_s
@@ -545,6 +553,7 @@ public final class Fulltext {
         if (urlHash == null) return false;
         try {
             final String id = ASCII.String(urlHash);
+            SearchResultCache.invalidate(id);
             this.getDefaultConnector().deleteById(id);
             if (this.writeWebgraph) { // Webgraph.id is combination of sourceHash+targetHash+hexCounter, to be successful use source_id_s and/or target_id_s
                 /* Add quotes around the url hash to prevent Solr logging a ParseException stack trace when the hash start with a '-' character */
@@ -64,6 +64,7 @@ import net.yacy.cora.util.LookAheadIterator;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.crawler.data.CrawlProfile;
 import net.yacy.crawler.data.Transactions;
+import net.yacy.crawler.data.URLSeenFilter;
 import net.yacy.crawler.retrieval.Response;
 import net.yacy.document.Condenser;
 import net.yacy.document.Document;
@@ -71,17 +72,22 @@ import net.yacy.document.Parser;
 import net.yacy.document.parser.htmlParser;
 import net.yacy.kelondro.data.citation.CitationReference;
 import net.yacy.kelondro.data.citation.CitationReferenceFactory;
+import net.yacy.kelondro.data.position.PositionReference;
+import net.yacy.kelondro.data.position.PositionReferenceFactory;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.data.word.WordReferenceFactory;
 import net.yacy.kelondro.data.word.WordReferenceRow;
 import net.yacy.kelondro.index.RowHandleSet;
+import net.yacy.kelondro.rwi.DocIdDictionary;
 import net.yacy.kelondro.rwi.IODispatcher;
 import net.yacy.kelondro.rwi.IndexCell;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.rwi.ReferenceFactory;
+import net.yacy.kelondro.rwi.ReferenceScore;
 import net.yacy.kelondro.table.IndexTable;
 import net.yacy.kelondro.util.Bitfield;
+import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.ISO639;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.repository.LoaderDispatcher;
@@ -111,12 +117,16 @@ public class Segment {
     public static final int  writeBufferSize = 4 * 1024 * 1024;
     public static final String termIndexName = "text.index";
     public static final String citationIndexName  = "citation.index";
+    public static final String positionIndexName  = "position.index";
     public static final String firstseenIndexName = "firstseen.index";
     public static final String loadtimeIndexName  = "loadtime.index";
+    public static final String urlseenFilterName  = "urlseen.filter";
+    public static final String docIdDictionaryName = "docid.dictionary";
 
     // the reference factory
     public static final ReferenceFactory<WordReference> wordReferenceFactory = new WordReferenceFactory();
     public static final ReferenceFactory<CitationReference> citationReferenceFactory = new CitationReferenceFactory();
+    public static final ReferenceFactory<PositionReference> positionReferenceFactory = new PositionReferenceFactory();
     public static final ByteOrder wordOrder = Base64Order.enhancedCoder;
 
     private   final ConcurrentLog                  log;
@@ -124,9 +134,16 @@ public class Segment {
     protected final Fulltext                       fulltext;
     protected       IndexCell<WordReference>       termIndex;
     private         IndexCell<CitationReference>   urlCitationIndex;
+    private         IndexCell<PositionReference>   positionIndex;
     private         IndexTable                     firstSeenIndex;
     private         IndexTable                     loadTimeIndex;
+    private         URLSeenFilter                  urlSeen = null; // the url hashes which the crawler has seen, null if the filter is not connected
     private         IODispatcher                   merger = null; // shared iodispatcher for kelondro indexes
+    private         boolean                        offHeapIndex = false; // store the indexes of the RWI and citation files off-heap
+    private         boolean                        compressDocIds = false; // store the url hashes of the RWI and citation files as document ids
+    private         DocIdDictionary                docIds = null; // the document id dictionary of the RWI and citation files
+    private         int                            bufferStripes = 1; // the number of stripes of the RAM buffers of the RWI and citation index
+    private         File                           coldPath = null; // the segment path of the cold tier of the RWI and citation files, null if the files are not tiered
 
     /**
      * create a new Segment
@@ -144,6 +161,7 @@ public class Segment {
         this.fulltext = new Fulltext(segmentPath, archivePath, collectionConfiguration, webgraphConfiguration);
         this.termIndex = null;
         this.urlCitationIndex = null;
+        this.positionIndex = null;
         this.firstSeenIndex = new IndexTable(new File(segmentPath, firstseenIndexName), 12, 8, false, false);
         this.loadTimeIndex = new IndexTable(new File(segmentPath, loadtimeIndexName), 12, 8, false, false);
     }
@@ -161,6 +179,7 @@ public class Segment {
         }
         this.termIndex = new IndexCell<WordReference>(
                         new File(this.segmentPath, "default"),
+                        coldCellPath(),
                         termIndexName,
                         wordReferenceFactory,
                         wordOrder,
@@ -169,7 +188,113 @@ public class Segment {
                         targetFileSize,
                         maxFileSize,
                         writeBufferSize,
-                        this.merger);
+                        this.merger,
+                        this.offHeapIndex,
+                        docIds(),
+                        this.bufferStripes);
+    }
+
+    /**
+     * select the storage of the indexes of the RWI and citation files. Must be called before connectRWI and connectCitation.
+     * @param offHeap true to store the file indexes outside of the java heap
+     */
+    public void setOffHeapIndex(final boolean offHeap) {
+        this.offHeapIndex = offHeap;
+    }
+
+    /**
+     * select the compression of the url hashes in the RWI and citation files with a dictionary of local document ids.
+     * Must be called before connectRWI and connectCitation. If the compression is switched off, the dictionary is still
+     * used to read the compressed containers of files that were written before, until they are merged.
+     * @param compress true to write the containers of new index files with document ids
+     */
+    public void setCompressDocIds(final boolean compress) {
+        this.compressDocIds = compress;
+    }
+
+    /**
+     * set the number of stripes of the RAM buffers of the RWI and citation index. Must be called before connectRWI and connectCitation.
+     * @param stripes the number of stripes; more stripes let more threads store documents at the same time
+     */
+    public void setBufferStripes(final int stripes) {
+        this.bufferStripes = Math.max(1, stripes);
+    }
+
+    /**
+     * open the document id dictionary that is shared by the RWI and citation index
+     * @return the dictionary or null if it is not used
+     */
+    private synchronized DocIdDictionary docIds() throws IOException {
+        if (this.docIds != null) return this.docIds;
+        final File f = new File(new File(this.segmentPath, "default"), docIdDictionaryName);
+        if (!this.compressDocIds && !f.exists()) return null;
+        this.docIds = new DocIdDictionary(f, Word.commonHashLength, wordOrder, this.compressDocIds);
+        return this.docIds;
+    }
+
+    /**
+     * select the directory of the cold tier of the RWI and citation files. Large files that are rarely read are
+     * moved there, so the segment path can be on fast storage and the cold path on large, slow storage.
+     * Must be called before connectRWI and connectCitation.
+     * @param coldPath the segment path on the cold storage, null to store all files in the segment path
+     */
+    public void setColdStorage(final File coldPath) {
+        this.coldPath = coldPath;
+    }
+
+    private File coldCellPath() {
+        return this.coldPath == null ? null : new File(this.coldPath, "default");
+    }
+
+    /**
+     * set the rules for moving the RWI and citation files between the hot and the cold tier, see IndexCell.setTierPolicy()
+     * @param minAge the minimum age of a file in the cold tier in milliseconds
+     * @param maxHitsPerHour the maximum reads per hour of a file that is moved to the cold tier
+     */
+    public void setTierPolicy(final long minAge, final double maxHitsPerHour) {
+        if (this.termIndex != null) this.termIndex.setTierPolicy(minAge, maxHitsPerHour);
+        if (this.urlCitationIndex != null) this.urlCitationIndex.setTierPolicy(minAge, maxHitsPerHour);
+        if (this.positionIndex != null) this.positionIndex.setTierPolicy(minAge, maxHitsPerHour);
+    }
+
+    /**
+     * write impact lists of the large RWI containers when the index files are merged, see IndexCell.setImpactOrder()
+     * @param score the score of the ranking profile that orders the impact lists
+     * @param size the number of best references in an impact list, 0 to write no impact lists
+     */
+    public void setImpactOrder(final ReferenceScore<WordReference> score, final int size) {
+        if (this.termIndex != null) this.termIndex.setImpactOrder(score, size);
+    }
+
+    /**
+     * switch read-only memory mapping of the BLOB files of the RWI and citation index
+     * @param mapped true to read index files through memory mappings
+     */
+    public void setMappedRead(final boolean mapped) {
+        if (this.termIndex != null) this.termIndex.setMappedRead(mapped);
+        if (this.urlCitationIndex != null) this.urlCitationIndex.setMappedRead(mapped);
+        if (this.positionIndex != null) this.positionIndex.setMappedRead(mapped);
+    }
+
+    /**
+     * set the limits for the merging of the RWI and citation index files
+     * @param maxParallel the maximum number of merge jobs that run at the same time
+     * @param width the maximum number of files that are joined in one merge job
+     * @param maxBytesPerSecond the I/O budget of all merge jobs together, 0 for unlimited
+     */
+    public void setMergeLimits(final int maxParallel, final int width, final long maxBytesPerSecond) {
+        final IODispatcher m = this.merger;
+        if (m == null) return;
+        m.setMaxParallelMerges(maxParallel);
+        m.setMergeWidth(width);
+        m.setMaxBytesPerSecond(maxBytesPerSecond);
+    }
+
+    /**
+     * @return the shared merger of the RWI and citation index, may be null if no such index is connected
+     */
+    public IODispatcher merger() {
+        return this.merger;
     }
 
     public void disconnectRWI() {
@@ -191,6 +316,7 @@ public class Segment {
         }
         this.urlCitationIndex = new IndexCell<CitationReference>(
                         new File(this.segmentPath, "default"),
+                        coldCellPath(),
                         citationIndexName,
                         citationReferenceFactory,
                         wordOrder,
@@ -199,7 +325,10 @@ public class Segment {
                         targetFileSize,
                         maxFileSize,
                         writeBufferSize,
-                        this.merger);
+                        this.merger,
+                        this.offHeapIndex,
+                        docIds(),
+                        this.bufferStripes);
     }
 
     public void disconnectCitation() {
@@ -208,6 +337,44 @@ public class Segment {
         this.urlCitationIndex = null;
     }
 
+    public boolean connectedPositions() {
+        return this.positionIndex != null;
+    }
+
+    /**
+     * open the positional index, which stores the positions of the words of each document in addition to the RWI.
+     * It is used to check phrases and near terms of a query before the results are ranked, see TermSearch.filter()
+     */
+    public void connectPositions(final int entityCacheMaxSize, final long maxFileSize) throws IOException {
+        if (this.positionIndex != null) return;
+
+        if (this.merger == null) { // init shared iodispatcher if none running
+            this.merger = new IODispatcher(2, 2, writeBufferSize);
+            this.merger.start();
+        }
+        this.positionIndex = new IndexCell<PositionReference>(
+                        new File(this.segmentPath, "default"),
+                        coldCellPath(),
+                        positionIndexName,
+                        positionReferenceFactory,
+                        wordOrder,
+                        Word.commonHashLength,
+                        entityCacheMaxSize,
+                        targetFileSize,
+                        maxFileSize,
+                        writeBufferSize,
+                        this.merger,
+                        this.offHeapIndex,
+                        docIds(),
+                        this.bufferStripes);
+    }
+
+    public void disconnectPositions() {
+        if (this.positionIndex == null) return;
+        this.positionIndex.close();
+        this.positionIndex = null;
+    }
+
     public int citationCount() {
         return this.urlCitationIndex == null ? 0 : this.urlCitationIndex.sizesMax();
     }
@@ -228,6 +395,13 @@ public class Segment {
         return this.urlCitationIndex;
     }
 
+    /**
+     * @return the positional index or null if it is not connected
+     */
+    public IndexCell<PositionReference> positionIndex() {
+        return this.positionIndex;
+    }
+
     public IndexTable firstSeenIndex() {
         return this.firstSeenIndex;
     }
@@ -236,6 +410,58 @@ public class Segment {
         return this.loadTimeIndex;
     }
 
+    /**
+     * open the filter of the url hashes which the crawler has seen. The filter is read from its dump, and the dump
+     * is deleted, so after a crash there is no outdated filter; without a dump the filter is rebuilt from the load
+     * time index in the background.
+     */
+    public void connectURLSeenFilter() {
+        if (this.urlSeen != null) return;
+        final File file = new File(this.segmentPath, urlseenFilterName);
+        if (file.exists()) {
+            try {
+                this.urlSeen = URLSeenFilter.read(file);
+                this.log.info("loaded url seen filter with " + this.urlSeen.size() + " urls, estimated false positive rate " + this.urlSeen.estimatedFalsePositiveRate());
+            } catch (final IOException e) {
+                this.log.warn("cannot read url seen filter " + file + ": " + e.getMessage());
+            }
+            FileUtils.deletedelete(file);
+        }
+        if (this.urlSeen == null) {
+            this.urlSeen = new URLSeenFilter(256, Math.max(100000, this.loadTimeIndex.size() * 2), 10);
+            rebuildURLSeenFilter();
+        }
+    }
+
+    /**
+     * add all urls of the load time index to the url seen filter in the background.
+     * The filter answers that every url may be known until this is finished.
+     */
+    public void rebuildURLSeenFilter() {
+        final URLSeenFilter filter = this.urlSeen;
+        if (filter == null) return;
+        final IndexTable index = this.loadTimeIndex;
+        new Thread("Segment.rebuildURLSeenFilter") {
+            @Override
+            public void run() {
+                try {
+                    final long start = System.currentTimeMillis();
+                    final long c = filter.rebuild(index.keys());
+                    Segment.this.log.info("rebuilt url seen filter from the load time index: " + c + " urls in " + (System.currentTimeMillis() - start) + " ms, " + (filter.mem() / 1024 / 1024) + " MB");
+                } catch (final IOException | RuntimeException e) {
+                    Segment.this.log.warn("cannot rebuild url seen filter: " + e.getMessage());
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * @return the filter of the url hashes which the crawler has seen or null if it is not connected
+     */
+    public URLSeenFilter urlSeen() {
+        return this.urlSeen;
+    }
+
     public ReferenceReportCache getReferenceReportCache()  {
         return new ReferenceReportCache();
     }
@@ -407,6 +633,7 @@ public class Segment {
 
     public void setLoadTime(final byte[] urlhash, long time) {
         if (urlhash == null || time <= 0) return;
+        if (this.urlSeen != null) this.urlSeen.add(urlhash);
         try {
             this.loadTimeIndex.put(urlhash, time); // ALWAYS overwrite!
         } catch (IOException e) {
@@ -489,6 +716,7 @@ public class Segment {
             if (this.fulltext != null) this.fulltext.clearLocalSolr();
             if (this.fulltext != null) this.fulltext.clearRemoteSolr();
             if (this.urlCitationIndex != null) this.urlCitationIndex.clear();
+            if (this.positionIndex != null) this.positionIndex.clear();
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
         }
@@ -496,6 +724,7 @@ public class Segment {
 
     public void clearCaches() {
         if (this.urlCitationIndex != null) this.urlCitationIndex.clearCache();
+        if (this.positionIndex != null) this.positionIndex.clearCache();
         if (this.termIndex != null) this.termIndex.clearCache();
         this.fulltext.clearCaches();
     }
@@ -508,12 +737,26 @@ public class Segment {
     	if (this.termIndex != null) this.termIndex.close();
         if (this.fulltext != null) this.fulltext.close();
         if (this.urlCitationIndex != null) this.urlCitationIndex.close();
+        if (this.positionIndex != null) this.positionIndex.close();
         if (this.firstSeenIndex != null) this.firstSeenIndex.close();
         if (this.loadTimeIndex != null) this.loadTimeIndex.close();
+        if (this.urlSeen != null) {
+            // an incomplete filter is not written, it is rebuilt at the next start
+            if (this.urlSeen.isReady()) try {
+                this.urlSeen.write(new File(this.segmentPath, urlseenFilterName));
+            } catch (final IOException e) {
+                this.log.warn("cannot write url seen filter: " + e.getMessage());
+            }
+            this.urlSeen = null;
+        }
         if (this.merger != null) {
             this.merger.terminate();
             this.merger = null;
         }
+        if (this.docIds != null) {
+            this.docIds.close();
+            this.docIds = null;
+        }
     }
 
     public static String votedLanguage(
@@ -770,6 +1013,7 @@ public class Segment {
                 wordhash = Word.word2hash(word);
                 if (this.termIndex != null && storeToRWI) try {
                     this.termIndex.add(wordhash, ientry);
+                    if (this.positionIndex != null && wprop.hasPositions()) this.positionIndex.add(wordhash, new PositionReference(url.hash(), wprop));
                 } catch (final Exception e) {
                     ConcurrentLog.logException(e);
                 }
@@ -845,11 +1089,12 @@ public class Segment {
             }
             // get the word set
             Set<String> words = null;
-            words = new Condenser(document, null, true, true, null, false, false, 0).words().keySet();
+            words = new Condenser(document, null, true, true, null, false, false, 0, false).words().keySet();
 
             // delete all word references
             int count = 0;
             if (words != null && termIndex() != null) count = termIndex().remove(Word.words2hashesHandles(words), urlhash);
+            if (words != null && positionIndex() != null) positionIndex().remove(Word.words2hashesHandles(words), urlhash);
 
             // finally delete the url entry itself
             fulltext().remove(urlhash);
@@ -32,6 +32,8 @@ import java.util.Locale;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.http.HttpStatus;
 
@@ -40,9 +42,14 @@ import net.yacy.cora.federate.solr.connector.AbstractSolrConnector;
 import net.yacy.cora.order.NaturalOrder;
 import net.yacy.cora.protocol.Domains;
 import net.yacy.cora.storage.HandleSet;
+import net.yacy.cora.util.CommonPattern;
+import net.yacy.document.SentenceReader;
+import net.yacy.document.Tokenizer;
+import net.yacy.document.WordTokenizer;
 import net.yacy.document.parser.html.AbstractScraper;
 import net.yacy.document.parser.html.CharacterCoding;
 import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.rwi.PositionConstraint;
 import net.yacy.kelondro.util.SetTools;
 import net.yacy.search.index.Segment;
 import net.yacy.search.schema.CollectionSchema;
@@ -53,11 +60,14 @@ public class QueryGoal {
     private static char sq = '\'';
     private static char dq = '"';
     private static String seps = ":;#*`!$%()=?^<>/&_";
+    private static final Pattern NEAR_OPERATOR = Pattern.compile("NEAR/(\\d{1,4})"); // the operator between two words with at most the given number of words between them
 
     public String query_original;
     private HandleSet include_hashes, exclude_hashes;
     private final NormalizedWords include_words, exclude_words;
     private final ArrayList<String> include_strings, exclude_strings;
+    private final ArrayList<String[]> near_words; // pairs of words which are connected with a NEAR operator
+    private final ArrayList<Integer> near_distances; // the distance of each pair in near_words
 
     public static class NormalizedWords extends TreeSet<String> {
 
@@ -95,6 +105,8 @@ public class QueryGoal {
         this.exclude_words = new NormalizedWords();
         this.include_strings = new ArrayList<String>();
         this.exclude_strings = new ArrayList<String>();
+        this.near_words = new ArrayList<String[]>();
+        this.near_distances = new ArrayList<Integer>();
         this.include_hashes = include_hashes;
         this.exclude_hashes = exclude_hashes;
     }
@@ -110,6 +122,11 @@ public class QueryGoal {
         this.exclude_words = new NormalizedWords();
         this.include_strings = new ArrayList<String>();
         this.exclude_strings = new ArrayList<String>();
+        this.near_words = new ArrayList<String[]>();
+        this.near_distances = new ArrayList<Integer>();
+
+        // remove the NEAR operators, the words left and right of them are kept as search words
+        if (query_words.indexOf("NEAR/") >= 0) query_words = parseNear(query_words);
 
         // remove funny symbols
         query_words = CharacterCoding.html2unicode(AbstractScraper.stripAllTags(query_words.toCharArray())).toLowerCase().trim();
@@ -145,6 +162,43 @@ public class QueryGoal {
  * sq         = '\''
  * dq         = '"'
  */
+    /**
+     * extract the NEAR/k operators from a query. The operator connects the words left and right of it;
+     * it is written in upper case to distinguish it from the word 'near'.
+     * @param query the original query
+     * @return the query without the operators
+     */
+    private String parseNear(final String query) {
+        final String[] tokens = CommonPattern.SPACES.split(query.trim());
+        final StringBuilder sb = new StringBuilder(query.length());
+        for (int i = 0; i < tokens.length; i++) {
+            final Matcher m = NEAR_OPERATOR.matcher(tokens[i]);
+            if (!m.matches()) {
+                sb.append(tokens[i]).append(space);
+                continue;
+            }
+            if (i == 0 || i == tokens.length - 1) continue;
+            final String left = nearWord(tokens[i - 1]), right = nearWord(tokens[i + 1]);
+            if (left == null || right == null) continue;
+            this.near_words.add(new String[]{left, right});
+            this.near_distances.add(Integer.parseInt(m.group(1)));
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * @return the normalized word or null if the token is not a single word that can be connected with a NEAR operator
+     */
+    private static String nearWord(String token) {
+        if (token.length() > 0 && token.charAt(0) == '+') token = token.substring(1);
+        if (token.length() == 0 || token.charAt(0) == '-' || NEAR_OPERATOR.matcher(token).matches()) return null;
+        for (int i = 0; i < token.length(); i++) {
+            final char c = token.charAt(i);
+            if (c == sq || c == dq || seps.indexOf(c) >= 0) return null;
+        }
+        return token.toLowerCase(Locale.ENGLISH);
+    }
+
     private static void parseQuery(String s, Collection<String> include_string, Collection<String> exclude_string) {
 
         while (s.length() > 0) {
@@ -327,6 +381,50 @@ public class QueryGoal {
         return sb.toString().substring(0, sb.length() - 1);
     }
 
+    /**
+     * compute the conditions on the word positions of the query: each quoted string with more than one word is a phrase,
+     * each NEAR operator connects two words. Only words that are searched are part of the conditions, so stopwords
+     * in a phrase are left out but keep their place. The phrase is split into words like the text of a document
+     * in the Tokenizer, so that the word offsets in the phrase match the word positions in the positional index.
+     * @return the position constraints, empty if the query has no phrase or NEAR operator
+     */
+    public List<PositionConstraint> getPositionConstraints() {
+        final List<PositionConstraint> constraints = new ArrayList<PositionConstraint>();
+        final HandleSet hashes = getIncludeHashes();
+        for (final String s: this.include_strings) {
+            if (s.indexOf(space) < 0) continue;
+            final List<byte[]> termHashes = new ArrayList<byte[]>();
+            final List<Integer> offsets = new ArrayList<Integer>();
+            int offset = 0;
+            WordTokenizer words = new WordTokenizer(new SentenceReader(s), null);
+            try {
+                while (words.hasMoreElements()) {
+                    final String word = words.nextElement().toString().toLowerCase(Locale.ENGLISH);
+                    if (word.length() == 1 && SentenceReader.punctuation(word.charAt(0))) continue;
+                    if (word.length() < Tokenizer.wordminsize) continue;
+                    final byte[] wordhash = Word.word2hash(word);
+                    if (hashes.has(wordhash)) {
+                        termHashes.add(wordhash);
+                        offsets.add(offset);
+                    }
+                    offset++;
+                }
+            } finally {
+                words.close();
+                words = null;
+            }
+            if (termHashes.size() < 2) continue;
+            final int[] o = new int[offsets.size()];
+            for (int i = 0; i < o.length; i++) o[i] = offsets.get(i);
+            constraints.add(PositionConstraint.phrase(termHashes.toArray(new byte[termHashes.size()][]), o));
+        }
+        for (int i = 0; i < this.near_words.size(); i++) {
+            final byte[] h0 = Word.word2hash(this.near_words.get(i)[0]), h1 = Word.word2hash(this.near_words.get(i)[1]);
+            if (hashes.has(h0) && hashes.has(h1)) constraints.add(PositionConstraint.near(h0, h1, this.near_distances.get(i)));
+        }
+        return constraints;
+    }
+
     public boolean isCatchall() {
         if (this.include_hashes != null && this.include_hashes.has(Segment.catchallHash)) return true;
         if (this.include_strings == null || this.include_strings.size() != 1) return false;
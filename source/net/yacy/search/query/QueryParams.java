@@ -73,6 +73,7 @@ import net.yacy.document.Tokenizer;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.data.word.WordReferenceRow;
 import net.yacy.kelondro.index.RowHandleSet;
+import net.yacy.kelondro.rwi.PositionConstraint;
 import net.yacy.kelondro.util.Bitfield;
 import net.yacy.kelondro.util.SetTools;
 import net.yacy.peers.Seed;
@@ -962,6 +963,7 @@ public final class QueryParams {
                 context.append(hashSet2hashString(this.queryGoal.getIncludeHashes()));
                 context.append('-');
                 context.append(hashSet2hashString(this.queryGoal.getExcludeHashes()));
+                for (final PositionConstraint constraint: this.queryGoal.getPositionConstraints()) context.append(constraint.toString());
             }
             //context.append(asterisk);
             //context.append(this.domType);
@@ -80,13 +80,17 @@ import net.yacy.document.LibraryProvider;
 import net.yacy.document.ProbabilisticClassifier;
 import net.yacy.document.Tokenizer;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
+import net.yacy.kelondro.data.position.PositionReference;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.data.word.WordReferenceFactory;
 import net.yacy.kelondro.data.word.WordReferenceVars;
 import net.yacy.kelondro.index.RowHandleSet;
+import net.yacy.kelondro.rwi.IndexCell;
+import net.yacy.kelondro.rwi.PositionConstraint;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.rwi.TermSearch;
+import net.yacy.kelondro.rwi.TermStatistics;
 import net.yacy.kelondro.util.Bitfield;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.SetTools;
@@ -189,6 +193,9 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     private final ConcurrentHashMap<String, LinkedHashSet<String>> snippets;
     private final boolean remote;
 
+    /** true if the results were taken from the SearchResultCache instead of a search */
+    private final boolean cached;
+
     /** add received results to local index (defult=true) */
     public final boolean addResultsToLocalIndex;
 
@@ -238,6 +245,9 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     /** the number of existing hits by the local search in rwi index, before any supplementary filtering */
     public final AtomicInteger local_rwi_stored;
 
+    /** an estimate of the number of hits in the local rwi index, taken from the term statistics before the rwi is searched; 0 if unknown */
+    public final AtomicInteger local_rwi_estimated;
+
     /** the number of hits imported from remote peers (rwi/solr mixed + eventual site heuristics), after filtering */
     public final AtomicInteger remote_rwi_available;
 
@@ -285,6 +295,24 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
                 );
     }
 
+    /**
+     * estimate the number of documents in the local rwi that contain all included words without reading the references:
+     * a conjunction can not have more documents than its rarest word
+     * @param termIndex the local rwi
+     * @return the number of references of the rarest included word, or 0 if it is not known
+     */
+    private int estimateRWICount(final IndexCell<WordReference> termIndex) {
+        final HandleSet includeHashes = this.query.getQueryGoal().getIncludeHashes();
+        if (includeHashes.isEmpty()) return 0;
+        int estimate = Integer.MAX_VALUE;
+        for (final byte[] termHash: includeHashes) {
+            final TermStatistics.Entry statistics = termIndex.statistics(termHash);
+            if (statistics == null) return 0;
+            estimate = Math.min(estimate, statistics.df());
+        }
+        return estimate;
+    }
+
     /**
      * @return the total number of successful write operations performed on all the active navigators since their initialization.
      */
@@ -318,7 +346,8 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
             final int remote_maxcount,
             final long remote_maxtime,
             final boolean deleteIfSnippetFail,
-            final boolean addResultsToLocalIdx) {
+            final boolean addResultsToLocalIdx,
+            final SearchResultCache.Hit cachedResults) {
 
         long ab = MemoryControl.available();
         if (ab < 1024 * 1024 * 200) {
@@ -394,12 +423,14 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         this.heuristics = new TreeMap<>(Base64Order.enhancedCoder);
         this.IAmaxcounthash = null;
         this.IAneardhthash = null;
-        this.remote = (peers != null && peers.sizeConnected() > 0) && (this.query.domType == QueryParams.Searchdom.CLUSTER || (this.query.domType == QueryParams.Searchdom.GLOBAL && Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.INDEX_RECEIVE_ALLOW_SEARCH, false)));
+        this.cached = cachedResults != null;
+        this.remote = !this.cached && (peers != null && peers.sizeConnected() > 0) && (this.query.domType == QueryParams.Searchdom.CLUSTER || (this.query.domType == QueryParams.Searchdom.GLOBAL && Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.INDEX_RECEIVE_ALLOW_SEARCH, false)));
         this.addResultsToLocalIndex = addResultsToLocalIdx;
         /* Défault : no size limit to store remote result documents to local index. Use setter to eventually modify it. */
         this.remoteStoredDocMaxSize = -1;
         this.local_rwi_available  = new AtomicInteger(0); // the number of results in the local peer after filtering
         this.local_rwi_stored     = new AtomicInteger(0);
+        this.local_rwi_estimated  = new AtomicInteger(0);
         this.local_solr_evicted   = new AtomicInteger(0);
         this.local_solr_stored    = new AtomicInteger(0);
         this.remote_rwi_stored    = new AtomicInteger(0);
@@ -432,6 +463,11 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         this.addRunning = true;
         this.receivedRemoteReferences = new AtomicInteger(0);
         this.order = new ReferenceOrder(this.query.ranking, this.query.targetlang);
+        final IndexCell<WordReference> termIndex = this.query.getSegment().termIndex();
+        if (termIndex != null && !this.cached) {
+            this.order.setDocuments(this.query.getSegment().fulltext().collectionSize());
+            this.local_rwi_estimated.set(estimateRWICount(termIndex));
+        }
         this.urlhashes = new RowHandleSet(Word.commonHashLength, Word.commonHashOrder, 100);
         this.taggingPredicates = new HashMap<>();
         for (final Tagging t: LibraryProvider.autotagging.getVocabularies()) {
@@ -439,7 +475,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         }
 
         // start a local solr search
-        if (!Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_SOLR_OFF, false)) {
+        if (!this.cached && !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_SOLR_OFF, false)) {
             final boolean useSolrFacets = true;
             this.localsolrsearch = RemoteSearch.solrRemoteSearch(this,
                     this.query.solrQuery(this.query.contentdom, this.query.isStrictContentDom(), useSolrFacets, this.excludeintext_image), this.query.offset,
@@ -449,7 +485,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
 
         // start a local RWI search concurrently
         this.rwiProcess = null;
-        if (query.getSegment().connectedRWI() && !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_DHT_OFF, false)) {
+        if (!this.cached && query.getSegment().connectedRWI() && !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_DHT_OFF, false)) {
             // we start the local search only if this peer is doing a remote search or when it is doing a local search and the peer is old
             this.rwiProcess = new RWIProcess(this.localsolrsearch);
             this.rwiProcess.start();
@@ -569,6 +605,24 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         // remove stopwords
         this.snippetFetchWords.removeAll(Switchboard.stopwords);
 
+        if (this.cached) {
+            // take the results of the page from the result cache; they are already ranked, their order is kept
+            this.oneFeederStarted();
+            final int[] counters = cachedResults.counters();
+            final AtomicInteger[] c = this.counterFields();
+            for (int i = 0; i < c.length; i++) c[i].set(counters[i]);
+            cachedResults.incNavigators(this);
+            final int count = cachedResults.nodes.size();
+            for (int i = 0; i < count; i++) {
+                final URIMetadataNode node = cachedResults.nodes.get(i).makeResultEntry(this.query.getSegment(), this.peers, cachedResults.snippets.get(i));
+                node.setScore(cachedResults.scores.get(i));
+                this.resultList.put(new ReverseElement<>(node, count - i));
+                this.addTopics(node);
+            }
+            this.oneFeederTerminated();
+            EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(this.query.id(true), SearchEventType.RESULTLIST, "result cache", count, System.currentTimeMillis() - start), false);
+        }
+
         // clean up events
         SearchEventCache.cleanupEvents(false);
         EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(this.query.id(true), SearchEventType.CLEANUP, "", 0, 0), false);
@@ -607,6 +661,10 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
             // so following sortings together with the global results will be fast
             try {
                 final long timer = System.currentTimeMillis();
+                final int topk = Switchboard.getSwitchboard().getConfigInt(SwitchboardConstants.SEARCH_RANKING_RWI_TOPK, SwitchboardConstants.SEARCH_RANKING_RWI_TOPK_DEFAULT);
+                // with a positional index, phrases and NEAR operators are checked after the join with the exact word positions
+                final IndexCell<PositionReference> positionIndex = SearchEvent.this.query.getSegment().positionIndex();
+                final List<PositionConstraint> constraints = positionIndex == null ? new ArrayList<PositionConstraint>(0) : SearchEvent.this.query.getQueryGoal().getPositionConstraints();
                 TermSearch<WordReference> search =
                         SearchEvent.this.query
                         .getSegment()
@@ -616,7 +674,13 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
                                 SearchEvent.this.query.getQueryGoal().getExcludeHashes(),
                                 null,
                                 Segment.wordReferenceFactory,
-                                SearchEvent.this.query.maxDistance);
+                                constraints.isEmpty() ? SearchEvent.this.query.maxDistance : Integer.MAX_VALUE,
+                                SearchEvent.this.order,
+                                topk);
+                if (!constraints.isEmpty()) {
+                    final int removed = search.filter(positionIndex, constraints, SearchEvent.this.query.maxDistance);
+                    if (log.isFine()) log.fine("position constraints removed " + removed + " references for " + SearchEvent.this.query.getQueryGoal().getQueryString(false));
+                }
                 SearchEvent.this.localSearchInclusion = search.inclusion();
                 ReferenceContainer<WordReference> index = search.joined();
                 if ( !index.isEmpty() ) {
@@ -642,7 +706,9 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
                                         SearchEvent.this.query.getQueryGoal().getExcludeHashes(),
                                         null,
                                         Segment.wordReferenceFactory,
-                                        SearchEvent.this.query.maxDistance);
+                                        SearchEvent.this.query.maxDistance,
+                                        SearchEvent.this.order,
+                                        topk);
                         SearchEvent.this.localSearchInclusion = search.inclusion();
                         index = search.joined();
                         if (!index.isEmpty()) {
@@ -836,6 +902,54 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         return this.eventTime;
     }
 
+    /**
+     * @return true if the results were taken from the SearchResultCache
+     */
+    public boolean isCached() {
+        return this.cached;
+    }
+
+    private AtomicInteger[] counterFields() {
+        return new AtomicInteger[]{this.local_rwi_available, this.local_rwi_stored, this.local_solr_evicted, this.local_solr_stored,
+                this.remote_rwi_stored, this.remote_rwi_available, this.remote_rwi_peerCount,
+                this.remote_solr_stored, this.remote_solr_available, this.remote_solr_peerCount};
+    }
+
+    /**
+     * @return the values of the result counters, to be restored by an event that is answered from the SearchResultCache
+     */
+    protected int[] counters() {
+        final AtomicInteger[] c = this.counterFields();
+        final int[] values = new int[c.length];
+        for (int i = 0; i < c.length; i++) values[i] = c[i].get();
+        return values;
+    }
+
+    /**
+     * get the ranked results of this event for the SearchResultCache. The results in the queue are drained, so this
+     * must only be called when the event is not used any more.
+     * @param max the maximum number of results
+     * @return the results in the order in which they are shown
+     */
+    protected List<WeakPriorityBlockingQueue.Element<URIMetadataNode>> cachableResults(final int max) {
+        final List<WeakPriorityBlockingQueue.Element<URIMetadataNode>> list = this.resultList.list(Math.min(max, this.resultList.sizeAvailable()));
+        return list == null ? null : new ArrayList<>(list.subList(0, Math.min(max, list.size())));
+    }
+
+    /**
+     * get the navigator of a vocabulary, it is created if it does not exist
+     */
+    protected ScoreMap<String> vocabularyNavigator(final String vocName) {
+        synchronized (this.vocabularyNavigator) {
+            ScoreMap<String> vocNav = this.vocabularyNavigator.get(vocName);
+            if (vocNav == null) {
+                vocNav = new ConcurrentScoreMap<>();
+                this.vocabularyNavigator.put(vocName, vocNav);
+            }
+            return vocNav;
+        }
+    }
+
     protected void resetEventTime() {
         this.eventTime = System.currentTimeMillis();
     }
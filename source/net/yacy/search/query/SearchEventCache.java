@@ -64,6 +64,7 @@ public class SearchEventCache {
     }
 
     public static boolean delete(final String urlhash) {
+        SearchResultCache.invalidate(urlhash);
         synchronized (lastEvents) {
             for (final SearchEvent event: lastEvents.values()) {
                 if (event.delete(urlhash)) return true;
@@ -75,6 +76,7 @@ public class SearchEventCache {
     public static void cleanupEvents(boolean all) {
         // remove old events in the event cache
         if (MemoryControl.shortStatus()) all = true;
+        if (all) SearchResultCache.clear(); // the results may have changed or the memory is needed
         // the less memory is there, the less time is acceptable for elements in the cache
         final long memx = MemoryControl.available();
         final long acceptTime = memx > memlimitHigh ? eventLifetimeBigMem : memx > memlimitMedium ? eventLifetimeMediumMem : eventLifetimeShortMem;
@@ -87,6 +89,7 @@ public class SearchEventCache {
                 event = eventEntry.getValue();
                 if (event == null) continue;
                 if (all || event.getEventTime() + acceptTime < System.currentTimeMillis()) {
+                    if (!all) SearchResultCache.put(event); // keep the ranked results of expired events
                     event.cleanup();
                     i.remove();
                     cacheDelete++;
@@ -108,6 +111,7 @@ public class SearchEventCache {
                 eventEntry = i.next();
                 event = eventEntry.getValue();
                 if (event == null) continue;
+                SearchResultCache.put(event);
                 event.cleanup();
                 i.remove();
                 cacheDelete++;
@@ -144,7 +148,8 @@ public class SearchEventCache {
         if (MemoryControl.shortStatus()) cleanupEvents(true);
         final String id = query.id(false);
         SearchEvent event = getEvent(id);
-        if (Switchboard.getSwitchboard() != null && !Switchboard.getSwitchboard().crawlQueues.noticeURL.isEmpty() && event != null && System.currentTimeMillis() - event.getEventTime() > 60000) {
+        final boolean crawling = Switchboard.getSwitchboard() != null && !Switchboard.getSwitchboard().crawlQueues.noticeURL.isEmpty();
+        if (crawling && event != null && System.currentTimeMillis() - event.getEventTime() > 60000) {
             // if a local crawl is ongoing, don't use the result from the cache to use possibly more results that come from the current crawl
             // to prevent that this happens during a person switches between the different result pages, a re-search happens no more than
             // once a minute
@@ -155,11 +160,13 @@ public class SearchEventCache {
             event = null;
         } else {
             if (event != null) {
-            	if(query.isLocal()) {
+            	if(query.isLocal() || event.isCached()) {
             		/* Searching the local index only : we do not reuse the cached event each time the page size or offset changes.
             		 * This allow to request last result pages of large result sets (larger than SearchEvent.max_results_node) 
-            		 * without the need to retrieve all the beginning pages */
+            		 * without the need to retrieve all the beginning pages. An event that was answered from the result cache
+            		 * holds only the results of its page. */
             		if(event.query.offset != query.offset || event.query.itemsPerPage != query.itemsPerPage) {
+                        SearchResultCache.put(event);
                         synchronized (lastEvents) {
                             lastEvents.remove(id);
                         }
@@ -186,7 +193,9 @@ public class SearchEventCache {
             final boolean delete = sb == null || Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.SEARCH_VERIFY_DELETE, true)
                     || (sb.getConfigBool(SwitchboardConstants.NETWORK_SEARCHVERIFY, false) && sb.peers.mySeed().getFlagAcceptRemoteIndex());
             final boolean addToLocalIdx = sb == null || Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.REMOTESEARCH_RESULT_STORE, true);
-            event = new SearchEvent(query, peers, workTables, preselectedPeerHashes, generateAbstracts, loader, remote_maxcount, remote_maxtime, delete, addToLocalIdx);
+            // a search that was done before may be answered from the result cache; this is not possible if abstracts are requested
+            final SearchResultCache.Hit cachedResults = generateAbstracts ? null : SearchResultCache.get(query, crawling);
+            event = new SearchEvent(query, peers, workTables, preselectedPeerHashes, generateAbstracts, loader, remote_maxcount, remote_maxtime, delete, addToLocalIdx, cachedResults);
             /* Optional config option may be valued to limit size of remote documents added to local index */
             if(sb != null) {
             	event.setRemoteDocStoredMaxSize(sb.getConfigLong(SwitchboardConstants.REMOTESEARCH_RESULT_STORE_MAXSIZE, -1));
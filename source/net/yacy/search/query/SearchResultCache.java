@@ -0,0 +1,455 @@
+// SearchResultCache.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.search.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.yacy.cora.document.analysis.Classification.ContentDomain;
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.sorting.ScoreMap;
+import net.yacy.cora.sorting.WeakPriorityBlockingQueue;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.kelondro.data.meta.URIMetadataNode;
+import net.yacy.search.index.Fulltext;
+import net.yacy.search.navigator.Navigator;
+import net.yacy.search.snippet.TextSnippet;
+
+/**
+ * A second-level cache for search results. SearchEventCache holds complete search events for some minutes;
+ * when an event that has finished its search expires there, its ranked result list is stored here in a compact
+ * form: the url hashes, scores and snippets of the results, the result counters and the counts of the navigators.
+ * A later search with the same query id (the normalized query goal, ranking profile and modifiers, see
+ * QueryParams.id()) is then answered from this list: only the metadata of the shown results is read from the
+ * local index, no RWI, Solr or remote search is started.
+ *
+ * The cache is bounded by an estimate of its memory. It is a segmented LRU: new entries are stored in a
+ * probation segment, entries that are hit again move to a protected segment that holds up to 80% of the memory.
+ * Entries are evicted from the probation segment first, so a burst of queries that are done only once cannot
+ * displace the popular ones. Entries expire after a lifetime because new documents are not reflected, and
+ * they are invalidated when one of their documents is deleted or updated in the Fulltext.
+ */
+public class SearchResultCache {
+
+    private final static ConcurrentLog log = new ConcurrentLog("SearchResultCache");
+
+    public final static int MAX_RESULTS = 100; // the maximum number of results of an event that are stored
+    private final static int MAX_NAVIGATOR_KEYS = 200; // the maximum number of keys that are stored for a navigator
+    private final static int PROTECTED_SHARE = 80; // percent of the memory for entries that were hit at least once
+
+    private final static String NAV_LOCATION = "location", NAV_PROTOCOL = "protocol", NAV_DATE = "date", NAV_TOPICS = "topics",
+            NAV_VOCABULARY = "vocabulary:", NAV_PLUGIN = "plugin:";
+
+    private static final Object lock = new Object();
+    private static final LinkedHashMap<String, Entry> probation = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private static final LinkedHashMap<String, Entry> protectd = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private static final Map<String, Set<String>> urlIndex = new ConcurrentHashMap<String, Set<String>>(); // url hash to ids of entries that contain it
+    private static long memory = 0, protectedMemory = 0;
+    private static long maxMemory = 0;
+    private static long lifetime = 60000L;
+
+    public static long cacheHit = 0, cacheMiss = 0, cacheInsert = 0, cacheDelete = 0, cacheInvalidate = 0;
+
+    /**
+     * a snapshot of a score map
+     */
+    static final class Counts {
+        private final String[] keys;
+        private final int[] counts;
+
+        private Counts(final ScoreMap<String> map) {
+            final List<String> k = new ArrayList<String>(Math.min(map.size(), MAX_NAVIGATOR_KEYS));
+            final Iterator<String> i = map.keys(false);
+            while (i.hasNext() && k.size() < MAX_NAVIGATOR_KEYS) k.add(i.next());
+            this.keys = k.toArray(new String[k.size()]);
+            this.counts = new int[this.keys.length];
+            for (int j = 0; j < this.keys.length; j++) this.counts[j] = map.get(this.keys[j]);
+        }
+
+        private void incTo(final ScoreMap<String> map) {
+            for (int j = 0; j < this.keys.length; j++) if (this.counts[j] > 0) map.inc(this.keys[j], this.counts[j]);
+        }
+
+        private long mem() {
+            long m = 48 + 8L * this.keys.length;
+            for (final String key: this.keys) m += 40 + 2L * key.length();
+            return m;
+        }
+    }
+
+    /**
+     * the ranked result list of an expired search event
+     */
+    public static final class Entry {
+        private final String id;
+        private final int first; // the item number of the first stored result
+        private final boolean complete; // true if the event had no more results than stored
+        private final byte[][] urlhashes;
+        private final long[] scores;
+        private final TextSnippet[] snippets;
+        private final int[] counters; // the result counters of the event, see SearchEvent.counters()
+        private final Map<String, Counts> navigators;
+        private final long time;
+        private final long mem;
+
+        Entry(final String id, final int first, final boolean complete, final byte[][] urlhashes, final long[] scores,
+                final TextSnippet[] snippets, final int[] counters, final Map<String, Counts> navigators, final long time) {
+            this.id = id;
+            this.first = first;
+            this.complete = complete;
+            this.urlhashes = urlhashes;
+            this.scores = scores;
+            this.snippets = snippets;
+            this.counters = counters;
+            this.navigators = navigators;
+            this.time = time;
+            long m = 200 + 2L * id.length() + 4L * counters.length;
+            for (int i = 0; i < urlhashes.length; i++) {
+                m += 140; // hash array, score, snippet object and the reference in the url index
+                final TextSnippet s = snippets[i];
+                if (s != null && s.getLineRaw() != null) m += 40 + 2L * s.getLineRaw().length();
+            }
+            for (final Counts c: navigators.values()) m += c.mem();
+            this.mem = m;
+        }
+
+        public int size() {
+            return this.urlhashes.length;
+        }
+
+        public long getTime() {
+            return this.time;
+        }
+
+        public long mem() {
+            return this.mem;
+        }
+
+        /**
+         * @return true if the results of a page that starts with item offset are stored
+         */
+        boolean covers(final int offset, final int itemsPerPage) {
+            if (offset < this.first) return false;
+            return this.complete || offset + itemsPerPage <= this.first + this.urlhashes.length;
+        }
+    }
+
+    /**
+     * the results of a cache entry for a page of a query, with their metadata from the local index
+     */
+    public static final class Hit {
+        final Entry entry;
+        final List<URIMetadataNode> nodes;
+        final List<Long> scores;
+        final List<TextSnippet> snippets;
+
+        private Hit(final Entry entry, final int size) {
+            this.entry = entry;
+            this.nodes = new ArrayList<URIMetadataNode>(size);
+            this.scores = new ArrayList<Long>(size);
+            this.snippets = new ArrayList<TextSnippet>(size);
+        }
+
+        int[] counters() {
+            return this.entry.counters;
+        }
+
+        /**
+         * add the stored counts of all navigators to the navigators of a new event
+         */
+        void incNavigators(final SearchEvent event) {
+            for (final Map.Entry<String, Counts> nav: this.entry.navigators.entrySet()) {
+                final String name = nav.getKey();
+                if (NAV_LOCATION.equals(name)) {
+                    if (event.locationNavigator != null) nav.getValue().incTo(event.locationNavigator);
+                } else if (NAV_PROTOCOL.equals(name)) {
+                    if (event.protocolNavigator != null) nav.getValue().incTo(event.protocolNavigator);
+                } else if (NAV_DATE.equals(name)) {
+                    if (event.dateNavigator != null) nav.getValue().incTo(event.dateNavigator);
+                } else if (NAV_TOPICS.equals(name)) {
+                    nav.getValue().incTo(event.getTopics());
+                } else if (name.startsWith(NAV_VOCABULARY)) {
+                    nav.getValue().incTo(event.vocabularyNavigator(name.substring(NAV_VOCABULARY.length())));
+                } else if (name.startsWith(NAV_PLUGIN)) {
+                    final Navigator navigator = event.navigatorPlugins == null ? null : event.navigatorPlugins.get(name.substring(NAV_PLUGIN.length()));
+                    if (navigator != null) nav.getValue().incTo(navigator);
+                }
+            }
+        }
+    }
+
+    /**
+     * set the bounds of the cache
+     * @param maxMemory the estimated memory of all entries in bytes; 0 switches the cache off
+     * @param lifetime the time in milliseconds after which an entry is not used any more
+     */
+    public static void setLimits(final long maxMemory, final long lifetime) {
+        synchronized (lock) {
+            SearchResultCache.maxMemory = Math.max(0, maxMemory);
+            SearchResultCache.lifetime = lifetime;
+            shrink();
+        }
+    }
+
+    public static int size() {
+        synchronized (lock) {
+            return probation.size() + protectd.size();
+        }
+    }
+
+    /**
+     * @return the estimated memory of all entries in bytes
+     */
+    public static long memory() {
+        return memory;
+    }
+
+    public static long maxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * @return the percentage of the requests that were answered from the cache
+     */
+    public static int hitRate() {
+        final long requests = cacheHit + cacheMiss;
+        return requests == 0 ? 0 : (int) (100L * cacheHit / requests);
+    }
+
+    /**
+     * store the results of a search event that is removed from the SearchEventCache.
+     * Only events that have finished feeding are stored; events of image searches and events that were
+     * themselves answered from this cache are not stored.
+     */
+    static void put(final SearchEvent event) {
+        if (maxMemory == 0 || event.isCached() || !event.isFeedingFinished()) return;
+        final QueryParams query = event.getQuery();
+        if (query == null || query.contentdom == ContentDomain.IMAGE) return;
+        final List<WeakPriorityBlockingQueue.Element<URIMetadataNode>> results = event.cachableResults(MAX_RESULTS);
+        if (results == null || results.isEmpty()) return;
+        final int size = results.size();
+        final byte[][] urlhashes = new byte[size][];
+        final long[] scores = new long[size];
+        final TextSnippet[] snippets = new TextSnippet[size];
+        for (int i = 0; i < size; i++) {
+            final URIMetadataNode node = results.get(i).getElement();
+            urlhashes[i] = node.hash();
+            scores[i] = results.get(i).getWeight();
+            snippets[i] = node.textSnippet();
+        }
+        final Map<String, Counts> navigators = new LinkedHashMap<String, Counts>();
+        if (event.locationNavigator != null) navigators.put(NAV_LOCATION, new Counts(event.locationNavigator));
+        if (event.protocolNavigator != null) navigators.put(NAV_PROTOCOL, new Counts(event.protocolNavigator));
+        if (event.dateNavigator != null) navigators.put(NAV_DATE, new Counts(event.dateNavigator));
+        navigators.put(NAV_TOPICS, new Counts(event.getTopics()));
+        for (final Map.Entry<String, ScoreMap<String>> voc: event.vocabularyNavigator.entrySet()) {
+            navigators.put(NAV_VOCABULARY + voc.getKey(), new Counts(voc.getValue()));
+        }
+        if (event.navigatorPlugins != null) for (final Map.Entry<String, Navigator> nav: event.navigatorPlugins.entrySet()) {
+            navigators.put(NAV_PLUGIN + nav.getKey(), new Counts(nav.getValue()));
+        }
+        final boolean complete = event.getResultCount() <= size;
+        put(new Entry(query.id(false), query.isLocal() ? query.offset : 0, complete, urlhashes, scores, snippets,
+                event.counters(), navigators, event.getEventTime()));
+    }
+
+    static void put(final Entry entry) {
+        synchronized (lock) {
+            if (maxMemory == 0 || entry.mem > maxMemory) return;
+            remove(entry.id);
+            probation.put(entry.id, entry);
+            memory += entry.mem;
+            for (final byte[] urlhash: entry.urlhashes) {
+                final String u = ASCII.String(urlhash);
+                Set<String> ids = urlIndex.get(u);
+                if (ids == null) {
+                    ids = new HashSet<String>(2);
+                    urlIndex.put(u, ids);
+                }
+                ids.add(entry.id);
+            }
+            cacheInsert++;
+            shrink();
+        }
+    }
+
+    /**
+     * get the entry for a page of a query
+     * @param id the id of the query, see QueryParams.id(false)
+     * @param offset the item number of the first result of the page
+     * @param itemsPerPage the number of results of the page
+     * @param fresh if true, only entries of the last minute are used, i.e. because a crawl is running
+     * @return the entry or null if the results of the page are not stored
+     */
+    static Entry get(final String id, final int offset, final int itemsPerPage, final boolean fresh) {
+        synchronized (lock) {
+            Entry entry = protectd.get(id);
+            if (entry == null) {
+                entry = probation.get(id);
+                if (entry != null && (!expired(entry, fresh) && entry.covers(offset, itemsPerPage))) {
+                    // a second hit: move the entry to the protected segment
+                    probation.remove(id);
+                    protectd.put(id, entry);
+                    protectedMemory += entry.mem;
+                    demote();
+                }
+            }
+            if (entry != null && expired(entry, fresh)) {
+                if (!fresh) {
+                    remove(id);
+                    cacheDelete++;
+                }
+                entry = null;
+            }
+            if (entry == null || !entry.covers(offset, itemsPerPage)) {
+                cacheMiss++;
+                return null;
+            }
+            cacheHit++;
+            return entry;
+        }
+    }
+
+    /**
+     * get the results of a page of a query from the cache and load their metadata from the local index
+     * @param query the query
+     * @param fresh if true, only entries of the last minute are used
+     * @return the results or null if they are not stored or if not all of them are in the local index
+     */
+    static Hit get(final QueryParams query, final boolean fresh) {
+        if (maxMemory == 0 || query.contentdom == ContentDomain.IMAGE) return null;
+        final String id = query.id(false);
+        final Entry entry = get(id, query.offset, query.itemsPerPage, fresh);
+        if (entry == null) return null;
+        final Fulltext fulltext = query.getSegment().fulltext();
+        final int from = query.offset - entry.first;
+        final int to = Math.max(from, Math.min(entry.urlhashes.length, from + query.itemsPerPage)); // a page after the last result of a complete list is empty
+        final Hit hit = new Hit(entry, to - from);
+        for (int i = from; i < to; i++) {
+            final URIMetadataNode node = fulltext.getMetadata(entry.urlhashes[i]);
+            if (node == null) {
+                // the document is not in the local index, i.e. a remote result that was not stored: search again
+                log.info("result " + ASCII.String(entry.urlhashes[i]) + " of cached query " + id + " is not in the local index");
+                invalidate(ASCII.String(entry.urlhashes[i]));
+                return null;
+            }
+            hit.nodes.add(node);
+            hit.scores.add(entry.scores[i]);
+            hit.snippets.add(entry.snippets[i]);
+        }
+        return hit;
+    }
+
+    private static boolean expired(final Entry entry, final boolean fresh) {
+        final long age = System.currentTimeMillis() - entry.time;
+        return age > lifetime || (fresh && age > 60000);
+    }
+
+    /**
+     * invalidate all entries that contain a document; this must be called when the document is deleted or changed
+     * @param urlhash the url hash of the document
+     */
+    public static void invalidate(final String urlhash) {
+        if (!urlIndex.containsKey(urlhash)) return; // most documents are in no entry; checked without the lock
+        synchronized (lock) {
+            final Set<String> ids = urlIndex.get(urlhash);
+            if (ids == null) return;
+            for (final String id: new ArrayList<String>(ids)) {
+                if (remove(id)) cacheInvalidate++;
+            }
+        }
+    }
+
+    /**
+     * invalidate all entries that contain one of the documents
+     * @param urlhashes the url hashes of the documents
+     */
+    public static void invalidate(final Collection<String> urlhashes) {
+        for (final String urlhash: urlhashes) invalidate(urlhash);
+    }
+
+    /**
+     * remove all entries; this is done if documents are deleted without knowing their url hashes or if the
+     * result of all searches changes, i.e. because of a changed blacklist
+     */
+    public static void clear() {
+        synchronized (lock) {
+            cacheDelete += probation.size() + protectd.size();
+            probation.clear();
+            protectd.clear();
+            urlIndex.clear();
+            memory = 0;
+            protectedMemory = 0;
+        }
+    }
+
+    private static boolean remove(final String id) {
+        Entry entry = probation.remove(id);
+        if (entry == null) {
+            entry = protectd.remove(id);
+            if (entry == null) return false;
+            protectedMemory -= entry.mem;
+        }
+        memory -= entry.mem;
+        for (final byte[] urlhash: entry.urlhashes) {
+            final String u = ASCII.String(urlhash);
+            final Set<String> ids = urlIndex.get(u);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) urlIndex.remove(u);
+        }
+        return true;
+    }
+
+    /**
+     * move the least recently used entries of the protected segment back to the probation segment
+     * if the protected segment exceeds its share of the memory
+     */
+    private static void demote() {
+        final long maxProtected = maxMemory * PROTECTED_SHARE / 100;
+        final Iterator<Map.Entry<String, Entry>> i = protectd.entrySet().iterator();
+        while (protectedMemory > maxProtected && i.hasNext()) {
+            final Entry entry = i.next().getValue();
+            i.remove();
+            protectedMemory -= entry.mem;
+            probation.put(entry.id, entry);
+        }
+    }
+
+    /**
+     * evict entries until the memory is within the limit, the probation segment first
+     */
+    private static void shrink() {
+        while (memory > maxMemory) {
+            final Iterator<String> i = (probation.isEmpty() ? protectd : probation).keySet().iterator();
+            if (!i.hasNext()) break;
+            remove(i.next());
+            cacheDelete++;
+        }
+    }
+
+}
@@ -26,14 +26,20 @@
 
 package net.yacy.search.ranking;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import net.yacy.cora.date.MicroDate;
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.sorting.ConcurrentScoreMap;
@@ -45,18 +51,36 @@ import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.data.word.WordReferenceRow;
 import net.yacy.kelondro.data.word.WordReferenceVars;
 import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.kelondro.rwi.ReferenceScore;
+import net.yacy.kelondro.rwi.TermStatistics;
 import net.yacy.kelondro.util.Bitfield;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
+import net.yacy.kelondro.workflow.WorkflowProcessor;
+import net.yacy.search.index.Segment;
 
 
-public class ReferenceOrder {
+public class ReferenceOrder implements ReferenceScore<WordReference> {
 
-    private static int cores = Runtime.getRuntime().availableProcessors();
+    private final static int BATCHSIZE = 256; // the number of references that are decoded by one task of the normalizer
+
+    /**
+     * the normalizer pool that is shared by all search events; it has one thread for each core,
+     * so a high query rate queues batches instead of starting new threads for each container
+     */
+    private final static ThreadPoolExecutor NORMALIZER = new ThreadPoolExecutor(WorkflowProcessor.availableCPU, WorkflowProcessor.availableCPU,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamePrefixThreadFactory(ReferenceOrder.class.getSimpleName() + ".normalizer"));
+    static {
+        NORMALIZER.allowCoreThreadTimeOut(true);
+    }
 
     private       int maxdomcount;
     private       WordReferenceVars min, max;
     private final ConcurrentScoreMap<String> doms; // collected for "authority" heuristic
     private final RankingProfile ranking;
     private final String language;
+    private final byte[] languageBytes;
+    private final int today; // the current date in MicroDateDays for the score of single references
+    private       long documents; // the number of documents in the index for the inverse document frequency, 0 if unknown
 
     public ReferenceOrder(final RankingProfile profile, final String language) {
         this.min = null;
@@ -65,147 +89,154 @@ public class ReferenceOrder {
         this.doms = new ConcurrentScoreMap<String>();
         this.maxdomcount = 0;
         this.language = language;
+        this.languageBytes = language == null ? null : ASCII.getBytes(language);
+        this.today = MicroDate.microDateDays(System.currentTimeMillis());
+        this.documents = 0;
     }
 
-    public BlockingQueue<WordReferenceVars> normalizeWith(final ReferenceContainer<WordReference> container, long maxtime, final boolean local) {
-        final LinkedBlockingQueue<WordReferenceVars> out = new LinkedBlockingQueue<WordReferenceVars>();
-        int threads = cores;
-        if (container.size() < 100) threads = 2;
-        final Thread distributor = new NormalizeDistributor(container, out, threads, maxtime, local);
-        distributor.start();
-
-        // return the resulting queue while the processing queues are still working
-        return out;
+    /**
+     * set the number of documents in the index; the scores of the references of a term in a conjunction are
+     * weighted with the inverse document frequency of the term only if this number is known
+     * @param documents
+     */
+    public void setDocuments(final long documents) {
+        this.documents = documents;
     }
 
-    private final class NormalizeDistributor extends Thread {
+    /**
+     * the inverse document frequency of a term like in BM25; it is positive also for terms that are in most documents
+     * @param df the number of documents that contain the term
+     * @param documents the number of documents
+     * @return the inverse document frequency
+     */
+    public static double idf(final long df, final long documents) {
+        return Math.log(1.0d + (Math.max(0, documents - df) + 0.5d) / (df + 0.5d));
+    }
 
-        ReferenceContainer<WordReference> container;
-        LinkedBlockingQueue<WordReferenceVars> out;
-        private final int threads;
-        private final long maxtime;
-        private final boolean local;
-        
-        public NormalizeDistributor(final ReferenceContainer<WordReference> container, final LinkedBlockingQueue<WordReferenceVars> out, final int threads, final long maxtime, final boolean local) {
-        	super("ReferenceOrder.NormalizeDistributor");
-            this.container = container;
-            this.out = out;
-            this.threads = threads;
-            this.maxtime = maxtime;
-            this.local = local;
+    /**
+     * shut down the normalizer pool; batches that are submitted afterwards are processed by the calling thread
+     */
+    public static void shutdownNormalizer() {
+        NORMALIZER.shutdown();
+        final long timeout = 1;
+        try {
+            if (!NORMALIZER.awaitTermination(timeout, TimeUnit.SECONDS)) {
+                ConcurrentLog.warn("ReferenceOrder", "normalizer pool could not be terminated within " + timeout + " second");
+            }
+        } catch (final InterruptedException e) {
+            ConcurrentLog.warn("ReferenceOrder", "interrupted before termination of the normalizer pool");
         }
+    }
 
-        @Override
-        public void run() {
-            // transform the reference container into a stream of parsed entries
-            final BlockingQueue<WordReferenceVars> vars = WordReferenceVars.transform(this.container, this.maxtime, this.local);
-
-            // start the transformation threads
-            final Semaphore termination = new Semaphore(this.threads);
-            final NormalizeWorker[] worker = new NormalizeWorker[this.threads];
-            for (int i = 0; i < this.threads; i++) {
-                worker[i] = new NormalizeWorker(this.out, termination, this.maxtime);
-                worker[i].start();
-            }
+    /**
+     * decode the references of a container and fold their features into the minimum and maximum that are used by cardinal().
+     * The container is split into batches of BATCHSIZE references that are processed by the shared normalizer pool, small
+     * containers are processed by the calling thread. A batch folds its own minimum, maximum and domain counts and merges
+     * them into this order before its references are put into the returned queue, so cardinal() can be computed for every
+     * reference as soon as it is taken from the queue.
+     * @param container the references of a term or a join of terms
+     * @param maxtime the time in milliseconds after which the remaining batches are skipped
+     * @param local true if the references are from the local index
+     * @return a queue that is filled while the batches are processed; the last batch terminates it with WordReferenceVars.poison
+     */
+    public BlockingQueue<WordReferenceVars> normalizeWith(final ReferenceContainer<WordReference> container, final long maxtime, final boolean local) {
+        return normalizeWith(container, maxtime, local, NORMALIZER);
+    }
 
-            // fill the queue
-            WordReferenceVars iEntry;
-            int p = 0;
-            long timeout = this.maxtime == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + this.maxtime;
+    BlockingQueue<WordReferenceVars> normalizeWith(final ReferenceContainer<WordReference> container, final long maxtime, final boolean local, final Executor executor) {
+        final LinkedBlockingQueue<WordReferenceVars> out = new LinkedBlockingQueue<WordReferenceVars>();
+        final long timeout = maxtime == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + maxtime;
+        final int size = container.size();
+        final int batches = Math.max(1, (size + BATCHSIZE - 1) / BATCHSIZE);
+        final AtomicInteger remaining = new AtomicInteger(batches);
+        if (batches == 1) {
+            new NormalizeBatch(container, 0, size, local, timeout, out, remaining).run();
+            return out;
+        }
+        for (int b = 0; b < batches; b++) {
+            final NormalizeBatch batch = new NormalizeBatch(container, b * BATCHSIZE, Math.min(size, (b + 1) * BATCHSIZE), local, timeout, out, remaining);
             try {
-                while ((iEntry = vars.take()) != WordReferenceVars.poison) {
-                    worker[p % this.threads].add(iEntry);
-                    p++;
-                    if (System.currentTimeMillis() > timeout) {
-                        ConcurrentLog.warn("NormalizeDistributor", "adding of decoded rows to workers ended with timeout = " + this.maxtime);
-                        break;
-                    }
-                }
-            } catch (final InterruptedException e) {
+                executor.execute(batch);
+            } catch (final RejectedExecutionException e) {
+                batch.run(); // the pool is shut down
             }
+        }
 
-            // insert poison to stop the queues
-            for (int i = 0; i < this.threads; i++) worker[i].add(WordReferenceVars.poison);
+        // return the resulting queue while the batches are still processed
+        return out;
+    }
 
-            // wait for termination but not too long to make it possible that this
-            // is called from outside with a join to get some normalization results
-            // before going on
-            for (int i = 0; i < this.threads; i++) try {worker[i].join(100);} catch (final InterruptedException e) {}
+    /**
+     * merge the minimum, maximum and domain counts of a batch into this order
+     */
+    private synchronized void fold(final WordReferenceVars batchmin, final WordReferenceVars batchmax, final Map<String, Integer> doms0) {
+        if (this.min == null) this.min = batchmin; else this.min.min(batchmin);
+        if (this.max == null) this.max = batchmax; else this.max.max(batchmax);
+        for (final Map.Entry<String, Integer> entry: doms0.entrySet()) {
+            this.doms.inc(entry.getKey(), entry.getValue().intValue());
         }
+        if (!this.doms.isEmpty()) this.maxdomcount = this.doms.getMaxScore();
     }
 
     /**
-     * normalize ranking: find minimum and maximum of separate ranking criteria
+     * normalize ranking: decode a range of references and find minimum and maximum of separate ranking criteria
      */
-    private class NormalizeWorker extends Thread {
+    private final class NormalizeBatch implements Runnable {
 
+        private final ReferenceContainer<WordReference> container;
+        private final int from, to;
+        private final boolean local;
+        private final long timeout;
         private final BlockingQueue<WordReferenceVars> out;
-        private final Semaphore termination;
-        private final BlockingQueue<WordReferenceVars> decodedEntries;
-        private final long maxtime;
+        private final AtomicInteger remaining;
 
-        public NormalizeWorker(final BlockingQueue<WordReferenceVars> out, final Semaphore termination, long maxtime) {
-        	super("ReferenceOrder.NormalizeWorker");
+        public NormalizeBatch(final ReferenceContainer<WordReference> container, final int from, final int to, final boolean local,
+                final long timeout, final BlockingQueue<WordReferenceVars> out, final AtomicInteger remaining) {
+            this.container = container;
+            this.from = from;
+            this.to = to;
+            this.local = local;
+            this.timeout = timeout;
             this.out = out;
-            this.termination = termination;
-            this.decodedEntries = new LinkedBlockingQueue<WordReferenceVars>();
-            this.maxtime = maxtime;
-        }
-
-        public void add(final WordReferenceVars entry) {
-            try {
-                this.decodedEntries.put(entry);
-            } catch (final InterruptedException e) {
-            }
+            this.remaining = remaining;
         }
 
         @Override
         public void run() {
             try {
-                WordReferenceVars iEntry;
+                if (System.currentTimeMillis() > this.timeout) {
+                    ConcurrentLog.warn("ReferenceOrder", "normalization of decoded rows ended with timeout, skipped " + (this.to - this.from) + " references");
+                    return;
+                }
+                final List<WordReferenceVars> decoded = new ArrayList<WordReferenceVars>(this.to - this.from);
                 final Map<String, Integer> doms0 = new HashMap<String, Integer>();
-                String dom;
+                WordReferenceVars batchmin = null, batchmax = null;
                 Integer count;
                 final Integer int1 = 1;
-                long timeout = this.maxtime == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + this.maxtime;
-                while ((iEntry = this.decodedEntries.take()) != WordReferenceVars.poison) {
+                for (int p = this.from; p < this.to; p++) {
+                    final WordReferenceVars iEntry = new WordReferenceVars(Segment.wordReferenceFactory.produceSlow(this.container.get(p, false)), this.local);
                     // find min/max
-                    if (ReferenceOrder.this.min == null) ReferenceOrder.this.min = iEntry.clone(); else ReferenceOrder.this.min.min(iEntry);
-                    if (ReferenceOrder.this.max == null) ReferenceOrder.this.max = iEntry.clone(); else ReferenceOrder.this.max.max(iEntry);
-                    this.out.put(iEntry); // must be after the min/max check to prevent that min/max is null in cardinal()
-                    // update domcount
-                    dom = iEntry.hosthash();
-                    count = doms0.get(dom);
-                    if (count == null) {
-                        doms0.put(dom, int1);
+                    if (batchmin == null) {
+                        batchmin = iEntry.clone();
+                        batchmax = iEntry.clone();
                     } else {
-                        doms0.put(dom, LargeNumberCache.valueOf(count.intValue() + 1));
-                    }
-
-                    if (System.currentTimeMillis() > timeout) {
-                        ConcurrentLog.warn("NormalizeWorker", "normlization of decoded rows ended with timeout = " + this.maxtime);
-                        break;
+                        batchmin.min(iEntry);
+                        batchmax.max(iEntry);
                     }
+                    // update domcount
+                    final String dom = iEntry.hosthash();
+                    count = doms0.get(dom);
+                    doms0.put(dom, count == null ? int1 : LargeNumberCache.valueOf(count.intValue() + 1));
+                    decoded.add(iEntry);
                 }
-
-                // update domain score
-                Map.Entry<String, Integer> entry;
-                final Iterator<Map.Entry<String, Integer>> di = doms0.entrySet().iterator();
-                while (di.hasNext()) {
-                    entry = di.next();
-                    ReferenceOrder.this.doms.inc(entry.getKey(), (entry.getValue()).intValue());
-                }
-                if (!ReferenceOrder.this.doms.isEmpty()) ReferenceOrder.this.maxdomcount = ReferenceOrder.this.doms.getMaxScore();
-            } catch (final InterruptedException e) {
-                ConcurrentLog.logException(e);
+                if (batchmin == null) return;
+                fold(batchmin, batchmax, doms0);
+                this.out.addAll(decoded); // must be after the min/max fold to prevent that min/max is null in cardinal()
             } catch (final Exception e) {
                 ConcurrentLog.logException(e);
             } finally {
-                // insert poison to signal the termination to next queue
-                try {
-                    this.termination.acquire();
-                    if (this.termination.availablePermits() == 0) this.out.put(WordReferenceVars.poison);
-                } catch (final InterruptedException e) {}
+                // the last batch signals the termination to the next queue
+                if (this.remaining.decrementAndGet() == 0) this.out.add(WordReferenceVars.poison);
             }
         }
     }
@@ -264,6 +295,86 @@ public class ReferenceOrder {
         return r; // the higher the number the better the ranking.
     }
     
+    /**
+     * the score of a single reference that is used to select the best references of a join before they are ranked
+     * with cardinal(). In contrast to cardinal() the features are not normalized to the join result but scaled to
+     * 0..255 with fixed ranges; the coefficients of the ranking profile are the same. The host authority and the
+     * word distance are only known after the join and are not part of the score.
+     */
+    @Override
+    public long score(final WordReference t) {
+        return impact(t, false);
+    }
+
+    /**
+     * the bound of the scores of the references in a block, see WordReferenceRow.bound()
+     */
+    @Override
+    public long bound(final WordReference bound) {
+        return impact(bound, true);
+    }
+
+    /**
+     * the weight of a term in a conjunction is 32 times its inverse document frequency, computed from the statistics catalog
+     * without reading the references; so a term that is in one of about 3000 documents has the neutral weight 256
+     */
+    @Override
+    public int weight(final TermStatistics.Entry statistics) {
+        if (statistics == null || statistics.df() <= 0 || this.documents <= 0) return 256;
+        return (int) Math.max(1, Math.min(1024, Math.round(32.0d * idf(statistics.df(), Math.max(this.documents, statistics.df())))));
+    }
+
+    /**
+     * the impact lists are ordered by the coefficients of the ranking profile. If the host authority counts, the
+     * ranking depends on the hosts of all references of the join result, so the references must be read completely.
+     */
+    @Override
+    public String impactOrder() {
+        return this.ranking.coeff_authority > 12 ? null : this.ranking.toExternalString();
+    }
+
+    private static long low(final int v) {
+        return 255 - Math.min(255, Math.max(0, v)); // lower values rank better
+    }
+
+    private static long high(final int v) {
+        return Math.min(255, Math.max(0, v)); // higher values rank better
+    }
+
+    private long impact(final WordReference t, final boolean bound) {
+        // a bound has the best value of each feature of its block, so every term here must not decrease if a feature gets better;
+        // the term frequency of a bound is stored separately because it cannot be computed from the other bounds
+        final Bitfield flags = t.flags();
+        final long tf = bound ? ((WordReferenceRow) t).termFrequencyBound() : Math.min(255, (long) (t.termFrequency() * 255.0d));
+        return
+             ((bound ? 256 : (256 - Math.max(0, DigestURL.domLengthNormalized(t.urlhash())))) << this.ranking.coeff_domlength)
+           + (low(t.urlcomps() << 4)                      << this.ranking.coeff_urlcomps)
+           + (low(t.urllength())                          << this.ranking.coeff_urllength)
+           + (low(t.posintext())                          << this.ranking.coeff_posintext)
+           + (low(t.posofphrase())                        << this.ranking.coeff_posofphrase)
+           + (low(t.posinphrase())                        << this.ranking.coeff_posinphrase)
+           + (low((this.today - t.virtualAge()) >> 3)     << this.ranking.coeff_date)
+           + (high(t.wordsintitle() << 4)                 << this.ranking.coeff_wordsintitle)
+           + (high(t.wordsintext() >> 4)                  << this.ranking.coeff_wordsintext)
+           + (high(t.phrasesintext() >> 2)                << this.ranking.coeff_phrasesintext)
+           + (high(t.llocal())                            << this.ranking.coeff_llocal)
+           + (high(t.lother())                            << this.ranking.coeff_lother)
+           + (high(t.hitcount() << 4)                     << this.ranking.coeff_hitcount)
+           + (tf                                          << this.ranking.coeff_termfrequency)
+           + ((flags.get(WordReferenceRow.flag_app_dc_identifier))  ? 255 << this.ranking.coeff_appurl             : 0)
+           + ((flags.get(WordReferenceRow.flag_app_dc_title))       ? 255 << this.ranking.coeff_app_dc_title       : 0)
+           + ((flags.get(WordReferenceRow.flag_app_dc_creator))     ? 255 << this.ranking.coeff_app_dc_creator     : 0)
+           + ((flags.get(WordReferenceRow.flag_app_dc_subject))     ? 255 << this.ranking.coeff_app_dc_subject     : 0)
+           + ((flags.get(WordReferenceRow.flag_app_dc_description)) ? 255 << this.ranking.coeff_app_dc_description : 0)
+           + ((flags.get(WordReferenceRow.flag_app_emphasized))     ? 255 << this.ranking.coeff_appemph            : 0)
+           + ((flags.get(Tokenizer.flag_cat_indexof))      ? 255 << this.ranking.coeff_catindexof         : 0)
+           + ((flags.get(Tokenizer.flag_cat_hasimage))     ? 255 << this.ranking.coeff_cathasimage        : 0)
+           + ((flags.get(Tokenizer.flag_cat_hasaudio))     ? 255 << this.ranking.coeff_cathasaudio        : 0)
+           + ((flags.get(Tokenizer.flag_cat_hasvideo))     ? 255 << this.ranking.coeff_cathasvideo        : 0)
+           + ((flags.get(Tokenizer.flag_cat_hasapp))       ? 255 << this.ranking.coeff_cathasapp          : 0)
+           + ((bound || Arrays.equals(t.getLanguage(), this.languageBytes)) ? 255 << this.ranking.coeff_language : 0);
+    }
+
     public long cardinal(final URIMetadataNode t) {
         // the normalizedEntry must be a normalized indexEntry
         assert t != null;
@@ -4,6 +4,8 @@ package net.yacy.crawler;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.crawler.retrieval.Request;
@@ -58,4 +60,32 @@ public class HostQueueTest {
 
     }
 
+    /**
+     * Test of push of a batch, of class HostQueue.
+     */
+    @Test
+    public void testPushBatch() throws MalformedURLException, IOException, SpaceExceededException {
+        File stackDirFile = new File(stackDir);
+        DigestURL url = new DigestURL("http://b.com/start.html");
+        HostQueue testhq = new HostQueue(stackDirFile, url, true, true);
+        testhq.push(new Request(url, null), null, null);
+
+        List<Request> batch = new ArrayList<Request>();
+        batch.add(new Request(url, null)); // already in the queue
+        for (int i = 0; i < 10; i++) {
+            batch.add(new Request(new DigestURL("http://b.com/page" + i + ".html"), null));
+        }
+        batch.add(new Request(new DigestURL("http://b.com/page3.html"), null)); // double in the batch
+        String[] result = testhq.push(batch, null, null);
+
+        assertEquals(batch.size(), result.length);
+        assertNotNull(result[0]);
+        for (int i = 1; i <= 10; i++) assertNull(result[i]);
+        assertNotNull(result[11]);
+        assertEquals(11, testhq.size());
+        for (Request req : batch) assertTrue(testhq.has(req.url().hash()));
+
+        testhq.clear();
+        testhq.close();
+    }
 }
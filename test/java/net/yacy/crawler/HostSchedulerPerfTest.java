@@ -0,0 +1,123 @@
+package net.yacy.crawler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark of the host selection of the crawler with 1M urls over 200k hosts.
+ * The crawl is simulated without loading: every pop takes the next host from the HostScheduler, removes one url
+ * and schedules the host again with a waiting time from 500 to 3000 milliseconds, like the politeness delay,
+ * the robots.txt crawl-delay and the latency of the host would give. A simulated clock advances to the time
+ * when the taken host may be accessed, so no thread sleeps.
+ * For comparison, the former selection is emulated by a linear scan over all hosts which computes the waiting
+ * time of every host and collects them in a TreeMap of fuzzy waiting times; because this costs O(n) per pop,
+ * it is measured only for some pops. The last part pops with several threads concurrently.
+ * java -Xmx2g net.yacy.crawler.HostSchedulerPerfTest [urls] [hosts] [threads]
+ */
+public class HostSchedulerPerfTest {
+
+    private static long sink = 0; // prevents that the benchmark code is removed as dead code
+
+    public static void main(final String[] args) throws Exception {
+        final int urls = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final int hosts = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        final int threads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        final Random r = new Random(0);
+
+        // distribute the urls over the hosts: every host has one url, the others are skewed to few large hosts
+        final int[] size = new int[hosts];
+        for (int h = 0; h < hosts; h++) size[h] = 1;
+        for (int u = hosts; u < urls; u++) size[(int) (hosts * Math.pow(r.nextDouble(), 3))]++;
+        final int[] delay = new int[hosts];
+        for (int h = 0; h < hosts; h++) delay[h] = 500 + r.nextInt(2500);
+        final String[] hash = new String[hosts];
+        final Map<String, Integer> index = new HashMap<>(hosts * 2);
+        for (int h = 0; h < hosts; h++) {
+            hash[h] = String.format("h%05x", h);
+            index.put(hash[h], h);
+        }
+        System.out.println("host selection benchmark with " + urls + " urls over " + hosts + " hosts");
+
+        // the scheduler
+        final HostScheduler scheduler = new HostScheduler();
+        final int[] left = size.clone();
+        final long[] due = new long[hosts];
+        long now = 0;
+        long time = System.nanoTime();
+        for (int h = 0; h < hosts; h++) scheduler.schedule(hash[h], Integer.MIN_VALUE, left[h], now);
+        final long fill = System.nanoTime() - time;
+        time = System.nanoTime();
+        int pops = 0;
+        String hh;
+        while ((hh = scheduler.poll()) != null) {
+            final int h = index.get(hh);
+            now = Math.max(now, due[h]);
+            pops++;
+            if (--left[h] > 0) {
+                due[h] = now + delay[h];
+                scheduler.schedule(hh, delay[h], left[h], now);
+            }
+        }
+        time = System.nanoTime() - time;
+        System.out.println(String.format("scheduler:   fill %8.1f ms, %d pops in %8.1f ms, %6.3f microseconds per pop, simulated crawl time %d s",
+                fill / 1e6, pops, time / 1e6, time / 1e3 / pops, now / 1000));
+
+        // the former linear scan, only for some pops
+        final int scans = Math.max(1, Math.min(pops, 200));
+        final int[] left2 = size.clone();
+        final long[] due2 = new long[hosts];
+        now = 0;
+        time = System.nanoTime();
+        for (int p = 0; p < scans; p++) {
+            final TreeMap<Long, List<Integer>> fastTree = new TreeMap<>();
+            for (int h = 0; h < hosts; h++) {
+                if (left2[h] == 0) continue;
+                final long d = Math.max(0, due2[h] - now) / HostScheduler.DUESTEP;
+                fastTree.computeIfAbsent(d, k -> new ArrayList<>(2)).add(h);
+            }
+            int best = -1;
+            for (final int h: fastTree.firstEntry().getValue()) if (best < 0 || left2[h] > left2[best]) best = h;
+            now = Math.max(now, due2[best]);
+            left2[best]--;
+            due2[best] = now + delay[best];
+            sink += best;
+        }
+        time = System.nanoTime() - time;
+        System.out.println(String.format("linear scan: %d pops in %8.1f ms, %6.3f microseconds per pop",
+                scans, time / 1e6, time / 1e3 / scans));
+
+        // concurrent pops
+        for (int h = 0; h < hosts; h++) scheduler.schedule(hash[h], Integer.MIN_VALUE, size[h], 0);
+        final int[] left3 = size.clone();
+        final AtomicLong popped = new AtomicLong(0);
+        final List<Thread> workers = new ArrayList<>();
+        time = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final Thread worker = new Thread() {
+                @Override
+                public void run() {
+                    String wh;
+                    while ((wh = scheduler.poll()) != null) {
+                        final int h = index.get(wh);
+                        popped.incrementAndGet();
+                        // the host is out of the schedule, so only this thread changes its counter
+                        if (--left3[h] > 0) scheduler.schedule(wh, delay[h], left3[h], System.currentTimeMillis());
+                    }
+                }
+            };
+            worker.start();
+            workers.add(worker);
+        }
+        for (final Thread worker: workers) worker.join();
+        time = System.nanoTime() - time;
+        System.out.println(String.format("scheduler with %d threads: %d pops in %8.1f ms, %6.3f microseconds per pop",
+                threads, popped.get(), time / 1e6, time / 1e3 / popped.get()));
+        if (sink == 42) System.out.println();
+    }
+
+}
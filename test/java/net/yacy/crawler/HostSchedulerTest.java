@@ -0,0 +1,106 @@
+package net.yacy.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the order of the hosts in the crawl scheduler
+ */
+public class HostSchedulerTest {
+
+    /**
+     * hosts are taken in the order of the time when they may be accessed again
+     */
+    @Test
+    public void testDueOrder() {
+        final HostScheduler scheduler = new HostScheduler();
+        final long now = 1000000;
+        scheduler.schedule("host03", 3000, 50, now);
+        scheduler.schedule("host01", -500, 50, now);
+        scheduler.schedule("host02", 1000, 50, now);
+        assertEquals(3, scheduler.size());
+        assertEquals("host01", scheduler.poll());
+        assertEquals("host02", scheduler.poll());
+        assertEquals("host03", scheduler.poll());
+        assertNull(scheduler.poll());
+        assertTrue(scheduler.isEmpty());
+    }
+
+    /**
+     * hosts which may be accessed at about the same time are ordered like the round-robin selection did:
+     * single urls, small stacks, the largest stacks, and last the hosts that were never accessed
+     */
+    @Test
+    public void testStackOrder() {
+        final HostScheduler scheduler = new HostScheduler();
+        final long now = 1000000;
+        scheduler.schedule("fresh", Integer.MIN_VALUE, 1, now);
+        scheduler.schedule("large", 0, 100, now);
+        scheduler.schedule("larger", 0, 500, now);
+        scheduler.schedule("small", 0, 5, now);
+        scheduler.schedule("single", 0, 1, now);
+        scheduler.schedule("later", (int) HostScheduler.DUESTEP * 3, 1, now);
+        final List<String> order = new ArrayList<>();
+        String h;
+        while ((h = scheduler.poll()) != null) order.add(h);
+        assertEquals(List.of("single", "small", "larger", "large", "fresh", "later"), order);
+    }
+
+    /**
+     * a host has only one slot; scheduling it again replaces the slot
+     */
+    @Test
+    public void testReschedule() {
+        final HostScheduler scheduler = new HostScheduler();
+        final long now = 1000000;
+        scheduler.schedule("a", 0, 20, now);
+        scheduler.schedule("b", 1000, 20, now);
+        scheduler.schedule("a", 5000, 20, now);
+        assertEquals(2, scheduler.size());
+        assertEquals("b", scheduler.poll());
+        assertTrue(scheduler.isScheduled("a"));
+        scheduler.remove("a");
+        assertFalse(scheduler.isScheduled("a"));
+        assertNull(scheduler.poll());
+    }
+
+    /**
+     * concurrent threads take every scheduled host exactly once
+     */
+    @Test
+    public void testConcurrentPoll() throws InterruptedException {
+        final HostScheduler scheduler = new HostScheduler();
+        final int hosts = 20000;
+        for (int i = 0; i < hosts; i++) scheduler.schedule("host" + i, i % 3000, 1 + i % 30, 0);
+        final Set<String> taken = Collections.synchronizedSet(new HashSet<>());
+        final List<Thread> threads = new ArrayList<>();
+        final int[] doubles = new int[1];
+        for (int t = 0; t < 8; t++) {
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    String h;
+                    while ((h = scheduler.poll()) != null) {
+                        if (!taken.add(h)) synchronized (doubles) {doubles[0]++;}
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (final Thread thread: threads) thread.join();
+        assertEquals(0, doubles[0]);
+        assertEquals(hosts, taken.size());
+        assertTrue(scheduler.isEmpty());
+    }
+}
@@ -0,0 +1,123 @@
+package net.yacy.crawler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.crawler.retrieval.Request;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Benchmark of the stacking of the links of parsed documents into the crawl queues.
+ * A link-heavy corpus is simulated: every document has many links, most of them to its own host and the rest to
+ * other hosts, and many links appear in several documents. The links of each document are stacked
+ * - one by one, like before: the loader entries are scanned for each link and each link is pushed alone into the
+ *   HostBalancer, which locks the host queue for each link;
+ * - as a batch: the loader entries are collected once for the document and all links are pushed together,
+ *   so each host queue is locked and written once for all links of a document.
+ * The other tests of the crawl stacker are the same in both cases and are not part of the benchmark.
+ * java -Xmx2g net.yacy.crawler.StackingPerfTest [documents] [links per document] [hosts] [loader entries]
+ */
+public class StackingPerfTest {
+
+    public static void main(final String[] args) throws Exception {
+        final int documents = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        final int links = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final int hosts = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        final int workers = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        final Random r = new Random(0);
+
+        // the corpus: the links of each document, 80% to its own host with a skewed page number, so links repeat
+        final List<List<DigestURL>> corpus = new ArrayList<>(documents);
+        for (int d = 0; d < documents; d++) {
+            final int host = r.nextInt(hosts);
+            final List<DigestURL> outlinks = new ArrayList<>(links);
+            for (int l = 0; l < links; l++) {
+                final int h = r.nextInt(10) < 8 ? host : r.nextInt(hosts);
+                final int page = (int) (5000 * Math.pow(r.nextDouble(), 2));
+                outlinks.add(new DigestURL("http://host" + h + ".example.org/dir" + (page % 20) + "/page" + page + ".html"));
+            }
+            corpus.add(outlinks);
+        }
+        // the loader entries
+        final Map<DigestURL, Request> active = new HashMap<>();
+        for (int w = 0; w < workers; w++) {
+            final DigestURL url = new DigestURL("http://host" + r.nextInt(hosts) + ".example.org/loading" + w + ".html");
+            active.put(url, new Request(url, null));
+        }
+        System.out.println("stacking benchmark with " + documents + " documents, " + links + " links per document, " + hosts + " hosts, " + workers + " loader entries");
+
+        for (int run = 0; run < 3; run++) {
+            System.out.println("run " + run);
+            single(corpus, active);
+            batch(corpus, active);
+        }
+    }
+
+    private static HostBalancer balancer(final String name) {
+        final File path = new File(System.getProperty("java.io.tmpdir"), "StackingPerfTest/" + name);
+        FileUtils.deletedelete(path);
+        final HostBalancer balancer = new HostBalancer(path, 1000, false, false);
+        balancer.clear();
+        return balancer;
+    }
+
+    private static void single(final List<List<DigestURL>> corpus, final Map<DigestURL, Request> active) throws Exception {
+        final HostBalancer balancer = balancer("single");
+        int offered = 0, stacked = 0;
+        final long time = System.nanoTime();
+        for (final List<DigestURL> outlinks: corpus) {
+            for (final DigestURL url: outlinks) {
+                offered++;
+                // the former double check: a scan of the loader entries for each url
+                boolean loading = false;
+                for (final Request request: new HashMap<>(active).values()) {
+                    if (Base64Order.enhancedCoder.equal(request.url().hash(), url.hash())) {
+                        loading = true;
+                        break;
+                    }
+                }
+                if (loading) continue;
+                if (balancer.push(new Request(url, null), null, null) == null) stacked++;
+            }
+        }
+        report("one by one", offered, stacked, System.nanoTime() - time);
+        balancer.clear();
+        balancer.close();
+    }
+
+    private static void batch(final List<List<DigestURL>> corpus, final Map<DigestURL, Request> active) throws Exception {
+        final HostBalancer balancer = balancer("batch");
+        int offered = 0, stacked = 0;
+        final long time = System.nanoTime();
+        for (final List<DigestURL> outlinks: corpus) {
+            // the loader entries are collected once for the batch
+            final Set<String> loading = new HashSet<>();
+            for (final DigestURL url: new HashMap<>(active).keySet()) loading.add(ASCII.String(url.hash()));
+            final List<Request> batch = new ArrayList<>(outlinks.size());
+            for (final DigestURL url: outlinks) {
+                offered++;
+                if (loading.contains(ASCII.String(url.hash()))) continue;
+                batch.add(new Request(url, null));
+            }
+            for (final String error: balancer.push(batch, null, null)) if (error == null) stacked++;
+        }
+        report("batch", offered, stacked, System.nanoTime() - time);
+        balancer.clear();
+        balancer.close();
+    }
+
+    private static void report(final String mode, final int offered, final int stacked, final long time) {
+        System.out.println(String.format("%-10s: %d links, %d stacked in %8.1f ms, %8.0f links/s",
+                mode, offered, stacked, time / 1e6, offered / (time / 1e9)));
+    }
+
+}
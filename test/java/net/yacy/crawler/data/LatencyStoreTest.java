@@ -0,0 +1,99 @@
+package net.yacy.crawler.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LatencyStoreTest {
+
+    @Test
+    public void testUpdate() {
+        final LatencyStore store = new LatencyStore(10);
+        final int slot = store.put("hash01", "example.org", 1000, 2000);
+        assertEquals(slot, store.put("hash01", "example.org", 0, 0));
+        assertEquals(1, store.count(slot));
+        assertEquals(1000, store.average(slot));
+        store.update(slot, 3000);
+        assertEquals(2, store.count(slot));
+        assertEquals(2000, store.average(slot));
+        assertEquals(2000, store.robotsDelay(slot));
+        assertEquals("example.org", store.host(slot));
+        assertEquals(-1, store.slot("hash02"));
+    }
+
+    /**
+     * a full store evicts the hosts which were not used since the clock hand passed them
+     */
+    @Test
+    public void testEviction() {
+        final int capacity = 100;
+        final LatencyStore store = new LatencyStore(capacity);
+        for (int i = 0; i < capacity; i++) store.put("h" + i, "host" + i, 500, 0);
+        assertEquals(capacity, store.size());
+
+        // the first insert clears all reference bits and evicts h0
+        store.put("new0", "new0", 500, 0);
+        assertEquals(capacity, store.size());
+        assertEquals(-1, store.slot("h0"));
+
+        // reference the even hosts; the following inserts must evict odd hosts only
+        for (int i = 2; i < capacity; i += 2) assertTrue(store.slot("h" + i) >= 0);
+        for (int i = 1; i < 40; i++) store.put("new" + i, "new" + i, 500, 0);
+        assertEquals(capacity, store.size());
+        for (int i = 2; i < capacity; i += 2) assertTrue("h" + i, store.slot("h" + i) >= 0);
+        int odd = 0;
+        for (int i = 1; i < capacity; i += 2) if (store.slot("h" + i) >= 0) odd++;
+        assertEquals(capacity / 2 - 39, odd);
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        final LatencyStore store = new LatencyStore(1000);
+        for (int i = 0; i < 500; i++) {
+            final int slot = store.put("h" + i, "host" + i + ".example.org", 100 + i, i % 3 == 0 ? 1000 : 0);
+            for (int j = 0; j < i % 7; j++) store.update(slot, 200);
+        }
+        assertTrue(store.changed());
+        final File file = File.createTempFile("latency", ".dump");
+        file.deleteOnExit();
+        store.write(file);
+        assertFalse(store.changed());
+
+        final LatencyStore restored = new LatencyStore(1000);
+        assertEquals(500, restored.read(file));
+        assertEquals(500, restored.size());
+        for (int i = 0; i < 500; i++) {
+            final int s = store.slot("h" + i);
+            final int r = restored.slot("h" + i);
+            assertTrue(r >= 0);
+            assertEquals(store.host(s), restored.host(r));
+            assertEquals(store.count(s), restored.count(r));
+            assertEquals(store.average(s), restored.average(r));
+            assertEquals(store.lastacc(s), restored.lastacc(r));
+            assertEquals(store.robotsDelay(s), restored.robotsDelay(r));
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testDueBefore() {
+        final LatencyStore store = new LatencyStore(10);
+        final long now = System.currentTimeMillis();
+        store.put("fast", "fast.example.org", 100, 0);
+        store.put("slow", "slow.example.org", 10000, 0); // latency 10 seconds * factor 0.5
+        store.put("robots", "robots.example.org", 100, 60000);
+        List<String> due = store.dueBefore(now + 1000, 500, 0.5f);
+        assertEquals(1, due.size());
+        assertEquals("fast", due.get(0));
+        due = store.dueBefore(now + 10000, 500, 0.5f);
+        assertEquals(2, due.size());
+        due = store.dueBefore(now + 100000, 500, 0.5f);
+        assertEquals(3, due.size());
+    }
+}
@@ -0,0 +1,109 @@
+package net.yacy.crawler.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class URLSeenFilterTest {
+
+    /**
+     * a synthetic url hash: six characters of the url and six characters of the host
+     */
+    private static byte[] urlhash(final int host, final int url) {
+        return String.format("%06x%06x", url & 0xffffff, host & 0xffffff).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testNotReady() {
+        final URLSeenFilter filter = new URLSeenFilter(16, 1000, 10);
+        assertFalse(filter.isReady());
+        assertTrue(filter.mightContain(urlhash(1, 1)));
+        filter.rebuild(Collections.<byte[]>emptyIterator());
+        assertTrue(filter.isReady());
+        assertFalse(filter.mightContain(urlhash(1, 1)));
+        filter.add(urlhash(1, 1));
+        assertTrue(filter.mightContain(urlhash(1, 1)));
+        assertEquals(1, filter.size());
+    }
+
+    /**
+     * the filter grows far beyond the expected size without false negatives, and the false positive rate stays low
+     */
+    @Test
+    public void testGrowth() {
+        final URLSeenFilter filter = new URLSeenFilter(16, 1000, 10);
+        final List<byte[]> keys = new ArrayList<>();
+        for (int h = 0; h < 1000; h++) for (int u = 0; u < 100; u++) keys.add(urlhash(h, u));
+        // keys which are false positives when they are added are not counted
+        final long added = filter.rebuild(keys.iterator());
+        assertTrue("added " + added, added > keys.size() * 0.95);
+        assertEquals(added, filter.size());
+        for (final byte[] key: keys) assertTrue(filter.mightContain(key));
+
+        int positives = 0;
+        final int tests = 100000;
+        for (int i = 0; i < tests; i++) if (filter.mightContain(urlhash(5000 + i % 1000, i))) positives++;
+        final double measured = (double) positives / tests;
+        final double estimated = filter.estimatedFalsePositiveRate();
+        assertTrue("measured " + measured, measured < 0.05);
+        assertTrue("estimated " + estimated + ", measured " + measured, Math.abs(estimated - measured) < 0.01);
+        assertEquals(tests - positives, filter.negatives());
+    }
+
+    @Test
+    public void testConcurrentAdd() throws InterruptedException {
+        final URLSeenFilter filter = new URLSeenFilter(4, 1000, 10);
+        filter.rebuild(Collections.<byte[]>emptyIterator());
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int host = t % 2; // two threads for each host, so they write into the same shard
+            final int offset = t * 10000;
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int u = 0; u < 10000; u++) filter.add(urlhash(host, offset + u));
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (final Thread thread: threads) thread.join();
+        for (int t = 0; t < 8; t++) {
+            for (int u = 0; u < 10000; u++) assertTrue(filter.mightContain(urlhash(t % 2, t * 10000 + u)));
+        }
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        final URLSeenFilter filter = new URLSeenFilter(8, 100, 10);
+        final List<byte[]> keys = new ArrayList<>();
+        for (int h = 0; h < 50; h++) for (int u = 0; u < 20; u++) keys.add(urlhash(h, u));
+        filter.rebuild(keys.iterator());
+        final File file = File.createTempFile("urlseen", ".filter");
+        file.deleteOnExit();
+        filter.write(file);
+
+        final URLSeenFilter restored = URLSeenFilter.read(file);
+        assertTrue(restored.isReady());
+        assertEquals(filter.size(), restored.size());
+        assertEquals(filter.mem(), restored.mem());
+        for (final byte[] key: keys) assertTrue(restored.mightContain(key));
+        for (int i = 0; i < 1000; i++) {
+            final byte[] key = urlhash(100 + i, i);
+            assertEquals(filter.mightContain(key), restored.mightContain(key));
+        }
+        // the restored filter grows like the original one
+        restored.add(urlhash(1000, 1000));
+        assertTrue(restored.mightContain(urlhash(1000, 1000)));
+        file.delete();
+    }
+}
@@ -0,0 +1,253 @@
+package net.yacy.crawler.retrieval;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Test;
+
+import net.yacy.cora.document.id.MultiProtocolURL;
+import net.yacy.cora.protocol.HeaderFramework;
+import net.yacy.cora.protocol.ResponseHeader;
+
+public class AsyncHTTPLoaderTest {
+
+    /**
+     * A stub http server serving a synthetic site: every path is a page with links to the following pages.
+     * The parameters of the query change the answer: size (length of the page), chunked (no content length),
+     * status (the status code), gzip (gzip encoded content).
+     */
+    private static class Site extends AbstractHandler {
+
+        private final Server server;
+        private final long latency;
+        private final AtomicInteger active = new AtomicInteger(0);
+        private final AtomicInteger maxActive = new AtomicInteger(0);
+
+        private Site(final long latency) throws Exception {
+            this.latency = latency;
+            this.server = new Server(new QueuedThreadPool(200, 8));
+            final ServerConnector connector = new ServerConnector(this.server);
+            connector.setHost("127.0.0.1");
+            connector.setPort(0);
+            this.server.addConnector(connector);
+            this.server.setHandler(this);
+            this.server.start();
+        }
+
+        private String url(final String path) {
+            return "http://127.0.0.1:" + ((ServerConnector) this.server.getConnectors()[0]).getLocalPort() + path;
+        }
+
+        @Override
+        public void handle(final String target, final org.eclipse.jetty.server.Request baseRequest,
+                final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+            final int a = this.active.incrementAndGet();
+            this.maxActive.accumulateAndGet(a, Math::max);
+            try {
+                if (this.latency > 0) Thread.sleep(this.latency);
+                final int status = request.getParameter("status") == null ? 200 : Integer.parseInt(request.getParameter("status"));
+                final int size = request.getParameter("size") == null ? 0 : Integer.parseInt(request.getParameter("size"));
+                final StringBuilder page = new StringBuilder("<html><body><a href=\"" + target + "/1\">1</a><a href=\"" + target + "/2\">2</a>");
+                while (page.length() < size - 14) page.append('x');
+                page.append("</body></html>");
+                byte[] content = page.toString().getBytes(StandardCharsets.UTF_8);
+                if (request.getParameter("gzip") != null) {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    try (final GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                        gzip.write(content);
+                    }
+                    content = out.toByteArray();
+                    response.setHeader("Content-Encoding", "gzip");
+                }
+                response.setStatus(status);
+                response.setContentType("text/html; charset=UTF-8");
+                if (status > 299 && status < 310) response.setHeader("Location", "/moved");
+                if (request.getParameter("chunked") == null) response.setContentLength(content.length);
+                response.getOutputStream().write(content);
+                baseRequest.setHandled(true);
+            } catch (final InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                this.active.decrementAndGet();
+            }
+        }
+
+        private void shutdown() throws Exception {
+            this.server.stop();
+        }
+    }
+
+    private static class Result implements AsyncHTTPLoader.Listener {
+
+        private final CountDownLatch done;
+        private int statusCode = -1;
+        private ResponseHeader responseHeader;
+        private byte[] content;
+        private IOException failure;
+
+        private Result(final CountDownLatch done) {
+            this.done = done;
+        }
+
+        @Override
+        public void loaded(final int statusCode, final String reason, final ResponseHeader responseHeader, final byte[] content) {
+            this.statusCode = statusCode;
+            this.responseHeader = responseHeader;
+            this.content = content;
+            this.done.countDown();
+        }
+
+        @Override
+        public void failed(final IOException e) {
+            this.failure = e;
+            this.done.countDown();
+        }
+    }
+
+    private final List<Site> sites = new ArrayList<>();
+    private AsyncHTTPLoader loader;
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.loader != null) this.loader.close();
+        for (final Site site: this.sites) site.shutdown();
+    }
+
+    private Site site(final long latency) throws Exception {
+        final Site site = new Site(latency);
+        this.sites.add(site);
+        return site;
+    }
+
+    private Result load(final String url, final int maxFileSize) throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final Result result = new Result(done);
+        this.loader.load(new MultiProtocolURL(url), new HashMap<String, String>(), maxFileSize, result);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return result;
+    }
+
+    /**
+     * many fetches over several hosts are in flight at the same time, with the connection limit for each host
+     */
+    @Test
+    public void testConcurrentFetches() throws Exception {
+        final int hosts = 10, pages = 20, perHost = 4;
+        final long latency = 200;
+        for (int h = 0; h < hosts; h++) site(latency);
+        this.loader = new AsyncHTTPLoader(1000, perHost, 10000);
+        final CountDownLatch done = new CountDownLatch(hosts * pages);
+        final ConcurrentLinkedQueue<Result> results = new ConcurrentLinkedQueue<>();
+        final Map<String, String> requestHeader = new HashMap<>();
+        requestHeader.put(HeaderFramework.USER_AGENT, "yacybot");
+        final long start = System.currentTimeMillis();
+        for (int p = 0; p < pages; p++) {
+            for (final Site site: this.sites) {
+                final Result result = new Result(done);
+                results.add(result);
+                this.loader.load(new MultiProtocolURL(site.url("/page/" + p)), requestHeader, -1, result);
+            }
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        final long time = System.currentTimeMillis() - start;
+        for (final Result result: results) {
+            assertNull(result.failure);
+            assertEquals(200, result.statusCode);
+            assertTrue(new String(result.content, StandardCharsets.UTF_8).startsWith("<html>"));
+        }
+        for (final Site site: this.sites) {
+            assertTrue("connections to one host: " + site.maxActive.get(), site.maxActive.get() <= perHost);
+        }
+        // a thread for each request, one request after the other, would need hosts * pages * latency = 40 seconds
+        assertTrue("time " + time, time < hosts * pages * latency / 4);
+        assertEquals(0, this.loader.inFlight());
+    }
+
+    @Test
+    public void testMaxFileSize() throws Exception {
+        final Site site = site(0);
+        this.loader = new AsyncHTTPLoader(10, 2, 10000);
+
+        Result result = load(site.url("/small?size=500"), 1000);
+        assertNull(result.failure);
+        assertEquals(500, result.content.length);
+
+        // the content length is known from the header
+        result = load(site.url("/large?size=5000"), 1000);
+        assertNotNull(result.failure);
+        assertNull(result.content);
+
+        // the content length is only known when the content is streamed
+        result = load(site.url("/large?size=5000&chunked=true"), 1000);
+        assertNotNull(result.failure);
+        assertNull(result.content);
+
+        result = load(site.url("/large?size=5000&chunked=true"), -1);
+        assertNull(result.failure);
+        assertEquals(5000, result.content.length);
+    }
+
+    @Test
+    public void testStatusAndRedirect() throws Exception {
+        final Site site = site(0);
+        this.loader = new AsyncHTTPLoader(10, 2, 10000);
+
+        Result result = load(site.url("/missing?status=404"), -1);
+        assertNull(result.failure);
+        assertEquals(404, result.statusCode);
+        assertEquals(404, result.responseHeader.getStatusCode());
+
+        // redirects are handed to the caller
+        result = load(site.url("/old?status=301"), -1);
+        assertNull(result.failure);
+        assertEquals(301, result.statusCode);
+        assertEquals("/moved", result.responseHeader.get(HeaderFramework.LOCATION));
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        final Site site = site(0);
+        this.loader = new AsyncHTTPLoader(10, 2, 10000);
+        final Result plain = load(site.url("/page?size=2000"), -1);
+        final Result gzip = load(site.url("/page?size=2000&gzip=true"), -1);
+        assertNull(gzip.failure);
+        assertArrayEquals(plain.content, gzip.content);
+        assertNull(gzip.responseHeader.get(HeaderFramework.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void testConnectionFailure() throws Exception {
+        final Site site = site(0);
+        final String url = site.url("/page");
+        site.shutdown();
+        this.sites.clear();
+        this.loader = new AsyncHTTPLoader(10, 2, 10000);
+        final Result result = load(url, -1);
+        assertNotNull(result.failure);
+        assertEquals(0, this.loader.inFlight());
+    }
+}
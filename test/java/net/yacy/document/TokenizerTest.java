@@ -35,6 +35,13 @@ public class TokenizerTest {
         w = words.get("words");
         assertEquals("position of 'words' ", 7, w.posInText);
         assertEquals("occurence of 'words' ", 2, w.occurrences());
+        assertArrayEquals("positions without positional index", new int[0], w.positions());
+
+        // the positions of all occurrences are only recorded for the positional index
+        t = new Tokenizer(null, text, meaningLib, doAutotagging, scraper, true);
+        w = t.words.get("words");
+        assertArrayEquals("positions of 'words' ", new int[]{7, 10}, w.positions());
+        assertTrue(w.positionsComplete());
     }
 
     /**
@@ -0,0 +1,253 @@
+// ArrayStackTierTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+
+/**
+ * Unit tests for the hot and cold tier of the BLOB files of an ArrayStack
+ */
+public class ArrayStackTierTest {
+
+    private static final long hour = 60L * 60L * 1000L;
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dir, hot, cold;
+
+    @Before
+    public void setUp() {
+        this.dir = this.tmp.getRoot();
+        this.hot = new File(this.dir, "hot");
+        this.cold = new File(this.dir, "cold");
+    }
+
+    private ArrayStack open() throws Exception {
+        return new ArrayStack(this.hot, this.cold, "test", NaturalOrder.naturalOrder, 12, 0, true, true, false);
+    }
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("k%011d", i));
+    }
+
+    private static byte[] value(final int i) {
+        return ASCII.getBytes("value of " + i);
+    }
+
+    /**
+     * write a file with the keys from..to-1 and mount it
+     */
+    private static File mountFile(final ArrayStack stack, final int from, final int to) throws Exception {
+        final File f = stack.newBLOB(new Date());
+        final HeapWriter writer = new HeapWriter(new File(f.getParentFile(), f.getName() + ".prt"), f, 12, NaturalOrder.naturalOrder, 1024);
+        for (int i = from; i < to; i++) writer.add(key(i), value(i));
+        writer.close(true);
+        stack.mountBLOB(f, false);
+        Thread.sleep(2); // the file names are made from the time
+        return f;
+    }
+
+    /**
+     * rarely read files are moved to the cold tier and stay there after a restart; the content is not changed
+     */
+    @Test
+    public void testMigrateToCold() throws Exception {
+        ArrayStack stack = open();
+        final File f0 = mountFile(stack, 0, 10);
+        final File f1 = mountFile(stack, 10, 20);
+        mountFile(stack, 20, 30);
+
+        // the first file is read, the others not
+        for (int i = 0; i < 4; i++) assertNotNull(stack.get(key(i)));
+        assertNull(stack.selectMigration(0, 0, 1.0d)); // the files were not observed for an hour
+        assertTrue(stack.updateTemperatures(System.currentTimeMillis() + 2 * hour));
+        assertEquals(2.0d, stack.temperature(f0), 0.1d);
+        assertEquals(0.0d, stack.temperature(f1), 0.1d);
+        assertNull(stack.selectMigration(Long.MAX_VALUE, 0, 1.0d)); // all files are too small
+        assertNull(stack.selectMigration(0, hour, 1.0d)); // all files are too young
+
+        // the first file is hot, the newest file is never moved
+        final File selected = stack.selectMigration(0, 0, 1.0d);
+        assertEquals(f1, selected);
+        assertNull(stack.selectMigration(0, 0, 1.0d));
+        final File moved = stack.migrate(selected, null);
+        assertNotNull(moved);
+        assertTrue(stack.isCold(moved));
+        assertEquals(this.cold, moved.getParentFile());
+        assertFalse(f1.exists());
+        assertEquals(3, stack.entries());
+        for (int i = 0; i < 30; i++) assertArrayEquals(value(i), stack.get(key(i)));
+        stack.close(true);
+
+        // the tier and the temperature survive a restart
+        stack = open();
+        assertEquals(3, stack.entries());
+        assertTrue(moved.exists());
+        assertFalse(f1.exists());
+        assertEquals(0.0d, stack.temperature(moved), 0.1d);
+        assertEquals(2.0d, stack.temperature(f0), 0.1d);
+        for (int i = 0; i < 30; i++) assertArrayEquals(value(i), stack.get(key(i)));
+        stack.close(true);
+    }
+
+    /**
+     * a cold file that is read often is moved back to the hot tier
+     */
+    @Test
+    public void testMigrateToHot() throws Exception {
+        final ArrayStack stack = open();
+        try {
+            final File f0 = mountFile(stack, 0, 10);
+            mountFile(stack, 10, 20);
+            final long now = System.currentTimeMillis();
+            stack.updateTemperatures(now + 2 * hour);
+            final File moved = stack.migrate(stack.selectMigration(0, 0, 1.0d), null);
+            assertNotNull(moved);
+            assertTrue(stack.isCold(moved));
+            assertEquals(f0.getName(), moved.getName());
+
+            // a moderate number of reads does not move the file back
+            for (int i = 0; i < 6; i++) assertNotNull(stack.get(key(i)));
+            stack.updateTemperatures(now + 3 * hour);
+            assertNull(stack.selectMigration(0, 0, 1.0d));
+
+            // many reads do
+            for (int i = 0; i < 20; i++) assertNotNull(stack.get(key(i % 10)));
+            stack.updateTemperatures(now + 4 * hour);
+            final File back = stack.migrate(stack.selectMigration(0, 0, 1.0d), null);
+            assertEquals(f0, back);
+            assertFalse(stack.isCold(back));
+            assertFalse(moved.exists());
+            for (int i = 0; i < 20; i++) assertArrayEquals(value(i), stack.get(key(i)));
+        } finally {
+            stack.close(true);
+        }
+    }
+
+    /**
+     * a file that is written or unmounted while it is copied is not moved
+     */
+    @Test
+    public void testDroppedMigration() throws Exception {
+        final ArrayStack stack = open();
+        try {
+            mountFile(stack, 0, 10);
+            mountFile(stack, 10, 20);
+            stack.updateTemperatures(System.currentTimeMillis() + 2 * hour);
+            final File selected = stack.selectMigration(0, 0, 1.0d);
+            assertNotNull(selected);
+            final File[] unmounted = stack.unmountSmallest(2, Long.MAX_VALUE);
+            assertEquals(2, unmounted.length);
+            assertNull(stack.migrate(selected, null));
+            assertTrue(selected.exists());
+            assertFalse(new File(this.cold, selected.getName()).exists());
+        } finally {
+            stack.close(true);
+        }
+    }
+
+    /**
+     * reads that run while a file is moved between the tiers find all values; the replaced file is deleted
+     * when the reads are finished
+     */
+    @Test
+    public void testReadDuringMigration() throws Exception {
+        final ArrayStack stack = open();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        try {
+            final File f0 = mountFile(stack, 0, 10);
+            mountFile(stack, 10, 20);
+            final Thread[] readers = new Thread[4];
+            for (int t = 0; t < readers.length; t++) {
+                readers[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            int i = 0;
+                            while (running.get()) {
+                                final int k = i++ % 20;
+                                assertArrayEquals(value(k), stack.get(key(k)));
+                                assertEquals(value(k).length, stack.length(key(k)));
+                            }
+                        } catch (final Throwable e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                };
+                readers[t].start();
+            }
+            File location = f0;
+            for (int m = 0; m < 20; m++) {
+                final File moved = stack.migrate(location, null);
+                if (moved != null) location = moved; // the migration is postponed while the other tier holds a file that is still read
+            }
+            running.set(false);
+            for (final Thread reader: readers) reader.join();
+            assertNull(failure.get());
+            final File other = new File(stack.isCold(location) ? this.hot : this.cold, location.getName());
+            assertTrue(location.exists());
+            assertFalse(other.exists());
+            for (int i = 0; i < 20; i++) assertArrayEquals(value(i), stack.get(key(i)));
+        } finally {
+            running.set(false);
+            stack.close(true);
+        }
+    }
+
+    /**
+     * merged files are written to the cold tier if all merged files are cold
+     */
+    @Test
+    public void testNewBLOB() throws Exception {
+        final ArrayStack stack = open();
+        try {
+            final Date d = new Date();
+            assertEquals(this.hot, stack.newBLOB(d).getParentFile());
+            assertEquals(this.hot, stack.newBLOB(d, false).getParentFile());
+            assertEquals(this.cold, stack.newBLOB(d, true).getParentFile());
+            assertTrue(stack.isCold(stack.newBLOB(d, true)));
+        } finally {
+            stack.close(true);
+        }
+    }
+
+}
@@ -0,0 +1,286 @@
+// BlockHeapTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+
+/**
+ * Unit tests for the block compressed heap
+ */
+public class BlockHeapTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        this.dir = this.tmp.getRoot();
+    }
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("k%011d", i));
+    }
+
+    private static byte[] value(final int i, final int version) {
+        return ASCII.getBytes("d4:datei" + (1000000 + i) + "e7:versioni" + version + "e4:host15:www.example.orge");
+    }
+
+    /**
+     * inserts, updates and deletes must be visible before and after a reopen, with all codecs
+     */
+    @Test
+    public void testReadWrite() throws Exception {
+        for (final BlockHeap.Codec codec: BlockHeap.Codec.values()) {
+            final File f = new File(this.dir, "test." + codec.name() + ".heap");
+            BlockHeap heap = new BlockHeap(f, 12, NaturalOrder.naturalOrder, 4096, codec);
+            try {
+                for (int i = 0; i < 2000; i++) heap.insert(key(i), value(i, 0));
+                for (int i = 0; i < 2000; i += 3) heap.insert(key(i), value(i, 1));
+                for (int i = 0; i < 2000; i += 5) heap.delete(key(i));
+                assertEquals(1600, heap.size());
+            } finally {
+                heap.close(false);
+            }
+            heap = new BlockHeap(f, 12, NaturalOrder.naturalOrder, 4096, codec);
+            try {
+                assertEquals(1600, heap.size());
+                for (int i = 0; i < 2000; i++) {
+                    if (i % 5 == 0) {
+                        assertFalse(heap.containsKey(key(i)));
+                        assertNull(heap.get(key(i)));
+                    } else {
+                        assertArrayEquals(value(i, i % 3 == 0 ? 1 : 0), heap.get(key(i)));
+                    }
+                }
+                // iteration in key order
+                final Iterator<Map.Entry<byte[], byte[]>> i = heap.entries();
+                int c = 0;
+                byte[] last = null;
+                while (i.hasNext()) {
+                    final Map.Entry<byte[], byte[]> e = i.next();
+                    if (last != null) assertTrue(NaturalOrder.naturalOrder.compare(last, e.getKey()) < 0);
+                    last = e.getKey();
+                    c++;
+                }
+                assertEquals(1600, c);
+            } finally {
+                heap.close(false);
+            }
+        }
+    }
+
+    /**
+     * a rewrite removes the replaced records and packs the small blocks; the content must not change
+     */
+    @Test
+    public void testCompaction() throws Exception {
+        final File f = new File(this.dir, "test.heap");
+        final BlockHeap heap = new BlockHeap(f, 12, NaturalOrder.naturalOrder, 100, BlockHeap.Codec.LZ4);
+        try {
+            for (int r = 0; r < 5; r++) {
+                for (int i = 0; i < 500; i++) heap.insert(key(i), value(i, r));
+            }
+            final long before = f.length();
+            heap.optimize();
+            assertTrue(f.length() < before);
+            assertEquals(500, heap.size());
+            for (int i = 0; i < 500; i++) assertArrayEquals(value(i, 4), heap.get(key(i)));
+            // the records are compressed: the file is smaller than the raw content
+            assertTrue(f.length() < 500L * (12 + 4 + value(0, 4).length));
+            assertFalse(new File(this.dir, "test.heap.compact").exists());
+        } finally {
+            heap.close(false);
+        }
+    }
+
+    /**
+     * an iteration continues over a rewrite of the file; it sees the current values and skips deleted entries
+     */
+    @Test
+    public void testIterationDuringCompaction() throws Exception {
+        final File f = new File(this.dir, "test.heap");
+        final BlockHeap heap = new BlockHeap(f, 12, NaturalOrder.naturalOrder, 100, BlockHeap.Codec.LZ4);
+        try {
+            for (int r = 0; r < 3; r++) {
+                for (int i = 0; i < 500; i++) heap.insert(key(i), value(i, r));
+            }
+            final Iterator<Map.Entry<byte[], byte[]>> i = heap.entries();
+            int c = 0;
+            while (i.hasNext()) {
+                final Map.Entry<byte[], byte[]> e = i.next();
+                final int k = Integer.parseInt(ASCII.String(e.getKey()).substring(1));
+                assertArrayEquals(k <= 250 ? value(k, 2) : value(k, 3), e.getValue()); // the entry after the 250th was read ahead
+                if (c == 249) {
+                    // replace the rest and rewrite the file while the iteration is running
+                    for (int j = 250; j < 500; j++) heap.insert(key(j), value(j, 3));
+                    heap.delete(key(499));
+                    heap.optimize();
+                }
+                c++;
+            }
+            assertEquals(499, c);
+        } finally {
+            heap.close(false);
+        }
+    }
+
+    /**
+     * an incomplete block at the end of the file, i.e. after a crash, is removed when the file is opened
+     */
+    @Test
+    public void testTruncatedBlock() throws Exception {
+        final File f = new File(this.dir, "test.heap");
+        BlockHeap heap = new BlockHeap(f, 12, NaturalOrder.naturalOrder, 1024, BlockHeap.Codec.DEFLATE);
+        for (int i = 0; i < 100; i++) heap.insert(key(i), value(i, 0));
+        heap.close(false);
+        final long good = f.length();
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(good);
+            raf.writeInt(5000);
+            raf.write(new byte[20]);
+        }
+        heap = new BlockHeap(f, 12, NaturalOrder.naturalOrder, 1024, BlockHeap.Codec.DEFLATE);
+        try {
+            assertEquals(good, f.length());
+            assertEquals(100, heap.size());
+            assertArrayEquals(value(99, 0), heap.get(key(99)));
+        } finally {
+            heap.close(false);
+        }
+    }
+
+    /**
+     * a damaged block within the file is skipped and the following blocks are kept;
+     * a damaged block header within the file stops the open
+     */
+    @Test
+    public void testDamagedBlock() throws Exception {
+        final File f = new File(this.dir, "test.heap");
+        BlockHeap heap = new BlockHeap(f, 12, NaturalOrder.naturalOrder, 64 * 1024, BlockHeap.Codec.DEFLATE);
+        final long[] ends = new long[3];
+        for (int b = 0; b < 3; b++) {
+            for (int i = b * 30; i < b * 30 + 30; i++) heap.insert(key(i), value(i, 0));
+            heap.commit();
+            ends[b] = f.length();
+        }
+        heap.close(false);
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(ends[0] + 9);
+            raf.write(new byte[(int) (ends[1] - ends[0] - 9)]);
+        }
+        heap = new BlockHeap(f, 12, NaturalOrder.naturalOrder, 1024, BlockHeap.Codec.DEFLATE);
+        try {
+            assertEquals(ends[2], f.length());
+            assertEquals(60, heap.size());
+            assertNull(heap.get(key(40)));
+            assertArrayEquals(value(89, 0), heap.get(key(89)));
+        } finally {
+            heap.close(false);
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(ends[0] + 4);
+            raf.write(99); // no codec
+        }
+        try {
+            new BlockHeap(f, 12, NaturalOrder.naturalOrder, 1024, BlockHeap.Codec.DEFLATE).close(false);
+            fail("a damaged block header must not be truncated");
+        } catch (final IOException e) {
+            assertEquals(ends[2], f.length());
+        }
+    }
+
+    /**
+     * a file in the Heap format is converted when it is opened
+     */
+    @Test
+    public void testMigration() throws Exception {
+        final File f = new File(this.dir, "test.heap");
+        final Heap old = new Heap(f, 12, NaturalOrder.naturalOrder, 1024);
+        for (int i = 0; i < 1000; i++) old.insert(key(i), value(i, 0));
+        old.delete(key(7));
+        old.close(true);
+        assertFalse(BlockHeap.isBlockHeap(f));
+
+        final BlockHeap heap = new BlockHeap(f, 12, NaturalOrder.naturalOrder, 1024, BlockHeap.Codec.LZ4);
+        try {
+            assertTrue(BlockHeap.isBlockHeap(f));
+            assertEquals(999, heap.size());
+            assertNull(heap.get(key(7)));
+            for (int i = 8; i < 1000; i++) assertArrayEquals(value(i, 0), heap.get(key(i)));
+        } finally {
+            heap.close(false);
+        }
+        // no index dumps of the old format are left
+        for (final String s: this.dir.list()) assertTrue(s, s.equals("test.heap"));
+    }
+
+    /**
+     * the BEncodedHeap keeps the uncompressed format unless a codec is given, then it stores its rows in the block format
+     */
+    @Test
+    public void testBEncodedHeap() throws Exception {
+        final File f = new File(this.dir, "table.heap");
+        BEncodedHeap table = new BEncodedHeap(f, 12);
+        for (int i = 0; i < 300; i++) table.insert(key(i), "host", ASCII.getBytes("host" + i));
+        table.close();
+        assertFalse(BlockHeap.isBlockHeap(f));
+        table = new BEncodedHeap(f, 12, BlockHeap.Codec.LZ4);
+        assertEquals(300, table.size());
+        table.close();
+        assertTrue(BlockHeap.isBlockHeap(f));
+        table = new BEncodedHeap(f, 12);
+        try {
+            assertEquals(300, table.size());
+            assertArrayEquals(ASCII.getBytes("host42"), table.get(key(42)).get("host"));
+            int c = 0;
+            for (final Map.Entry<byte[], Map<String, byte[]>> e: table) {
+                assertArrayEquals(ASCII.getBytes("host" + Integer.parseInt(ASCII.String(e.getKey()).substring(1))), e.getValue().get("host"));
+                c++;
+            }
+            assertEquals(300, c);
+        } finally {
+            table.close();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+// GroupCommitTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+
+/**
+ * Unit tests for the write-behind mode of Heap and BlockHeap
+ */
+public class GroupCommitTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        this.dir = this.tmp.getRoot();
+    }
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("k%011d", i));
+    }
+
+    private static byte[] value(final int i) {
+        final byte[] b = new byte[20 + i % 100];
+        Arrays.fill(b, (byte) ('a' + i % 26));
+        return b;
+    }
+
+    private static BLOB open(final File f, final boolean block, final long interval) throws Exception {
+        if (block) {
+            final BlockHeap heap = new BlockHeap(f, 12, NaturalOrder.naturalOrder, 64 * 1024, BlockHeap.Codec.LZ4);
+            heap.setWriteBehind(interval);
+            return heap;
+        }
+        final Heap heap = new Heap(f, 12, NaturalOrder.naturalOrder, 64 * 1024);
+        heap.setWriteBehind(interval);
+        return heap;
+    }
+
+    private static void commit(final BLOB heap) throws Exception {
+        ((GroupCommit.Committable) heap).commit();
+    }
+
+    /**
+     * pending writes are visible at once and are written with the commit
+     */
+    @Test
+    public void testReadOwnWrites() throws Exception {
+        for (final boolean block: new boolean[]{false, true}) {
+            final File f = new File(this.dir, "test" + block + ".heap");
+            final BLOB heap = open(f, block, 3600000);
+            try {
+                final long length = f.length();
+                for (int i = 0; i < 100; i++) heap.insert(key(i), value(i));
+                heap.delete(key(3));
+                for (int i = 0; i < 100; i++) {
+                    if (i == 3) assertNull(heap.get(key(3))); else assertArrayEquals(value(i), heap.get(key(i)));
+                }
+                assertEquals(99, heap.size());
+                assertEquals(length, f.length());
+                commit(heap);
+                assertTrue(f.length() > length);
+                assertArrayEquals(value(50), heap.get(key(50)));
+            } finally {
+                heap.close(false);
+            }
+        }
+    }
+
+    /**
+     * the commit thread writes the buffer without any further call
+     */
+    @Test
+    public void testCommitInterval() throws Exception {
+        for (final boolean block: new boolean[]{false, true}) {
+            final File f = new File(this.dir, "test" + block + ".heap");
+            final BLOB heap = open(f, block, 20);
+            try {
+                final long length = f.length();
+                heap.insert(key(1), value(1));
+                final long timeout = System.currentTimeMillis() + 10000;
+                while (f.length() == length && System.currentTimeMillis() < timeout) Thread.sleep(10);
+                assertTrue(f.length() > length);
+            } finally {
+                heap.close(false);
+            }
+        }
+    }
+
+    /**
+     * a batch that was only written partly is removed when the heap file is opened
+     */
+    @Test
+    public void testPartialBatch() throws Exception {
+        final File f = new File(this.dir, "test.heap");
+        BLOB heap = open(f, false, 3600000);
+        for (int i = 0; i < 100; i++) heap.insert(key(i), value(i));
+        commit(heap);
+        final long good = f.length();
+        for (int i = 100; i < 200; i++) heap.insert(key(i), value(i));
+        commit(heap);
+        heap.close(false);
+        // cut the second batch in the middle of a record
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(good + (f.length() - good) / 2 + 3);
+        }
+        heap = open(f, false, 0);
+        try {
+            assertFalse(heap.containsKey(key(199)));
+            for (int i = 0; i < 100; i++) assertArrayEquals(value(i), heap.get(key(i)));
+            for (int i = 100; i < 200; i++) {
+                final byte[] b = heap.get(key(i));
+                if (b != null) assertArrayEquals(value(i), b);
+            }
+            heap.insert(key(500), value(500));
+        } finally {
+            heap.close(false);
+        }
+        heap = open(f, false, 0);
+        try {
+            assertArrayEquals(value(500), heap.get(key(500)));
+        } finally {
+            heap.close(false);
+        }
+    }
+
+    /**
+     * a process that is killed while it writes must leave a heap that contains all committed records
+     * and a gapless sequence of the following records
+     */
+    @Test
+    public void testKillDuringWrite() throws Exception {
+        for (final boolean block: new boolean[]{false, true}) {
+            final File f = new File(this.dir, "kill" + block + ".heap");
+            final ProcessBuilder pb = new ProcessBuilder(
+                    new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath(),
+                    "-cp", System.getProperty("java.class.path"),
+                    Writer.class.getName(), f.getAbsolutePath(), Boolean.toString(block));
+            pb.redirectErrorStream(true);
+            final Process p = pb.start();
+            try {
+                final BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.US_ASCII));
+                String line;
+                while ((line = r.readLine()) != null && !line.equals("committed")) {}
+                assertEquals("committed", line);
+                Thread.sleep(300);
+            } finally {
+                p.destroyForcibly();
+                p.waitFor();
+            }
+            final BLOB heap = open(f, block, 0);
+            try {
+                int i = 0;
+                while (heap.containsKey(key(i))) {
+                    assertArrayEquals(value(i), heap.get(key(i)));
+                    i++;
+                }
+                assertTrue("only " + i + " records", i >= Writer.COMMITTED);
+                assertEquals(i, heap.size());
+            } finally {
+                heap.close(false);
+            }
+        }
+    }
+
+    /**
+     * the process for testKillDuringWrite: writes records until it is killed
+     */
+    public static class Writer {
+
+        static final int COMMITTED = 2000;
+
+        public static void main(final String[] args) throws Exception {
+            final BLOB heap = open(new File(args[0]), Boolean.parseBoolean(args[1]), 5);
+            for (int i = 0; ; i++) {
+                heap.insert(key(i), value(i));
+                if (i == COMMITTED - 1) {
+                    commit(heap);
+                    System.out.println("committed");
+                    System.out.flush();
+                }
+            }
+        }
+    }
+}
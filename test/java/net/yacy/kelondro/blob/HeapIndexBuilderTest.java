@@ -0,0 +1,215 @@
+// HeapIndexBuilderTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.NaturalOrder;
+
+/**
+ * Unit tests for the generation of heap indexes
+ */
+public class HeapIndexBuilderTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dir;
+    private long checkpointBytes;
+
+    @Before
+    public void setUp() {
+        this.dir = this.tmp.getRoot();
+        this.checkpointBytes = HeapIndexBuilder.checkpointBytes;
+    }
+
+    @After
+    public void tearDown() {
+        HeapIndexBuilder.checkpointBytes = this.checkpointBytes;
+    }
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("k%011d", i));
+    }
+
+    private static byte[] value(final int i) {
+        final byte[] b = new byte[10 + i % 50];
+        Arrays.fill(b, (byte) ('a' + i % 26));
+        return b;
+    }
+
+    /**
+     * write a heap without index dump and with some deleted records
+     */
+    private File writeHeap(final int count) throws Exception {
+        final File f = new File(this.dir, "test.heap");
+        final HeapWriter writer = new HeapWriter(new File(this.dir, "test.heap.prt"), f, 12, NaturalOrder.naturalOrder, 1024);
+        for (int i = 0; i < count; i++) writer.add(key(i), value(i));
+        writer.close(false);
+        final HeapModifier heap = new HeapModifier(f, 12, NaturalOrder.naturalOrder);
+        for (int i = 0; i < count; i += 10) heap.delete(key(i));
+        heap.close(false);
+        return f;
+    }
+
+    private static void check(final HeapModifier heap, final int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            if (i % 10 == 0) {
+                assertFalse(heap.containsKey(key(i)));
+            } else {
+                assertArrayEquals(value(i), heap.get(key(i)));
+            }
+        }
+        assertEquals(count - (count + 9) / 10, heap.size());
+    }
+
+    /**
+     * the index that is generated from the heap file has all records and gaps
+     */
+    @Test
+    public void testBuild() throws Exception {
+        final File f = writeHeap(5000);
+        final HeapModifier heap = new HeapModifier(f, 12, NaturalOrder.naturalOrder);
+        try {
+            check(heap, 5000);
+            assertEquals(500, heap.free.size());
+        } finally {
+            heap.close(false);
+        }
+    }
+
+    /**
+     * a heap with an index that is generated in the background answers all lookups
+     */
+    @Test
+    public void testBackgroundIndex() throws Exception {
+        final File f = writeHeap(5000);
+        final HeapModifier heap = new HeapModifier(f, 12, NaturalOrder.naturalOrder, false, true);
+        try {
+            heap.optimize();
+            heap.useBloomFilter();
+            for (int i = 4999; i >= 0; i--) {
+                if (i % 10 != 0) assertArrayEquals(value(i), heap.get(key(i)));
+            }
+            check(heap, 5000);
+            assertFalse(heap.isIndexing());
+            assertTrue(heap.hasBloomFilter());
+            heap.delete(key(1));
+            assertFalse(heap.containsKey(key(1)));
+        } finally {
+            heap.close(true);
+        }
+    }
+
+    /**
+     * an interrupted build continues at the last checkpoint and gives the same index as a complete build
+     */
+    @Test
+    public void testResume() throws Exception {
+        final File f = writeHeap(20000);
+        HeapIndexBuilder.checkpointBytes = 1; // a checkpoint after each record
+        final HeapIndexBuilder b = new HeapIndexBuilder(f, 12, NaturalOrder.naturalOrder, "test");
+        b.start(null);
+        while (b.scanned() == 0 && !b.isDone()) Thread.yield();
+        b.cancel();
+        b.await();
+        assertTrue(b.scanned() < f.length());
+        final String fingerprint = HeapReader.fingerprintFileHash(f);
+        final File ckp = HeapIndexBuilder.checkpointFile(f, fingerprint);
+        assertTrue(ckp.exists());
+        b.index().close();
+
+        // an incomplete segment at the end of the checkpoint is ignored
+        try (FileOutputStream os = new FileOutputStream(ckp, true)) {
+            os.write(new byte[]{0, 0, 0, 5, 1, 2, 3});
+        }
+
+        HeapIndexBuilder.checkpointBytes = 64 * 1024;
+        final HeapIndexBuilder r = new HeapIndexBuilder(f, 12, NaturalOrder.naturalOrder, "test");
+        r.run();
+        r.await();
+        assertTrue(r.resumed() > 0);
+        assertFalse(ckp.exists());
+        final HeapIndexBuilder c = new HeapIndexBuilder(f, 12, NaturalOrder.naturalOrder, "test");
+        c.run();
+        c.await();
+        assertEquals(0, c.resumed());
+        assertEquals(c.index().size(), r.index().size());
+        assertEquals(c.free(), r.free());
+        for (int i = 0; i < 20000; i++) assertEquals(c.index().get(key(i)), r.index().get(key(i)));
+        r.index().close();
+        c.index().close();
+    }
+
+    /**
+     * the positions of damaged records are kept in the checkpoint, so a resumed build marks them as empty, too
+     */
+    @Test
+    public void testResumeDamaged() throws Exception {
+        final File f = new File(this.dir, "damaged.heap");
+        final HeapWriter writer = new HeapWriter(new File(this.dir, "damaged.heap.prt"), f, 12, NaturalOrder.naturalOrder, 1024);
+        for (int i = 0; i < 20000; i++) {
+            final byte[] key = key(i);
+            if (i % 100 == 7) key[0] = '!'; // not a base64 character
+            writer.add(key, value(i));
+        }
+        writer.close(false);
+
+        HeapIndexBuilder.checkpointBytes = 1; // a checkpoint after each record
+        final HeapIndexBuilder b = new HeapIndexBuilder(f, 12, Base64Order.enhancedCoder, "test");
+        b.start(null);
+        while (b.damaged().size() < 10 && !b.isDone()) Thread.yield();
+        b.cancel();
+        b.await();
+        assertTrue(b.scanned() < f.length());
+        b.index().close();
+
+        HeapIndexBuilder.checkpointBytes = 64 * 1024;
+        final HeapIndexBuilder r = new HeapIndexBuilder(f, 12, Base64Order.enhancedCoder, "test");
+        r.run();
+        r.await();
+        assertTrue(r.resumed() > 0);
+        final HeapIndexBuilder c = new HeapIndexBuilder(f, 12, Base64Order.enhancedCoder, "test");
+        c.run();
+        c.await();
+        assertEquals(200, c.damaged().size());
+        assertEquals(c.damaged(), r.damaged());
+        assertEquals(c.free(), r.free());
+        r.index().close();
+        c.index().close();
+    }
+}
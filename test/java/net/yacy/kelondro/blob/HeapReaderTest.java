@@ -0,0 +1,231 @@
+// HeapReaderTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+
+/**
+ * Unit tests for the read access of heap files
+ */
+public class HeapReaderTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        this.dir = this.tmp.getRoot();
+    }
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("k%011d", i));
+    }
+
+    private static byte[] value(final int i) {
+        final byte[] b = new byte[10 + i % 50];
+        Arrays.fill(b, (byte) ('a' + i % 26));
+        return b;
+    }
+
+    private File writeHeap(final int count) throws Exception {
+        final File f = new File(this.dir, "test.heap");
+        final HeapWriter writer = new HeapWriter(new File(this.dir, "test.heap.prt"), f, 12, NaturalOrder.naturalOrder, 1024);
+        for (int i = 0; i < count; i++) writer.add(key(i), value(i));
+        writer.close(true);
+        return f;
+    }
+
+    /**
+     * mapped reads must return the same content as the file access path
+     */
+    @Test
+    public void testMappedRead() throws Exception {
+        final File f = writeHeap(1000);
+        final HeapModifier heap = new HeapModifier(f, 12, NaturalOrder.naturalOrder);
+        try {
+            assertTrue(heap.map());
+            assertTrue(heap.isMapped());
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(heap.containsKey(key(i)));
+                assertArrayEquals(value(i), heap.get(key(i)));
+                assertEquals(value(i).length, heap.length(key(i)));
+            }
+            assertFalse(heap.containsKey(key(1000)));
+            assertNull(heap.get(key(1000)));
+            assertEquals(-1, heap.length(key(1000)));
+        } finally {
+            heap.close(false);
+        }
+        assertFalse(heap.isMapped());
+    }
+
+    /**
+     * in-place modifications of a HeapModifier must be visible to mapped reads
+     */
+    @Test
+    public void testMappedReadAfterModification() throws Exception {
+        final File f = writeHeap(100);
+        final HeapModifier heap = new HeapModifier(f, 12, NaturalOrder.naturalOrder);
+        try {
+            assertTrue(heap.map());
+            heap.delete(key(10));
+            assertFalse(heap.containsKey(key(10)));
+            assertNull(heap.get(key(10)));
+            final int reduction = heap.reduce(key(59), new BLOB.Reducer() {
+                @Override
+                public byte[] rewrite(final byte[] b) {
+                    return Arrays.copyOf(b, 5);
+                }
+            });
+            assertEquals(value(59).length - 5, reduction);
+            assertArrayEquals(Arrays.copyOf(value(59), 5), heap.get(key(59)));
+            assertEquals(5, heap.length(key(59)));
+            assertArrayEquals(value(60), heap.get(key(60)));
+        } finally {
+            heap.close(false);
+        }
+    }
+
+    private int count(final String suffix) {
+        int c = 0;
+        for (final String s: this.dir.list()) if (s.endsWith(suffix)) c++;
+        return c;
+    }
+
+    /**
+     * the bloom filter is written with the index dump and guards all lookups
+     */
+    @Test
+    public void testBloomFilter() throws Exception {
+        final File f = writeHeap(1000);
+        assertEquals(1, count(".blm"));
+        HeapModifier heap = new HeapModifier(f, 12, NaturalOrder.naturalOrder);
+        try {
+            assertTrue(heap.useBloomFilter());
+            assertTrue(heap.hasBloomFilter());
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(heap.containsKey(key(i)));
+                assertArrayEquals(value(i), heap.get(key(i)));
+                assertEquals(value(i).length, heap.length(key(i)));
+            }
+            for (int i = 1000; i < 2000; i++) {
+                assertFalse(heap.containsKey(key(i)));
+                assertNull(heap.get(key(i)));
+                assertEquals(-1, heap.length(key(i)));
+            }
+            // a deleted key stays in the filter but is not found
+            heap.delete(key(5));
+            assertFalse(heap.containsKey(key(5)));
+            assertNull(heap.get(key(5)));
+        } finally {
+            heap.close(true);
+        }
+        // the file was changed: the filter is written again for the new fingerprint
+        assertEquals(1, count(".blm"));
+        heap = new HeapModifier(f, 12, NaturalOrder.naturalOrder);
+        try {
+            assertTrue(heap.useBloomFilter());
+            assertFalse(heap.containsKey(key(5)));
+            assertArrayEquals(value(6), heap.get(key(6)));
+        } finally {
+            heap.close(false);
+        }
+    }
+
+    /**
+     * an off-heap index must give the same results as the heap index, when it is loaded from the dump and when it is built from the heap
+     */
+    @Test
+    public void testOffHeapIndex() throws Exception {
+        final File f = writeHeap(500);
+        for (int pass = 0; pass < 2; pass++) {
+            final HeapModifier heap = new HeapModifier(f, 12, NaturalOrder.naturalOrder, true);
+            try {
+                for (int i = pass; i < 500; i++) {
+                    assertArrayEquals(value(i), heap.get(key(i)));
+                }
+                assertFalse(heap.containsKey(key(500)));
+                heap.delete(key(pass));
+                assertFalse(heap.containsKey(key(pass)));
+                assertEquals(499 - pass, heap.size());
+            } finally {
+                // the first pass does not write a dump: the index must be built from the heap file in the second pass
+                heap.close(pass == 1);
+            }
+        }
+    }
+
+    /**
+     * concurrent readers must not see any inconsistency, also when the mapping is released
+     */
+    @Test
+    public void testConcurrentMappedRead() throws Exception {
+        final File f = writeHeap(2000);
+        final HeapModifier heap = new HeapModifier(f, 12, NaturalOrder.naturalOrder);
+        try {
+            assertTrue(heap.map());
+            final Thread[] readers = new Thread[4];
+            final Throwable[] failure = new Throwable[1];
+            for (int t = 0; t < readers.length; t++) {
+                final int offset = t;
+                readers[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int r = 0; r < 10; r++) {
+                                for (int i = offset; i < 2000; i += 3) {
+                                    final byte[] b = heap.get(key(i));
+                                    if (!Arrays.equals(value(i), b)) throw new AssertionError("wrong value for key " + i);
+                                }
+                            }
+                        } catch (final Throwable e) {
+                            failure[0] = e;
+                        }
+                    }
+                };
+                readers[t].start();
+            }
+            heap.unmap(); // readers fall back to the file access
+            for (final Thread t: readers) t.join();
+            if (failure[0] != null) throw new AssertionError(failure[0]);
+        } finally {
+            heap.close(false);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+// TablesColumnHeapIndexTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.document.encoding.UTF8;
+
+/**
+ * Unit tests for the persistent column indexes of the Tables
+ */
+public class TablesColumnHeapIndexTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        this.dir = this.tmp.getRoot();
+    }
+
+    private static String type(final int i) {
+        return "type" + (i % 7);
+    }
+
+    private static Tables.Data row(final int i) {
+        final Tables.Data data = new Tables.Data();
+        data.put("type", type(i));
+        data.put("url", "http://host" + i + ".example.org/");
+        return data;
+    }
+
+    /**
+     * the rows that the iterator returns for a pattern on the column
+     */
+    private static List<String> scan(final Tables tables, final String column, final Pattern p) throws Exception {
+        final List<String> pks = new ArrayList<String>();
+        final Iterator<Tables.Row> i = tables.iterator("api", column, p);
+        while (i.hasNext()) {
+            final Tables.Row r = i.next();
+            assertTrue(p.matcher(UTF8.String(r.get(column))).matches());
+            pks.add(UTF8.String(r.getPK()));
+        }
+        return pks;
+    }
+
+    /**
+     * the indexed selection gives the same rows as the full scan, also after updates and deletes
+     */
+    @Test
+    public void testSelect() throws Exception {
+        final Tables tables = new Tables(this.dir, 12);
+        try {
+            final List<byte[]> pks = new ArrayList<byte[]>();
+            for (int i = 0; i < 500; i++) pks.add(tables.insert("api", row(i)));
+            final Pattern p = Pattern.compile("type[13]");
+            final List<String> unindexed = scan(tables, "type", p);
+            tables.createColumnIndex("api", "type");
+            assertTrue(tables.hasColumnIndex("api", "type"));
+            assertFalse(tables.hasColumnIndex("api", "url"));
+            assertTrue(tables.iterator("api", "type", p) instanceof Tables.IndexedRowIterator);
+            assertEquals(unindexed, scan(tables, "type", p));
+
+            // changes of the table are applied to the index
+            tables.update("api", pks.get(1), row(2)); // type1 -> type2
+            tables.delete("api", pks.get(3));
+            final Tables.Data data = new Tables.Data();
+            data.put("comment", "no type change");
+            tables.update("api", pks.get(8), data);
+            final List<String> expected = new ArrayList<String>(unindexed);
+            expected.remove(UTF8.String(pks.get(1)));
+            expected.remove(UTF8.String(pks.get(3)));
+            assertEquals(expected, scan(tables, "type", p));
+
+            // lookup of a value
+            int c = 0;
+            final Iterator<Tables.Row> i = tables.iterator("api", "type", UTF8.getBytes("type2"));
+            while (i.hasNext()) {
+                assertEquals("type2", UTF8.String(i.next().get("type")));
+                c++;
+            }
+            assertEquals(72 + 1, c); // with the updated row
+        } finally {
+            tables.close();
+        }
+    }
+
+    /**
+     * an index without uncommitted changes is used at once after a restart; an index with uncommitted changes is built again
+     */
+    @Test
+    public void testRestart() throws Exception {
+        final File dirty = new File(this.dir, "api.type.cidx.dirty");
+        Tables tables = new Tables(this.dir, 12);
+        for (int i = 0; i < 300; i++) tables.insert("api", row(i));
+        tables.createColumnIndex("api", "type");
+        tables.close();
+        assertFalse(dirty.exists());
+
+        tables = new Tables(this.dir, 12);
+        try {
+            assertTrue(tables.hasColumnIndex("api", "type"));
+            final TablesColumnHeapIndex index = (TablesColumnHeapIndex) tables.getIndex("api", TablesColumnIndex.INDEXTYPE.HEAP);
+            assertTrue(index.rebuildColumns().isEmpty());
+            assertEquals(7, index.size("type"));
+            assertEquals(300 / 7 + 1, index.get("type", "type0").size());
+            assertFalse(dirty.exists());
+
+            // a change marks the index until it is committed
+            tables.insert("api", row(300));
+            assertTrue(dirty.exists());
+            index.commit();
+            assertFalse(dirty.exists());
+            tables.insert("api", row(301));
+            assertTrue(dirty.exists());
+        } finally {
+            // simulate a crash: the index file stays marked as changed
+            tables.getHeap("api").close();
+        }
+
+        tables = new Tables(this.dir, 12);
+        try {
+            final TablesColumnHeapIndex index = (TablesColumnHeapIndex) tables.getIndex("api", TablesColumnIndex.INDEXTYPE.HEAP);
+            assertTrue(tables.hasColumnIndex("api", "type"));
+            assertEquals(7, index.size("type"));
+            assertEquals(tables.size("api"), index.get("type", "type0").size() + index.get("type", "type1").size() + index.get("type", "type2").size()
+                    + index.get("type", "type3").size() + index.get("type", "type4").size() + index.get("type", "type5").size() + index.get("type", "type6").size());
+            tables.dropColumnIndex("api", "type");
+            assertFalse(tables.hasColumnIndex("api", "type"));
+            assertFalse(new File(this.dir, "api.type.cidx").exists());
+        } finally {
+            tables.close();
+        }
+    }
+
+    /**
+     * the postings of one value are kept in single records, so values with many rows and the
+     * value dictionary stay correct when rows are added and removed
+     */
+    @Test
+    public void testPostings() throws Exception {
+        final TablesColumnHeapIndex index = new TablesColumnHeapIndex(this.dir, "t", 12, null);
+        try {
+            index.createIndex("type");
+            for (int i = 0; i < 2000; i++) index.insertPK("type", type(i), UTF8.getBytes("pk" + i));
+            index.setComplete("type");
+            assertEquals(7, index.size("type"));
+            assertEquals(2000 / 7 + 1, index.get("type", "type0").size());
+            for (int i = 0; i < 2000; i += 7) index.removePK("type", type(i), UTF8.getBytes("pk" + i));
+            assertFalse(index.containsKey("type", "type0"));
+            assertEquals(6, index.size("type"));
+            index.removePK(UTF8.getBytes("pk1"));
+            assertEquals(2000 / 7, index.get("type", "type1").size());
+            assertEquals(2000 / 7 + 1, index.get("type", "type2").size());
+            assertEquals(2 * (2000 / 7) + 1, index.select("type", Pattern.compile("type[12]")).size());
+        } finally {
+            index.close();
+        }
+
+        // the value dictionary is read from the file
+        final TablesColumnHeapIndex reopened = new TablesColumnHeapIndex(this.dir, "t", 12, null);
+        try {
+            assertTrue(reopened.rebuildColumns().isEmpty());
+            assertTrue(reopened.containsKey("type", "type1"));
+            assertEquals(6, reopened.size("type"));
+            assertEquals(2000 / 7, reopened.get("type", "type1").size());
+        } finally {
+            reopened.close();
+        }
+    }
+}
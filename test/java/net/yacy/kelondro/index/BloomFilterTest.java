@@ -0,0 +1,97 @@
+// BloomFilterTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.kelondro.data.word.Word;
+
+/**
+ * Unit tests for the BloomFilter class
+ */
+public class BloomFilterTest {
+
+    private static byte[] key(final int i) {
+        return Word.word2hash("word" + i);
+    }
+
+    /**
+     * all added keys must be found, other keys must only rarely be reported
+     */
+    @Test
+    public void testFalsePositiveRate() {
+        final int n = 100000;
+        final BloomFilter filter = new BloomFilter(n, 10);
+        for (int i = 0; i < n; i++) filter.add(key(i));
+        for (int i = 0; i < n; i++) assertTrue(filter.mightContain(key(i)));
+        int fp = 0;
+        for (int i = n; i < 2 * n; i++) if (filter.mightContain(key(i))) fp++;
+        // the theoretical rate for 10 bits per key is about 0.8%
+        assertTrue("false positives: " + fp, fp < n / 50);
+    }
+
+    @Test
+    public void testDumpAndLoad() throws IOException {
+        final BloomFilter filter = new BloomFilter(1000, 10);
+        for (int i = 0; i < 1000; i++) filter.add(key(i));
+        final File f = File.createTempFile("BloomFilterTest", ".blm");
+        try {
+            filter.dump(f);
+            final BloomFilter loaded = BloomFilter.load(f);
+            assertEquals(filter.hashCount(), loaded.hashCount());
+            assertEquals(filter.mem(), loaded.mem());
+            for (int i = 0; i < 2000; i++) assertEquals(filter.mightContain(key(i)), loaded.mightContain(key(i)));
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadCorrupted() throws IOException {
+        final File f = File.createTempFile("BloomFilterTest", ".blm");
+        try {
+            try (FileOutputStream os = new FileOutputStream(f)) {
+                os.write(ASCII.getBytes("no bloom filter"));
+            }
+            BloomFilter.load(f);
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testEmptyFilter() {
+        final BloomFilter filter = new BloomFilter(0, 10);
+        assertFalse(filter.mightContain(key(1)));
+        filter.add(key(1));
+        assertTrue(filter.mightContain(key(1)));
+    }
+}
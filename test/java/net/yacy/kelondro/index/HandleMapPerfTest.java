@@ -0,0 +1,98 @@
+// HandleMapPerfTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.storage.HandleMap;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.data.word.Word;
+
+/**
+ * Compare the RowHandleMap with the OffHeapHandleMap: time to fill the map, random lookups,
+ * iteration over all entries and the memory on the java heap.
+ * Run with enough direct memory, i.e. for 10 million entries:
+ * java -Xmx4g -XX:MaxDirectMemorySize=1g net.yacy.kelondro.index.HandleMapPerfTest 10000000
+ */
+public class HandleMapPerfTest {
+
+    private static byte[] key(final long i) {
+        // keys that look like word hashes
+        return Word.word2hash(Long.toString(i));
+    }
+
+    private static long used() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+    private static void measure(final String name, final HandleMap map, final int count, final long heapBefore, final long fillTime) {
+        final long heap = used() - heapBefore;
+
+        final Random r = new Random(0);
+        long t = System.nanoTime();
+        long found = 0;
+        for (int i = 0; i < count; i++) if (map.get(key(r.nextInt(2 * count))) >= 0) found++;
+        final long getTime = System.nanoTime() - t;
+
+        t = System.nanoTime();
+        long sum = 0;
+        final Iterator<byte[]> i = map.keys(true, null);
+        while (i.hasNext()) sum += i.next()[0];
+        final long iterateTime = System.nanoTime() - t;
+
+        System.out.println(name + ": " + map.size() + " entries" +
+                ", put " + (fillTime / count) + " ns/entry" +
+                ", get " + (getTime / count) + " ns/lookup (" + found + " found)" +
+                ", iterate " + (iterateTime / Math.max(1, map.size())) + " ns/entry (" + sum + ")" +
+                ", java heap " + (heap / 1024 / 1024) + " MB" +
+                (map instanceof OffHeapHandleMap ? ", direct memory " + (((OffHeapHandleMap) map).offHeapMem() / 1024 / 1024) + " MB" : ""));
+    }
+
+    public static void main(final String[] args) throws SpaceExceededException {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        System.out.println("HandleMap benchmark with " + count + " entries");
+
+        long before = used();
+        long t = System.nanoTime();
+        final RowHandleMap rowMap = new RowHandleMap(Word.commonHashLength, Base64Order.enhancedCoder, 8, count, "benchmark");
+        for (int i = 0; i < 2 * count; i += 2) rowMap.putUnique(key(i), i);
+        measure("RowHandleMap", rowMap, count, before, System.nanoTime() - t);
+
+        // the off-heap map is filled from a sorted source, like from an index dump
+        before = used() - rowMap.mem();
+        t = System.nanoTime();
+        final OffHeapHandleMap offHeapMap = OffHeapHandleMap.of(Word.commonHashLength, Base64Order.enhancedCoder, rowMap, "benchmark");
+        final long fillTime = System.nanoTime() - t;
+        rowMap.close();
+        measure("OffHeapHandleMap", offHeapMap, count, before, fillTime);
+
+        t = System.nanoTime();
+        final Random r = new Random(1);
+        for (int j = 0; j < count / 10; j++) offHeapMap.put(key(2 * r.nextInt(count)), j);
+        System.out.println("OffHeapHandleMap: update in place " + ((System.nanoTime() - t) / Math.max(1, count / 10)) + " ns/entry");
+        offHeapMap.close();
+    }
+
+}
@@ -0,0 +1,157 @@
+// OffHeapHandleMapTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.storage.HandleMap;
+
+/**
+ * Unit tests for the off-heap HandleMap
+ */
+public class OffHeapHandleMapTest {
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("k%011d", i));
+    }
+
+    /**
+     * a map of the even keys 0..2*(count-1) with value 10*i
+     */
+    private static RowHandleMap heapMap(final int count) throws Exception {
+        final RowHandleMap map = new RowHandleMap(12, Base64Order.enhancedCoder, 8, count, "test");
+        for (int i = count - 1; i >= 0; i--) map.put(key(2 * i), 10L * i);
+        return map;
+    }
+
+    @Test
+    public void testGetPutRemove() throws Exception {
+        final OffHeapHandleMap map = OffHeapHandleMap.of(12, Base64Order.enhancedCoder, heapMap(1000), "test");
+        try {
+            assertEquals(1000, map.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(10L * i, map.get(key(2 * i)));
+                assertFalse(map.has(key(2 * i + 1)));
+            }
+            // change in place
+            assertEquals(50, map.put(key(10), 7));
+            assertEquals(7, map.get(key(10)));
+            assertEquals(1000, map.size());
+            // new keys go into the overflow
+            assertEquals(-1, map.put(key(11), 3));
+            assertEquals(3, map.get(key(11)));
+            assertEquals(1001, map.size());
+            // removal
+            assertEquals(7, map.remove(key(10)));
+            assertEquals(-1, map.get(key(10)));
+            assertEquals(-1, map.remove(key(10)));
+            assertEquals(3, map.remove(key(11)));
+            assertEquals(999, map.size());
+            // a removed key can be inserted again
+            assertEquals(-1, map.put(key(10), 8));
+            assertEquals(8, map.get(key(10)));
+            assertEquals(1000, map.size());
+            assertEquals(2, map.inc(key(13)) + map.inc(key(13)) - 1);
+            assertEquals(2, map.get(key(13)));
+        } finally {
+            map.close();
+        }
+    }
+
+    @Test
+    public void testIterationOrder() throws Exception {
+        final OffHeapHandleMap map = OffHeapHandleMap.of(12, Base64Order.enhancedCoder, heapMap(100), "test");
+        try {
+            map.put(key(7), 1);
+            map.put(key(301), 2);
+            map.remove(key(0));
+            map.remove(key(8));
+            final RowHandleMap expected = heapMap(100);
+            expected.put(key(7), 1);
+            expected.put(key(301), 2);
+            expected.remove(key(0));
+            expected.remove(key(8));
+            assertSameKeys(expected.keys(true, null), map.keys(true, null));
+            assertSameKeys(expected.keys(false, null), map.keys(false, null));
+            assertSameKeys(expected.keys(true, key(50)), map.keys(true, key(50)));
+            assertSameKeys(expected.keys(true, key(51)), map.keys(true, key(51)));
+            assertArrayEquals(expected.keys(true, null).next(), map.smallestKey());
+            assertArrayEquals(expected.keys(false, null).next(), map.largestKey());
+
+            // optimize joins the overflow into the sorted array
+            map.optimize();
+            assertEquals(expected.size(), map.size());
+            assertSameKeys(expected.keys(true, null), map.keys(true, null));
+            assertEquals(1, map.get(key(7)));
+            assertEquals(2, map.get(key(301)));
+        } finally {
+            map.close();
+        }
+    }
+
+    private static void assertSameKeys(final Iterator<byte[]> expected, final Iterator<byte[]> actual) {
+        while (expected.hasNext()) {
+            assertTrue(actual.hasNext());
+            assertArrayEquals(expected.next(), actual.next());
+        }
+        assertFalse(actual.hasNext());
+    }
+
+    /**
+     * dumps of both implementations must be exchangeable
+     */
+    @Test
+    public void testDumpCompatibility() throws Exception {
+        for (final String name: new String[]{"test.idx", "test.idx.gz"}) {
+            final File f = new File(System.getProperty("java.io.tmpdir"), "OffHeapHandleMapTest" + System.nanoTime() + name);
+            try {
+                final RowHandleMap heap = heapMap(5000);
+                assertEquals(5000, heap.dump(f));
+                final OffHeapHandleMap map = new OffHeapHandleMap(12, Base64Order.enhancedCoder, f);
+                assertEquals(5000, map.size());
+                for (int i = 0; i < 5000; i++) assertEquals(10L * i, map.get(key(2 * i)));
+                map.remove(key(0));
+                map.put(key(1), 99);
+                assertEquals(5000, map.dump(f));
+                map.close();
+                final HandleMap reloaded = name.endsWith(".gz") ? new OffHeapHandleMap(12, Base64Order.enhancedCoder, f) : new RowHandleMap(12, Base64Order.enhancedCoder, 8, f);
+                assertEquals(5000, reloaded.size());
+                assertEquals(-1, reloaded.get(key(0)));
+                assertEquals(99, reloaded.get(key(1)));
+                assertEquals(10, reloaded.get(key(2)));
+                reloaded.close();
+            } finally {
+                f.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+// RowSetPerfTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.lang.management.ManagementFactory;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.kelondro.rwi.ReferenceFactory;
+import net.yacy.kelondro.util.Bitfield;
+
+/**
+ * Micro benchmarks for the row collections: RowSet.sort, RowSet.get and ReferenceContainer.joinConstructive,
+ * and the key comparison with the general Base64 order against the in-place comparison of fixed length keys.
+ * Each benchmark is run in warm-up rounds before it is measured; the time and the allocated bytes on the
+ * java heap are reported per operation. Run it on two revisions to compare them, i.e.
+ * java -Xmx1g net.yacy.kelondro.index.RowSetPerfTest 100000
+ */
+public class RowSetPerfTest {
+
+    private static final int ROUNDS = 5;
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private interface Benchmark {
+        /**
+         * @return the number of operations of one run
+         */
+        long run() throws Exception;
+    }
+
+    private static long sink = 0; // prevents that the benchmark code is removed as dead code
+
+    private static void measure(final String name, final Benchmark b) throws Exception {
+        for (int i = 0; i < ROUNDS; i++) b.run(); // warm-up
+        final long tid = Thread.currentThread().getId();
+        long ops = 0;
+        final long alloc = threads.getThreadAllocatedBytes(tid);
+        final long t = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) ops += b.run();
+        final long time = System.nanoTime() - t;
+        final long bytes = threads.getThreadAllocatedBytes(tid) - alloc;
+        System.out.println(String.format("%-40s %10.1f ns/op %10.1f bytes/op", name, (double) time / ops, (double) bytes / ops));
+    }
+
+    private static byte[][] keys(final int count, final long seed) {
+        final Random r = new Random(seed);
+        final byte[][] keys = new byte[count][];
+        for (int i = 0; i < count; i++) keys[i] = Word.word2hash(Long.toString(r.nextLong()));
+        return keys;
+    }
+
+    private static RowSet rowSet(final Row row, final byte[][] keys) throws SpaceExceededException {
+        final RowSet set = new RowSet(row, keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            final Row.Entry e = row.newEntry();
+            e.setCol(0, keys[i]);
+            e.setCol(1, i);
+            set.addUnique(e);
+        }
+        return set;
+    }
+
+    private static WordReferenceVars reference(final byte[] urlhash) {
+        final Queue<Integer> positions = new LinkedBlockingQueue<Integer>();
+        positions.add(1);
+        return new WordReferenceVars(urlhash, 30, 3, 0, 1, 100, 10, 1, positions, 1, 1, 0, "en",
+                Response.DT_TEXT, 0, 0, new Bitfield(4), 0.0d);
+    }
+
+    private static ReferenceContainer<WordReference> container(final ReferenceFactory<WordReference> factory, final byte[][] keys, final int count) throws SpaceExceededException {
+        final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(factory, Word.word2hash("term"), count);
+        for (int i = 0; i < count; i++) c.add(reference(keys[i]));
+        c.sort();
+        return c;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        System.out.println("RowSet benchmark with " + count + " rows");
+        final Row row = new Row("byte[] key-12, Cardinal value-4 {b256}", Base64Order.enhancedCoder);
+        final byte[][] keys = keys(count, 0);
+
+        // key comparison
+        final byte[] chunks = new byte[count * 12];
+        for (int i = 0; i < count; i++) System.arraycopy(keys[i], 0, chunks, i * 12, 12);
+        final net.yacy.cora.order.ByteOrder order = Base64Order.enhancedCoder;
+        measure("compare, ByteOrder interface", () -> {
+            for (int i = 1; i < count; i++) sink += order.compare(chunks, (i - 1) * 12, chunks, i * 12, 12);
+            return count - 1;
+        });
+        measure("compare, fixed length in place", () -> {
+            for (int i = 1; i < count; i++) sink += Base64Order.enhancedCoder.compareFixed(chunks, (i - 1) * 12, chunks, i * 12, 12);
+            return count - 1;
+        });
+
+        // sort
+        measure("RowSet.sort", () -> {
+            final RowSet set = rowSet(row, keys);
+            set.sort();
+            sink += set.size();
+            return count;
+        });
+
+        // random lookups
+        final RowSet set = rowSet(row, keys);
+        set.sort();
+        final byte[][] lookups = keys(count, 1);
+        for (int i = 0; i < count; i += 2) lookups[i] = keys[i]; // half of the keys exist
+        measure("RowSet.get", () -> {
+            for (int i = 0; i < count; i++) if (set.get(lookups[i], false) != null) sink++;
+            return count;
+        });
+
+        // joins of two containers with equal size (merge) and with very different size (lookup)
+        final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+        final byte[][] other = keys(count, 2);
+        for (int i = 0; i < count; i += 4) other[i] = keys[i];
+        final ReferenceContainer<WordReference> large = container(factory, keys, count);
+        final ReferenceContainer<WordReference> equal = container(factory, other, count);
+        final ReferenceContainer<WordReference> small = container(factory, other, Math.max(1, count / 1000));
+        measure("joinConstructive, equal size", () -> {
+            sink += ReferenceContainer.joinConstructive(factory, large, equal, Integer.MAX_VALUE).size();
+            return 2L * count;
+        });
+        measure("joinConstructive, small with large", () -> {
+            sink += ReferenceContainer.joinConstructive(factory, small, large, Integer.MAX_VALUE).size();
+            return small.size();
+        });
+        System.out.println("(" + sink + ")");
+    }
+
+}
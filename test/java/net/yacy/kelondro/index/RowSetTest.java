@@ -0,0 +1,105 @@
+// RowSetTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.kelondro.data.word.Word;
+
+/**
+ * Unit tests for the in-place key comparisons of rows and row sets
+ */
+public class RowSetTest {
+
+    private static final Row row = new Row("byte[] key-12, Cardinal value-4 {b256}", Base64Order.enhancedCoder);
+
+    /**
+     * the comparison of fixed length keys gives the same result as the general Base64 comparison
+     */
+    @Test
+    public void testCompareFixed() {
+        final Random r = new Random(0);
+        final Base64Order down = new Base64Order(false, false);
+        final byte[] a = new byte[20];
+        final byte[] b = new byte[20];
+        for (int n = 0; n < 100000; n++) {
+            final byte[] ka = Word.word2hash(Integer.toString(r.nextInt(1000)));
+            final byte[] kb = n % 3 == 0 ? ka.clone() : Word.word2hash(Integer.toString(r.nextInt(1000)));
+            if (n % 5 == 0) kb[11] = ka[11]; // a long common prefix
+            System.arraycopy(ka, 0, a, 3, 12);
+            System.arraycopy(kb, 0, b, 5, 12);
+            assertEquals(Base64Order.enhancedCoder.compare(ka, kb), Base64Order.enhancedCoder.compareFixed(a, 3, b, 5, 12));
+            assertEquals(down.compare(ka, kb), down.compareFixed(a, 3, b, 5, 12));
+        }
+        // not well-formed keys are ordered like in the general comparison
+        final byte[] bad = ASCII.getBytes("AAAAAAAAAAAA");
+        bad[4] = (byte) 0xc3;
+        final byte[] good = ASCII.getBytes("AAAAzzzzzzzz");
+        assertEquals(Base64Order.enhancedCoder.compare(bad, 0, good, 0, 12), Base64Order.enhancedCoder.compareFixed(bad, 0, good, 0, 12));
+        assertEquals(Base64Order.enhancedCoder.compare(good, 0, bad, 0, 12), Base64Order.enhancedCoder.compareFixed(good, 0, bad, 0, 12));
+    }
+
+    /**
+     * entries that reference a row inside a collection compare and hash like copied entries
+     */
+    @Test
+    public void testEntryInPlace() throws Exception {
+        final RowSet set = new RowSet(row);
+        for (int i = 0; i < 1000; i++) {
+            final Row.Entry e = row.newEntry();
+            e.setCol(0, Word.word2hash(Integer.toString(i)));
+            e.setCol(1, i);
+            set.put(e);
+        }
+        set.sort();
+        final Row.Entry view = row.newView();
+        final Row.Entry other = row.newView();
+        for (int i = 0; i < set.size(); i++) {
+            final Row.Entry copy = set.get(i, true);
+            assertSame(view, set.view(i, view));
+            assertEquals(copy, view);
+            assertEquals(copy.hashCode(), view.hashCode());
+            assertTrue(view.equalsKey(copy.getPrimaryKeyBytes()));
+            assertEquals(0, view.compareToKey(copy.getPrimaryKeyBytes(), 0));
+            if (i > 0) {
+                set.view(i - 1, other);
+                assertTrue(other.compareTo(view) < 0);
+                assertTrue(view.compareTo(other) > 0);
+                assertFalse(view.equals(other));
+            }
+            final Row.Entry found = set.get(copy.getPrimaryKeyBytes(), false);
+            assertNotNull(found);
+            assertArrayEquals(copy.bytes(), found.bytes());
+        }
+    }
+}
@@ -0,0 +1,239 @@
+// DocIdDictionaryTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.util.Bitfield;
+import net.yacy.kelondro.util.kelondroException;
+
+/**
+ * Unit tests for the document id dictionary and the compressed container format
+ */
+public class DocIdDictionaryTest {
+
+    private static final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        this.file = new File(this.tmp.getRoot(), "test.dictionary");
+    }
+
+    private DocIdDictionary open(final boolean encode) throws IOException {
+        return new DocIdDictionary(this.file, Word.commonHashLength, Word.commonHashOrder, encode);
+    }
+
+    private static WordReferenceVars reference(final int url, final int position) {
+        final Queue<Integer> positions = new LinkedBlockingQueue<Integer>();
+        positions.add(position);
+        return new WordReferenceVars(Word.word2hash("url" + url), 30, 3, 0, 1, 100, 10, position, positions, 1, 1, 0, "en",
+                Response.DT_TEXT, 0, 0, new Bitfield(4), 0.0d);
+    }
+
+    private static ReferenceContainer<WordReference> container(final String term, final int urls, final int step) throws Exception {
+        final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(factory, Word.word2hash(term), urls / step + 1);
+        for (int url = 0; url < urls; url += step) c.add(reference(url, url % 50 + 1));
+        return c;
+    }
+
+    private static TreeSet<String> urls(final ReferenceContainer<WordReference> c) {
+        final TreeSet<String> urls = new TreeSet<String>();
+        final Iterator<WordReference> i = c.entries();
+        while (i.hasNext()) urls.add(ASCII.String(i.next().urlhash()));
+        return urls;
+    }
+
+    /**
+     * ids are dense, stable and survive a re-open; an incomplete entry at the end of the file is removed
+     */
+    @Test
+    public void testPersistence() throws Exception {
+        DocIdDictionary dictionary = open(true);
+        for (int i = 0; i < 1000; i++) assertEquals(i, dictionary.id(Word.word2hash("url" + i)));
+        assertEquals(17, dictionary.id(Word.word2hash("url17")));
+        assertEquals(-1, dictionary.get(Word.word2hash("unknown")));
+        dictionary.close();
+
+        try (final FileOutputStream os = new FileOutputStream(this.file, true)) {
+            os.write(new byte[]{'a', 'b', 'c'}); // a hash that was not written completely
+        }
+        dictionary = open(false);
+        assertEquals(1000, dictionary.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, dictionary.get(Word.word2hash("url" + i)));
+            assertArrayEquals(Word.word2hash("url" + i), dictionary.hash(i));
+        }
+        try {
+            dictionary.id(Word.word2hash("unknown"));
+            fail("a read-only dictionary must not assign ids");
+        } catch (final IOException e) {
+            // expected
+        }
+        dictionary.close();
+        assertEquals(1000L * Word.commonHashLength, this.file.length());
+        assertTrue(open(false).damaged()); // the damaged end is remembered until the dictionary is closed after new ids
+        open(true).close();
+        assertFalse(open(false).damaged());
+    }
+
+    /**
+     * if the end of the dictionary was lost, containers in the index files that use the lost ids are removed when the files are opened
+     */
+    @Test
+    public void testLostIds() throws Exception {
+        final File dir = this.tmp.newFolder("index");
+        DocIdDictionary dictionary = open(true);
+        for (int url = 0; url < 20; url++) dictionary.id(Word.word2hash("url" + url));
+        final ReferenceContainer<WordReference> alpha = container("alpha", 10, 1);
+        final ReferenceContainer<WordReference> beta = new ReferenceContainer<WordReference>(factory, Word.word2hash("beta"), 10);
+        for (int url = 10; url < 20; url++) beta.add(reference(url, 1));
+        final byte[] exportedBeta = beta.exportCollection(dictionary);
+        ReferenceContainerArray<WordReference> array = new ReferenceContainerArray<WordReference>(dir, "test", factory, Base64Order.enhancedCoder, Word.commonHashLength, false, dictionary);
+        final ReferenceContainerCache<WordReference> cache = new ReferenceContainerCache<WordReference>(factory, Base64Order.enhancedCoder, Word.commonHashLength);
+        cache.add(alpha);
+        cache.add(beta);
+        final File f = array.newContainerBLOBFile();
+        cache.dump(f, 1024, true, dictionary);
+        array.mountBLOBFile(f);
+        array.close();
+        dictionary.close();
+
+        // the dictionary lost its last ids in a crash
+        try (final RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
+            raf.setLength(10L * Word.commonHashLength);
+        }
+        assertTrue(new File(this.file.getParentFile(), this.file.getName() + ".open").createNewFile());
+        dictionary = open(true);
+        assertTrue(dictionary.damaged());
+        assertEquals(10, dictionary.size());
+        try {
+            ReferenceContainer.importContainer(factory, beta.getTermHash(), exportedBeta, dictionary);
+            fail("a container with lost ids must not be imported");
+        } catch (final kelondroException e) {
+            // expected
+        }
+        array = new ReferenceContainerArray<WordReference>(dir, "test", factory, Base64Order.enhancedCoder, Word.commonHashLength, false, dictionary);
+        try {
+            assertNull(array.get(beta.getTermHash()));
+            assertEquals(urls(alpha), urls(array.get(alpha.getTermHash())));
+        } finally {
+            array.close();
+            dictionary.close();
+        }
+        assertFalse(open(false).damaged());
+    }
+
+    /**
+     * a compressed container is smaller than a plain container and is imported with the same rows in the same order
+     */
+    @Test
+    public void testExportImport() throws Exception {
+        final DocIdDictionary dictionary = open(true);
+        final ReferenceContainer<WordReference> c = container("alpha", 5000, 1);
+        final byte[] plain = c.exportCollection();
+        final byte[] compressed = c.exportCollection(dictionary);
+        assertFalse(ReferenceContainer.isCompressed(plain));
+        assertTrue(ReferenceContainer.isCompressed(compressed));
+        assertTrue(compressed.length < plain.length);
+        assertEquals(c.size(), ReferenceContainer.importCount(compressed, factory.getRow()));
+        assertEquals(c.size(), ReferenceContainer.importCount(plain, factory.getRow()));
+
+        final ReferenceContainer<WordReference> imported = ReferenceContainer.importContainer(factory, c.getTermHash(), compressed, dictionary);
+        assertEquals(c.size(), imported.size());
+        for (int p = 0; p < c.size(); p++) assertArrayEquals(c.get(p, false).bytes(), imported.get(p, false).bytes());
+        assertArrayEquals(plain, ReferenceContainer.importContainer(factory, c.getTermHash(), plain, null).exportCollection());
+
+        // a dictionary that does not encode exports plain containers
+        dictionary.close();
+        assertFalse(ReferenceContainer.isCompressed(c.exportCollection(open(false))));
+    }
+
+    /**
+     * the join of imported containers with their ids is equal to the join of the url hashes, also after a modification
+     */
+    @Test
+    public void testJoinConstructive() throws Exception {
+        final DocIdDictionary dictionary = open(true);
+        final ReferenceContainer<WordReference> a = container("alpha", 3000, 1);
+        final ReferenceContainer<WordReference> b = container("beta", 3000, 7);
+        final ReferenceContainer<WordReference> c = container("gamma", 3000, 5);
+        final TreeSet<String> expected = urls(ReferenceContainer.joinConstructive(factory, a, b, Integer.MAX_VALUE));
+        final TreeSet<String> expected3 = urls(ReferenceContainer.joinConstructive(factory, ReferenceContainer.joinConstructive(factory, a, b, Integer.MAX_VALUE), c, Integer.MAX_VALUE));
+        assertNotEquals(0, expected3.size());
+
+        final ReferenceContainer<WordReference> ia = ReferenceContainer.importContainer(factory, a.getTermHash(), a.exportCollection(dictionary), dictionary);
+        final ReferenceContainer<WordReference> ib = ReferenceContainer.importContainer(factory, b.getTermHash(), b.exportCollection(dictionary), dictionary);
+        final ReferenceContainer<WordReference> ic = ReferenceContainer.importContainer(factory, c.getTermHash(), c.exportCollection(dictionary), dictionary);
+        final ReferenceContainer<WordReference> ab = ReferenceContainer.joinConstructive(factory, ia, ib, Integer.MAX_VALUE);
+        assertEquals(expected, urls(ab));
+        assertEquals(expected, urls(ReferenceContainer.joinConstructive(factory, ib, ia, Integer.MAX_VALUE)));
+        assertEquals(expected3, urls(ReferenceContainer.joinConstructive(factory, ab, ic, Integer.MAX_VALUE)));
+
+        // the joined references are the same as with the url hash join
+        final ReferenceContainer<WordReference> plain = ReferenceContainer.joinConstructive(factory, a, b, Integer.MAX_VALUE);
+        plain.sort();
+        ab.sort();
+        for (int p = 0; p < plain.size(); p++) assertArrayEquals(plain.get(p, false).bytes(), ab.get(p, false).bytes());
+
+        // after a modification the ids are not used any more
+        ic.add(reference(1, 1));
+        ic.add(reference(7, 1));
+        final TreeSet<String> modified = new TreeSet<String>(expected3);
+        modified.add(ASCII.String(Word.word2hash("url7")));
+        assertEquals(modified, urls(ReferenceContainer.joinConstructive(factory, ab, ic, Integer.MAX_VALUE)));
+        assertEquals(3000, dictionary.size());
+        dictionary.close();
+    }
+
+}
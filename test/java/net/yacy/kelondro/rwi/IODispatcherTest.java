@@ -0,0 +1,189 @@
+// IODispatcherTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+
+/**
+ * Unit tests for the merging of reference container files
+ */
+public class IODispatcherTest {
+
+    private static final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dir;
+    private ReferenceContainerArray<WordReference> array;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dir = this.tmp.getRoot();
+        this.array = new ReferenceContainerArray<WordReference>(this.dir, "test", factory, Base64Order.enhancedCoder, Word.commonHashLength);
+    }
+
+    @After
+    public void tearDown() {
+        this.array.close();
+    }
+
+    private static WordReference reference(final int i) {
+        final byte[] urlHash = ASCII.getBytes(String.format("url%09d", i));
+        return new WordReferenceRow(urlHash, 20, 2, 1, 100, 10, 0, 0, ASCII.getBytes("en"), 't', 0, 0);
+    }
+
+    /**
+     * write a file with the given terms and one reference per term for each given url number
+     */
+    private void dumpFile(final String[] terms, final int... urls) throws Exception {
+        final ReferenceContainerCache<WordReference> cache = new ReferenceContainerCache<WordReference>(factory, Base64Order.enhancedCoder, Word.commonHashLength);
+        for (final String term: terms) {
+            for (final int url: urls) cache.add(Word.word2hash(term), reference(url));
+        }
+        final File f = this.array.newContainerBLOBFile();
+        cache.dump(f, 1024, true);
+        this.array.mountBLOBFile(f);
+        Thread.sleep(2); // the file names are made from the time
+    }
+
+    /**
+     * a k-way merge joins all small files into one file which holds the union of the references
+     */
+    @Test
+    public void testKWayMerge() throws Exception {
+        dumpFile(new String[]{"alpha", "beta"}, 1, 2);
+        dumpFile(new String[]{"alpha", "gamma"}, 3);
+        dumpFile(new String[]{"alpha", "beta", "delta"}, 4, 5);
+        dumpFile(new String[]{"epsilon"}, 6);
+        assertEquals(4, this.array.entries());
+
+        final IODispatcher merger = new IODispatcher(2, 2, 1024); // not started: merges are executed immediately
+        merger.setMergeWidth(4);
+        assertTrue(this.array.shrinkAnySmallFiles(merger, Long.MAX_VALUE));
+        assertEquals(1, this.array.entries());
+        assertEquals(1, merger.mergeCount());
+
+        assertEquals(5, this.array.count(Word.word2hash("alpha")));
+        assertEquals(4, this.array.count(Word.word2hash("beta")));
+        assertEquals(1, this.array.count(Word.word2hash("gamma")));
+        assertEquals(2, this.array.count(Word.word2hash("delta")));
+        assertEquals(1, this.array.count(Word.word2hash("epsilon")));
+        final ReferenceContainer<WordReference> c = this.array.get(Word.word2hash("beta"));
+        assertNotNull(c);
+        assertNotNull(c.getReference(reference(5).urlhash()));
+        assertNull(c.getReference(reference(3).urlhash()));
+    }
+
+    /**
+     * the merge width limits the number of files in one merge job
+     */
+    @Test
+    public void testMergeWidth() throws Exception {
+        for (int i = 0; i < 5; i++) dumpFile(new String[]{"alpha"}, i);
+        final IODispatcher merger = new IODispatcher(2, 2, 1024);
+        merger.setMergeWidth(3);
+        assertTrue(this.array.shrinkAnySmallFiles(merger, Long.MAX_VALUE));
+        assertEquals(3, this.array.entries());
+        assertEquals(3, merger.mergeHistory().get(0).files);
+        assertEquals(5, this.array.count(Word.word2hash("alpha")));
+    }
+
+    /**
+     * merges that are queued at a running dispatcher are executed by the merge threads within the I/O budget
+     */
+    @Test
+    public void testQueuedMerge() throws Exception {
+        for (int i = 0; i < 4; i++) dumpFile(new String[]{"alpha", "beta"}, i);
+        final IODispatcher merger = new IODispatcher(2, 2, 1024);
+        merger.setMaxParallelMerges(2);
+        merger.setMergeWidth(2);
+        merger.setMaxBytesPerSecond(1024 * 1024);
+        merger.start();
+        try {
+            assertTrue(this.array.shrinkAnySmallFiles(merger, Long.MAX_VALUE));
+            assertTrue(this.array.shrinkAnySmallFiles(merger, Long.MAX_VALUE));
+            final long timeout = System.currentTimeMillis() + 10000;
+            while (merger.mergeCount() < 2 && System.currentTimeMillis() < timeout) Thread.sleep(10);
+        } finally {
+            merger.terminate();
+        }
+        assertEquals(2, merger.mergeCount());
+        assertEquals(0, merger.runningMerges());
+        assertTrue(merger.mergeBytes() > 0);
+        assertEquals(2, this.array.entries());
+        assertEquals(4, this.array.count(Word.word2hash("alpha")));
+        assertEquals(4, this.array.count(Word.word2hash("beta")));
+    }
+
+    /**
+     * a merge stores the block bounds of large containers; the bounds of other parts are computed when they are read
+     */
+    @Test
+    public void testBlockBounds() throws Exception {
+        final int[] first = new int[300];
+        final int[] second = new int[300];
+        for (int i = 0; i < 300; i++) {
+            first[i] = 2 * i;
+            second[i] = 2 * i + 1;
+        }
+        dumpFile(new String[]{"alpha", "beta"}, first);
+        dumpFile(new String[]{"alpha"}, second);
+        final IODispatcher merger = new IODispatcher(2, 2, 1024);
+        merger.setMergeWidth(2);
+        assertTrue(this.array.shrinkAnySmallFiles(merger, Long.MAX_VALUE));
+        assertEquals(1, this.array.entries());
+        final String[] blocksFiles = this.dir.list((d, name) -> name.endsWith(".blob.blocks"));
+        assertEquals(1, blocksFiles.length);
+
+        dumpFile(new String[]{"alpha"}, 1000, 1001, 1002);
+        final ReferenceBlocks<WordReference> blocks = new ReferenceBlocks<WordReference>(factory);
+        final ReferenceContainer<WordReference> c = this.array.get(Word.word2hash("alpha"), blocks);
+        assertEquals(603, c.size());
+        assertTrue(blocks.isComplete());
+        assertEquals((600 + ReferenceBlocks.BLOCKSIZE - 1) / ReferenceBlocks.BLOCKSIZE + 1, blocks.size()); // stored bounds and the bound of the new file
+
+        // the container of beta is too small for stored bounds, its bounds are computed
+        final ReferenceBlocks<WordReference> betaBlocks = new ReferenceBlocks<WordReference>(factory);
+        assertEquals(300, this.array.get(Word.word2hash("beta"), betaBlocks).size());
+        assertTrue(betaBlocks.isComplete());
+        assertEquals((300 + ReferenceBlocks.BLOCKSIZE - 1) / ReferenceBlocks.BLOCKSIZE, betaBlocks.size());
+    }
+}
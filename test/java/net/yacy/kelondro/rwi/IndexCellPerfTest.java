@@ -0,0 +1,198 @@
+// IndexCellPerfTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.jwat.common.HeaderLine;
+import org.jwat.warc.WarcConstants;
+import org.jwat.warc.WarcReader;
+import org.jwat.warc.WarcReaderFactory;
+import org.jwat.warc.WarcRecord;
+
+import net.yacy.cora.util.ByteBuffer;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.server.http.ChunkedInputStream;
+
+/**
+ * Indexing throughput of the RAM buffer of an IndexCell: the words of a corpus of documents are added
+ * by several threads, like the storeDocumentIndex step of the indexer does, with one stripe and with
+ * the given number of stripes. The corpus is read from a local WARC file (the text of all html and
+ * plain text responses, split into words without the parsers) or, without a file, generated with
+ * Zipf-distributed words. Reading and hashing the corpus is not measured.
+ * java -Xmx4g net.yacy.kelondro.rwi.IndexCellPerfTest [warc file or -] [threads] [stripes] [documents]
+ */
+public class IndexCellPerfTest {
+
+    private static final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+    private static final Pattern TAGS = Pattern.compile("<[^>]*>");
+    private static final Pattern NONWORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * a document of the corpus: its url hash and the hashes of its distinct words
+     */
+    private static final class Doc {
+        private final byte[] urlhash;
+        private final byte[][] words;
+        private Doc(final byte[] urlhash, final byte[][] words) {
+            this.urlhash = urlhash;
+            this.words = words;
+        }
+    }
+
+    private static Doc doc(final int number, final Set<String> words) {
+        final byte[][] hashes = new byte[words.size()][];
+        int i = 0;
+        for (final String w: words) hashes[i++] = Word.word2hash(w);
+        return new Doc(Word.word2hash("document" + number), hashes);
+    }
+
+    private static List<Doc> readWarc(final File f, final int max) throws IOException {
+        final List<Doc> corpus = new ArrayList<Doc>();
+        InputStream is = new BufferedInputStream(new FileInputStream(f));
+        if (f.getName().endsWith(".gz")) is = new GZIPInputStream(is);
+        final WarcReader reader = WarcReaderFactory.getReader(is);
+        try {
+            WarcRecord record;
+            while ((record = reader.getNextRecord()) != null && corpus.size() < max) {
+                final HeaderLine type = record.getHeader(WarcConstants.FN_WARC_TYPE);
+                if (type == null || !WarcConstants.RT_RESPONSE.equals(type.value)) continue;
+                final org.jwat.common.HttpHeader http = record.getHttpHeader();
+                if (http == null || http.statusCode != 200 || http.contentType == null) continue;
+                if (!http.contentType.startsWith("text/html") && !http.contentType.startsWith("text/plain")) continue;
+                InputStream content = record.getPayloadContent();
+                final HeaderLine te = http.getHeader("Transfer-Encoding");
+                if (te != null && te.value.contains("chunked")) content = new ChunkedInputStream(content);
+                final ByteBuffer b = new ByteBuffer();
+                int c;
+                while ((c = content.read()) >= 0) b.append(c);
+                final String text = TAGS.matcher(new String(b.getBytes(), StandardCharsets.UTF_8)).replaceAll(" ");
+                b.close();
+                final Set<String> words = new LinkedHashSet<String>();
+                for (final String w: NONWORD.split(text.toLowerCase(Locale.ROOT))) if (w.length() > 1) words.add(w);
+                if (!words.isEmpty()) corpus.add(doc(corpus.size(), words));
+            }
+        } finally {
+            reader.close();
+        }
+        return corpus;
+    }
+
+    private static List<Doc> generate(final int documents) {
+        final int vocabulary = 200000;
+        final double[] cdf = new double[vocabulary];
+        for (int t = 0; t < vocabulary; t++) cdf[t] = (t == 0 ? 0 : cdf[t - 1]) + 1.0d / (t + 1);
+        final Random r = new Random(0);
+        final List<Doc> corpus = new ArrayList<Doc>(documents);
+        for (int d = 0; d < documents; d++) {
+            final Set<String> words = new LinkedHashSet<String>();
+            final int length = 100 + r.nextInt(400);
+            for (int i = 0; i < length; i++) {
+                final int p = Arrays.binarySearch(cdf, r.nextDouble() * cdf[vocabulary - 1]);
+                words.add("word" + Math.min(vocabulary - 1, p < 0 ? -p - 1 : p));
+            }
+            corpus.add(doc(d, words));
+        }
+        return corpus;
+    }
+
+    /**
+     * add all documents of the corpus with the given number of threads
+     * @return the time in nanoseconds
+     */
+    private static long index(final List<Doc> corpus, final int threads, final int stripes, final File path) throws Exception {
+        final IODispatcher merger = new IODispatcher(1, 1, 1024 * 1024);
+        final IndexCell<WordReference> cell = new IndexCell<WordReference>(path, "perf", factory, Word.commonHashOrder, Word.commonHashLength,
+                Integer.MAX_VALUE, 1024L * 1024L * 1024L, 1024L * 1024L * 1024L, 1024 * 1024, merger, false, null, stripes);
+        final AtomicInteger next = new AtomicInteger(0);
+        final Thread[] workers = new Thread[threads];
+        final long start = System.nanoTime();
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new Thread() {
+                @Override
+                public void run() {
+                    int d;
+                    while ((d = next.getAndIncrement()) < corpus.size()) {
+                        final Doc doc = corpus.get(d);
+                        final WordReferenceRow entry = new WordReferenceRow(doc.urlhash, 40, 4, 5, doc.words.length * 3, doc.words.length / 10 + 1,
+                                System.currentTimeMillis(), System.currentTimeMillis(), new byte[]{'e', 'n'}, Response.DT_TEXT, 3, 7);
+                        for (final byte[] word: doc.words) try {
+                            cell.add(word, entry);
+                        } catch (final Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+            };
+            workers[w].start();
+        }
+        for (final Thread t: workers) t.join();
+        final long time = System.nanoTime() - start;
+        cell.close();
+        return time;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final String source = args.length > 0 ? args[0] : "-";
+        final int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        final int stripes = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        final int documents = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+        final List<Doc> corpus = "-".equals(source) ? generate(documents) : readWarc(new File(source), documents);
+        long references = 0;
+        for (final Doc doc: corpus) references += doc.words.length;
+        System.out.println("indexing " + corpus.size() + " documents with " + references + " references from " + ("-".equals(source) ? "a generated corpus" : source));
+
+        final File path = new File(System.getProperty("java.io.tmpdir"), "IndexCellPerfTest");
+        for (final int[] run: new int[][]{{1, 1}, {threads, 1}, {threads, stripes}}) {
+            for (int round = 0; round < 2; round++) { // the first round is the warm-up
+                FileUtils.deletedelete(path);
+                path.mkdirs();
+                final long nanos = index(corpus, run[0], run[1], path);
+                if (round == 0) continue;
+                System.out.println(String.format("%3d threads %3d stripes: %10.0f docs/sec %12.0f references/sec",
+                        run[0], run[1], corpus.size() * 1e9d / nanos, references * 1e9d / nanos));
+            }
+        }
+        FileUtils.deletedelete(path);
+    }
+
+}
@@ -0,0 +1,226 @@
+// ReferenceBlocksTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Test;
+
+import net.yacy.cora.document.analysis.Classification;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.util.Bitfield;
+import net.yacy.search.ranking.RankingProfile;
+import net.yacy.search.ranking.ReferenceOrder;
+
+/**
+ * Unit tests for the block bounds of reference containers and the top-k join
+ */
+public class ReferenceBlocksTest {
+
+    private static final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+    private static final ReferenceOrder order = new ReferenceOrder(new RankingProfile(Classification.ContentDomain.TEXT), "en");
+
+    /**
+     * a reference with random rank features
+     */
+    private static WordReferenceVars reference(final int url, final Random r) {
+        final Queue<Integer> positions = new LinkedBlockingQueue<Integer>();
+        positions.add(1);
+        final Bitfield flags = new Bitfield(4);
+        for (int i = 0; i < 32; i++) if (r.nextInt(8) == 0) flags.set(i, true);
+        return new WordReferenceVars(Word.word2hash("url" + url), 20 + r.nextInt(100), 1 + r.nextInt(8), r.nextInt(20), 1 + r.nextInt(30),
+                50 + r.nextInt(3000), 1 + r.nextInt(200), 1 + r.nextInt(2000), positions, r.nextInt(20), r.nextInt(100),
+                System.currentTimeMillis() - r.nextInt(1000) * 86400000L, r.nextBoolean() ? "en" : "de", Response.DT_TEXT,
+                r.nextInt(50), r.nextInt(50), flags, 0.0d);
+    }
+
+    /**
+     * a container with a reference for every url number that is a multiple of step
+     */
+    private static ReferenceContainer<WordReference> container(final String term, final int urls, final int step, final Random r) throws Exception {
+        final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(factory, Word.word2hash(term), urls / step);
+        for (int url = 0; url < urls; url += step) c.add(reference(url, r));
+        c.sort();
+        return c;
+    }
+
+    /**
+     * the bounds of a container cut into several parts, like a container that is read from several files
+     */
+    private static ReferenceBlocks<WordReference> blocks(final ReferenceContainer<WordReference> c, final int parts) throws Exception {
+        final ReferenceBlocks<WordReference> blocks = new ReferenceBlocks<WordReference>(factory);
+        final List<ReferenceContainer<WordReference>> p = new ArrayList<ReferenceContainer<WordReference>>();
+        for (int i = 0; i < parts; i++) p.add(new ReferenceContainer<WordReference>(factory, c.getTermHash(), c.size() / parts + 1));
+        for (int i = 0; i < c.size(); i++) p.get(i % parts).add(factory.produceSlow(c.get(i, true)));
+        for (final ReferenceContainer<WordReference> part: p) blocks.addContainer(part);
+        blocks.score(order);
+        return blocks;
+    }
+
+    /**
+     * the scores of the best k urls of a conjunction, computed with a full join
+     */
+    private static List<Long> best(final List<ReferenceContainer<WordReference>> containers, final ReferenceContainer<WordReference> exclude, final int k) {
+        final List<Long> scores = new ArrayList<Long>();
+        final Iterator<WordReference> i = containers.get(0).entries();
+        urls: while (i.hasNext()) {
+            final byte[] urlhash = i.next().urlhash();
+            if (exclude != null && exclude.has(urlhash)) continue;
+            long s = 0;
+            for (final ReferenceContainer<WordReference> c: containers) {
+                final WordReference r = c.getReference(urlhash);
+                if (r == null) continue urls;
+                s += order.score(r);
+            }
+            scores.add(s);
+        }
+        Collections.sort(scores, Collections.reverseOrder());
+        return scores.subList(0, Math.min(k, scores.size()));
+    }
+
+    /**
+     * the scores of the result of a top-k join
+     */
+    private static List<Long> scores(final ReferenceContainer<WordReference> joined, final List<ReferenceContainer<WordReference>> containers) {
+        final List<Long> scores = new ArrayList<Long>();
+        final Iterator<WordReference> i = joined.entries();
+        while (i.hasNext()) {
+            final byte[] urlhash = i.next().urlhash();
+            long s = 0;
+            for (final ReferenceContainer<WordReference> c: containers) s += order.score(c.getReference(urlhash));
+            scores.add(s);
+        }
+        Collections.sort(scores, Collections.reverseOrder());
+        return scores;
+    }
+
+    /**
+     * the bound of a block is not less than the score of any reference in the block, for all positions of the references
+     */
+    @Test
+    public void testBound() throws Exception {
+        final Random r = new Random(0);
+        final ReferenceContainer<WordReference> c = container("alpha", 5000, 3, r);
+        final ReferenceBlocks<WordReference> blocks = blocks(c, 3);
+        assertTrue(blocks.isComplete());
+        final Iterator<WordReference> i = c.entries();
+        WordReference ref;
+        while (i.hasNext()) {
+            ref = i.next();
+            assertTrue(order.score(ref) <= blocks.bound(ref.urlhash(), 0));
+        }
+        // an interval bound is at least the bound of each url inside the interval
+        final byte[] first = c.get(10, true).getPrimaryKeyBytes();
+        final byte[] last = c.get(700, true).getPrimaryKeyBytes();
+        final long interval = blocks.bound(first, 0, last, 0);
+        for (int p = 10; p <= 700; p++) assertTrue(blocks.bound(c.get(p, true).getPrimaryKeyBytes(), 0) <= interval);
+
+        // the bound reference itself has the best features of the block
+        final WordReferenceRow bound = WordReferenceRow.bound(c, 0, ReferenceBlocks.BLOCKSIZE);
+        assertTrue(Arrays.equals(c.get(ReferenceBlocks.BLOCKSIZE - 1, true).getPrimaryKeyBytes(), bound.urlhash()));
+        for (int p = 0; p < ReferenceBlocks.BLOCKSIZE; p++) {
+            ref = factory.produceSlow(c.get(p, true));
+            assertTrue(ref.hitcount() <= bound.hitcount());
+            assertTrue(ref.posintext() >= bound.posintext());
+            assertTrue((int) (ref.termFrequency() * 255.0d) <= bound.termFrequencyBound());
+        }
+
+        // a container is summarized with one bound for each started block
+        assertEquals((c.size() + ReferenceBlocks.BLOCKSIZE - 1) / ReferenceBlocks.BLOCKSIZE, ReferenceBlocks.summarize(factory, c).size());
+    }
+
+    /**
+     * the top-k join with and without block bounds selects the urls with the best scores of a full join
+     */
+    @Test
+    public void testJoinTopK() throws Exception {
+        final Random r = new Random(1);
+        final ReferenceContainer<WordReference> a = container("alpha", 20000, 1, r);
+        final ReferenceContainer<WordReference> b = container("beta", 20000, 3, r);
+        final ReferenceContainer<WordReference> c = container("gamma", 20000, 5, r);
+        final ReferenceContainer<WordReference> exclude = container("delta", 20000, 7, r);
+        final List<ReferenceContainer<WordReference>> containers = Arrays.asList(a, b, c);
+        final List<ReferenceBlocks<WordReference>> blocks = Arrays.asList(blocks(a, 1), blocks(b, 2), blocks(c, 3));
+        for (final int k: new int[]{1, 10, 100, 5000}) {
+            final List<Long> expected = best(containers, exclude, k);
+            final ReferenceContainer<WordReference> bounded = ReferenceContainer.joinTopK(factory, containers, blocks, Collections.singletonList(exclude), order, k, Integer.MAX_VALUE);
+            assertEquals(expected, scores(bounded, containers));
+            final ReferenceContainer<WordReference> unbounded = ReferenceContainer.joinTopK(factory, containers, null, Collections.singletonList(exclude), order, k, Integer.MAX_VALUE);
+            assertEquals(expected, scores(unbounded, containers));
+            final Iterator<WordReference> i = bounded.entries();
+            while (i.hasNext()) assertFalse(exclude.has(i.next().urlhash()));
+        }
+
+        // a single term and a term without references
+        assertEquals(best(Collections.singletonList(b), null, 20), scores(ReferenceContainer.joinTopK(factory, Collections.singletonList(b), Collections.singletonList(blocks.get(1)), null, order, 20, Integer.MAX_VALUE), Collections.singletonList(b)));
+        final ReferenceContainer<WordReference> empty = new ReferenceContainer<WordReference>(factory, Word.word2hash("empty"));
+        assertTrue(ReferenceContainer.joinTopK(factory, Arrays.asList(a, empty), null, null, order, 20, Integer.MAX_VALUE).isEmpty());
+    }
+
+    /**
+     * urls with too distant references do not take the places of other urls in the top-k
+     */
+    @Test
+    public void testJoinTopKDistance() throws Exception {
+        final Random r = new Random(2);
+        final ReferenceContainer<WordReference> a = container("alpha", 20000, 1, r);
+        final ReferenceContainer<WordReference> b = container("beta", 20000, 3, r);
+        final List<ReferenceContainer<WordReference>> containers = Arrays.asList(a, b);
+        final List<ReferenceBlocks<WordReference>> blocks = Arrays.asList(blocks(a, 1), blocks(b, 2));
+        final int maxDistance = 100;
+
+        // the scores of all urls with near references
+        final List<Long> near = new ArrayList<Long>();
+        final Iterator<WordReference> i = b.entries();
+        while (i.hasNext()) {
+            final WordReference rb = i.next();
+            final WordReference ra = a.getReference(rb.urlhash());
+            final WordReference joined = factory.produceFast(rb, true);
+            joined.join(ra);
+            if (joined.distance() <= maxDistance) near.add(order.score(ra) + order.score(rb));
+        }
+        Collections.sort(near, Collections.reverseOrder());
+        assertTrue(near.size() > 100 && near.size() < b.size() / 2);
+
+        for (final int k: new int[]{1, 10, 100, near.size() + 10}) {
+            final List<Long> expected = near.subList(0, Math.min(k, near.size()));
+            assertEquals(expected, scores(ReferenceContainer.joinTopK(factory, containers, blocks, null, order, k, maxDistance), containers));
+            assertEquals(expected, scores(ReferenceContainer.joinTopK(factory, containers, null, null, order, k, maxDistance), containers));
+        }
+    }
+}
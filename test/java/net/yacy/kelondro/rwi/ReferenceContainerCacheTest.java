@@ -0,0 +1,137 @@
+// ReferenceContainerCacheTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Test;
+
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.util.Bitfield;
+
+/**
+ * Unit tests for the striped RAM cache of references
+ */
+public class ReferenceContainerCacheTest {
+
+    private static final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+
+    private static WordReferenceVars reference(final String url) {
+        final Queue<Integer> positions = new LinkedBlockingQueue<Integer>();
+        positions.add(1);
+        return new WordReferenceVars(Word.word2hash(url), 30, 3, 0, 1, 100, 10, 1, positions, 1, 1, 0, "en",
+                Response.DT_TEXT, 0, 0, new Bitfield(4), 0.0d);
+    }
+
+    private static long references(final ReferenceContainerCache<WordReference> cache) {
+        long count = 0;
+        final Iterator<ReferenceContainer<WordReference>> i = cache.iterator();
+        while (i.hasNext()) count += i.next().size();
+        return count;
+    }
+
+    /**
+     * terms are distributed over the stripes and all operations find them in their stripe
+     */
+    @Test
+    public void testStripes() throws Exception {
+        final ReferenceContainerCache<WordReference> cache = new ReferenceContainerCache<WordReference>(factory, Word.commonHashOrder, Word.commonHashLength, 12);
+        assertEquals(16, cache.stripes());
+        for (int t = 0; t < 1000; t++) cache.add(Word.word2hash("term" + t), reference("url" + t));
+        for (int t = 0; t < 1000; t++) cache.add(Word.word2hash("term" + t), reference("url" + (t + 1)));
+        assertEquals(1000, cache.size());
+        assertEquals(2000, references(cache));
+        assertEquals(2, cache.maxReferences());
+        for (int t = 0; t < 1000; t++) {
+            assertTrue(cache.has(Word.word2hash("term" + t)));
+            assertEquals(2, cache.count(Word.word2hash("term" + t)));
+        }
+
+        // the iteration is ordered by the term hashes over all stripes
+        byte[] last = null;
+        for (final ReferenceContainer<WordReference> c: cache) {
+            if (last != null) assertTrue(Word.commonHashOrder.compare(last, c.getTermHash()) < 0);
+            last = c.getTermHash();
+        }
+
+        assertTrue(cache.remove(Word.word2hash("term7"), Word.word2hash("url7")));
+        assertTrue(cache.remove(Word.word2hash("term7"), Word.word2hash("url8")));
+        assertFalse(cache.has(Word.word2hash("term7"))); // an empty container is removed
+        assertEquals(2, cache.remove(Word.word2hash("term8")).size());
+        cache.delete(Word.word2hash("term9"));
+        assertNull(cache.get(Word.word2hash("term9"), null));
+        assertEquals(997, cache.size());
+        cache.clear();
+        assertTrue(cache.isEmpty());
+    }
+
+    /**
+     * no reference is lost if the cache is drained while several threads add references
+     */
+    @Test
+    public void testConcurrentDrain() throws Exception {
+        final ReferenceContainerCache<WordReference> cache = new ReferenceContainerCache<WordReference>(factory, Word.commonHashOrder, Word.commonHashLength, 8);
+        final int threads = 6;
+        final int adds = 5000;
+        final List<Thread> writers = new ArrayList<Thread>();
+        for (int w = 0; w < threads; w++) {
+            final int writer = w;
+            final Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < adds; i++) cache.add(Word.word2hash("term" + (i % 300)), reference("url" + writer + "-" + i));
+                    } catch (final Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            writers.add(t);
+            t.start();
+        }
+        long drained = 0;
+        boolean running = true;
+        while (running) {
+            drained += references(cache.drain());
+            running = false;
+            for (final Thread t: writers) if (t.isAlive()) running = true;
+        }
+        for (final Thread t: writers) t.join();
+        drained += references(cache.drain());
+        assertEquals(threads * adds, drained);
+        assertTrue(cache.isEmpty());
+    }
+
+}
@@ -23,11 +23,17 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
+import java.util.TreeSet;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.junit.Test;
 
+import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.document.id.MultiProtocolURL;
 import net.yacy.crawler.retrieval.Response;
@@ -35,6 +41,7 @@ import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.data.word.WordReferenceFactory;
 import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.rwi.ReferenceContainer.JoinMethod;
 import net.yacy.kelondro.util.Bitfield;
 
 /**
@@ -99,4 +106,111 @@ public class ReferenceContainerTest {
         assertEquals("distance()", wentry.distance(), wc.distance());
     }
 
+    private static WordReferenceVars reference(final byte[] urlhash, final int position) {
+        final Queue<Integer> positions = new LinkedBlockingQueue<Integer>();
+        positions.add(position);
+        return new WordReferenceVars(urlhash, 30, 3, 0, 1, 100, 10, position, positions, 1, 1, 0, "en",
+                Response.DT_TEXT, 0, 0, new Bitfield(4), 0.0d);
+    }
+
+    /**
+     * a join contains exactly the urls that are in both containers, with both join methods
+     */
+    @Test
+    public void testJoinConstructive() throws Exception {
+        final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+        for (final int smallSize: new int[]{10, 900}) {
+            final ReferenceContainer<WordReference> a = new ReferenceContainer<WordReference>(factory, Word.word2hash("a"));
+            final ReferenceContainer<WordReference> b = new ReferenceContainer<WordReference>(factory, Word.word2hash("b"));
+            final TreeSet<String> expected = new TreeSet<String>();
+            for (int i = 0; i < 1000; i++) a.add(reference(Word.word2hash("url" + i), 1));
+            for (int i = 0; i < smallSize; i++) {
+                final int u = i * 3;
+                b.add(reference(Word.word2hash("url" + u), 2));
+                if (u < 1000) expected.add(ASCII.String(Word.word2hash("url" + u)));
+            }
+            final List<ReferenceContainer<WordReference>> conjs = Arrays.asList(
+                    ReferenceContainer.joinConstructive(factory, a, b, Integer.MAX_VALUE),
+                    ReferenceContainer.joinConstructive(factory, b, a, Integer.MAX_VALUE));
+            for (final ReferenceContainer<WordReference> conj: conjs) {
+                final TreeSet<String> found = new TreeSet<String>();
+                final Iterator<WordReference> i = conj.entries();
+                while (i.hasNext()) found.add(ASCII.String(i.next().urlhash()));
+                assertEquals(expected, found);
+            }
+        }
+    }
+
+    /**
+     * a container with a reference for every url number that is a multiple of step
+     * @param sorted if false, the references are added in reverse order and the container is not sorted
+     */
+    private static ReferenceContainer<WordReference> container(final String term, final int urls, final int step, final boolean sorted) throws Exception {
+        final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(new WordReferenceFactory(), Word.word2hash(term), urls / step + 1);
+        for (int u = (urls - 1) / step * step; u >= 0; u -= step) c.add(reference(Word.word2hash("url" + u), 1));
+        if (sorted) c.sort();
+        return c;
+    }
+
+    private static TreeSet<String> urls(final ReferenceContainer<WordReference> c) {
+        final TreeSet<String> urls = new TreeSet<String>();
+        if (c == null) return urls;
+        final Iterator<WordReference> i = c.entries();
+        while (i.hasNext()) urls.add(ASCII.String(i.next().urlhash()));
+        return urls;
+    }
+
+    /**
+     * all join methods compute the same join and exclusion, for sorted and unsorted containers of different size ratios
+     */
+    @Test
+    public void testJoinMethods() throws Exception {
+        final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+        for (final int step: new int[]{1, 3, 50, 2000}) {
+            for (final boolean sorted: new boolean[]{true, false}) {
+                final TreeSet<String> all = urls(container("a", 4000, 1, true));
+                final TreeSet<String> expected = urls(container("b", 4000, step, true));
+                expected.retainAll(all);
+                for (final JoinMethod method: JoinMethod.values()) {
+                    final ReferenceContainer<WordReference> a = container("a", 4000, 1, sorted);
+                    final ReferenceContainer<WordReference> b = container("b", 6000, step, sorted);
+                    assertEquals(method + " " + step, expected, urls(ReferenceContainer.joinConstructive(factory, a, b, Integer.MAX_VALUE, method)));
+                    assertEquals(method + " " + step, expected, urls(ReferenceContainer.joinConstructive(factory, b, a, Integer.MAX_VALUE, method)));
+
+                    // exclusion from the large and from the small container
+                    final TreeSet<String> rest = new TreeSet<String>(all);
+                    rest.removeAll(expected);
+                    assertEquals(method + " " + step, rest, urls(ReferenceContainer.excludeDestructive(factory, container("a", 4000, 1, sorted), b, method)));
+                    final TreeSet<String> restb = urls(container("b", 6000, step, true));
+                    restb.removeAll(all);
+                    final ReferenceContainer<WordReference> excluded = ReferenceContainer.excludeDestructive(factory, container("b", 6000, step, sorted), a, method);
+                    assertEquals(method + " " + step, restb, urls(excluded));
+                    if (excluded != null && excluded.isSorted()) {
+                        for (int p = 1; p < excluded.size(); p++) assertTrue(Word.commonHashOrder.compare(excluded.get(p - 1, false).getPrimaryKeyBytes(), excluded.get(p, false).getPrimaryKeyBytes()) < 0);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * the chosen join method depends on the size ratio, and a conjunction without common urls is empty
+     */
+    @Test
+    public void testJoinMethodChoice() throws Exception {
+        assertEquals(JoinMethod.ENUMERATION, ReferenceContainer.joinMethod(10000, true, 10000, true));
+        assertEquals(JoinMethod.GALLOP, ReferenceContainer.joinMethod(10000, true, 1000000, true));
+        assertEquals(JoinMethod.HASH, ReferenceContainer.joinMethod(100, true, 1000000, false));
+        assertEquals(JoinMethod.TEST, ReferenceContainer.joinMethod(1, false, 1000000, true));
+
+        final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+        final ReferenceContainer<WordReference> a = container("a", 1000, 2, true);
+        final ReferenceContainer<WordReference> b = new ReferenceContainer<WordReference>(factory, Word.word2hash("b"));
+        for (int u = 1; u < 1000; u += 2) b.add(reference(Word.word2hash("url" + u), 1));
+        final ReferenceContainer<WordReference> c = container("c", 1000, 1, true);
+        assertEquals(null, ReferenceContainer.joinContainers(factory, Arrays.asList(c, a, b), Integer.MAX_VALUE));
+        assertEquals(urls(container("a", 1000, 6, true)), urls(ReferenceContainer.joinContainers(factory, Arrays.asList(c, a, container("d", 1000, 3, false)), Integer.MAX_VALUE)));
+        assertTrue(ReferenceContainer.joinExcludeContainers(factory, Arrays.asList(c, a), Collections.singletonList(c), Integer.MAX_VALUE).isEmpty());
+    }
+
 }
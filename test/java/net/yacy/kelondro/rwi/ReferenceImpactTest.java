@@ -0,0 +1,220 @@
+// ReferenceImpactTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.document.analysis.Classification;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.util.Bitfield;
+import net.yacy.search.ranking.RankingProfile;
+import net.yacy.search.ranking.ReferenceOrder;
+
+/**
+ * Unit tests for the impact lists of large reference containers
+ */
+public class ReferenceImpactTest {
+
+    private static final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+    private static final ReferenceOrder order = new ReferenceOrder(new RankingProfile(Classification.ContentDomain.TEXT), "en");
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * a reference with random rank features; good references have all flags set, the others have none
+     */
+    private static WordReferenceVars reference(final int url, final boolean good, final Random r) {
+        final Queue<Integer> positions = new LinkedBlockingQueue<Integer>();
+        positions.add(1);
+        final Bitfield flags = new Bitfield(4);
+        if (good) for (int i = 0; i < 32; i++) flags.set(i, true);
+        return new WordReferenceVars(Word.word2hash("url" + url), 20 + r.nextInt(100), 1 + r.nextInt(8), r.nextInt(20), 1 + r.nextInt(30),
+                50 + r.nextInt(3000), 1 + r.nextInt(200), 1 + r.nextInt(2000), positions, r.nextInt(20), r.nextInt(100),
+                System.currentTimeMillis() - r.nextInt(1000) * 86400000L, "en", Response.DT_TEXT,
+                r.nextInt(50), r.nextInt(50), flags, 0.0d);
+    }
+
+    /**
+     * a container of the urls from first to last, every step-th url is a good reference
+     */
+    private static ReferenceContainer<WordReference> container(final String term, final int first, final int last, final int step, final Random r) throws Exception {
+        final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(factory, Word.word2hash(term), last - first);
+        for (int url = first; url < last; url++) c.add(reference(url, step > 0 && url % step == 0, r));
+        c.sort();
+        return c;
+    }
+
+    /**
+     * the scores of the references of a container, best first
+     */
+    private static List<Long> scores(final ReferenceContainer<WordReference> c) {
+        final List<Long> scores = new ArrayList<Long>();
+        final Iterator<WordReference> i = c.entries();
+        while (i.hasNext()) scores.add(order.score(i.next()));
+        Collections.sort(scores, Collections.reverseOrder());
+        return scores;
+    }
+
+    /**
+     * an impact list holds the references with the best scores and a bound of the scores of all other references
+     */
+    @Test
+    public void testSummarize() throws Exception {
+        final Random r = new Random(0);
+        assertNull(ReferenceImpact.summarize(factory, container("alpha", 0, 399, 0, r), order, 100)); // too small
+
+        final ReferenceContainer<WordReference> c = container("alpha", 0, 3000, 0, r);
+        final byte[] b = ReferenceImpact.summarize(factory, c, order, 100);
+        assertNotNull(b);
+        final ReferenceImpact<WordReference> impact = ReferenceImpact.importImpact(factory, c.getTermHash(), b, order);
+        assertEquals(100, impact.references().size());
+        final List<Long> all = scores(c);
+        assertEquals(all.subList(0, 100), scores(impact.references()));
+        for (int i = 100; i < all.size(); i++) assertTrue(all.get(i) <= impact.rest());
+
+        // the best references are only complete if no other reference can have a better score than the k-th best
+        for (final int k: new int[]{1, 10, 100}) {
+            if (impact.holdsTopK(order, k)) assertTrue(all.get(k - 1) >= impact.rest());
+        }
+        assertFalse(impact.holdsTopK(order, 101));
+        assertTrue(new ReferenceImpact<WordReference>(c, Long.MIN_VALUE).holdsTopK(order, 5000));
+    }
+
+    /**
+     * the impact lists are written when files are merged; a single term search reads them instead of the containers
+     */
+    @Test
+    public void testImpactLists() throws Exception {
+        final File dir = this.tmp.getRoot();
+        final ReferenceContainerArray<WordReference> array = new ReferenceContainerArray<WordReference>(dir, "test", factory, Base64Order.enhancedCoder, Word.commonHashLength);
+        try {
+            array.setImpactOrder(order, 50);
+            final Random r = new Random(1);
+            final ReferenceContainer<WordReference> all = container("alpha", 0, 2000, 50, r);
+            for (int part = 0; part < 2; part++) {
+                final ReferenceContainerCache<WordReference> cache = new ReferenceContainerCache<WordReference>(factory, Base64Order.enhancedCoder, Word.commonHashLength);
+                for (int i = part; i < all.size(); i += 2) cache.add(all.getTermHash(), factory.produceSlow(all.get(i, true)));
+                cache.add(Word.word2hash("beta"), factory.produceSlow(all.get(part, true)));
+                final File f = array.newContainerBLOBFile();
+                cache.dump(f, 1024, true);
+                array.mountBLOBFile(f);
+                Thread.sleep(2); // the file names are made from the time
+            }
+            final IODispatcher merger = new IODispatcher(2, 2, 1024);
+            merger.setMergeWidth(2);
+            assertTrue(array.shrinkAnySmallFiles(merger, Long.MAX_VALUE));
+            assertEquals(1, array.entries());
+            assertEquals(1, dir.list((d, name) -> name.endsWith(".blob.impact")).length);
+
+            // the impact list of alpha and the small container of a new file are read
+            final ReferenceContainerCache<WordReference> cache = new ReferenceContainerCache<WordReference>(factory, Base64Order.enhancedCoder, Word.commonHashLength);
+            final WordReference added = reference(5000, true, r);
+            cache.add(all.getTermHash(), added);
+            final File f = array.newContainerBLOBFile();
+            cache.dump(f, 1024, true);
+            array.mountBLOBFile(f);
+            all.add(added);
+            final ReferenceImpact<WordReference> impact = array.getImpact(all.getTermHash(), order);
+            assertEquals(51, impact.references().size());
+            assertTrue(impact.rest() > Long.MIN_VALUE);
+            assertTrue(impact.holdsTopK(order, 40));
+            final List<Long> best = scores(all).subList(0, 40);
+            assertEquals(best, scores(impact.references()).subList(0, 40));
+
+            // small containers have no impact lists and are read completely
+            final ReferenceImpact<WordReference> beta = array.getImpact(Word.word2hash("beta"), order);
+            assertEquals(2, beta.references().size());
+            assertEquals(Long.MIN_VALUE, beta.rest());
+            assertNull(array.getImpact(Word.word2hash("gamma"), order));
+        } finally {
+            array.close();
+        }
+    }
+
+    /**
+     * references that are removed from the files are not read again from the impact lists, also after a restart
+     */
+    @Test
+    public void testRemovedReferences() throws Exception {
+        final File dir = this.tmp.getRoot();
+        ReferenceContainerArray<WordReference> array = new ReferenceContainerArray<WordReference>(dir, "test", factory, Base64Order.enhancedCoder, Word.commonHashLength);
+        try {
+            array.setImpactOrder(order, 50);
+            final Random r = new Random(2);
+            final ReferenceContainer<WordReference> all = container("alpha", 0, 2000, 50, r);
+            for (int part = 0; part < 2; part++) {
+                final ReferenceContainerCache<WordReference> cache = new ReferenceContainerCache<WordReference>(factory, Base64Order.enhancedCoder, Word.commonHashLength);
+                for (int i = part; i < all.size(); i += 2) cache.add(all.getTermHash(), factory.produceSlow(all.get(i, true)));
+                final File f = array.newContainerBLOBFile();
+                cache.dump(f, 1024, true);
+                array.mountBLOBFile(f);
+                Thread.sleep(2); // the file names are made from the time
+            }
+            final IODispatcher merger = new IODispatcher(2, 2, 1024);
+            merger.setMergeWidth(2);
+            assertTrue(array.shrinkAnySmallFiles(merger, Long.MAX_VALUE));
+            assertEquals(50, array.getImpact(all.getTermHash(), order).references().size());
+
+            // remove one of the best references
+            final byte[] removed = array.getImpact(all.getTermHash(), order).references().entries().next().urlhash();
+            array.reduce(all.getTermHash(), container -> {
+                container.removeReference(removed);
+                return container;
+            });
+            ReferenceImpact<WordReference> impact = array.getImpact(all.getTermHash(), order);
+            assertNull(impact.references().getReference(removed));
+            assertEquals(all.size() - 1, impact.references().size());
+            array.close();
+
+            array = new ReferenceContainerArray<WordReference>(dir, "test", factory, Base64Order.enhancedCoder, Word.commonHashLength);
+            impact = array.getImpact(all.getTermHash(), order);
+            assertNull(impact.references().getReference(removed));
+            assertEquals(all.size() - 1, impact.references().size());
+            assertEquals(1, dir.list((d, name) -> name.endsWith(".blob.impact")).length); // only the impact list of the term is deleted
+        } finally {
+            array.close();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+// ReferenceJoinPerfTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.rwi.ReferenceContainer.JoinMethod;
+import net.yacy.kelondro.util.Bitfield;
+
+/**
+ * Benchmark grid of the join methods of ReferenceContainer for size ratios of the joined containers from 1:1 to 1:100000.
+ * The large container has a fixed size; the small container has the size of the large container divided by the ratio,
+ * and half of its urls are also in the large container. Each cell is the mean time of one join in milliseconds; the
+ * column 'chosen' is the join that is computed with the method that joinConstructive chooses.
+ * With 'unsorted', the large container is filled in random order, like a container of the RAM cache, and must be
+ * sorted by all methods except HASH; the time to fill the container is not measured.
+ * java -Xmx2g net.yacy.kelondro.rwi.ReferenceJoinPerfTest [size of large container] [repetitions]
+ */
+public class ReferenceJoinPerfTest {
+
+    private static final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+    private static final int[] RATIOS = new int[]{1, 10, 100, 1000, 10000, 100000};
+
+    private static long sink = 0; // prevents that the benchmark code is removed as dead code
+
+    private static Row.Entry reference(final int url) {
+        final Queue<Integer> positions = new LinkedBlockingQueue<Integer>();
+        positions.add(1 + url % 100);
+        return new WordReferenceVars(Word.word2hash("url" + url), 30, 3, 0, 1, 100, 10, 1 + url % 100, positions, 1, 1, 0, "en",
+                Response.DT_TEXT, 0, 0, new Bitfield(4), 0.0d).toKelondroEntry();
+    }
+
+    private static ReferenceContainer<WordReference> container(final String term, final List<Row.Entry> entries, final boolean sorted) throws Exception {
+        final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(factory, Word.word2hash(term), entries.size());
+        for (final Row.Entry e: entries) c.addUnique(e);
+        if (sorted) c.sort();
+        return c;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final Random r = new Random(0);
+
+        final List<Row.Entry> largeEntries = new ArrayList<Row.Entry>(size);
+        for (int u = 0; u < size; u++) largeEntries.add(reference(2 * u));
+        Collections.shuffle(largeEntries, r);
+        final ReferenceContainer<WordReference> largeSorted = container("large", largeEntries, true);
+
+        System.out.println("join benchmark with a large container of " + size + " references, " + repetitions + " repetitions, times in ms");
+        final StringBuilder header = new StringBuilder(String.format("%-9s %-8s %8s", "large", "ratio", "small"));
+        for (final JoinMethod method: JoinMethod.values()) header.append(String.format(" %12s", method.name()));
+        header.append(String.format(" %12s %s", "chosen", "method"));
+        System.out.println(header);
+
+        for (final boolean sorted: new boolean[]{true, false}) {
+            for (final int ratio: RATIOS) {
+                final int smallSize = Math.max(1, size / ratio);
+                // half of the small container is also in the large container
+                final List<Row.Entry> smallEntries = new ArrayList<Row.Entry>(smallSize);
+                for (int i = 0; i < smallSize; i++) smallEntries.add(reference(2 * r.nextInt(size) + (i & 1)));
+                final ReferenceContainer<WordReference> small = container("small", smallEntries, true);
+                final JoinMethod chosen = ReferenceContainer.joinMethod(small.size(), true, size, sorted);
+                final StringBuilder line = new StringBuilder(String.format("%-9s 1:%-6d %8d", sorted ? "sorted" : "unsorted", ratio, small.size()));
+                for (final JoinMethod method: JoinMethod.values()) {
+                    long nanos = 0;
+                    for (int round = 0; round <= repetitions; round++) { // the first round is the warm-up
+                        final ReferenceContainer<WordReference> large = sorted ? largeSorted : container("large", largeEntries, false);
+                        final long t = System.nanoTime();
+                        final ReferenceContainer<WordReference> joined = ReferenceContainer.joinConstructive(factory, small, large, Integer.MAX_VALUE, method);
+                        if (round > 0) nanos += System.nanoTime() - t;
+                        sink += joined == null ? 0 : joined.size();
+                    }
+                    line.append(String.format(" %12.3f", nanos / 1e6d / repetitions));
+                }
+                long nanos = 0;
+                for (int round = 0; round <= repetitions; round++) {
+                    final ReferenceContainer<WordReference> large = sorted ? largeSorted : container("large", largeEntries, false);
+                    final long t = System.nanoTime();
+                    final ReferenceContainer<WordReference> joined = ReferenceContainer.joinConstructive(factory, small, large, Integer.MAX_VALUE);
+                    if (round > 0) nanos += System.nanoTime() - t;
+                    sink += joined == null ? 0 : joined.size();
+                }
+                line.append(String.format(" %12.3f %s", nanos / 1e6d / repetitions, chosen.name()));
+                System.out.println(line);
+            }
+        }
+        System.out.println("(" + sink + ")");
+    }
+
+}
@@ -0,0 +1,166 @@
+// TermSearchPerfTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.yacy.cora.document.analysis.Classification;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.util.Bitfield;
+import net.yacy.search.ranking.RankingProfile;
+import net.yacy.search.ranking.ReferenceOrder;
+
+/**
+ * Latency benchmark of the conjunction of a term search: the full join of all references with a following
+ * selection of the best k references against the top-k join that skips blocks by their stored bounds.
+ * The containers are synthetic: the number of documents of the term with rank r is proportional to 1/r^s
+ * (a Zipf distribution) and the rank features of the references are random with skewed distributions. The queries are pairs of terms
+ * that are drawn from the same distribution, so most queries contain a frequent term.
+ * java -Xmx2g net.yacy.kelondro.rwi.TermSearchPerfTest [documents] [terms] [queries] [k]
+ */
+public class TermSearchPerfTest {
+
+    private static final double ZIPF = 1.0d;
+    private static final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+    private static final ReferenceOrder order = new ReferenceOrder(new RankingProfile(Classification.ContentDomain.TEXT), "en");
+
+    private static long sink = 0; // prevents that the benchmark code is removed as dead code
+
+    private static WordReferenceVars reference(final int document, final Random r) {
+        final Queue<Integer> positions = new LinkedBlockingQueue<Integer>();
+        positions.add(1 + r.nextInt(100));
+        final Bitfield flags = new Bitfield(4);
+        for (int i = 0; i < 32; i++) if (r.nextInt(32) == 0) flags.set(i, true);
+        return new WordReferenceVars(Word.word2hash("document" + document), 20 + r.nextInt(100), 1 + r.nextInt(8), skewed(r, 4), 1 + skewed(r, 10),
+                50 + r.nextInt(3000), 1 + r.nextInt(200), 1 + skewed(r, 200), positions, skewed(r, 5), skewed(r, 20),
+                System.currentTimeMillis() - skewed(r, 300) * 86400000L, r.nextInt(4) == 0 ? "de" : "en", Response.DT_TEXT,
+                skewed(r, 10), skewed(r, 10), flags, 0.0d);
+    }
+
+    /**
+     * draw a number from an exponential distribution with the given mean, like most rank features of real documents
+     */
+    private static int skewed(final Random r, final int mean) {
+        return (int) (-mean * Math.log(1.0d - r.nextDouble()));
+    }
+
+    /**
+     * draw a rank between 0 and n - 1 from a Zipf distribution with the cumulated weights cdf
+     */
+    private static int zipf(final double[] cdf, final Random r) {
+        final int i = Arrays.binarySearch(cdf, r.nextDouble() * cdf[cdf.length - 1]);
+        return Math.min(cdf.length - 1, i < 0 ? -i - 1 : i);
+    }
+
+    /**
+     * the full join as it is done by TermSearch without top-k: join all containers, score all references and select the best k
+     */
+    private static int fullJoin(final List<ReferenceContainer<WordReference>> include, final int k) throws Exception {
+        final ReferenceContainer<WordReference> joined = ReferenceContainer.joinExcludeContainers(factory, include, Collections.<ReferenceContainer<WordReference>>emptyList(), Integer.MAX_VALUE);
+        final PriorityQueue<Long> best = new PriorityQueue<Long>(k + 1);
+        final Iterator<WordReference> i = joined.entries();
+        while (i.hasNext()) {
+            best.add(order.score(i.next()));
+            if (best.size() > k) best.poll();
+        }
+        return best.size();
+    }
+
+    private static void report(final String name, final long[] nanos) {
+        Arrays.sort(nanos);
+        long sum = 0;
+        for (final long t: nanos) sum += t;
+        System.out.println(String.format("%-20s p50 %10.3f ms   p99 %10.3f ms   mean %10.3f ms", name,
+                nanos[nanos.length / 2] / 1e6d, nanos[Math.min(nanos.length - 1, nanos.length * 99 / 100)] / 1e6d, sum / 1e6d / nanos.length));
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int documents = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        final int terms = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        final int k = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        final Random r = new Random(0);
+
+        // containers with Zipf-distributed sizes; the bounds are computed once, as they would be stored by a merge
+        final double[] cdf = new double[terms];
+        for (int t = 0; t < terms; t++) cdf[t] = (t == 0 ? 0 : cdf[t - 1]) + 1.0d / Math.pow(t + 1, ZIPF);
+        final List<ReferenceContainer<WordReference>> containers = new ArrayList<ReferenceContainer<WordReference>>(terms);
+        final List<ReferenceContainer<WordReference>> bounds = new ArrayList<ReferenceContainer<WordReference>>(terms);
+        long postings = 0;
+        for (int t = 0; t < terms; t++) {
+            final double p = 0.5d / Math.pow(t + 1, ZIPF);
+            final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(factory, Word.word2hash("term" + t), (int) (documents * p) + 1);
+            for (int d = 0; d < documents; d++) if (r.nextDouble() < p) c.add(reference(d, r));
+            c.sort();
+            containers.add(c);
+            bounds.add(ReferenceBlocks.summarize(factory, c));
+            postings += c.size();
+        }
+        System.out.println("term search benchmark with " + documents + " documents, " + terms + " terms, " + postings + " postings, " + queries + " queries, k = " + k);
+
+        // queries of two different terms
+        final int[][] query = new int[queries][2];
+        for (int q = 0; q < queries; q++) {
+            query[q][0] = zipf(cdf, r);
+            do query[q][1] = zipf(cdf, r); while (query[q][1] == query[q][0] && terms > 1);
+        }
+
+        for (int round = 0; round < 2; round++) { // the first round is the warm-up
+            final long[] full = new long[queries];
+            final long[] topk = new long[queries];
+            for (int q = 0; q < queries; q++) {
+                final List<ReferenceContainer<WordReference>> include = Arrays.asList(containers.get(query[q][0]), containers.get(query[q][1]));
+                long t = System.nanoTime();
+                sink += fullJoin(include, k);
+                full[q] = System.nanoTime() - t;
+
+                t = System.nanoTime();
+                final List<ReferenceBlocks<WordReference>> blocks = new ArrayList<ReferenceBlocks<WordReference>>(2);
+                for (final int term: query[q]) {
+                    final ReferenceBlocks<WordReference> b = new ReferenceBlocks<WordReference>(factory);
+                    b.add(bounds.get(term));
+                    b.score(order);
+                    blocks.add(b);
+                }
+                sink += ReferenceContainer.joinTopK(factory, include, blocks, null, order, k, Integer.MAX_VALUE).size();
+                topk[q] = System.nanoTime() - t;
+            }
+            if (round == 0) continue;
+            report("full join", full);
+            report("top-k join", topk);
+        }
+        System.out.println("(" + sink + ")");
+    }
+
+}
@@ -0,0 +1,164 @@
+// TermSearchTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.yacy.cora.storage.HandleSet;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.document.Tokenizer;
+import net.yacy.kelondro.data.position.PositionReference;
+import net.yacy.kelondro.data.position.PositionReferenceFactory;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.search.query.QueryGoal;
+
+/**
+ * Unit tests for the check of phrases and near terms with the positional index
+ */
+public class TermSearchTest {
+
+    private ReferenceContainerCache<WordReference> words;
+    private ReferenceContainerCache<PositionReference> positions;
+
+    @Before
+    public void setUp() {
+        this.words = new ReferenceContainerCache<WordReference>(new WordReferenceFactory(), Word.commonHashOrder, Word.commonHashLength);
+        this.positions = new ReferenceContainerCache<PositionReference>(new PositionReferenceFactory(), Word.commonHashOrder, Word.commonHashLength);
+    }
+
+    /**
+     * store a document like Segment.storeDocument does
+     * @param withPositions false to simulate a document that was stored before the positional index was used
+     */
+    private void store(final String url, final String text, final boolean withPositions) throws Exception {
+        final byte[] urlhash = Word.word2hash(url);
+        final Tokenizer tokenizer = new Tokenizer(null, text, null, false, null, true);
+        final WordReferenceRow ientry = new WordReferenceRow(urlhash, url.length(), 1, 0, tokenizer.RESULT_NUMB_WORDS, tokenizer.RESULT_NUMB_SENTENCES,
+                System.currentTimeMillis(), System.currentTimeMillis(), "en".getBytes(), Response.DT_TEXT, 0, 0);
+        for (final Map.Entry<String, Word> w: tokenizer.words().entrySet()) {
+            ientry.setWord(w.getValue());
+            this.words.add(Word.word2hash(w.getKey()), ientry);
+            if (withPositions) this.positions.add(Word.word2hash(w.getKey()), new PositionReference(urlhash, w.getValue()));
+        }
+    }
+
+    private List<String> search(final String query, final String... urls) throws Exception {
+        final QueryGoal goal = new QueryGoal(query);
+        final HandleSet include = goal.getIncludeHashes();
+        final List<PositionConstraint> constraints = goal.getPositionConstraints();
+        final int maxDistance = query.indexOf('"') >= 0 ? include.size() - 1 : Integer.MAX_VALUE;
+        final TermSearch<WordReference> search = new TermSearch<WordReference>(this.words, include, goal.getExcludeHashes(), null,
+                new WordReferenceFactory(), Integer.MAX_VALUE);
+        search.filter(this.positions, constraints, maxDistance);
+        final List<String> result = new ArrayList<String>();
+        for (final String url: urls) {
+            if (search.joined().getReference(Word.word2hash(url)) != null) result.add(url);
+        }
+        return result;
+    }
+
+    @Test
+    public void testPhrase() throws Exception {
+        store("a", "The new york times reports from the city.", true);
+        store("b", "New cars are sold in York and in many other places.", true);
+        store("c", "York is new, but new york is old.", true);
+        final List<String> result = search("\"new york\"", "a", "b", "c");
+        assertEquals(2, result.size());
+        assertTrue(result.contains("a"));
+        assertTrue(result.contains("c")); // the first occurrences are not adjacent, but later ones are
+        assertEquals(3, search("new york", "a", "b", "c").size()); // no phrase: no constraint
+        assertEquals(0, search("\"york new\"", "a", "b").size());
+    }
+
+    @Test
+    public void testPhraseWithLeftOutWords() throws Exception {
+        store("a", "This is the war of the worlds.", true);
+        store("b", "The worlds of the war are many.", true);
+        final QueryGoal goal = new QueryGoal("\"war of the worlds\"");
+        final List<PositionConstraint> constraints = goal.getPositionConstraints();
+        assertEquals(1, constraints.size());
+        assertEquals(4, constraints.get(0).termHashes().length);
+        final List<String> result = search("\"war of the worlds\"", "a", "b");
+        assertEquals(1, result.size());
+        assertEquals("a", result.get(0));
+    }
+
+    @Test
+    public void testNear() throws Exception {
+        store("a", "The power of the sun gives solar energy.", true);
+        store("b", "Solar panels turn light into electric power.", true);
+        store("c", "Solar cells and power plants.", true);
+        List<String> result = search("solar NEAR/2 power", "a", "b", "c");
+        assertEquals(1, result.size());
+        assertEquals("c", result.get(0));
+        result = search("power NEAR/4 solar", "a", "b", "c"); // four words between the terms in a, five in b
+        assertEquals(2, result.size());
+        assertFalse(result.contains("b"));
+    }
+
+    @Test
+    public void testUnknownPositions() throws Exception {
+        store("a", "The new york times reports from the city.", false);
+        store("b", "New cars are sold in York and in many other places.", false);
+        // without positions, the distance of the first occurrences decides like in a join with maxDistance
+        final List<String> result = search("\"new york\"", "a", "b");
+        assertEquals(1, result.size());
+        assertEquals("a", result.get(0));
+    }
+
+    @Test
+    public void testPositionReference() {
+        final int[] p = new int[]{1, 2, 130, 20000, Word.phrasePosition(1, 0), Word.phrasePosition(1, 3)};
+        PositionReference r = new PositionReference(Word.word2hash("a"), p, true);
+        assertTrue(r.isComplete());
+        int[] q = r.positionArray();
+        assertEquals(p.length, q.length);
+        for (int i = 0; i < p.length; i++) assertEquals(p[i], q[i]);
+
+        // too many positions: only the first positions are stored
+        final int[] many = new int[100];
+        for (int i = 0; i < many.length; i++) many[i] = i * 1000 + 1;
+        r = new PositionReference(Word.word2hash("a"), many, true);
+        assertFalse(r.isComplete());
+        q = r.positionArray();
+        assertTrue(q.length > 0 && q.length < many.length);
+        for (int i = 0; i < q.length; i++) assertEquals(many[i], q[i]);
+
+        assertNotNull(this.positions);
+        assertNull(this.positions.get(Word.word2hash("a"), null));
+    }
+
+}
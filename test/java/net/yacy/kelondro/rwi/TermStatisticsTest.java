@@ -0,0 +1,228 @@
+// TermStatisticsTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.rwi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.util.Bitfield;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Unit tests for the term statistics catalog of index cells
+ */
+public class TermStatisticsTest {
+
+    private static final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        this.dir = this.tmp.getRoot();
+    }
+
+    private static WordReference reference(final int i, final int hitcount) {
+        final byte[] urlHash = ASCII.getBytes(String.format("url%09d", i));
+        return new WordReferenceVars(urlHash, 30, 3, 0, hitcount, 100, 10, 1, new LinkedBlockingQueue<Integer>(), 1, 1, 0, "en",
+                Response.DT_TEXT, 0, 0, new Bitfield(4), 0.0d);
+    }
+
+    private static ReferenceContainer<WordReference> container(final String term, final int hitcount, final int... urls) throws Exception {
+        final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(factory, Word.word2hash(term), urls.length);
+        for (final int url: urls) c.add(reference(url, hitcount));
+        return c;
+    }
+
+    /**
+     * the statistics are added and corrected incrementally and are persistent
+     */
+    @Test
+    public void testCorrectAndPersist() throws Exception {
+        final File f = new File(this.dir, "test.statistics.table");
+        TermStatistics statistics = new TermStatistics(f, Word.commonHashLength, Base64Order.enhancedCoder);
+        assertFalse(statistics.isComplete());
+        statistics.setComplete();
+        statistics.add(container("alpha", 3, 1, 2, 3));
+        statistics.add(container("alpha", 5, 4));
+        statistics.add(container("beta", 1, 1));
+        TermStatistics.Entry alpha = statistics.get(Word.word2hash("alpha"));
+        assertNotNull(alpha);
+        assertEquals(4, alpha.df());
+        assertEquals(14, alpha.postings());
+        assertEquals(5, alpha.maxtf());
+
+        // removed references decrease the statistics, a term without references is removed
+        statistics.correct(Word.word2hash("alpha"), -1, -3, 0);
+        statistics.correct(Word.word2hash("beta"), -1, -1, 0);
+        assertNull(statistics.get(Word.word2hash("beta")));
+        assertEquals(1, statistics.size());
+        statistics.close();
+
+        statistics = new TermStatistics(f, Word.commonHashLength, Base64Order.enhancedCoder);
+        assertTrue(statistics.isComplete());
+        alpha = statistics.get(Word.word2hash("alpha"));
+        assertEquals(3, alpha.df());
+        assertEquals(11, alpha.postings());
+        assertEquals(5, alpha.maxtf()); // the maximum is an upper bound
+        assertEquals(0, statistics.df(Word.word2hash("gamma")));
+        statistics.clear();
+        assertEquals(0, statistics.size());
+        statistics.close();
+    }
+
+    /**
+     * a merge corrects the statistics for the references of a document that were stored in several files
+     */
+    @Test
+    public void testMerge() throws Exception {
+        final ReferenceContainerArray<WordReference> array = new ReferenceContainerArray<WordReference>(this.dir, "test", factory, Base64Order.enhancedCoder, Word.commonHashLength);
+        final TermStatistics statistics = new TermStatistics(new File(this.dir, "test.statistics.table"), Word.commonHashLength, Base64Order.enhancedCoder);
+        array.setTermStatistics(statistics);
+        try {
+            final int[][] urls = new int[][]{{1, 2, 3}, {3, 4}, {4, 5, 6}};
+            for (final int[] u: urls) {
+                final ReferenceContainerCache<WordReference> cache = new ReferenceContainerCache<WordReference>(factory, Base64Order.enhancedCoder, Word.commonHashLength);
+                cache.add(container("alpha", 2, u));
+                statistics.add(cache);
+                final File f = array.newContainerBLOBFile();
+                cache.dump(f, 1024, true);
+                array.mountBLOBFile(f);
+                Thread.sleep(2); // the file names are made from the time
+            }
+            final byte[] alpha = Word.word2hash("alpha");
+            assertEquals(8, statistics.df(alpha));
+            assertEquals(array.count(alpha), statistics.df(alpha));
+
+            final IODispatcher merger = new IODispatcher(2, 2, 1024); // not started: merges are executed immediately
+            merger.setMergeWidth(3);
+            assertTrue(array.shrinkAnySmallFiles(merger, Long.MAX_VALUE));
+            assertEquals(1, array.entries());
+            assertEquals(6, array.count(alpha));
+            assertEquals(6, statistics.df(alpha));
+            assertEquals(12, statistics.get(alpha).postings());
+        } finally {
+            array.close();
+            statistics.close();
+        }
+    }
+
+    /**
+     * terms are only counted for a rebuild while no change is pending, and changes wait while terms are counted
+     */
+    @Test
+    public void testRebuildGate() throws Exception {
+        final TermStatistics statistics = new TermStatistics(new File(this.dir, "test.statistics.table"), Word.commonHashLength, Base64Order.enhancedCoder);
+        try {
+            statistics.beginChange();
+            assertFalse(statistics.beginRebuild(50));
+            statistics.endChange();
+            assertTrue(statistics.beginRebuild(50));
+            final CountDownLatch changed = new CountDownLatch(1);
+            final Thread t = new Thread() {
+                @Override
+                public void run() {
+                    statistics.beginChange();
+                    changed.countDown();
+                    statistics.endChange();
+                }
+            };
+            t.start();
+            assertFalse(changed.await(100, TimeUnit.MILLISECONDS));
+            statistics.endRebuild();
+            assertTrue(changed.await(10, TimeUnit.SECONDS));
+            t.join();
+        } finally {
+            statistics.close();
+        }
+    }
+
+    /**
+     * a catalog that is created for a cell with BLOB files is rebuilt in batches from the files
+     */
+    @Test
+    public void testRebuild() throws Exception {
+        final IODispatcher merger = new IODispatcher(2, 2, 1024);
+        IndexCell<WordReference> cell = new IndexCell<WordReference>(this.dir, "text.index", factory, Base64Order.enhancedCoder, Word.commonHashLength, 100000, 1024 * 1024, 1024 * 1024, 1024, merger);
+        for (int t = 0; t < 2500; t++) cell.add(t % 3 == 0 ? container("term" + t, 1, 1) : container("term" + t, 1, 1, 2));
+        cell.close(); // dumps the RAM
+        FileUtils.deletedelete(new File(this.dir, "text.index.statistics.table"));
+        FileUtils.deletedelete(new File(this.dir, "text.index.statistics.table.complete"));
+        cell = new IndexCell<WordReference>(this.dir, "text.index", factory, Base64Order.enhancedCoder, Word.commonHashLength, 100000, 1024 * 1024, 1024 * 1024, 1024, merger);
+        try {
+            final long timeout = System.currentTimeMillis() + 60000;
+            while (cell.statistics(Word.word2hash("term0")) == null && System.currentTimeMillis() < timeout) Thread.sleep(10);
+            for (int t = 0; t < 2500; t++) assertEquals(t % 3 == 0 ? 1 : 2, cell.statistics(Word.word2hash("term" + t)).df());
+        } finally {
+            cell.close();
+        }
+    }
+
+    /**
+     * the count of an index cell is read from the catalog and includes the references in the RAM
+     */
+    @Test
+    public void testIndexCellCount() throws Exception {
+        final IODispatcher merger = new IODispatcher(2, 2, 1024);
+        IndexCell<WordReference> cell = new IndexCell<WordReference>(this.dir, "text.index", factory, Base64Order.enhancedCoder, Word.commonHashLength, 1000, 1024 * 1024, 1024 * 1024, 1024, merger);
+        final byte[] alpha = Word.word2hash("alpha");
+        cell.add(container("alpha", 1, 1, 2, 3));
+        assertEquals(3, cell.count(alpha));
+        cell.close(); // dumps the RAM
+        cell = new IndexCell<WordReference>(this.dir, "text.index", factory, Base64Order.enhancedCoder, Word.commonHashLength, 1000, 1024 * 1024, 1024 * 1024, 1024, merger);
+        try {
+            cell.add(container("alpha", 4, 4));
+            assertEquals(4, cell.count(alpha));
+            final TermStatistics.Entry entry = cell.statistics(alpha);
+            assertEquals(4, entry.df());
+            assertEquals(7, entry.postings());
+            assertEquals(0, cell.statistics(Word.word2hash("beta")).df());
+            cell.remove(alpha, reference(2, 1).urlhash());
+            assertEquals(3, cell.count(alpha));
+        } finally {
+            cell.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+// TablePerfTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.table;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Multi-threaded throughput of the Table with a 90/10 read/write mix,
+ * in the default (exclusive) mode and in concurrent mode, for 1 up to the number of cores threads.
+ * Usage: java net.yacy.kelondro.table.TablePerfTest [entries] [seconds per run] [tailCache true/false] [max threads]
+ */
+public class TablePerfTest {
+
+    private static final Row rowdef = new Row("byte[] key-12, byte[] payload-100", NaturalOrder.naturalOrder);
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("k%011d", i));
+    }
+
+    private static Row.Entry row(final int i, final int v) {
+        final Row.Entry entry = rowdef.newEntry();
+        entry.setCol(0, key(i));
+        final byte[] payload = new byte[100];
+        for (int j = 0; j < payload.length; j++) payload[j] = (byte) ('a' + (v + j) % 26);
+        entry.setCol(1, payload);
+        return entry;
+    }
+
+    private static double run(final Table table, final int entries, final int threadCount, final long millis) throws InterruptedException {
+        final AtomicLong ops = new AtomicLong();
+        final long end = System.currentTimeMillis() + millis;
+        final Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    final Random r = new Random(seed);
+                    long c = 0;
+                    try {
+                        while ((c & 255) != 0 || System.currentTimeMillis() < end) {
+                            final int i = r.nextInt(entries);
+                            if (r.nextInt(10) == 0) {
+                                table.put(row(i, r.nextInt()));
+                            } else {
+                                table.get(key(i), false);
+                            }
+                            c++;
+                        }
+                    } catch (final Exception e) {
+                        e.printStackTrace();
+                    }
+                    ops.addAndGet(c);
+                }
+            };
+        }
+        final long start = System.currentTimeMillis();
+        for (final Thread t: threads) t.start();
+        for (final Thread t: threads) t.join();
+        return ops.get() * 1000.0d / (System.currentTimeMillis() - start);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int entries = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final long millis = 1000L * (args.length > 1 ? Integer.parseInt(args[1]) : 5);
+        final boolean tailCache = args.length > 2 && Boolean.parseBoolean(args[2]);
+        final int cores = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        System.out.println("Table benchmark: " + entries + " entries, 90% get / 10% put, tail cache " + tailCache + ", " + cores + " cores");
+        for (final boolean concurrent: new boolean[]{false, true}) {
+            final File f = new File(System.getProperty("java.io.tmpdir"), "TablePerfTest" + System.nanoTime() + ".table");
+            final Table table = new Table(f, rowdef, 1000, 0, tailCache, false, true, concurrent);
+            try {
+                for (int i = 0; i < entries; i++) table.put(row(i, i));
+                double base = 0;
+                for (int threads = 1; threads <= cores; threads *= 2) {
+                    final double opsPerSecond = run(table, entries, threads, millis);
+                    if (threads == 1) base = opsPerSecond;
+                    System.out.println((concurrent ? "concurrent" : "exclusive ") + " mode, " + threads + " threads: " +
+                            Math.round(opsPerSecond) + " ops/s, speedup " + String.format("%.2f", opsPerSecond / base));
+                }
+            } finally {
+                table.close();
+                FileUtils.deletedelete(f);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+// TableTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * Unit tests for the Table, in particular for the concurrent mode
+ */
+public class TableTest {
+
+    private static final Row rowdef = new Row("byte[] key-12, long value-8 {b256}", NaturalOrder.naturalOrder);
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        this.file = new File(this.tmp.getRoot(), "test.table");
+    }
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("k%011d", i));
+    }
+
+    private static Row.Entry row(final int i, final long value) {
+        final Row.Entry entry = rowdef.newEntry();
+        entry.setCol(0, key(i));
+        entry.setCol(1, value);
+        return entry;
+    }
+
+    @Test
+    public void testConcurrentModeOperations() throws Exception {
+        for (final boolean tailCache: new boolean[]{false, true}) {
+            final Table table = new Table(this.file, rowdef, 100, 0, tailCache, false, true, true);
+            try {
+                assertTrue(table.isConcurrent());
+                for (int i = 0; i < 100; i++) assertTrue(table.put(row(i, i)));
+                assertEquals(100, table.size());
+                assertFalse(table.put(row(5, 500)));
+                assertEquals(500, table.get(key(5), false).getColLong(1));
+                final Row.Entry old = table.replace(row(6, 600));
+                assertNotNull(old);
+                assertEquals(6, old.getColLong(1));
+                assertEquals(600, table.get(key(6), false).getColLong(1));
+                assertNull(table.replace(row(100, 100)));
+                assertEquals(101, table.size());
+                assertEquals(7, table.remove(key(7)).getColLong(1));
+                assertNull(table.get(key(7), false));
+                assertEquals(100, table.size());
+                assertEquals(99, table.get(key(99), false).getColLong(1));
+                assertTrue(table.consistencyCheck());
+            } finally {
+                table.close();
+                FileUtils.deletedelete(this.file);
+            }
+        }
+    }
+
+    /**
+     * readers and writers in parallel: every read must return a complete row that was written for its key
+     */
+    @Test
+    public void testParallelReadWrite() throws Exception {
+        final Table table = new Table(this.file, rowdef, 100, 0, false, false, true, true);
+        final int keys = 1000;
+        try {
+            for (int i = 0; i < keys; i++) table.put(row(i, i));
+            final Thread[] threads = new Thread[8];
+            final Throwable[] failure = new Throwable[1];
+            for (int t = 0; t < threads.length; t++) {
+                final int seed = t;
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        final Random r = new Random(seed);
+                        try {
+                            for (int n = 0; n < 20000; n++) {
+                                final int i = r.nextInt(keys);
+                                if (r.nextInt(10) == 0) {
+                                    // values of a key are always a multiple of the keys number plus the key
+                                    table.put(row(i, (long) keys * r.nextInt(1000) + i));
+                                } else {
+                                    final Row.Entry e = table.get(key(i), false);
+                                    if (e == null) throw new AssertionError("missing key " + i);
+                                    if (e.getColLong(1) % keys != i) throw new AssertionError("wrong value " + e.getColLong(1) + " for key " + i);
+                                }
+                            }
+                        } catch (final Throwable e) {
+                            failure[0] = e;
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (final Thread t: threads) t.join();
+            if (failure[0] != null) throw new AssertionError(failure[0]);
+            assertEquals(keys, table.size());
+            assertTrue(table.consistencyCheck());
+        } finally {
+            table.close();
+        }
+    }
+}
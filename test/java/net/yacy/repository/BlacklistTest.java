@@ -119,4 +119,43 @@ public class BlacklistTest {
     	Assert.assertFalse(Blacklist.isListed("fr.notblacklisted.org", "/path/with/many/segments/e/f/g/h/i/j/k/l/m/n/o/p/q/r/s/t/u/v/w/x/y/z/file.html", blacklistMapMatched, blacklistMapNotMatched));
     }
 
+    /**
+     * Tests that the patterns collected for a host give the same results as Blacklist.isListed() for each url.
+     */
+    @Test
+    public void testHostPatterns() {
+    	final Map<String, Set<Pattern>> blacklistMapMatched = new HashMap<>();
+    	Set<Pattern> patterns = new HashSet<>();
+    	patterns.add(Pattern.compile(".*"));
+    	blacklistMapMatched.put("site.blacklisted.net", patterns);
+    	
+    	patterns = new HashSet<>();
+    	patterns.add(Pattern.compile("data/js/\\d*\\.js"));
+    	blacklistMapMatched.put("js.blacklisted.org", patterns);
+    	
+    	patterns = new HashSet<>();
+    	patterns.add(Pattern.compile(".*"));
+    	blacklistMapMatched.put("ftp.*", patterns);
+    	
+    	patterns = new HashSet<>();
+    	patterns.add(Pattern.compile("produkte/.*"));
+    	blacklistMapMatched.put("*.esample.de", patterns);
+    	
+    	final Map<String, Set<Pattern>> blacklistMapNotMatched = new HashMap<>();
+    	patterns = new HashSet<>();
+    	patterns.add(Pattern.compile("counter\\?.*"));
+    	blacklistMapNotMatched.put(".*samples.fr", patterns);
+    	
+    	final String[] hosts = {"site.blacklisted.net", "js.blacklisted.org", "ftp.example.org", "www.esample.de", "www.samples.fr", "fr.notblacklisted.org"};
+    	final String[] paths = {"", "/", "/index.html", "/data/js/123.js", "/produkte/a.html", "/counter?id=1"};
+    	for (final String host : hosts) {
+    		final Pattern[] hostPatterns = Blacklist.hostPatterns(host, blacklistMapMatched, blacklistMapNotMatched);
+    		for (final String path : paths) {
+    			Assert.assertEquals(host + path, Blacklist.isListed(host, path, blacklistMapMatched, blacklistMapNotMatched), Blacklist.isListed(hostPatterns, path));
+    		}
+    	}
+    	Assert.assertEquals(0, Blacklist.hostPatterns("fr.notblacklisted.org", blacklistMapMatched, blacklistMapNotMatched).length);
+    	Assert.assertTrue(Blacklist.isListed(Blacklist.hostPatterns("www.esample.de", blacklistMapMatched, blacklistMapNotMatched), "/produkte/a.html"));
+    }
+
 }
@@ -2,9 +2,14 @@ package net.yacy.search.query;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
+import net.yacy.kelondro.rwi.PositionConstraint;
+
 public class QueryGoalTest {
 
     /**
@@ -35,4 +40,31 @@ public class QueryGoalTest {
         }
     }
 
+    /**
+     * Test of the NEAR operator and the phrases in getPositionConstraints, of class QueryGoal.
+     */
+    @Test
+    public void testGetPositionConstraints() {
+        QueryGoal qg = new QueryGoal("solar NEAR/3 power");
+        Iterator<String> it = qg.getIncludeStrings();
+        assertEquals("solar", it.next());
+        assertEquals("power", it.next());
+        assertFalse(it.hasNext());
+        List<PositionConstraint> constraints = qg.getPositionConstraints();
+        assertEquals(1, constraints.size());
+        assertFalse(constraints.get(0).isPhrase());
+
+        qg = new QueryGoal("solar near power"); // lower case is a word
+        assertEquals(3, qg.getIncludeSize());
+        assertEquals(0, qg.getPositionConstraints().size());
+
+        qg = new QueryGoal("\"solar power\" plant NEAR/3"); // an operator without a right word is ignored
+        assertEquals(3, qg.getIncludeSize());
+        constraints = qg.getPositionConstraints();
+        assertEquals(1, constraints.size());
+        assertTrue(constraints.get(0).isPhrase());
+        assertTrue(constraints.get(0).matches(new int[][]{{4, 10}, {11}}));
+        assertFalse(constraints.get(0).matches(new int[][]{{4, 10}, {9, 12}}));
+    }
+
 }
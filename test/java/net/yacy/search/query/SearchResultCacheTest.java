@@ -0,0 +1,117 @@
+package net.yacy.search.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.search.snippet.TextSnippet;
+
+public class SearchResultCacheTest {
+
+    private static SearchResultCache.Entry entry(final String id, final int first, final int size, final boolean complete, final String sharedUrl) {
+        final byte[][] urlhashes = new byte[size][];
+        final long[] scores = new long[size];
+        for (int i = 0; i < size; i++) {
+            urlhashes[i] = Word.word2hash(i == 0 && sharedUrl != null ? sharedUrl : id + "/" + i);
+            scores[i] = size - i;
+        }
+        return new SearchResultCache.Entry(id, first, complete, urlhashes, scores, new TextSnippet[size], new int[10],
+                Collections.<String, SearchResultCache.Counts>emptyMap(), System.currentTimeMillis());
+    }
+
+    @Before
+    public void setUp() {
+        SearchResultCache.setLimits(1024 * 1024, 3600000);
+        SearchResultCache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        SearchResultCache.clear();
+    }
+
+    /**
+     * Test that an entry answers only the pages that it contains.
+     */
+    @Test
+    public void testCovers() {
+        SearchResultCache.put(entry("a", 0, 20, false, null));
+        SearchResultCache.put(entry("b", 10, 5, true, null));
+        assertNotNull(SearchResultCache.get("a", 0, 10, false));
+        assertNotNull(SearchResultCache.get("a", 10, 10, false));
+        assertNull(SearchResultCache.get("a", 15, 10, false)); // more results may exist after the stored ones
+        assertNull(SearchResultCache.get("b", 0, 10, false)); // the entry starts at item 10
+        assertNotNull(SearchResultCache.get("b", 10, 10, false));
+        assertNotNull(SearchResultCache.get("b", 30, 10, false)); // the list is complete, the page is empty
+        assertNull(SearchResultCache.get("c", 0, 10, false));
+    }
+
+    /**
+     * Test that all entries with a deleted or changed document are removed.
+     */
+    @Test
+    public void testInvalidate() {
+        SearchResultCache.put(entry("a", 0, 10, false, "shared"));
+        SearchResultCache.put(entry("b", 0, 10, false, "shared"));
+        SearchResultCache.put(entry("c", 0, 10, false, null));
+        final long invalidated = SearchResultCache.cacheInvalidate;
+        SearchResultCache.invalidate(ASCII.String(Word.word2hash("unknown")));
+        assertEquals(3, SearchResultCache.size());
+        SearchResultCache.invalidate(ASCII.String(Word.word2hash("shared")));
+        assertEquals(1, SearchResultCache.size());
+        assertEquals(invalidated + 2, SearchResultCache.cacheInvalidate);
+        assertNull(SearchResultCache.get("a", 0, 10, false));
+        assertNotNull(SearchResultCache.get("c", 0, 10, false));
+        SearchResultCache.invalidate(ASCII.String(Word.word2hash("c/3")));
+        assertEquals(0, SearchResultCache.size());
+        assertEquals(0, SearchResultCache.memory());
+    }
+
+    /**
+     * Test that entries which were hit are kept when new entries exceed the memory.
+     */
+    @Test
+    public void testEviction() {
+        final long mem = entry("x", 0, 10, false, null).mem();
+        SearchResultCache.setLimits(mem * 3, 3600000);
+        SearchResultCache.put(entry("a", 0, 10, false, null));
+        SearchResultCache.put(entry("b", 0, 10, false, null));
+        assertNotNull(SearchResultCache.get("a", 0, 10, false)); // a is protected now
+        SearchResultCache.put(entry("c", 0, 10, false, null));
+        SearchResultCache.put(entry("d", 0, 10, false, null));
+        assertEquals(3, SearchResultCache.size());
+        assertNull(SearchResultCache.get("b", 0, 10, false)); // the oldest entry of the probation segment
+        assertNotNull(SearchResultCache.get("a", 0, 10, false));
+        assertNotNull(SearchResultCache.get("c", 0, 10, false));
+        assertNotNull(SearchResultCache.get("d", 0, 10, false));
+        SearchResultCache.setLimits(0, 3600000);
+        assertEquals(0, SearchResultCache.size());
+        SearchResultCache.put(entry("e", 0, 10, false, null));
+        assertEquals(0, SearchResultCache.size());
+    }
+
+    /**
+     * Test that only fresh entries are used while a crawl is running, and the hit rate.
+     */
+    @Test
+    public void testFreshAndHitRate() {
+        final SearchResultCache.Entry old = new SearchResultCache.Entry("old", 0, true, new byte[][]{Word.word2hash("old")}, new long[]{1},
+                new TextSnippet[1], new int[10], Collections.<String, SearchResultCache.Counts>emptyMap(), System.currentTimeMillis() - 120000);
+        SearchResultCache.put(old);
+        final long hit = SearchResultCache.cacheHit, miss = SearchResultCache.cacheMiss;
+        assertNull(SearchResultCache.get("old", 0, 10, true));
+        assertNotNull(SearchResultCache.get("old", 0, 10, false));
+        assertEquals(hit + 1, SearchResultCache.cacheHit);
+        assertEquals(miss + 1, SearchResultCache.cacheMiss);
+        assertEquals(100 * SearchResultCache.cacheHit / (SearchResultCache.cacheHit + SearchResultCache.cacheMiss), SearchResultCache.hitRate());
+    }
+
+}
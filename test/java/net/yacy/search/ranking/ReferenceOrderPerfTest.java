@@ -0,0 +1,151 @@
+// ReferenceOrderPerfTest.java
+// (C) 2026 by the YaCy contributors
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.search.ranking;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.yacy.cora.document.analysis.Classification;
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.search.index.Segment;
+
+/**
+ * Load test of the normalization of search results: queries arrive with a fixed rate, each query normalizes
+ * the container of a term with a Zipf-distributed size and ranks all references with cardinal(), like
+ * SearchEvent.addRWIs() does. The normalization runs once with a new thread for each task and once with
+ * the shared normalizer pool; the report shows the number of started threads per second and the latency
+ * of the queries, measured from the time when the query was due.
+ * java -Xmx2g net.yacy.search.ranking.ReferenceOrderPerfTest [queries per second] [seconds] [largest container] [terms]
+ */
+public class ReferenceOrderPerfTest {
+
+    private static long sink = 0; // prevents that the benchmark code is removed as dead code
+
+    private static long query(final ReferenceContainer<WordReference> container, final Executor executor) throws InterruptedException {
+        final ReferenceOrder order = new ReferenceOrder(new RankingProfile(Classification.ContentDomain.TEXT), "en");
+        final BlockingQueue<WordReferenceVars> queue = executor == null ?
+                order.normalizeWith(container, Long.MAX_VALUE, true) : order.normalizeWith(container, Long.MAX_VALUE, true, executor);
+        long best = 0;
+        WordReferenceVars entry;
+        while ((entry = queue.take()) != WordReferenceVars.poison) best = Math.max(best, order.cardinal(entry));
+        return best;
+    }
+
+    private static void run(final String name, final List<ReferenceContainer<WordReference>> containers, final int[] terms,
+            final int qps, final Executor executor) throws InterruptedException {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final ExecutorService clients = Executors.newFixedThreadPool(64); // the http server threads, started before the measurement
+        final CountDownLatch started = new CountDownLatch(64);
+        for (int i = 0; i < 64; i++) clients.execute(() -> started.countDown());
+        started.await();
+
+        final long[] latency = new long[terms.length];
+        final CountDownLatch done = new CountDownLatch(terms.length);
+        final long threads0 = threads.getTotalStartedThreadCount();
+        final long start = System.nanoTime();
+        for (int q = 0; q < terms.length; q++) {
+            final long due = start + q * 1000000000L / qps;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            final int query = q;
+            clients.execute(() -> {
+                try {
+                    sink += query(containers.get(terms[query]), executor);
+                } catch (final InterruptedException e) {
+                }
+                latency[query] = System.nanoTime() - due;
+                done.countDown();
+            });
+        }
+        done.await();
+        final double seconds = (System.nanoTime() - start) / 1e9d;
+        final long started1 = threads.getTotalStartedThreadCount() - threads0;
+        clients.shutdown();
+
+        Arrays.sort(latency);
+        System.out.println(String.format("%-22s %8.1f threads/sec   p50 %8.2f ms   p99 %8.2f ms   max %8.2f ms", name, started1 / seconds,
+                latency[latency.length / 2] / 1e6d, latency[Math.min(latency.length - 1, latency.length * 99 / 100)] / 1e6d, latency[latency.length - 1] / 1e6d));
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int qps = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        final int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        final int largest = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        final int termcount = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        final Random r = new Random(0);
+
+        // containers with Zipf-distributed sizes
+        final List<ReferenceContainer<WordReference>> containers = new ArrayList<ReferenceContainer<WordReference>>(termcount);
+        final double[] cdf = new double[termcount];
+        for (int t = 0; t < termcount; t++) {
+            cdf[t] = (t == 0 ? 0 : cdf[t - 1]) + 1.0d / (t + 1);
+            final int size = Math.max(1, largest / (t + 1));
+            final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(Segment.wordReferenceFactory, Word.word2hash("term" + t), size);
+            for (int d = 0; d < size; d++) {
+                c.add(new WordReferenceRow(Word.word2hash("document" + r.nextInt(10 * largest)), 20 + r.nextInt(100), 1 + r.nextInt(8), r.nextInt(10),
+                        50 + r.nextInt(3000), 1 + r.nextInt(200), System.currentTimeMillis() - r.nextInt(1000) * 86400000L, System.currentTimeMillis(),
+                        ASCII.getBytes(r.nextInt(4) == 0 ? "de" : "en"), Response.DT_TEXT, r.nextInt(20), r.nextInt(20)));
+            }
+            containers.add(c);
+        }
+
+        // the queries, the terms are drawn from the same distribution as the container sizes
+        final int[] terms = new int[qps * seconds];
+        long references = 0;
+        for (int q = 0; q < terms.length; q++) {
+            final int i = Arrays.binarySearch(cdf, r.nextDouble() * cdf[termcount - 1]);
+            terms[q] = Math.min(termcount - 1, i < 0 ? -i - 1 : i);
+            references += containers.get(terms[q]).size();
+        }
+        System.out.println("normalization load test with " + qps + " queries/sec for " + seconds + " seconds, " + (references / terms.length) + " references per query");
+
+        final Executor threadPerTask = task -> new Thread(task, "ReferenceOrderPerfTest.task").start();
+        for (int round = 0; round < 2; round++) { // the first round is the warm-up
+            if (round == 0) {
+                final int[] warmup = Arrays.copyOf(terms, Math.min(terms.length, qps * 2));
+                run("warm-up", containers, warmup, qps, null);
+                continue;
+            }
+            run("thread per task", containers, terms, qps, threadPerTask);
+            run("shared pool", containers, terms, qps, null);
+        }
+        System.out.println("(" + sink + ")");
+        ReferenceOrder.shutdownNormalizer();
+    }
+
+}
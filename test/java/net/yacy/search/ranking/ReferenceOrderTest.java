@@ -1,17 +1,31 @@
 package net.yacy.search.ranking;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.solr.common.SolrInputDocument;
 import org.junit.Test;
 
 import net.yacy.cora.document.analysis.Classification;
+import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
+import net.yacy.crawler.retrieval.Response;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.search.index.Segment;
 import net.yacy.search.schema.CollectionConfiguration;
 
 public class ReferenceOrderTest {
@@ -51,4 +65,30 @@ public class ReferenceOrderTest {
 
     }
 
+    /**
+     * Test of normalizeWith: every reference of a container is delivered once, also if the
+     * container is split into several batches, and the queue is terminated with the poison.
+     */
+    @Test
+    public void testNormalizeWith() throws Exception {
+        for (final int size: new int[]{10, 1000}) {
+            final ReferenceOrder order = new ReferenceOrder(new RankingProfile(Classification.ContentDomain.TEXT), "en");
+            final ReferenceContainer<WordReference> container = new ReferenceContainer<WordReference>(Segment.wordReferenceFactory, Word.word2hash("test"), size);
+            for (int i = 0; i < size; i++) {
+                container.add(new WordReferenceRow(Word.word2hash("document" + i), 20 + i % 100, 1 + i % 8, 3, 100 + i, 10,
+                        System.currentTimeMillis(), System.currentTimeMillis(), ASCII.getBytes("en"), Response.DT_TEXT, i % 5, i % 7));
+            }
+            final BlockingQueue<WordReferenceVars> queue = order.normalizeWith(container, Long.MAX_VALUE, true);
+            final Set<String> urls = new HashSet<String>();
+            WordReferenceVars entry;
+            while ((entry = queue.poll(10, TimeUnit.SECONDS)) != WordReferenceVars.poison) {
+                assertNotNull("normalization did not terminate", entry);
+                assertTrue("duplicate reference", urls.add(ASCII.String(entry.urlhash())));
+                assertTrue(order.cardinal(entry) > 0);
+            }
+            assertEquals(size, urls.size());
+            assertTrue(queue.isEmpty());
+        }
+    }
+
 }